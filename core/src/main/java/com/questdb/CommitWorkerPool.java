@@ -0,0 +1,264 @@
+/*******************************************************************************
+ *    ___                  _   ____  ____
+ *   / _ \ _   _  ___  ___| |_|  _ \| __ )
+ *  | | | | | | |/ _ \/ __| __| | | |  _ \
+ *  | |_| | |_| |  __/\__ \ |_| |_| | |_) |
+ *   \__\_\\__,_|\___||___/\__|____/|____/
+ *
+ * Copyright (C) 2014-2016 Appsicle
+ *
+ * This program is free software: you can redistribute it and/or  modify
+ * it under the terms of the GNU Affero General Public License, version 3,
+ * as published by the Free Software Foundation.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ *
+ ******************************************************************************/
+
+package com.questdb;
+
+import com.questdb.ex.JournalException;
+import com.questdb.log.Log;
+import com.questdb.log.LogFactory;
+import com.questdb.mp.*;
+import com.questdb.std.ObjHashSet;
+import com.questdb.std.ObjList;
+import com.questdb.std.ObjectFactory;
+import com.questdb.store.AbstractColumn;
+import com.questdb.store.ColumnIndex;
+import com.questdb.store.FixedColumn;
+import com.questdb.store.MMappedSymbolTable;
+
+import java.io.Closeable;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Pool of workers, which commit and force columns, indexes and symbol tables of writer transaction
+ * in parallel. Writer thread is the only publisher. It submits one task per file group and then
+ * calls {@link #await()}, which helps workers to drain queue and returns once every submitted task
+ * is complete. Writer thread also executes tasks itself when queue is full, so that pool of any size
+ * cannot stall commit.
+ * <p>
+ * Tasks must not share mutable state: each column, index or symbol table can only be submitted once
+ * between two await() calls.
+ */
+final class CommitWorkerPool implements Closeable {
+    private static final Log LOG = LogFactory.getLog(CommitWorkerPool.class);
+    private static final int QUEUE_CAPACITY = 1024;
+    private final RingQueue<CommitTask> queue = new RingQueue<>(CommitTask.FACTORY, QUEUE_CAPACITY);
+    private final SPSequence pubSeq = new SPSequence(QUEUE_CAPACITY);
+    private final MCSequence subSeq = new MCSequence(QUEUE_CAPACITY, null);
+    private final AtomicInteger pending = new AtomicInteger();
+    private final ObjList<Worker> workers = new ObjList<>();
+    private final CountDownLatch haltLatch;
+    private final CommitJob job = new CommitJob();
+    private volatile Throwable error;
+    private long pubCursor;
+
+    CommitWorkerPool(String name, int workerCount) {
+        pubSeq.then(subSeq).then(pubSeq);
+        ObjHashSet<Job> jobs = new ObjHashSet<>();
+        jobs.add(job);
+        this.haltLatch = new CountDownLatch(workerCount);
+        for (int i = 0; i < workerCount; i++) {
+            Worker w = new Worker(jobs, haltLatch);
+            w.setName("questdb-commit-" + name + '-' + i);
+            w.setDaemon(true);
+            workers.add(w);
+            w.start();
+        }
+    }
+
+    /**
+     * Waits for all submitted tasks to complete, executing queued tasks on calling thread meanwhile.
+     *
+     * @throws JournalException when any of the tasks failed, cause is the first failure
+     */
+    void await() throws JournalException {
+        while (pending.get() > 0) {
+            if (!job.run()) {
+                Thread.yield();
+            }
+        }
+
+        Throwable e = error;
+        if (e != null) {
+            error = null;
+            throw new JournalException("Parallel commit failed", e);
+        }
+    }
+
+    @Override
+    public void close() {
+        for (int i = 0, n = workers.size(); i < n; i++) {
+            workers.getQuick(i).halt();
+        }
+        try {
+            if (!haltLatch.await(10, TimeUnit.SECONDS)) {
+                LOG.error().$("Commit workers did not halt in time").$();
+            }
+        } catch (InterruptedException ignore) {
+            Thread.currentThread().interrupt();
+        }
+        workers.clear();
+    }
+
+    int getWorkerCount() {
+        return workers.size();
+    }
+
+    void submitColumnCommit(AbstractColumn column) {
+        CommitTask t = next();
+        t.type = CommitTask.COLUMN_COMMIT;
+        t.column = column;
+        publish();
+    }
+
+    void submitColumnForce(AbstractColumn column) {
+        CommitTask t = next();
+        t.type = CommitTask.COLUMN_FORCE;
+        t.column = column;
+        publish();
+    }
+
+    void submitIndexCommit(ColumnIndex index, boolean force) {
+        CommitTask t = next();
+        t.type = CommitTask.INDEX_COMMIT;
+        t.index = index;
+        t.force = force;
+        publish();
+    }
+
+    void submitIndexUpdate(ColumnIndex index, FixedColumn column, long lo, long hi) {
+        CommitTask t = next();
+        t.type = CommitTask.INDEX_UPDATE;
+        t.index = index;
+        t.column = column;
+        t.lo = lo;
+        t.hi = hi;
+        publish();
+    }
+
+    void submitSymbolTableCommit(MMappedSymbolTable tab, boolean force) {
+        CommitTask t = next();
+        t.type = CommitTask.SYMBOL_TABLE_COMMIT;
+        t.tab = tab;
+        t.force = force;
+        publish();
+    }
+
+    private CommitTask next() {
+        long cursor;
+        while ((cursor = pubSeq.next()) < 0) {
+            // queue is full, help workers out
+            job.run();
+        }
+        pending.incrementAndGet();
+        return queue.get(pubCursor = cursor);
+    }
+
+    private void publish() {
+        pubSeq.done(pubCursor);
+    }
+
+    private static class CommitTask {
+        private static final int COLUMN_COMMIT = 1;
+        private static final int COLUMN_FORCE = 2;
+        private static final int INDEX_COMMIT = 3;
+        private static final int INDEX_UPDATE = 4;
+        private static final int SYMBOL_TABLE_COMMIT = 5;
+        private static final ObjectFactory<CommitTask> FACTORY = new ObjectFactory<CommitTask>() {
+            @Override
+            public CommitTask newInstance() {
+                return new CommitTask();
+            }
+        };
+
+        private int type;
+        private AbstractColumn column;
+        private ColumnIndex index;
+        private MMappedSymbolTable tab;
+        private long lo;
+        private long hi;
+        private boolean force;
+
+        private void clear() {
+            column = null;
+            index = null;
+            tab = null;
+        }
+    }
+
+    private class CommitJob implements Job {
+        @Override
+        public boolean run() {
+            long cursor = subSeq.next();
+            if (cursor < 0) {
+                return false;
+            }
+
+            CommitTask t = queue.get(cursor);
+            final int type = t.type;
+            final AbstractColumn column = t.column;
+            final ColumnIndex index = t.index;
+            final MMappedSymbolTable tab = t.tab;
+            final long lo = t.lo;
+            final long hi = t.hi;
+            final boolean force = t.force;
+            t.clear();
+            subSeq.done(cursor);
+
+            try {
+                switch (type) {
+                    case CommitTask.COLUMN_COMMIT:
+                        column.commit();
+                        break;
+                    case CommitTask.COLUMN_FORCE:
+                        column.force();
+                        break;
+                    case CommitTask.INDEX_COMMIT:
+                        index.commit();
+                        if (force) {
+                            index.force();
+                        }
+                        break;
+                    case CommitTask.INDEX_UPDATE:
+                        FixedColumn col = (FixedColumn) column;
+                        for (long i = lo; i < hi; i++) {
+                            index.add(col.getInt(i), i);
+                        }
+                        index.commit();
+                        break;
+                    case CommitTask.SYMBOL_TABLE_COMMIT:
+                        tab.commit();
+                        if (force) {
+                            tab.force();
+                        }
+                        break;
+                    default:
+                        break;
+                }
+            } catch (Throwable e) {
+                LOG.error().$("Commit task failed: ").$(e).$();
+                if (error == null) {
+                    error = e;
+                }
+            } finally {
+                pending.decrementAndGet();
+            }
+            return true;
+        }
+
+        @Override
+        public void setupThread() {
+        }
+    }
+}
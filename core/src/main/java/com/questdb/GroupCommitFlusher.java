@@ -0,0 +1,288 @@
+/*******************************************************************************
+ *    ___                  _   ____  ____
+ *   / _ \ _   _  ___  ___| |_|  _ \| __ )
+ *  | | | | | | |/ _ \/ __| __| | | |  _ \
+ *  | |_| | |_| |  __/\__ \ |_| |_| | |_) |
+ *   \__\_\\__,_|\___||___/\__|____/|____/
+ *
+ * Copyright (C) 2014-2016 Appsicle
+ *
+ * This program is free software: you can redistribute it and/or  modify
+ * it under the terms of the GNU Affero General Public License, version 3,
+ * as published by the Free Software Foundation.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ *
+ ******************************************************************************/
+
+package com.questdb;
+
+import com.questdb.ex.JournalException;
+import com.questdb.log.Log;
+import com.questdb.log.LogFactory;
+import com.questdb.misc.NamedDaemonThreadFactory;
+import com.questdb.std.LongList;
+import com.questdb.std.ObjHashSet;
+import com.questdb.std.ObjList;
+import com.questdb.store.TxDurabilityListener;
+
+import java.io.File;
+import java.io.FileNotFoundException;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * Background durability thread for group commit. Writer thread commits without forcing and hands over
+ * files it has touched together with transaction number. Flusher waits for commit window to elapse,
+ * so that multiple commits coalesce, then forces every touched file once and reports transactions as
+ * durable.
+ * <p>
+ * Files are forced by name rather than via writer's memory mapped buffers, which writer is free to
+ * unmap or close while flush is in progress. Files are opened read-only, so that file removed or
+ * relocated in the meantime is skipped rather than recreated. Transaction log is always forced last.
+ * <p>
+ * Failure to force files is final. After failed fsync OS may have already dropped dirty pages, so that
+ * later fsync of the same files succeeds without data having reached disk. Failed transaction and every
+ * transaction after it are therefore never reported as durable, and writer refuses further group commits.
+ */
+final class GroupCommitFlusher {
+    private static final Log LOG = LogFactory.getLog(GroupCommitFlusher.class);
+    private final ExecutorService executor;
+    private final CountDownLatch haltLatch = new CountDownLatch(1);
+    private final ReentrantLock lock = new ReentrantLock();
+    private final Condition pendingCondition = lock.newCondition();
+    private final Condition durableCondition = lock.newCondition();
+    private final long windowNanos;
+    private final File txFile;
+    private final ObjHashSet<File> pendingFiles = new ObjHashSet<>();
+    private final ObjList<TxDurabilityListener> pendingListeners = new ObjList<>();
+    private final LongList pendingListenerTxns = new LongList();
+    // owned by flusher thread
+    private final ObjHashSet<File> flushFiles = new ObjHashSet<>();
+    private final ObjList<TxDurabilityListener> flushListeners = new ObjList<>();
+    private final LongList flushListenerTxns = new LongList();
+    private long pendingTxn = -1;
+    private long pendingSince;
+    private long durableTxn = -1;
+    // highest transaction flusher has taken to flush, successfully or not
+    private long attemptedTxn = -1;
+    // lowest transaction, which failed to become durable
+    private long failedTxn = -1;
+    private boolean urgent = false;
+    private boolean running = true;
+
+    GroupCommitFlusher(String name, File txFile, long windowMillis) {
+        this.executor = Executors.newCachedThreadPool(new NamedDaemonThreadFactory("questdb-journal-flusher-" + name, true));
+        this.txFile = txFile;
+        this.windowNanos = TimeUnit.MILLISECONDS.toNanos(windowMillis);
+    }
+
+    void awaitDurable(long txn) throws JournalException {
+        lock.lock();
+        try {
+            while (durableTxn < txn && failedTxn == -1) {
+                if (!running && pendingTxn < txn) {
+                    throw new JournalException("Transaction %d was not scheduled for group commit", txn);
+                }
+                // caller is blocked, there is no reason to wait out commit window
+                urgent = true;
+                pendingCondition.signal();
+                durableCondition.await();
+            }
+            if (durableTxn < txn) {
+                throw new JournalException("Failed to make transaction %d durable", txn);
+            }
+        } catch (InterruptedException e) {
+            throw new JournalException("Interrupted while waiting for transaction %d", e, txn);
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    void halt() {
+        lock.lock();
+        try {
+            running = false;
+            pendingCondition.signal();
+        } finally {
+            lock.unlock();
+        }
+        executor.shutdown();
+        try {
+            haltLatch.await();
+        } catch (InterruptedException ignore) {
+        }
+    }
+
+    boolean isFailed() {
+        lock.lock();
+        try {
+            return failedTxn != -1;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    boolean isDurable(long txn) {
+        lock.lock();
+        try {
+            return durableTxn >= txn;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Schedules files touched by committed transaction to be forced. Set of files is cleared
+     * as a side effect, so that writer can reuse it.
+     *
+     * @param txn      committed transaction number
+     * @param files    files touched by transaction, not including transaction log
+     * @param listener optional listener to be notified when transaction is durable
+     */
+    void schedule(long txn, ObjHashSet<File> files, TxDurabilityListener listener) {
+        lock.lock();
+        try {
+            if (pendingTxn <= attemptedTxn) {
+                pendingSince = System.nanoTime();
+            }
+            pendingFiles.addAll(files);
+            if (txn > pendingTxn) {
+                pendingTxn = txn;
+            }
+            if (listener != null) {
+                pendingListeners.add(listener);
+                pendingListenerTxns.add(txn);
+            }
+            pendingCondition.signal();
+        } finally {
+            lock.unlock();
+        }
+        files.clear();
+    }
+
+    void start() {
+        executor.submit(new Runnable() {
+            @Override
+            public void run() {
+                try {
+                    while (true) {
+                        long txn = awaitWork();
+                        if (txn == -1) {
+                            break;
+                        }
+                        flush(txn);
+                    }
+                } catch (InterruptedException e) {
+                    LOG.error().$("Flusher interrupted").$(e).$();
+                } finally {
+                    haltLatch.countDown();
+                }
+            }
+        });
+    }
+
+    private long awaitWork() throws InterruptedException {
+        lock.lock();
+        try {
+            while (running && pendingTxn <= attemptedTxn && pendingListeners.size() == 0) {
+                pendingCondition.await();
+            }
+
+            long remaining;
+            while (running && !urgent && (remaining = pendingSince + windowNanos - System.nanoTime()) > 0) {
+                pendingCondition.awaitNanos(remaining);
+            }
+
+            if (pendingTxn <= attemptedTxn && pendingListeners.size() == 0) {
+                // halted with nothing left to flush
+                return -1;
+            }
+
+            flushFiles.addAll(pendingFiles);
+            pendingFiles.clear();
+            flushListeners.addAll(pendingListeners);
+            pendingListeners.clear();
+            flushListenerTxns.add(pendingListenerTxns);
+            pendingListenerTxns.clear();
+            urgent = false;
+            attemptedTxn = pendingTxn;
+            return pendingTxn;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    private void flush(long txn) {
+        boolean success = false;
+        // once flush has failed, forcing files again proves nothing
+        if (!isFailed()) {
+            try {
+                for (int i = 0, n = flushFiles.size(); i < n; i++) {
+                    force(flushFiles.get(i));
+                }
+                force(txFile);
+                success = true;
+            } catch (IOException e) {
+                LOG.error().$("Group commit failed to force files of transaction ").$(txn).$(e).$();
+            }
+        }
+
+        lock.lock();
+        try {
+            if (success) {
+                durableTxn = txn;
+            } else if (failedTxn == -1) {
+                // transactions up to durableTxn are safe, everything after may have lost pages
+                failedTxn = durableTxn + 1;
+            }
+            durableCondition.signalAll();
+        } finally {
+            lock.unlock();
+        }
+        flushFiles.clear();
+
+        for (int i = 0, n = flushListeners.size(); i < n; i++) {
+            TxDurabilityListener listener = flushListeners.getQuick(i);
+            try {
+                if (success) {
+                    listener.onDurable(flushListenerTxns.getQuick(i));
+                } else {
+                    listener.onError(flushListenerTxns.getQuick(i));
+                }
+            } catch (Throwable e) {
+                LOG.error().$("Error in listener").$(e).$();
+            }
+        }
+        flushListeners.clear();
+        flushListenerTxns.clear();
+    }
+
+    private static void force(File file) throws IOException {
+        RandomAccessFile raf;
+        try {
+            raf = new RandomAccessFile(file, "r");
+        } catch (FileNotFoundException e) {
+            // file has been removed by rollback, truncate or relocation, there is nothing to force
+            return;
+        }
+
+        try {
+            raf.getChannel().force(true);
+        } finally {
+            raf.close();
+        }
+    }
+}
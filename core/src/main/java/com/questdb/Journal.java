@@ -480,7 +480,21 @@ public class Journal<T> implements Iterable<T>, Closeable {
     }
 
     public boolean refresh() {
+        long address = tx.address;
+        if (isOpen()) {
+            // refresh is the point, after which addresses from previous reads are no longer in use
+            releaseRetired();
+        }
         if (isOpen() && txLog.head(tx)) {
+            if (address > 0 && txLog.isReopenRequired(address)) {
+                // partitions are reopened lazily over their current data directories
+                for (int i = 0, n = partitions.size(); i < n; i++) {
+                    Partition<T> partition = partitions.getQuick(i);
+                    partition.close();
+                    // size of merged partition is evaluated again
+                    partition.applyTx(TX_LIMIT_EVAL, null);
+                }
+            }
             refreshInternal();
             for (int i = 0, sz = symbolTables.size(); i < sz; i++) {
                 symbolTables.getQuick(i).applyTx(tx.symbolTableSizes[i], tx.symbolTableIndexPointers[i]);
@@ -651,6 +665,10 @@ public class Journal<T> implements Iterable<T>, Closeable {
         }
     }
 
+    CommitWorkerPool getCommitWorkerPool() {
+        return null;
+    }
+
     BitSet getInactiveColumns() {
         return inactiveColumns;
     }
@@ -719,6 +737,25 @@ public class Journal<T> implements Iterable<T>, Closeable {
         }
     }
 
+    /**
+     * Unmaps extents retired by growth of journal files, see {@link com.questdb.store.MemoryFile#releaseRetired()}.
+     */
+    void releaseRetired() {
+        for (int i = 0, n = partitions.size(); i < n; i++) {
+            partitions.getQuick(i).releaseRetired();
+        }
+
+        Partition<T> irregular = irregularPartition;
+        if (irregular != null) {
+            irregular.releaseRetired();
+        }
+
+        for (int i = 0, n = symbolTables.size(); i < n; i++) {
+            symbolTables.getQuick(i).releaseRetired();
+        }
+        txLog.releaseRetired();
+    }
+
     void removeIrregularPartitionInternal() {
         if (irregularPartition != null) {
             if (irregularPartition.isOpen()) {
@@ -32,6 +32,16 @@ import java.nio.ByteBuffer;
 public interface JournalEntryWriter {
     void append() throws JournalException;
 
+    /**
+     * Appends block of rows, values of which have been supplied column by column via putBlock() methods.
+     * Columns without block are populated with nulls. Block must be ordered by timestamp, it is split
+     * between partitions as necessary.
+     *
+     * @param count number of rows in block
+     * @throws JournalException if block is out of order or cannot be written
+     */
+    void appendBlock(int count) throws JournalException;
+
     void put(int index, byte value);
 
     void putBin(int index, InputStream value);
@@ -40,6 +50,51 @@ public interface JournalEntryWriter {
 
     void putBin(int index, ByteBuffer buf);
 
+    /**
+     * Supplies values for BYTE and BOOLEAN column of next block.
+     *
+     * @param index  column index
+     * @param values values
+     * @param offset position of first value of block in array
+     */
+    void putBlock(int index, byte[] values, int offset);
+
+    void putBlock(int index, short[] values, int offset);
+
+    /**
+     * Supplies values for INT and SYMBOL column of next block. Symbol values are keys of
+     * journal's symbol table.
+     *
+     * @param index  column index
+     * @param values values
+     * @param offset position of first value of block in array
+     */
+    void putBlock(int index, int[] values, int offset);
+
+    /**
+     * Supplies values for LONG and DATE column of next block.
+     *
+     * @param index  column index
+     * @param values values
+     * @param offset position of first value of block in array
+     */
+    void putBlock(int index, long[] values, int offset);
+
+    void putBlock(int index, float[] values, int offset);
+
+    void putBlock(int index, double[] values, int offset);
+
+    void putBlock(int index, CharSequence[] values, int offset);
+
+    /**
+     * Supplies values for fixed width column of next block from native memory. Values are expected
+     * to be laid out in the same way they are stored in column.
+     *
+     * @param index   column index
+     * @param address address of first value of block
+     */
+    void putBlock(int index, long address);
+
     void putBool(int index, boolean value);
 
     void putDate(int index, long value);
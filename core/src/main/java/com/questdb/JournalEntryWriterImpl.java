@@ -41,6 +41,12 @@ public class JournalEntryWriterImpl implements JournalEntryWriter {
     private final int timestampIndex;
     private final boolean[] skipped;
     private final long[] koTuple;
+    // column blocks are either primitive arrays or native memory, in which case base is null
+    private final boolean[] blockSet;
+    private final Object[] blockBase;
+    private final long[] blockOffset;
+    // end of block array, in the same units as offset, native memory is not checked
+    private final long[] blockLimit;
     private AbstractColumn columns[];
     private SymbolIndexProxy indexProxies[];
     private Partition partition;
@@ -53,6 +59,10 @@ public class JournalEntryWriterImpl implements JournalEntryWriter {
         this.timestampIndex = journal.getMetadata().getTimestampIndex();
         koTuple = new long[meta.length * 2];
         skipped = new boolean[meta.length];
+        blockSet = new boolean[meta.length];
+        blockBase = new Object[meta.length];
+        blockOffset = new long[meta.length];
+        blockLimit = new long[meta.length];
     }
 
     @Override
@@ -71,6 +81,35 @@ public class JournalEntryWriterImpl implements JournalEntryWriter {
         journal.updateTsLo(timestamp);
     }
 
+    @Override
+    public void appendBlock(int count) throws JournalException {
+        try {
+            validateBlock(count);
+            int lo = 0;
+            while (lo < count) {
+                long timestamp = timestampIndex == -1 ? 0 : blockTimestamp(lo);
+                Partition p = journal.getBlockPartition(timestamp);
+                long limit = journal.getBlockTimestampHi();
+                int hi = lo + 1;
+                if (timestampIndex != -1) {
+                    while (hi < count && blockTimestamp(hi) <= limit) {
+                        hi++;
+                    }
+                } else {
+                    hi = count;
+                }
+                appendBlock0(p, lo, hi);
+                if (timestampIndex != -1) {
+                    journal.updateTsLo(blockTimestamp(hi - 1));
+                }
+                lo = hi;
+            }
+        } finally {
+            Arrays.fill(blockSet, false);
+            Arrays.fill(blockBase, null);
+        }
+    }
+
     @Override
     public void put(int index, byte value) {
         assertType(index, ColumnType.BYTE);
@@ -94,6 +133,73 @@ public class JournalEntryWriterImpl implements JournalEntryWriter {
         skip(index);
     }
 
+    @Override
+    public void putBlock(int index, byte[] values, int offset) {
+        if (meta[index].type != ColumnType.BOOLEAN) {
+            assertType(index, ColumnType.BYTE);
+        }
+        checkBlockOffset(index, values.length, offset);
+        setBlock(index, values, Unsafe.BYTE_OFFSET + offset, Unsafe.BYTE_OFFSET + values.length);
+    }
+
+    @Override
+    public void putBlock(int index, short[] values, int offset) {
+        assertType(index, ColumnType.SHORT);
+        checkBlockOffset(index, values.length, offset);
+        setBlock(index, values, Unsafe.SHORT_OFFSET + ((long) offset << 1), Unsafe.SHORT_OFFSET + ((long) values.length << 1));
+    }
+
+    @Override
+    public void putBlock(int index, int[] values, int offset) {
+        if (meta[index].type != ColumnType.SYMBOL) {
+            assertType(index, ColumnType.INT);
+        }
+        checkBlockOffset(index, values.length, offset);
+        setBlock(index, values, Unsafe.INT_OFFSET + ((long) offset << 2), Unsafe.INT_OFFSET + ((long) values.length << 2));
+    }
+
+    @Override
+    public void putBlock(int index, long[] values, int offset) {
+        if (meta[index].type != ColumnType.DATE) {
+            assertType(index, ColumnType.LONG);
+        }
+        checkBlockOffset(index, values.length, offset);
+        setBlock(index, values, Unsafe.LONG_OFFSET + ((long) offset << 3), Unsafe.LONG_OFFSET + ((long) values.length << 3));
+    }
+
+    @Override
+    public void putBlock(int index, float[] values, int offset) {
+        assertType(index, ColumnType.FLOAT);
+        checkBlockOffset(index, values.length, offset);
+        setBlock(index, values, Unsafe.FLOAT_OFFSET + ((long) offset << 2), Unsafe.FLOAT_OFFSET + ((long) values.length << 2));
+    }
+
+    @Override
+    public void putBlock(int index, double[] values, int offset) {
+        assertType(index, ColumnType.DOUBLE);
+        checkBlockOffset(index, values.length, offset);
+        setBlock(index, values, Unsafe.DOUBLE_OFFSET + ((long) offset << 3), Unsafe.DOUBLE_OFFSET + ((long) values.length << 3));
+    }
+
+    @Override
+    public void putBlock(int index, CharSequence[] values, int offset) {
+        assertType(index, ColumnType.STRING);
+        checkBlockOffset(index, values.length, offset);
+        setBlock(index, values, offset, values.length);
+    }
+
+    @Override
+    public void putBlock(int index, long address) {
+        switch (meta[index].type) {
+            case ColumnType.STRING:
+            case ColumnType.BINARY:
+                throw new JournalRuntimeException("Fixed width column expected: " + meta[index].name);
+            default:
+                setBlock(index, null, address, Long.MAX_VALUE);
+                break;
+        }
+    }
+
     @Override
     public void putBool(int index, boolean value) {
         assertType(index, ColumnType.BOOLEAN);
@@ -190,12 +296,77 @@ public class JournalEntryWriterImpl implements JournalEntryWriter {
         skip(index);
     }
 
+    private void appendBlock0(Partition p, int lo, int hi) throws JournalException {
+        setColumns(p);
+        final long rowLo = p.size();
+        final int n = hi - lo;
+
+        for (int i = 0, l = meta.length; i < l; i++) {
+            ColumnMetadata m = meta(i);
+            AbstractColumn col = Unsafe.arrayGet(columns, i);
+            ColumnIndex index = m.indexed ? Unsafe.arrayGet(indexProxies, i).getIndex() : null;
+
+            if (!Unsafe.arrayGet(blockSet, i) || m.type == ColumnType.STRING) {
+                // row by row
+                CharSequence[] strings = (CharSequence[]) Unsafe.arrayGet(blockBase, i);
+                for (int r = 0; r < n; r++) {
+                    if (strings == null) {
+                        putNull(i);
+                    } else {
+                        putString0(i, strings[(int) Unsafe.arrayGet(blockOffset, i) + lo + r]);
+                    }
+                    col.commit();
+                    if (index != null) {
+                        index.add((int) Unsafe.arrayGet(koTuple, i * 2), Unsafe.arrayGet(koTuple, i * 2 + 1));
+                    }
+                }
+                continue;
+            }
+
+            final Object base = Unsafe.arrayGet(blockBase, i);
+            final long offset = Unsafe.arrayGet(blockOffset, i) + ((long) lo) * m.size;
+            col.putBlock(base, offset, ((long) n) * m.size);
+            col.commit();
+
+            if (index != null) {
+                for (int r = 0; r < n; r++) {
+                    int key;
+                    switch (m.type) {
+                        case ColumnType.INT:
+                            key = Unsafe.getUnsafe().getInt(base, offset + r * 4L) & m.distinctCountHint;
+                            key = key < 0 ? -key : key;
+                            break;
+                        case ColumnType.LONG:
+                            key = (int) (Unsafe.getUnsafe().getLong(base, offset + r * 8L) & m.distinctCountHint);
+                            key = key < 0 ? -key : key;
+                            break;
+                        default:
+                            key = Unsafe.getUnsafe().getInt(base, offset + r * 4L);
+                            break;
+                    }
+                    index.add(key, rowLo + r);
+                }
+            }
+        }
+        p.applyTx(Journal.TX_LIMIT_EVAL, null);
+    }
+
     private void assertType(int index, int columnType) {
         if (meta[index].type != columnType) {
             throw new JournalRuntimeException("Expected type: " + meta[index].type);
         }
     }
 
+    private void checkBlockOffset(int index, int length, int offset) {
+        if (offset < 0 || offset > length) {
+            throw new JournalRuntimeException("Offset %d is outside of block of column %s", offset, meta[index].name);
+        }
+    }
+
+    private long blockTimestamp(int row) {
+        return Unsafe.getUnsafe().getLong(Unsafe.arrayGet(blockBase, timestampIndex), Unsafe.arrayGet(blockOffset, timestampIndex) + row * 8L);
+    }
+
     private FixedColumn fixCol(int index) {
         return (FixedColumn) Unsafe.arrayGet(columns, index);
     }
@@ -261,12 +432,23 @@ public class JournalEntryWriterImpl implements JournalEntryWriter {
         }
     }
 
-    void setPartition(Partition partition, long timestamp) {
+    private void setBlock(int index, Object base, long offset, long limit) {
+        Unsafe.arrayPut(blockSet, index, true);
+        Unsafe.arrayPut(blockBase, index, base);
+        Unsafe.arrayPut(blockOffset, index, offset);
+        Unsafe.arrayPut(blockLimit, index, limit);
+    }
+
+    private void setColumns(Partition partition) {
         if (this.partition != partition) {
             this.columns = partition.columns;
             this.partition = partition;
             this.indexProxies = partition.sparseIndexProxies;
         }
+    }
+
+    void setPartition(Partition partition, long timestamp) {
+        setColumns(partition);
         this.timestamp = timestamp;
 
         Arrays.fill(skipped, true);
@@ -280,6 +462,46 @@ public class JournalEntryWriterImpl implements JournalEntryWriter {
         Unsafe.arrayPut(skipped, index, false);
     }
 
+    private void validateBlock(int count) throws JournalException {
+        // arrays are read with Unsafe, check their length before reading anything
+        for (int i = 0, l = meta.length; i < l; i++) {
+            if (Unsafe.arrayGet(blockSet, i)) {
+                ColumnMetadata m = meta(i);
+                long size = m.type == ColumnType.STRING ? 1 : m.size;
+                if (Unsafe.arrayGet(blockLimit, i) - Unsafe.arrayGet(blockOffset, i) < count * size) {
+                    throw new JournalRuntimeException("Block of column %s is shorter than %d rows", m.name, count);
+                }
+            }
+        }
+
+        if (timestampIndex != -1) {
+            if (!Unsafe.arrayGet(blockSet, timestampIndex)) {
+                throw new JournalException("Block of timestamp column %s is required", meta[timestampIndex].name);
+            }
+
+            for (int r = 1; r < count; r++) {
+                if (blockTimestamp(r) < blockTimestamp(r - 1)) {
+                    throw new JournalException("Block is not ordered by timestamp at row %d", r);
+                }
+            }
+        }
+
+        for (int i = 0, l = meta.length; i < l; i++) {
+            ColumnMetadata m = meta(i);
+            if (m.type == ColumnType.SYMBOL && Unsafe.arrayGet(blockSet, i)) {
+                Object base = Unsafe.arrayGet(blockBase, i);
+                long offset = Unsafe.arrayGet(blockOffset, i);
+                int size = m.symbolTable.size();
+                for (int r = 0; r < count; r++) {
+                    int key = Unsafe.getUnsafe().getInt(base, offset + r * 4L);
+                    if (key < SymbolTable.VALUE_IS_NULL || key >= size) {
+                        throw new JournalException("Invalid key %d for symbol %s at row %d", key, m.name, r);
+                    }
+                }
+            }
+        }
+    }
+
     private VariableColumn varCol(int index) {
         return (VariableColumn) Unsafe.arrayGet(columns, index);
     }
@@ -41,6 +41,8 @@ import com.questdb.mp.SCSequence;
 import com.questdb.mp.SPSequence;
 import com.questdb.mp.Sequence;
 import com.questdb.query.ResultSet;
+import com.questdb.std.ObjHashSet;
+import com.questdb.std.ObjList;
 import com.questdb.std.PeekingListIterator;
 import com.questdb.store.*;
 
@@ -60,12 +62,15 @@ import java.util.concurrent.TimeUnit;
 
 public class JournalWriter<T> extends Journal<T> {
     private static final Log LOG = LogFactory.getLog(JournalWriter.class);
+    // lists partitions merged by transaction, which is being committed
+    private static final String MERGE_FILE = "_merge";
     private final long lagMillis;
     private final long lagSwellMillis;
     private final boolean checkOrder;
     private final PeekingListIterator<T> peekingListIterator = new PeekingListIterator<>();
     private final MergingIterator<T> mergingIterator = new MergingIterator<>();
     private final JournalEntryWriterImpl journalEntryWriter;
+    private final ObjHashSet<File> groupCommitFiles = new ObjHashSet<>();
     // discard.txt related
     private final File discardTxt;
     private Lock writeLock;
@@ -82,6 +87,31 @@ public class JournalWriter<T> extends Journal<T> {
     private long appendTimestampHi = -1;
     private RandomAccessFile discardTxtRaf;
     private FlexBufferSink discardSink;
+    private GroupCommitFlusher groupCommitFlusher;
+    private CommitWorkerPool commitWorkerPool;
+    private PartitionPreallocator<T> partitionPreallocator;
+    private long preallocationLeadMillis;
+    private long preallocationTimestamp = Long.MAX_VALUE;
+    private PartitionArchiver<T> archiver;
+    private File coldLocation;
+    private int hotPartitionCount;
+    private long hotMillis;
+    // partitions below this index are relocated to cold location
+    private int coldIndex = 0;
+    // out-of-order related
+    private boolean outOfOrderEnabled = false;
+    private Partition<T> latePartition;
+    private int latePartitionIndexLo = Integer.MAX_VALUE;
+    // partitions below this index are sealed
+    private int sealIndex = 0;
+    private long[] lateRows;
+    private long[] lateTimestamps;
+    private long[] lateScratch;
+    // partitions merged by current transaction and pairs of their superseded and merged data directories
+    private ObjList<Partition<T>> mergedPartitions;
+    private ObjList<File> mergedDirs;
+    // current transaction has replaced data directories, readers must reopen partitions
+    private boolean reopenPartitions;
 
     public JournalWriter(JournalMetadata<T> metadata, JournalKey<T> key) throws JournalException {
         super(metadata, key);
@@ -115,6 +145,11 @@ public class JournalWriter<T> extends Journal<T> {
         if (checkOrder) {
             long timestamp = getTimestamp(obj);
 
+            if (outOfOrderEnabled && timestamp < getAppendTimestampLo()) {
+                getLatePartition(timestamp).append(obj);
+                return;
+            }
+
             if (timestamp > appendTimestampHi) {
                 switchAppendPartition(timestamp);
             }
@@ -124,6 +159,10 @@ public class JournalWriter<T> extends Journal<T> {
                         , appendTimestampLo, Dates.toString(appendTimestampLo), timestamp, Dates.toString(timestamp), this);
             }
 
+            if (timestamp > preallocationTimestamp) {
+                preallocateNextPartition();
+            }
+
             appendPartition.append(obj);
             appendTimestampLo = timestamp;
         } else {
@@ -168,6 +207,20 @@ public class JournalWriter<T> extends Journal<T> {
         }
     }
 
+    /**
+     * Blocks until transaction committed via {@link #commitGroup()} is durable. Commit window is
+     * cut short for the benefit of waiting thread.
+     *
+     * @param txn transaction number returned by commitGroup()
+     * @throws com.questdb.ex.JournalException if transaction could not be forced to disk
+     */
+    public void awaitDurable(long txn) throws JournalException {
+        if (groupCommitFlusher == null) {
+            throw new JournalException("Group commit is not enabled on %s", this);
+        }
+        groupCommitFlusher.awaitDurable(txn);
+    }
+
     public void beginTx() {
         if (!txActive) {
             this.txActive = true;
@@ -182,12 +235,17 @@ public class JournalWriter<T> extends Journal<T> {
                 if (isCommitOnClose()) {
                     commit();
                 }
+                haltGroupCommit();
+                commitWorkerPool = Misc.free(commitWorkerPool);
+                partitionPreallocator = Misc.free(partitionPreallocator);
                 if (partitionCleaner != null) {
                     purgeTempPartitions();
                     partitionCleaner.halt();
                     partitionCleaner = null;
                 }
                 super.close();
+                // partitions are closed, superseded data they held can be purged
+                archiver = Misc.free(archiver);
                 if (writeLock != null) {
                     LockManager.release(writeLock);
                     writeLock = null;
@@ -195,6 +253,7 @@ public class JournalWriter<T> extends Journal<T> {
 
                 Misc.free(discardSink);
                 Misc.free(discardTxtRaf);
+                deleteLatePartition();
             } catch (JournalException e) {
                 throw new JournalRuntimeException(e);
             }
@@ -217,11 +276,22 @@ public class JournalWriter<T> extends Journal<T> {
         return this == o || !(o == null || getClass() != o.getClass()) && getKey().equals(((Journal) o).getKey());
     }
 
+    /**
+     * Waits for partitions queued for sealing or relocation.
+     */
+    void awaitArchiver() {
+        archiver.await();
+    }
+
     @Override
     void closePartitions() {
         super.closePartitions();
         appendPartition = null;
         appendTimestampHi = -1;
+        preallocationTimestamp = Long.MAX_VALUE;
+        if (partitionPreallocator != null) {
+            partitionPreallocator.discard();
+        }
     }
 
     @Override
@@ -233,10 +303,14 @@ public class JournalWriter<T> extends Journal<T> {
         }
 
         try {
+            archiver = new PartitionArchiver<>(this);
+            mergedPartitions = new ObjList<>();
+            mergedDirs = new ObjList<>();
             if (txLog.isEmpty()) {
                 commit(Tx.TX_NORMAL, 0L, 0L);
             }
             txLog.head(tx);
+            recoverMerge();
 
             File meta = new File(getLocation(), JournalConfiguration.FILE_NAME);
             if (!meta.exists()) {
@@ -250,6 +324,7 @@ public class JournalWriter<T> extends Journal<T> {
             beginTx();
             rollback();
             rollbackPartitionDirs();
+            archiver.sweep(null);
 
             if (tx.journalMaxRowID > 0 && getPartitionCount() <= Rows.toPartitionIndex(tx.journalMaxRowID)) {
                 beginTx();
@@ -271,6 +346,7 @@ public class JournalWriter<T> extends Journal<T> {
 
     public void commit(boolean force, long txn, long txPin) throws JournalException {
         if (txActive) {
+            mergeLateRows();
             commit(force ? Tx.TX_FORCE : Tx.TX_NORMAL, txn, txPin);
             notifyTxListener();
             expireOpenFiles();
@@ -282,6 +358,43 @@ public class JournalWriter<T> extends Journal<T> {
         commit(true, -1L, -1L);
     }
 
+    public long commitGroup() throws JournalException {
+        return commitGroup(null);
+    }
+
+    /**
+     * Commits transaction without forcing files on calling thread. Files touched by transaction are
+     * forced by background flusher together with files of other transactions committed within group
+     * commit window. Transaction is visible to readers immediately, but is only guaranteed to survive
+     * OS crash once listener is notified or {@link #awaitDurable(long)} returns.
+     * <p>
+     * Once flusher has failed to force files, transaction is not committed: files of earlier transactions
+     * may have lost their pages and no later transaction can be made durable on top of them.
+     *
+     * @param listener optional listener, which is called on flusher thread once transaction is durable
+     * @return transaction number
+     * @throws com.questdb.ex.JournalException if group commit is not enabled, has failed or commit fails
+     */
+    public long commitGroup(TxDurabilityListener listener) throws JournalException {
+        if (groupCommitFlusher == null) {
+            throw new JournalException("Group commit is not enabled on %s", this);
+        }
+
+        if (groupCommitFlusher.isFailed()) {
+            throw new JournalException("Group commit of %s has failed to force files", this);
+        }
+
+        if (txActive) {
+            mergeLateRows();
+            collectTxFiles();
+            commit();
+        }
+
+        long txn = txLog.getCurrentTxn();
+        groupCommitFlusher.schedule(txn, groupCommitFiles, listener);
+        return txn;
+    }
+
     public void compact() throws JournalException {
         int partitionCount = getPartitionCount();
         for (int i = 0; i < partitionCount; i++) {
@@ -290,7 +403,10 @@ public class JournalWriter<T> extends Journal<T> {
     }
 
     public Partition<T> createPartition(Interval interval, int partitionIndex) throws JournalException {
-        Partition<T> result = new Partition<>(this, interval, partitionIndex, TX_LIMIT_EVAL, null).open();
+        Partition<T> result = partitionPreallocator == null ? null : partitionPreallocator.take(interval, partitionIndex);
+        if (result == null) {
+            result = new Partition<>(this, interval, partitionIndex, TX_LIMIT_EVAL, null).open();
+        }
         partitions.add(result);
         return result;
     }
@@ -307,6 +423,19 @@ public class JournalWriter<T> extends Journal<T> {
         Files.deleteOrException(getLocation());
     }
 
+    /**
+     * Entry writer for appending blocks of rows via {@link JournalEntryWriter#appendBlock(int)}. Values are
+     * copied from column blocks straight into column files, bypassing per-row put() calls and object mapping.
+     *
+     * @return entry writer, which expects putBlock() calls followed by appendBlock()
+     */
+    public JournalEntryWriter blockWriter() {
+        if (!txActive) {
+            beginTx();
+        }
+        return journalEntryWriter;
+    }
+
     public JournalEntryWriter entryWriter() throws JournalException {
         return entryWriter(0);
     }
@@ -317,6 +446,11 @@ public class JournalWriter<T> extends Journal<T> {
         }
 
         if (checkOrder) {
+            if (outOfOrderEnabled && timestamp < getAppendTimestampLo()) {
+                journalEntryWriter.setPartition(getLatePartition(timestamp), timestamp);
+                return journalEntryWriter;
+            }
+
             if (timestamp > appendTimestampHi) {
                 switchAppendPartition(timestamp);
             }
@@ -326,6 +460,10 @@ public class JournalWriter<T> extends Journal<T> {
                         , appendTimestampLo, Dates.toString(appendTimestampLo), timestamp, Dates.toString(timestamp), this);
             }
 
+            if (timestamp > preallocationTimestamp) {
+                preallocateNextPartition();
+            }
+
             journalEntryWriter.setPartition(appendPartition, timestamp);
             return journalEntryWriter;
 
@@ -341,7 +479,7 @@ public class JournalWriter<T> extends Journal<T> {
             Partition<T> par = partitions.getQuick(sz - 1);
             Interval interval = par.getInterval();
             if (interval == null || interval.contains(timestamp)) {
-                return par.open().access();
+                return par.open().unseal().access();
             } else if (interval.isBefore(timestamp)) {
                 return createPartition(new Interval(timestamp, getMetadata().getPartitionBy()), sz);
             } else {
@@ -385,10 +523,45 @@ public class JournalWriter<T> extends Journal<T> {
         return this;
     }
 
+    public boolean isDurable(long txn) {
+        return groupCommitFlusher == null || groupCommitFlusher.isDurable(txn);
+    }
+
+    public boolean isOutOfOrderEnabled() {
+        return outOfOrderEnabled;
+    }
+
+    /**
+     * Enables out-of-order ingestion for ordered journals. Rows older than last appended row are no longer
+     * rejected, instead they are staged in a temp partition and merged into partitions they belong to on
+     * commit. Late rows must belong to one of existing partitions.
+     * <p>
+     * Each partition, which receives late rows, is copied and merged into the copy, which rewrites columns
+     * only from the oldest late row onwards. Copy is published together with transaction, so that crash
+     * leaves either partition before merge or merged partition, but never partial merge. Cost of commit with
+     * late rows is therefore proportional to size of affected partitions. Readers go on reading files they
+     * have open, which are never changed by merge, and reopen partitions when they refresh past the merge.
+     *
+     * @param outOfOrderEnabled true to stage and merge late rows, false to reject them
+     * @return this writer
+     */
+    public JournalWriter<T> setOutOfOrderEnabled(boolean outOfOrderEnabled) {
+        this.outOfOrderEnabled = outOfOrderEnabled;
+        return this;
+    }
+
     public boolean isTxActive() {
         return txActive;
     }
 
+    /**
+     * Merges data into lag partition, rewriting whole of lag partition when data overlaps it.
+     * For feeds with significant jitter consider {@link #setOutOfOrderEnabled(boolean)} instead, which
+     * merges late rows into existing partitions on commit and only rewrites overlapping range.
+     *
+     * @param list data to merge
+     * @throws com.questdb.ex.JournalException if journal is not configured with lag partition
+     */
     public void mergeAppend(List<T> list) throws JournalException {
         this.peekingListIterator.setDelegate(list);
         mergeAppend(this.peekingListIterator);
@@ -565,6 +738,7 @@ public class JournalWriter<T> extends Journal<T> {
 
     public void rollback() throws JournalException {
         if (txActive) {
+            truncateLatePartition();
             rollback0(txLog.getCurrentTxAddress(), false);
             txActive = false;
         }
@@ -574,17 +748,101 @@ public class JournalWriter<T> extends Journal<T> {
         rollback0(txLog.findAddress(txn, txPin), true);
     }
 
+    /**
+     * Enables group commit mode, where {@link #commitGroup()} calls made within given window are
+     * coalesced into single force of touched files by dedicated flusher thread. Zero or negative
+     * window disables group commit, flushing transactions that are still pending.
+     *
+     * @param windowMillis commit window in milliseconds
+     * @return this writer
+     */
+    public JournalWriter<T> setGroupCommitWindow(long windowMillis) {
+        haltGroupCommit();
+        if (windowMillis > 0) {
+            groupCommitFlusher = new GroupCommitFlusher(getLocation().getName(), txLog.getFile(), windowMillis);
+            groupCommitFlusher.start();
+        }
+        return this;
+    }
+
+    /**
+     * Sets number of threads, which commit symbol tables, indexes and columns in parallel. Writer thread
+     * takes part in commit too and transaction record is written only once all parts are complete.
+     * Parallel commit pays off on wide journals with many indexed columns, where serial commit
+     * dominates commit latency. Zero disables parallel commit.
+     *
+     * @param workerCount number of commit threads in addition to writer thread
+     * @return this writer
+     */
+    public JournalWriter<T> setCommitWorkerCount(int workerCount) {
+        commitWorkerPool = Misc.free(commitWorkerPool);
+        if (workerCount > 0) {
+            commitWorkerPool = new CommitWorkerPool(getLocation().getName(), workerCount);
+        }
+        return this;
+    }
+
+    /**
+     * Enables pre-allocation of partitions. Once appended timestamp comes within given lead of the end of
+     * current partition, next partition is created, mapped and pre-touched by background thread, so
+     * that append crossing partition boundary does not block on file creation. Zero or negative lead
+     * disables pre-allocation. Has no effect on journals, which are not partitioned.
+     *
+     * @param leadMillis time before end of partition, when next partition is prepared
+     * @return this writer
+     */
+    public JournalWriter<T> setPartitionPreallocationLead(long leadMillis) {
+        partitionPreallocator = Misc.free(partitionPreallocator);
+        preallocationLeadMillis = leadMillis;
+        if (leadMillis > 0 && getMetadata().getPartitionBy() != PartitionBy.NONE) {
+            partitionPreallocator = new PartitionPreallocator<>(this);
+        }
+        updatePreallocationTimestamp();
+        return this;
+    }
+
+    /**
+     * Enables tiered storage. Partitions, which can no longer be appended to, are moved to cold location
+     * once they fall out of hot set, defined by partition count, age or both. Partitions are moved by
+     * background thread after commit and old files are removed once readers have closed them. Journal
+     * location keeps directory of every partition, so readers and writer open relocated partitions
+     * transparently and queries do not change. Partitions of journals with compressed columns are moved
+     * in compressed read-only form.
+     *
+     * @param location          directory for cold partitions, each journal needs one of its own
+     * @param hotPartitionCount number of most recent partitions to keep in journal location, zero to ignore count
+     * @param hotMillis         partitions, which end more than this before latest timestamp, are moved; zero to ignore age
+     * @return this writer
+     */
+    public JournalWriter<T> setColdStorage(File location, int hotPartitionCount, long hotMillis) {
+        // archiver compares location with absolute paths written to location files
+        this.coldLocation = location == null ? null : location.getAbsoluteFile();
+        this.hotPartitionCount = hotPartitionCount;
+        this.hotMillis = hotMillis;
+        this.coldIndex = 0;
+        if (coldLocation != null) {
+            archiver.sweep(coldLocation);
+        }
+        return this;
+    }
+
     public void setTxListener(TxListener txListener) {
         this.txListener = txListener;
     }
 
     public void truncate() throws JournalException {
         beginTx();
+        archiver.discard();
+        closeMovedPartitions();
         int partitionCount = getPartitionCount();
         for (int i = 0; i < partitionCount; i++) {
             Partition<T> partition = getPartition(i, true);
             partition.truncate(0);
+            File dataDir = partition.getDataDir();
             partition.close();
+            if (!dataDir.equals(partition.getPartitionDir())) {
+                Files.deleteOrException(dataDir);
+            }
             Files.deleteOrException(partition.getPartitionDir());
         }
 
@@ -594,6 +852,8 @@ public class JournalWriter<T> extends Journal<T> {
             getSymbolTable(i).truncate();
         }
         appendTimestampLo = -1;
+        sealIndex = 0;
+        coldIndex = 0;
         commitDurable();
     }
 
@@ -618,12 +878,20 @@ public class JournalWriter<T> extends Journal<T> {
         if (tx.symbolTableIndexPointers == null || tx.symbolTableIndexPointers.length < len) {
             tx.symbolTableIndexPointers = new long[len];
         }
+        if (commitWorkerPool != null) {
+            commitParallel(lag, force);
+        } else {
+            for (int i = 0; i < tx.symbolTableSizes.length; i++) {
+                MMappedSymbolTable tab = getSymbolTable(i);
+                tab.commit();
+                if (force) {
+                    tab.force();
+                }
+            }
+        }
+
         for (int i = 0; i < tx.symbolTableSizes.length; i++) {
             MMappedSymbolTable tab = getSymbolTable(i);
-            tab.commit();
-            if (force) {
-                tab.force();
-            }
             tx.symbolTableSizes[i] = tab.size();
             tx.symbolTableIndexPointers[i] = tab.getIndexTxAddress();
         }
@@ -632,13 +900,14 @@ public class JournalWriter<T> extends Journal<T> {
             tx.indexPointers = new long[metadata.getColumnCount()];
         }
 
-        for (int i = Math.max(txPartitionIndex, 0), sz = nonLagPartitionCount(); i < sz; i++) {
-            Partition<T> p = getPartition(i, true);
-            p.commit();
-            if (force) {
-                p.force();
+        if (commitWorkerPool == null) {
+            for (int i = Math.max(txPartitionIndex, 0), sz = nonLagPartitionCount(); i < sz; i++) {
+                Partition<T> p = getPartition(i, true);
+                p.commit();
+                if (force) {
+                    p.force();
+                }
             }
-
         }
 
         if (partition != null) {
@@ -649,17 +918,88 @@ public class JournalWriter<T> extends Journal<T> {
             tx.lagIndexPointers = new long[tx.indexPointers.length];
         }
         if (lag != null) {
-            lag.commit();
-            if (force) {
-                lag.force();
+            if (commitWorkerPool == null) {
+                lag.commit();
+                if (force) {
+                    lag.force();
+                }
             }
             lag.getIndexPointers(tx.lagIndexPointers);
         }
 
+        boolean merged = mergedPartitions.size() > 0;
+        if (merged) {
+            publishMerged();
+        }
+        if (merged || reopenPartitions) {
+            tx.command |= Tx.TX_REOPEN;
+        }
+
         txLog.write(tx, txn != -1);
-        if (force) {
+        if (force || merged) {
+            // merge is complete only once transaction is durable
             txLog.force();
         }
+        if (merged) {
+            completeMerge();
+        }
+        reopenPartitions = false;
+        // commit is the point, after which writer holds no addresses into extents retired by growth
+        releaseRetired();
+
+        if (metadata.isCompressed()) {
+            sealPartitions();
+        }
+
+        closeMovedPartitions();
+        if (coldLocation != null) {
+            relocatePartitions();
+        }
+    }
+
+    /**
+     * Closes partitions, which have been moved or sealed by archiver, so that they are reopened over new
+     * data directory, old files can be purged and writer does not change files shared with sealed version.
+     */
+    private void closeMovedPartitions() {
+        int index;
+        while ((index = archiver.pollMoved()) > -1) {
+            if (index < nonLagPartitionCount()) {
+                partitions.getQuick(index).close();
+            }
+        }
+        archiver.purge();
+    }
+
+    private void commitParallel(Partition<T> lag, boolean force) throws JournalException {
+        for (int i = 0, sz = getSymbolTableCount(); i < sz; i++) {
+            commitWorkerPool.submitSymbolTableCommit(getSymbolTable(i), force);
+        }
+
+        for (int i = Math.max(txPartitionIndex, 0), sz = nonLagPartitionCount(); i < sz; i++) {
+            getPartition(i, true).commit(commitWorkerPool, force);
+        }
+
+        if (lag != null) {
+            lag.commit(commitWorkerPool, force);
+        }
+
+        commitWorkerPool.await();
+    }
+
+    private void collectTxFiles() throws JournalException {
+        for (int i = Math.max(txPartitionIndex, 0), sz = nonLagPartitionCount(); i < sz; i++) {
+            getPartition(i, true).getFiles(groupCommitFiles);
+        }
+
+        Partition<T> lag = getIrregularPartition();
+        if (lag != null) {
+            lag.open().getFiles(groupCommitFiles);
+        }
+
+        for (int i = 0, sz = getSymbolTableCount(); i < sz; i++) {
+            getSymbolTable(i).getFiles(groupCommitFiles);
+        }
     }
 
     private Partition<T> createTempPartition() {
@@ -673,7 +1013,7 @@ public class JournalWriter<T> extends Journal<T> {
 
         int count = nonLagPartitionCount();
         if (count > 0) {
-            return appendPartition = getPartition(count - 1, true);
+            return appendPartition = getPartition(count - 1, true).unseal();
         } else {
             if (getMetadata().getPartitionBy() != PartitionBy.NONE) {
                 throw new JournalException("getAppendPartition() without timestamp on partitioned journal: %s", this);
@@ -682,12 +1022,248 @@ public class JournalWriter<T> extends Journal<T> {
         }
     }
 
+    /**
+     * Supersedes data directories replaced by merge, once transaction, which merge belongs to, is durable.
+     *
+     * @throws JournalException if merge marker cannot be removed
+     */
+    private void completeMerge() throws JournalException {
+        for (int i = 0, n = mergedPartitions.size(); i < n; i++) {
+            archiver.supersede(mergedPartitions.getQuick(i).getPartitionDir(), mergedDirs.getQuick(2 * i));
+        }
+        mergedPartitions.clear();
+        mergedDirs.clear();
+
+        // marker outliving transaction would roll forward to directories, which may have been replaced since
+        File marker = new File(getLocation(), MERGE_FILE);
+        if (!marker.delete()) {
+            throw new JournalException("Cannot delete %s", marker);
+        }
+        Files.fsyncOrException(getLocation());
+    }
+
+    private void deleteLatePartition() throws JournalException {
+        if (latePartition != null) {
+            latePartition.close();
+            Files.deleteOrException(latePartition.getPartitionDir());
+            latePartition = null;
+        }
+    }
+
+    /**
+     * Drops private copies of partitions merged by transaction, which is rolled back. Partitions are moved
+     * back onto data directories they had before merge.
+     *
+     * @throws JournalException if location of partition cannot be restored
+     */
+    private void discardMerged() throws JournalException {
+        for (int i = 0, n = mergedPartitions.size(); i < n; i++) {
+            Partition<T> partition = mergedPartitions.getQuick(i);
+            File staged = mergedDirs.getQuick(2 * i + 1);
+            if (staged.equals(Partition.readDataDir(partition.getPartitionDir()))) {
+                Partition.publishDataDir(partition.getPartitionDir(), mergedDirs.getQuick(2 * i));
+            }
+            partition.close();
+            Files.delete(staged);
+        }
+        mergedPartitions.clear();
+        mergedDirs.clear();
+        Files.delete(new File(getLocation(), MERGE_FILE));
+    }
+
+    private Partition<T> getLatePartition(long timestamp) throws JournalException {
+        int partitionIndex = -1;
+        for (int i = nonLagPartitionCount() - 1; i > -1; i--) {
+            Interval interval = partitions.getQuick(i).getInterval();
+            if (interval == null || interval.contains(timestamp)) {
+                partitionIndex = i;
+                break;
+            }
+        }
+
+        if (partitionIndex == -1) {
+            throw new JournalException("There is no partition for out-of-order timestamp %s in %s", Dates.toString(timestamp), this);
+        }
+
+        if (partitionIndex < latePartitionIndexLo) {
+            latePartitionIndexLo = partitionIndex;
+        }
+
+        if (latePartition == null) {
+            File dir = new File(getLocation(), Constants.TEMP_DIRECTORY_PREFIX + ".late");
+            if (dir.exists()) {
+                // left behind by writer that did not close cleanly
+                Files.deleteOrException(dir);
+            }
+            latePartition = new TempPartition<>(this, null, -1, dir.getName());
+        }
+        return latePartition.open();
+    }
+
+    private void haltGroupCommit() {
+        if (groupCommitFlusher != null) {
+            groupCommitFlusher.halt();
+            groupCommitFlusher = null;
+        }
+    }
+
+    /**
+     * Sorts rows staged in late partition by timestamp and merges them into partitions they belong to.
+     * Partitions are merged independently, each from its own oldest late row.
+     *
+     * @throws JournalException if partition cannot be opened or merged
+     */
+    private void mergeLateRows() throws JournalException {
+        if (latePartition == null || latePartition.size() == 0) {
+            return;
+        }
+
+        final int count = (int) latePartition.size();
+        if (lateRows == null || lateRows.length < count) {
+            lateRows = new long[count];
+            lateTimestamps = new long[count];
+            lateScratch = new long[count + 1];
+        }
+
+        // merge leaves files of partitions intact, so archiver job in flight may keep reading them,
+        // it just must not replace partitions, which are merged
+        archiver.cancel();
+        closeMovedPartitions();
+
+        FixedColumn ts = latePartition.getTimestampColumn();
+        for (int i = 0; i < count; i++) {
+            lateRows[i] = i;
+            lateTimestamps[i] = ts.getLong(i);
+        }
+        sortLateRows(0, count - 1);
+
+        int lo = 0;
+        for (int i = latePartitionIndexLo, n = nonLagPartitionCount(); i < n && lo < count; i++) {
+            Partition<T> partition = getPartition(i, true);
+            Interval interval = partition.getInterval();
+            int hi = lo;
+            while (hi < count && (interval == null || interval.contains(lateTimestamps[hi]))) {
+                hi++;
+            }
+
+            if (hi > lo) {
+                // rows are merged into private copy of partition, which is published with transaction
+                mergedDirs.add(partition.stage());
+                mergedDirs.add(partition.getDataDir());
+                mergedPartitions.add(partition);
+                partition.mergeLate(latePartition, lateRows, lo, hi);
+                lo = hi;
+            }
+        }
+
+        // partitions before append partition have changed too
+        if (latePartitionIndexLo < txPartitionIndex) {
+            txPartitionIndex = latePartitionIndexLo;
+        }
+        if (latePartitionIndexLo < sealIndex) {
+            sealIndex = latePartitionIndexLo;
+        }
+        if (latePartitionIndexLo < coldIndex) {
+            coldIndex = latePartitionIndexLo;
+        }
+        truncateLatePartition();
+    }
+
     private void notifyTxListener() {
         if (txListener != null) {
             txListener.onCommit();
         }
     }
 
+    private void preallocateNextPartition() {
+        preallocationTimestamp = Long.MAX_VALUE;
+        partitionPreallocator.prepare(new Interval(appendTimestampHi + 1, getMetadata().getPartitionBy()), partitions.size());
+    }
+
+    /**
+     * Publishes partitions merged by transaction ahead of transaction itself. Merged copies are forced and
+     * merge marker, which holds transaction address merge is based on and data directories of merged partitions,
+     * is written before any partition is published. Writer, which opens journal after crash, uses marker to
+     * complete merge if transaction has made it to disk and to restore superseded data directories otherwise.
+     *
+     * @throws JournalException if partitions cannot be forced or published
+     */
+    private void publishMerged() throws JournalException {
+        StringBuilder b = new StringBuilder().append(txLog.getCurrentTxAddress()).append('\n');
+        for (int i = 0, n = mergedPartitions.size(); i < n; i++) {
+            Partition<T> partition = mergedPartitions.getQuick(i);
+            File staged = mergedDirs.getQuick(2 * i + 1);
+            partition.force();
+            Files.fsyncOrException(staged);
+            Files.fsyncOrException(staged.getParentFile());
+            b.append(partition.getPartitionDir().getAbsolutePath()).append('\n');
+            b.append(mergedDirs.getQuick(2 * i).getAbsolutePath()).append('\n');
+            b.append(staged.getAbsolutePath()).append('\n');
+        }
+        Files.writeStringToFileAtomically(new File(getLocation(), MERGE_FILE), b.toString());
+
+        for (int i = 0, n = mergedPartitions.size(); i < n; i++) {
+            Partition.publishDataDir(mergedPartitions.getQuick(i).getPartitionDir(), mergedDirs.getQuick(2 * i + 1));
+        }
+    }
+
+    /**
+     * Completes or reverts merge, which has been interrupted by crash, see {@link #publishMerged()}. Merge is
+     * complete when current transaction is not the one merge was based on.
+     *
+     * @throws JournalException if merge marker cannot be read or locations cannot be written
+     */
+    private void recoverMerge() throws JournalException {
+        File marker = new File(getLocation(), MERGE_FILE);
+        if (!marker.exists()) {
+            return;
+        }
+
+        String[] lines = Files.readStringFromFile(marker).split("\n");
+        boolean committed = Long.parseLong(lines[0]) != txLog.getCurrentTxAddress();
+        for (int i = 1; i + 2 < lines.length; i += 3) {
+            File partitionDir = new File(lines[i]);
+            File superseded = new File(lines[i + 1]);
+            File staged = new File(lines[i + 2]);
+            File current = Partition.readDataDir(partitionDir);
+            if (committed) {
+                if (!staged.equals(current) && staged.exists()) {
+                    Partition.publishDataDir(partitionDir, staged);
+                }
+            } else {
+                if (!superseded.equals(current)) {
+                    Partition.publishDataDir(partitionDir, superseded);
+                }
+                Files.delete(staged);
+            }
+        }
+        Files.deleteOrException(marker);
+        LOG.info().$("Journal ").$(getLocation()).$(committed ? " completed" : " reverted").$(" interrupted merge").$();
+    }
+
+    /**
+     * Submits partitions, which fell out of hot set, for relocation to cold location. Partitions are ordered
+     * by time, so relocation stops at first partition that is still hot.
+     *
+     * @throws JournalException if max timestamp cannot be read
+     */
+    private void relocatePartitions() throws JournalException {
+        int count = nonLagPartitionCount();
+        long hotLo = hotMillis > 0 ? getMaxTimestamp() - hotMillis : Long.MIN_VALUE;
+        for (int i = coldIndex; i < count - 1; i++) {
+            // bypass getPartition(), relocation must not make old partition look recently used
+            Partition<T> p = partitions.getQuick(i);
+            boolean cold = (hotPartitionCount > 0 && i < count - hotPartitionCount)
+                    || (p.getInterval() != null && p.getInterval().getHi() < hotLo);
+            if (!cold) {
+                break;
+            }
+
+            archiver.relocate(i, p.getPartitionDir(), coldLocation);
+            coldIndex = i + 1;
+        }
+    }
+
     private void replaceIrregularPartition(Partition<T> temp) {
         setIrregularPartition(temp);
         purgeTempPartitions();
@@ -706,6 +1282,11 @@ public class JournalWriter<T> extends Journal<T> {
             throw new JournalException("Invalid transaction address");
         }
 
+        // archiver must not copy partitions while they are truncated
+        archiver.discard();
+        closeMovedPartitions();
+        discardMerged();
+
         if (writeDiscard) {
             LOG.info().$("Journal").$(metadata.getLocation()).$(" is rolling back to transaction ").$(tx.txn).$(", timestamp ").$ts(tx.timestamp).$();
             writeDiscardFile(tx.journalMaxRowID);
@@ -738,6 +1319,8 @@ public class JournalWriter<T> extends Journal<T> {
         appendTimestampLo = -1;
         appendTimestampHi = -1;
         appendPartition = null;
+        sealIndex = 0;
+        coldIndex = 0;
         txLog.writeTxAddress(tx.address);
         txActive = false;
     }
@@ -779,6 +1362,43 @@ public class JournalWriter<T> extends Journal<T> {
         }
     }
 
+    /**
+     * Stable merge sort of late rows by timestamp, so that late rows with identical timestamps keep their
+     * order of arrival.
+     */
+    private void sortLateRows(int lo, int hi) {
+        if (lo >= hi) {
+            return;
+        }
+
+        int mid = (lo + hi) >>> 1;
+        sortLateRows(lo, mid);
+        sortLateRows(mid + 1, hi);
+
+        if (lateTimestamps[mid] <= lateTimestamps[mid + 1]) {
+            return;
+        }
+
+        // move left half out of the way and merge it back with right half
+        int n = mid - lo + 1;
+        System.arraycopy(lateTimestamps, lo, lateScratch, 0, n);
+        System.arraycopy(lateRows, lo, lateScratch, n, n);
+        int i = 0, j = mid + 1, k = lo;
+        while (i < n && j <= hi) {
+            if (lateTimestamps[j] < lateScratch[i]) {
+                lateTimestamps[k] = lateTimestamps[j];
+                lateRows[k++] = lateRows[j++];
+            } else {
+                lateTimestamps[k] = lateScratch[i];
+                lateRows[k++] = lateScratch[n + i++];
+            }
+        }
+        while (i < n) {
+            lateTimestamps[k] = lateScratch[i];
+            lateRows[k++] = lateScratch[n + i++];
+        }
+    }
+
     private void splitAppend(Iterator<T> it, long hard, long soft, Partition<T> partition) throws JournalException {
         while (it.hasNext()) {
             T obj = it.next();
@@ -804,6 +1424,20 @@ public class JournalWriter<T> extends Journal<T> {
         splitAppend(mergingIterator.$new(a, b, getTimestampComparator()), hard, soft, temp);
     }
 
+    /**
+     * Submits committed partitions, which cannot be appended to anymore, i.e. all but last non-lag partition,
+     * for sealing. Sealing is queued before relocation, so that partitions are moved in sealed form.
+     */
+    private void sealPartitions() {
+        int hi = nonLagPartitionCount() - 1;
+        for (int i = sealIndex; i < hi; i++) {
+            archiver.seal(i, partitions.getQuick(i).getPartitionDir());
+        }
+        if (hi > sealIndex) {
+            sealIndex = hi;
+        }
+    }
+
     private void switchAppendPartition(long timestamp) throws JournalException {
         boolean computeTimestampLo = appendPartition == null;
 
@@ -816,6 +1450,8 @@ public class JournalWriter<T> extends Journal<T> {
             appendTimestampHi = interval.getHi();
         }
 
+        updatePreallocationTimestamp();
+
         if (computeTimestampLo) {
             FixedColumn column = appendPartition.getTimestampColumn();
             long sz;
@@ -827,8 +1463,60 @@ public class JournalWriter<T> extends Journal<T> {
         }
     }
 
-    void updateTsLo(long ts) {
+    Partition<T> getBlockPartition(long timestamp) throws JournalException {
+        if (!txActive) {
+            beginTx();
+        }
+
         if (checkOrder) {
+            if (timestamp > appendTimestampHi) {
+                switchAppendPartition(timestamp);
+            }
+
+            if (timestamp < appendTimestampLo) {
+                throw new JournalException("Cannot insert records out of order. maxHardTimestamp=%d (%s), timestamp=%d (%s): %s"
+                        , appendTimestampLo, Dates.toString(appendTimestampLo), timestamp, Dates.toString(timestamp), this);
+            }
+
+            if (timestamp > preallocationTimestamp) {
+                preallocateNextPartition();
+            }
+            return appendPartition;
+        }
+        return getAppendPartition();
+    }
+
+    @Override
+    CommitWorkerPool getCommitWorkerPool() {
+        return commitWorkerPool;
+    }
+
+    long getBlockTimestampHi() {
+        return checkOrder ? appendTimestampHi : Long.MAX_VALUE;
+    }
+
+    private void truncateLatePartition() throws JournalException {
+        if (latePartition != null) {
+            latePartition.truncate(0);
+            latePartitionIndexLo = Integer.MAX_VALUE;
+        }
+    }
+
+    private void updatePreallocationTimestamp() {
+        if (partitionPreallocator == null || appendPartition == null || appendTimestampHi == Long.MAX_VALUE) {
+            preallocationTimestamp = Long.MAX_VALUE;
+        } else {
+            preallocationTimestamp = appendTimestampHi - preallocationLeadMillis;
+        }
+    }
+
+    boolean publishDataDir(File partitionDir, File expected, File dataDir) throws JournalException {
+        reopenPartitions = true;
+        return archiver.publish(partitionDir, expected, dataDir);
+    }
+
+    void updateTsLo(long ts) {
+        if (checkOrder && ts > appendTimestampLo) {
             appendTimestampLo = ts;
         }
     }
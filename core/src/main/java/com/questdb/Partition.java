@@ -33,17 +33,28 @@ import com.questdb.log.LogFactory;
 import com.questdb.misc.*;
 import com.questdb.std.CharSink;
 import com.questdb.std.DirectInputStream;
+import com.questdb.std.ObjHashSet;
 import com.questdb.std.ObjList;
 import com.questdb.store.*;
 
 import java.io.Closeable;
 import java.io.File;
+import java.io.FileFilter;
 import java.io.OutputStream;
 import java.nio.ByteBuffer;
 import java.util.Iterator;
 import java.util.concurrent.TimeUnit;
 
 public class Partition<T> implements Closeable {
+    // present in partition directory when files of partition are elsewhere, holds their location
+    static final String LOCATION_FILE = "_location";
+    // files of partition, which are data, as opposed to location and lock files
+    static final FileFilter DATA_FILTER = new FileFilter() {
+        @Override
+        public boolean accept(File f) {
+            return f.isFile() && !f.getName().startsWith(LOCATION_FILE) && !f.getName().endsWith(".lock");
+        }
+    };
     private static final Log LOG = LogFactory.getLog(Partition.class);
     private final Journal<T> journal;
     private final ObjList<SymbolIndexProxy<T>> indexProxies = new ObjList<>();
@@ -54,9 +65,13 @@ public class Partition<T> implements Closeable {
     AbstractColumn[] columns;
     private int partitionIndex;
     private File partitionDir;
+    private File dataDir;
+    private Lock dataLock;
     private long lastAccessed = System.currentTimeMillis();
     private long txLimit;
     private FixedColumn timestampColumn;
+    private boolean sealed;
+    private PartitionStatistics statistics;
 
     Partition(Journal<T> journal, Interval interval, int partitionIndex, long txLimit, long[] indexTxAddresses) {
         JournalMetadata<T> meta = journal.getMetadata();
@@ -102,6 +117,10 @@ public class Partition<T> implements Closeable {
         for (int i = 0, k = indexProxies.size(); i < k; i++) {
             Misc.free(indexProxies.getQuick(i));
         }
+
+        statistics = Misc.free(statistics);
+        // partition may be relocated while closed
+        releaseDataDir();
     }
 
     public void commitColumns() {
@@ -109,6 +128,12 @@ public class Partition<T> implements Closeable {
         // this is because size of partition is calculated by size of
         // last column. If below loop is to break in the middle partition will assume smallest
         // column size.
+        CommitWorkerPool pool = journal.getCommitWorkerPool();
+        if (pool != null) {
+            commitColumns(pool);
+            return;
+        }
+
         for (int i = 0; i < columnCount; i++) {
             AbstractColumn col = Unsafe.arrayGet(columns, i);
             if (col != null) {
@@ -177,11 +202,11 @@ public class Partition<T> implements Closeable {
         return varCol(columnIndex).getFlyweightStrB(localRowID);
     }
 
-    public KVIndex getIndexForColumn(String columnName) throws JournalException {
+    public ColumnIndex getIndexForColumn(String columnName) throws JournalException {
         return getIndexForColumn(journal.getMetadata().getColumnIndex(columnName));
     }
 
-    public KVIndex getIndexForColumn(final int columnIndex) throws JournalException {
+    public ColumnIndex getIndexForColumn(final int columnIndex) throws JournalException {
         SymbolIndexProxy h = sparseIndexProxies[columnIndex];
         if (h == null) {
             throw new JournalException("There is no index for column '%s' in %s", columnMetadata[columnIndex].name, this);
@@ -252,6 +277,19 @@ public class Partition<T> implements Closeable {
         }
     }
 
+    /**
+     * Column statistics of this partition, which can be used to skip rows that cannot satisfy filter.
+     *
+     * @return statistics or null when partition has none
+     * @throws JournalException if statistics file cannot be opened
+     */
+    public PartitionStatistics getStatistics() throws JournalException {
+        if (statistics == null && PartitionStatistics.exists(getDataDir())) {
+            statistics = new PartitionStatistics(getDataDir(), columnMetadata, journal.getMetadata().getTimestampIndex(), journal.getMode());
+        }
+        return statistics;
+    }
+
     public FixedColumn getTimestampColumn() {
         if (timestampColumn == null) {
             throw new JournalRuntimeException("There is no timestamp column in: " + this);
@@ -279,6 +317,21 @@ public class Partition<T> implements Closeable {
         return this;
     }
 
+    /**
+     * Preloads fixed width columns of open partition up to and including row hi, so that
+     * these rows can be read by several threads at once.
+     *
+     * @param hi last row to preload
+     */
+    public void preload(long hi) {
+        for (int i = 0; i < columnCount; i++) {
+            AbstractColumn c = Unsafe.arrayGet(columns, i);
+            if (c instanceof FixedColumn) {
+                c.preload(c.getOffset(hi + 1));
+            }
+        }
+    }
+
     public T read(long localRowID) {
         T obj = journal.newObject();
         read(localRowID, obj);
@@ -377,9 +430,19 @@ public class Partition<T> implements Closeable {
     public void updateIndexes(long oldSize, long newSize) {
         if (oldSize < newSize) {
             try {
+                CommitWorkerPool pool = journal.getCommitWorkerPool();
+                if (pool != null && indexProxies.size() > 1) {
+                    for (int n = 0, k = indexProxies.size(); n < k; n++) {
+                        SymbolIndexProxy<T> proxy = indexProxies.getQuick(n);
+                        pool.submitIndexUpdate(proxy.getIndex(), fixCol(proxy.getColumnIndex()), oldSize, newSize);
+                    }
+                    pool.await();
+                    return;
+                }
+
                 for (int n = 0, k = indexProxies.size(); n < k; n++) {
                     SymbolIndexProxy<T> proxy = indexProxies.getQuick(n);
-                    KVIndex index = proxy.getIndex();
+                    ColumnIndex index = proxy.getIndex();
                     FixedColumn col = fixCol(proxy.getColumnIndex());
                     for (long i = oldSize; i < newSize; i++) {
                         index.add(col.getInt(i), i);
@@ -493,6 +556,23 @@ public class Partition<T> implements Closeable {
         applyTx(Journal.TX_LIMIT_EVAL, null);
     }
 
+    private void updateStatistics() throws JournalException {
+        if (columns == null) {
+            return;
+        }
+
+        if (statistics == null) {
+            statistics = new PartitionStatistics(getDataDir(), columnMetadata, journal.getMetadata().getTimestampIndex(), journal.getMode());
+        }
+        statistics.update(columns, size());
+    }
+
+    private void closeColumns() {
+        closePartiallyOpenColumns();
+        columns = null;
+        timestampColumn = null;
+    }
+
     private void closePartiallyOpenColumns() {
         for (int i = 0, n = columns.length; i < n; i++) {
             AbstractColumn c = columns[i];
@@ -507,6 +587,62 @@ public class Partition<T> implements Closeable {
         for (int i = 0, k = indexProxies.size(); i < k; i++) {
             indexProxies.getQuick(i).getIndex().commit();
         }
+        updateStatistics();
+    }
+
+    /**
+     * Submits index commits and, when forced, column and index flushes to commit pool. Caller
+     * is expected to await pool before reading index pointers of this partition.
+     *
+     * @param pool  commit pool
+     * @param force true to force files to disk
+     * @throws JournalException if index cannot be opened
+     */
+    void commit(CommitWorkerPool pool, boolean force) throws JournalException {
+        for (int i = 0, k = indexProxies.size(); i < k; i++) {
+            pool.submitIndexCommit(indexProxies.getQuick(i).getIndex(), force);
+        }
+
+        if (force && columns != null) {
+            for (int i = 0; i < columns.length; i++) {
+                AbstractColumn column = Unsafe.arrayGet(columns, i);
+                if (column != null) {
+                    pool.submitColumnForce(column);
+                }
+            }
+        }
+
+        updateStatistics();
+        if (force && statistics != null) {
+            statistics.force();
+        }
+    }
+
+    private void commitColumns(CommitWorkerPool pool) {
+        // all but last column are committed in parallel, last column
+        // is committed once others are complete to keep partition size consistent
+        int last = columnCount - 1;
+        while (last > -1 && Unsafe.arrayGet(columns, last) == null) {
+            last--;
+        }
+
+        if (last < 0) {
+            return;
+        }
+
+        for (int i = 0; i < last; i++) {
+            AbstractColumn col = Unsafe.arrayGet(columns, i);
+            if (col != null) {
+                pool.submitColumnCommit(col);
+            }
+        }
+
+        try {
+            pool.await();
+        } catch (JournalException e) {
+            throw new JournalRuntimeException(e);
+        }
+        Unsafe.arrayGet(columns, last).commit();
     }
 
     @SuppressWarnings("unchecked")
@@ -540,6 +676,25 @@ public class Partition<T> implements Closeable {
                 }
             }
         }
+
+        if (statistics != null) {
+            statistics.force();
+        }
+    }
+
+    void getFiles(ObjHashSet<File> files) throws JournalException {
+        if (columns != null) {
+            for (int i = 0; i < columns.length; i++) {
+                AbstractColumn column = Unsafe.arrayGet(columns, i);
+                if (column != null) {
+                    column.getFiles(files);
+                }
+            }
+        }
+
+        for (int i = 0, k = indexProxies.size(); i < k; i++) {
+            indexProxies.getQuick(i).getIndex().getFiles(files);
+        }
     }
 
     void getIndexPointers(long[] pointers) throws JournalException {
@@ -549,39 +704,239 @@ public class Partition<T> implements Closeable {
         }
     }
 
+    /**
+     * Directory with files of this partition. It is partition directory itself unless files have been
+     * relocated, in which case partition directory only holds location of files. Partition holds shared
+     * lock on its data directory until closed, so that data directory superseded meanwhile is not
+     * purged from under open files and lazily opened indexes.
+     *
+     * @return directory with column, index and statistics files
+     * @throws JournalException if location of relocated partition cannot be read or locked
+     */
+    File getDataDir() throws JournalException {
+        for (int attempt = 0; dataDir == null; attempt++) {
+            File dir = readDataDir(partitionDir);
+            Lock lock = LockManager.lockShared(dir);
+            // location may have changed and old files purged before lock was taken
+            if (lock != null && lock.isValid() && dir.equals(readDataDir(partitionDir))) {
+                dataDir = dir;
+                dataLock = lock;
+            } else {
+                LockManager.release(lock);
+                if (attempt > 2) {
+                    throw new JournalException("Cannot lock %s", dir);
+                }
+            }
+        }
+        return dataDir;
+    }
+
+    boolean isRelocated() throws JournalException {
+        return !getDataDir().equals(partitionDir);
+    }
+
+    /**
+     * Merges out-of-order rows staged in another partition into this partition. Partition is expected
+     * to be on private copy of its data, see {@link #stage()}. Columns are rewritten
+     * one at a time and only from the first row newer than the oldest late row, i.e. the overlapping
+     * range. Overlapping tail of this partition is copied into native memory, so fixed width values
+     * are moved in page-sized blocks and variable width values are moved verbatim with their offsets
+     * recomputed on append. Indexes are truncated to beginning of overlap and rebuilt for the rest.
+     *
+     * @param late partition with staged rows
+     * @param rows local row ids of staged rows sorted by timestamp
+     * @param lo   first element of rows to merge, inclusive
+     * @param hi   last element of rows to merge, exclusive
+     * @throws JournalException if index cannot be updated
+     */
+    void mergeLate(Partition<T> late, long[] rows, int lo, int hi) throws JournalException {
+        final FixedColumn ts = getTimestampColumn();
+        final FixedColumn lateTs = late.getTimestampColumn();
+        final long size = size();
+        final long mergeLo = indexOf(lateTs.getLong(rows[lo]), BSearchType.OLDER_OR_SAME) + 1;
+        final long tail = size - mergeLo;
+
+        // merge order, non-negative values are offsets in tail of this partition
+        // and negative values are encoded rows of late partition
+        final long[] order = new long[(int) (tail + hi - lo)];
+        int k = 0;
+        long t = 0;
+        int l = lo;
+        while (t < tail && l < hi) {
+            if (lateTs.getLong(rows[l]) < ts.getLong(mergeLo + t)) {
+                order[k++] = -rows[l++] - 1;
+            } else {
+                order[k++] = t++;
+            }
+        }
+        while (t < tail) {
+            order[k++] = t++;
+        }
+        while (l < hi) {
+            order[k++] = -rows[l++] - 1;
+        }
+
+        long buf = 0;
+        long bufSize = 0;
+        try {
+            for (int i = 0; i < columnCount; i++) {
+                AbstractColumn column = Unsafe.arrayGet(columns, i);
+                AbstractColumn lateColumn = Unsafe.arrayGet(late.columns, i);
+
+                if (column instanceof VariableColumn) {
+                    VariableColumn col = (VariableColumn) column;
+                    VariableColumn src = (VariableColumn) lateColumn;
+                    long dataLo = tail > 0 ? col.getOffset(mergeLo) : col.getOffset();
+                    long dataSize = col.getOffset() - dataLo;
+                    // tail data followed by tail offsets relative to start of tail data
+                    long required = dataSize + tail * 8;
+                    if (required > bufSize) {
+                        buf = realloc(buf, bufSize, required);
+                        bufSize = required;
+                    }
+                    col.copyTo(dataLo, dataSize, buf);
+                    long offsets = buf + dataSize;
+                    for (long r = 0; r < tail; r++) {
+                        Unsafe.getUnsafe().putLong(offsets + r * 8, col.getOffset(mergeLo + r) - dataLo);
+                    }
+
+                    col.truncate(mergeLo);
+                    col.commit();
+
+                    for (int n = 0; n < k; n++) {
+                        long o = order[n];
+                        if (o < 0) {
+                            col.putRaw(src, -o - 1);
+                        } else {
+                            long valueLo = Unsafe.getUnsafe().getLong(offsets + o * 8);
+                            long valueHi = o + 1 < tail ? Unsafe.getUnsafe().getLong(offsets + o * 8 + 8) : dataSize;
+                            col.putRaw(buf + valueLo, valueHi - valueLo);
+                        }
+                        col.commit();
+                    }
+                } else {
+                    FixedColumn col = (FixedColumn) column;
+                    FixedColumn src = (FixedColumn) lateColumn;
+                    int width = columnMetadata[i].size;
+                    long dataLo = col.getOffset(mergeLo);
+                    long required = tail * width;
+                    if (required > bufSize) {
+                        buf = realloc(buf, bufSize, required);
+                        bufSize = required;
+                    }
+                    col.copyTo(dataLo, required, buf);
+                    col.truncate(mergeLo);
+                    col.commit();
+
+                    int n = 0;
+                    while (n < k) {
+                        long o = order[n];
+                        if (o < 0) {
+                            col.putRaw(src, -o - 1);
+                            n++;
+                        } else {
+                            // copy run of consecutive tail rows in one go
+                            int runHi = n + 1;
+                            while (runHi < k && order[runHi] == o + runHi - n) {
+                                runHi++;
+                            }
+                            col.putBlock(buf + o * width, (runHi - n) * (long) width);
+                            n = runHi;
+                        }
+                        col.commit();
+                    }
+                }
+            }
+        } finally {
+            if (buf != 0) {
+                Unsafe.free(buf, bufSize);
+            }
+        }
+
+        clearTx();
+        reindex(mergeLo);
+        if (getStatistics() != null) {
+            statistics.truncate(mergeLo);
+        }
+    }
+
+    /**
+     * Unmaps extents retired by growth of partition files. Called by journal at points, where none
+     * of addresses handed out earlier is in use.
+     */
+    void releaseRetired() {
+        if (columns != null) {
+            for (int i = 0; i < columns.length; i++) {
+                AbstractColumn c = Unsafe.arrayGet(columns, i);
+                if (c != null) {
+                    c.releaseRetired();
+                }
+            }
+        }
+
+        for (int i = 0, k = indexProxies.size(); i < k; i++) {
+            indexProxies.getQuick(i).releaseRetired();
+        }
+    }
+
+    private static long realloc(long address, long size, long newSize) {
+        if (address != 0) {
+            Unsafe.free(address, size);
+        }
+        return Unsafe.malloc(newSize);
+    }
+
+    private void reindex(long lo) throws JournalException {
+        final long size = size();
+        for (int n = 0, k = indexProxies.size(); n < k; n++) {
+            SymbolIndexProxy<T> proxy = indexProxies.getQuick(n);
+            ColumnIndex index = proxy.getIndex();
+            int i = proxy.getColumnIndex();
+            ColumnMetadata m = columnMetadata[i];
+
+            index.truncate(lo);
+            for (long r = lo; r < size; r++) {
+                int key;
+                switch (m.type) {
+                    case ColumnType.LONG:
+                        key = (int) (fixCol(i).getLong(r) & m.distinctCountHint);
+                        break;
+                    case ColumnType.INT:
+                        key = fixCol(i).getInt(r) & m.distinctCountHint;
+                        break;
+                    case ColumnType.STRING:
+                        CharSequence s = varCol(i).getFlyweightStr(r);
+                        key = s == null ? SymbolTable.VALUE_IS_NULL : Hash.boundedHash(s, m.distinctCountHint);
+                        break;
+                    default:
+                        key = fixCol(i).getInt(r);
+                        break;
+                }
+                index.add(key, r);
+            }
+            index.commit();
+        }
+    }
+
     private void open0() throws JournalException {
         columns = new AbstractColumn[journal.getMetadata().getColumnCount()];
+        sealed = false;
 
         try {
             for (int i = 0; i < columns.length; i++) {
-                switch (Unsafe.arrayGet(columnMetadata, i).type) {
+                ColumnMetadata m = Unsafe.arrayGet(columnMetadata, i);
+                switch (m.type) {
                     case ColumnType.STRING:
                     case ColumnType.BINARY:
                         Unsafe.arrayPut(columns, i,
                                 new VariableColumn(
-                                        new MemoryFile(
-                                                new File(partitionDir, Unsafe.arrayGet(columnMetadata, i).name + ".d"),
-                                                Unsafe.arrayGet(columnMetadata, i).bitHint, journal.getMode()
-                                        ),
-                                        new MemoryFile(
-                                                new File(partitionDir, Unsafe.arrayGet(columnMetadata, i).name + ".i"),
-                                                Unsafe.arrayGet(columnMetadata, i).indexBitHint,
-                                                journal.getMode()
-                                        )
+                                        openFile(m.name + ".d", m.bitHint),
+                                        openFile(m.name + ".i", m.indexBitHint)
                                 )
                         );
                         break;
                     default:
-                        Unsafe.arrayPut(columns, i,
-                                new FixedColumn(
-                                        new MemoryFile(
-                                                new File(partitionDir, Unsafe.arrayGet(columnMetadata, i).name + ".d"),
-                                                Unsafe.arrayGet(columnMetadata, i).bitHint,
-                                                journal.getMode()
-                                        ),
-                                        Unsafe.arrayGet(columnMetadata, i).size
-                                )
-                        );
+                        Unsafe.arrayPut(columns, i, new FixedColumn(openFile(m.name + ".d", m.bitHint), m.size));
                         break;
                 }
             }
@@ -596,6 +951,16 @@ public class Partition<T> implements Closeable {
         }
     }
 
+    private MemoryFile openFile(String name, int bitHint) throws JournalException {
+        File f = new File(getDataDir(), name);
+        File z = CompressedMemoryFile.compressedFile(f);
+        if (z.exists()) {
+            sealed = true;
+            return new CompressedMemoryFile(z, bitHint);
+        }
+        return OverlayMemoryFile.openFile(f, bitHint, journal.getMode());
+    }
+
     private void readBin(long localRowID, T obj, int i, ColumnMetadata m) {
         int size = ((VariableColumn) Unsafe.arrayGet(columns, i)).getBinLen(localRowID);
         ByteBuffer buf = (ByteBuffer) Unsafe.getUnsafe().getObject(obj, m.offset);
@@ -645,10 +1010,11 @@ public class Partition<T> implements Closeable {
 
         getIndexForColumn(columnIndex).close();
 
-        File base = new File(partitionDir, columnMetadata[columnIndex].name);
-        KVIndex.delete(base);
+        ColumnMetadata m = columnMetadata[columnIndex];
+        File base = new File(getDataDir(), m.name);
+        SymbolIndexProxy.deleteIndex(base, m);
 
-        try (KVIndex index = new KVIndex(base, keyCountHint, recordCountHint, txCountHint, JournalMode.APPEND, 0)) {
+        try (ColumnIndex index = SymbolIndexProxy.newIndex(base, m, keyCountHint, recordCountHint, txCountHint, JournalMode.APPEND, 0)) {
             FixedColumn col = fixCol(columnIndex);
             for (long localRowID = 0, sz = size(); localRowID < sz; localRowID++) {
                 index.add(col.getInt(localRowID), localRowID);
@@ -659,16 +1025,349 @@ public class Partition<T> implements Closeable {
         LOG.debug().$("REBUILT ").$(base).$(" in ").$(TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - time)).$("ms").$();
     }
 
+    /**
+     * Creates index files and extends column files of fresh partition, so that first append does not
+     * stall on file creation. Partition must be open and not yet used by writer.
+     *
+     * @throws JournalException if index files cannot be created
+     */
+    void preTouch() throws JournalException {
+        for (int i = 0; i < columns.length; i++) {
+            Unsafe.arrayGet(columns, i).preTouch();
+        }
+
+        for (int i = 0, k = indexProxies.size(); i < k; i++) {
+            indexProxies.getQuick(i).getIndex();
+        }
+    }
+
+    /**
+     * Deletes data directory, which has been superseded by another, unless it is still held by open partition
+     * of this or another process. Files kept in partition directory itself are deleted one by one, leaving
+     * location and lock files of partition behind. Directory, which has become current data directory again,
+     * e.g. because partition was truncated and recreated meanwhile, is left alone.
+     *
+     * @param partitionDir partition directory
+     * @param dataDir      superseded data directory
+     * @return true if directory no longer needs purging, false if it is still in use
+     */
+    static boolean purgeDataDir(File partitionDir, File dataDir) {
+        if (!dataDir.exists()) {
+            // e.g. journal has been truncated
+            return true;
+        }
+
+        Lock lock = LockManager.lockExclusive(dataDir);
+        try {
+            if (lock == null || !lock.isValid()) {
+                return false;
+            }
+
+            if (dataDir.equals(readDataDir(partitionDir))) {
+                return true;
+            }
+
+            if (!dataDir.equals(partitionDir)) {
+                return Files.delete(dataDir);
+            }
+
+            File[] files = partitionDir.listFiles(DATA_FILTER);
+            boolean deleted = true;
+            if (files != null) {
+                for (int i = 0; i < files.length; i++) {
+                    deleted &= Files.delete(files[i]);
+                }
+            }
+            return deleted;
+        } catch (JournalException e) {
+            LOG.error().$("Cannot purge ").$(dataDir).$(": ").$(e.getMessage()).$();
+            return false;
+        } finally {
+            LockManager.release(lock);
+        }
+    }
+
+    /**
+     * Points partition directory at another data directory. Location file is replaced atomically, so that
+     * readers see either old or new location. Caller is expected to have forced data directory.
+     *
+     * @param partitionDir partition directory
+     * @param dataDir      new data directory
+     * @throws JournalException if location cannot be written
+     */
+    static void publishDataDir(File partitionDir, File dataDir) throws JournalException {
+        File loc = new File(partitionDir, LOCATION_FILE);
+        if (dataDir.equals(partitionDir)) {
+            if (!loc.delete() && loc.exists()) {
+                throw new JournalException("Cannot delete %s", loc);
+            }
+            Files.fsyncOrException(partitionDir);
+            return;
+        }
+        // nested location is relative, so that journal directory can be moved
+        Files.writeStringToFileAtomically(loc, partitionDir.equals(dataDir.getParentFile()) ? dataDir.getName() : dataDir.getAbsolutePath());
+    }
+
+    static File readDataDir(File partitionDir) throws JournalException {
+        File f = new File(partitionDir, LOCATION_FILE);
+        if (!f.exists()) {
+            return partitionDir;
+        }
+        File dir = new File(Files.readStringFromFile(f));
+        return dir.isAbsolute() ? dir : new File(partitionDir, dir.getPath());
+    }
+
+    /**
+     * Name for new data directory of partition, which does not clash with directories that may still be
+     * in use. Name of partition is preferred.
+     *
+     * @param parent       directory to create data directory in
+     * @param partitionDir partition directory
+     * @return directory, which does not exist
+     */
+    static File newDataDir(File parent, File partitionDir) {
+        File dir = new File(parent, partitionDir.getName());
+        for (int i = 1; dir.exists(); i++) {
+            dir = new File(parent, partitionDir.getName() + '.' + i);
+        }
+        return dir;
+    }
+
+    /**
+     * Writes sealed version of data directory. Files of columns, which have codec configured, are compressed and
+     * other files are linked, or copied where file system cannot link them. Sealed version is read-only and
+     * has to be unsealed before its data can be changed. Files are forced to disk.
+     *
+     * @param meta   journal metadata
+     * @param source data directory
+     * @param target new data directory
+     * @throws JournalException if files cannot be compressed or linked
+     */
+    static void sealDataDir(JournalMetadata<?> meta, File source, File target) throws JournalException {
+        if (!target.mkdirs()) {
+            throw new JournalException("Cannot create directory %s", target);
+        }
+        for (int i = 0, n = meta.getColumnCount(); i < n; i++) {
+            ColumnMetadata m = meta.getColumnQuick(i);
+            if (m.codec == ColumnCodec.NONE) {
+                continue;
+            }
+            compress(new File(source, m.name + ".d"), target, m.codec, m.size);
+            if (m.type == ColumnType.STRING || m.type == ColumnType.BINARY) {
+                // offsets grow steadily
+                compress(new File(source, m.name + ".i"), target, ColumnCodec.DELTA_OF_DELTA, 8);
+            }
+        }
+
+        File[] files = source.listFiles(DATA_FILTER);
+        if (files == null) {
+            throw new JournalException("Cannot list %s", source);
+        }
+        for (int i = 0; i < files.length; i++) {
+            File f = new File(target, files[i].getName());
+            // base of compressed overlay is part of compressed file already
+            File overlay = OverlayMemoryFile.overlayOf(files[i]);
+            if (!CompressedMemoryFile.compressedFile(f).exists()
+                    && (overlay == null || !CompressedMemoryFile.compressedFile(new File(target, overlay.getName())).exists())) {
+                Files.linkOrCopy(files[i], f);
+            }
+        }
+        Files.fsyncOrException(target);
+    }
+
+    /**
+     * Writes writable version of sealed data directory. Compressed files are restored, other files are copied,
+     * so that writes to new version are not seen through old one. Files are forced to disk.
+     *
+     * @param meta   journal metadata
+     * @param source sealed data directory
+     * @param target new data directory
+     * @throws JournalException if files cannot be restored or copied
+     */
+    static void unsealDataDir(JournalMetadata<?> meta, File source, File target) throws JournalException {
+        OverlayMemoryFile.copyDir(source, target, new FileFilter() {
+            @Override
+            public boolean accept(File f) {
+                return DATA_FILTER.accept(f) && f.getName().charAt(f.getName().length() - 1) != CompressedMemoryFile.SUFFIX;
+            }
+        });
+        for (int i = 0, n = meta.getColumnCount(); i < n; i++) {
+            ColumnMetadata m = meta.getColumnQuick(i);
+            decompress(new File(source, m.name + ".d"), target, m.bitHint);
+            if (m.type == ColumnType.STRING || m.type == ColumnType.BINARY) {
+                decompress(new File(source, m.name + ".i"), target, m.indexBitHint);
+            }
+        }
+        Files.fsyncOrException(target);
+    }
+
+    /**
+     * Writes copy of data directory, which shares column files with it. Each column file of copy is overlay
+     * over file it is copied from, see {@link OverlayMemoryFile#stage(File, File, int)}, so that rewriting tail of
+     * column writes tail only. Files of sealed directory become bases of overlays as they are, compressed or not.
+     * Indexes and other files are copied. Files are forced to disk.
+     *
+     * @param meta   journal metadata
+     * @param source data directory
+     * @param target new data directory
+     * @throws JournalException if files cannot be linked or copied
+     */
+    static void stageDataDir(final JournalMetadata<?> meta, File source, File target) throws JournalException {
+        Files.copyDirOrException(source, target, new FileFilter() {
+            @Override
+            public boolean accept(File f) {
+                return DATA_FILTER.accept(f) && !isColumnFile(meta, f);
+            }
+        });
+        for (int i = 0, n = meta.getColumnCount(); i < n; i++) {
+            ColumnMetadata m = meta.getColumnQuick(i);
+            OverlayMemoryFile.stage(new File(source, m.name + ".d"), new File(target, m.name + ".d"), m.bitHint);
+            if (m.type == ColumnType.STRING || m.type == ColumnType.BINARY) {
+                OverlayMemoryFile.stage(new File(source, m.name + ".i"), new File(target, m.name + ".i"), m.indexBitHint);
+            }
+        }
+        Files.fsyncOrException(target);
+    }
+
+    static boolean isSealed(JournalMetadata<?> meta, File dataDir) {
+        for (int i = 0, n = meta.getColumnCount(); i < n; i++) {
+            if (CompressedMemoryFile.compressedFile(new File(dataDir, meta.getColumnQuick(i).name + ".d")).exists()) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Replaces sealed data directory of partition with writable version, so that partition can be written to.
+     * Sealed version stays intact for readers, which have it open, and is purged once they close it.
+     *
+     * @return this partition
+     * @throws JournalException if files cannot be restored or partition has been changed meanwhile
+     */
+    Partition<T> unseal() throws JournalException {
+        if (!journal.getMetadata().isCompressed()) {
+            return this;
+        }
+
+        boolean open = isOpen();
+        File source = getDataDir();
+        if (open ? !sealed : !isSealed(journal.getMetadata(), source)) {
+            return this;
+        }
+
+        File parent = source.equals(partitionDir) ? partitionDir : source.getParentFile();
+        File target = newDataDir(parent, partitionDir);
+        // archiver sweep must not purge new directory before it is published
+        Lock lock = LockManager.lockShared(target);
+        try {
+            unsealDataDir(journal.getMetadata(), source, target);
+            Files.fsyncOrException(parent);
+            if (!((JournalWriter<T>) journal).publishDataDir(partitionDir, source, target)) {
+                Files.delete(target);
+                throw new JournalException("Partition %s has been changed while unsealing", partitionDir);
+            }
+        } finally {
+            LockManager.release(lock);
+        }
+
+        close();
+        if (open) {
+            open();
+        }
+        LOG.debug().$("Unsealed ").$(partitionDir).$();
+        return this;
+    }
+
+    /**
+     * Moves partition onto private copy of its data directory, which readers do not see until it is published
+     * by writer. Committed and pending rows are carried over, see {@link #stageDataDir(JournalMetadata, File, File)}.
+     * Partition is reopened over the copy, so that changes to partition leave files readers have open intact.
+     *
+     * @return data directory, which has been copied
+     * @throws JournalException if files cannot be copied
+     */
+    File stage() throws JournalException {
+        boolean open = isOpen();
+        if (open) {
+            commitColumns();
+            commit();
+        }
+
+        File source = getDataDir();
+        File target = newDataDir(source.equals(partitionDir) ? partitionDir : source.getParentFile(), partitionDir);
+        // copy is held like any data directory, so that archiver sweep does not purge it
+        Lock lock = LockManager.lockShared(target);
+        try {
+            stageDataDir(journal.getMetadata(), source, target);
+        } catch (JournalException e) {
+            LockManager.release(lock);
+            Files.delete(target);
+            throw e;
+        }
+
+        close();
+        dataDir = target;
+        dataLock = lock;
+        if (open) {
+            open();
+        }
+        return source;
+    }
+
+    private static boolean isColumnFile(JournalMetadata<?> meta, File f) {
+        // strip compressed and base suffixes
+        String name = f.getName();
+        if (name.charAt(name.length() - 1) == CompressedMemoryFile.SUFFIX) {
+            name = name.substring(0, name.length() - 1);
+        }
+        if (name.endsWith(OverlayMemoryFile.BASE_SUFFIX)) {
+            name = name.substring(0, name.length() - OverlayMemoryFile.BASE_SUFFIX.length());
+        }
+        for (int i = 0, n = meta.getColumnCount(); i < n; i++) {
+            ColumnMetadata m = meta.getColumnQuick(i);
+            if (name.equals(m.name + ".d")
+                    || ((m.type == ColumnType.STRING || m.type == ColumnType.BINARY) && name.equals(m.name + ".i"))) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private static void compress(File src, File target, int codec, int width) throws JournalException {
+        if (src.exists()) {
+            CompressedMemoryFile.compress(src, new File(target, CompressedMemoryFile.compressedFile(src).getName()), codec, width);
+        }
+    }
+
+    private static void decompress(File file, File target, int bitHint) throws JournalException {
+        File z = CompressedMemoryFile.compressedFile(file);
+        if (z.exists()) {
+            CompressedMemoryFile.decompress(z, new File(target, file.getName()), bitHint);
+        }
+    }
+
     final void setPartitionDir(File partitionDir, long[] indexTxAddresses) {
         boolean create = partitionDir != null && !partitionDir.equals(this.partitionDir);
         this.partitionDir = partitionDir;
         if (create) {
+            releaseDataDir();
             createSymbolIndexProxies(indexTxAddresses);
         }
     }
 
+    private void releaseDataDir() {
+        dataDir = null;
+        LockManager.release(dataLock);
+        dataLock = null;
+    }
+
     void truncate(long newSize) throws JournalException {
         if (isOpen() && size() > newSize) {
+            unseal();
+            if (getStatistics() != null) {
+                statistics.truncate(newSize);
+            }
             for (int i = 0, k = indexProxies.size(); i < k; i++) {
                 indexProxies.getQuick(i).getIndex().truncate(newSize);
             }
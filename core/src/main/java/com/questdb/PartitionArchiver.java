@@ -0,0 +1,405 @@
+/*******************************************************************************
+ *    ___                  _   ____  ____
+ *   / _ \ _   _  ___  ___| |_|  _ \| __ )
+ *  | | | | | | |/ _ \/ __| __| | | |  _ \
+ *  | |_| | |_| |  __/\__ \ |_| |_| | |_) |
+ *   \__\_\\__,_|\___||___/\__|____/|____/
+ *
+ * Copyright (C) 2014-2016 Appsicle
+ *
+ * This program is free software: you can redistribute it and/or  modify
+ * it under the terms of the GNU Affero General Public License, version 3,
+ * as published by the Free Software Foundation.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ *
+ ******************************************************************************/
+
+package com.questdb;
+
+import com.questdb.ex.JournalException;
+import com.questdb.factory.configuration.Constants;
+import com.questdb.log.Log;
+import com.questdb.log.LogFactory;
+import com.questdb.misc.Files;
+import com.questdb.misc.NamedDaemonThreadFactory;
+import com.questdb.std.IntList;
+import com.questdb.std.ObjList;
+import com.questdb.store.Lock;
+import com.questdb.store.LockManager;
+import com.questdb.store.OverlayMemoryFile;
+
+import java.io.Closeable;
+import java.io.File;
+import java.io.FileFilter;
+import java.util.concurrent.*;
+
+/**
+ * Seals committed partitions of writer and moves them to cold location on background thread. Files of
+ * partition are written into new data directory, forced to disk and only then published by replacing location
+ * file of partition, so that readers see either old or new files and never partial copy. Superseded files are purged once no
+ * partition holds them open, see {@link Partition#getDataDir()}. Until then purge is retried on later commits
+ * and when writer closes. Superseded files that outlive writer are swept when writer opens next time.
+ * <p>
+ * Jobs run one at a time in order of submission. Job is dropped when data directory of its partition changes
+ * after job started, or when jobs are cancelled, see {@link #cancel()}. Jobs are submitted and moved partitions
+ * collected by writer thread.
+ */
+final class PartitionArchiver<T> implements Closeable {
+    private static final Log LOG = LogFactory.getLog(PartitionArchiver.class);
+    private static final FileFilter DIR_FILTER = new FileFilter() {
+        @Override
+        public boolean accept(File f) {
+            return f.isDirectory() && !f.getName().startsWith(Constants.TEMP_DIRECTORY_PREFIX);
+        }
+    };
+    private final ExecutorService executor;
+    private final JournalWriter<T> writer;
+    // pairs of partition directory and its superseded data directory
+    private final ObjList<File> superseded = new ObjList<>();
+    private final IntList moved = new IntList();
+    private volatile boolean purgeQueued = false;
+    // incremented by cancel(), jobs submitted before that do not run or publish
+    private volatile int epoch = 0;
+
+    PartitionArchiver(JournalWriter<T> writer) {
+        this.writer = writer;
+        // single thread, which exits when idle
+        this.executor = new ThreadPoolExecutor(0, 1, 60, TimeUnit.SECONDS, new LinkedBlockingQueue<Runnable>(),
+                new NamedDaemonThreadFactory("questdb-journal-archiver-" + writer.getLocation().getName(), true));
+    }
+
+    /**
+     * Completes submitted jobs and makes last attempt to purge superseded data directories.
+     */
+    @Override
+    public void close() {
+        executor.shutdown();
+        try {
+            executor.awaitTermination(Long.MAX_VALUE, TimeUnit.MILLISECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        purge0();
+    }
+
+    /**
+     * Waits for submitted jobs to complete.
+     */
+    void await() {
+        try {
+            executor.submit(new Runnable() {
+                @Override
+                public void run() {
+                }
+            }).get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        } catch (ExecutionException ignore) {
+            // no-op job does not fail
+        }
+    }
+
+    /**
+     * Drops submitted jobs without waiting for them. Jobs, which have not started yet, do not run and running
+     * job does not publish its data directory, which it deletes instead. Running job keeps reading data directory
+     * of its partition though, so caller may replace that directory, but must not change its files.
+     */
+    synchronized void cancel() {
+        epoch++;
+        purgeQueued = false;
+    }
+
+    /**
+     * Drops submitted jobs and waits for running job to complete, so that caller can change files of partitions.
+     */
+    void discard() {
+        cancel();
+        await();
+    }
+
+    /**
+     * Takes index of partition, which has been moved or sealed since last call. Writer is expected to close
+     * such partition, so that it is reopened over new data directory and old files can be purged.
+     *
+     * @return partition index or -1 when there is none
+     */
+    synchronized int pollMoved() {
+        int n = moved.size();
+        if (n == 0) {
+            return -1;
+        }
+        int index = moved.getQuick(n - 1);
+        moved.removeIndex(n - 1);
+        return index;
+    }
+
+    /**
+     * Replaces data directory of partition and supersedes the old one.
+     *
+     * @param partitionDir partition directory
+     * @param expected     data directory job started with, null to replace data directory unconditionally
+     * @param dataDir      new data directory, forced to disk
+     * @return false if data directory of partition is no longer the expected one
+     * @throws JournalException if location cannot be written
+     */
+    synchronized boolean publish(File partitionDir, File expected, File dataDir) throws JournalException {
+        return publish(epoch, partitionDir, expected, dataDir);
+    }
+
+    /**
+     * Purges superseded data directories in background. Purge, which is already queued, is not repeated.
+     */
+    void purge() {
+        if (!purgeQueued && hasSuperseded()) {
+            purgeQueued = true;
+            submit(new Runnable() {
+                @Override
+                public void run() {
+                    purgeQueued = false;
+                    purge0();
+                }
+            });
+        }
+    }
+
+    /**
+     * Moves partition to cold location in background, unless it is there already.
+     *
+     * @param partitionIndex index of partition
+     * @param partitionDir   partition directory
+     * @param location       cold location
+     */
+    void relocate(final int partitionIndex, final File partitionDir, final File location) {
+        final int jobEpoch = epoch;
+        submit(new Runnable() {
+            @Override
+            public void run() {
+                try {
+                    relocate0(jobEpoch, partitionIndex, partitionDir, location);
+                } catch (JournalException e) {
+                    LOG.error().$("Could not relocate ").$(partitionDir).$(" to ").$(location).$(": ").$(e.getMessage()).$();
+                }
+            }
+        });
+    }
+
+    /**
+     * Seals partition in background, unless it is sealed already. Sealed version of partition is written
+     * next to current one and published same way as relocated partition, so that readers never see partition
+     * half-compressed and commit does not wait for compression.
+     *
+     * @param partitionIndex index of partition
+     * @param partitionDir   partition directory
+     */
+    void seal(final int partitionIndex, final File partitionDir) {
+        final int jobEpoch = epoch;
+        submit(new Runnable() {
+            @Override
+            public void run() {
+                try {
+                    seal0(jobEpoch, partitionIndex, partitionDir);
+                } catch (JournalException e) {
+                    LOG.error().$("Could not seal ").$(partitionDir).$(": ").$(e.getMessage()).$();
+                }
+            }
+        });
+    }
+
+    /**
+     * Queues data directory, which has been replaced by writer, for purge.
+     *
+     * @param partitionDir partition directory
+     * @param dataDir      superseded data directory
+     */
+    synchronized void supersede(File partitionDir, File dataDir) {
+        superseded.add(partitionDir);
+        superseded.add(dataDir);
+    }
+
+    /**
+     * Purges data directories of journal partitions and of cold location, which are not referenced by
+     * their partitions. Such directories are left behind when readers outlive writer or writer does not close cleanly.
+     *
+     * @param location cold location or null to sweep journal location only
+     */
+    void sweep(final File location) {
+        submit(new Runnable() {
+            @Override
+            public void run() {
+                sweep0(location);
+            }
+        });
+    }
+
+    private synchronized boolean hasSuperseded() {
+        return superseded.size() > 0;
+    }
+
+    private synchronized boolean publish(int jobEpoch, File partitionDir, File expected, File dataDir) throws JournalException {
+        if (jobEpoch != epoch) {
+            return false;
+        }
+        File current = Partition.readDataDir(partitionDir);
+        if (expected != null && !expected.equals(current)) {
+            return false;
+        }
+        Partition.publishDataDir(partitionDir, dataDir);
+        supersede(partitionDir, current);
+        return true;
+    }
+
+    private synchronized void purge0() {
+        for (int i = superseded.size() - 2; i > -1; i -= 2) {
+            File dataDir = superseded.getQuick(i + 1);
+            if (Partition.purgeDataDir(superseded.getQuick(i), dataDir)) {
+                superseded.remove(i + 1);
+                superseded.remove(i);
+                LOG.debug().$("Purged ").$(dataDir).$();
+            } else {
+                LOG.debug().$("Partition in use: ").$(dataDir).$();
+            }
+        }
+    }
+
+    private void relocate0(int jobEpoch, int partitionIndex, File partitionDir, File location) throws JournalException {
+        File source = Partition.readDataDir(partitionDir);
+        if (location.equals(source.getParentFile())) {
+            return;
+        }
+
+        File target;
+        Lock lock = LockManager.lockShared(source);
+        try {
+            if (lock == null || !lock.isValid() || !source.equals(Partition.readDataDir(partitionDir))) {
+                return;
+            }
+            target = Partition.newDataDir(location, partitionDir);
+            OverlayMemoryFile.copyDir(source, target, Partition.DATA_FILTER);
+            Files.fsyncOrException(location);
+        } finally {
+            LockManager.release(lock);
+        }
+
+        if (publish(jobEpoch, partitionDir, source, target)) {
+            synchronized (this) {
+                moved.add(partitionIndex);
+            }
+            purge0();
+            LOG.info().$("Relocated ").$(partitionDir).$(" to ").$(target).$();
+        } else {
+            Files.delete(target);
+        }
+    }
+
+    private void seal0(int jobEpoch, int partitionIndex, File partitionDir) throws JournalException {
+        File source = Partition.readDataDir(partitionDir);
+        File target;
+        Lock lock = LockManager.lockShared(source);
+        try {
+            if (lock == null || !lock.isValid() || !source.equals(Partition.readDataDir(partitionDir))
+                    || Partition.isSealed(writer.getMetadata(), source)) {
+                return;
+            }
+            File parent = source.equals(partitionDir) ? partitionDir : source.getParentFile();
+            target = Partition.newDataDir(parent, partitionDir);
+            try {
+                Partition.sealDataDir(writer.getMetadata(), source, target);
+                Files.fsyncOrException(parent);
+            } catch (JournalException e) {
+                Files.delete(target);
+                throw e;
+            }
+        } finally {
+            LockManager.release(lock);
+        }
+
+        if (publish(jobEpoch, partitionDir, source, target)) {
+            synchronized (this) {
+                moved.add(partitionIndex);
+            }
+            purge0();
+            LOG.debug().$("Sealed ").$(partitionDir).$(" to ").$(target).$();
+        } else {
+            Files.delete(target);
+        }
+    }
+
+    private void submit(final Runnable job) {
+        final int jobEpoch = epoch;
+        executor.submit(new Runnable() {
+            @Override
+            public void run() {
+                if (jobEpoch != epoch) {
+                    return;
+                }
+                try {
+                    job.run();
+                } catch (Throwable e) {
+                    LOG.error().$("Archiver job failed in ").$(writer.getLocation()).$(": ").$(e).$();
+                }
+            }
+        });
+    }
+
+    private void sweep0(File location) {
+        File[] partitionDirs = writer.getLocation().listFiles(DIR_FILTER);
+        if (partitionDirs == null) {
+            return;
+        }
+
+        ObjList<File> current = new ObjList<>(partitionDirs.length);
+        for (int i = 0; i < partitionDirs.length; i++) {
+            File partitionDir = partitionDirs[i];
+            Files.delete(new File(partitionDir, Partition.LOCATION_FILE + ".tmp"));
+            try {
+                File dataDir = Partition.readDataDir(partitionDir);
+                current.add(dataDir);
+
+                File[] dirs = partitionDir.listFiles(DIR_FILTER);
+                if (dirs != null) {
+                    for (int j = 0; j < dirs.length; j++) {
+                        if (!dirs[j].equals(dataDir)) {
+                            supersede(partitionDir, dirs[j]);
+                        }
+                    }
+                }
+
+                File[] files;
+                if (!dataDir.equals(partitionDir) && (files = partitionDir.listFiles(Partition.DATA_FILTER)) != null && files.length > 0) {
+                    supersede(partitionDir, partitionDir);
+                }
+            } catch (JournalException e) {
+                LOG.error().$("Cannot read location of ").$(partitionDir).$(": ").$(e.getMessage()).$();
+                // cannot tell what cold directories are in use
+                location = null;
+            }
+        }
+
+        File[] dirs;
+        if (location != null && (dirs = location.listFiles(DIR_FILTER)) != null) {
+            for (int i = 0; i < dirs.length; i++) {
+                File dir = dirs[i];
+                if (current.indexOf(dir) > -1) {
+                    continue;
+                }
+                // cold location is expected to be dedicated to journal, still only directories
+                // named after partitions are swept
+                for (int j = 0; j < partitionDirs.length; j++) {
+                    String name = partitionDirs[j].getName();
+                    if (dir.getName().equals(name) || dir.getName().startsWith(name + '.')) {
+                        supersede(partitionDirs[j], dir);
+                        break;
+                    }
+                }
+            }
+        }
+        purge0();
+    }
+}
@@ -0,0 +1,157 @@
+/*******************************************************************************
+ *    ___                  _   ____  ____
+ *   / _ \ _   _  ___  ___| |_|  _ \| __ )
+ *  | | | | | | |/ _ \/ __| __| | | |  _ \
+ *  | |_| | |_| |  __/\__ \ |_| |_| | |_) |
+ *   \__\_\\__,_|\___||___/\__|____/|____/
+ *
+ * Copyright (C) 2014-2016 Appsicle
+ *
+ * This program is free software: you can redistribute it and/or  modify
+ * it under the terms of the GNU Affero General Public License, version 3,
+ * as published by the Free Software Foundation.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ *
+ ******************************************************************************/
+
+package com.questdb;
+
+import com.questdb.ex.JournalException;
+import com.questdb.log.Log;
+import com.questdb.log.LogFactory;
+import com.questdb.misc.Files;
+import com.questdb.misc.Interval;
+import com.questdb.misc.NamedDaemonThreadFactory;
+
+import java.io.Closeable;
+import java.io.File;
+import java.util.concurrent.*;
+
+/**
+ * Creates next partition of writer on background thread, before appends cross partition boundary.
+ * Column and index files are created, mapped and pre-touched off writer thread, so writer only has
+ * to take ready partition when first row of next interval arrives.
+ * <p>
+ * Prepared partition is invisible to readers, which do not look past partition of last transaction,
+ * and to writer until taken. Writer deletes stray partition directories on open, which covers
+ * partitions prepared by writer that did not close cleanly. All methods are called by writer thread.
+ */
+final class PartitionPreallocator<T> implements Closeable {
+    private static final Log LOG = LogFactory.getLog(PartitionPreallocator.class);
+    private final ExecutorService executor;
+    private final JournalWriter<T> writer;
+    private Future<Partition<T>> future;
+    private Interval interval;
+    private int partitionIndex;
+    private File dir;
+
+    PartitionPreallocator(JournalWriter<T> writer) {
+        this.writer = writer;
+        this.executor = Executors.newCachedThreadPool(new NamedDaemonThreadFactory("questdb-journal-allocator-" + writer.getLocation().getName(), true));
+    }
+
+    @Override
+    public void close() {
+        discard();
+        executor.shutdown();
+    }
+
+    /**
+     * Drops prepared partition, if any, and deletes its directory.
+     */
+    void discard() {
+        if (future != null) {
+            Partition<T> p = await();
+            if (p != null) {
+                p.close();
+            }
+            if (!Files.delete(dir)) {
+                LOG.error().$("Could not delete pre-allocated partition: ").$(dir.getAbsolutePath()).$();
+            }
+        }
+    }
+
+    /**
+     * Starts creating partition in background. Partition that is already prepared for another interval
+     * or index is discarded.
+     *
+     * @param interval       interval of partition
+     * @param partitionIndex index partition will have once taken
+     */
+    void prepare(final Interval interval, final int partitionIndex) {
+        if (future != null) {
+            if (matches(interval, partitionIndex)) {
+                return;
+            }
+            discard();
+        }
+
+        this.interval = interval;
+        this.partitionIndex = partitionIndex;
+        this.dir = new File(writer.getLocation(), interval.getDirName(writer.getMetadata().getPartitionBy()));
+        this.future = executor.submit(new Callable<Partition<T>>() {
+            @Override
+            public Partition<T> call() throws JournalException {
+                Partition<T> p = new Partition<>(writer, interval, partitionIndex, Journal.TX_LIMIT_EVAL, null).open();
+                try {
+                    p.preTouch();
+                } catch (JournalException e) {
+                    p.close();
+                    throw e;
+                }
+                return p;
+            }
+        });
+    }
+
+    /**
+     * Hands prepared partition over to writer. Waits for partition if it is still being created.
+     *
+     * @param interval       interval of partition writer is about to create
+     * @param partitionIndex index of partition writer is about to create
+     * @return open partition or null when nothing was prepared for given interval and index
+     */
+    Partition<T> take(Interval interval, int partitionIndex) {
+        if (future == null) {
+            return null;
+        }
+
+        if (matches(interval, partitionIndex)) {
+            Partition<T> p = await();
+            if (p != null) {
+                return p;
+            }
+            // failed partition may have left files behind
+            Files.delete(dir);
+            return null;
+        }
+
+        discard();
+        return null;
+    }
+
+    private Partition<T> await() {
+        try {
+            return future.get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            LOG.error().$("Interrupted while waiting for pre-allocated partition: ").$(dir.getAbsolutePath()).$();
+        } catch (ExecutionException e) {
+            LOG.error().$("Could not pre-allocate partition: ").$(dir.getAbsolutePath()).$(", ").$(e.getCause()).$();
+        } finally {
+            future = null;
+        }
+        return null;
+    }
+
+    private boolean matches(Interval interval, int partitionIndex) {
+        return this.partitionIndex == partitionIndex && this.interval.equals(interval);
+    }
+}
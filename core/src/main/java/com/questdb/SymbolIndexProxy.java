@@ -27,6 +27,8 @@ import com.questdb.ex.JournalException;
 import com.questdb.factory.configuration.ColumnMetadata;
 import com.questdb.factory.configuration.JournalMetadata;
 import com.questdb.misc.Misc;
+import com.questdb.store.BitmapIndex;
+import com.questdb.store.ColumnIndex;
 import com.questdb.store.KVIndex;
 
 import java.io.Closeable;
@@ -36,7 +38,7 @@ class SymbolIndexProxy<T> implements Closeable {
 
     private final Partition<T> partition;
     private final int columnIndex;
-    private KVIndex index;
+    private ColumnIndex index;
     private long txAddress;
 
     SymbolIndexProxy(Partition<T> partition, int columnIndex, long txAddress) {
@@ -53,6 +55,12 @@ class SymbolIndexProxy<T> implements Closeable {
         return columnIndex;
     }
 
+    public void releaseRetired() {
+        if (index != null) {
+            index.releaseRetired();
+        }
+    }
+
     public void setTxAddress(long txAddress) {
         this.txAddress = txAddress;
         if (index != null) {
@@ -67,7 +75,22 @@ class SymbolIndexProxy<T> implements Closeable {
                 '}';
     }
 
-    KVIndex getIndex() throws JournalException {
+    static void deleteIndex(File base, ColumnMetadata m) {
+        if (m.bitmapIndex) {
+            BitmapIndex.delete(base);
+        } else {
+            KVIndex.delete(base);
+        }
+    }
+
+    static ColumnIndex newIndex(File base, ColumnMetadata m, int keyCountHint, int recordCountHint, int txCountHint, int journalMode, long txAddress) throws JournalException {
+        if (m.bitmapIndex) {
+            return new BitmapIndex(base, keyCountHint, txCountHint, journalMode, txAddress);
+        }
+        return new KVIndex(base, keyCountHint, recordCountHint, txCountHint, journalMode, txAddress);
+    }
+
+    ColumnIndex getIndex() throws JournalException {
         if (index == null) {
             openIndex();
         }
@@ -82,8 +105,9 @@ class SymbolIndexProxy<T> implements Closeable {
             throw new JournalException("There is no index for column: %s", columnMetadata.name);
         }
 
-        index = new KVIndex(
-                new File(partition.getPartitionDir(), columnMetadata.name),
+        index = newIndex(
+                new File(partition.getDataDir(), columnMetadata.name),
+                columnMetadata,
                 columnMetadata.distinctCountHint,
                 meta.getRecordHint(),
                 meta.getTxCountHint(),
@@ -23,6 +23,7 @@
 
 package com.questdb.factory.configuration;
 
+import com.questdb.store.ColumnCodec;
 import com.questdb.store.MMappedSymbolTable;
 import com.questdb.store.SymbolTable;
 import com.questdb.store.UnstructuredFile;
@@ -34,11 +35,13 @@ public class ColumnMetadata implements RecordColumnMetadata {
     public int size;
     public int avgSize = Constants.DEFAULT_STRING_AVG_SIZE;
     public boolean indexed;
+    public boolean bitmapIndex = false;
     public int bitHint;
     public int indexBitHint;
     public int distinctCountHint;
     public String sameAs;
     public boolean noCache = false;
+    public int codec = ColumnCodec.NONE;
     public MMappedSymbolTable symbolTable;
 
     public ColumnMetadata copy(ColumnMetadata from) {
@@ -48,11 +51,13 @@ public class ColumnMetadata implements RecordColumnMetadata {
         this.size = from.size;
         this.avgSize = from.avgSize;
         this.indexed = from.indexed;
+        this.bitmapIndex = from.bitmapIndex;
         this.bitHint = from.bitHint;
         this.indexBitHint = from.indexBitHint;
         this.distinctCountHint = from.distinctCountHint;
         this.sameAs = from.sameAs;
         this.noCache = from.noCache;
+        this.codec = from.codec;
         return this;
     }
 
@@ -134,11 +139,13 @@ public class ColumnMetadata implements RecordColumnMetadata {
                 ", size*=" + size +
                 ", avgSize=" + avgSize +
                 ", indexed=" + indexed +
+                ", bitmapIndex=" + bitmapIndex +
                 ", bitHint=" + bitHint +
                 ", indexBitHint=" + indexBitHint +
                 ", distinctCountHint=" + distinctCountHint +
                 ", sameAs='" + sameAs + '\'' +
                 ", noCache=" + noCache +
+                ", codec=" + codec +
                 '}';
     }
 
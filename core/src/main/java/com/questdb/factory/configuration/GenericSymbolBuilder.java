@@ -30,6 +30,18 @@ public class GenericSymbolBuilder extends GenericIndexedBuilder {
         super(parent, meta, ColumnType.SYMBOL, 4);
     }
 
+    /**
+     * Indexes column with compressed bitmap index. Bitmap index suits columns with few distinct values,
+     * it lets filters on several such columns be combined without reading column data.
+     *
+     * @return this builder
+     */
+    public GenericSymbolBuilder bitmapIndex() {
+        this.meta.indexed = true;
+        this.meta.bitmapIndex = true;
+        return this;
+    }
+
     public GenericSymbolBuilder noCache() {
         this.meta.noCache = true;
         return this;
@@ -31,6 +31,7 @@ import com.questdb.misc.Chars;
 import com.questdb.misc.Misc;
 import com.questdb.misc.Unsafe;
 import com.questdb.std.CharSequenceIntHashMap;
+import com.questdb.store.ColumnCodec;
 import com.questdb.store.ColumnType;
 import com.questdb.store.UnstructuredFile;
 
@@ -58,6 +59,7 @@ public class JournalMetadata<T> extends AbstractRecordMetadata {
     private final int lag;
     private final boolean partialMapping;
     private final JournalKey<T> key;
+    private final boolean compressed;
 
     public JournalMetadata(
             String id
@@ -94,6 +96,7 @@ public class JournalMetadata<T> extends AbstractRecordMetadata {
         }
         this.lag = lag;
         this.partialMapping = partialMapping;
+        this.compressed = hasCodecs(columnMetadata);
         if (modelClass != null) {
             this.key = new JournalKey<>(modelClass, location);
         } else {
@@ -126,6 +129,19 @@ public class JournalMetadata<T> extends AbstractRecordMetadata {
         ioBlockTxCount = buf.getInt();
         keyColumn = buf.getStr();
         lag = buf.getInt();
+        // column codecs are optional trailer, which older files do not have
+        if (buf.getPos() < buf.getAppendOffset()) {
+            for (int i = 0; i < columnCount; i++) {
+                columnMetadata[i].codec = buf.getInt();
+            }
+        }
+        // as are index types
+        if (buf.getPos() < buf.getAppendOffset()) {
+            for (int i = 0; i < columnCount; i++) {
+                columnMetadata[i].bitmapIndex = buf.getBool();
+            }
+        }
+        compressed = hasCodecs(columnMetadata);
         constructor = null;
         partialMapping = false;
         this.key = new JournalKey<>(id);
@@ -248,6 +264,7 @@ public class JournalMetadata<T> extends AbstractRecordMetadata {
                     || thisM.size != thatM.size
                     || thisM.distinctCountHint != thatM.distinctCountHint
                     || thisM.indexed != thatM.indexed
+                    || thisM.bitmapIndex != thatM.bitmapIndex
                     || (thisM.sameAs == null && thatM.sameAs != null)
                     || (thisM.sameAs != null && !thisM.sameAs.equals(thatM.sameAs))
                     ) {
@@ -258,6 +275,13 @@ public class JournalMetadata<T> extends AbstractRecordMetadata {
         return true;
     }
 
+    /**
+     * @return true when at least one column is compressed in sealed partitions
+     */
+    public boolean isCompressed() {
+        return compressed;
+    }
+
     public boolean isPartialMapped() {
         return partialMapping;
     }
@@ -316,9 +340,24 @@ public class JournalMetadata<T> extends AbstractRecordMetadata {
         buf.put(ioBlockTxCount);
         buf.put(keyColumn);
         buf.put(lag);
+        for (int i = 0; i < columnMetadata.length; i++) {
+            buf.put(columnMetadata[i].codec);
+        }
+        for (int i = 0; i < columnMetadata.length; i++) {
+            buf.put(columnMetadata[i].bitmapIndex);
+        }
         buf.setAppendOffset(buf.getPos());
     }
 
+    private static boolean hasCodecs(ColumnMetadata[] columnMetadata) {
+        for (int i = 0; i < columnMetadata.length; i++) {
+            if (columnMetadata[i].codec != ColumnCodec.NONE) {
+                return true;
+            }
+        }
+        return false;
+    }
+
     private static StringBuilder pad(StringBuilder b, int w, String value) {
         int pad = value == null ? w : w - value.length();
         for (int i = 0; i < pad; i++) {
@@ -30,6 +30,7 @@ import com.questdb.misc.Numbers;
 import com.questdb.misc.Unsafe;
 import com.questdb.std.CharSequenceIntHashMap;
 import com.questdb.std.ObjObjHashMap;
+import com.questdb.store.ColumnCodec;
 import com.questdb.store.ColumnType;
 
 import java.io.File;
@@ -155,6 +156,8 @@ public class JournalMetadataBuilder<T> implements MetadataBuilder<T> {
                     break;
             }
 
+            meta.codec = ColumnCodec.resolve(meta);
+
             metadata[index] = meta;
         }
 
@@ -205,6 +208,24 @@ public class JournalMetadataBuilder<T> implements MetadataBuilder<T> {
         return this;
     }
 
+    /**
+     * Compresses columns of sealed partitions with default codec of column type.
+     *
+     * @param names column names
+     * @return this builder
+     */
+    public JournalMetadataBuilder<T> compress(String... names) {
+        for (String name : names) {
+            getMeta(name).codec = ColumnCodec.AUTO;
+        }
+        return this;
+    }
+
+    public JournalMetadataBuilder<T> compress(String name, int codec) {
+        getMeta(name).codec = codec;
+        return this;
+    }
+
     public JournalMetadataBuilder<T> keyColumn(String key) {
         this.keyColumn = key;
         return this;
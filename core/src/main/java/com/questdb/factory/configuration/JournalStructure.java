@@ -33,6 +33,7 @@ import com.questdb.misc.Numbers;
 import com.questdb.misc.Unsafe;
 import com.questdb.std.CharSequenceIntHashMap;
 import com.questdb.std.ObjList;
+import com.questdb.store.ColumnCodec;
 import com.questdb.store.ColumnType;
 
 import java.io.File;
@@ -197,6 +198,8 @@ public class JournalStructure implements MetadataBuilder<Object> {
                     break;
             }
 
+            meta.codec = ColumnCodec.resolve(meta);
+
             m[i] = meta;
         }
 
@@ -263,6 +266,24 @@ public class JournalStructure implements MetadataBuilder<Object> {
         return tsColumnIndex != -1;
     }
 
+    /**
+     * Compresses columns of sealed partitions with default codec of column type.
+     *
+     * @param names column names
+     * @return this builder
+     */
+    public JournalStructure compress(String... names) {
+        for (String name : names) {
+            getColumn(name).codec = ColumnCodec.AUTO;
+        }
+        return this;
+    }
+
+    public JournalStructure compress(String name, int codec) {
+        getColumn(name).codec = codec;
+        return this;
+    }
+
     public JournalStructure key(String key) {
         this.key = key;
         return this;
@@ -345,6 +366,14 @@ public class JournalStructure implements MetadataBuilder<Object> {
         return type.getSuperclass() != null ? getAllFields(fields, type.getSuperclass()) : fields;
     }
 
+    private ColumnMetadata getColumn(String name) {
+        int index = nameToIndexMap.get(name);
+        if (index == -1) {
+            throw new JournalConfigurationException("No such column: %s", name);
+        }
+        return metadata.getQuick(index);
+    }
+
     private boolean missingMappings() {
         boolean mappingMissing = false;
         for (int i = 0, metadataSize = metadata.size(); i < metadataSize; i++) {
@@ -37,6 +37,18 @@ public class SymbolBuilder<T> extends AbstractMetadataBuilder<T> {
         meta.size = 4;
     }
 
+    /**
+     * Indexes column with compressed bitmap index. Bitmap index suits columns with few distinct values,
+     * it lets filters on several such columns be combined without reading column data.
+     *
+     * @return this builder
+     */
+    public SymbolBuilder<T> bitmapIndex() {
+        this.meta.indexed = true;
+        this.meta.bitmapIndex = true;
+        return this;
+    }
+
     public SymbolBuilder<T> index() {
         this.meta.indexed = true;
         return this;
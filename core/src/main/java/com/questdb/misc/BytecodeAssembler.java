@@ -25,6 +25,7 @@ package com.questdb.misc;
 
 import com.questdb.io.sink.AbstractCharSink;
 import com.questdb.std.CharSink;
+import com.questdb.std.IntList;
 import com.questdb.std.Mutable;
 
 import java.io.FileOutputStream;
@@ -39,14 +40,20 @@ public class BytecodeAssembler implements Mutable {
     public static final int ineg = 0x74;
     public static final int aload_1 = 43;
     public static final int aload_2 = 44;
+    public static final int pop = 0x57;
+    public static final int dup = 0x59;
+    public static final int ixor = 0x82;
+    public static final int ifeq = 153;
     public static final int istore_2 = 61;
     public static final int ifne = 154;
     public static final int ireturn = 172;
     public static final int return_ = 177;
     public static final int getfield = 180;
     public static final int putfield = 181;
+    public static final int invokevirtual = 182;
     public static final int invokestatic = 184;
     public static final int invokeinterface = 185;
+    public static final int checkcast = 192;
     public static final int i2l = 0x85;
     public static final int i2f = 0x86;
     public static final int i2d = 0x87;
@@ -64,6 +71,8 @@ public class BytecodeAssembler implements Mutable {
     private static final int iconst_0 = 3;
     private static final int bipush = 16;
     private static final int sipush = 17;
+    private static final int ldc_w = 19;
+    private static final int ldc2_w = 20;
     private static final int invokespecial = 183;
     private static final int O_POOL_COUNT = 8;
 
@@ -171,14 +180,37 @@ public class BytecodeAssembler implements Mutable {
         return poolCount++;
     }
 
+    public int poolDoubleConst(double value) {
+        put(0x06);
+        putLong(Double.doubleToRawLongBits(value));
+        int index = poolCount;
+        // 8-byte constants take two pool slots
+        poolCount += 2;
+        return index;
+    }
+
     public int poolField(int classIndex, int nameAndTypeIndex) {
         return poolRef(0x09, classIndex, nameAndTypeIndex);
     }
 
+    public int poolIntConst(int value) {
+        put(0x03);
+        putInt(value);
+        return poolCount++;
+    }
+
     public int poolInterfaceMethod(int classIndex, int nameAndTypeIndex) {
         return poolRef(0x0B, classIndex, nameAndTypeIndex);
     }
 
+    public int poolLongConst(long value) {
+        put(0x05);
+        putLong(value);
+        int index = poolCount;
+        poolCount += 2;
+        return index;
+    }
+
     public int poolMethod(int classIndex, int nameAndTypeIndex) {
         return poolRef(0x0A, classIndex, nameAndTypeIndex);
     }
@@ -231,6 +263,16 @@ public class BytecodeAssembler implements Mutable {
         }
     }
 
+    public void putLdc(int poolIndex) {
+        put(ldc_w);
+        putShort(poolIndex);
+    }
+
+    public void putLdc2(int poolIndex) {
+        put(ldc2_w);
+        putShort(poolIndex);
+    }
+
     public void putShort(int v) {
         putShort((short) v);
     }
@@ -256,6 +298,38 @@ public class BytecodeAssembler implements Mutable {
         putInt(lenPos, position() - lenPos - 4);
     }
 
+    /**
+     * Writes StackMapTable attribute for branch targets where locals are unchanged
+     * and the only value on stack is an int. Positions are offsets from start of
+     * method code in ascending order, duplicates are written once.
+     */
+    public void putStackMapSameInt(int stackMapTableIndex, IntList positions) {
+        putShort(stackMapTableIndex);
+        int lenPos = position();
+        // length - we will come back here
+        putInt(0);
+        int countPos = position();
+        putShort(0);
+        int count = 0;
+        int last = -1;
+        for (int i = 0, n = positions.size(); i < n; i++) {
+            int p = positions.getQuick(i);
+            if (p == last) {
+                continue;
+            }
+            // frame type SAME_LOCALS_1_STACK_ITEM_EXTENDED
+            put(247);
+            putShort(last == -1 ? p : p - last - 1);
+            // type: int
+            put(0x01);
+            last = p;
+            count++;
+        }
+        putShort(countPos, count);
+        // fix attribute length
+        putInt(lenPos, position() - lenPos - 4);
+    }
+
     public void setupPool() {
         // magic
         putInt(0xCAFEBABE);
@@ -319,6 +393,13 @@ public class BytecodeAssembler implements Mutable {
         buf.putInt(v);
     }
 
+    private void putLong(long v) {
+        if (buf.remaining() < 8) {
+            resize();
+        }
+        buf.putLong(v);
+    }
+
     private void putShort(short v) {
         if (buf.remaining() < 2) {
             resize();
@@ -23,15 +23,20 @@
 
 package com.questdb.misc;
 
+import com.questdb.ex.FatalError;
 import com.questdb.ex.JournalException;
 import com.questdb.ex.JournalRuntimeException;
 import com.questdb.std.LPSZ;
 
-import java.io.File;
-import java.io.FileInputStream;
-import java.io.FileOutputStream;
-import java.io.IOException;
+import java.io.*;
+import java.lang.reflect.Field;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
 import java.nio.charset.Charset;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
 
 public final class Files {
 
@@ -45,6 +50,12 @@ public final class Files {
     public static final int DT_LNK = 10;
     public static final int DT_SOCK = 12;
     public static final int DT_WHT = 14;
+    private static final int MAP_RO;
+    private static final int MAP_RW;
+    private static final Method MAP0;
+    private static final Method UNMAP0;
+    private static final Method NEW_MAPPED_BUFFER;
+    private static final Method NEW_MAPPED_BUFFER_R;
 
     private Files() {
     } // Prevent construction.
@@ -53,6 +64,40 @@ public final class Files {
 
     public native static int close(long fd);
 
+    /**
+     * Copies regular files of directory into another directory, which is created when missing.
+     * Existing files in target are replaced. Subdirectories are not copied. Copies and target
+     * directory are forced to disk before method returns.
+     *
+     * @param from   source directory
+     * @param to     target directory
+     * @param filter files to copy
+     * @throws JournalException if any of the files cannot be copied
+     */
+    public static void copyDirOrException(File from, File to, FileFilter filter) throws JournalException {
+        if (!to.exists() && !to.mkdirs()) {
+            throw new JournalException("Cannot create directory %s", to);
+        }
+
+        File[] files = from.listFiles(filter);
+        if (files == null) {
+            throw new JournalException("Cannot list %s", from);
+        }
+
+        for (int i = 0; i < files.length; i++) {
+            File f = files[i];
+            if (f.isFile()) {
+                try {
+                    java.nio.file.Files.copy(f.toPath(), new File(to, f.getName()).toPath(), StandardCopyOption.REPLACE_EXISTING);
+                } catch (IOException e) {
+                    throw new JournalException("Cannot copy %s to %s", e, f, to);
+                }
+                fsyncOrException(new File(to, f.getName()));
+            }
+        }
+        fsyncOrException(to);
+    }
+
     public static boolean delete(File file) {
         try {
             deleteOrException(file);
@@ -86,6 +131,25 @@ public final class Files {
 
     public native static void findClose(long findPtr);
 
+    /**
+     * Forces file or directory to disk. Directory has to be forced for creation, rename or removal
+     * of its entries to be durable. Windows does not open directories, there this is a no-op for them.
+     *
+     * @param file file or directory
+     * @throws JournalException if file cannot be forced
+     */
+    public static void fsyncOrException(File file) throws JournalException {
+        if (Os.type == Os.WINDOWS && file.isDirectory()) {
+            return;
+        }
+
+        try (FileChannel ch = FileChannel.open(file.toPath(), StandardOpenOption.READ)) {
+            ch.force(true);
+        } catch (IOException e) {
+            throw new JournalException("Cannot fsync %s", e, file);
+        }
+    }
+
     public static long findFirst(LPSZ lpsz) {
         return findFirst(lpsz.address());
     }
@@ -110,6 +174,27 @@ public final class Files {
         return length(lpsz.address());
     }
 
+    /**
+     * Creates hard link to file, or copy of file where file system cannot link it. Copy is forced to disk,
+     * link is not, it is up to caller to force directory entry of link.
+     *
+     * @param src existing file
+     * @param dst link or copy to create
+     * @throws JournalException if file can neither be linked nor copied
+     */
+    public static void linkOrCopy(File src, File dst) throws JournalException {
+        try {
+            java.nio.file.Files.createLink(dst.toPath(), src.toPath());
+        } catch (UnsupportedOperationException | IOException e) {
+            try {
+                java.nio.file.Files.copy(src.toPath(), dst.toPath());
+            } catch (IOException e1) {
+                throw new JournalException("Cannot copy %s to %s", e1, src, dst);
+            }
+            fsyncOrException(dst);
+        }
+    }
+
     public static File makeTempDir() {
         File result;
         try {
@@ -131,6 +216,57 @@ public final class Files {
 
     }
 
+    /**
+     * Maps file region starting at offset zero directly, bypassing MappedByteBuffer and its
+     * size limit. Mapping is not tracked by garbage collector and must be released with
+     * {@link #munmap(long, long)}.
+     *
+     * @param channel channel of file opened in mode compatible with mapping mode
+     * @param len     number of bytes to map, must not exceed file size
+     * @param rw      true for read-write mapping, false for read-only
+     * @return address of mapping
+     * @throws IOException if mapping fails
+     */
+    public static long mmap(FileChannel channel, long len, boolean rw) throws IOException {
+        try {
+            return (Long) MAP0.invoke(channel, rw ? MAP_RW : MAP_RO, 0L, len);
+        } catch (InvocationTargetException e) {
+            Throwable cause = e.getCause();
+            if (cause instanceof IOException) {
+                throw (IOException) cause;
+            }
+            throw new IOException(cause);
+        } catch (IllegalAccessException e) {
+            throw new FatalError(e);
+        }
+    }
+
+    public static void munmap(long address, long len) {
+        try {
+            UNMAP0.invoke(null, address, len);
+        } catch (IllegalAccessException | InvocationTargetException e) {
+            throw new FatalError(e);
+        }
+    }
+
+    /**
+     * Creates MappedByteBuffer view of memory mapped by {@link #mmap(FileChannel, long, boolean)}.
+     * View does not own memory and becomes invalid once memory is unmapped.
+     *
+     * @param address start of view
+     * @param size    view capacity
+     * @param fd      file descriptor to flush view to, can be null
+     * @param rw      true for writable view
+     * @return buffer view
+     */
+    public static MappedByteBuffer mmapView(long address, int size, FileDescriptor fd, boolean rw) {
+        try {
+            return (MappedByteBuffer) (rw ? NEW_MAPPED_BUFFER : NEW_MAPPED_BUFFER_R).invoke(null, size, address, fd, null);
+        } catch (IllegalAccessException | InvocationTargetException e) {
+            throw new FatalError(e);
+        }
+    }
+
     public static void mkDirsOrException(File dir) {
         if (!dir.mkdirs()) {
             throw new JournalRuntimeException("Cannot create temp directory: %s", dir);
@@ -194,6 +330,27 @@ public final class Files {
         }
     }
 
+    /**
+     * Replaces content of file, so that readers see either old or new content. Content is written to temp
+     * file next to target, which is forced and renamed over target. Directory is forced afterwards to make
+     * rename durable.
+     *
+     * @param file target file
+     * @param s    new content
+     * @throws JournalException if file cannot be written or renamed
+     */
+    public static void writeStringToFileAtomically(File file, String s) throws JournalException {
+        File temp = new File(file.getParentFile(), file.getName() + ".tmp");
+        writeStringToFile(temp, s);
+        fsyncOrException(temp);
+        try {
+            java.nio.file.Files.move(temp.toPath(), file.toPath(), StandardCopyOption.ATOMIC_MOVE);
+        } catch (IOException e) {
+            throw new JournalException("Cannot rename %s to %s", e, temp, file);
+        }
+        fsyncOrException(file.getParentFile());
+    }
+
     private native static long getLastModified(long lpszName);
 
     private native static long length(long lpszName);
@@ -226,6 +383,12 @@ public final class Files {
         }
     }
 
+    private static int getStaticInt(Class<?> clazz, String name) throws ReflectiveOperationException {
+        Field f = clazz.getDeclaredField(name);
+        f.setAccessible(true);
+        return f.getInt(null);
+    }
+
     private static boolean notSymlink(File file) throws IOException {
         if (file == null) {
             throw new IllegalArgumentException("File must not be null");
@@ -247,5 +410,22 @@ public final class Files {
 
     static {
         UTF_8 = Charset.forName("UTF-8");
+        try {
+            Class<?> fci = Class.forName("sun.nio.ch.FileChannelImpl");
+            MAP0 = fci.getDeclaredMethod("map0", int.class, long.class, long.class);
+            MAP0.setAccessible(true);
+            UNMAP0 = fci.getDeclaredMethod("unmap0", long.class, long.class);
+            UNMAP0.setAccessible(true);
+            MAP_RO = getStaticInt(fci, "MAP_RO");
+            MAP_RW = getStaticInt(fci, "MAP_RW");
+
+            Class<?> util = Class.forName("sun.nio.ch.Util");
+            NEW_MAPPED_BUFFER = util.getDeclaredMethod("newMappedByteBuffer", int.class, long.class, FileDescriptor.class, Runnable.class);
+            NEW_MAPPED_BUFFER.setAccessible(true);
+            NEW_MAPPED_BUFFER_R = util.getDeclaredMethod("newMappedByteBufferR", int.class, long.class, FileDescriptor.class, Runnable.class);
+            NEW_MAPPED_BUFFER_R.setAccessible(true);
+        } catch (ReflectiveOperationException e) {
+            throw new FatalError(e);
+        }
     }
 }
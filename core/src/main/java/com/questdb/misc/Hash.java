@@ -38,6 +38,48 @@ public final class Hash {
         return s == null ? -1 : (Chars.hashCode(s) & 0xFFFFFFF) & max;
     }
 
+    /**
+     * Spreads bits of hash code, so that high bits depend on all bits of the code. Hash codes
+     * of this class keep high bits clear for short keys and cannot be split by their high bits.
+     *
+     * @param hash hash code
+     * @return mixed hash code
+     */
+    public static int mix(int hash) {
+        hash ^= hash >>> 16;
+        hash *= 0x85ebca6b;
+        hash ^= hash >>> 13;
+        hash *= 0xc2b2ae35;
+        return hash ^ (hash >>> 16);
+    }
+
+    /**
+     * Calculates the same hash as {@link #hashMem(long, int)} for 4 bytes of memory, which
+     * hold value, without reading memory.
+     *
+     * @param value int value
+     * @return hash code
+     */
+    public static int hashInt(int value) {
+        int hash = (value & 0xffff) * 31 + (value >>> 16);
+        return hash < 0 ? -hash : hash;
+    }
+
+    /**
+     * Calculates the same hash as {@link #hashMem(long, int)} for 8 bytes of memory, which
+     * hold value, without reading memory.
+     *
+     * @param value long value
+     * @return hash code
+     */
+    public static int hashLong(long value) {
+        int hash = (int) (value & 0xffff);
+        hash = (hash << 5) - hash + (int) ((value >>> 16) & 0xffff);
+        hash = (hash << 5) - hash + (int) ((value >>> 32) & 0xffff);
+        hash = (hash << 5) - hash + (int) (value >>> 48);
+        return hash < 0 ? -hash : hash;
+    }
+
     /**
      * Calculates positive integer hash of memory pointer using Java hashcode() algorithm.
      *
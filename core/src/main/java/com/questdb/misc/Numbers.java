@@ -394,7 +394,7 @@ public final class Numbers {
         }
 
         // Cannot use doubleToRawLongBits because of possibility of NaNs.
-        long thisBits = Double.doubleToLongBits(1);
+        long thisBits = Double.doubleToLongBits(a);
         long anotherBits = Double.doubleToLongBits(b);
 
         return (thisBits == anotherBits ? 0 : // Values are equal
@@ -492,6 +492,38 @@ public final class Numbers {
         }
     }
 
+    public static long parseLongSize(CharSequence sequence) throws NumericException {
+        if (sequence == null || sequence.length() == 0) {
+            throw NumericException.INSTANCE;
+        }
+
+        int lim = sequence.length();
+        int shift;
+        switch (sequence.charAt(lim - 1)) {
+            case 'K':
+            case 'k':
+                shift = 10;
+                break;
+            case 'M':
+            case 'm':
+                shift = 20;
+                break;
+            case 'G':
+            case 'g':
+                shift = 30;
+                break;
+            default:
+                shift = 0;
+                break;
+        }
+
+        long val = parseLong0(sequence, 0, shift == 0 ? lim : lim - 1);
+        if (((val << shift) >> shift) != val) {
+            throw NumericException.INSTANCE;
+        }
+        return val << shift;
+    }
+
     @SuppressWarnings("Duplicates")
     private static double parseDouble(CharSequence sequence, final int p, int lim) throws NumericException {
 
@@ -31,6 +31,9 @@ import java.util.concurrent.atomic.AtomicLong;
 public final class Unsafe {
     public static final long CHAR_OFFSET;
     public static final long BYTE_OFFSET;
+    public static final long SHORT_OFFSET;
+    public static final long FLOAT_OFFSET;
+    public static final long DOUBLE_OFFSET;
     public final static int CACHE_LINE_SIZE = 64;
     public static final long INT_OFFSET;
     public static final long INT_SCALE;
@@ -134,6 +137,9 @@ public final class Unsafe {
 
             CHAR_OFFSET = Unsafe.getUnsafe().arrayBaseOffset(char[].class);
             BYTE_OFFSET = Unsafe.getUnsafe().arrayBaseOffset(byte[].class);
+            SHORT_OFFSET = Unsafe.getUnsafe().arrayBaseOffset(short[].class);
+            FLOAT_OFFSET = Unsafe.getUnsafe().arrayBaseOffset(float[].class);
+            DOUBLE_OFFSET = Unsafe.getUnsafe().arrayBaseOffset(double[].class);
 
             BOOL_OFFSET = Unsafe.getUnsafe().arrayBaseOffset(boolean[].class);
             BOOL_SCALE = msb(Unsafe.getUnsafe().arrayIndexScale(boolean[].class));
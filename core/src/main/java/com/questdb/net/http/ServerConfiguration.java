@@ -67,6 +67,9 @@ public class ServerConfiguration {
     private int dbCyclesBeforeCancel = 1024 * 1024;
     private int dbAnalyticFuncPage = 2 * 1024 * 1024;
     private int dbAnalyticWindowPage = 4 * 1024 * 1024;
+    private int dbParallelWorkers = 0;
+    private int dbParallelSliceRows = 1024 * 1024;
+    private long dbQueryMemoryBudget = 0;
     private File dbPath = new File("db");
     private File mimeTypes = new File("conf/mime.types");
     private File httpPublic = new File("public");
@@ -220,6 +223,22 @@ public class ServerConfiguration {
             this.dbAnalyticWindowPage = n;
         }
 
+        if ((n = parseInt(props, "db.parallel.workers")) > -1) {
+            this.dbParallelWorkers = n;
+        }
+
+        if ((n = parseInt(props, "db.parallel.slice.rows")) > 0) {
+            this.dbParallelSliceRows = n;
+        }
+
+        if ((s = props.getProperty("db.query.memory.budget")) != null) {
+            try {
+                this.dbQueryMemoryBudget = Numbers.parseLongSize(s);
+            } catch (NumericException e) {
+                System.out.println("db.query.memory.budget: invalid value");
+            }
+        }
+
         if ((s = props.getProperty("mime.types")) != null) {
             this.mimeTypes = normalize(root, new File(s));
         } else {
@@ -319,6 +338,22 @@ public class ServerConfiguration {
         return dbHashRowPage;
     }
 
+    public int getDbParallelSliceRows() {
+        return dbParallelSliceRows;
+    }
+
+    public int getDbParallelWorkers() {
+        return dbParallelWorkers;
+    }
+
+    public long getDbQueryMemoryBudget() {
+        return dbQueryMemoryBudget;
+    }
+
+    public void setDbQueryMemoryBudget(long dbQueryMemoryBudget) {
+        this.dbQueryMemoryBudget = dbQueryMemoryBudget;
+    }
+
     public File getDbPath() {
         return dbPath;
     }
@@ -460,6 +495,9 @@ public class ServerConfiguration {
                 ", dbSortKeyPage=" + dbSortKeyPage +
                 ", dbSortDataPage=" + dbSortDataPage +
                 ", dbAggregatePage=" + dbAggregatePage +
+                ", dbParallelWorkers=" + dbParallelWorkers +
+                ", dbParallelSliceRows=" + dbParallelSliceRows +
+                ", dbQueryMemoryBudget=" + dbQueryMemoryBudget +
                 ", dbPath=" + dbPath +
                 ", mimeTypes=" + mimeTypes +
                 ", httpPublic=" + httpPublic +
@@ -41,10 +41,11 @@ import com.questdb.ql.Record;
 import com.questdb.ql.RecordCursor;
 import com.questdb.ql.RecordSource;
 import com.questdb.ql.impl.ChannelCheckCancellationHandler;
+import com.questdb.ql.impl.QueryWorkerPool;
 import com.questdb.ql.model.ParsedModel;
+import com.questdb.ql.parser.QueryCache;
 import com.questdb.ql.parser.QueryCompiler;
 import com.questdb.ql.parser.QueryError;
-import com.questdb.std.AssociativeCache;
 import com.questdb.std.Mutable;
 
 import java.io.Closeable;
@@ -61,8 +62,11 @@ public abstract class AbstractQueryContext implements Mutable, Closeable {
     public static final int QUERY_RECORD_SUFFIX = 6;
     public static final int QUERY_DATA_SUFFIX = 7;
     static final ThreadLocal<QueryCompiler> COMPILER = new ThreadLocal<>();
-    static final ThreadLocal<AssociativeCache<RecordSource>> CACHE = new ThreadLocal<>();
+    // compiled queries are shared by all http threads
+    static final QueryCache CACHE = new QueryCache(8, 128);
     static final Log LOG = LogFactory.getLog(AbstractQueryContext.class);
+    // shared by compilers of all http threads, workers are daemon threads, which live as long as server
+    private static QueryWorkerPool workerPool;
     final ChannelCheckCancellationHandler cancellationHandler;
     final long fd;
     RecordSource recordSource;
@@ -93,7 +97,7 @@ public abstract class AbstractQueryContext implements Mutable, Closeable {
         }
         factory = Misc.free(factory);
         if (recordSource != null) {
-            CACHE.get().put(query.toString(), recordSource);
+            CACHE.put(recordSource);
             recordSource = null;
         }
         query = null;
@@ -115,7 +119,7 @@ public abstract class AbstractQueryContext implements Mutable, Closeable {
             AtomicLong hits) throws IOException {
         try {
             this.factory = pool.get();
-            recordSource = CACHE.get().poll(query);
+            recordSource = CACHE.poll(factory, query);
             if (recordSource == null) {
                 recordSource = executeQuery(r, writerFactory);
                 misses.incrementAndGet();
@@ -191,11 +195,17 @@ public abstract class AbstractQueryContext implements Mutable, Closeable {
 
     static void setupThread(ServerConfiguration configuration) {
         if (COMPILER.get() == null) {
-            COMPILER.set(new QueryCompiler(configuration));
+            QueryCompiler compiler = new QueryCompiler(configuration);
+            compiler.setWorkerPool(getWorkerPool(configuration));
+            COMPILER.set(compiler);
         }
-        if (CACHE.get() == null) {
-            CACHE.set(new AssociativeCache<RecordSource>(8, 128));
+    }
+
+    private static synchronized QueryWorkerPool getWorkerPool(ServerConfiguration configuration) {
+        if (workerPool == null && configuration.getDbParallelWorkers() > 0) {
+            workerPool = new QueryWorkerPool(configuration.getDbParallelWorkers());
         }
+        return workerPool;
     }
 
     LogRecord debug() {
@@ -210,7 +220,7 @@ public abstract class AbstractQueryContext implements Mutable, Closeable {
         QueryCompiler compiler = COMPILER.get();
         ParsedModel model = compiler.parse(query);
         if (model.isQuery()) {
-            return compiler.compile(factory, model);
+            return CACHE.compile(compiler, factory, query, model);
         }
 
         if (writerFactory != null) {
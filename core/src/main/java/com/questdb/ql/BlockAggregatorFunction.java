@@ -0,0 +1,52 @@
+/*******************************************************************************
+ *    ___                  _   ____  ____
+ *   / _ \ _   _  ___  ___| |_|  _ \| __ )
+ *  | | | | | | |/ _ \/ __| __| | | |  _ \
+ *  | |_| | |_| |  __/\__ \ |_| |_| | |_) |
+ *   \__\_\\__,_|\___||___/\__|____/|____/
+ *
+ * Copyright (C) 2014-2016 Appsicle
+ *
+ * This program is free software: you can redistribute it and/or  modify
+ * it under the terms of the GNU Affero General Public License, version 3,
+ * as published by the Free Software Foundation.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ *
+ ******************************************************************************/
+
+
+package com.questdb.ql;
+
+import com.questdb.ql.impl.map.DirectMapValues;
+
+/**
+ * Aggregator, which can process whole block of rows at a time. Block path reads argument
+ * column straight from column memory, so it is only available when argument is a column of
+ * record source rather than an expression.
+ */
+public interface BlockAggregatorFunction extends AggregatorFunction {
+
+    /**
+     * Checks if argument of this aggregator can be read from blocks. Called once, after
+     * aggregator arguments are set.
+     *
+     * @return true when {@link #calculate(RecordBlock, DirectMapValues)} can be used
+     */
+    boolean acceptsBlocks();
+
+    /**
+     * Aggregates selected rows of block in the order of selection. Result is the same as
+     * calling {@link #calculate(Record, DirectMapValues)} for each of selected rows.
+     *
+     * @param block  block with at least one selected row
+     * @param values values to update
+     */
+    void calculate(RecordBlock block, DirectMapValues values);
+}
@@ -0,0 +1,42 @@
+/*******************************************************************************
+ *    ___                  _   ____  ____
+ *   / _ \ _   _  ___  ___| |_|  _ \| __ )
+ *  | | | | | | |/ _ \/ __| __| | | |  _ \
+ *  | |_| | |_| |  __/\__ \ |_| |_| | |_) |
+ *   \__\_\\__,_|\___||___/\__|____/|____/
+ *
+ * Copyright (C) 2014-2016 Appsicle
+ *
+ * This program is free software: you can redistribute it and/or  modify
+ * it under the terms of the GNU Affero General Public License, version 3,
+ * as published by the Free Software Foundation.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ *
+ ******************************************************************************/
+
+
+package com.questdb.ql;
+
+import com.questdb.ql.impl.map.DirectMapValues;
+
+/**
+ * Aggregator, which partial results can be combined. Parallel aggregation computes partial
+ * results for disjoint sets of rows and then merges them into one map.
+ */
+public interface MergeableAggregatorFunction extends AggregatorFunction {
+
+    /**
+     * Combines partial result "from" into partial result "to". Both belong to the same key.
+     *
+     * @param to   values, which receive merged result
+     * @param from values of another map with identical structure
+     */
+    void merge(DirectMapValues to, DirectMapValues from);
+}
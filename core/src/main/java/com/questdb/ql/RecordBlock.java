@@ -0,0 +1,133 @@
+/*******************************************************************************
+ *    ___                  _   ____  ____
+ *   / _ \ _   _  ___  ___| |_|  _ \| __ )
+ *  | | | | | | |/ _ \/ __| __| | | |  _ \
+ *  | |_| | |_| |  __/\__ \ |_| |_| | |_) |
+ *   \__\_\\__,_|\___||___/\__|____/|____/
+ *
+ * Copyright (C) 2014-2016 Appsicle
+ *
+ * This program is free software: you can redistribute it and/or  modify
+ * it under the terms of the GNU Affero General Public License, version 3,
+ * as published by the Free Software Foundation.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ *
+ ******************************************************************************/
+
+
+package com.questdb.ql;
+
+import com.questdb.Partition;
+import com.questdb.misc.Unsafe;
+import com.questdb.ql.impl.JournalRecord;
+import com.questdb.ql.ops.VirtualColumn;
+
+/**
+ * Block of consecutive rows of a partition together with selection vector. Selection vector
+ * holds offsets of selected rows relative to first row of block in ascending order. Values
+ * of fixed width columns are read directly from column memory by address of block, other
+ * columns are available through record positioned at selected row.
+ */
+public class RecordBlock {
+    private final int[] rows;
+    private final JournalRecord record = new JournalRecord();
+    private Partition partition;
+    private long lo;
+    private int count;
+    private int size;
+    // true when selection vector is no longer identity
+    private boolean narrowed = false;
+
+    public RecordBlock(int capacity) {
+        this.rows = new int[capacity];
+        for (int i = 0; i < capacity; i++) {
+            Unsafe.arrayPut(rows, i, i);
+        }
+    }
+
+    /**
+     * Address of values of fixed width column for first row of block. Value of selected row
+     * i is at address + (getRow(i) &lt;&lt; log2(width)).
+     *
+     * @param columnIndex index of fixed width column
+     * @return address of column value of first row
+     */
+    public long getAddress(int columnIndex) {
+        return partition.fixCol(columnIndex).getBlockAddress(lo, count);
+    }
+
+    public int getCapacity() {
+        return rows.length;
+    }
+
+    /**
+     * @param i index in selection vector
+     * @return offset of selected row relative to first row of block
+     */
+    public int getRow(int i) {
+        return Unsafe.arrayGet(rows, i);
+    }
+
+    public int[] getRows() {
+        return rows;
+    }
+
+    public RecordBlock of(Partition partition, long lo, int count) {
+        this.partition = partition;
+        this.lo = lo;
+        this.count = count;
+        this.size = count;
+        this.record.partition = partition;
+        this.record.partitionIndex = partition.getPartitionIndex();
+        if (narrowed) {
+            for (int i = 0; i < count; i++) {
+                Unsafe.arrayPut(rows, i, i);
+            }
+            narrowed = false;
+        }
+        return this;
+    }
+
+    /**
+     * Positions record at selected row.
+     *
+     * @param i index in selection vector
+     * @return record
+     */
+    public Record recordAt(int i) {
+        record.rowid = lo + Unsafe.arrayGet(rows, i);
+        return record;
+    }
+
+    /**
+     * Narrows selection down to rows, which satisfy filter.
+     *
+     * @param filter boolean column
+     */
+    public void select(VirtualColumn filter) {
+        int n = 0;
+        for (int i = 0; i < size; i++) {
+            int r = Unsafe.arrayGet(rows, i);
+            record.rowid = lo + r;
+            if (filter.getBool(record)) {
+                Unsafe.arrayPut(rows, n++, r);
+            }
+        }
+        size = n;
+        narrowed = true;
+    }
+
+    /**
+     * @return number of selected rows
+     */
+    public int size() {
+        return size;
+    }
+}
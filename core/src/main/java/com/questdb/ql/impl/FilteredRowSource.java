@@ -46,6 +46,14 @@ public class FilteredRowSource implements RowSource, RowCursor {
         this.delegate.configure(metadata);
     }
 
+    public RowSource getDelegate() {
+        return delegate;
+    }
+
+    public VirtualColumn getFilter() {
+        return filter;
+    }
+
     @Override
     public void prepare(JournalReaderFactory factory, StorageFacade facade, CancellationHandler cancellationHandler) {
         delegate.prepare(factory, facade, cancellationHandler);
@@ -0,0 +1,117 @@
+/*******************************************************************************
+ *    ___                  _   ____  ____
+ *   / _ \ _   _  ___  ___| |_|  _ \| __ )
+ *  | | | | | | |/ _ \/ __| __| | | |  _ \
+ *  | |_| | |_| |  __/\__ \ |_| |_| | |_) |
+ *   \__\_\\__,_|\___||___/\__|____/|____/
+ *
+ * Copyright (C) 2014-2016 Appsicle
+ *
+ * This program is free software: you can redistribute it and/or  modify
+ * it under the terms of the GNU Affero General Public License, version 3,
+ * as published by the Free Software Foundation.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ *
+ ******************************************************************************/
+
+
+package com.questdb.ql.impl;
+
+import com.questdb.Partition;
+import com.questdb.ex.JournalException;
+import com.questdb.ex.JournalRuntimeException;
+import com.questdb.ql.*;
+import com.questdb.ql.ops.VirtualColumn;
+import com.questdb.std.AbstractImmutableIterator;
+
+/**
+ * Block cursor over partitions of {@link JournalRecordSource}, which scans all rows of its
+ * partition slices, optionally narrowing each block down by row filter. Cursor reuses partition
+ * cursor of record source, so record source must be prepared before {@link #prepare()} and
+ * must not be iterated as record cursor at the same time.
+ */
+public class JournalBlockCursor extends AbstractImmutableIterator<RecordBlock> implements BlockCursor {
+    public static final int BLOCK_SIZE = 4096;
+    private final JournalRecordSource recordSource;
+    private final VirtualColumn filter;
+    private final RecordBlock block = new RecordBlock(BLOCK_SIZE);
+    private PartitionCursor partitionCursor;
+    private Partition partition;
+    private long lo;
+    private long hi;
+
+    private JournalBlockCursor(JournalRecordSource recordSource, VirtualColumn filter) {
+        this.recordSource = recordSource;
+        this.filter = filter;
+    }
+
+    /**
+     * Creates block cursor for record source, which is a full scan of journal with optional filter.
+     *
+     * @param recordSource record source
+     * @return block cursor or null when rows of record source cannot be read in blocks
+     */
+    public static JournalBlockCursor create(RecordSource recordSource) {
+        if (!(recordSource instanceof JournalRecordSource)) {
+            return null;
+        }
+
+        RowSource rowSource = ((JournalRecordSource) recordSource).getRowSource();
+        VirtualColumn filter = null;
+        if (rowSource instanceof FilteredRowSource) {
+            filter = ((FilteredRowSource) rowSource).getFilter();
+            rowSource = ((FilteredRowSource) rowSource).getDelegate();
+        }
+
+        if (rowSource.getClass() != AllRowSource.class) {
+            return null;
+        }
+        return new JournalBlockCursor((JournalRecordSource) recordSource, filter);
+    }
+
+    @Override
+    public boolean hasNext() {
+        while (lo > hi) {
+            if (!partitionCursor.hasNext()) {
+                return false;
+            }
+
+            PartitionSlice slice = partitionCursor.next();
+            try {
+                partition = slice.partition.open();
+                hi = slice.calcHi ? partition.size() - 1 : slice.hi;
+            } catch (JournalException e) {
+                throw new JournalRuntimeException(e);
+            }
+            lo = slice.lo;
+        }
+
+        int count = (int) Math.min(BLOCK_SIZE, hi - lo + 1);
+        block.of(partition, lo, count);
+        lo += count;
+        if (filter != null) {
+            block.select(filter);
+        }
+        return true;
+    }
+
+    @Override
+    public RecordBlock next() {
+        return block;
+    }
+
+    public JournalBlockCursor prepare() {
+        this.partitionCursor = recordSource.getPartitionCursor();
+        this.partition = null;
+        this.lo = 0;
+        this.hi = -1;
+        return this;
+    }
+}
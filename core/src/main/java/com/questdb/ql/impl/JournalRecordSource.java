@@ -56,6 +56,20 @@ public class JournalRecordSource extends AbstractCombinedRecordSource {
         return metadata;
     }
 
+    /**
+     * Partition cursor of last {@link #prepareCursor(JournalReaderFactory, CancellationHandler)} call.
+     * Callers that iterate partition slices directly must not use this source as cursor.
+     *
+     * @return partition cursor
+     */
+    public PartitionCursor getPartitionCursor() {
+        return partitionCursor;
+    }
+
+    public RowSource getRowSource() {
+        return rowSource;
+    }
+
     @Override
     public RecordCursor prepareCursor(JournalReaderFactory factory, CancellationHandler cancellationHandler) {
         rowSource.reset();
@@ -0,0 +1,173 @@
+/*******************************************************************************
+ *    ___                  _   ____  ____
+ *   / _ \ _   _  ___  ___| |_|  _ \| __ )
+ *  | | | | | | |/ _ \/ __| __| | | |  _ \
+ *  | |_| | |_| |  __/\__ \ |_| |_| | |_) |
+ *   \__\_\\__,_|\___||___/\__|____/|____/
+ *
+ * Copyright (C) 2014-2016 Appsicle
+ *
+ * This program is free software: you can redistribute it and/or  modify
+ * it under the terms of the GNU Affero General Public License, version 3,
+ * as published by the Free Software Foundation.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ *
+ ******************************************************************************/
+
+
+package com.questdb.ql.impl;
+
+import com.questdb.ex.JournalRuntimeException;
+import com.questdb.log.Log;
+import com.questdb.log.LogFactory;
+import com.questdb.mp.*;
+import com.questdb.std.ObjHashSet;
+import com.questdb.std.ObjList;
+import com.questdb.std.ObjectFactory;
+
+import java.io.Closeable;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Pool of workers shared by queries, which execute parts of a query in parallel. Any number of
+ * query threads can submit tasks concurrently. Query thread then helps workers to drain queue until
+ * all of its own tasks are complete, so that query progresses even when every worker is busy
+ * with other queries.
+ */
+public class QueryWorkerPool implements Closeable {
+    private static final Log LOG = LogFactory.getLog(QueryWorkerPool.class);
+    private static final int QUEUE_CAPACITY = 1024;
+    private final RingQueue<Task> queue = new RingQueue<>(Task.FACTORY, QUEUE_CAPACITY);
+    private final MPSequence pubSeq = new MPSequence(QUEUE_CAPACITY);
+    private final MCSequence subSeq = new MCSequence(QUEUE_CAPACITY, null);
+    private final ObjList<Worker> workers = new ObjList<>();
+    private final CountDownLatch haltLatch;
+    private final TaskJob job = new TaskJob();
+
+    public QueryWorkerPool(int workerCount) {
+        pubSeq.then(subSeq).then(pubSeq);
+        ObjHashSet<Job> jobs = new ObjHashSet<>();
+        jobs.add(job);
+        this.haltLatch = new CountDownLatch(workerCount);
+        for (int i = 0; i < workerCount; i++) {
+            Worker w = new Worker(jobs, haltLatch);
+            w.setName("questdb-query-" + i);
+            w.setDaemon(true);
+            workers.add(w);
+            w.start();
+        }
+    }
+
+    @Override
+    public void close() {
+        for (int i = 0, n = workers.size(); i < n; i++) {
+            workers.getQuick(i).halt();
+        }
+        try {
+            if (!haltLatch.await(10, TimeUnit.SECONDS)) {
+                LOG.error().$("Query workers did not halt in time").$();
+            }
+        } catch (InterruptedException ignore) {
+            Thread.currentThread().interrupt();
+        }
+        workers.clear();
+    }
+
+    public int getWorkerCount() {
+        return workers.size();
+    }
+
+    /**
+     * Executes tasks on workers and calling thread and returns when all of them are complete.
+     *
+     * @param tasks tasks that do not share mutable state
+     * @throws JournalRuntimeException when any of the tasks failed, cause is the first failure
+     */
+    public void run(ObjList<? extends Runnable> tasks) {
+        Batch batch = new Batch();
+        batch.pending.set(tasks.size());
+
+        for (int i = 0, n = tasks.size(); i < n; i++) {
+            long cursor;
+            while ((cursor = pubSeq.next()) < 0) {
+                if (cursor == -1) {
+                    // queue is full, help workers out
+                    job.run();
+                }
+            }
+            Task t = queue.get(cursor);
+            t.batch = batch;
+            t.runnable = tasks.getQuick(i);
+            pubSeq.done(cursor);
+        }
+
+        while (batch.pending.get() > 0) {
+            if (!job.run()) {
+                Thread.yield();
+            }
+        }
+
+        if (batch.error != null) {
+            throw new JournalRuntimeException("Parallel query task failed", batch.error);
+        }
+    }
+
+    private static class Batch {
+        private final AtomicInteger pending = new AtomicInteger();
+        private volatile Throwable error;
+    }
+
+    private static class Task {
+        private static final ObjectFactory<Task> FACTORY = new ObjectFactory<Task>() {
+            @Override
+            public Task newInstance() {
+                return new Task();
+            }
+        };
+
+        private Batch batch;
+        private Runnable runnable;
+    }
+
+    private class TaskJob implements Job {
+        @Override
+        public boolean run() {
+            long cursor = subSeq.next();
+            if (cursor < 0) {
+                return false;
+            }
+
+            Task t = queue.get(cursor);
+            final Batch batch = t.batch;
+            final Runnable runnable = t.runnable;
+            t.batch = null;
+            t.runnable = null;
+            subSeq.done(cursor);
+
+            try {
+                runnable.run();
+            } catch (Throwable e) {
+                LOG.error().$("Query task failed: ").$(e).$();
+                if (batch.error == null) {
+                    batch.error = e;
+                }
+            } finally {
+                batch.pending.decrementAndGet();
+            }
+            return true;
+        }
+
+        @Override
+        public void setupThread() {
+        }
+    }
+}
@@ -33,6 +33,7 @@ import com.questdb.ql.RecordCursor;
 import com.questdb.ql.StorageFacade;
 import com.questdb.std.AbstractImmutableIterator;
 import com.questdb.std.DirectInputStream;
+import com.questdb.std.MemoryBudget;
 import com.questdb.std.MemoryPages;
 import com.questdb.std.Mutable;
 import com.questdb.store.ColumnType;
@@ -52,8 +53,12 @@ public class RecordList extends AbstractImmutableIterator<Record> implements Clo
     private long wPtr;
 
     public RecordList(RecordMetadata recordMetadata, int pageSize) {
+        this(recordMetadata, pageSize, null);
+    }
+
+    public RecordList(RecordMetadata recordMetadata, int pageSize, MemoryBudget budget) {
         this.metadata = recordMetadata;
-        this.mem = new MemoryPages(pageSize);
+        this.mem = new MemoryPages(pageSize, budget);
         this.record = new RecordListRecord(recordMetadata, mem);
         this.headerSize = record.getHeaderSize();
         this.columnCount = recordMetadata.getColumnCount();
@@ -0,0 +1,82 @@
+/*******************************************************************************
+ *    ___                  _   ____  ____
+ *   / _ \ _   _  ___  ___| |_|  _ \| __ )
+ *  | | | | | | |/ _ \/ __| __| | | |  _ \
+ *  | |_| | |_| |  __/\__ \ |_| |_| | |_) |
+ *   \__\_\\__,_|\___||___/\__|____/|____/
+ *
+ * Copyright (C) 2014-2016 Appsicle
+ *
+ * This program is free software: you can redistribute it and/or  modify
+ * it under the terms of the GNU Affero General Public License, version 3,
+ * as published by the Free Software Foundation.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ *
+ ******************************************************************************/
+
+
+package com.questdb.ql.impl;
+
+import com.questdb.ex.JournalException;
+import com.questdb.ex.JournalRuntimeException;
+import com.questdb.factory.JournalReaderFactory;
+import com.questdb.factory.configuration.JournalMetadata;
+import com.questdb.ql.*;
+import com.questdb.std.CharSink;
+
+/**
+ * Same as {@link AllRowSource} but returns rows of slice from last to first.
+ */
+public class ReverseAllRowSource implements RowSource, RowCursor {
+    private long lo;
+    private long hi;
+
+    @Override
+    public void configure(JournalMetadata metadata) {
+    }
+
+    @Override
+    public void prepare(JournalReaderFactory factory, StorageFacade storageFacade, CancellationHandler cancellationHandler) {
+
+    }
+
+    @Override
+    public RowCursor prepareCursor(PartitionSlice slice) {
+        try {
+            this.lo = slice.lo;
+            this.hi = slice.calcHi ? slice.partition.open().size() - 1 : slice.hi;
+            return this;
+        } catch (JournalException e) {
+            throw new JournalRuntimeException(e);
+        }
+    }
+
+    @Override
+    public void reset() {
+
+    }
+
+    @Override
+    public boolean hasNext() {
+        return hi >= lo;
+    }
+
+    @Override
+    public long next() {
+        return hi--;
+    }
+
+    @Override
+    public void toSink(CharSink sink) {
+        sink.put('{');
+        sink.putQuoted("op").put(':').putQuoted("ReverseAllRowSource");
+        sink.put('}');
+    }
+}
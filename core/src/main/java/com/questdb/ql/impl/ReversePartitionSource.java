@@ -0,0 +1,118 @@
+/*******************************************************************************
+ *    ___                  _   ____  ____
+ *   / _ \ _   _  ___  ___| |_|  _ \| __ )
+ *  | | | | | | |/ _ \/ __| __| | | |  _ \
+ *  | |_| | |_| |  __/\__ \ |_| |_| | |_) |
+ *   \__\_\\__,_|\___||___/\__|____/|____/
+ *
+ * Copyright (C) 2014-2016 Appsicle
+ *
+ * This program is free software: you can redistribute it and/or  modify
+ * it under the terms of the GNU Affero General Public License, version 3,
+ * as published by the Free Software Foundation.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ *
+ ******************************************************************************/
+
+
+package com.questdb.ql.impl;
+
+import com.questdb.Partition;
+import com.questdb.ex.JournalException;
+import com.questdb.ex.JournalRuntimeException;
+import com.questdb.factory.JournalReaderFactory;
+import com.questdb.factory.configuration.JournalMetadata;
+import com.questdb.ql.PartitionCursor;
+import com.questdb.ql.PartitionSlice;
+import com.questdb.ql.PartitionSource;
+import com.questdb.ql.StorageFacade;
+import com.questdb.std.AbstractImmutableIterator;
+import com.questdb.std.CharSink;
+import com.questdb.std.LongList;
+import com.questdb.std.ObjList;
+
+/**
+ * Returns slices of underlying source from last to first. Slices are collected when cursor is prepared,
+ * which is cheap as they are only partition references and row bounds. Together with
+ * {@link ReverseAllRowSource} this scans journal in descending timestamp order.
+ */
+public class ReversePartitionSource extends AbstractImmutableIterator<PartitionSlice> implements PartitionSource, PartitionCursor {
+    private final PartitionSource partitionSource;
+    private final PartitionSlice slice = new PartitionSlice();
+    private final ObjList<Partition> partitions = new ObjList<>();
+    // lo and hi pairs of collected slices
+    private final LongList bounds = new LongList();
+    private PartitionCursor partitionCursor;
+    private int index;
+
+    public ReversePartitionSource(PartitionSource partitionSource) {
+        this.partitionSource = partitionSource;
+    }
+
+    @Override
+    public JournalMetadata getMetadata() {
+        return partitionSource.getMetadata();
+    }
+
+    @Override
+    public PartitionCursor prepareCursor(JournalReaderFactory readerFactory) {
+        partitionCursor = partitionSource.prepareCursor(readerFactory);
+        partitions.clear();
+        bounds.clear();
+        try {
+            while (partitionCursor.hasNext()) {
+                PartitionSlice s = partitionCursor.next();
+                long hi = s.calcHi ? s.partition.open().size() - 1 : s.hi;
+                if (s.lo <= hi) {
+                    partitions.add(s.partition);
+                    bounds.add(s.lo);
+                    bounds.add(hi);
+                }
+            }
+        } catch (JournalException e) {
+            throw new JournalRuntimeException(e);
+        }
+        index = partitions.size();
+        return this;
+    }
+
+    @Override
+    public Partition getPartition(int index) {
+        return partitionCursor.getPartition(index);
+    }
+
+    @Override
+    public StorageFacade getStorageFacade() {
+        return partitionCursor.getStorageFacade();
+    }
+
+    @Override
+    public boolean hasNext() {
+        return index > 0;
+    }
+
+    @Override
+    public PartitionSlice next() {
+        index--;
+        slice.partition = partitions.getQuick(index);
+        slice.lo = bounds.getQuick(index * 2);
+        slice.hi = bounds.getQuick(index * 2 + 1);
+        slice.calcHi = false;
+        return slice;
+    }
+
+    @Override
+    public void toSink(CharSink sink) {
+        sink.put('{');
+        sink.putQuoted("op").put(':').putQuoted("ReversePartitionSource").put(',');
+        sink.putQuoted("psrc").put(':').put(partitionSource);
+        sink.put('}');
+    }
+}
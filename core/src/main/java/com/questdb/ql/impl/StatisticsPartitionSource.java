@@ -0,0 +1,198 @@
+/*******************************************************************************
+ *    ___                  _   ____  ____
+ *   / _ \ _   _  ___  ___| |_|  _ \| __ )
+ *  | | | | | | |/ _ \/ __| __| | | |  _ \
+ *  | |_| | |_| |  __/\__ \ |_| |_| | |_) |
+ *   \__\_\\__,_|\___||___/\__|____/|____/
+ *
+ * Copyright (C) 2014-2016 Appsicle
+ *
+ * This program is free software: you can redistribute it and/or  modify
+ * it under the terms of the GNU Affero General Public License, version 3,
+ * as published by the Free Software Foundation.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ *
+ ******************************************************************************/
+
+package com.questdb.ql.impl;
+
+import com.questdb.Partition;
+import com.questdb.ex.JournalException;
+import com.questdb.ex.JournalRuntimeException;
+import com.questdb.factory.JournalReaderFactory;
+import com.questdb.factory.configuration.JournalMetadata;
+import com.questdb.ql.PartitionCursor;
+import com.questdb.ql.PartitionSlice;
+import com.questdb.ql.PartitionSource;
+import com.questdb.ql.StorageFacade;
+import com.questdb.ql.model.ColumnRanges;
+import com.questdb.std.AbstractImmutableIterator;
+import com.questdb.std.CharSink;
+import com.questdb.store.PartitionStatistics;
+
+/**
+ * Removes partitions and, optionally, blocks of rows from slices of underlying source when column statistics
+ * show that none of their rows are within column ranges. Rows that statistics do not yet describe are
+ * always returned.
+ */
+public class StatisticsPartitionSource extends AbstractImmutableIterator<PartitionSlice> implements PartitionSource, PartitionCursor {
+    private final PartitionSource partitionSource;
+    private final ColumnRanges ranges;
+    private final boolean splitBlocks;
+    private final PartitionSlice result = new PartitionSlice();
+    private PartitionCursor partitionCursor;
+    private PartitionStatistics statistics;
+    private Partition partition;
+    private long rowCount;
+    private long pos = 0;
+    private long hi = -1;
+
+    public StatisticsPartitionSource(PartitionSource partitionSource, ColumnRanges ranges, boolean splitBlocks) {
+        this.partitionSource = partitionSource;
+        this.ranges = ranges;
+        this.splitBlocks = splitBlocks;
+    }
+
+    @Override
+    public JournalMetadata getMetadata() {
+        return partitionSource.getMetadata();
+    }
+
+    @Override
+    public PartitionCursor prepareCursor(JournalReaderFactory readerFactory) {
+        partitionCursor = partitionSource.prepareCursor(readerFactory);
+        pos = 0;
+        hi = -1;
+        return this;
+    }
+
+    @Override
+    public Partition getPartition(int index) {
+        return partitionCursor.getPartition(index);
+    }
+
+    @Override
+    public StorageFacade getStorageFacade() {
+        return partitionCursor.getStorageFacade();
+    }
+
+    @Override
+    public boolean hasNext() {
+        while (true) {
+            if (pos > hi) {
+                if (!partitionCursor.hasNext()) {
+                    return false;
+                }
+
+                PartitionSlice slice = partitionCursor.next();
+                partition = slice.partition;
+                pos = slice.lo;
+                hi = slice.calcHi ? partition.size() - 1 : slice.hi;
+
+                if (pos > hi) {
+                    continue;
+                }
+
+                try {
+                    statistics = partition.getStatistics();
+                } catch (JournalException e) {
+                    throw new JournalRuntimeException(e);
+                }
+
+                if (statistics == null) {
+                    return emit(pos, hi);
+                }
+
+                rowCount = statistics.getRowCount();
+                if (hi < rowCount && !mayMatch(PartitionStatistics.SUMMARY)) {
+                    pos = hi + 1;
+                    continue;
+                }
+
+                if (!splitBlocks) {
+                    return emit(pos, hi);
+                }
+            }
+
+            // skip blocks that cannot match
+            while (pos <= hi && pos < rowCount && !mayMatch(statistics.blockOf(pos))) {
+                pos = statistics.blockHi(statistics.blockOf(pos));
+            }
+
+            if (pos > hi) {
+                continue;
+            }
+
+            long lo = pos;
+            while (pos <= hi && pos < rowCount && mayMatch(statistics.blockOf(pos))) {
+                pos = statistics.blockHi(statistics.blockOf(pos));
+            }
+
+            // rows past statistics are not described and have to be scanned
+            return emit(lo, pos >= rowCount ? hi : Math.min(pos - 1, hi));
+        }
+    }
+
+    @Override
+    public PartitionSlice next() {
+        return result;
+    }
+
+    @Override
+    public void toSink(CharSink sink) {
+        sink.put('{');
+        sink.putQuoted("op").put(':').putQuoted("StatisticsPartitionSource").put(',');
+        sink.putQuoted("psrc").put(':').put(partitionSource);
+        sink.put('}');
+    }
+
+    private boolean emit(long lo, long hi) {
+        result.partition = partition;
+        result.lo = lo;
+        result.hi = hi;
+        pos = hi + 1;
+        return true;
+    }
+
+    private boolean mayMatch(int block) {
+        long rows = statistics.getRowCount(block);
+        for (int i = 0, n = ranges.size(); i < n; i++) {
+            ColumnRanges.Range r = ranges.getQuick(i);
+            if (!statistics.isTrackedColumn(r.columnIndex)) {
+                continue;
+            }
+
+            long nulls = statistics.getNullCount(r.columnIndex, block);
+            if (r.isNull) {
+                if (nulls == 0) {
+                    return false;
+                }
+                continue;
+            }
+
+            if (nulls >= rows) {
+                return false;
+            }
+
+            if (r.floating) {
+                if (r.dLo > r.dHi
+                        || statistics.getDoubleMax(r.columnIndex, block) < r.dLo
+                        || statistics.getDoubleMin(r.columnIndex, block) > r.dHi) {
+                    return false;
+                }
+            } else if (r.lo > r.hi
+                    || statistics.getLongMax(r.columnIndex, block) < r.lo
+                    || statistics.getLongMin(r.columnIndex, block) > r.hi) {
+                return false;
+            }
+        }
+        return true;
+    }
+}
@@ -0,0 +1,126 @@
+/*******************************************************************************
+ *    ___                  _   ____  ____
+ *   / _ \ _   _  ___  ___| |_|  _ \| __ )
+ *  | | | | | | |/ _ \/ __| __| | | |  _ \
+ *  | |_| | |_| |  __/\__ \ |_| |_| | |_) |
+ *   \__\_\\__,_|\___||___/\__|____/|____/
+ *
+ * Copyright (C) 2014-2016 Appsicle
+ *
+ * This program is free software: you can redistribute it and/or  modify
+ * it under the terms of the GNU Affero General Public License, version 3,
+ * as published by the Free Software Foundation.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ *
+ ******************************************************************************/
+
+
+package com.questdb.ql.impl;
+
+import com.questdb.Partition;
+import com.questdb.ex.JournalException;
+import com.questdb.ex.JournalRuntimeException;
+import com.questdb.factory.JournalReaderFactory;
+import com.questdb.factory.configuration.RecordMetadata;
+import com.questdb.misc.Misc;
+import com.questdb.ql.*;
+import com.questdb.ql.ops.AbstractRecordSource;
+import com.questdb.std.CharSink;
+import com.questdb.store.PartitionStatistics;
+
+/**
+ * Serves order by journal timestamp straight from journal scan, forward or reverse, when partition
+ * statistics prove that scanned rows are stored in timestamp order. Otherwise records come from
+ * sorted source. Check reads statistics of each partition once and does not touch rows.
+ */
+public class TimestampScanRecordSource extends AbstractRecordSource {
+    private final PartitionSource partitionSource;
+    private final RecordSource scan;
+    private final RecordSource sorted;
+    private final int timestampIndex;
+
+    public TimestampScanRecordSource(PartitionSource partitionSource, RecordSource scan, RecordSource sorted) {
+        this.partitionSource = partitionSource;
+        this.scan = scan;
+        this.sorted = sorted;
+        this.timestampIndex = partitionSource.getMetadata().getTimestampIndex();
+    }
+
+    @Override
+    public void close() {
+        Misc.free(scan);
+        Misc.free(sorted);
+    }
+
+    @Override
+    public RecordMetadata getMetadata() {
+        return scan.getMetadata();
+    }
+
+    @Override
+    public RecordCursor prepareCursor(JournalReaderFactory factory, CancellationHandler cancellationHandler) {
+        if (isOrdered(partitionSource.prepareCursor(factory))) {
+            return scan.prepareCursor(factory, cancellationHandler);
+        }
+        return sorted.prepareCursor(factory, cancellationHandler);
+    }
+
+    @Override
+    public boolean supportsRowIdAccess() {
+        return scan.supportsRowIdAccess() && sorted.supportsRowIdAccess();
+    }
+
+    @Override
+    public void toSink(CharSink sink) {
+        sink.put('{');
+        sink.putQuoted("op").put(':').putQuoted("TimestampScanRecordSource").put(',');
+        sink.putQuoted("scan").put(':').put(scan).put(',');
+        sink.putQuoted("sorted").put(':').put(sorted);
+        sink.put('}');
+    }
+
+    private boolean isOrdered(PartitionCursor cursor) {
+        Partition prev = null;
+        PartitionStatistics prevStatistics = null;
+        long prevHi = -1;
+
+        try {
+            while (cursor.hasNext()) {
+                PartitionSlice slice = cursor.next();
+                Partition partition = slice.partition;
+                long hi = slice.calcHi ? partition.open().size() - 1 : slice.hi;
+                if (slice.lo > hi) {
+                    continue;
+                }
+
+                PartitionStatistics statistics = partition.getStatistics();
+                if (statistics == null || statistics.getOrderedRowCount() <= hi) {
+                    return false;
+                }
+
+                if (partition == prev) {
+                    if (slice.lo <= prevHi) {
+                        return false;
+                    }
+                } else if (prev != null && prevStatistics.getLongMax(timestampIndex, PartitionStatistics.SUMMARY) > statistics.getLongMin(timestampIndex, PartitionStatistics.SUMMARY)) {
+                    // partitions overlap, which is the case of out of order partition
+                    return false;
+                }
+
+                prev = partition;
+                prevStatistics = statistics;
+                prevHi = hi;
+            }
+        } catch (JournalException e) {
+            throw new JournalRuntimeException(e);
+        }
+        return true;
+    }
+}
@@ -109,7 +109,8 @@ public class TopRecordSource extends AbstractCombinedRecordSource {
         sink.put('{');
         sink.putQuoted("op").put(':').putQuoted("TopRecordSource").put(',');
         sink.putQuoted("low").put(':').put(lo.getLong(null)).put(',');
-        sink.putQuoted("high").put(':').put(hi.getLong(null));
+        sink.putQuoted("high").put(':').put(hi.getLong(null)).put(',');
+        sink.putQuoted("src").put(':').put(recordSource);
         sink.put('}');
     }
 
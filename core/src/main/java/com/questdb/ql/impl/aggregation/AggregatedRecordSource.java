@@ -29,6 +29,8 @@ import com.questdb.factory.configuration.RecordColumnMetadata;
 import com.questdb.factory.configuration.RecordMetadata;
 import com.questdb.misc.Misc;
 import com.questdb.ql.*;
+import com.questdb.ql.impl.JournalBlockCursor;
+import com.questdb.ql.impl.QueryWorkerPool;
 import com.questdb.ql.impl.map.*;
 import com.questdb.ql.ops.AbstractCombinedRecordSource;
 import com.questdb.std.*;
@@ -46,6 +48,11 @@ public class AggregatedRecordSource extends AbstractCombinedRecordSource impleme
     private final DirectMapStorageFacade storageFacade;
     private final DirectMapRecord record;
     private final ObjList<MapRecordValueInterceptor> interceptors;
+    private final ParallelAggregator parallelAggregator;
+    private final JournalBlockCursor blockCursor;
+    // single fixed width key is looked up as primitive, without KeyWriter
+    private final int keyWidth;
+    private final int keyType;
     private RecordCursor recordCursor;
     private Iterator<DirectMapEntry> mapCursor;
 
@@ -54,6 +61,18 @@ public class AggregatedRecordSource extends AbstractCombinedRecordSource impleme
             @Transient ObjHashSet<String> keyColumns,
             ObjList<AggregatorFunction> aggregators,
             int pageSize
+    ) {
+        this(recordSource, keyColumns, aggregators, pageSize, null, 0, null);
+    }
+
+    public AggregatedRecordSource(
+            RecordSource recordSource,
+            @Transient ObjHashSet<String> keyColumns,
+            ObjList<AggregatorFunction> aggregators,
+            int pageSize,
+            QueryWorkerPool pool,
+            long sliceRows,
+            MemoryBudget budget
     ) {
         int keyColumnsSize = keyColumns.size();
         this.keyIndices = new IntList(keyColumnsSize);
@@ -86,14 +105,24 @@ public class AggregatedRecordSource extends AbstractCombinedRecordSource impleme
         this.interceptors = interceptors;
         this.metadata = new DirectMapMetadata(rm, keyColumns, columns);
         this.storageFacade = new DirectMapStorageFacade(columns.size(), keyIndices);
-        this.map = new DirectMap(pageSize, keyColumnsSize, AggregationUtils.toThreadLocalTypes(columns));
+        this.map = new DirectMap(pageSize, keyColumnsSize, AggregationUtils.toThreadLocalTypes(columns), budget);
         this.recordSource = recordSource;
         this.record = new DirectMapRecord(storageFacade);
+        this.parallelAggregator = ParallelAggregator.create(pool, sliceRows, recordSource, keyIndices, aggregators, pageSize, AggregationUtils.toThreadLocalTypes(columns), budget);
+        if (keyColumnsSize == 1) {
+            this.keyType = rm.getColumnQuick(keyIndices.getQuick(0)).getType();
+            this.keyWidth = MapUtils.fixedKeyWidth(keyType);
+        } else {
+            this.keyType = -1;
+            this.keyWidth = 0;
+        }
+        this.blockCursor = parallelAggregator == null && keyColumnsSize == 0 && acceptBlocks(aggregators) ? JournalBlockCursor.create(recordSource) : null;
     }
 
     @Override
     public void close() {
         Misc.free(this.map);
+        Misc.free(parallelAggregator);
         Misc.free(recordSource);
     }
 
@@ -159,27 +188,55 @@ public class AggregatedRecordSource extends AbstractCombinedRecordSource impleme
     public void toSink(CharSink sink) {
         sink.put('{');
         sink.putQuoted("op").put(':').putQuoted("AggregatedRecordSource").put(',');
+        if (parallelAggregator != null) {
+            sink.putQuoted("parallel").put(':').put(true).put(',');
+        }
+        if (blockCursor != null) {
+            sink.putQuoted("blocks").put(':').put(true).put(',');
+        }
         sink.putQuoted("src").put(':').put(recordSource);
         sink.put('}');
     }
 
     private void buildMap(CancellationHandler cancellationHandler) {
 
+        if (parallelAggregator != null) {
+            parallelAggregator.aggregate(map, cancellationHandler);
+            mapCursor = map.iterator();
+            return;
+        }
+
+        if (blockCursor != null) {
+            buildMapFromBlocks(cancellationHandler);
+            return;
+        }
+
         while (recordCursor.hasNext()) {
 
             cancellationHandler.check();
 
             Record rec = recordCursor.next();
 
-            // we are inside of time window, compute aggregates
-            DirectMap.KeyWriter keyWriter = map.keyWriter();
-            for (int i = 0; i < keyIndices.size(); i++) {
-                int index;
-                MapUtils.putRecord(keyWriter, rec, index = keyIndices.getQuick(i),
-                        recordSource.getMetadata().getColumnQuick(index).getType());
+            DirectMapValues values;
+            switch (keyWidth) {
+                case 4:
+                    values = map.getOrCreateValues(MapUtils.intKey(rec, keyIndices.getQuick(0), keyType));
+                    break;
+                case 8:
+                    values = map.getOrCreateValues(MapUtils.longKey(rec, keyIndices.getQuick(0), keyType));
+                    break;
+                default:
+                    // we are inside of time window, compute aggregates
+                    DirectMap.KeyWriter keyWriter = map.keyWriter();
+                    for (int i = 0; i < keyIndices.size(); i++) {
+                        int index;
+                        MapUtils.putRecord(keyWriter, rec, index = keyIndices.getQuick(i),
+                                recordSource.getMetadata().getColumnQuick(index).getType());
+                    }
+                    values = map.getOrCreateValues(keyWriter);
+                    break;
             }
 
-            DirectMapValues values = map.getOrCreateValues(keyWriter);
             for (int i = 0, sz = aggregators.size(); i < sz; i++) {
                 aggregators.getQuick(i).calculate(rec, values);
             }
@@ -187,6 +244,35 @@ public class AggregatedRecordSource extends AbstractCombinedRecordSource impleme
         mapCursor = map.iterator();
     }
 
+    private static boolean acceptBlocks(ObjList<AggregatorFunction> aggregators) {
+        for (int i = 0, n = aggregators.size(); i < n; i++) {
+            AggregatorFunction f = aggregators.getQuick(i);
+            if (!(f instanceof BlockAggregatorFunction) || !((BlockAggregatorFunction) f).acceptsBlocks()) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private void buildMapFromBlocks(CancellationHandler cancellationHandler) {
+        BlockCursor cursor = blockCursor.prepare();
+        while (cursor.hasNext()) {
+
+            cancellationHandler.check();
+
+            RecordBlock block = cursor.next();
+            if (block.size() == 0) {
+                continue;
+            }
+
+            DirectMapValues values = map.getOrCreateValues(map.keyWriter());
+            for (int i = 0, sz = aggregators.size(); i < sz; i++) {
+                ((BlockAggregatorFunction) aggregators.getQuick(i)).calculate(block, values);
+            }
+        }
+        mapCursor = map.iterator();
+    }
+
     private void notifyInterceptors(DirectMapEntry entry) {
         for (int i = 0, n = interceptors.size(); i < n; i++) {
             interceptors.getQuick(i).beforeRecord(entry.values());
@@ -0,0 +1,448 @@
+/*******************************************************************************
+ *    ___                  _   ____  ____
+ *   / _ \ _   _  ___  ___| |_|  _ \| __ )
+ *  | | | | | | |/ _ \/ __| __| | | |  _ \
+ *  | |_| | |_| |  __/\__ \ |_| |_| | |_) |
+ *   \__\_\\__,_|\___||___/\__|____/|____/
+ *
+ * Copyright (C) 2014-2016 Appsicle
+ *
+ * This program is free software: you can redistribute it and/or  modify
+ * it under the terms of the GNU Affero General Public License, version 3,
+ * as published by the Free Software Foundation.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ *
+ ******************************************************************************/
+
+
+package com.questdb.ql.impl.aggregation;
+
+import com.questdb.factory.JournalReaderFactory;
+import com.questdb.factory.configuration.RecordMetadata;
+import com.questdb.misc.Misc;
+import com.questdb.misc.Numbers;
+import com.questdb.ql.*;
+import com.questdb.ql.impl.map.*;
+import com.questdb.ql.ops.AbstractCombinedRecordSource;
+import com.questdb.std.CharSink;
+import com.questdb.std.DirectInputStream;
+import com.questdb.std.IntList;
+import com.questdb.std.MemoryBudget;
+import com.questdb.std.Transient;
+import com.questdb.store.ColumnType;
+
+import java.io.OutputStream;
+
+/**
+ * Streams output of {@link ResampledRecordSource} and fills in buckets, which have no data. Source
+ * emits buckets in timestamp order, so whenever bucket ends this record source knows which keys were
+ * missing from it and which buckets were skipped altogether. State kept is one entry per key, holding
+ * timestamp of bucket key was last seen in and key's values from that bucket.
+ * <p>
+ * Fill is defined for every value column of source. Linear fill interpolates between last seen values and
+ * values of bucket that follows the gap, which is only known for sample without keys.
+ */
+public class FillRecordSource extends AbstractCombinedRecordSource {
+    public static final int FILL_NULL = 0;
+    public static final int FILL_PREV = 1;
+    public static final int FILL_LINEAR = 2;
+    public static final int FILL_VALUE = 3;
+
+    private final RecordSource recordSource;
+    private final TimestampSampler sampler;
+    private final IntList fillModes;
+    private final double[] fillValues;
+    private final IntList valueTypes;
+    private final IntList keyTypes;
+    private final int split;
+    private final DirectMap map;
+    private final FillRecord fillRecord = new FillRecord();
+    private RecordCursor cursor;
+    private StorageFacade storageFacade;
+    private DirectMapIterator fillCursor;
+    private Record next;
+    private Record pending;
+    private long bucket;
+    private long fillTimestamp;
+    private long fillLimit;
+    private boolean started;
+    private boolean filling;
+    private boolean done;
+
+    public FillRecordSource(
+            RecordSource recordSource,
+            TimestampSampler sampler,
+            @Transient IntList fillModes,
+            double[] fillValues,
+            int pageSize,
+            MemoryBudget budget
+    ) {
+        RecordMetadata m = recordSource.getMetadata();
+        this.recordSource = recordSource;
+        this.sampler = sampler;
+        this.split = fillModes.size();
+        this.fillModes = new IntList(split);
+        this.fillModes.addAll(fillModes);
+        this.fillValues = fillValues;
+
+        // value columns precede sample timestamp, keys follow it; state entries mirror this
+        // layout with timestamp of bucket key was last seen in taking place of sample
+        this.valueTypes = new IntList(split);
+        IntList stateTypes = new IntList(split + 1);
+        stateTypes.add(ColumnType.DATE);
+        for (int i = 0; i < split; i++) {
+            int type = m.getColumnQuick(i).getType();
+            valueTypes.add(type);
+            stateTypes.add(type);
+        }
+
+        this.keyTypes = new IntList();
+        for (int i = split + 1, n = m.getColumnCount(); i < n; i++) {
+            keyTypes.add(m.getColumnQuick(i).getType());
+        }
+
+        this.map = new DirectMap(pageSize, keyTypes.size(), stateTypes, budget);
+    }
+
+    @Override
+    public void close() {
+        Misc.free(map);
+        Misc.free(recordSource);
+    }
+
+    @Override
+    public RecordMetadata getMetadata() {
+        return recordSource.getMetadata();
+    }
+
+    @Override
+    public RecordCursor prepareCursor(JournalReaderFactory factory, CancellationHandler cancellationHandler) {
+        map.clear();
+        this.cursor = recordSource.prepareCursor(factory, cancellationHandler);
+        this.storageFacade = cursor.getStorageFacade();
+        this.next = null;
+        this.pending = null;
+        this.started = false;
+        this.filling = false;
+        this.done = false;
+        return this;
+    }
+
+    @Override
+    public StorageFacade getStorageFacade() {
+        return storageFacade;
+    }
+
+    @Override
+    public boolean hasNext() {
+        if (filling && fill()) {
+            return true;
+        }
+
+        if (pending != null) {
+            return emit(pending);
+        }
+
+        if (cursor.hasNext()) {
+            Record r = cursor.next();
+            long ts = r.getDate(split);
+            if (started && ts != bucket) {
+                // bucket ended, fill keys missing from it and buckets skipped by source
+                pending = r;
+                startFill(ts);
+                bucket = ts;
+                return fill() || emit(pending);
+            }
+            started = true;
+            bucket = ts;
+            return emit(r);
+        }
+
+        if (started && !done) {
+            done = true;
+            startFill(sampler.nextTimestamp(bucket));
+            return fill();
+        }
+        return false;
+    }
+
+    @Override
+    public Record next() {
+        return next;
+    }
+
+    @Override
+    public void toSink(CharSink sink) {
+        sink.put('{');
+        sink.putQuoted("op").put(':').putQuoted("FillRecordSource").put(',');
+        sink.putQuoted("src").put(':').put(recordSource).put(',');
+        sink.putQuoted("sampler").put(':').put(sampler);
+        sink.put('}');
+    }
+
+    private boolean emit(Record r) {
+        DirectMap.KeyWriter kw = map.keyWriter();
+        for (int i = 0, n = keyTypes.size(); i < n; i++) {
+            MapUtils.putRecord(kw, r, split + 1 + i, keyTypes.getQuick(i));
+        }
+        DirectMapValues values = map.getOrCreateValues(kw);
+        values.putLong(0, r.getDate(split));
+        for (int i = 0; i < split; i++) {
+            switch (valueTypes.getQuick(i)) {
+                case ColumnType.BOOLEAN:
+                    values.putByte(i + 1, (byte) (r.getBool(i) ? 1 : 0));
+                    break;
+                case ColumnType.BYTE:
+                    values.putByte(i + 1, r.get(i));
+                    break;
+                case ColumnType.SHORT:
+                    values.putShort(i + 1, r.getShort(i));
+                    break;
+                case ColumnType.INT:
+                case ColumnType.SYMBOL:
+                    values.putInt(i + 1, r.getInt(i));
+                    break;
+                case ColumnType.FLOAT:
+                    values.putFloat(i + 1, r.getFloat(i));
+                    break;
+                case ColumnType.DOUBLE:
+                    values.putDouble(i + 1, r.getDouble(i));
+                    break;
+                default:
+                    values.putLong(i + 1, r.getLong(i));
+                    break;
+            }
+        }
+        pending = null;
+        next = r;
+        return true;
+    }
+
+    private boolean fill() {
+        while (true) {
+            while (fillCursor.hasNext()) {
+                DirectMapEntry e = fillCursor.next();
+                if (e.getLong(0) < fillTimestamp) {
+                    next = fillRecord.of(e);
+                    return true;
+                }
+            }
+
+            fillTimestamp = sampler.nextTimestamp(fillTimestamp);
+            if (fillTimestamp >= fillLimit) {
+                filling = false;
+                return false;
+            }
+            fillCursor = map.iterator();
+        }
+    }
+
+    private void startFill(long limit) {
+        fillTimestamp = bucket;
+        fillLimit = limit;
+        fillCursor = map.iterator();
+        filling = true;
+    }
+
+    private class FillRecord extends AbstractRecord {
+        private DirectMapEntry entry;
+
+        @Override
+        public byte get(int col) {
+            if (col < split) {
+                return (byte) getValue(col);
+            }
+            return entry.get(col);
+        }
+
+        @Override
+        public void getBin(int col, OutputStream s) {
+            throw new UnsupportedOperationException();
+        }
+
+        @Override
+        public DirectInputStream getBin(int col) {
+            throw new UnsupportedOperationException();
+        }
+
+        @Override
+        public long getBinLen(int col) {
+            throw new UnsupportedOperationException();
+        }
+
+        @Override
+        public boolean getBool(int col) {
+            if (col < split) {
+                return fillModes.getQuick(col) == FILL_PREV ? entry.getBool(col + 1) : getValue(col) != 0;
+            }
+            return entry.getBool(col);
+        }
+
+        @Override
+        public long getDate(int col) {
+            return getLong(col);
+        }
+
+        @Override
+        public double getDouble(int col) {
+            if (col < split) {
+                return fillModes.getQuick(col) == FILL_NULL ? Double.NaN : getValue(col);
+            }
+            return entry.getDouble(col);
+        }
+
+        @Override
+        public float getFloat(int col) {
+            if (col < split) {
+                return fillModes.getQuick(col) == FILL_NULL ? Float.NaN : (float) getValue(col);
+            }
+            return entry.getFloat(col);
+        }
+
+        @Override
+        public CharSequence getFlyweightStr(int col) {
+            return entry.getFlyweightStr(col);
+        }
+
+        @Override
+        public CharSequence getFlyweightStrB(int col) {
+            return entry.getFlyweightStrB(col);
+        }
+
+        @Override
+        public int getInt(int col) {
+            if (col < split) {
+                switch (fillModes.getQuick(col)) {
+                    case FILL_NULL:
+                        return Numbers.INT_NaN;
+                    case FILL_PREV:
+                        return entry.getInt(col + 1);
+                    default:
+                        return (int) Math.round(getValue(col));
+                }
+            }
+            return entry.getInt(col);
+        }
+
+        @Override
+        public long getLong(int col) {
+            if (col < split) {
+                switch (fillModes.getQuick(col)) {
+                    case FILL_NULL:
+                        return Numbers.LONG_NaN;
+                    case FILL_PREV:
+                        return entry.getLong(col + 1);
+                    default:
+                        return Math.round(getValue(col));
+                }
+            }
+
+            if (col == split) {
+                return fillTimestamp;
+            }
+            return entry.getLong(col);
+        }
+
+        @Override
+        public long getRowId() {
+            return -1;
+        }
+
+        @Override
+        public short getShort(int col) {
+            if (col < split) {
+                return (short) getValue(col);
+            }
+            return entry.getShort(col);
+        }
+
+        @Override
+        public CharSequence getStr(int col) {
+            return entry.getStr(col);
+        }
+
+        @Override
+        public void getStr(int col, CharSink sink) {
+            entry.getStr(col, sink);
+        }
+
+        @Override
+        public int getStrLen(int col) {
+            return entry.getStrLen(col);
+        }
+
+        @Override
+        public String getSym(int col) {
+            return storageFacade.getSymbolTable(col).value(entry.getInt(col));
+        }
+
+        private double getPending(int col) {
+            switch (valueTypes.getQuick(col)) {
+                case ColumnType.BOOLEAN:
+                case ColumnType.BYTE:
+                    return pending.get(col);
+                case ColumnType.SHORT:
+                    return pending.getShort(col);
+                case ColumnType.INT:
+                case ColumnType.SYMBOL:
+                    return pending.getInt(col);
+                case ColumnType.FLOAT:
+                    return pending.getFloat(col);
+                case ColumnType.DOUBLE:
+                    return pending.getDouble(col);
+                default:
+                    return pending.getLong(col);
+            }
+        }
+
+        private double getPrev(int col) {
+            int index = col + 1;
+            switch (valueTypes.getQuick(col)) {
+                case ColumnType.BOOLEAN:
+                case ColumnType.BYTE:
+                    return entry.get(index);
+                case ColumnType.SHORT:
+                    return entry.getShort(index);
+                case ColumnType.INT:
+                case ColumnType.SYMBOL:
+                    return entry.getInt(index);
+                case ColumnType.FLOAT:
+                    return entry.getFloat(index);
+                case ColumnType.DOUBLE:
+                    return entry.getDouble(index);
+                default:
+                    return entry.getLong(index);
+            }
+        }
+
+        private double getValue(int col) {
+            switch (fillModes.getQuick(col)) {
+                case FILL_PREV:
+                    return getPrev(col);
+                case FILL_VALUE:
+                    return fillValues[col];
+                case FILL_LINEAR:
+                    double prev = getPrev(col);
+                    if (pending == null) {
+                        return prev;
+                    }
+                    long lo = entry.getLong(0);
+                    return prev + (getPending(col) - prev) * (fillTimestamp - lo) / (bucket - lo);
+                default:
+                    return 0;
+            }
+        }
+
+        private FillRecord of(DirectMapEntry entry) {
+            this.entry = entry;
+            return this;
+        }
+    }
+}
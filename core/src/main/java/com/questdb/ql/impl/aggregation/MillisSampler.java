@@ -32,6 +32,11 @@ class MillisSampler implements TimestampSampler {
         this.bucket = bucket;
     }
 
+    @Override
+    public long nextTimestamp(long timestamp) {
+        return timestamp + bucket;
+    }
+
     @Override
     public long resample(long value) {
         return value - value % bucket;
@@ -33,6 +33,11 @@ class MonthsSampler implements TimestampSampler {
         this.bucket = bucket;
     }
 
+    @Override
+    public long nextTimestamp(long timestamp) {
+        return Dates.addMonths(timestamp, bucket);
+    }
+
     @Override
     public long resample(long value) {
         int y = Dates.getYear(value);
@@ -0,0 +1,406 @@
+/*******************************************************************************
+ *    ___                  _   ____  ____
+ *   / _ \ _   _  ___  ___| |_|  _ \| __ )
+ *  | | | | | | |/ _ \/ __| __| | | |  _ \
+ *  | |_| | |_| |  __/\__ \ |_| |_| | |_) |
+ *   \__\_\\__,_|\___||___/\__|____/|____/
+ *
+ * Copyright (C) 2014-2016 Appsicle
+ *
+ * This program is free software: you can redistribute it and/or  modify
+ * it under the terms of the GNU Affero General Public License, version 3,
+ * as published by the Free Software Foundation.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ *
+ ******************************************************************************/
+
+
+package com.questdb.ql.impl.aggregation;
+
+import com.questdb.Partition;
+import com.questdb.ex.JournalException;
+import com.questdb.ex.JournalRuntimeException;
+import com.questdb.factory.configuration.RecordMetadata;
+import com.questdb.misc.Misc;
+import com.questdb.ql.*;
+import com.questdb.ql.impl.AllRowSource;
+import com.questdb.ql.impl.FilteredRowSource;
+import com.questdb.ql.impl.JournalRecord;
+import com.questdb.ql.impl.JournalRecordSource;
+import com.questdb.ql.impl.QueryWorkerPool;
+import com.questdb.ql.impl.filter.CompiledFilter;
+import com.questdb.ql.impl.map.DirectMap;
+import com.questdb.ql.impl.map.DirectMapEntry;
+import com.questdb.ql.impl.map.DirectMapValues;
+import com.questdb.ql.impl.map.MapUtils;
+import com.questdb.ql.ops.*;
+import com.questdb.ql.ops.col.*;
+import com.questdb.ql.ops.constant.*;
+import com.questdb.ql.ops.div.DivDoubleOperator;
+import com.questdb.ql.ops.eq.*;
+import com.questdb.ql.ops.gt.DoubleGreaterThanOperator;
+import com.questdb.ql.ops.gt.IntGreaterThanOperator;
+import com.questdb.ql.ops.gt.LongGreaterThanOperator;
+import com.questdb.ql.ops.gte.DoubleGreaterOrEqualOperator;
+import com.questdb.ql.ops.gte.IntGreaterOrEqualOperator;
+import com.questdb.ql.ops.gte.LongGreaterOrEqualOperator;
+import com.questdb.ql.ops.lt.DoubleLessThanOperator;
+import com.questdb.ql.ops.lt.IntLessThanOperator;
+import com.questdb.ql.ops.lt.LongLessThanOperator;
+import com.questdb.ql.ops.lte.DoubleLessOrEqualOperator;
+import com.questdb.ql.ops.lte.IntLessOrEqualOperator;
+import com.questdb.ql.ops.lte.LongLessOrEqualOperator;
+import com.questdb.ql.ops.minus.MinusDoubleOperator;
+import com.questdb.ql.ops.minus.MinusIntOperator;
+import com.questdb.ql.ops.minus.MinusLongOperator;
+import com.questdb.ql.ops.mult.MultDoubleOperator;
+import com.questdb.ql.ops.mult.MultIntOperator;
+import com.questdb.ql.ops.mult.MultLongOperator;
+import com.questdb.ql.ops.neg.DoubleNegativeOperator;
+import com.questdb.ql.ops.neg.IntNegativeOperator;
+import com.questdb.ql.ops.neg.LongNegativeOperator;
+import com.questdb.ql.ops.neq.*;
+import com.questdb.ql.ops.plus.AddDateOperator;
+import com.questdb.ql.ops.plus.AddDoubleOperator;
+import com.questdb.ql.ops.plus.AddIntOperator;
+import com.questdb.ql.ops.plus.AddLongOperator;
+import com.questdb.std.*;
+import com.questdb.store.ColumnType;
+
+import java.io.Closeable;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Builds aggregation map by splitting partitions of journal into slices of fixed number of rows
+ * and aggregating slices on worker pool. Each lane of execution has its own map and record, slices
+ * are claimed by lanes dynamically. Lane maps are then merged into map of the query.
+ * <p>
+ * Lanes share partitions of the same journal reader. Partitions are opened and column files
+ * preloaded by query thread before lanes start, so that lanes only read memory, which does not
+ * change until query completes. For the same reason only filters and aggregator arguments made of
+ * fixed width columns and stateless operators are eligible.
+ */
+public class ParallelAggregator implements Closeable {
+    private static final ObjHashSet<Class<?>> STATELESS = new ObjHashSet<>();
+    private final QueryWorkerPool pool;
+    private final long sliceRows;
+    private final JournalRecordSource recordSource;
+    private final VirtualColumn filter;
+    private final IntList keyIndices;
+    private final IntList keyTypes;
+    private final int keyWidth;
+    private final ObjList<MergeableAggregatorFunction> aggregators;
+    private final ObjList<Lane> lanes;
+    private final ObjList<Lane> tasks;
+    private final ObjList<Partition> slicePartitions = new ObjList<>();
+    private final LongList sliceBounds = new LongList();
+    private final AtomicInteger nextSlice = new AtomicInteger();
+
+    private ParallelAggregator(
+            QueryWorkerPool pool,
+            long sliceRows,
+            JournalRecordSource recordSource,
+            VirtualColumn filter,
+            IntList keyIndices,
+            ObjList<MergeableAggregatorFunction> aggregators,
+            int pageSize,
+            @Transient IntList valueTypes,
+            MemoryBudget budget
+    ) {
+        this.pool = pool;
+        this.sliceRows = sliceRows;
+        this.recordSource = recordSource;
+        this.filter = filter;
+        this.keyIndices = keyIndices;
+        this.aggregators = aggregators;
+
+        RecordMetadata m = recordSource.getMetadata();
+        this.keyTypes = new IntList(keyIndices.size());
+        for (int i = 0, n = keyIndices.size(); i < n; i++) {
+            keyTypes.add(m.getColumnQuick(keyIndices.getQuick(i)).getType());
+        }
+        this.keyWidth = keyIndices.size() == 1 ? MapUtils.fixedKeyWidth(keyTypes.getQuick(0)) : 0;
+
+        int laneCount = pool.getWorkerCount() + 1;
+        this.lanes = new ObjList<>(laneCount);
+        this.tasks = new ObjList<>(laneCount);
+        for (int i = 0; i < laneCount; i++) {
+            lanes.add(new Lane(new DirectMap(pageSize, keyIndices.size(), valueTypes, budget)));
+        }
+    }
+
+    /**
+     * Creates parallel aggregator when record source and aggregators are eligible.
+     *
+     * @param pool         worker pool, can be null
+     * @param sliceRows    maximum number of rows lane aggregates at a time
+     * @param recordSource source of rows to aggregate
+     * @param keyIndices   indices of key columns in record source
+     * @param aggregators  aggregators, prepared to write to map values
+     * @param pageSize     page size of lane maps
+     * @param valueTypes   types of map values
+     * @param budget       memory budget of query, shared by lane maps, can be null
+     * @return parallel aggregator or null when aggregation has to run on query thread
+     */
+    public static ParallelAggregator create(
+            QueryWorkerPool pool,
+            long sliceRows,
+            RecordSource recordSource,
+            IntList keyIndices,
+            ObjList<AggregatorFunction> aggregators,
+            int pageSize,
+            @Transient IntList valueTypes,
+            MemoryBudget budget
+    ) {
+        if (pool == null || pool.getWorkerCount() == 0 || sliceRows < 1 || !(recordSource instanceof JournalRecordSource)) {
+            return null;
+        }
+
+        JournalRecordSource jrs = (JournalRecordSource) recordSource;
+        RowSource rowSource = jrs.getRowSource();
+        VirtualColumn filter = null;
+        if (rowSource instanceof FilteredRowSource) {
+            filter = ((FilteredRowSource) rowSource).getFilter();
+            rowSource = ((FilteredRowSource) rowSource).getDelegate();
+            if (!isStateless(filter)) {
+                return null;
+            }
+        }
+
+        if (rowSource.getClass() != AllRowSource.class) {
+            return null;
+        }
+
+        RecordMetadata m = recordSource.getMetadata();
+        for (int i = 0, n = keyIndices.size(); i < n; i++) {
+            switch (m.getColumnQuick(keyIndices.getQuick(i)).getType()) {
+                case ColumnType.STRING:
+                case ColumnType.BINARY:
+                    return null;
+                default:
+                    break;
+            }
+        }
+
+        ObjList<MergeableAggregatorFunction> mergeable = new ObjList<>(aggregators.size());
+        for (int i = 0, n = aggregators.size(); i < n; i++) {
+            AggregatorFunction f = aggregators.getQuick(i);
+            if (!(f instanceof MergeableAggregatorFunction)) {
+                return null;
+            }
+
+            if (f instanceof AbstractUnaryOperator && !isStateless(((AbstractUnaryOperator) f).getValue())) {
+                return null;
+            }
+            mergeable.add((MergeableAggregatorFunction) f);
+        }
+
+        return new ParallelAggregator(pool, sliceRows, jrs, filter, keyIndices, mergeable, pageSize, valueTypes, budget);
+    }
+
+    /**
+     * Aggregates rows of record source into map. Record source must already be prepared for
+     * this query execution, but not iterated.
+     *
+     * @param map                 empty map, which receives aggregated values
+     * @param cancellationHandler checked by query thread between partitions
+     */
+    public void aggregate(DirectMap map, CancellationHandler cancellationHandler) {
+        slicePartitions.clear();
+        sliceBounds.clear();
+
+        PartitionCursor cursor = recordSource.getPartitionCursor();
+        while (cursor.hasNext()) {
+            cancellationHandler.check();
+            PartitionSlice slice = cursor.next();
+            Partition partition;
+            long hi;
+            try {
+                partition = slice.partition.open();
+                hi = slice.calcHi ? partition.size() - 1 : slice.hi;
+            } catch (JournalException e) {
+                throw new JournalRuntimeException(e);
+            }
+
+            if (hi < slice.lo) {
+                continue;
+            }
+
+            partition.preload(hi);
+            for (long lo = slice.lo; lo <= hi; lo += sliceRows) {
+                slicePartitions.add(partition);
+                sliceBounds.add(lo);
+                sliceBounds.add(Math.min(hi, lo + sliceRows - 1));
+            }
+        }
+
+        int n = Math.min(lanes.size(), slicePartitions.size());
+        if (n == 0) {
+            return;
+        }
+
+        nextSlice.set(0);
+        tasks.clear();
+        for (int i = 0; i < n; i++) {
+            tasks.add(lanes.getQuick(i));
+        }
+        pool.run(tasks);
+
+        for (int i = 0; i < n; i++) {
+            merge(map, lanes.getQuick(i).map);
+        }
+    }
+
+    @Override
+    public void close() {
+        for (int i = 0, n = lanes.size(); i < n; i++) {
+            Misc.free(lanes.getQuick(i).map);
+        }
+        slicePartitions.clear();
+    }
+
+    private static boolean isStateless(VirtualColumn vc) {
+        if (vc instanceof CompiledFilter) {
+            return isStateless(((CompiledFilter) vc).getSource());
+        }
+
+        if (!STATELESS.contains(vc.getClass())) {
+            return false;
+        }
+
+        if (vc instanceof AbstractBinaryOperator) {
+            return isStateless(((AbstractBinaryOperator) vc).getLhs()) && isStateless(((AbstractBinaryOperator) vc).getRhs());
+        }
+
+        return !(vc instanceof AbstractUnaryOperator) || isStateless(((AbstractUnaryOperator) vc).getValue());
+    }
+
+    private void merge(DirectMap to, DirectMap from) {
+        for (DirectMapEntry e : from) {
+            DirectMapValues values = to.getOrCreateValues(e);
+            if (!values.isNew()) {
+                DirectMapValues fromValues = e.values();
+                for (int i = 0, n = aggregators.size(); i < n; i++) {
+                    aggregators.getQuick(i).merge(values, fromValues);
+                }
+            }
+        }
+    }
+
+    private class Lane implements Runnable {
+        private final DirectMap map;
+        private final JournalRecord rec = new JournalRecord();
+
+        private Lane(DirectMap map) {
+            this.map = map;
+        }
+
+        @Override
+        public void run() {
+            map.clear();
+            final int sliceCount = slicePartitions.size();
+            int slice;
+            while ((slice = nextSlice.getAndIncrement()) < sliceCount) {
+                rec.partition = slicePartitions.getQuick(slice);
+                rec.partitionIndex = rec.partition.getPartitionIndex();
+                for (long r = sliceBounds.getQuick(slice * 2), hi = sliceBounds.getQuick(slice * 2 + 1); r <= hi; r++) {
+                    rec.rowid = r;
+                    if (filter != null && !filter.getBool(rec)) {
+                        continue;
+                    }
+
+                    DirectMapValues values;
+                    switch (keyWidth) {
+                        case 4:
+                            values = map.getOrCreateValues(MapUtils.intKey(rec, keyIndices.getQuick(0), keyTypes.getQuick(0)));
+                            break;
+                        case 8:
+                            values = map.getOrCreateValues(MapUtils.longKey(rec, keyIndices.getQuick(0), keyTypes.getQuick(0)));
+                            break;
+                        default:
+                            DirectMap.KeyWriter kw = map.keyWriter();
+                            for (int i = 0, n = keyIndices.size(); i < n; i++) {
+                                MapUtils.putRecord(kw, rec, keyIndices.getQuick(i), keyTypes.getQuick(i));
+                            }
+                            values = map.getOrCreateValues(kw);
+                            break;
+                    }
+                    for (int i = 0, n = aggregators.size(); i < n; i++) {
+                        aggregators.getQuick(i).calculate(rec, values);
+                    }
+                }
+            }
+        }
+    }
+
+    static {
+        STATELESS.add(BooleanConstant.class);
+        STATELESS.add(DoubleConstant.class);
+        STATELESS.add(IntConstant.class);
+        STATELESS.add(LongConstant.class);
+        STATELESS.add(NullConstant.class);
+        STATELESS.add(Parameter.class);
+
+        STATELESS.add(BoolRecordSourceColumn.class);
+        STATELESS.add(ByteRecordSourceColumn.class);
+        STATELESS.add(DateRecordSourceColumn.class);
+        STATELESS.add(DoubleRecordSourceColumn.class);
+        STATELESS.add(FloatRecordSourceColumn.class);
+        STATELESS.add(IntRecordSourceColumn.class);
+        STATELESS.add(LongRecordSourceColumn.class);
+        STATELESS.add(ShortRecordSourceColumn.class);
+        // symbol key is read as int and never resolved to string by aggregators
+        STATELESS.add(SymRecordSourceColumn.class);
+
+        STATELESS.add(AndOperator.class);
+        STATELESS.add(OrOperator.class);
+        STATELESS.add(NotOperator.class);
+
+        STATELESS.add(DoubleEqualsOperator.class);
+        STATELESS.add(DoubleEqualsNanOperator.class);
+        STATELESS.add(IntEqualsOperator.class);
+        STATELESS.add(IntEqualsNaNOperator.class);
+        STATELESS.add(LongEqualsOperator.class);
+        STATELESS.add(LongEqualsNaNOperator.class);
+        STATELESS.add(DoubleNotEqualsOperator.class);
+        STATELESS.add(DoubleNotEqualsNanOperator.class);
+        STATELESS.add(IntNotEqualsOperator.class);
+        STATELESS.add(IntNotEqualsNaNOperator.class);
+        STATELESS.add(LongNotEqualsOperator.class);
+        STATELESS.add(LongNotEqualsNaNOperator.class);
+        STATELESS.add(DoubleGreaterThanOperator.class);
+        STATELESS.add(IntGreaterThanOperator.class);
+        STATELESS.add(LongGreaterThanOperator.class);
+        STATELESS.add(DoubleGreaterOrEqualOperator.class);
+        STATELESS.add(IntGreaterOrEqualOperator.class);
+        STATELESS.add(LongGreaterOrEqualOperator.class);
+        STATELESS.add(DoubleLessThanOperator.class);
+        STATELESS.add(IntLessThanOperator.class);
+        STATELESS.add(LongLessThanOperator.class);
+        STATELESS.add(DoubleLessOrEqualOperator.class);
+        STATELESS.add(IntLessOrEqualOperator.class);
+        STATELESS.add(LongLessOrEqualOperator.class);
+
+        STATELESS.add(AddDateOperator.class);
+        STATELESS.add(AddDoubleOperator.class);
+        STATELESS.add(AddIntOperator.class);
+        STATELESS.add(AddLongOperator.class);
+        STATELESS.add(MinusDoubleOperator.class);
+        STATELESS.add(MinusIntOperator.class);
+        STATELESS.add(MinusLongOperator.class);
+        STATELESS.add(MultDoubleOperator.class);
+        STATELESS.add(MultIntOperator.class);
+        STATELESS.add(MultLongOperator.class);
+        STATELESS.add(DivDoubleOperator.class);
+        STATELESS.add(DoubleNegativeOperator.class);
+        STATELESS.add(IntNegativeOperator.class);
+        STATELESS.add(LongNegativeOperator.class);
+    }
+}
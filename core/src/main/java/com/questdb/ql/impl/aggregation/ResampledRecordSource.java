@@ -55,6 +55,18 @@ public class ResampledRecordSource extends AbstractCombinedRecordSource {
             ObjList<AggregatorFunction> aggregators,
             TimestampSampler sampler,
             int pageSize
+    ) {
+        this(recordSource, timestampColumnIndex, keyColumns, aggregators, sampler, pageSize, null);
+    }
+
+    public ResampledRecordSource(
+            RecordSource recordSource,
+            int timestampColumnIndex,
+            @Transient ObjHashSet<String> keyColumns,
+            ObjList<AggregatorFunction> aggregators,
+            TimestampSampler sampler,
+            int pageSize,
+            MemoryBudget budget
     ) {
         int keyColumnsSize = keyColumns.size();
         this.keyIndices = new IntList(keyColumnsSize);
@@ -100,7 +112,7 @@ public class ResampledRecordSource extends AbstractCombinedRecordSource {
         this.storageFacade = new DirectMapStorageFacade(columns.size() + 1, keyIndices);
         this.metadata = new DirectMapMetadata(rm, keyCols, columns);
         this.record = new DirectMapRecord(this.storageFacade);
-        this.map = new DirectMap(pageSize, keyCols.size(), AggregationUtils.toThreadLocalTypes(columns));
+        this.map = new DirectMap(pageSize, keyCols.size(), AggregationUtils.toThreadLocalTypes(columns), budget);
         this.recordSource = recordSource;
     }
 
@@ -159,6 +171,8 @@ public class ResampledRecordSource extends AbstractCombinedRecordSource {
         long current = 0;
         boolean first = true;
         Record rec;
+        // when sample is the only key all records of the bucket share one entry
+        DirectMapValues values = null;
 
         map.clear();
 
@@ -182,19 +196,25 @@ public class ResampledRecordSource extends AbstractCombinedRecordSource {
             }
 
             // we are inside of time window, compute aggregates
-            DirectMap.KeyWriter kw = map.keyWriter();
-            kw.putLong(sample);
-            for (int i = 0, n = keyIndices.size(); i < n; i++) {
-                int index;
-                MapUtils.putRecord(kw, rec,
-                        index = keyIndices.getQuick(i),
-                        recordSource.getMetadata().getColumnQuick(index).getType());
+            if (keyIndices.size() == 0) {
+                if (values == null) {
+                    values = map.getOrCreateValues(sample);
+                }
+            } else {
+                DirectMap.KeyWriter kw = map.keyWriter();
+                kw.putLong(sample);
+                for (int i = 0, n = keyIndices.size(); i < n; i++) {
+                    int index;
+                    MapUtils.putRecord(kw, rec,
+                            index = keyIndices.getQuick(i),
+                            recordSource.getMetadata().getColumnQuick(index).getType());
+                }
+                values = map.getOrCreateValues(kw);
             }
-
-            DirectMapValues values = map.getOrCreateValues(kw);
             for (int i = 0, sz = aggregators.size(); i < sz; i++) {
                 aggregators.getQuick(i).calculate(rec, values);
             }
+            values.markExisting();
 
             if (!recordCursor.hasNext()) {
                 nextRecord = null;
@@ -26,5 +26,13 @@ package com.questdb.ql.impl.aggregation;
 import com.questdb.std.Sinkable;
 
 public interface TimestampSampler extends Sinkable {
+    /**
+     * Start of bucket, which follows bucket starting at given timestamp.
+     *
+     * @param timestamp start of bucket, as returned by {@link #resample(long)}
+     * @return start of next bucket
+     */
+    long nextTimestamp(long timestamp);
+
     long resample(long value);
 }
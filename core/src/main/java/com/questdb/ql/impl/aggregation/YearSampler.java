@@ -33,6 +33,11 @@ class YearSampler implements TimestampSampler {
     private YearSampler() {
     }
 
+    @Override
+    public long nextTimestamp(long timestamp) {
+        return Dates.addYear(timestamp, 1);
+    }
+
     @Override
     public long resample(long value) {
         int y;
@@ -0,0 +1,65 @@
+/*******************************************************************************
+ *    ___                  _   ____  ____
+ *   / _ \ _   _  ___  ___| |_|  _ \| __ )
+ *  | | | | | | |/ _ \/ __| __| | | |  _ \
+ *  | |_| | |_| |  __/\__ \ |_| |_| | |_) |
+ *   \__\_\\__,_|\___||___/\__|____/|____/
+ *
+ * Copyright (C) 2014-2016 Appsicle
+ *
+ * This program is free software: you can redistribute it and/or  modify
+ * it under the terms of the GNU Affero General Public License, version 3,
+ * as published by the Free Software Foundation.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ *
+ ******************************************************************************/
+
+
+package com.questdb.ql.impl.filter;
+
+import com.questdb.ql.Record;
+import com.questdb.ql.StorageFacade;
+import com.questdb.ql.ops.AbstractVirtualColumn;
+import com.questdb.ql.ops.VirtualColumn;
+import com.questdb.store.ColumnType;
+
+/**
+ * Boolean column, which evaluates generated filter class instead of walking operator tree.
+ * Source tree is kept to prepare sub-expressions, that compiled code delegates to.
+ */
+public class CompiledFilter extends AbstractVirtualColumn {
+    private final VirtualColumn source;
+    private final RecordFilter filter;
+
+    public CompiledFilter(VirtualColumn source, RecordFilter filter) {
+        super(ColumnType.BOOLEAN);
+        this.source = source;
+        this.filter = filter;
+    }
+
+    @Override
+    public boolean getBool(Record rec) {
+        return filter.accept(rec);
+    }
+
+    public VirtualColumn getSource() {
+        return source;
+    }
+
+    @Override
+    public boolean isConstant() {
+        return false;
+    }
+
+    @Override
+    public void prepare(StorageFacade facade) {
+        source.prepare(facade);
+    }
+}
@@ -0,0 +1,509 @@
+/*******************************************************************************
+ *    ___                  _   ____  ____
+ *   / _ \ _   _  ___  ___| |_|  _ \| __ )
+ *  | | | | | | |/ _ \/ __| __| | | |  _ \
+ *  | |_| | |_| |  __/\__ \ |_| |_| | |_) |
+ *   \__\_\\__,_|\___||___/\__|____/|____/
+ *
+ * Copyright (C) 2014-2016 Appsicle
+ *
+ * This program is free software: you can redistribute it and/or  modify
+ * it under the terms of the GNU Affero General Public License, version 3,
+ * as published by the Free Software Foundation.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ *
+ ******************************************************************************/
+
+
+package com.questdb.ql.impl.filter;
+
+import com.questdb.ex.JournalRuntimeException;
+import com.questdb.misc.BytecodeAssembler;
+import com.questdb.misc.Numbers;
+import com.questdb.ql.ops.*;
+import com.questdb.ql.ops.col.DateRecordSourceColumn;
+import com.questdb.ql.ops.col.DoubleRecordSourceColumn;
+import com.questdb.ql.ops.col.IntRecordSourceColumn;
+import com.questdb.ql.ops.col.LongRecordSourceColumn;
+import com.questdb.ql.ops.constant.*;
+import com.questdb.ql.ops.eq.*;
+import com.questdb.ql.ops.gt.DoubleGreaterThanOperator;
+import com.questdb.ql.ops.gt.IntGreaterThanOperator;
+import com.questdb.ql.ops.gt.LongGreaterThanOperator;
+import com.questdb.ql.ops.gte.DoubleGreaterOrEqualOperator;
+import com.questdb.ql.ops.gte.IntGreaterOrEqualOperator;
+import com.questdb.ql.ops.gte.LongGreaterOrEqualOperator;
+import com.questdb.ql.ops.lt.DoubleLessThanOperator;
+import com.questdb.ql.ops.lt.IntLessThanOperator;
+import com.questdb.ql.ops.lt.LongLessThanOperator;
+import com.questdb.ql.ops.lte.DoubleLessOrEqualOperator;
+import com.questdb.ql.ops.lte.IntLessOrEqualOperator;
+import com.questdb.ql.ops.lte.LongLessOrEqualOperator;
+import com.questdb.ql.ops.neq.*;
+import com.questdb.std.IntIntHashMap;
+import com.questdb.std.IntList;
+import com.questdb.std.ObjIntHashMap;
+import com.questdb.std.ObjList;
+
+/**
+ * Compiles boolean VirtualColumn tree into single class, which implements RecordFilter.
+ * <p>
+ * AND, OR and NOT are compiled into short-circuit branches. Int, long and double comparisons
+ * read column values from Record by constant index and call static methods below, which
+ * replicate operator semantics, including treatment of NaN. Literals are folded into
+ * constant pool. Any other sub-expression stays interpreted: generated class keeps it
+ * in a field and calls it via VirtualColumn interface.
+ */
+public class FilterCompiler {
+    private static final int TYPE_INT = 0;
+    private static final int TYPE_LONG = 1;
+    private static final int TYPE_DOUBLE = 2;
+    private static final String[] TYPE_DESC = {"I", "J", "D"};
+    private static final ObjIntHashMap<Class<?>> operatorIndex = new ObjIntHashMap<>();
+    private static final ObjList<String> operatorMethods = new ObjList<>();
+    private static final IntList operatorTypes = new IntList();
+    private static final IntList operatorArgCounts = new IntList();
+
+    private final BytecodeAssembler asm = new BytecodeAssembler();
+    private final ObjList<VirtualColumn> columns = new ObjList<>();
+    private final IntList fieldIndices = new IntList();
+    private final IntList constantIndices = new IntList();
+    private final IntIntHashMap methodIndices = new IntIntHashMap();
+    private final IntList branchTargets = new IntList();
+    private final int[] recordGetters = new int[3];
+    private final int[] columnGetters = new int[3];
+    private int columnGetBool;
+    private int thisClassIndex;
+    private int fieldTypeIndex;
+    private int constantPos;
+    private int columnPos;
+    private int codeStart;
+
+    /**
+     * Returns compiled version of filter or filter itself when there is nothing to compile.
+     *
+     * @param filter boolean virtual column
+     * @return column, which evaluates to the same value as filter
+     */
+    public VirtualColumn compile(VirtualColumn filter) {
+        if (filter.isConstant() || !isCompiled(filter)) {
+            return filter;
+        }
+
+        asm.clear();
+        columns.clear();
+        fieldIndices.clear();
+        constantIndices.clear();
+        methodIndices.clear();
+        branchTargets.clear();
+
+        asm.setupPool();
+        int stackMapTableIndex = asm.poolUtf8("StackMapTable");
+        thisClassIndex = asm.poolClass(asm.poolUtf8("questdbasm"));
+        int interfaceClassIndex = asm.poolClass(asm.poolUtf8("com/questdb/ql/impl/filter/RecordFilter"));
+        int recordClassIndex = asm.poolClass(asm.poolUtf8("com/questdb/ql/Record"));
+        int columnClassIndex = asm.poolClass(asm.poolUtf8("com/questdb/ql/ops/VirtualColumn"));
+        int listClassIndex = asm.poolClass(asm.poolUtf8("com/questdb/std/ObjList"));
+        fieldTypeIndex = asm.poolUtf8("Lcom/questdb/ql/ops/VirtualColumn;");
+
+        recordGetters[TYPE_INT] = asm.poolInterfaceMethod(recordClassIndex, asm.poolNameAndType(asm.poolUtf8("getInt"), asm.poolUtf8("(I)I")));
+        recordGetters[TYPE_LONG] = asm.poolInterfaceMethod(recordClassIndex, asm.poolNameAndType(asm.poolUtf8("getLong"), asm.poolUtf8("(I)J")));
+        recordGetters[TYPE_DOUBLE] = asm.poolInterfaceMethod(recordClassIndex, asm.poolNameAndType(asm.poolUtf8("getDouble"), asm.poolUtf8("(I)D")));
+        columnGetBool = asm.poolInterfaceMethod(columnClassIndex, asm.poolNameAndType(asm.poolUtf8("getBool"), asm.poolUtf8("(Lcom/questdb/ql/Record;)Z")));
+        columnGetters[TYPE_INT] = asm.poolInterfaceMethod(columnClassIndex, asm.poolNameAndType(asm.poolUtf8("getInt"), asm.poolUtf8("(Lcom/questdb/ql/Record;)I")));
+        columnGetters[TYPE_LONG] = asm.poolInterfaceMethod(columnClassIndex, asm.poolNameAndType(asm.poolUtf8("getLong"), asm.poolUtf8("(Lcom/questdb/ql/Record;)J")));
+        columnGetters[TYPE_DOUBLE] = asm.poolInterfaceMethod(columnClassIndex, asm.poolNameAndType(asm.poolUtf8("getDouble"), asm.poolUtf8("(Lcom/questdb/ql/Record;)D")));
+        int listGetQuick = asm.poolMethod(listClassIndex, asm.poolNameAndType(asm.poolUtf8("getQuick"), asm.poolUtf8("(I)Ljava/lang/Object;")));
+
+        int acceptNameIndex = asm.poolUtf8("accept");
+        int acceptDescIndex = asm.poolUtf8("(Lcom/questdb/ql/Record;)Z");
+        int initNameIndex = asm.poolUtf8("init");
+        int initDescIndex = asm.poolUtf8("(Lcom/questdb/std/ObjList;)V");
+
+        poolBool(filter);
+
+        asm.finishPool();
+        asm.defineClass(1, thisClassIndex);
+        // interface count
+        asm.putShort(1);
+        asm.putShort(interfaceClassIndex);
+        // field count
+        asm.putShort(columns.size());
+        for (int i = 0, n = columns.size(); i < n; i++) {
+            asm.defineField(0x02, fieldIndices.getQuick(i * 2), fieldTypeIndex);
+        }
+        // method count
+        asm.putShort(3);
+        asm.defineDefaultConstructor();
+        instrumentInitMethod(initNameIndex, initDescIndex, listGetQuick, columnClassIndex);
+        instrumentAcceptMethod(stackMapTableIndex, acceptNameIndex, acceptDescIndex, filter);
+
+        // class attribute count
+        asm.putShort(0);
+
+        try {
+            RecordFilter f = (RecordFilter) asm.loadClass(FilterCompiler.class).newInstance();
+            f.init(columns);
+            return new CompiledFilter(filter, f);
+        } catch (Exception e) {
+            throw new JournalRuntimeException("Cannot instantiate filter: ", e);
+        }
+    }
+
+    static boolean dblEq(double l, double r) {
+        return l == r;
+    }
+
+    static boolean dblGe(double l, double r) {
+        return l >= r;
+    }
+
+    static boolean dblGt(double l, double r) {
+        return l > r;
+    }
+
+    static boolean dblIsNaN(double l) {
+        return l != l;
+    }
+
+    static boolean dblLe(double l, double r) {
+        return l <= r;
+    }
+
+    static boolean dblLt(double l, double r) {
+        return l < r;
+    }
+
+    static boolean dblNe(double l, double r) {
+        return l != r;
+    }
+
+    static boolean dblNotNaN(double l) {
+        return l == l;
+    }
+
+    static boolean intEq(int l, int r) {
+        return l == r && l > Integer.MIN_VALUE;
+    }
+
+    static boolean intGe(int l, int r) {
+        return l >= r && r > Integer.MIN_VALUE;
+    }
+
+    static boolean intGt(int l, int r) {
+        return l > r && r > Integer.MIN_VALUE;
+    }
+
+    static boolean intIsNaN(int l) {
+        return l == Numbers.INT_NaN;
+    }
+
+    static boolean intLe(int l, int r) {
+        return l <= r && l > Integer.MIN_VALUE;
+    }
+
+    static boolean intLt(int l, int r) {
+        return l < r && l > Integer.MIN_VALUE;
+    }
+
+    static boolean intNe(int l, int r) {
+        return l != r;
+    }
+
+    static boolean intNotNaN(int l) {
+        return l != Numbers.INT_NaN;
+    }
+
+    static boolean longEq(long l, long r) {
+        return l == r && l > Long.MIN_VALUE;
+    }
+
+    static boolean longGe(long l, long r) {
+        return l >= r && r > Long.MIN_VALUE;
+    }
+
+    static boolean longGt(long l, long r) {
+        return l > r && r > Long.MIN_VALUE;
+    }
+
+    static boolean longIsNaN(long l) {
+        return l == Numbers.LONG_NaN;
+    }
+
+    static boolean longLe(long l, long r) {
+        return l <= r && l > Long.MIN_VALUE;
+    }
+
+    static boolean longLt(long l, long r) {
+        return l < r && l > Long.MIN_VALUE;
+    }
+
+    static boolean longNe(long l, long r) {
+        return l != r;
+    }
+
+    static boolean longNotNaN(long l) {
+        return l != Numbers.LONG_NaN;
+    }
+
+    private static int columnIndexOf(VirtualColumn vc, int type) {
+        switch (type) {
+            case TYPE_INT:
+                return vc instanceof IntRecordSourceColumn ? ((IntRecordSourceColumn) vc).getIndex() : -1;
+            case TYPE_LONG:
+                if (vc instanceof LongRecordSourceColumn) {
+                    return ((LongRecordSourceColumn) vc).getIndex();
+                }
+                return vc instanceof DateRecordSourceColumn ? ((DateRecordSourceColumn) vc).getIndex() : -1;
+            default:
+                return vc instanceof DoubleRecordSourceColumn ? ((DoubleRecordSourceColumn) vc).getIndex() : -1;
+        }
+    }
+
+    private static boolean isCompiled(VirtualColumn vc) {
+        return vc instanceof AndOperator || vc instanceof OrOperator || vc instanceof NotOperator || operatorIndex.get(vc.getClass()) != -1;
+    }
+
+    /*
+     * Parameters also report themselves as constant, but their values are set after
+     * compilation, so only literals can be folded into constant pool.
+     */
+    private static boolean isLiteral(VirtualColumn vc) {
+        return vc instanceof IntConstant || vc instanceof LongConstant || vc instanceof DoubleConstant || vc instanceof NullConstant;
+    }
+
+    private static void operator(Class<? extends AbstractBinaryOperator> clazz, String method, int type, int argCount) {
+        operatorIndex.put(clazz, operatorMethods.size());
+        operatorMethods.add(method);
+        operatorTypes.add(type);
+        operatorArgCounts.add(argCount);
+    }
+
+    private void emitBool(VirtualColumn vc) {
+        if (vc instanceof BooleanConstant) {
+            asm.putConstant(vc.getBool(null) ? 1 : 0);
+        } else if (vc instanceof AndOperator) {
+            emitBranch((AbstractBinaryOperator) vc, BytecodeAssembler.ifeq);
+        } else if (vc instanceof OrOperator) {
+            emitBranch((AbstractBinaryOperator) vc, BytecodeAssembler.ifne);
+        } else if (vc instanceof NotOperator) {
+            emitBool(((NotOperator) vc).getValue());
+            asm.putConstant(1);
+            asm.put(BytecodeAssembler.ixor);
+        } else {
+            int op = operatorIndex.get(vc.getClass());
+            if (op == -1) {
+                emitColumnCall(columnGetBool);
+            } else {
+                AbstractBinaryOperator o = (AbstractBinaryOperator) vc;
+                int type = operatorTypes.getQuick(op);
+                emitValue(o.getLhs(), type);
+                if (operatorArgCounts.getQuick(op) > 1) {
+                    emitValue(o.getRhs(), type);
+                }
+                asm.put(BytecodeAssembler.invokestatic);
+                asm.putShort(methodIndices.get(op));
+            }
+        }
+    }
+
+    /*
+     * Short-circuit evaluation of AND and OR:
+     *
+     * [lhs]
+     * dup
+     * ifeq (ifne for OR) L
+     * pop
+     * [rhs]
+     * L:
+     *
+     * L is branch target, which needs stack map frame with single int on stack.
+     */
+    private void emitBranch(AbstractBinaryOperator vc, int opcode) {
+        emitBool(vc.getLhs());
+        asm.put(BytecodeAssembler.dup);
+        int p = asm.position();
+        asm.put(opcode);
+        asm.putShort(0);
+        asm.put(BytecodeAssembler.pop);
+        emitBool(vc.getRhs());
+        asm.putShort(p + 1, asm.position() - p);
+        branchTargets.add(asm.position() - codeStart);
+    }
+
+    private void emitColumnCall(int methodIndex) {
+        asm.put(BytecodeAssembler.aload_0);
+        asm.put(BytecodeAssembler.getfield);
+        asm.putShort(fieldIndices.getQuick(columnPos++ * 2 + 1));
+        asm.put(BytecodeAssembler.aload_1);
+        asm.invokeInterface(methodIndex, 1);
+    }
+
+    private void emitValue(VirtualColumn vc, int type) {
+        if (isLiteral(vc)) {
+            if (type == TYPE_INT) {
+                asm.putLdc(constantIndices.getQuick(constantPos++));
+            } else {
+                asm.putLdc2(constantIndices.getQuick(constantPos++));
+            }
+            return;
+        }
+
+        int index = columnIndexOf(vc, type);
+        if (index == -1) {
+            emitColumnCall(columnGetters[type]);
+        } else {
+            asm.put(BytecodeAssembler.aload_1);
+            asm.putConstant(index);
+            asm.invokeInterface(recordGetters[type], 1);
+        }
+    }
+
+    private void instrumentAcceptMethod(int stackMapTableIndex, int nameIndex, int descIndex, VirtualColumn filter) {
+        // values on stack never exceed two doubles and a pair of references
+        asm.startMethod(0x01, nameIndex, descIndex, 6, 2);
+        codeStart = asm.position();
+        constantPos = 0;
+        columnPos = 0;
+        emitBool(filter);
+        asm.put(BytecodeAssembler.ireturn);
+        asm.endMethodCode();
+        // exceptions
+        asm.putShort(0);
+        if (branchTargets.size() > 0) {
+            // attributes: 1 - StackMapTable
+            asm.putShort(1);
+            asm.putStackMapSameInt(stackMapTableIndex, branchTargets);
+        } else {
+            // attributes
+            asm.putShort(0);
+        }
+        asm.endMethod();
+    }
+
+    /*
+     * init(ObjList)
+     *
+     * Assigns interpreted sub-expressions to class fields:
+     * f0 = (VirtualColumn) columns.getQuick(0);
+     * f1 = (VirtualColumn) columns.getQuick(1);
+     * ...
+     */
+    private void instrumentInitMethod(int nameIndex, int descIndex, int getQuickIndex, int columnClassIndex) {
+        asm.startMethod(0x01, nameIndex, descIndex, 3, 2);
+        for (int i = 0, n = columns.size(); i < n; i++) {
+            asm.put(BytecodeAssembler.aload_0);
+            asm.put(BytecodeAssembler.aload_1);
+            asm.putConstant(i);
+            asm.put(BytecodeAssembler.invokevirtual);
+            asm.putShort(getQuickIndex);
+            asm.put(BytecodeAssembler.checkcast);
+            asm.putShort(columnClassIndex);
+            asm.put(BytecodeAssembler.putfield);
+            asm.putShort(fieldIndices.getQuick(i * 2 + 1));
+        }
+        asm.put(BytecodeAssembler.return_);
+        asm.endMethodCode();
+        // exceptions
+        asm.putShort(0);
+        // attributes
+        asm.putShort(0);
+        asm.endMethod();
+    }
+
+    /*
+     * Pooling methods walk the tree in the same order as emit methods, so that constants and
+     * fields are consumed by emitter in the order they were pooled.
+     */
+    private void poolBool(VirtualColumn vc) {
+        if (vc instanceof BooleanConstant) {
+            return;
+        }
+
+        if (vc instanceof AndOperator || vc instanceof OrOperator) {
+            poolBool(((AbstractBinaryOperator) vc).getLhs());
+            poolBool(((AbstractBinaryOperator) vc).getRhs());
+        } else if (vc instanceof NotOperator) {
+            poolBool(((NotOperator) vc).getValue());
+        } else {
+            int op = operatorIndex.get(vc.getClass());
+            if (op == -1) {
+                poolColumn(vc);
+            } else {
+                AbstractBinaryOperator o = (AbstractBinaryOperator) vc;
+                int type = operatorTypes.getQuick(op);
+                int argCount = operatorArgCounts.getQuick(op);
+                if (methodIndices.get(op) == -1) {
+                    int hostClassIndex = asm.poolClass(asm.poolUtf8("com/questdb/ql/impl/filter/FilterCompiler"));
+                    int descIndex = asm.poolUtf8().put('(').put(TYPE_DESC[type]).put(argCount > 1 ? TYPE_DESC[type] : "").put(")Z").$();
+                    methodIndices.put(op, asm.poolMethod(hostClassIndex, asm.poolNameAndType(asm.poolUtf8(operatorMethods.getQuick(op)), descIndex)));
+                }
+                poolValue(o.getLhs(), type);
+                if (argCount > 1) {
+                    poolValue(o.getRhs(), type);
+                }
+            }
+        }
+    }
+
+    private void poolColumn(VirtualColumn vc) {
+        int nameIndex = asm.poolUtf8().put('f').put(columns.size()).$();
+        fieldIndices.add(nameIndex);
+        fieldIndices.add(asm.poolField(thisClassIndex, asm.poolNameAndType(nameIndex, fieldTypeIndex)));
+        columns.add(vc);
+    }
+
+    private void poolValue(VirtualColumn vc, int type) {
+        if (isLiteral(vc)) {
+            switch (type) {
+                case TYPE_INT:
+                    constantIndices.add(asm.poolIntConst(vc.getInt(null)));
+                    break;
+                case TYPE_LONG:
+                    constantIndices.add(asm.poolLongConst(vc.getLong(null)));
+                    break;
+                default:
+                    constantIndices.add(asm.poolDoubleConst(vc.getDouble(null)));
+                    break;
+            }
+        } else if (columnIndexOf(vc, type) == -1) {
+            poolColumn(vc);
+        }
+    }
+
+    static {
+        operator(IntEqualsOperator.class, "intEq", TYPE_INT, 2);
+        operator(IntEqualsNaNOperator.class, "intIsNaN", TYPE_INT, 1);
+        operator(IntNotEqualsOperator.class, "intNe", TYPE_INT, 2);
+        operator(IntNotEqualsNaNOperator.class, "intNotNaN", TYPE_INT, 1);
+        operator(IntGreaterThanOperator.class, "intGt", TYPE_INT, 2);
+        operator(IntGreaterOrEqualOperator.class, "intGe", TYPE_INT, 2);
+        operator(IntLessThanOperator.class, "intLt", TYPE_INT, 2);
+        operator(IntLessOrEqualOperator.class, "intLe", TYPE_INT, 2);
+
+        operator(LongEqualsOperator.class, "longEq", TYPE_LONG, 2);
+        operator(LongEqualsNaNOperator.class, "longIsNaN", TYPE_LONG, 1);
+        operator(LongNotEqualsOperator.class, "longNe", TYPE_LONG, 2);
+        operator(LongNotEqualsNaNOperator.class, "longNotNaN", TYPE_LONG, 1);
+        operator(LongGreaterThanOperator.class, "longGt", TYPE_LONG, 2);
+        operator(LongGreaterOrEqualOperator.class, "longGe", TYPE_LONG, 2);
+        operator(LongLessThanOperator.class, "longLt", TYPE_LONG, 2);
+        operator(LongLessOrEqualOperator.class, "longLe", TYPE_LONG, 2);
+
+        operator(DoubleEqualsOperator.class, "dblEq", TYPE_DOUBLE, 2);
+        operator(DoubleEqualsNanOperator.class, "dblIsNaN", TYPE_DOUBLE, 1);
+        operator(DoubleNotEqualsOperator.class, "dblNe", TYPE_DOUBLE, 2);
+        operator(DoubleNotEqualsNanOperator.class, "dblNotNaN", TYPE_DOUBLE, 1);
+        operator(DoubleGreaterThanOperator.class, "dblGt", TYPE_DOUBLE, 2);
+        operator(DoubleGreaterOrEqualOperator.class, "dblGe", TYPE_DOUBLE, 2);
+        operator(DoubleLessThanOperator.class, "dblLt", TYPE_DOUBLE, 2);
+        operator(DoubleLessOrEqualOperator.class, "dblLe", TYPE_DOUBLE, 2);
+    }
+}
@@ -23,11 +23,20 @@
 
 package com.questdb.ql.impl.join;
 
+import com.questdb.Partition;
+import com.questdb.ex.JournalException;
+import com.questdb.ex.JournalRuntimeException;
 import com.questdb.factory.JournalReaderFactory;
 import com.questdb.factory.configuration.RecordColumnMetadata;
 import com.questdb.factory.configuration.RecordMetadata;
+import com.questdb.misc.Hash;
 import com.questdb.misc.Misc;
+import com.questdb.misc.Numbers;
+import com.questdb.misc.Unsafe;
 import com.questdb.ql.*;
+import com.questdb.ql.impl.AllRowSource;
+import com.questdb.ql.impl.JournalRecord;
+import com.questdb.ql.impl.JournalRecordSource;
 import com.questdb.ql.impl.NullRecord;
 import com.questdb.ql.impl.SplitRecordMetadata;
 import com.questdb.ql.impl.join.hash.FakeRecord;
@@ -35,13 +44,39 @@ import com.questdb.ql.impl.join.hash.MultiRecordMap;
 import com.questdb.ql.impl.map.DirectMap;
 import com.questdb.ql.impl.map.MapUtils;
 import com.questdb.ql.ops.AbstractCombinedRecordSource;
-import com.questdb.std.CharSink;
-import com.questdb.std.IntList;
-import com.questdb.std.ObjList;
+import com.questdb.std.*;
+import com.questdb.store.ColumnIndex;
+import com.questdb.store.ColumnType;
+import com.questdb.store.IndexCursor;
+import com.questdb.store.SymbolTable;
 
 import java.io.Closeable;
 
+/**
+ * Joins master records to slave records with the same key by building hash table of slave
+ * records and probing it with master records.
+ * <p>
+ * Bloom filter of slave keys rejects master keys without probing hash table. Filter stops
+ * being checked when it rejects too few keys. Inner join on indexed symbol column of journal
+ * probes every master symbol once and, when few symbols match, reads only master rows of
+ * matching symbols from column index.
+ * <p>
+ * When hash table outgrows memory budget of query, join runs in several passes, each of which
+ * builds hash table of slave keys of one hash partition and probes it with master keys of the
+ * same partition. Passes record master and slave row ids, which are merged back in master order,
+ * so that result is the same as that of single pass.
+ */
 public class HashJoinRecordSource extends AbstractCombinedRecordSource implements Closeable {
+    private static final int BUDGET_CHECK_MASK = 1023;
+    private static final int BLOOM_CHECK_MASK = 4095;
+    // bloom filter is dropped when it rejects fewer than 1 in 8 keys
+    private static final int BLOOM_MIN_REJECT_RATIO = 8;
+    // index is used when no more than 1 in 4 master symbols match
+    private static final int PUSHDOWN_MIN_SELECTIVITY = 4;
+    private static final int MAX_PARTITIONS = 64;
+    private static final int PARTITION_GROWTH_BITS = 2;
+    // master sequence, master row id and slave row id
+    private static final int RUN_ENTRY_SIZE = 24;
     private final RecordSource master;
     private final RecordSource slave;
     private final SplitRecordMetadata metadata;
@@ -55,9 +90,36 @@ public class HashJoinRecordSource extends AbstractCombinedRecordSource implement
     private final boolean byRowId;
     private final boolean outer;
     private final MultiRecordMap recordMap;
+    // width of single fixed size key shared by master and slave, 0 when key has to be serialised
+    private final int keyWidth;
+    private final MemoryBudget budget;
+    private final BloomFilter bloom = new BloomFilter();
+    private final IntList keyHashes = new IntList();
+    // master symbols, which match slave keys, and index cursors of these symbols in current master partition,
+    // which are merged in row order by heap of cursors keyed on their current rows
+    private final boolean indexed;
+    private final IntList pushdownKeys = new IntList();
+    private final ObjList<IndexCursor> pushdownCursors = new ObjList<>();
+    private final LongList pushdownHeads = new LongList();
+    private final IntList pushdownHeap = new IntList();
+    private final JournalRecord pushdownRecord = new JournalRecord();
+    // runs of partitioned passes, run is offset of its next entry and count of remaining entries
+    private final MemoryPages runs;
+    private final LongList runBounds = new LongList();
     private RecordCursor slaveCursor;
     private RecordCursor masterCursor;
     private RecordCursor hashTableCursor;
+    private int intKey;
+    private long longKey;
+    private DirectMap.KeyWriter keyWriter;
+    private boolean bloomActive;
+    private long bloomProbes;
+    private long bloomRejects;
+    private boolean pushdown;
+    private PartitionCursor pushdownCursor;
+    private int pushdownHeapSize;
+    private long pushdownHi;
+    private int partitionBits;
 
     public HashJoinRecordSource(
             RecordSource master,
@@ -68,6 +130,20 @@ public class HashJoinRecordSource extends AbstractCombinedRecordSource implement
             int keyPageSize,
             int dataPageSize,
             int rowIdPageSize
+    ) {
+        this(master, masterColIndices, slave, slaveColIndices, outer, keyPageSize, dataPageSize, rowIdPageSize, null);
+    }
+
+    public HashJoinRecordSource(
+            RecordSource master,
+            IntList masterColIndices,
+            RecordSource slave,
+            IntList slaveColIndices,
+            boolean outer,
+            int keyPageSize,
+            int dataPageSize,
+            int rowIdPageSize,
+            MemoryBudget budget
     ) {
         this.master = master;
         this.slave = slave;
@@ -76,14 +152,26 @@ public class HashJoinRecordSource extends AbstractCombinedRecordSource implement
         this.byRowId = slave.supportsRowIdAccess();
         this.masterColIndex = masterColIndices;
         this.slaveColIndex = slaveColIndices;
-        this.recordMap = createRecordMap(master, slave, keyPageSize, dataPageSize, rowIdPageSize);
+        this.recordMap = createRecordMap(master, slave, keyPageSize, dataPageSize, rowIdPageSize, budget);
+        this.keyWidth = masterColumns.size() == 1 && masterColumns.getQuick(0).getType() == slaveColumns.getQuick(0).getType() ?
+                MapUtils.fixedKeyWidth(masterColumns.getQuick(0).getType()) : 0;
         this.outer = outer;
         this.storageFacade = new SplitRecordStorageFacade(master.getMetadata().getColumnCount());
+        this.budget = budget;
+        // passes need to revisit both sides by row id
+        this.runs = budget != null && byRowId && master.supportsRowIdAccess() ? new MemoryPages(Math.max(rowIdPageSize, RUN_ENTRY_SIZE), budget) : null;
+        this.indexed = !outer
+                && keyWidth == 4
+                && masterColumns.getQuick(0).getType() == ColumnType.SYMBOL
+                && masterColumns.getQuick(0).isIndexed()
+                && master instanceof JournalRecordSource
+                && ((JournalRecordSource) master).getRowSource().getClass() == AllRowSource.class;
     }
 
     @Override
     public void close() {
         Misc.free(recordMap);
+        Misc.free(runs);
         Misc.free(master);
         Misc.free(slave);
     }
@@ -97,10 +185,36 @@ public class HashJoinRecordSource extends AbstractCombinedRecordSource implement
     public RecordCursor prepareCursor(JournalReaderFactory factory, CancellationHandler cancellationHandler) {
         this.hashTableCursor = null;
         this.recordMap.clear();
+        this.pushdown = false;
+        this.bloomActive = false;
+        this.partitionBits = 0;
         this.slaveCursor = slave.prepareCursor(factory, cancellationHandler);
         this.masterCursor = master.prepareCursor(factory, cancellationHandler);
-        buildHashTable(cancellationHandler);
         recordMap.setStorageFacade(slaveCursor.getStorageFacade());
+
+        if (runs == null) {
+            buildHashTable(cancellationHandler, 0, false);
+        } else {
+            runBounds.clear();
+            // size partitions by first of them, hash spreads keys evenly
+            while (!buildHashTable(cancellationHandler, 0, partitionBits < Numbers.msb(MAX_PARTITIONS))) {
+                partitionBits += PARTITION_GROWTH_BITS;
+                recordMap.clear();
+                this.slaveCursor = slave.prepareCursor(factory, cancellationHandler);
+            }
+
+            if (partitionBits > 0) {
+                joinPartitions(factory, cancellationHandler);
+            }
+        }
+
+        if (partitionBits == 0) {
+            prepareBloom();
+            if (indexed) {
+                preparePushdown();
+            }
+        }
+
         storageFacade.prepare(masterCursor.getStorageFacade(), slaveCursor.getStorageFacade());
         return this;
     }
@@ -112,6 +226,10 @@ public class HashJoinRecordSource extends AbstractCombinedRecordSource implement
 
     @Override
     public boolean hasNext() {
+        if (partitionBits > 0) {
+            return nextRunEntry();
+        }
+
         if (hashTableCursor != null && hashTableCursor.hasNext()) {
             Record rec = hashTableCursor.next();
             currentRecord.setB(byRowId ? slaveCursor.recordAt(rec.getLong(0)) : rec);
@@ -155,23 +273,60 @@ public class HashJoinRecordSource extends AbstractCombinedRecordSource implement
         sink.put("]]}");
     }
 
-    private void buildHashTable(CancellationHandler cancellationHandler) {
+    private boolean addKey(Record value) {
+        switch (keyWidth) {
+            case 4:
+                return recordMap.add(intKey, value);
+            case 8:
+                return recordMap.add(longKey, value);
+            default:
+                return recordMap.add(keyWriter, value);
+        }
+    }
+
+    /**
+     * Run entries do not straddle pages, entry, which does not fit remainder of page, starts on the next page.
+     *
+     * @param offset offset past previous entry
+     * @return offset of next entry
+     */
+    private long alignRunEntry(long offset) {
+        int remaining = runs.pageRemaining(offset);
+        return remaining < RUN_ENTRY_SIZE ? offset + remaining : offset;
+    }
+
+    /**
+     * Adds slave records of hash partition to hash table.
+     *
+     * @param cancellationHandler cancellation handler
+     * @param partition           partition of slave keys to add
+     * @param checkBudget         true to stop when hash table starts spilling memory over budget
+     * @return false when build was stopped
+     */
+    private boolean buildHashTable(CancellationHandler cancellationHandler, int partition, boolean checkBudget) {
+        final long spilled = checkBudget ? budget.getSpilled() : 0;
+        int n = 0;
+        keyHashes.clear();
         for (Record r : slaveCursor) {
             cancellationHandler.check();
-            final DirectMap.KeyWriter key = populateKey(r, slaveColIndex, slaveColumns);
-            if (byRowId) {
-                recordMap.add(key, fakeRecord.of(r.getRowId()));
-            } else {
-                recordMap.add(key, r);
+            if (checkBudget && (++n & BUDGET_CHECK_MASK) == 0 && budget.getSpilled() > spilled) {
+                return false;
+            }
+
+            int hash = hashKey(r, slaveColIndex, slaveColumns);
+            if (partitionOf(hash) == partition && addKey(byRowId ? fakeRecord.of(r.getRowId()) : r)) {
+                keyHashes.add(hash);
             }
         }
+        return true;
     }
 
     private MultiRecordMap createRecordMap(RecordSource masterSource,
                                            RecordSource slaveSource,
                                            int keyPageSize,
                                            int dataPageSize,
-                                           int rowIdPageSize) {
+                                           int rowIdPageSize,
+                                           MemoryBudget budget) {
         RecordMetadata mm = masterSource.getMetadata();
         for (int i = 0, k = masterColIndex.size(); i < k; i++) {
             this.masterColumns.add(mm.getColumnQuick(masterColIndex.getQuick(i)));
@@ -182,16 +337,16 @@ public class HashJoinRecordSource extends AbstractCombinedRecordSource implement
             int index = slaveColIndex.getQuick(i);
             this.slaveColumns.add(sm.getColumnQuick(index));
         }
-        return byRowId ? new MultiRecordMap(slaveColumns.size(), MapUtils.ROWID_RECORD_METADATA, keyPageSize, rowIdPageSize) :
-                new MultiRecordMap(slaveColumns.size(), slaveSource.getMetadata(), keyPageSize, dataPageSize);
+        return byRowId ? new MultiRecordMap(slaveColumns.size(), MapUtils.ROWID_RECORD_METADATA, keyPageSize, rowIdPageSize, budget) :
+                new MultiRecordMap(slaveColumns.size(), slaveSource.getMetadata(), keyPageSize, dataPageSize, budget);
     }
 
     private boolean hasNext0() {
-        while (masterCursor.hasNext()) {
-            Record r = masterCursor.next();
+        Record r;
+        while ((r = nextMaster()) != null) {
             currentRecord.setA(r);
-            hashTableCursor = recordMap.get(populateKey(r, masterColIndex, masterColumns));
-            if (hashTableCursor.hasNext()) {
+            hashTableCursor = mightMatch(hashKey(r, masterColIndex, masterColumns)) ? lookup() : null;
+            if (hashTableCursor != null && hashTableCursor.hasNext()) {
                 if (byRowId) {
                     currentRecord.setB(slaveCursor.recordAt(hashTableCursor.next().getLong(0)));
                 } else {
@@ -207,6 +362,186 @@ public class HashJoinRecordSource extends AbstractCombinedRecordSource implement
         return false;
     }
 
+    /**
+     * Reads key of record into key fields.
+     *
+     * @return hash of key, the same hash map uses
+     */
+    private int hashKey(Record r, IntList indices, ObjList<RecordColumnMetadata> columns) {
+        switch (keyWidth) {
+            case 4:
+                return Hash.hashInt(intKey = MapUtils.intKey(r, indices.getQuick(0), columns.getQuick(0).getType()));
+            case 8:
+                return Hash.hashLong(longKey = MapUtils.longKey(r, indices.getQuick(0), columns.getQuick(0).getType()));
+            default:
+                return (keyWriter = populateKey(r, indices, columns)).hash();
+        }
+    }
+
+    private void joinPartitions(JournalReaderFactory factory, CancellationHandler cancellationHandler) {
+        runs.clear();
+        long end = 0;
+        for (int p = 0, n = 1 << partitionBits; p < n; p++) {
+            if (p > 0) {
+                recordMap.clear();
+                this.slaveCursor = slave.prepareCursor(factory, cancellationHandler);
+                buildHashTable(cancellationHandler, p, false);
+            }
+
+            this.masterCursor = master.prepareCursor(factory, cancellationHandler);
+            runBounds.add(alignRunEntry(end));
+            long entries = 0;
+            long seq = 0;
+            for (Record r : masterCursor) {
+                cancellationHandler.check();
+                seq++;
+                if (partitionOf(hashKey(r, masterColIndex, masterColumns)) != p) {
+                    continue;
+                }
+
+                RecordCursor cursor = lookup();
+                boolean matched = false;
+                while (cursor.hasNext()) {
+                    end = putRunEntry(seq, r.getRowId(), cursor.next().getLong(0));
+                    entries++;
+                    matched = true;
+                }
+
+                if (!matched && outer) {
+                    end = putRunEntry(seq, r.getRowId(), -1);
+                    entries++;
+                }
+            }
+            runBounds.add(entries);
+        }
+    }
+
+    private RecordCursor lookup() {
+        switch (keyWidth) {
+            case 4:
+                return recordMap.get(intKey);
+            case 8:
+                return recordMap.get(longKey);
+            default:
+                return recordMap.get(keyWriter);
+        }
+    }
+
+    private boolean mightMatch(int hash) {
+        if (!bloomActive) {
+            return true;
+        }
+
+        boolean result = bloom.mightContain(hash);
+        if (!result) {
+            bloomRejects++;
+        }
+
+        if ((++bloomProbes & BLOOM_CHECK_MASK) == 0 && bloomRejects * BLOOM_MIN_REJECT_RATIO < bloomProbes) {
+            bloomActive = false;
+        }
+        return result;
+    }
+
+    private Record nextMaster() {
+        if (!pushdown) {
+            return masterCursor.hasNext() ? masterCursor.next() : null;
+        }
+
+        while (pushdownHeapSize == 0) {
+            if (!pushdownCursor.hasNext()) {
+                return null;
+            }
+            openPushdownCursors(pushdownCursor.next());
+        }
+
+        int top = pushdownHeap.getQuick(0);
+        pushdownRecord.rowid = pushdownHeads.getQuick(top);
+        IndexCursor cursor = pushdownCursors.getQuick(top);
+        long row;
+        if (cursor.hasNext() && (row = cursor.next()) <= pushdownHi) {
+            pushdownHeads.setQuick(top, row);
+        } else {
+            pushdownHeap.setQuick(0, pushdownHeap.getQuick(--pushdownHeapSize));
+        }
+        siftDownPushdownHeap(0);
+        return pushdownRecord;
+    }
+
+    /**
+     * Picks run entry of lowest master sequence and sets current record to its master and slave records.
+     *
+     * @return false when all runs are exhausted
+     */
+    private boolean nextRunEntry() {
+        int run = -1;
+        long seq = Long.MAX_VALUE;
+        for (int i = 0, n = runBounds.size(); i < n; i += 2) {
+            if (runBounds.getQuick(i + 1) > 0) {
+                long s = Unsafe.getUnsafe().getLong(runs.addressOf(runBounds.getQuick(i)));
+                if (s < seq) {
+                    seq = s;
+                    run = i;
+                }
+            }
+        }
+
+        if (run == -1) {
+            return false;
+        }
+
+        long offset = runBounds.getQuick(run);
+        runBounds.setQuick(run, alignRunEntry(offset + RUN_ENTRY_SIZE));
+        runBounds.setQuick(run + 1, runBounds.getQuick(run + 1) - 1);
+        long address = runs.addressOf(offset);
+        currentRecord.setA(masterCursor.recordAt(Unsafe.getUnsafe().getLong(address + 8)));
+        long slaveRowId = Unsafe.getUnsafe().getLong(address + 16);
+        currentRecord.setB(slaveRowId == -1 ? NullRecord.INSTANCE : slaveCursor.recordAt(slaveRowId));
+        return true;
+    }
+
+    private void openPushdownCursors(PartitionSlice slice) {
+        pushdownCursors.clear();
+        pushdownHeads.clear();
+        pushdownHeap.clear();
+        pushdownHeapSize = 0;
+        try {
+            Partition partition = slice.partition.open();
+            pushdownHi = slice.calcHi ? partition.size() - 1 : slice.hi;
+            ColumnIndex index = partition.getIndexForColumn(masterColIndex.getQuick(0));
+            for (int i = 0, n = pushdownKeys.size(); i < n; i++) {
+                IndexCursor cursor = index.newFwdCursor(pushdownKeys.getQuick(i));
+                pushdownCursors.add(cursor);
+                pushdownHeads.add(-1);
+                while (cursor.hasNext()) {
+                    long row = cursor.next();
+                    if (row > pushdownHi) {
+                        break;
+                    }
+
+                    if (row >= slice.lo) {
+                        pushdownHeads.setQuick(i, row);
+                        pushdownHeap.add(i);
+                        pushdownHeapSize++;
+                        break;
+                    }
+                }
+            }
+
+            for (int i = (pushdownHeapSize >> 1) - 1; i >= 0; i--) {
+                siftDownPushdownHeap(i);
+            }
+            pushdownRecord.partition = partition;
+            pushdownRecord.partitionIndex = partition.getPartitionIndex();
+        } catch (JournalException e) {
+            throw new JournalRuntimeException(e);
+        }
+    }
+
+    private int partitionOf(int hash) {
+        return partitionBits == 0 ? 0 : Hash.mix(hash) >>> (32 - partitionBits);
+    }
+
     private DirectMap.KeyWriter populateKey(Record r, IntList indices, ObjList<RecordColumnMetadata> columns) {
         DirectMap.KeyWriter key = recordMap.claimKey();
         for (int i = 0, k = masterColumns.size(); i < k; i++) {
@@ -214,4 +549,67 @@ public class HashJoinRecordSource extends AbstractCombinedRecordSource implement
         }
         return key;
     }
+
+    private void prepareBloom() {
+        bloom.of(keyHashes.size());
+        for (int i = 0, n = keyHashes.size(); i < n; i++) {
+            bloom.add(keyHashes.getQuick(i));
+        }
+        bloomActive = keyHashes.size() > 0;
+        bloomProbes = 0;
+        bloomRejects = 0;
+    }
+
+    private void preparePushdown() {
+        int column = masterColIndex.getQuick(0);
+        SymbolTable tab = masterCursor.getStorageFacade().getSymbolTable(column);
+
+        // null symbol is indexed under key -1, it is probed together with symbol keys
+        pushdownKeys.clear();
+        for (int i = SymbolTable.VALUE_IS_NULL, n = tab.size(); i < n; i++) {
+            intKey = i;
+            if (bloom.mightContain(Hash.hashInt(i)) && lookup().hasNext()) {
+                pushdownKeys.add(i);
+            }
+        }
+
+        if (pushdownKeys.size() * PUSHDOWN_MIN_SELECTIVITY <= tab.size() + 1) {
+            pushdown = true;
+            pushdownCursor = ((JournalRecordSource) master).getPartitionCursor();
+            pushdownHeapSize = 0;
+        }
+    }
+
+    /**
+     * Appends run entry.
+     *
+     * @return offset of the end of entry
+     */
+    private long putRunEntry(long seq, long masterRowId, long slaveRowId) {
+        long offset = runs.allocateOffset(RUN_ENTRY_SIZE);
+        long address = runs.addressOf(offset);
+        Unsafe.getUnsafe().putLong(address, seq);
+        Unsafe.getUnsafe().putLong(address + 8, masterRowId);
+        Unsafe.getUnsafe().putLong(address + 16, slaveRowId);
+        return offset + RUN_ENTRY_SIZE;
+    }
+
+    private void siftDownPushdownHeap(int pos) {
+        int cursor = pushdownHeap.getQuick(pos);
+        long row = pushdownHeads.getQuick(cursor);
+        int child;
+        while ((child = (pos << 1) + 1) < pushdownHeapSize) {
+            if (child + 1 < pushdownHeapSize && pushdownHeads.getQuick(pushdownHeap.getQuick(child + 1)) < pushdownHeads.getQuick(pushdownHeap.getQuick(child))) {
+                child++;
+            }
+
+            int c = pushdownHeap.getQuick(child);
+            if (pushdownHeads.getQuick(c) >= row) {
+                break;
+            }
+            pushdownHeap.setQuick(pos, c);
+            pos = child;
+        }
+        pushdownHeap.setQuick(pos, cursor);
+    }
 }
@@ -0,0 +1,288 @@
+/*******************************************************************************
+ *    ___                  _   ____  ____
+ *   / _ \ _   _  ___  ___| |_|  _ \| __ )
+ *  | | | | | | |/ _ \/ __| __| | | |  _ \
+ *  | |_| | |_| |  __/\__ \ |_| |_| | |_) |
+ *   \__\_\\__,_|\___||___/\__|____/|____/
+ *
+ * Copyright (C) 2014-2016 Appsicle
+ *
+ * This program is free software: you can redistribute it and/or  modify
+ * it under the terms of the GNU Affero General Public License, version 3,
+ * as published by the Free Software Foundation.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ *
+ ******************************************************************************/
+
+
+package com.questdb.ql.impl.join;
+
+import com.questdb.factory.JournalReaderFactory;
+import com.questdb.factory.configuration.RecordMetadata;
+import com.questdb.misc.Chars;
+import com.questdb.misc.Misc;
+import com.questdb.ql.*;
+import com.questdb.ql.impl.NullRecord;
+import com.questdb.ql.impl.SplitRecordMetadata;
+import com.questdb.ql.ops.AbstractCombinedRecordSource;
+import com.questdb.std.CharSink;
+import com.questdb.std.IntList;
+import com.questdb.std.LongList;
+import com.questdb.store.ColumnType;
+
+import java.io.Closeable;
+
+/**
+ * Joins master and slave, which are both ordered by timestamp, on timestamp equality or, when tolerance
+ * is given, on slave timestamp being within tolerance of master timestamp. Cursors are walked in lockstep
+ * and only row ids of slave records inside of current window are kept, so memory is bounded by
+ * the number of slave records within window rather than by slave size.
+ * <p>
+ * Columns other than timestamp can be added to join criteria, they are compared for each slave record
+ * in window.
+ */
+public class MergeJoinRecordSource extends AbstractCombinedRecordSource implements Closeable {
+    private final RecordSource master;
+    private final RecordSource slave;
+    private final SplitRecordMetadata metadata;
+    private final SplitRecord currentRecord;
+    private final SplitRecordStorageFacade storageFacade;
+    private final int masterTimestampIndex;
+    private final int slaveTimestampIndex;
+    private final long tolerance;
+    private final IntList masterColIndex;
+    private final IntList slaveColIndex;
+    private final boolean outer;
+    private final LongList rowIds = new LongList();
+    private final LongList timestamps = new LongList();
+    private RecordCursor masterCursor;
+    private RecordCursor slaveCursor;
+    private Record masterRecord;
+    private Record slaveRecord;
+    private long masterTimestamp;
+    private int windowLo;
+    private int windowIndex;
+    private boolean matched;
+    private boolean slaveExhausted;
+
+    public MergeJoinRecordSource(
+            RecordSource master,
+            int masterTimestampIndex,
+            IntList masterColIndices,
+            RecordSource slave,
+            int slaveTimestampIndex,
+            IntList slaveColIndices,
+            long tolerance,
+            boolean outer
+    ) {
+        this.master = master;
+        this.masterTimestampIndex = masterTimestampIndex;
+        this.masterColIndex = masterColIndices;
+        this.slave = slave;
+        this.slaveTimestampIndex = slaveTimestampIndex;
+        this.slaveColIndex = slaveColIndices;
+        this.tolerance = tolerance;
+        this.outer = outer;
+        this.metadata = new SplitRecordMetadata(master.getMetadata(), slave.getMetadata());
+        this.currentRecord = new SplitRecord(master.getMetadata().getColumnCount());
+        this.storageFacade = new SplitRecordStorageFacade(master.getMetadata().getColumnCount());
+    }
+
+    @Override
+    public void close() {
+        Misc.free(master);
+        Misc.free(slave);
+    }
+
+    @Override
+    public RecordMetadata getMetadata() {
+        return metadata;
+    }
+
+    @Override
+    public RecordCursor prepareCursor(JournalReaderFactory factory, CancellationHandler cancellationHandler) {
+        this.masterCursor = master.prepareCursor(factory, cancellationHandler);
+        this.slaveCursor = slave.prepareCursor(factory, cancellationHandler);
+        this.slaveRecord = slaveCursor.newRecord();
+        this.masterRecord = null;
+        this.rowIds.clear();
+        this.timestamps.clear();
+        this.windowLo = 0;
+        this.slaveExhausted = false;
+        storageFacade.prepare(masterCursor.getStorageFacade(), slaveCursor.getStorageFacade());
+        return this;
+    }
+
+    @Override
+    public StorageFacade getStorageFacade() {
+        return storageFacade;
+    }
+
+    @Override
+    public boolean hasNext() {
+        while (true) {
+            if (masterRecord != null) {
+                while (windowIndex < rowIds.size() && timestamps.getQuick(windowIndex) <= masterTimestamp + tolerance) {
+                    slaveCursor.recordAt(slaveRecord, rowIds.getQuick(windowIndex++));
+                    if (keysMatch()) {
+                        matched = true;
+                        currentRecord.setB(slaveRecord);
+                        return true;
+                    }
+                }
+
+                masterRecord = null;
+                if (!matched && outer) {
+                    currentRecord.setB(NullRecord.INSTANCE);
+                    return true;
+                }
+            }
+
+            if (!masterCursor.hasNext()) {
+                return false;
+            }
+
+            masterRecord = masterCursor.next();
+            masterTimestamp = masterRecord.getDate(masterTimestampIndex);
+            currentRecord.setA(masterRecord);
+            slide();
+            windowIndex = windowLo;
+            matched = false;
+        }
+    }
+
+    @Override
+    public SplitRecord next() {
+        return currentRecord;
+    }
+
+    @Override
+    public Record newRecord() {
+        return new SplitRecord(master.getMetadata().getColumnCount());
+    }
+
+    @Override
+    public void toSink(CharSink sink) {
+        sink.put('{');
+        sink.putQuoted("op").put(':').putQuoted("MergeJoinRecordSource").put(',');
+        sink.putQuoted("master").put(':').put(master).put(',');
+        sink.putQuoted("slave").put(':').put(slave).put(',');
+        sink.putQuoted("masterTsIndex").put(':').put(masterTimestampIndex).put(',');
+        sink.putQuoted("slaveTsIndex").put(':').put(slaveTimestampIndex).put(',');
+        sink.putQuoted("tolerance").put(':').put(tolerance);
+        sink.put('}');
+    }
+
+    private static boolean eq(CharSequence l, CharSequence r) {
+        return l != null && Chars.equalsNc(l, r);
+    }
+
+    private boolean keysMatch() {
+        for (int i = 0, n = masterColIndex.size(); i < n; i++) {
+            int m = masterColIndex.getQuick(i);
+            int s = slaveColIndex.getQuick(i);
+            switch (master.getMetadata().getColumnQuick(m).getType()) {
+                case ColumnType.BOOLEAN:
+                    if (masterRecord.getBool(m) != slaveRecord.getBool(s)) {
+                        return false;
+                    }
+                    break;
+                case ColumnType.BYTE:
+                    if (masterRecord.get(m) != slaveRecord.get(s)) {
+                        return false;
+                    }
+                    break;
+                case ColumnType.SHORT:
+                    if (masterRecord.getShort(m) != slaveRecord.getShort(s)) {
+                        return false;
+                    }
+                    break;
+                case ColumnType.INT:
+                    if (masterRecord.getInt(m) != slaveRecord.getInt(s)) {
+                        return false;
+                    }
+                    break;
+                case ColumnType.FLOAT:
+                    if (masterRecord.getFloat(m) != slaveRecord.getFloat(s)) {
+                        return false;
+                    }
+                    break;
+                case ColumnType.DOUBLE:
+                    if (masterRecord.getDouble(m) != slaveRecord.getDouble(s)) {
+                        return false;
+                    }
+                    break;
+                case ColumnType.STRING:
+                    if (!eq(masterRecord.getFlyweightStr(m), slaveRecord.getFlyweightStr(s))) {
+                        return false;
+                    }
+                    break;
+                case ColumnType.SYMBOL:
+                    // symbol tables of master and slave are different
+                    if (!eq(masterRecord.getSym(m), slaveRecord.getSym(s))) {
+                        return false;
+                    }
+                    break;
+                default:
+                    if (masterRecord.getLong(m) != slaveRecord.getLong(s)) {
+                        return false;
+                    }
+                    break;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Moves slave window to cover timestamps within tolerance of current master timestamp. Slave
+     * records behind window are dropped and slave cursor is advanced until it is past the window.
+     */
+    private void slide() {
+        final long lo = masterTimestamp - tolerance;
+        final long hi = masterTimestamp + tolerance;
+
+        while (windowLo < rowIds.size() && timestamps.getQuick(windowLo) < lo) {
+            windowLo++;
+        }
+
+        while (!slaveExhausted && (windowLo == rowIds.size() || timestamps.getLast() <= hi)) {
+            if (!slaveCursor.hasNext()) {
+                slaveExhausted = true;
+                break;
+            }
+
+            Record r = slaveCursor.next();
+            long ts = r.getDate(slaveTimestampIndex);
+            if (ts >= lo) {
+                rowIds.add(r.getRowId());
+                timestamps.add(ts);
+            }
+        }
+
+        compact();
+    }
+
+    private void compact() {
+        int n = rowIds.size();
+        if (windowLo == n) {
+            rowIds.clear();
+            timestamps.clear();
+            windowLo = 0;
+        } else if (windowLo > 1024 && windowLo > n / 2) {
+            for (int i = windowLo; i < n; i++) {
+                rowIds.setQuick(i - windowLo, rowIds.getQuick(i));
+                timestamps.setQuick(i - windowLo, timestamps.getQuick(i));
+            }
+            rowIds.setPos(n - windowLo);
+            timestamps.setPos(n - windowLo);
+            windowLo = 0;
+        }
+    }
+}
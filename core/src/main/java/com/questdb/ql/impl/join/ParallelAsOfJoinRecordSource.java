@@ -0,0 +1,624 @@
+/*******************************************************************************
+ *    ___                  _   ____  ____
+ *   / _ \ _   _  ___  ___| |_|  _ \| __ )
+ *  | | | | | | |/ _ \/ __| __| | | |  _ \
+ *  | |_| | |_| |  __/\__ \ |_| |_| | |_) |
+ *   \__\_\\__,_|\___||___/\__|____/|____/
+ *
+ * Copyright (C) 2014-2016 Appsicle
+ *
+ * This program is free software: you can redistribute it and/or  modify
+ * it under the terms of the GNU Affero General Public License, version 3,
+ * as published by the Free Software Foundation.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ *
+ ******************************************************************************/
+
+
+package com.questdb.ql.impl.join;
+
+import com.questdb.Partition;
+import com.questdb.ex.JournalException;
+import com.questdb.ex.JournalRuntimeException;
+import com.questdb.factory.JournalReaderFactory;
+import com.questdb.factory.configuration.ColumnMetadata;
+import com.questdb.factory.configuration.RecordColumnMetadata;
+import com.questdb.factory.configuration.RecordMetadata;
+import com.questdb.misc.Misc;
+import com.questdb.misc.Rows;
+import com.questdb.ql.*;
+import com.questdb.ql.impl.AllRowSource;
+import com.questdb.ql.impl.JournalRecord;
+import com.questdb.ql.impl.JournalRecordSource;
+import com.questdb.ql.impl.QueryWorkerPool;
+import com.questdb.ql.impl.SplitRecordMetadata;
+import com.questdb.ql.ops.AbstractCombinedRecordSource;
+import com.questdb.std.CharSink;
+import com.questdb.std.IntList;
+import com.questdb.std.LongList;
+import com.questdb.std.ObjList;
+import com.questdb.store.ColumnType;
+import com.questdb.store.KVIndex;
+import com.questdb.store.SymbolTable;
+
+import java.io.Closeable;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * As of join of two journals, which splits master partitions into slices of fixed number of rows and
+ * finds slave rows for slices on worker pool. Results are produced in master order and are the same as
+ * those of {@link AsOfJoinRecordSource} and {@link AsOfPartitionedJoinRecordSource}.
+ * <p>
+ * Before lanes start query thread seeds each slice with position of first slave row, which is not
+ * older than first master row of slice, and, for keyed join, with last slave row of every key before
+ * that position. Keys are looked up by scanning slave backwards for a bounded number of rows. Keys not
+ * found by scan are taken from previous slice when scan reached it, or otherwise looked up in slave
+ * column index. Lanes then merge master rows of slice with slave rows and record slave row ids, which
+ * query thread resolves to records in order.
+ * <p>
+ * Lanes read preloaded fixed width columns only, so only journals without filters, joined on their
+ * designated timestamps and, optionally, on single indexed symbol column are eligible.
+ */
+public class ParallelAsOfJoinRecordSource extends AbstractCombinedRecordSource implements Closeable {
+    private static final int BATCH_SLICES_PER_LANE = 4;
+    private static final int MIN_LOOKBACK = 1024;
+    private final QueryWorkerPool pool;
+    private final long sliceRows;
+    private final JournalRecordSource master;
+    private final JournalRecordSource slave;
+    private final int masterTimestampIndex;
+    private final int slaveTimestampIndex;
+    private final int masterKeyIndex;
+    private final int slaveKeyIndex;
+    private final boolean partitioned;
+    private final SplitRecordMetadata metadata;
+    private final SplitRecord record;
+    private final SplitRecordStorageFacade storageFacade;
+    private final JournalRecord masterRecord = new JournalRecord();
+    private final ObjList<Lane> lanes;
+    private final ObjList<Lane> tasks;
+    private final AtomicInteger nextSlice = new AtomicInteger();
+    // master slices, lo and hi of each slice and timestamp of master row preceding slice
+    private final ObjList<Partition> masterPartitions = new ObjList<>();
+    private final LongList masterBounds = new LongList();
+    private final LongList masterPrevTimestamps = new LongList();
+    // slave partitions with their lo and hi
+    private final ObjList<Partition> slavePartitions = new ObjList<>();
+    private final LongList slaveBounds = new LongList();
+    // seeds of slices of current batch: slave partition, slave row, last slave timestamp and row id
+    private final LongList seeds = new LongList();
+    private final LongList keySeeds = new LongList();
+    private final IntList resultOffsets = new IntList();
+    private final LongList results = new LongList();
+    // key maps: master symbol + 1 -> key, slave symbol + 1 -> key, key -> slave symbol
+    private final IntList masterKeys = new IntList();
+    private final IntList slaveKeys = new IntList();
+    private final IntList keySymbols = new IntList();
+    private final LongList lastReturned = new LongList();
+    private long[] prevKeySeeds = new long[0];
+    private RecordCursor slaveCursor;
+    private int keyCount;
+    private int sliceCount;
+    private int batchLo;
+    private int batchHi;
+    private int slice;
+    private long row;
+    private long rowHi;
+    private int resultPos;
+    private int seekPartition;
+    private long seekRow;
+    private int prevSeekPartition;
+    private long prevSeekRow;
+
+    private ParallelAsOfJoinRecordSource(
+            QueryWorkerPool pool,
+            long sliceRows,
+            JournalRecordSource master,
+            int masterTimestampIndex,
+            JournalRecordSource slave,
+            int slaveTimestampIndex,
+            int masterKeyIndex,
+            int slaveKeyIndex,
+            boolean partitioned
+    ) {
+        this.pool = pool;
+        this.sliceRows = sliceRows;
+        this.master = master;
+        this.masterTimestampIndex = masterTimestampIndex;
+        this.slave = slave;
+        this.slaveTimestampIndex = slaveTimestampIndex;
+        this.masterKeyIndex = masterKeyIndex;
+        this.slaveKeyIndex = slaveKeyIndex;
+        this.partitioned = partitioned;
+        this.metadata = new SplitRecordMetadata(master.getMetadata(), slave.getMetadata());
+        this.record = new SplitRecord(master.getMetadata().getColumnCount());
+        this.storageFacade = new SplitRecordStorageFacade(master.getMetadata().getColumnCount());
+
+        int laneCount = pool.getWorkerCount() + 1;
+        this.lanes = new ObjList<>(laneCount);
+        this.tasks = new ObjList<>(laneCount);
+        for (int i = 0; i < laneCount; i++) {
+            lanes.add(new Lane());
+        }
+    }
+
+    /**
+     * Creates parallel as of join when both sources and join keys are eligible.
+     *
+     * @param pool                 worker pool, can be null
+     * @param sliceRows            maximum number of master rows lane joins at a time
+     * @param master               master record source
+     * @param masterTimestampIndex index of master timestamp
+     * @param slave                slave record source
+     * @param slaveTimestampIndex  index of slave timestamp
+     * @param masterKey            name of master key column or null when join is not keyed
+     * @param slaveKey             name of slave key column or null when join is not keyed
+     * @param partitioned          true when join returns slave row for one master row of the key only, as
+     *                             {@link AsOfPartitionedJoinRecordSource} does
+     * @return parallel join or null when join has to run on query thread
+     */
+    public static ParallelAsOfJoinRecordSource create(
+            QueryWorkerPool pool,
+            long sliceRows,
+            RecordSource master,
+            int masterTimestampIndex,
+            RecordSource slave,
+            int slaveTimestampIndex,
+            CharSequence masterKey,
+            CharSequence slaveKey,
+            boolean partitioned
+    ) {
+        if (pool == null || pool.getWorkerCount() == 0 || sliceRows < 1 || !isEligible(master, masterTimestampIndex) || !isEligible(slave, slaveTimestampIndex)) {
+            return null;
+        }
+
+        int masterKeyIndex = -1;
+        int slaveKeyIndex = -1;
+        if (masterKey != null) {
+            RecordMetadata mm = master.getMetadata();
+            RecordMetadata sm = slave.getMetadata();
+            masterKeyIndex = mm.getColumnIndex(masterKey);
+            slaveKeyIndex = sm.getColumnIndex(slaveKey);
+            RecordColumnMetadata sk = sm.getColumnQuick(slaveKeyIndex);
+            // slave key is looked up by position in key index, which bitmap index does not have
+            if (mm.getColumnQuick(masterKeyIndex).getType() != ColumnType.SYMBOL
+                    || sk.getType() != ColumnType.SYMBOL
+                    || !sk.isIndexed()
+                    || !(sk instanceof ColumnMetadata)
+                    || ((ColumnMetadata) sk).bitmapIndex) {
+                return null;
+            }
+        }
+
+        return new ParallelAsOfJoinRecordSource(
+                pool,
+                sliceRows,
+                (JournalRecordSource) master,
+                masterTimestampIndex,
+                (JournalRecordSource) slave,
+                slaveTimestampIndex,
+                masterKeyIndex,
+                slaveKeyIndex,
+                partitioned
+        );
+    }
+
+    @Override
+    public void close() {
+        Misc.free(master);
+        Misc.free(slave);
+        masterPartitions.clear();
+        slavePartitions.clear();
+    }
+
+    @Override
+    public RecordMetadata getMetadata() {
+        return metadata;
+    }
+
+    @Override
+    public RecordCursor prepareCursor(JournalReaderFactory factory, CancellationHandler cancellationHandler) {
+        RecordCursor masterCursor = master.prepareCursor(factory, cancellationHandler);
+        this.slaveCursor = slave.prepareCursor(factory, cancellationHandler);
+        storageFacade.prepare(masterCursor.getStorageFacade(), slaveCursor.getStorageFacade());
+
+        masterPartitions.clear();
+        masterBounds.clear();
+        masterPrevTimestamps.clear();
+        long prevTimestamp = Long.MIN_VALUE;
+        PartitionCursor cursor = master.getPartitionCursor();
+        while (cursor.hasNext()) {
+            cancellationHandler.check();
+            PartitionSlice s = cursor.next();
+            Partition partition = open(s);
+            long hi = s.calcHi ? partition.size() - 1 : s.hi;
+            if (hi < s.lo) {
+                continue;
+            }
+            partition.preload(hi);
+            for (long lo = s.lo; lo <= hi; lo += sliceRows) {
+                masterPartitions.add(partition);
+                masterBounds.add(lo);
+                masterBounds.add(Math.min(hi, lo + sliceRows - 1));
+                masterPrevTimestamps.add(prevTimestamp);
+                prevTimestamp = partition.getLong(Math.min(hi, lo + sliceRows - 1), masterTimestampIndex);
+            }
+        }
+
+        slavePartitions.clear();
+        slaveBounds.clear();
+        cursor = slave.getPartitionCursor();
+        while (cursor.hasNext()) {
+            cancellationHandler.check();
+            PartitionSlice s = cursor.next();
+            Partition partition = open(s);
+            long hi = s.calcHi ? partition.size() - 1 : s.hi;
+            if (hi < s.lo) {
+                continue;
+            }
+            partition.preload(hi);
+            slavePartitions.add(partition);
+            slaveBounds.add(s.lo);
+            slaveBounds.add(hi);
+        }
+
+        if (masterKeyIndex > -1) {
+            prepareKeys(masterCursor.getStorageFacade().getSymbolTable(masterKeyIndex), slaveCursor.getStorageFacade().getSymbolTable(slaveKeyIndex));
+        } else {
+            lastReturned.seed(1, -1);
+        }
+
+        this.sliceCount = masterPartitions.size();
+        this.batchLo = 0;
+        this.batchHi = 0;
+        this.slice = -1;
+        this.row = 0;
+        this.rowHi = -1;
+        this.seekPartition = 0;
+        this.seekRow = slavePartitions.size() > 0 ? slaveBounds.getQuick(0) : 0;
+        this.prevSeekPartition = -1;
+        this.prevSeekRow = -1;
+        return this;
+    }
+
+    @Override
+    public StorageFacade getStorageFacade() {
+        return storageFacade;
+    }
+
+    @Override
+    public boolean hasNext() {
+        if (row > rowHi) {
+            if (slice + 1 >= sliceCount) {
+                return false;
+            }
+
+            if (++slice >= batchHi) {
+                runBatch(slice);
+            }
+            masterRecord.partition = masterPartitions.getQuick(slice);
+            masterRecord.partitionIndex = masterRecord.partition.getPartitionIndex();
+            row = masterBounds.getQuick(slice * 2);
+            rowHi = masterBounds.getQuick(slice * 2 + 1);
+        }
+        return true;
+    }
+
+    @Override
+    public Record next() {
+        masterRecord.rowid = row++;
+        record.setA(masterRecord);
+
+        long rowid = results.getQuick(resultPos++);
+        if (rowid != -1 && partitioned) {
+            // partitioned join returns slave row once, subsequent master rows of the same key get null
+            int k = masterKeyIndex > -1 ? masterRecord.getInt(masterKeyIndex) + 1 : 0;
+            if (lastReturned.getQuick(k) == rowid) {
+                rowid = -1;
+            } else {
+                lastReturned.setQuick(k, rowid);
+            }
+        }
+        record.setB(rowid == -1 ? null : slaveCursor.recordAt(rowid));
+        return record;
+    }
+
+    @Override
+    public void toSink(CharSink sink) {
+        sink.put('{');
+        sink.putQuoted("op").put(':').putQuoted("ParallelAsOfJoinRecordSource").put(',');
+        sink.putQuoted("master").put(':').put(master).put(',');
+        sink.putQuoted("slave").put(':').put(slave).put(',');
+        sink.putQuoted("masterTsIndex").put(':').put(masterTimestampIndex).put(',');
+        sink.putQuoted("slaveTsIndex").put(':').put(slaveTimestampIndex).put(',');
+        sink.putQuoted("parallel").put(':').put(true);
+        sink.put('}');
+    }
+
+    private static boolean isEligible(RecordSource rs, int timestampIndex) {
+        return rs instanceof JournalRecordSource
+                && ((JournalRecordSource) rs).getRowSource().getClass() == AllRowSource.class
+                && timestampIndex > -1
+                && rs.getMetadata().getTimestampIndex() == timestampIndex;
+    }
+
+    private static Partition open(PartitionSlice slice) {
+        try {
+            return slice.partition.open();
+        } catch (JournalException e) {
+            throw new JournalRuntimeException(e);
+        }
+    }
+
+    private void prepareKeys(SymbolTable masterTab, SymbolTable slaveTab) {
+        int masterCount = masterTab.size() + 1;
+        int slaveCount = slaveTab.size() + 1;
+        masterKeys.setAll(masterCount, -1);
+        slaveKeys.setAll(slaveCount, -1);
+        keySymbols.clear();
+        lastReturned.seed(masterCount, -1);
+
+        // null symbol matches null symbol
+        for (int i = 0; i < masterCount; i++) {
+            int s = i == 0 ? 0 : slaveTab.getQuick(masterTab.value(i - 1)) + 1;
+            if (s > 0 && s < slaveCount || i == 0) {
+                masterKeys.setQuick(i, keySymbols.size());
+                slaveKeys.setQuick(s, keySymbols.size());
+                keySymbols.add(s - 1);
+            }
+        }
+
+        keyCount = keySymbols.size();
+        if (prevKeySeeds.length < keyCount) {
+            prevKeySeeds = new long[keyCount];
+        }
+        for (int i = 0, n = lanes.size(); i < n; i++) {
+            Lane lane = lanes.getQuick(i);
+            if (lane.keyLast.length < keyCount) {
+                lane.keyLast = new long[keyCount];
+            }
+        }
+    }
+
+    private void runBatch(int lo) {
+        int hi = Math.min(sliceCount, lo + lanes.size() * BATCH_SLICES_PER_LANE);
+        int n = hi - lo;
+
+        seeds.setPos(n * 4);
+        keySeeds.setPos(n * keyCount);
+        resultOffsets.clear();
+        int rows = 0;
+        for (int i = 0; i < n; i++) {
+            seed(lo + i, i);
+            resultOffsets.add(rows);
+            rows += (int) (masterBounds.getQuick((lo + i) * 2 + 1) - masterBounds.getQuick((lo + i) * 2) + 1);
+        }
+        results.setPos(rows);
+
+        nextSlice.set(lo);
+        this.batchLo = lo;
+        this.batchHi = hi;
+        tasks.clear();
+        for (int i = 0, k = Math.min(n, lanes.size()); i < k; i++) {
+            tasks.add(lanes.getQuick(i));
+        }
+        pool.run(tasks);
+        resultPos = 0;
+    }
+
+    private void seed(int slice, int batchIndex) {
+        long timestamp = masterPartitions.getQuick(slice).getLong(masterBounds.getQuick(slice * 2), masterTimestampIndex);
+
+        // move to first slave row not older than first master row of slice
+        int n = slavePartitions.size();
+        int j = seekPartition;
+        long r = seekRow;
+        while (j < n && slavePartitions.getQuick(j).getLong(slaveBounds.getQuick(j * 2 + 1), slaveTimestampIndex) < timestamp) {
+            if (++j < n) {
+                r = slaveBounds.getQuick(j * 2);
+            }
+        }
+
+        if (j < n) {
+            Partition p = slavePartitions.getQuick(j);
+            long h = slaveBounds.getQuick(j * 2 + 1);
+            while (r < h) {
+                long m = (r + h) >>> 1;
+                if (p.getLong(m, slaveTimestampIndex) < timestamp) {
+                    r = m + 1;
+                } else {
+                    h = m;
+                }
+            }
+        }
+        seekPartition = j;
+        seekRow = r;
+
+        // step back to last slave row older than master
+        if (j < n && r > slaveBounds.getQuick(j * 2)) {
+            r--;
+        } else if (j > 0) {
+            r = slaveBounds.getQuick(--j * 2 + 1);
+        } else {
+            j = -1;
+        }
+
+        int o = batchIndex * 4;
+        seeds.setQuick(o, seekPartition);
+        seeds.setQuick(o + 1, seekRow);
+        if (j > -1) {
+            seeds.setQuick(o + 2, slavePartitions.getQuick(j).getLong(r, slaveTimestampIndex));
+            seeds.setQuick(o + 3, Rows.toRowID(slavePartitions.getQuick(j).getPartitionIndex(), r));
+        } else {
+            seeds.setQuick(o + 2, Long.MIN_VALUE);
+            seeds.setQuick(o + 3, -1);
+        }
+
+        if (keyCount > 0) {
+            seedKeys(j, r, batchIndex * keyCount);
+        }
+        prevSeekPartition = seekPartition;
+        prevSeekRow = seekRow;
+    }
+
+    private void seedKeys(int j, long r, int offset) {
+        for (int i = 0; i < keyCount; i++) {
+            keySeeds.setQuick(offset + i, -1);
+        }
+
+        int remaining = keyCount;
+        long lookback = Math.min(sliceRows, Math.max(MIN_LOOKBACK, keyCount * 4));
+        boolean prevReached = false;
+
+        while (j > -1 && remaining > 0) {
+            if (prevSeekPartition > -1 && (j < prevSeekPartition || (j == prevSeekPartition && r < prevSeekRow))) {
+                prevReached = true;
+                break;
+            }
+
+            if (lookback-- == 0) {
+                break;
+            }
+
+            Partition p = slavePartitions.getQuick(j);
+            int k = slaveKeys.getQuiet(p.getInt(r, slaveKeyIndex) + 1);
+            if (k > -1 && keySeeds.getQuick(offset + k) == -1) {
+                keySeeds.setQuick(offset + k, Rows.toRowID(p.getPartitionIndex(), r));
+                remaining--;
+            }
+
+            if (r > slaveBounds.getQuick(j * 2)) {
+                r--;
+            } else if (--j > -1) {
+                r = slaveBounds.getQuick(j * 2 + 1);
+            }
+        }
+
+        if (remaining > 0 && j > -1) {
+            for (int i = 0; i < keyCount; i++) {
+                if (keySeeds.getQuick(offset + i) == -1) {
+                    keySeeds.setQuick(offset + i, prevReached ? prevKeySeeds[i] : lookup(keySymbols.getQuick(i), j, r));
+                }
+            }
+        }
+
+        for (int i = 0; i < keyCount; i++) {
+            prevKeySeeds[i] = keySeeds.getQuick(offset + i);
+        }
+    }
+
+    private long lookup(int key, int j, long r) {
+        try {
+            for (; j > -1; j--) {
+                Partition p = slavePartitions.getQuick(j);
+                long lo = slaveBounds.getQuick(j * 2);
+                long hi = Math.min(r, slaveBounds.getQuick(j * 2 + 1));
+                r = Long.MAX_VALUE;
+                KVIndex index = (KVIndex) p.getIndexForColumn(slaveKeyIndex);
+
+                // values of key are in ascending order, find last one not greater than hi
+                int l = 0;
+                int h = index.getValueCount(key) - 1;
+                long v = -1;
+                while (l <= h) {
+                    int m = (l + h) >>> 1;
+                    long x = index.getValueQuick(key, m);
+                    if (x > hi) {
+                        h = m - 1;
+                    } else {
+                        v = x;
+                        l = m + 1;
+                    }
+                }
+
+                if (v >= lo) {
+                    return Rows.toRowID(p.getPartitionIndex(), v);
+                }
+            }
+            return -1;
+        } catch (JournalException e) {
+            throw new JournalRuntimeException(e);
+        }
+    }
+
+    private class Lane implements Runnable {
+        private long[] keyLast = new long[0];
+
+        @Override
+        public void run() {
+            final int n = slavePartitions.size();
+            final boolean keyed = keyCount > 0;
+            int slice;
+            while ((slice = nextSlice.getAndIncrement()) < batchHi) {
+                final Partition partition = masterPartitions.getQuick(slice);
+                final int batchIndex = slice - batchLo;
+                final int seed = batchIndex * 4;
+                int j = (int) seeds.getQuick(seed);
+                long r = seeds.getQuick(seed + 1);
+                long lastTimestamp = seeds.getQuick(seed + 2);
+                long lastRowid = seeds.getQuick(seed + 3);
+                long prevTimestamp = masterPrevTimestamps.getQuick(slice);
+                Partition p = j < n ? slavePartitions.getQuick(j) : null;
+                long h = j < n ? slaveBounds.getQuick(j * 2 + 1) : -1;
+
+                if (keyed) {
+                    for (int i = 0, o = batchIndex * keyCount; i < keyCount; i++) {
+                        keyLast[i] = keySeeds.getQuick(o + i);
+                    }
+                }
+
+                int out = resultOffsets.getQuick(batchIndex);
+                for (long m = masterBounds.getQuick(slice * 2), mh = masterBounds.getQuick(slice * 2 + 1); m <= mh; m++) {
+                    long timestamp = partition.getLong(m, masterTimestampIndex);
+
+                    while (p != null) {
+                        long ts = p.getLong(r, slaveTimestampIndex);
+                        if (ts >= timestamp) {
+                            break;
+                        }
+
+                        lastTimestamp = ts;
+                        lastRowid = Rows.toRowID(p.getPartitionIndex(), r);
+                        if (keyed) {
+                            int k = slaveKeys.getQuiet(p.getInt(r, slaveKeyIndex) + 1);
+                            if (k > -1) {
+                                keyLast[k] = lastRowid;
+                            }
+                        }
+
+                        if (r < h) {
+                            r++;
+                        } else if (++j < n) {
+                            p = slavePartitions.getQuick(j);
+                            r = slaveBounds.getQuick(j * 2);
+                            h = slaveBounds.getQuick(j * 2 + 1);
+                        } else {
+                            p = null;
+                        }
+                    }
+
+                    // sequential join returns null when no slave rows were seen since previous master
+                    // row and there are slave rows left
+                    long rowid;
+                    if (p != null && (lastRowid == -1 || lastTimestamp < prevTimestamp)) {
+                        rowid = -1;
+                    } else if (keyed) {
+                        int k = masterKeys.getQuiet(partition.getInt(m, masterKeyIndex) + 1);
+                        rowid = k > -1 ? keyLast[k] : -1;
+                    } else {
+                        rowid = lastRowid;
+                    }
+                    results.setQuick(out++, rowid);
+                    prevTimestamp = timestamp;
+                }
+            }
+        }
+    }
+}
@@ -31,6 +31,7 @@ import com.questdb.ql.impl.RecordList;
 import com.questdb.ql.impl.map.DirectMap;
 import com.questdb.ql.impl.map.DirectMapValues;
 import com.questdb.std.IntList;
+import com.questdb.std.MemoryBudget;
 import com.questdb.std.Mutable;
 import com.questdb.store.ColumnType;
 
@@ -43,19 +44,31 @@ public class MultiRecordMap implements Closeable, Mutable {
     private final RecordList records;
 
     public MultiRecordMap(int keyCount, RecordMetadata valueMetadata, int keyPageSize, int valuePageSize) {
-        map = new DirectMap(keyPageSize, keyCount, valueCols);
-        records = new RecordList(valueMetadata, valuePageSize);
+        this(keyCount, valueMetadata, keyPageSize, valuePageSize, null);
     }
 
-    public void add(DirectMap.KeyWriter key, Record record) {
-        DirectMapValues values = map.getOrCreateValues(key);
-        if (values.isNew()) {
-            long offset = records.append(record, -1);
-            values.putLong(0, offset);
-            values.putLong(1, offset);
-        } else {
-            values.putLong(1, records.append(record, values.getLong(1)));
-        }
+    public MultiRecordMap(int keyCount, RecordMetadata valueMetadata, int keyPageSize, int valuePageSize, MemoryBudget budget) {
+        map = new DirectMap(keyPageSize, keyCount, valueCols, budget);
+        records = new RecordList(valueMetadata, valuePageSize, budget);
+    }
+
+    /**
+     * Adds record to list of records of key.
+     *
+     * @param key    key
+     * @param record record to add
+     * @return true when key was not in map before
+     */
+    public boolean add(DirectMap.KeyWriter key, Record record) {
+        return add(map.getOrCreateValues(key), record);
+    }
+
+    public boolean add(int key, Record record) {
+        return add(map.getOrCreateValues(key), record);
+    }
+
+    public boolean add(long key, Record record) {
+        return add(map.getOrCreateValues(key), record);
     }
 
     public DirectMap.KeyWriter claimKey() {
@@ -74,15 +87,37 @@ public class MultiRecordMap implements Closeable, Mutable {
     }
 
     public RecordCursor get(DirectMap.KeyWriter key) {
-        DirectMapValues values = map.getValues(key);
-        records.of(values == null ? -1 : values.getLong(0));
-        return records;
+        return get(map.getValues(key));
+    }
+
+    public RecordCursor get(int key) {
+        return get(map.getValues(key));
+    }
+
+    public RecordCursor get(long key) {
+        return get(map.getValues(key));
     }
 
     public void setStorageFacade(StorageFacade storageFacade) {
         records.setStorageFacade(storageFacade);
     }
 
+    private boolean add(DirectMapValues values, Record record) {
+        if (values.isNew()) {
+            long offset = records.append(record, -1);
+            values.putLong(0, offset);
+            values.putLong(1, offset);
+            return true;
+        }
+        values.putLong(1, records.append(record, values.getLong(1)));
+        return false;
+    }
+
+    private RecordCursor get(DirectMapValues values) {
+        records.of(values == null ? -1 : values.getLong(0));
+        return records;
+    }
+
     static {
         valueCols.add(ColumnType.LONG);
         valueCols.add(ColumnType.LONG);
@@ -36,8 +36,8 @@ import com.questdb.ql.ops.VirtualColumn;
 import com.questdb.std.CharSequenceHashSet;
 import com.questdb.std.IntList;
 import com.questdb.std.LongList;
+import com.questdb.store.ColumnIndex;
 import com.questdb.store.IndexCursor;
-import com.questdb.store.KVIndex;
 import com.questdb.store.VariableColumn;
 
 abstract class KvIndexStrLambdaHeadRowSource implements RowSource, RowCursor {
@@ -86,7 +86,7 @@ abstract class KvIndexStrLambdaHeadRowSource implements RowSource, RowCursor {
     public RowCursor prepareCursor(PartitionSlice slice) {
         try {
             Partition partition = rec.partition = slice.partition.open();
-            KVIndex index = partition.getIndexForColumn(columnIndex);
+            ColumnIndex index = partition.getIndexForColumn(columnIndex);
             VariableColumn col = partition.varCol(columnIndex);
 
             long lo = slice.lo - 1;
@@ -0,0 +1,240 @@
+/*******************************************************************************
+ *    ___                  _   ____  ____
+ *   / _ \ _   _  ___  ___| |_|  _ \| __ )
+ *  | | | | | | |/ _ \/ __| __| | | |  _ \
+ *  | |_| | |_| |  __/\__ \ |_| |_| | |_) |
+ *   \__\_\\__,_|\___||___/\__|____/|____/
+ *
+ * Copyright (C) 2014-2016 Appsicle
+ *
+ * This program is free software: you can redistribute it and/or  modify
+ * it under the terms of the GNU Affero General Public License, version 3,
+ * as published by the Free Software Foundation.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ *
+ ******************************************************************************/
+
+package com.questdb.ql.impl.latest;
+
+import com.questdb.ex.JournalException;
+import com.questdb.ex.JournalRuntimeException;
+import com.questdb.factory.JournalReaderFactory;
+import com.questdb.factory.configuration.JournalMetadata;
+import com.questdb.ql.*;
+import com.questdb.ql.model.BitmapFilter;
+import com.questdb.std.CharSink;
+import com.questdb.std.IntList;
+import com.questdb.std.ObjList;
+import com.questdb.store.BitmapIndex;
+import com.questdb.store.ColumnIndex;
+import com.questdb.store.SymbolTable;
+
+import java.util.Arrays;
+
+/**
+ * Returns rows, which satisfy conjunction of symbol predicates, in ascending order. Predicates are evaluated
+ * on bitmap indexes one chunk of 2^16 rows at a time: values of term are OR-ed, negated terms are inverted
+ * and terms are AND-ed together. Column data is not read.
+ */
+public class BitmapIndexRowSource implements RowSource, RowCursor {
+
+    private final BitmapFilter filter;
+    private final IntList columnIndexes = new IntList();
+    // symbol keys of each term, null and missing symbols are resolved to key or skipped at prepare time
+    private final ObjList<IntList> keys = new ObjList<>();
+    private final ObjList<ObjList<BitmapIndex.ChunkCursor>> cursors = new ObjList<>();
+    private final long[] words = new long[BitmapIndex.WORD_COUNT];
+    private final long[] termWords = new long[BitmapIndex.WORD_COUNT];
+    private long lo;
+    private long hi;
+    private int chunk;
+    private int hiChunk;
+    private int pos;
+    private boolean loaded;
+    private long rowid;
+
+    public BitmapIndexRowSource(BitmapFilter filter) {
+        this.filter = filter;
+        for (int i = 0, n = filter.size(); i < n; i++) {
+            keys.add(new IntList());
+            cursors.add(new ObjList<BitmapIndex.ChunkCursor>());
+        }
+    }
+
+    @Override
+    public void configure(JournalMetadata metadata) {
+        columnIndexes.clear();
+        for (int i = 0, n = filter.size(); i < n; i++) {
+            columnIndexes.add(metadata.getColumnIndex(filter.getQuick(i).column));
+        }
+    }
+
+    @Override
+    public void prepare(JournalReaderFactory factory, StorageFacade facade, CancellationHandler cancellationHandler) {
+        for (int i = 0, n = filter.size(); i < n; i++) {
+            BitmapFilter.Term t = filter.getQuick(i);
+            SymbolTable tab = facade.getSymbolTable(columnIndexes.getQuick(i));
+            IntList k = keys.getQuick(i);
+            ObjList<BitmapIndex.ChunkCursor> c = cursors.getQuick(i);
+            k.clear();
+            for (int j = 0, m = t.values.size(); j < m; j++) {
+                int key = tab.getQuick(t.values.getQuick(j));
+                if (key != SymbolTable.VALUE_NOT_FOUND) {
+                    k.add(key);
+                }
+            }
+            while (c.size() < k.size()) {
+                c.add(new BitmapIndex.ChunkCursor());
+            }
+        }
+    }
+
+    @Override
+    public RowCursor prepareCursor(PartitionSlice slice) {
+        try {
+            for (int i = 0, n = filter.size(); i < n; i++) {
+                ColumnIndex index = slice.partition.getIndexForColumn(columnIndexes.getQuick(i));
+                if (!(index instanceof BitmapIndex)) {
+                    throw new JournalRuntimeException("Column %s does not have bitmap index", filter.getQuick(i).column);
+                }
+
+                IntList k = keys.getQuick(i);
+                ObjList<BitmapIndex.ChunkCursor> c = cursors.getQuick(i);
+                for (int j = 0, m = k.size(); j < m; j++) {
+                    c.getQuick(j).of((BitmapIndex) index, k.getQuick(j));
+                }
+            }
+            this.lo = slice.lo;
+            this.hi = slice.calcHi ? slice.partition.open().size() - 1 : slice.hi;
+        } catch (JournalException e) {
+            throw new JournalRuntimeException(e);
+        }
+        this.chunk = (int) (lo >>> BitmapIndex.CHUNK_BITS);
+        this.hiChunk = (int) (hi >>> BitmapIndex.CHUNK_BITS);
+        this.loaded = false;
+        return this;
+    }
+
+    @Override
+    public void reset() {
+    }
+
+    @Override
+    public boolean hasNext() {
+        if (lo > hi) {
+            return false;
+        }
+
+        while (true) {
+            if (!loaded) {
+                if (chunk > hiChunk) {
+                    return false;
+                }
+                loaded = load();
+                pos = 0;
+                if (!loaded) {
+                    chunk++;
+                    continue;
+                }
+            }
+
+            int w = pos >>> 6;
+            if (w < BitmapIndex.WORD_COUNT) {
+                long bits = words[w] & (-1L << (pos & 63));
+                while (bits == 0 && ++w < BitmapIndex.WORD_COUNT) {
+                    bits = words[w];
+                }
+
+                if (bits != 0) {
+                    int low = (w << 6) + Long.numberOfTrailingZeros(bits);
+                    pos = low + 1;
+                    rowid = ((long) chunk << BitmapIndex.CHUNK_BITS) + low;
+                    return true;
+                }
+            }
+
+            loaded = false;
+            chunk++;
+        }
+    }
+
+    @Override
+    public long next() {
+        return rowid;
+    }
+
+    @Override
+    public void toSink(CharSink sink) {
+        sink.put('{');
+        sink.putQuoted("op").put(':').putQuoted("BitmapIndexRowSource").put(',');
+        sink.putQuoted("filter").put(':').putQuoted(filter.toString());
+        sink.put('}');
+    }
+
+    /**
+     * Evaluates filter for current chunk into words.
+     *
+     * @return false when no rows of chunk can match
+     */
+    private boolean load() {
+        boolean first = true;
+        for (int i = 0, n = filter.size(); i < n; i++) {
+            BitmapFilter.Term t = filter.getQuick(i);
+            long[] target = first && !t.negated ? words : termWords;
+            Arrays.fill(target, 0);
+
+            boolean any = false;
+            ObjList<BitmapIndex.ChunkCursor> c = cursors.getQuick(i);
+            for (int j = 0, m = keys.getQuick(i).size(); j < m; j++) {
+                any |= c.getQuick(j).or(chunk, target);
+            }
+
+            if (t.negated) {
+                if (first) {
+                    Arrays.fill(words, -1L);
+                }
+                if (any) {
+                    for (int k = 0; k < BitmapIndex.WORD_COUNT; k++) {
+                        words[k] &= ~termWords[k];
+                    }
+                }
+            } else if (!any) {
+                return false;
+            } else if (!first) {
+                for (int k = 0; k < BitmapIndex.WORD_COUNT; k++) {
+                    words[k] &= termWords[k];
+                }
+            }
+            first = false;
+        }
+
+        long base = (long) chunk << BitmapIndex.CHUNK_BITS;
+        if (lo > base) {
+            clearBelow((int) (lo - base));
+        }
+
+        if (hi < base + BitmapIndex.CHUNK_MASK) {
+            clearAbove((int) (hi - base));
+        }
+        return true;
+    }
+
+    private void clearAbove(int low) {
+        int w = low >>> 6;
+        words[w] &= -1L >>> (63 - (low & 63));
+        Arrays.fill(words, w + 1, BitmapIndex.WORD_COUNT, 0);
+    }
+
+    private void clearBelow(int low) {
+        int w = low >>> 6;
+        Arrays.fill(words, 0, w, 0);
+        words[w] &= -1L << (low & 63);
+    }
+}
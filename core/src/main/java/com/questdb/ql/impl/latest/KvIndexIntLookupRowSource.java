@@ -29,9 +29,9 @@ import com.questdb.factory.JournalReaderFactory;
 import com.questdb.factory.configuration.JournalMetadata;
 import com.questdb.ql.*;
 import com.questdb.std.CharSink;
+import com.questdb.store.ColumnIndex;
 import com.questdb.store.FixedColumn;
 import com.questdb.store.IndexCursor;
-import com.questdb.store.KVIndex;
 
 public class KvIndexIntLookupRowSource implements RowSource, RowCursor {
 
@@ -72,7 +72,7 @@ public class KvIndexIntLookupRowSource implements RowSource, RowCursor {
     public RowCursor prepareCursor(PartitionSlice slice) {
         try {
             column = slice.partition.fixCol(columnIndex);
-            KVIndex index = slice.partition.getIndexForColumn(columnIndex);
+            ColumnIndex index = slice.partition.getIndexForColumn(columnIndex);
             this.indexCursor = newCursor ? index.newFwdCursor(key) : index.fwdCursor(key);
             this.lo = slice.lo - 1;
             this.hi = slice.calcHi ? slice.partition.open().size() : slice.hi + 1;
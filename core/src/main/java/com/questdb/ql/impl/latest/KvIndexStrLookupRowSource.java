@@ -30,8 +30,8 @@ import com.questdb.factory.configuration.JournalMetadata;
 import com.questdb.misc.Hash;
 import com.questdb.ql.*;
 import com.questdb.std.CharSink;
+import com.questdb.store.ColumnIndex;
 import com.questdb.store.IndexCursor;
-import com.questdb.store.KVIndex;
 import com.questdb.store.VariableColumn;
 
 public class KvIndexStrLookupRowSource implements RowSource, RowCursor {
@@ -72,7 +72,7 @@ public class KvIndexStrLookupRowSource implements RowSource, RowCursor {
     public RowCursor prepareCursor(PartitionSlice slice) {
         try {
             this.column = slice.partition.varCol(columnIndex);
-            KVIndex index = slice.partition.getIndexForColumn(columnIndex);
+            ColumnIndex index = slice.partition.getIndexForColumn(columnIndex);
             this.indexCursor = newCursor ? index.newFwdCursor(hash) : index.fwdCursor(hash);
             this.lo = slice.lo - 1;
             this.hi = slice.calcHi ? slice.partition.open().size() : slice.hi + 1;
@@ -29,8 +29,8 @@ import com.questdb.factory.JournalReaderFactory;
 import com.questdb.factory.configuration.JournalMetadata;
 import com.questdb.ql.*;
 import com.questdb.std.CharSink;
+import com.questdb.store.ColumnIndex;
 import com.questdb.store.IndexCursor;
-import com.questdb.store.KVIndex;
 
 public class KvIndexSymLookupRowSource implements RowSource, RowCursor {
 
@@ -69,7 +69,7 @@ public class KvIndexSymLookupRowSource implements RowSource, RowCursor {
     @Override
     public RowCursor prepareCursor(PartitionSlice slice) {
         try {
-            KVIndex index = slice.partition.getIndexForColumn(columnIndex);
+            ColumnIndex index = slice.partition.getIndexForColumn(columnIndex);
             this.indexCursor = newCursor ? index.newFwdCursor(symbolKey) : index.fwdCursor(symbolKey);
             this.full = slice.lo == 0 && slice.calcHi;
             this.lo = slice.lo - 1;
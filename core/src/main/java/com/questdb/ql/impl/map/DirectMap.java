@@ -39,6 +39,7 @@ public class DirectMap extends DirectMemoryStructure implements Mutable, Iterabl
     private final DirectMapValues values;
     private final DirectMapIterator iterator;
     private final DirectMapEntry entry;
+    private final MemoryBudget budget;
     private int keyBlockOffset;
     private int keyDataOffset;
     private DirectLongList offsets;
@@ -51,19 +52,25 @@ public class DirectMap extends DirectMemoryStructure implements Mutable, Iterabl
     private int mask;
 
     public DirectMap(int pageSize, int keyCount, @Transient IntList valueColumnTypes) {
-        this(64, pageSize, 0.5f, keyCount, valueColumnTypes);
+        this(64, pageSize, 0.5f, keyCount, valueColumnTypes, null);
+    }
+
+    public DirectMap(int pageSize, int keyCount, @Transient IntList valueColumnTypes, MemoryBudget budget) {
+        this(64, pageSize, 0.5f, keyCount, valueColumnTypes, budget);
     }
 
     private DirectMap(int capacity,
                       int pageSize,
                       float loadFactor,
                       int keyCount,
-                      @Transient IntList valueColumnTypes) {
+                      @Transient IntList valueColumnTypes,
+                      MemoryBudget budget) {
         if (pageSize <= 0) {
             throw new IllegalArgumentException("pageSize must be > 0");
         }
         this.loadFactor = loadFactor;
-        this.address = Unsafe.malloc(this.capacity = (pageSize + Unsafe.CACHE_LINE_SIZE));
+        this.budget = budget;
+        this.address = MemoryBudget.malloc(budget, this.capacity = (pageSize + Unsafe.CACHE_LINE_SIZE));
         this.kStart = kPos = this.address + (this.address & (Unsafe.CACHE_LINE_SIZE - 1));
         this.kLimit = kStart + pageSize;
 
@@ -121,7 +128,10 @@ public class DirectMap extends DirectMemoryStructure implements Mutable, Iterabl
     @Override
     public void close() {
         offsets.close();
-        super.close();
+        if (address != 0) {
+            MemoryBudget.free(budget, address, capacity);
+            address = 0;
+        }
     }
 
     public DirectMapEntry entryAt(long rowid) {
@@ -151,6 +161,62 @@ public class DirectMap extends DirectMemoryStructure implements Mutable, Iterabl
         }
     }
 
+    /**
+     * Looks up key of entry, which belongs to another map of identical structure. When key
+     * is not found entry is copied over together with its values, otherwise returned values
+     * are those already present in this map and it is up to caller to combine them with entry values.
+     *
+     * @param entry entry of map with the same key and value structure
+     * @return values of this map
+     */
+    public DirectMapValues getOrCreateValues(DirectMapEntry entry) {
+        return getOrCreateValues(keyWriter.init().copy(entry.getRowId()));
+    }
+
+    /**
+     * Finds or creates values for key of map, which is keyed by single 4-byte column, i.e. int, symbol
+     * or float. Key is not serialised and compared byte by byte, but entry is laid out exactly as if
+     * key was written by {@link KeyWriter}, so both ways of access can be mixed.
+     *
+     * @param key int value or raw bits of float
+     * @return values of key
+     */
+    public DirectMapValues getOrCreateValues(int key) {
+        int index = Hash.hashInt(key) & mask;
+        long offset;
+        while ((offset = offsets.get(index)) != -1) {
+            if (eqInt(offset, key)) {
+                return values.of(kStart + offset, false);
+            }
+            index = (index + 1) & mask;
+        }
+
+        long address = claimFixedKey(4);
+        Unsafe.getUnsafe().putInt(address + keyDataOffset, key);
+        return commitFixedKey(index, address);
+    }
+
+    /**
+     * Long counterpart of {@link #getOrCreateValues(int)} for maps keyed by single long, date or double column.
+     *
+     * @param key long value or raw bits of double
+     * @return values of key
+     */
+    public DirectMapValues getOrCreateValues(long key) {
+        int index = Hash.hashLong(key) & mask;
+        long offset;
+        while ((offset = offsets.get(index)) != -1) {
+            if (eqLong(offset, key)) {
+                return values.of(kStart + offset, false);
+            }
+            index = (index + 1) & mask;
+        }
+
+        long address = claimFixedKey(8);
+        Unsafe.getUnsafe().putLong(address + keyDataOffset, key);
+        return commitFixedKey(index, address);
+    }
+
     public DirectMapValues getValues(KeyWriter keyWriter) {
         keyWriter.commit();
         // rollback key right away
@@ -167,6 +233,30 @@ public class DirectMap extends DirectMemoryStructure implements Mutable, Iterabl
         }
     }
 
+    public DirectMapValues getValues(int key) {
+        int index = Hash.hashInt(key) & mask;
+        long offset;
+        while ((offset = offsets.get(index)) != -1) {
+            if (eqInt(offset, key)) {
+                return values.of(kStart + offset, false);
+            }
+            index = (index + 1) & mask;
+        }
+        return null;
+    }
+
+    public DirectMapValues getValues(long key) {
+        int index = Hash.hashLong(key) & mask;
+        long offset;
+        while ((offset = offsets.get(index)) != -1) {
+            if (eqLong(offset, key)) {
+                return values.of(kStart + offset, false);
+            }
+            index = (index + 1) & mask;
+        }
+        return null;
+    }
+
     @Override
     public DirectMapIterator iterator() {
         return iterator.init(kStart, size);
@@ -180,6 +270,28 @@ public class DirectMap extends DirectMemoryStructure implements Mutable, Iterabl
         return size;
     }
 
+    private long claimFixedKey(int keyLen) {
+        int len = keyDataOffset + keyLen;
+        if (kPos + len > kLimit) {
+            resize();
+        }
+        long address = kPos;
+        Unsafe.getUnsafe().putInt(address, len);
+        // offset of key end, as written by KeyWriter
+        Unsafe.getUnsafe().putInt(address + keyBlockOffset, len);
+        kPos += len;
+        return address;
+    }
+
+    private DirectMapValues commitFixedKey(int index, long address) {
+        offsets.set(index, address - kStart);
+        size++;
+        if (--free == 0) {
+            rehash();
+        }
+        return values.of(address, true);
+    }
+
     private boolean eq(KeyWriter keyWriter, long offset) {
         long a = kStart + offset;
         long b = keyWriter.startAddr;
@@ -211,6 +323,16 @@ public class DirectMap extends DirectMemoryStructure implements Mutable, Iterabl
         return true;
     }
 
+    private boolean eqInt(long offset, int key) {
+        long a = kStart + offset;
+        return Unsafe.getUnsafe().getInt(a) == keyDataOffset + 4 && Unsafe.getUnsafe().getInt(a + keyDataOffset) == key;
+    }
+
+    private boolean eqLong(long offset, long key) {
+        long a = kStart + offset;
+        return Unsafe.getUnsafe().getInt(a) == keyDataOffset + 8 && Unsafe.getUnsafe().getLong(a + keyDataOffset) == key;
+    }
+
     private DirectMapValues probe0(KeyWriter keyWriter, int index) {
         long offset;
         while ((offset = offsets.get(index = (++index & mask))) != -1) {
@@ -265,19 +387,20 @@ public class DirectMap extends DirectMemoryStructure implements Mutable, Iterabl
 
     private void resize() {
         long kCapacity = (kLimit - kStart) << 1;
-        long kAddress = Unsafe.malloc(kCapacity + Unsafe.CACHE_LINE_SIZE);
+        long kAddress = MemoryBudget.malloc(budget, kCapacity + Unsafe.CACHE_LINE_SIZE);
         long kStart = kAddress + (kAddress & (Unsafe.CACHE_LINE_SIZE - 1));
 
         Unsafe.getUnsafe().copyMemory(this.kStart, kStart, kCapacity >> 1);
-        Unsafe.free(this.address, this.capacity);
+        MemoryBudget.free(budget, this.address, this.capacity);
 
         long d = kStart - this.kStart;
         keyWriter.startAddr += d;
         keyWriter.appendAddr += d;
         keyWriter.nextColOffset += d;
-
+        kPos += d;
 
         this.address = kAddress;
+        this.capacity = kCapacity + Unsafe.CACHE_LINE_SIZE;
         this.kStart = kStart;
         this.kLimit = kStart + kCapacity;
     }
@@ -294,6 +417,16 @@ public class DirectMap extends DirectMemoryStructure implements Mutable, Iterabl
             kPos = appendAddr;
         }
 
+        /**
+         * Hash of key written so far. It is the same hash map uses to place key, so that
+         * callers can test key against other structures before looking it up.
+         *
+         * @return hash of key
+         */
+        public int hash() {
+            return Hash.hashMem(startAddr + keyDataOffset, (int) (appendAddr - startAddr) - keyDataOffset);
+        }
+
         public KeyWriter init() {
             startAddr = kPos;
             appendAddr = startAddr + keyDataOffset;
@@ -387,6 +520,14 @@ public class DirectMap extends DirectMemoryStructure implements Mutable, Iterabl
             }
         }
 
+        private KeyWriter copy(long address) {
+            int len = Unsafe.getUnsafe().getInt(address);
+            checkSize(len - keyDataOffset);
+            Unsafe.getUnsafe().copyMemory(address, startAddr, len);
+            appendAddr = startAddr + len;
+            return this;
+        }
+
         private void putNull() {
             checkSize(4);
             Unsafe.getUnsafe().putInt(appendAddr, VariableColumn.NULL_LEN);
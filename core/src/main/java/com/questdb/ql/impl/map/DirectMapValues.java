@@ -62,6 +62,14 @@ public final class DirectMapValues {
         return _new;
     }
 
+    /**
+     * Flags values as initialised, which allows caller to hold on to them across records
+     * instead of looking up same key again.
+     */
+    public void markExisting() {
+        this._new = false;
+    }
+
     public void putByte(int index, byte value) {
         Unsafe.getUnsafe().putByte(address0(index), value);
     }
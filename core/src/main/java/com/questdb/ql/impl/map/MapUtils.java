@@ -45,6 +45,27 @@ public class MapUtils {
     private MapUtils() {
     }
 
+    /**
+     * Width of key, which {@link DirectMap} accepts as primitive when map is keyed by single column of given type.
+     *
+     * @param type column type
+     * @return 4 when key is passed as int, 8 when key is passed as long, 0 when key has to be written by KeyWriter
+     */
+    public static int fixedKeyWidth(int type) {
+        switch (type) {
+            case ColumnType.INT:
+            case ColumnType.SYMBOL:
+            case ColumnType.FLOAT:
+                return 4;
+            case ColumnType.LONG:
+            case ColumnType.DATE:
+            case ColumnType.DOUBLE:
+                return 8;
+            default:
+                return 0;
+        }
+    }
+
     public static DirectMapValues getMapValues(DirectMap map, Record rec, ObjList<VirtualColumn> partitionBy) {
         final DirectMap.KeyWriter kw = map.keyWriter();
         for (int i = 0, n = partitionBy.size(); i < n; i++) {
@@ -53,6 +74,37 @@ public class MapUtils {
         return map.getOrCreateValues(kw);
     }
 
+    /**
+     * Reads 4-byte key column as int in the same binary form KeyWriter would write it.
+     *
+     * @param r           record
+     * @param columnIndex column index
+     * @param columnType  column type, one of those {@link #fixedKeyWidth(int)} returns 4 for
+     * @return key
+     */
+    public static int intKey(Record r, int columnIndex, int columnType) {
+        return columnType == ColumnType.FLOAT ? Float.floatToRawIntBits(r.getFloat(columnIndex)) : r.getInt(columnIndex);
+    }
+
+    /**
+     * Reads 8-byte key column as long in the same binary form KeyWriter would write it.
+     *
+     * @param r           record
+     * @param columnIndex column index
+     * @param columnType  column type, one of those {@link #fixedKeyWidth(int)} returns 8 for
+     * @return key
+     */
+    public static long longKey(Record r, int columnIndex, int columnType) {
+        switch (columnType) {
+            case ColumnType.DOUBLE:
+                return Double.doubleToRawLongBits(r.getDouble(columnIndex));
+            case ColumnType.DATE:
+                return r.getDate(columnIndex);
+            default:
+                return r.getLong(columnIndex);
+        }
+    }
+
     public static void putRecord(DirectMap.KeyWriter w, Record r, int columnIndex, int columnType) {
         switch (columnType) {
             case ColumnType.BOOLEAN:
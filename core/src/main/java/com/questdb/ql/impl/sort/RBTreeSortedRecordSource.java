@@ -34,6 +34,7 @@ import com.questdb.ql.impl.map.MapUtils;
 import com.questdb.ql.ops.AbstractRecordSource;
 import com.questdb.std.AbstractImmutableIterator;
 import com.questdb.std.CharSink;
+import com.questdb.std.MemoryBudget;
 import com.questdb.std.MemoryPages;
 import com.questdb.std.Mutable;
 
@@ -62,11 +63,15 @@ public class RBTreeSortedRecordSource extends AbstractRecordSource implements Mu
     private Record sourceRecord;
 
     public RBTreeSortedRecordSource(RecordSource recordSource, RecordComparator comparator, int keyPageSize, int valuePageSize) {
+        this(recordSource, comparator, keyPageSize, valuePageSize, null);
+    }
+
+    public RBTreeSortedRecordSource(RecordSource recordSource, RecordComparator comparator, int keyPageSize, int valuePageSize, MemoryBudget budget) {
         this.recordSource = recordSource;
         this.comparator = comparator;
-        this.mem = new MemoryPages(keyPageSize);
+        this.mem = new MemoryPages(keyPageSize, budget);
         this.byRowId = recordSource.supportsRowIdAccess();
-        this.recordList = new RecordList(byRowId ? MapUtils.ROWID_RECORD_METADATA : recordSource.getMetadata(), valuePageSize);
+        this.recordList = new RecordList(byRowId ? MapUtils.ROWID_RECORD_METADATA : recordSource.getMetadata(), valuePageSize, budget);
     }
 
     @Override
@@ -0,0 +1,568 @@
+/*******************************************************************************
+ *    ___                  _   ____  ____
+ *   / _ \ _   _  ___  ___| |_|  _ \| __ )
+ *  | | | | | | |/ _ \/ __| __| | | |  _ \
+ *  | |_| | |_| |  __/\__ \ |_| |_| | |_) |
+ *   \__\_\\__,_|\___||___/\__|____/|____/
+ *
+ * Copyright (C) 2014-2016 Appsicle
+ *
+ * This program is free software: you can redistribute it and/or  modify
+ * it under the terms of the GNU Affero General Public License, version 3,
+ * as published by the Free Software Foundation.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ *
+ ******************************************************************************/
+
+
+package com.questdb.ql.impl.sort;
+
+import com.questdb.factory.JournalReaderFactory;
+import com.questdb.factory.configuration.RecordMetadata;
+import com.questdb.misc.Chars;
+import com.questdb.misc.Misc;
+import com.questdb.misc.Unsafe;
+import com.questdb.ql.*;
+import com.questdb.ql.impl.RecordList;
+import com.questdb.ql.ops.AbstractRecordSource;
+import com.questdb.std.*;
+import com.questdb.store.ColumnType;
+
+import java.io.Closeable;
+import java.util.Arrays;
+import java.util.Comparator;
+
+/**
+ * Sorts records by materialising contiguous array of entries, one per record. Entry holds
+ * sort keys followed by reference to record, which is either row id of source or address of
+ * record copy in record list. Keys are normalised to unsigned longs. Symbols are sorted by rank
+ * of their value among values encountered by sort. When all keys are fixed width, array is sorted
+ * by LSD radix sort.
+ * <p>
+ * String key is normalised to prefix, which holds string length and first two chars, following
+ * order of {@link Chars#compare(CharSequence, CharSequence)}. Sort on strings falls back to merge
+ * sort of entries, which compares prefixes and uses compiled comparator on records only when
+ * prefixes of string key are equal.
+ * <p>
+ * Both sorts are stable, records with equal keys keep order of source.
+ */
+public class RadixSortedRecordSource extends AbstractRecordSource implements Mutable, RecordSource, Closeable {
+    private static final Comparator<String> SYMBOL_COMPARATOR = new Comparator<String>() {
+        @Override
+        public int compare(String o1, String o2) {
+            return Chars.compare(o1, o2);
+        }
+    };
+    private final RecordSource recordSource;
+    private final RecordComparator comparator;
+    private final RecordList recordList;
+    private final MemoryBudget budget;
+    private final boolean byRowId;
+    private final IntList keyColumns;
+    private final IntList keyTypes;
+    private final LongList keyMasks;
+    private final ObjList<SymbolRanks> symbolRanks;
+    private final boolean radix;
+    // entry size in bytes and offset of record reference in entry
+    private final int stride;
+    private final int refOffset;
+    private final long[] counts;
+    private final long[] offsets;
+    private final SortedCursor cursor = new SortedCursor();
+    private long entries;
+    private long entriesCapacity;
+    private long tmp;
+    private long tmpCapacity;
+    private long size;
+    private RecordCursor sourceCursor;
+    private Record sourceRecord;
+    private Record mergeRecordA;
+    private Record mergeRecordB;
+    // entry loaded into left side of comparator
+    private long mergeLeft;
+
+    public RadixSortedRecordSource(RecordSource recordSource,
+                                   @Transient IntList orderIndices,
+                                   RecordComparator comparator,
+                                   int keyPageSize,
+                                   int valuePageSize,
+                                   MemoryBudget budget) {
+        this.recordSource = recordSource;
+        this.comparator = comparator;
+        this.budget = budget;
+        this.byRowId = recordSource.supportsRowIdAccess();
+        this.recordList = byRowId ? null : new RecordList(recordSource.getMetadata(), valuePageSize, budget);
+
+        int n = orderIndices.size();
+        this.keyColumns = new IntList(n);
+        this.keyTypes = new IntList(n);
+        this.keyMasks = new LongList(n);
+        this.symbolRanks = new ObjList<>(n);
+
+        RecordMetadata m = recordSource.getMetadata();
+        boolean radix = true;
+        for (int i = 0; i < n; i++) {
+            int index = orderIndices.getQuick(i);
+            int column = columnOf(index);
+            int type = m.getColumnQuick(column).getType();
+            long mask = widthMask(type);
+            if (mask == 0) {
+                // prefix of string is compared as unsigned long
+                radix = false;
+                mask = -1L;
+            }
+            keyColumns.add(column);
+            keyTypes.add(type);
+            // descending keys are flipped within their width
+            keyMasks.add(index > 0 ? 0 : mask);
+            symbolRanks.add(type == ColumnType.SYMBOL ? new SymbolRanks() : null);
+        }
+
+        this.radix = radix;
+        this.refOffset = n * 8;
+        this.stride = refOffset + 8;
+        this.counts = radix ? new long[8 * 256] : null;
+        this.offsets = radix ? new long[256] : null;
+        this.entriesCapacity = Math.max(keyPageSize / stride, 1) * stride;
+        this.entries = MemoryBudget.malloc(budget, entriesCapacity);
+    }
+
+    @Override
+    public void clear() {
+        size = 0;
+        if (recordList != null) {
+            recordList.clear();
+        }
+        for (int i = 0, n = symbolRanks.size(); i < n; i++) {
+            SymbolRanks ranks = symbolRanks.getQuick(i);
+            if (ranks != null) {
+                ranks.clear();
+            }
+        }
+    }
+
+    @Override
+    public void close() {
+        Misc.free(recordSource);
+        Misc.free(recordList);
+        if (entries != 0) {
+            MemoryBudget.free(budget, entries, entriesCapacity);
+            entries = 0;
+        }
+        if (tmp != 0) {
+            MemoryBudget.free(budget, tmp, tmpCapacity);
+            tmp = 0;
+        }
+    }
+
+    @Override
+    public RecordMetadata getMetadata() {
+        return recordSource.getMetadata();
+    }
+
+    @Override
+    public RecordCursor prepareCursor(JournalReaderFactory factory, CancellationHandler cancellationHandler) {
+        clear();
+        setSourceCursor(recordSource.prepareCursor(factory, cancellationHandler));
+        buildEntries(cancellationHandler);
+        if (size > 1) {
+            ensureTmp();
+            rankSymbols();
+            if (radix) {
+                radixSort(cancellationHandler);
+            } else {
+                mergeSort(cancellationHandler);
+            }
+        }
+        cursor.index = 0;
+        return cursor;
+    }
+
+    @Override
+    public boolean supportsRowIdAccess() {
+        return true;
+    }
+
+    @Override
+    public void toSink(CharSink sink) {
+        sink.put('{');
+        sink.putQuoted("op").put(':').putQuoted("RadixSortedRecordSource").put(',');
+        sink.putQuoted("byRowId").put(':').put(byRowId).put(',');
+        sink.putQuoted("src").put(':').put(recordSource);
+        sink.put('}');
+    }
+
+    private static int columnOf(int index) {
+        // sign of shifted column index is sort direction
+        return (index > 0 ? index : -index) - 1;
+    }
+
+    private static long doubleKey(double value) {
+        // follows Numbers.compare(): NaN sorts below everything and -0.0 sorts above 0.0
+        if (value != value) {
+            return 0;
+        }
+        long bits = Double.doubleToLongBits(value == 0 ? (Double.doubleToLongBits(value) == 0 ? -0.0 : 0.0) : value);
+        return bits < 0 ? ~bits : bits ^ Long.MIN_VALUE;
+    }
+
+    private static long floatKey(float value) {
+        if (value != value) {
+            return 0;
+        }
+        int bits = Float.floatToIntBits(value == 0 ? (Float.floatToIntBits(value) == 0 ? -0.0f : 0.0f) : value);
+        return (bits < 0 ? ~bits : bits ^ Integer.MIN_VALUE) & 0xffffffffL;
+    }
+
+    private static long stringKey(CharSequence value) {
+        // null sorts first, then strings by length and chars
+        if (value == null) {
+            return 0;
+        }
+        int len = value.length();
+        long key = (long) (len + 1) << 32;
+        if (len > 0) {
+            key |= (long) value.charAt(0) << 16;
+        }
+        if (len > 1) {
+            key |= value.charAt(1);
+        }
+        return key;
+    }
+
+    private static long widthMask(int type) {
+        switch (type) {
+            case ColumnType.BOOLEAN:
+                return 1L;
+            case ColumnType.BYTE:
+                return 0xffL;
+            case ColumnType.SHORT:
+                return 0xffffL;
+            case ColumnType.INT:
+            case ColumnType.FLOAT:
+            case ColumnType.SYMBOL:
+                return 0xffffffffL;
+            case ColumnType.LONG:
+            case ColumnType.DATE:
+            case ColumnType.DOUBLE:
+                return -1L;
+            default:
+                return 0;
+        }
+    }
+
+    private void buildEntries(CancellationHandler cancellationHandler) {
+        while (sourceCursor.hasNext()) {
+            cancellationHandler.check();
+            Record r = sourceCursor.next();
+            if ((size + 1) * stride > entriesCapacity) {
+                growEntries();
+            }
+
+            long e = entries + size * stride;
+            for (int i = 0, n = keyColumns.size(); i < n; i++) {
+                Unsafe.getUnsafe().putLong(e + (i << 3), key(r, i));
+            }
+            Unsafe.getUnsafe().putLong(e + refOffset, byRowId ? r.getRowId() : recordList.append(r, -1L));
+            size++;
+        }
+    }
+
+    private int compareEntries(long a, long b) {
+        for (int k = 0, n = keyColumns.size(); k < n; k++) {
+            long ka = Unsafe.getUnsafe().getLong(a + (k << 3)) ^ Long.MIN_VALUE;
+            long kb = Unsafe.getUnsafe().getLong(b + (k << 3)) ^ Long.MIN_VALUE;
+            if (ka != kb) {
+                return ka < kb ? -1 : 1;
+            }
+
+            if (keyTypes.getQuick(k) == ColumnType.STRING) {
+                // prefixes are equal, records decide on this and remaining keys
+                if (a != mergeLeft) {
+                    recordAt(mergeRecordA, Unsafe.getUnsafe().getLong(a + refOffset));
+                    comparator.setLeft(mergeRecordA);
+                    mergeLeft = a;
+                }
+                recordAt(mergeRecordB, Unsafe.getUnsafe().getLong(b + refOffset));
+                return comparator.compare(mergeRecordB);
+            }
+        }
+        return 0;
+    }
+
+    private void ensureTmp() {
+        long required = size * stride;
+        if (required > tmpCapacity) {
+            if (tmp != 0) {
+                MemoryBudget.free(budget, tmp, tmpCapacity);
+            }
+            tmp = MemoryBudget.malloc(budget, tmpCapacity = entriesCapacity);
+        }
+    }
+
+    private void growEntries() {
+        long capacity = entriesCapacity << 1;
+        long address = MemoryBudget.malloc(budget, capacity);
+        Unsafe.getUnsafe().copyMemory(entries, address, size * stride);
+        MemoryBudget.free(budget, entries, entriesCapacity);
+        entries = address;
+        entriesCapacity = capacity;
+    }
+
+    private long key(Record r, int i) {
+        int column = keyColumns.getQuick(i);
+        long key;
+        switch (keyTypes.getQuick(i)) {
+            case ColumnType.BOOLEAN:
+                key = r.getBool(column) ? 1 : 0;
+                break;
+            case ColumnType.BYTE:
+                key = r.get(column) - Byte.MIN_VALUE;
+                break;
+            case ColumnType.SHORT:
+                key = r.getShort(column) - Short.MIN_VALUE;
+                break;
+            case ColumnType.INT:
+                key = (r.getInt(column) ^ Integer.MIN_VALUE) & 0xffffffffL;
+                break;
+            case ColumnType.FLOAT:
+                key = floatKey(r.getFloat(column));
+                break;
+            case ColumnType.DOUBLE:
+                key = doubleKey(r.getDouble(column));
+                break;
+            case ColumnType.SYMBOL:
+                // ranked and flipped after all values are known
+                return symbolRanks.getQuick(i).of(r, column);
+            case ColumnType.STRING:
+                key = stringKey(r.getFlyweightStr(column));
+                break;
+            default:
+                key = r.getLong(column) ^ Long.MIN_VALUE;
+                break;
+        }
+        return key ^ keyMasks.getQuick(i);
+    }
+
+    private void merge(long lo, long mid, long hi) {
+        long i = lo;
+        long j = mid;
+        long d = tmp + lo * stride;
+        mergeLeft = 0;
+
+        while (i < mid && j < hi) {
+            long a = entries + i * stride;
+            long b = entries + j * stride;
+            // left wins ties to keep sort stable
+            if (compareEntries(a, b) <= 0) {
+                Unsafe.getUnsafe().copyMemory(a, d, stride);
+                i++;
+            } else {
+                Unsafe.getUnsafe().copyMemory(b, d, stride);
+                j++;
+            }
+            d += stride;
+        }
+
+        if (i < mid) {
+            Unsafe.getUnsafe().copyMemory(entries + i * stride, d, (mid - i) * stride);
+        } else if (j < hi) {
+            Unsafe.getUnsafe().copyMemory(entries + j * stride, d, (hi - j) * stride);
+        }
+    }
+
+    private void mergeSort(CancellationHandler cancellationHandler) {
+        for (long width = 1; width < size; width <<= 1) {
+            cancellationHandler.check();
+            for (long lo = 0; lo < size; lo += width << 1) {
+                long mid = Math.min(lo + width, size);
+                long hi = Math.min(mid + width, size);
+                merge(lo, mid, hi);
+            }
+            swap();
+        }
+    }
+
+    private void radixSort(CancellationHandler cancellationHandler) {
+        final int longs = stride >> 3;
+
+        // least significant key first, passes are stable, so order of more significant keys wins
+        for (int k = keyColumns.size() - 1; k > -1; k--) {
+            cancellationHandler.check();
+
+            final int keyOffset = k << 3;
+            Arrays.fill(counts, 0);
+            for (long p = entries + keyOffset, lim = entries + size * stride; p < lim; p += stride) {
+                long key = Unsafe.getUnsafe().getLong(p);
+                for (int b = 0; b < 8; b++) {
+                    counts[(b << 8) + (int) ((key >>> (b << 3)) & 0xff)]++;
+                }
+            }
+
+            final long firstKey = Unsafe.getUnsafe().getLong(entries + keyOffset);
+            for (int b = 0; b < 8; b++) {
+                final int base = b << 8;
+                final int shift = b << 3;
+
+                // byte is the same in all entries, pass would not change order
+                if (counts[base + (int) ((firstKey >>> shift) & 0xff)] == size) {
+                    continue;
+                }
+
+                long pos = 0;
+                for (int i = 0; i < 256; i++) {
+                    offsets[i] = pos;
+                    pos += counts[base + i];
+                }
+
+                for (long p = entries, lim = entries + size * stride; p < lim; p += stride) {
+                    int bucket = (int) ((Unsafe.getUnsafe().getLong(p + keyOffset) >>> shift) & 0xff);
+                    long d = tmp + (offsets[bucket]++) * stride;
+                    for (int i = 0; i < longs; i++) {
+                        Unsafe.getUnsafe().putLong(d + (i << 3), Unsafe.getUnsafe().getLong(p + (i << 3)));
+                    }
+                }
+                swap();
+            }
+        }
+    }
+
+    private void rankSymbols() {
+        for (int k = 0, n = symbolRanks.size(); k < n; k++) {
+            SymbolRanks ranks = symbolRanks.getQuick(k);
+            if (ranks == null) {
+                continue;
+            }
+
+            ranks.rank();
+            final long mask = keyMasks.getQuick(k);
+            for (long p = entries + (k << 3), lim = entries + size * stride; p < lim; p += stride) {
+                Unsafe.getUnsafe().putLong(p, ranks.rankOf((int) Unsafe.getUnsafe().getLong(p)) ^ mask);
+            }
+        }
+    }
+
+    private void recordAt(Record record, long ref) {
+        if (byRowId) {
+            sourceCursor.recordAt(record, ref);
+        } else {
+            recordList.recordAt(record, ref);
+        }
+    }
+
+    private void setSourceCursor(RecordCursor sourceCursor) {
+        this.sourceCursor = sourceCursor;
+        this.sourceRecord = sourceCursor.newRecord();
+        if (recordList != null) {
+            recordList.setStorageFacade(sourceCursor.getStorageFacade());
+        }
+        if (!radix) {
+            this.mergeRecordA = byRowId ? sourceCursor.newRecord() : recordList.newRecord();
+            this.mergeRecordB = byRowId ? sourceCursor.newRecord() : recordList.newRecord();
+        }
+    }
+
+    private void swap() {
+        long t = entries;
+        entries = tmp;
+        tmp = t;
+
+        t = entriesCapacity;
+        entriesCapacity = tmpCapacity;
+        tmpCapacity = t;
+    }
+
+    private static class SymbolRanks implements Mutable {
+        // indexed by symbol key + 1, null symbol has index 0
+        private final ObjList<String> values = new ObjList<>();
+        private final IntList ranks = new IntList();
+        private final CharSequenceIntHashMap indices = new CharSequenceIntHashMap();
+        private String[] sorted = new String[16];
+        private int count;
+
+        @Override
+        public void clear() {
+            values.clear();
+            indices.clear();
+            count = 0;
+        }
+
+        private int of(Record r, int column) {
+            int index = r.getInt(column) + 1;
+            if (index < 0) {
+                index = 0;
+            }
+
+            if (index > 0 && (index >= values.size() || values.getQuick(index) == null)) {
+                String value = r.getSym(column);
+                values.extendAndSet(index, value);
+                indices.put(value, index);
+                if (count == sorted.length) {
+                    sorted = Arrays.copyOf(sorted, count << 1);
+                }
+                sorted[count++] = value;
+            }
+            return index;
+        }
+
+        private void rank() {
+            Arrays.sort(sorted, 0, count, SYMBOL_COMPARATOR);
+            ranks.ensureCapacity(values.size() + 1);
+            ranks.zero(0);
+            // null symbol keeps rank 0, it sorts before all values
+            for (int i = 0; i < count; i++) {
+                ranks.setQuick(indices.get(sorted[i]), i + 1);
+            }
+        }
+
+        private long rankOf(int index) {
+            return ranks.getQuick(index);
+        }
+    }
+
+    private class SortedCursor extends AbstractImmutableIterator<Record> implements RecordCursor {
+        private long index;
+
+        @Override
+        public StorageFacade getStorageFacade() {
+            return byRowId ? sourceCursor.getStorageFacade() : recordList.getStorageFacade();
+        }
+
+        @Override
+        public Record newRecord() {
+            return byRowId ? sourceCursor.newRecord() : recordList.newRecord();
+        }
+
+        @Override
+        public Record recordAt(long rowId) {
+            return byRowId ? sourceCursor.recordAt(rowId) : recordList.recordAt(rowId);
+        }
+
+        @Override
+        public void recordAt(Record record, long atRowId) {
+            RadixSortedRecordSource.this.recordAt(record, atRowId);
+        }
+
+        @Override
+        public boolean hasNext() {
+            return index < size;
+        }
+
+        @Override
+        public Record next() {
+            long ref = Unsafe.getUnsafe().getLong(entries + (index++) * stride + refOffset);
+            if (byRowId) {
+                sourceCursor.recordAt(sourceRecord, ref);
+                return sourceRecord;
+            }
+            return recordList.recordAt(ref);
+        }
+    }
+}
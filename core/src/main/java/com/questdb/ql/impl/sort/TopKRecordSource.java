@@ -0,0 +1,290 @@
+/*******************************************************************************
+ *    ___                  _   ____  ____
+ *   / _ \ _   _  ___  ___| |_|  _ \| __ )
+ *  | | | | | | |/ _ \/ __| __| | | |  _ \
+ *  | |_| | |_| |  __/\__ \ |_| |_| | |_) |
+ *   \__\_\\__,_|\___||___/\__|____/|____/
+ *
+ * Copyright (C) 2014-2016 Appsicle
+ *
+ * This program is free software: you can redistribute it and/or  modify
+ * it under the terms of the GNU Affero General Public License, version 3,
+ * as published by the Free Software Foundation.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ *
+ ******************************************************************************/
+
+
+package com.questdb.ql.impl.sort;
+
+import com.questdb.factory.JournalReaderFactory;
+import com.questdb.factory.configuration.RecordMetadata;
+import com.questdb.misc.Misc;
+import com.questdb.ql.*;
+import com.questdb.ql.impl.RecordList;
+import com.questdb.ql.ops.AbstractRecordSource;
+import com.questdb.ql.ops.VirtualColumn;
+import com.questdb.std.*;
+
+import java.io.Closeable;
+
+/**
+ * Keeps first K records of sort order in bounded max-heap, where K is upper bound of limit clause.
+ * Heap top is the worst of retained records, so record from source is compared to top only and
+ * is discarded unless it sorts before it. Ties are broken by order of records in source, which
+ * makes output identical to stable sort followed by limit.
+ * <p>
+ * Records of sources without row id access are copied into record list. Records evicted from heap
+ * leave garbage in list, so surviving records are copied into spare list whenever list holds
+ * more than twice the limit.
+ */
+public class TopKRecordSource extends AbstractRecordSource implements Mutable, RecordSource, Closeable {
+    private final RecordSource recordSource;
+    private final RecordComparator comparator;
+    private final VirtualColumn limit;
+    private final boolean byRowId;
+    private final LongList refs = new LongList();
+    private final LongList seqs = new LongList();
+    private final TopKCursor cursor = new TopKCursor();
+    private RecordList recordList;
+    private RecordList spareList;
+    private RecordCursor sourceCursor;
+    private Record sourceRecord;
+    private Record recordA;
+    private Record recordB;
+    private long listSize;
+
+    public TopKRecordSource(RecordSource recordSource, RecordComparator comparator, VirtualColumn limit, int valuePageSize, MemoryBudget budget) {
+        this.recordSource = recordSource;
+        this.comparator = comparator;
+        this.limit = limit;
+        this.byRowId = recordSource.supportsRowIdAccess();
+        if (!byRowId) {
+            this.recordList = new RecordList(recordSource.getMetadata(), valuePageSize, budget);
+            this.spareList = new RecordList(recordSource.getMetadata(), valuePageSize, budget);
+        }
+    }
+
+    @Override
+    public void clear() {
+        refs.clear();
+        seqs.clear();
+        listSize = 0;
+        if (recordList != null) {
+            recordList.clear();
+            spareList.clear();
+        }
+    }
+
+    @Override
+    public void close() {
+        Misc.free(recordSource);
+        Misc.free(recordList);
+        Misc.free(spareList);
+    }
+
+    @Override
+    public RecordMetadata getMetadata() {
+        return recordSource.getMetadata();
+    }
+
+    @Override
+    public RecordCursor prepareCursor(JournalReaderFactory factory, CancellationHandler cancellationHandler) {
+        clear();
+        setSourceCursor(recordSource.prepareCursor(factory, cancellationHandler));
+        long k = limit.getLong(null);
+        if (k > 0) {
+            buildHeap(k, cancellationHandler);
+            sortHeap();
+        }
+        cursor.index = 0;
+        return cursor;
+    }
+
+    @Override
+    public boolean supportsRowIdAccess() {
+        return true;
+    }
+
+    @Override
+    public void toSink(CharSink sink) {
+        sink.put('{');
+        sink.putQuoted("op").put(':').putQuoted("TopKRecordSource").put(',');
+        sink.putQuoted("limit").put(':').put(limit.getLong(null)).put(',');
+        sink.putQuoted("byRowId").put(':').put(byRowId).put(',');
+        sink.putQuoted("src").put(':').put(recordSource);
+        sink.put('}');
+    }
+
+    private long append(Record record) {
+        listSize++;
+        return recordList.append(record, -1L);
+    }
+
+    private void buildHeap(long k, CancellationHandler cancellationHandler) {
+        long seq = 0;
+        while (sourceCursor.hasNext()) {
+            cancellationHandler.check();
+            Record r = sourceCursor.next();
+            // random access may reuse state of current record, row id has to be taken first
+            long rowId = byRowId ? r.getRowId() : -1;
+
+            if (refs.size() < k) {
+                refs.add(byRowId ? rowId : append(r));
+                seqs.add(seq++);
+                siftUp(refs.size() - 1);
+                continue;
+            }
+
+            // later record loses tie against top, it would come after top in stable sort
+            comparator.setLeft(r);
+            recordAt(recordB, refs.getQuick(0));
+            if (comparator.compare(recordB) < 0) {
+                refs.setQuick(0, byRowId ? rowId : append(r));
+                seqs.setQuick(0, seq);
+                siftDown(0, refs.size());
+                if (!byRowId && listSize > k << 1) {
+                    compact();
+                }
+            }
+            seq++;
+        }
+    }
+
+    private int compare(int i, int j) {
+        recordAt(recordA, refs.getQuick(i));
+        comparator.setLeft(recordA);
+        recordAt(recordB, refs.getQuick(j));
+        int c = comparator.compare(recordB);
+        return c != 0 ? c : Long.compare(seqs.getQuick(i), seqs.getQuick(j));
+    }
+
+    private void compact() {
+        spareList.clear();
+        for (int i = 0, n = refs.size(); i < n; i++) {
+            refs.setQuick(i, spareList.append(recordList.recordAt(refs.getQuick(i)), -1L));
+        }
+        RecordList t = recordList;
+        recordList = spareList;
+        spareList = t;
+        listSize = refs.size();
+        setRecords();
+    }
+
+    private void recordAt(Record record, long ref) {
+        if (byRowId) {
+            sourceCursor.recordAt(record, ref);
+        } else {
+            recordList.recordAt(record, ref);
+        }
+    }
+
+    private void setRecords() {
+        this.recordA = byRowId ? sourceCursor.newRecord() : recordList.newRecord();
+        this.recordB = byRowId ? sourceCursor.newRecord() : recordList.newRecord();
+    }
+
+    private void setSourceCursor(RecordCursor sourceCursor) {
+        this.sourceCursor = sourceCursor;
+        this.sourceRecord = sourceCursor.newRecord();
+        if (recordList != null) {
+            recordList.setStorageFacade(sourceCursor.getStorageFacade());
+            spareList.setStorageFacade(sourceCursor.getStorageFacade());
+        }
+        setRecords();
+    }
+
+    private void siftDown(int i, int size) {
+        while (true) {
+            int child = (i << 1) + 1;
+            if (child >= size) {
+                break;
+            }
+
+            if (child + 1 < size && compare(child + 1, child) > 0) {
+                child++;
+            }
+
+            if (compare(child, i) <= 0) {
+                break;
+            }
+            swap(i, child);
+            i = child;
+        }
+    }
+
+    private void siftUp(int i) {
+        while (i > 0) {
+            int parent = (i - 1) >> 1;
+            if (compare(i, parent) <= 0) {
+                break;
+            }
+            swap(i, parent);
+            i = parent;
+        }
+    }
+
+    private void sortHeap() {
+        // max-heap is taken apart from the back, which leaves records in ascending order
+        for (int n = refs.size() - 1; n > 0; n--) {
+            swap(0, n);
+            siftDown(0, n);
+        }
+    }
+
+    private void swap(int i, int j) {
+        long t = refs.getQuick(i);
+        refs.setQuick(i, refs.getQuick(j));
+        refs.setQuick(j, t);
+
+        t = seqs.getQuick(i);
+        seqs.setQuick(i, seqs.getQuick(j));
+        seqs.setQuick(j, t);
+    }
+
+    private class TopKCursor extends AbstractImmutableIterator<Record> implements RecordCursor {
+        private int index;
+
+        @Override
+        public StorageFacade getStorageFacade() {
+            return byRowId ? sourceCursor.getStorageFacade() : recordList.getStorageFacade();
+        }
+
+        @Override
+        public Record newRecord() {
+            return byRowId ? sourceCursor.newRecord() : recordList.newRecord();
+        }
+
+        @Override
+        public Record recordAt(long rowId) {
+            return byRowId ? sourceCursor.recordAt(rowId) : recordList.recordAt(rowId);
+        }
+
+        @Override
+        public void recordAt(Record record, long atRowId) {
+            TopKRecordSource.this.recordAt(record, atRowId);
+        }
+
+        @Override
+        public boolean hasNext() {
+            return index < refs.size();
+        }
+
+        @Override
+        public Record next() {
+            long ref = refs.getQuick(index++);
+            if (byRowId) {
+                sourceCursor.recordAt(sourceRecord, ref);
+                return sourceRecord;
+            }
+            return recordList.recordAt(ref);
+        }
+    }
+}
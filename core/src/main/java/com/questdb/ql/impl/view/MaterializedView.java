@@ -0,0 +1,580 @@
+/*******************************************************************************
+ *    ___                  _   ____  ____
+ *   / _ \ _   _  ___  ___| |_|  _ \| __ )
+ *  | | | | | | |/ _ \/ __| __| | | |  _ \
+ *  | |_| | |_| |  __/\__ \ |_| |_| | |_) |
+ *   \__\_\\__,_|\___||___/\__|____/|____/
+ *
+ * Copyright (C) 2014-2016 Appsicle
+ *
+ * This program is free software: you can redistribute it and/or  modify
+ * it under the terms of the GNU Affero General Public License, version 3,
+ * as published by the Free Software Foundation.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ *
+ ******************************************************************************/
+
+
+package com.questdb.ql.impl.view;
+
+import com.questdb.Journal;
+import com.questdb.JournalEntryWriter;
+import com.questdb.JournalWriter;
+import com.questdb.Partition;
+import com.questdb.ex.JournalException;
+import com.questdb.ex.JournalRuntimeException;
+import com.questdb.ex.ParserException;
+import com.questdb.factory.JournalFactory;
+import com.questdb.factory.JournalReaderFactory;
+import com.questdb.factory.configuration.ColumnMetadata;
+import com.questdb.factory.configuration.JournalConfiguration;
+import com.questdb.factory.configuration.JournalStructure;
+import com.questdb.factory.configuration.RecordColumnMetadata;
+import com.questdb.factory.configuration.RecordMetadata;
+import com.questdb.io.sink.StringSink;
+import com.questdb.log.Log;
+import com.questdb.log.LogFactory;
+import com.questdb.misc.Dates;
+import com.questdb.misc.Interval;
+import com.questdb.misc.Misc;
+import com.questdb.misc.NamedDaemonThreadFactory;
+import com.questdb.misc.Rows;
+import com.questdb.ql.*;
+import com.questdb.ql.impl.aggregation.SamplerFactory;
+import com.questdb.ql.impl.aggregation.TimestampSampler;
+import com.questdb.ql.model.ParsedModel;
+import com.questdb.ql.model.QueryModel;
+import com.questdb.ql.ops.AbstractCombinedRecordSource;
+import com.questdb.ql.parser.CopyHelper;
+import com.questdb.ql.parser.CopyHelperCompiler;
+import com.questdb.ql.parser.QueryCompiler;
+import com.questdb.ql.parser.QueryError;
+import com.questdb.std.CharSink;
+import com.questdb.std.LongList;
+import com.questdb.std.ObjList;
+import com.questdb.store.BSearchType;
+import com.questdb.store.ColumnType;
+import com.questdb.store.Tx;
+import com.questdb.store.TxIterator;
+import com.questdb.store.TxListener;
+
+import java.util.concurrent.*;
+
+/**
+ * Materialised "sample by" query over single journal. Completed samples are stored in view journal
+ * and maintained incrementally on every commit of source journal: only rows from last materialised
+ * sample onwards are aggregated. Sample that is still open is never stored, instead it is aggregated
+ * from live tail of source journal when view is read, so that view results always match results of
+ * original query.
+ * <p>
+ * View is attached to source journal writer via {@link JournalWriter#setTxListener(TxListener)}. Commits
+ * of source journal queue refresh on background thread, so that writer neither waits for view nor fails
+ * when view cannot be refreshed; such failure is logged and refresh is retried on next commit. Late rows,
+ * which source writer merges into partitions below last materialised sample, are detected by change of
+ * row count of these partitions. Samples from first such partition onwards are then rolled back in view
+ * journal and aggregated again.
+ * <p>
+ * Reads may overlap with refresh, but like QueryCompiler view is not safe to read from multiple threads.
+ */
+public class MaterializedView extends AbstractCombinedRecordSource implements TxListener {
+    private static final Log LOG = LogFactory.getLog(MaterializedView.class);
+    private final JournalFactory factory;
+    private final QueryCompiler compiler;
+    // refresh thread must not share compiler with reader
+    private final QueryCompiler refreshCompiler = new QueryCompiler();
+    private final String name;
+    private final String query;
+    private final String journalName;
+    private final int journalNamePosition;
+    private final String timestampName;
+    private final TimestampSampler sampler;
+    private final Journal source;
+    private final JournalWriter writer;
+    private final RecordSource view;
+    private final int tsIndex;
+    private final CopyHelper copyHelper;
+    private final TailRecord tailRecord;
+    // row counts of source partitions below end of last materialised sample
+    private final LongList counts = new LongList();
+    // guards materialised state shared with reader
+    private final Object cursorLock = new Object();
+    private final ExecutorService executor;
+    private final Runnable refreshJob = new Runnable() {
+        @Override
+        public void run() {
+            refreshQueued = false;
+            try {
+                refresh();
+            } catch (Throwable e) {
+                LOG.error().$("Could not refresh view ").$(name).$(": ").$(e).$();
+            }
+        }
+    };
+    private RecordSource tail;
+    private long tailFrom;
+    private RecordSource refreshTail;
+    private long refreshTailFrom;
+    // samples up to this timestamp are valid in view journal
+    private volatile long materialized = Long.MIN_VALUE;
+    // last sample in view journal, it is ahead of materialized while rollback of stale samples is pending
+    private long committed = Long.MIN_VALUE;
+    private boolean reading = false;
+    private volatile boolean refreshQueued = false;
+    private long cursorMaterialized;
+    private boolean viewDone;
+    private RecordCursor viewCursor;
+    private RecordCursor tailCursor;
+    private Record next;
+
+    public MaterializedView(JournalFactory factory, QueryCompiler compiler, String name, String query) throws ParserException, JournalException {
+        this.factory = factory;
+        this.compiler = compiler;
+        this.name = name;
+        this.query = query;
+
+        ParsedModel pm = compiler.parse(query);
+        if (!(pm instanceof QueryModel)) {
+            throw QueryError.$(0, "Query expected");
+        }
+
+        QueryModel model = (QueryModel) pm;
+        if (model.getJournalName() == null) {
+            throw QueryError.$(0, "Journal expected");
+        }
+
+        if (model.getSampleBy() == null) {
+            throw QueryError.$(0, "Sample by expected");
+        }
+
+        this.journalName = model.getJournalName().token;
+        this.journalNamePosition = model.getJournalName().position;
+        this.sampler = SamplerFactory.from(model.getSampleBy().token);
+        if (sampler == null) {
+            throw QueryError.$(model.getSampleBy().position, "Invalid sample");
+        }
+
+        switch (factory.getConfiguration().exists(name)) {
+            case JournalConfiguration.EXISTS_FOREIGN:
+                throw QueryError.$(0, "Name is reserved");
+            default:
+                break;
+        }
+
+        Journal source = null;
+        JournalWriter writer = null;
+        RecordSource view = null;
+        try {
+            this.source = source = factory.reader(journalName);
+            this.timestampName = source.getMetadata().getTimestampMetadata().name;
+            this.tail = compiler.compile(factory, query);
+
+            RecordMetadata m = tail.getMetadata();
+            this.tsIndex = m.getColumnIndexQuiet(timestampName);
+            if (tsIndex == -1) {
+                throw QueryError.$(0, "Query must select timestamp column");
+            }
+
+            this.writer = writer = factory.bulkWriter(createStructure(name, m, tsIndex, source.getMetadata().getPartitionBy()));
+            this.view = view = compiler.compile(factory, name);
+            this.copyHelper = new CopyHelperCompiler().compile(m, writer.getMetadata());
+            this.tailRecord = new TailRecord(m);
+
+            // resume from samples materialised earlier
+            if (writer.size() > 0) {
+                this.materialized = this.committed = writer.getMaxTimestamp();
+                Misc.free(tail);
+                this.tail = null;
+                this.tail = compileTail(compiler, materialized);
+                snapshot();
+            }
+            this.tailFrom = materialized;
+            this.refreshTail = compileTail(refreshCompiler, materialized);
+            this.refreshTailFrom = materialized;
+        } catch (ParserException | JournalException e) {
+            Misc.free(refreshTail);
+            Misc.free(view);
+            Misc.free(tail);
+            Misc.free(writer);
+            Misc.free(source);
+            throw e;
+        }
+
+        // single thread, which exits when idle
+        this.executor = new ThreadPoolExecutor(0, 1, 60, TimeUnit.SECONDS, new LinkedBlockingQueue<Runnable>(),
+                new NamedDaemonThreadFactory("questdb-view-" + name, true));
+        try {
+            refresh();
+        } catch (ParserException | JournalException e) {
+            close();
+            throw e;
+        }
+    }
+
+    /**
+     * Completes queued refresh and rolls back samples, rollback of which had been held back by reader.
+     */
+    @Override
+    public void close() {
+        executor.shutdown();
+        try {
+            executor.awaitTermination(Long.MAX_VALUE, TimeUnit.MILLISECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+
+        synchronized (this) {
+            if (committed > materialized) {
+                synchronized (cursorLock) {
+                    reading = false;
+                }
+                try {
+                    rollbackView();
+                } catch (JournalException e) {
+                    LOG.error().$("Could not roll back view ").$(name).$(": ").$(e.getMessage()).$();
+                }
+            }
+        }
+
+        Misc.free(tail);
+        Misc.free(refreshTail);
+        Misc.free(view);
+        Misc.free(writer);
+        Misc.free(source);
+    }
+
+    @Override
+    public RecordMetadata getMetadata() {
+        return view.getMetadata();
+    }
+
+    @Override
+    public RecordCursor prepareCursor(JournalReaderFactory factory, CancellationHandler cancellationHandler) {
+        synchronized (cursorLock) {
+            this.cursorMaterialized = materialized;
+            this.viewCursor = view.prepareCursor(factory, cancellationHandler);
+            this.reading = true;
+        }
+        this.viewDone = false;
+
+        if (tailFrom != cursorMaterialized) {
+            Misc.free(tail);
+            tail = null;
+            try {
+                tail = compileTail(compiler, cursorMaterialized);
+            } catch (ParserException e) {
+                throw new JournalRuntimeException(e);
+            }
+            tailFrom = cursorMaterialized;
+        }
+        this.tailCursor = tail.prepareCursor(factory, cancellationHandler);
+        this.next = null;
+        return this;
+    }
+
+    @Override
+    public StorageFacade getStorageFacade() {
+        return viewCursor.getStorageFacade();
+    }
+
+    @Override
+    public boolean hasNext() {
+        if (next != null) {
+            return true;
+        }
+
+        if (!viewDone) {
+            if (viewCursor.hasNext()) {
+                Record r = viewCursor.next();
+                // samples past snapshot are either stale or aggregated from tail
+                if (r.getDate(tsIndex) <= cursorMaterialized) {
+                    next = r;
+                    return true;
+                }
+            }
+            viewDone = true;
+            synchronized (cursorLock) {
+                reading = false;
+            }
+        }
+
+        while (tailCursor.hasNext()) {
+            Record r = tailCursor.next();
+            if (r.getDate(tsIndex) > cursorMaterialized) {
+                next = tailRecord.of(r);
+                return true;
+            }
+        }
+        return false;
+    }
+
+    @Override
+    public Record next() {
+        Record r = next;
+        next = null;
+        return r;
+    }
+
+    @Override
+    public void toSink(CharSink sink) {
+        sink.put('{');
+        sink.putQuoted("op").put(':').putQuoted("MaterializedView").put(',');
+        sink.putQuoted("view").put(':').put(view).put(',');
+        sink.putQuoted("tail").put(':').put(tail);
+        sink.put('}');
+    }
+
+    public long getMaterializedTimestamp() {
+        return materialized;
+    }
+
+    @Override
+    public void onCommit() {
+        if (!refreshQueued) {
+            refreshQueued = true;
+            try {
+                executor.submit(refreshJob);
+            } catch (RejectedExecutionException e) {
+                LOG.info().$("View ").$(name).$(" is closed").$();
+            }
+        }
+    }
+
+    @Override
+    public void onError() {
+    }
+
+    /**
+     * Aggregates rows of source journal committed since last refresh and appends samples
+     * these rows complete to view journal. Samples, which late rows of source journal have
+     * landed in, are aggregated again.
+     *
+     * @throws ParserException  when query no longer compiles against source journal
+     * @throws JournalException when view journal cannot be written
+     */
+    public synchronized void refresh() throws ParserException, JournalException {
+        source.refresh();
+
+        long late = lateTimestamp();
+        if (late != Long.MAX_VALUE) {
+            invalidate(late);
+        }
+
+        if (committed > materialized && !rollbackView()) {
+            // view is being read, reader skips stale samples until rollback is retried on next refresh
+            snapshot();
+            return;
+        }
+
+        if (source.size() > 0) {
+            materialize();
+        }
+        snapshot();
+    }
+
+    private static long countBefore(Partition p, long timestamp) {
+        return p.indexOf(timestamp - 1, BSearchType.OLDER_OR_SAME, 0, p.size() - 1) + 1;
+    }
+
+    private static JournalStructure createStructure(String name, RecordMetadata m, int tsIndex, int partitionBy) {
+        int n = m.getColumnCount();
+        ObjList<ColumnMetadata> columns = new ObjList<>(n);
+        for (int i = 0; i < n; i++) {
+            RecordColumnMetadata rcm = m.getColumnQuick(i);
+            ColumnMetadata cm = new ColumnMetadata();
+            cm.name = rcm.getName();
+            switch (rcm.getType()) {
+                // symbol tables are private to source journal, values are stored verbatim
+                case ColumnType.SYMBOL:
+                case ColumnType.STRING:
+                    cm.type = ColumnType.STRING;
+                    cm.size = cm.avgSize + 4;
+                    break;
+                default:
+                    cm.type = rcm.getType();
+                    cm.size = ColumnType.sizeOf(cm.type);
+                    break;
+            }
+            columns.add(cm);
+        }
+        return new JournalStructure(name, columns).$ts(tsIndex).partitionBy(partitionBy);
+    }
+
+    /**
+     * Waits for queued refresh to complete.
+     */
+    void awaitRefresh() {
+        try {
+            executor.submit(new Runnable() {
+                @Override
+                public void run() {
+                }
+            }).get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        } catch (ExecutionException ignore) {
+            // no-op job does not fail
+        }
+    }
+
+    /**
+     * End of last materialised sample. Rows below it have been aggregated into view journal.
+     */
+    private long boundary() {
+        return sampler.nextTimestamp(sampler.resample(materialized));
+    }
+
+    private RecordSource compileTail(QueryCompiler compiler, long from) throws ParserException {
+        return compiler.compile(factory, from == Long.MIN_VALUE ? query : tailQuery(from));
+    }
+
+    /**
+     * Lowers materialised timestamp below sample of given late row, so that readers stop using stale samples.
+     */
+    private void invalidate(long late) {
+        long from = late == Long.MIN_VALUE ? Long.MIN_VALUE : sampler.resample(late);
+        if (from <= materialized) {
+            LOG.info().$("View ").$(name).$(" is aggregated again from ").$ts(from).$();
+            synchronized (cursorLock) {
+                materialized = from == Long.MIN_VALUE ? Long.MIN_VALUE : from - 1;
+            }
+        }
+    }
+
+    /**
+     * Finds first source partition, row count of which below last materialised sample has changed
+     * since last refresh. Row count changes when source writer merges late rows into partition or
+     * when rows are rolled back.
+     *
+     * @return start of first changed partition, Long.MIN_VALUE when the whole source is affected
+     * or Long.MAX_VALUE when nothing changed
+     */
+    private long lateTimestamp() throws JournalException {
+        if (materialized == Long.MIN_VALUE) {
+            return Long.MAX_VALUE;
+        }
+
+        long boundary = boundary();
+        int i = 0;
+        for (int n = source.getPartitionCount(); i < n; i++) {
+            Partition p = source.getPartition(i, true);
+            Interval interval = p.getInterval();
+            if (interval != null && interval.getLo() >= boundary) {
+                break;
+            }
+
+            if (i == counts.size() || counts.getQuick(i) != countBefore(p, boundary)) {
+                return interval == null ? Long.MIN_VALUE : interval.getLo();
+            }
+        }
+        // partitions have been removed
+        return i < counts.size() ? Long.MIN_VALUE : Long.MAX_VALUE;
+    }
+
+    private void materialize() throws ParserException, JournalException {
+        // sample of last row is open, everything before it is final
+        long open = sampler.resample(source.getMaxTimestamp());
+        long from = materialized;
+        long last = from;
+
+        if (refreshTailFrom != from) {
+            Misc.free(refreshTail);
+            refreshTail = null;
+            refreshTail = compileTail(refreshCompiler, from);
+            refreshTailFrom = from;
+        }
+
+        RecordCursor cursor = refreshTail.prepareCursor(factory);
+        while (cursor.hasNext()) {
+            Record r = cursor.next();
+            long ts = r.getDate(tsIndex);
+            if (ts > from && ts < open) {
+                JournalEntryWriter ew = writer.entryWriter(ts);
+                copyHelper.copy(r, ew);
+                ew.append();
+                last = ts;
+            }
+        }
+
+        if (last > from) {
+            writer.commit();
+            synchronized (cursorLock) {
+                materialized = committed = last;
+            }
+        }
+    }
+
+    /**
+     * Rolls view journal back to last transaction, which holds valid samples only. Rollback is held back
+     * while reader iterates view journal, because rolled back rows are overwritten in place.
+     *
+     * @return false when view journal is being read
+     * @throws JournalException when view journal cannot be rolled back
+     */
+    private boolean rollbackView() throws JournalException {
+        synchronized (cursorLock) {
+            if (reading) {
+                return false;
+            }
+
+            TxIterator iterator = writer.transactions();
+            while (iterator.hasNext()) {
+                Tx tx = iterator.next();
+                // transaction records size of its last partition
+                long size = tx.journalMaxRowID == -1 ? 0 : Rows.toLocalRowID(tx.journalMaxRowID);
+                if (size == 0) {
+                    break;
+                }
+
+                long ts = writer.getPartition(Rows.toPartitionIndex(tx.journalMaxRowID), true).getLong(size - 1, tsIndex);
+                if (ts <= materialized) {
+                    writer.rollback(tx.txn, tx.txPin);
+                    materialized = committed = ts;
+                    return true;
+                }
+            }
+
+            writer.truncate();
+            materialized = committed = Long.MIN_VALUE;
+            return true;
+        }
+    }
+
+    private void snapshot() throws JournalException {
+        counts.clear();
+        if (materialized == Long.MIN_VALUE) {
+            return;
+        }
+
+        long boundary = boundary();
+        for (int i = 0, n = source.getPartitionCount(); i < n; i++) {
+            Partition p = source.getPartition(i, true);
+            Interval interval = p.getInterval();
+            if (interval != null && interval.getLo() >= boundary) {
+                break;
+            }
+            counts.add(countBefore(p, boundary));
+        }
+    }
+
+    /**
+     * Rewrites original query to read source journal from given timestamp, which is either start of last
+     * materialised sample or end of last valid one. Rows of sample this timestamp falls in are re-aggregated
+     * to keep sample boundaries intact, but output of that sample is discarded in favour of materialised copy.
+     */
+    private String tailQuery(long from) {
+        StringSink sink = new StringSink();
+        sink.put(query.substring(0, journalNamePosition));
+        sink.put('(').put(journalName).put(" where ").put(timestampName).put(" >= '");
+        Dates.appendDateTime(sink, from);
+        sink.put("')");
+        sink.put(query.substring(journalNamePosition + journalName.length()));
+        return sink.toString();
+    }
+}
@@ -0,0 +1,158 @@
+/*******************************************************************************
+ *    ___                  _   ____  ____
+ *   / _ \ _   _  ___  ___| |_|  _ \| __ )
+ *  | | | | | | |/ _ \/ __| __| | | |  _ \
+ *  | |_| | |_| |  __/\__ \ |_| |_| | |_) |
+ *   \__\_\\__,_|\___||___/\__|____/|____/
+ *
+ * Copyright (C) 2014-2016 Appsicle
+ *
+ * This program is free software: you can redistribute it and/or  modify
+ * it under the terms of the GNU Affero General Public License, version 3,
+ * as published by the Free Software Foundation.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ *
+ ******************************************************************************/
+
+
+package com.questdb.ql.impl.view;
+
+import com.questdb.factory.configuration.RecordMetadata;
+import com.questdb.misc.Unsafe;
+import com.questdb.ql.AbstractRecord;
+import com.questdb.ql.Record;
+import com.questdb.std.CharSink;
+import com.questdb.std.DirectInputStream;
+import com.questdb.store.ColumnType;
+
+import java.io.OutputStream;
+
+/**
+ * Presents live tail records in the shape of view journal records. View journal keeps
+ * symbol columns as strings, so symbol values of the tail are served via getSym().
+ */
+class TailRecord extends AbstractRecord {
+    private final boolean symbols[];
+    private Record base;
+
+    TailRecord(RecordMetadata metadata) {
+        int n = metadata.getColumnCount();
+        this.symbols = new boolean[n];
+        for (int i = 0; i < n; i++) {
+            symbols[i] = metadata.getColumnQuick(i).getType() == ColumnType.SYMBOL;
+        }
+    }
+
+    @Override
+    public byte get(int col) {
+        return base.get(col);
+    }
+
+    @Override
+    public void getBin(int col, OutputStream s) {
+        base.getBin(col, s);
+    }
+
+    @Override
+    public DirectInputStream getBin(int col) {
+        return base.getBin(col);
+    }
+
+    @Override
+    public long getBinLen(int col) {
+        return base.getBinLen(col);
+    }
+
+    @Override
+    public boolean getBool(int col) {
+        return base.getBool(col);
+    }
+
+    @Override
+    public long getDate(int col) {
+        return base.getDate(col);
+    }
+
+    @Override
+    public double getDouble(int col) {
+        return base.getDouble(col);
+    }
+
+    @Override
+    public float getFloat(int col) {
+        return base.getFloat(col);
+    }
+
+    @Override
+    public CharSequence getFlyweightStr(int col) {
+        return Unsafe.arrayGet(symbols, col) ? base.getSym(col) : base.getFlyweightStr(col);
+    }
+
+    @Override
+    public CharSequence getFlyweightStrB(int col) {
+        return Unsafe.arrayGet(symbols, col) ? base.getSym(col) : base.getFlyweightStrB(col);
+    }
+
+    @Override
+    public int getInt(int col) {
+        return base.getInt(col);
+    }
+
+    @Override
+    public long getLong(int col) {
+        return base.getLong(col);
+    }
+
+    @Override
+    public long getRowId() {
+        return base.getRowId();
+    }
+
+    @Override
+    public short getShort(int col) {
+        return base.getShort(col);
+    }
+
+    @Override
+    public CharSequence getStr(int col) {
+        return Unsafe.arrayGet(symbols, col) ? base.getSym(col) : base.getStr(col);
+    }
+
+    @Override
+    public void getStr(int col, CharSink sink) {
+        if (Unsafe.arrayGet(symbols, col)) {
+            String s = base.getSym(col);
+            if (s != null) {
+                sink.put(s);
+            }
+        } else {
+            base.getStr(col, sink);
+        }
+    }
+
+    @Override
+    public int getStrLen(int col) {
+        if (Unsafe.arrayGet(symbols, col)) {
+            String s = base.getSym(col);
+            return s == null ? -1 : s.length();
+        }
+        return base.getStrLen(col);
+    }
+
+    @Override
+    public String getSym(int col) {
+        return base.getSym(col);
+    }
+
+    TailRecord of(Record base) {
+        this.base = base;
+        return this;
+    }
+}
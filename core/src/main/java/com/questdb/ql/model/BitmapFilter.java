@@ -0,0 +1,80 @@
+/*******************************************************************************
+ *    ___                  _   ____  ____
+ *   / _ \ _   _  ___  ___| |_|  _ \| __ )
+ *  | | | | | | |/ _ \/ __| __| | | |  _ \
+ *  | |_| | |_| |  __/\__ \ |_| |_| | |_) |
+ *   \__\_\\__,_|\___||___/\__|____/|____/
+ *
+ * Copyright (C) 2014-2016 Appsicle
+ *
+ * This program is free software: you can redistribute it and/or  modify
+ * it under the terms of the GNU Affero General Public License, version 3,
+ * as published by the Free Software Foundation.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ *
+ ******************************************************************************/
+
+package com.questdb.ql.model;
+
+import com.questdb.std.ObjList;
+
+/**
+ * Conjunction of predicates on symbol columns with bitmap index. Each term matches rows, which have any of
+ * term values, or rows that have none of them when term is negated. Terms are evaluated on index bitmaps
+ * and replace their predicates in filter.
+ */
+public class BitmapFilter {
+    private final ObjList<Term> terms = new ObjList<>();
+
+    public Term add(String column, boolean negated) {
+        Term t = new Term();
+        t.column = column;
+        t.negated = negated;
+        terms.add(t);
+        return t;
+    }
+
+    public Term getQuick(int index) {
+        return terms.getQuick(index);
+    }
+
+    public int size() {
+        return terms.size();
+    }
+
+    @Override
+    public String toString() {
+        StringBuilder b = new StringBuilder();
+        for (int i = 0, n = terms.size(); i < n; i++) {
+            Term t = terms.getQuick(i);
+            if (i > 0) {
+                b.append(" and ");
+            }
+            if (t.negated) {
+                b.append("not ");
+            }
+            b.append(t.column).append(" in (");
+            for (int k = 0, m = t.values.size(); k < m; k++) {
+                if (k > 0) {
+                    b.append(',');
+                }
+                b.append(t.values.getQuick(k));
+            }
+            b.append(')');
+        }
+        return b.toString();
+    }
+
+    public static final class Term {
+        public final ObjList<String> values = new ObjList<>();
+        public String column;
+        public boolean negated;
+    }
+}
@@ -0,0 +1,103 @@
+/*******************************************************************************
+ *    ___                  _   ____  ____
+ *   / _ \ _   _  ___  ___| |_|  _ \| __ )
+ *  | | | | | | |/ _ \/ __| __| | | |  _ \
+ *  | |_| | |_| |  __/\__ \ |_| |_| | |_) |
+ *   \__\_\\__,_|\___||___/\__|____/|____/
+ *
+ * Copyright (C) 2014-2016 Appsicle
+ *
+ * This program is free software: you can redistribute it and/or  modify
+ * it under the terms of the GNU Affero General Public License, version 3,
+ * as published by the Free Software Foundation.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ *
+ ******************************************************************************/
+
+package com.questdb.ql.model;
+
+import com.questdb.std.ObjList;
+
+/**
+ * Conjunction of value ranges of numeric columns, which is implied by filter. Ranges are only used
+ * to skip partitions and row blocks using column statistics, filter is always evaluated in full.
+ * Null values never satisfy a range, column can be required to be null instead.
+ */
+public class ColumnRanges {
+    private final ObjList<Range> ranges = new ObjList<>();
+
+    public void intersect(int columnIndex, long lo, long hi) {
+        Range r = get(columnIndex);
+        r.lo = Math.max(r.lo, lo);
+        r.hi = Math.min(r.hi, hi);
+    }
+
+    public void intersect(int columnIndex, double lo, double hi) {
+        Range r = get(columnIndex);
+        r.floating = true;
+        r.dLo = Math.max(r.dLo, lo);
+        r.dHi = Math.min(r.dHi, hi);
+    }
+
+    public Range getQuick(int index) {
+        return ranges.getQuick(index);
+    }
+
+    public void requireNull(int columnIndex) {
+        get(columnIndex).isNull = true;
+    }
+
+    public int size() {
+        return ranges.size();
+    }
+
+    @Override
+    public String toString() {
+        StringBuilder b = new StringBuilder("ColumnRanges{");
+        for (int i = 0, n = ranges.size(); i < n; i++) {
+            Range r = ranges.getQuick(i);
+            if (i > 0) {
+                b.append(", ");
+            }
+            b.append(r.columnIndex).append(':');
+            if (r.isNull) {
+                b.append("null");
+            } else if (r.floating) {
+                b.append('[').append(r.dLo).append(',').append(r.dHi).append(']');
+            } else {
+                b.append('[').append(r.lo).append(',').append(r.hi).append(']');
+            }
+        }
+        return b.append('}').toString();
+    }
+
+    private Range get(int columnIndex) {
+        for (int i = 0, n = ranges.size(); i < n; i++) {
+            Range r = ranges.getQuick(i);
+            if (r.columnIndex == columnIndex) {
+                return r;
+            }
+        }
+        Range r = new Range();
+        r.columnIndex = columnIndex;
+        ranges.add(r);
+        return r;
+    }
+
+    public static final class Range {
+        public int columnIndex;
+        public boolean isNull = false;
+        public boolean floating = false;
+        public long lo = Long.MIN_VALUE;
+        public long hi = Long.MAX_VALUE;
+        public double dLo = Double.NEGATIVE_INFINITY;
+        public double dHi = Double.POSITIVE_INFINITY;
+    }
+}
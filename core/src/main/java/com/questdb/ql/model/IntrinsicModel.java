@@ -42,6 +42,8 @@ public class IntrinsicModel implements Mutable {
     public IntervalSource intervalSource;
     public int intrinsicValue = IntrinsicValue.UNDEFINED;
     public boolean keyValuesIsLambda = false;
+    public ColumnRanges ranges;
+    public BitmapFilter bitmapFilter;
 
     private IntrinsicModel() {
     }
@@ -57,6 +59,8 @@ public class IntrinsicModel implements Mutable {
         intervalSource = null;
         intrinsicValue = IntrinsicValue.UNDEFINED;
         keyValuesIsLambda = false;
+        ranges = null;
+        bitmapFilter = null;
     }
 
     public void clearInterval() {
@@ -72,6 +72,7 @@ public class QueryModel implements Mutable, ParsedModel {
     private final ArrayDeque<ExprNode> exprNodeStack = new ArrayDeque<>();
     private final CharSequenceIntHashMap orderHash = new CharSequenceIntHashMap(4, 0.5, -1);
     private final ObjList<ExprNode> joinColumns = new ObjList<>(4);
+    private final ObjList<ExprNode> sampleByFill = new ObjList<>();
     private CharSequenceObjHashMap<Parameter> parameterMap = new CharSequenceObjHashMap<>();
     private ExprNode whereClause;
     private ExprNode postJoinWhereClause;
@@ -85,6 +86,7 @@ public class QueryModel implements Mutable, ParsedModel {
     private RecordMetadata metadata;
     private JoinContext context;
     private ExprNode joinCriteria;
+    private ExprNode joinTolerance;
     private int joinType;
     private IntList orderedJoinModels = orderedJoinModels2;
     private ExprNode limitLo;
@@ -139,11 +141,16 @@ public class QueryModel implements Mutable, ParsedModel {
         parsedWhere.add(node);
     }
 
+    public void addSampleByFill(ExprNode node) {
+        sampleByFill.add(node);
+    }
+
     public void clear() {
         columns.clear();
         joinModels.clear();
         joinModels.add(this);
         sampleBy = null;
+        sampleByFill.clear();
         orderBy.clear();
         orderByDirection.clear();
         dependencies.clear();
@@ -156,6 +163,7 @@ public class QueryModel implements Mutable, ParsedModel {
         recordSource = null;
         metadata = null;
         joinCriteria = null;
+        joinTolerance = null;
         joinType = JOIN_INNER;
         orderedJoinModels1.clear();
         orderedJoinModels2.clear();
@@ -270,6 +278,14 @@ public class QueryModel implements Mutable, ParsedModel {
         return joinModels;
     }
 
+    public ExprNode getJoinTolerance() {
+        return joinTolerance;
+    }
+
+    public void setJoinTolerance(ExprNode joinTolerance) {
+        this.joinTolerance = joinTolerance;
+    }
+
     public int getJoinType() {
         return joinType;
     }
@@ -389,6 +405,10 @@ public class QueryModel implements Mutable, ParsedModel {
         this.sampleBy = sampleBy;
     }
 
+    public ObjList<ExprNode> getSampleByFill() {
+        return sampleByFill;
+    }
+
     public ExprNode getTimestamp() {
         return timestamp;
     }
@@ -25,6 +25,10 @@ package com.questdb.ql.ops;
 
 import com.questdb.ex.ParserException;
 import com.questdb.ql.StorageFacade;
+import com.questdb.ql.ops.col.DateRecordSourceColumn;
+import com.questdb.ql.ops.col.DoubleRecordSourceColumn;
+import com.questdb.ql.ops.col.IntRecordSourceColumn;
+import com.questdb.ql.ops.col.LongRecordSourceColumn;
 import com.questdb.ql.parser.QueryError;
 
 public abstract class AbstractUnaryOperator extends AbstractVirtualColumn implements Function {
@@ -34,6 +38,10 @@ public abstract class AbstractUnaryOperator extends AbstractVirtualColumn implem
         super(columnType);
     }
 
+    public VirtualColumn getValue() {
+        return value;
+    }
+
     @Override
     public boolean isConstant() {
         return value.isConstant();
@@ -44,6 +52,36 @@ public abstract class AbstractUnaryOperator extends AbstractVirtualColumn implem
         value.prepare(facade);
     }
 
+    /**
+     * Index of record source column, which is argument of this operator.
+     *
+     * @param type expected column type
+     * @return column index or -1 when argument is an expression or column of another type
+     */
+    protected int argumentColumn(int type) {
+        if (value.getType() != type) {
+            return -1;
+        }
+
+        if (value instanceof IntRecordSourceColumn) {
+            return ((IntRecordSourceColumn) value).getIndex();
+        }
+
+        if (value instanceof LongRecordSourceColumn) {
+            return ((LongRecordSourceColumn) value).getIndex();
+        }
+
+        if (value instanceof DateRecordSourceColumn) {
+            return ((DateRecordSourceColumn) value).getIndex();
+        }
+
+        if (value instanceof DoubleRecordSourceColumn) {
+            return ((DoubleRecordSourceColumn) value).getIndex();
+        }
+
+        return -1;
+    }
+
     @Override
     public void setArg(int pos, VirtualColumn arg) throws ParserException {
         switch (pos) {
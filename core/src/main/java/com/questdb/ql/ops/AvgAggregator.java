@@ -25,8 +25,11 @@ package com.questdb.ql.ops;
 
 import com.questdb.factory.configuration.ColumnMetadata;
 import com.questdb.factory.configuration.RecordColumnMetadata;
-import com.questdb.ql.AggregatorFunction;
+import com.questdb.misc.Unsafe;
+import com.questdb.ql.BlockAggregatorFunction;
+import com.questdb.ql.MergeableAggregatorFunction;
 import com.questdb.ql.Record;
+import com.questdb.ql.RecordBlock;
 import com.questdb.ql.impl.RecordColumnMetadataImpl;
 import com.questdb.ql.impl.map.DirectMapValues;
 import com.questdb.ql.impl.map.MapRecordValueInterceptor;
@@ -34,7 +37,7 @@ import com.questdb.std.ObjList;
 import com.questdb.std.ObjectFactory;
 import com.questdb.store.ColumnType;
 
-public final class AvgAggregator extends AbstractUnaryOperator implements AggregatorFunction, MapRecordValueInterceptor {
+public final class AvgAggregator extends AbstractUnaryOperator implements MergeableAggregatorFunction, BlockAggregatorFunction, MapRecordValueInterceptor {
 
     public static final ObjectFactory<Function> FACTORY = new ObjectFactory<Function>() {
         @Override
@@ -48,6 +51,7 @@ public final class AvgAggregator extends AbstractUnaryOperator implements Aggreg
     private int countIdx;
     private int sumIdx;
     private int avgIdx;
+    private int columnIndex = -1;
 
     private AvgAggregator() {
         super(ColumnType.DOUBLE);
@@ -58,6 +62,11 @@ public final class AvgAggregator extends AbstractUnaryOperator implements Aggreg
         values.putDouble(avgIdx, values.getDouble(sumIdx) / values.getLong(countIdx));
     }
 
+    @Override
+    public boolean acceptsBlocks() {
+        return (columnIndex = argumentColumn(ColumnType.DOUBLE)) != -1;
+    }
+
     @Override
     public void calculate(Record rec, DirectMapValues values) {
         if (values.isNew()) {
@@ -69,6 +78,37 @@ public final class AvgAggregator extends AbstractUnaryOperator implements Aggreg
         }
     }
 
+    @Override
+    public void calculate(RecordBlock block, DirectMapValues values) {
+        final long address = block.getAddress(columnIndex);
+        final int[] rows = block.getRows();
+        final int n = block.size();
+        int i;
+        long count;
+        double sum;
+        if (values.isNew()) {
+            count = n;
+            sum = Unsafe.getUnsafe().getDouble(address + ((long) Unsafe.arrayGet(rows, 0) << 3));
+            i = 1;
+        } else {
+            count = values.getLong(countIdx) + n;
+            sum = values.getDouble(sumIdx);
+            i = 0;
+        }
+
+        for (; i < n; i++) {
+            sum += Unsafe.getUnsafe().getDouble(address + ((long) Unsafe.arrayGet(rows, i) << 3));
+        }
+        values.putLong(countIdx, count);
+        values.putDouble(sumIdx, sum);
+    }
+
+    @Override
+    public void merge(DirectMapValues to, DirectMapValues from) {
+        to.putLong(countIdx, to.getLong(countIdx) + from.getLong(countIdx));
+        to.putDouble(sumIdx, to.getDouble(sumIdx) + from.getDouble(sumIdx));
+    }
+
     @Override
     public void prepare(ObjList<RecordColumnMetadata> columns, int offset) {
         columns.add(INTERNAL_COL_COUNT);
@@ -36,6 +36,10 @@ public class DateRecordSourceColumn extends AbstractVirtualColumn {
         this.index = index;
     }
 
+    public int getIndex() {
+        return index;
+    }
+
     @Override
     public long getDate(Record rec) {
         return rec.getDate(index);
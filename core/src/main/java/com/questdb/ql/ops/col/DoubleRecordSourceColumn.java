@@ -36,6 +36,10 @@ public class DoubleRecordSourceColumn extends AbstractVirtualColumn {
         this.index = index;
     }
 
+    public int getIndex() {
+        return index;
+    }
+
     @Override
     public double getDouble(Record rec) {
         return rec.getDouble(index);
@@ -24,8 +24,10 @@
 package com.questdb.ql.ops.count;
 
 import com.questdb.factory.configuration.RecordColumnMetadata;
-import com.questdb.ql.AggregatorFunction;
+import com.questdb.ql.BlockAggregatorFunction;
+import com.questdb.ql.MergeableAggregatorFunction;
 import com.questdb.ql.Record;
+import com.questdb.ql.RecordBlock;
 import com.questdb.ql.StorageFacade;
 import com.questdb.ql.impl.map.DirectMapValues;
 import com.questdb.ql.ops.AbstractVirtualColumn;
@@ -35,7 +37,7 @@ import com.questdb.std.ObjList;
 import com.questdb.std.ObjectFactory;
 import com.questdb.store.ColumnType;
 
-public final class CountAggregator extends AbstractVirtualColumn implements AggregatorFunction, Function {
+public final class CountAggregator extends AbstractVirtualColumn implements MergeableAggregatorFunction, BlockAggregatorFunction, Function {
 
     public static final ObjectFactory<Function> FACTORY = new ObjectFactory<Function>() {
         @Override
@@ -50,6 +52,11 @@ public final class CountAggregator extends AbstractVirtualColumn implements Aggr
         super(ColumnType.LONG);
     }
 
+    @Override
+    public boolean acceptsBlocks() {
+        return true;
+    }
+
     @Override
     public void calculate(Record rec, DirectMapValues values) {
         if (values.isNew()) {
@@ -59,6 +66,20 @@ public final class CountAggregator extends AbstractVirtualColumn implements Aggr
         }
     }
 
+    @Override
+    public void calculate(RecordBlock block, DirectMapValues values) {
+        if (values.isNew()) {
+            values.putLong(index, block.size());
+        } else {
+            values.putLong(index, values.getLong(index) + block.size());
+        }
+    }
+
+    @Override
+    public void merge(DirectMapValues to, DirectMapValues from) {
+        to.putLong(index, to.getLong(index) + from.getLong(index));
+    }
+
     @Override
     public void prepare(ObjList<RecordColumnMetadata> columns, int offset) {
         columns.add(this);
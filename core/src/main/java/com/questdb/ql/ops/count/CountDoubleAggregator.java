@@ -23,14 +23,18 @@
 
 package com.questdb.ql.ops.count;
 
+import com.questdb.misc.Unsafe;
+import com.questdb.ql.BlockAggregatorFunction;
+import com.questdb.ql.MergeableAggregatorFunction;
 import com.questdb.ql.Record;
+import com.questdb.ql.RecordBlock;
 import com.questdb.ql.impl.map.DirectMapValues;
 import com.questdb.ql.ops.AbstractUnaryAggregator;
 import com.questdb.ql.ops.Function;
 import com.questdb.std.ObjectFactory;
 import com.questdb.store.ColumnType;
 
-public final class CountDoubleAggregator extends AbstractUnaryAggregator {
+public final class CountDoubleAggregator extends AbstractUnaryAggregator implements MergeableAggregatorFunction, BlockAggregatorFunction {
 
     public static final ObjectFactory<Function> FACTORY = new ObjectFactory<Function>() {
         @Override
@@ -39,10 +43,17 @@ public final class CountDoubleAggregator extends AbstractUnaryAggregator {
         }
     };
 
+    private int columnIndex = -1;
+
     private CountDoubleAggregator() {
         super(ColumnType.LONG);
     }
 
+    @Override
+    public boolean acceptsBlocks() {
+        return (columnIndex = argumentColumn(ColumnType.DOUBLE)) != -1;
+    }
+
     @Override
     public void calculate(Record rec, DirectMapValues values) {
         double d = value.getDouble(rec);
@@ -52,4 +63,23 @@ public final class CountDoubleAggregator extends AbstractUnaryAggregator {
             values.putLong(valueIndex, values.getLong(valueIndex) + 1);
         }
     }
+
+    @Override
+    public void calculate(RecordBlock block, DirectMapValues values) {
+        final long address = block.getAddress(columnIndex);
+        final int[] rows = block.getRows();
+        long count = values.isNew() ? 0 : values.getLong(valueIndex);
+        for (int i = 0, n = block.size(); i < n; i++) {
+            double d = Unsafe.getUnsafe().getDouble(address + ((long) Unsafe.arrayGet(rows, i) << 3));
+            if (d == d) {
+                count++;
+            }
+        }
+        values.putLong(valueIndex, count);
+    }
+
+    @Override
+    public void merge(DirectMapValues to, DirectMapValues from) {
+        to.putLong(valueIndex, to.getLong(valueIndex) + from.getLong(valueIndex));
+    }
 }
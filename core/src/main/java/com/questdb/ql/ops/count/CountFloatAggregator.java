@@ -23,6 +23,7 @@
 
 package com.questdb.ql.ops.count;
 
+import com.questdb.ql.MergeableAggregatorFunction;
 import com.questdb.ql.Record;
 import com.questdb.ql.impl.map.DirectMapValues;
 import com.questdb.ql.ops.AbstractUnaryAggregator;
@@ -30,7 +31,7 @@ import com.questdb.ql.ops.Function;
 import com.questdb.std.ObjectFactory;
 import com.questdb.store.ColumnType;
 
-public final class CountFloatAggregator extends AbstractUnaryAggregator {
+public final class CountFloatAggregator extends AbstractUnaryAggregator implements MergeableAggregatorFunction {
 
     public static final ObjectFactory<Function> FACTORY = new ObjectFactory<Function>() {
         @Override
@@ -52,4 +53,9 @@ public final class CountFloatAggregator extends AbstractUnaryAggregator {
             values.putLong(valueIndex, values.getLong(valueIndex) + 1);
         }
     }
+
+    @Override
+    public void merge(DirectMapValues to, DirectMapValues from) {
+        to.putLong(valueIndex, to.getLong(valueIndex) + from.getLong(valueIndex));
+    }
 }
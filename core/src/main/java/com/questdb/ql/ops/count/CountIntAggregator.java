@@ -24,14 +24,18 @@
 package com.questdb.ql.ops.count;
 
 import com.questdb.misc.Numbers;
+import com.questdb.misc.Unsafe;
+import com.questdb.ql.BlockAggregatorFunction;
+import com.questdb.ql.MergeableAggregatorFunction;
 import com.questdb.ql.Record;
+import com.questdb.ql.RecordBlock;
 import com.questdb.ql.impl.map.DirectMapValues;
 import com.questdb.ql.ops.AbstractUnaryAggregator;
 import com.questdb.ql.ops.Function;
 import com.questdb.std.ObjectFactory;
 import com.questdb.store.ColumnType;
 
-public final class CountIntAggregator extends AbstractUnaryAggregator {
+public final class CountIntAggregator extends AbstractUnaryAggregator implements MergeableAggregatorFunction, BlockAggregatorFunction {
 
     public static final ObjectFactory<Function> FACTORY = new ObjectFactory<Function>() {
         @Override
@@ -40,10 +44,17 @@ public final class CountIntAggregator extends AbstractUnaryAggregator {
         }
     };
 
+    private int columnIndex = -1;
+
     private CountIntAggregator() {
         super(ColumnType.LONG);
     }
 
+    @Override
+    public boolean acceptsBlocks() {
+        return (columnIndex = argumentColumn(ColumnType.INT)) != -1;
+    }
+
     @Override
     public void calculate(Record rec, DirectMapValues values) {
         int d = value.getInt(rec);
@@ -53,4 +64,23 @@ public final class CountIntAggregator extends AbstractUnaryAggregator {
             values.putLong(valueIndex, values.getLong(valueIndex) + 1);
         }
     }
+
+    @Override
+    public void calculate(RecordBlock block, DirectMapValues values) {
+        final long address = block.getAddress(columnIndex);
+        final int[] rows = block.getRows();
+        long count = values.isNew() ? 0 : values.getLong(valueIndex);
+        for (int i = 0, n = block.size(); i < n; i++) {
+            int d = Unsafe.getUnsafe().getInt(address + ((long) Unsafe.arrayGet(rows, i) << 2));
+            if (d != Numbers.INT_NaN) {
+                count++;
+            }
+        }
+        values.putLong(valueIndex, count);
+    }
+
+    @Override
+    public void merge(DirectMapValues to, DirectMapValues from) {
+        to.putLong(valueIndex, to.getLong(valueIndex) + from.getLong(valueIndex));
+    }
 }
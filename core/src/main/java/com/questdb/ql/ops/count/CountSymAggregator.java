@@ -23,6 +23,7 @@
 
 package com.questdb.ql.ops.count;
 
+import com.questdb.ql.MergeableAggregatorFunction;
 import com.questdb.ql.Record;
 import com.questdb.ql.impl.map.DirectMapValues;
 import com.questdb.ql.ops.AbstractUnaryAggregator;
@@ -31,7 +32,7 @@ import com.questdb.std.ObjectFactory;
 import com.questdb.store.ColumnType;
 import com.questdb.store.SymbolTable;
 
-public final class CountSymAggregator extends AbstractUnaryAggregator {
+public final class CountSymAggregator extends AbstractUnaryAggregator implements MergeableAggregatorFunction {
 
     public static final ObjectFactory<Function> FACTORY = new ObjectFactory<Function>() {
         @Override
@@ -53,4 +54,9 @@ public final class CountSymAggregator extends AbstractUnaryAggregator {
             values.putLong(valueIndex, values.getLong(valueIndex) + 1);
         }
     }
+
+    @Override
+    public void merge(DirectMapValues to, DirectMapValues from) {
+        to.putLong(valueIndex, to.getLong(valueIndex) + from.getLong(valueIndex));
+    }
 }
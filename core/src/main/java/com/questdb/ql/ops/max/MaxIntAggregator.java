@@ -23,14 +23,18 @@
 
 package com.questdb.ql.ops.max;
 
+import com.questdb.misc.Unsafe;
+import com.questdb.ql.BlockAggregatorFunction;
+import com.questdb.ql.MergeableAggregatorFunction;
 import com.questdb.ql.Record;
+import com.questdb.ql.RecordBlock;
 import com.questdb.ql.impl.map.DirectMapValues;
 import com.questdb.ql.ops.AbstractUnaryAggregator;
 import com.questdb.ql.ops.Function;
 import com.questdb.std.ObjectFactory;
 import com.questdb.store.ColumnType;
 
-public final class MaxIntAggregator extends AbstractUnaryAggregator {
+public final class MaxIntAggregator extends AbstractUnaryAggregator implements MergeableAggregatorFunction, BlockAggregatorFunction {
     public static final ObjectFactory<Function> FACTORY = new ObjectFactory<Function>() {
         @Override
         public Function newInstance() {
@@ -38,10 +42,17 @@ public final class MaxIntAggregator extends AbstractUnaryAggregator {
         }
     };
 
+    private int columnIndex = -1;
+
     private MaxIntAggregator() {
         super(ColumnType.INT);
     }
 
+    @Override
+    public boolean acceptsBlocks() {
+        return (columnIndex = argumentColumn(ColumnType.INT)) != -1;
+    }
+
     @Override
     public void calculate(Record rec, DirectMapValues values) {
         int v = value.getInt(rec);
@@ -49,4 +60,36 @@ public final class MaxIntAggregator extends AbstractUnaryAggregator {
             values.putInt(valueIndex, v);
         }
     }
+
+    @Override
+    public void calculate(RecordBlock block, DirectMapValues values) {
+        final long address = block.getAddress(columnIndex);
+        final int[] rows = block.getRows();
+        final int n = block.size();
+        int i;
+        int v;
+        if (values.isNew()) {
+            v = Unsafe.getUnsafe().getInt(address + ((long) Unsafe.arrayGet(rows, 0) << 2));
+            i = 1;
+        } else {
+            v = values.getInt(valueIndex);
+            i = 0;
+        }
+
+        for (; i < n; i++) {
+            int x = Unsafe.getUnsafe().getInt(address + ((long) Unsafe.arrayGet(rows, i) << 2));
+            if (x > v) {
+                v = x;
+            }
+        }
+        values.putInt(valueIndex, v);
+    }
+
+    @Override
+    public void merge(DirectMapValues to, DirectMapValues from) {
+        int v = from.getInt(valueIndex);
+        if (v > to.getInt(valueIndex)) {
+            to.putInt(valueIndex, v);
+        }
+    }
 }
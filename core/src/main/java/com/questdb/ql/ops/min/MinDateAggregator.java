@@ -23,14 +23,18 @@
 
 package com.questdb.ql.ops.min;
 
+import com.questdb.misc.Unsafe;
+import com.questdb.ql.BlockAggregatorFunction;
+import com.questdb.ql.MergeableAggregatorFunction;
 import com.questdb.ql.Record;
+import com.questdb.ql.RecordBlock;
 import com.questdb.ql.impl.map.DirectMapValues;
 import com.questdb.ql.ops.AbstractUnaryAggregator;
 import com.questdb.ql.ops.Function;
 import com.questdb.std.ObjectFactory;
 import com.questdb.store.ColumnType;
 
-public final class MinDateAggregator extends AbstractUnaryAggregator {
+public final class MinDateAggregator extends AbstractUnaryAggregator implements MergeableAggregatorFunction, BlockAggregatorFunction {
     public static final ObjectFactory<Function> FACTORY = new ObjectFactory<Function>() {
         @Override
         public Function newInstance() {
@@ -38,10 +42,17 @@ public final class MinDateAggregator extends AbstractUnaryAggregator {
         }
     };
 
+    private int columnIndex = -1;
+
     private MinDateAggregator() {
         super(ColumnType.DATE);
     }
 
+    @Override
+    public boolean acceptsBlocks() {
+        return (columnIndex = argumentColumn(ColumnType.DATE)) != -1;
+    }
+
     @Override
     public void calculate(Record rec, DirectMapValues values) {
         long v = value.getDate(rec);
@@ -49,4 +60,36 @@ public final class MinDateAggregator extends AbstractUnaryAggregator {
             values.putLong(valueIndex, v);
         }
     }
+
+    @Override
+    public void calculate(RecordBlock block, DirectMapValues values) {
+        final long address = block.getAddress(columnIndex);
+        final int[] rows = block.getRows();
+        final int n = block.size();
+        int i;
+        long v;
+        if (values.isNew()) {
+            v = Unsafe.getUnsafe().getLong(address + ((long) Unsafe.arrayGet(rows, 0) << 3));
+            i = 1;
+        } else {
+            v = values.getLong(valueIndex);
+            i = 0;
+        }
+
+        for (; i < n; i++) {
+            long x = Unsafe.getUnsafe().getLong(address + ((long) Unsafe.arrayGet(rows, i) << 3));
+            if (x < v) {
+                v = x;
+            }
+        }
+        values.putLong(valueIndex, v);
+    }
+
+    @Override
+    public void merge(DirectMapValues to, DirectMapValues from) {
+        long v = from.getLong(valueIndex);
+        if (v < to.getLong(valueIndex)) {
+            to.putLong(valueIndex, v);
+        }
+    }
 }
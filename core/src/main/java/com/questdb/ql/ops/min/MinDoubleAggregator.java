@@ -23,14 +23,18 @@
 
 package com.questdb.ql.ops.min;
 
+import com.questdb.misc.Unsafe;
+import com.questdb.ql.BlockAggregatorFunction;
+import com.questdb.ql.MergeableAggregatorFunction;
 import com.questdb.ql.Record;
+import com.questdb.ql.RecordBlock;
 import com.questdb.ql.impl.map.DirectMapValues;
 import com.questdb.ql.ops.AbstractUnaryAggregator;
 import com.questdb.ql.ops.Function;
 import com.questdb.std.ObjectFactory;
 import com.questdb.store.ColumnType;
 
-public final class MinDoubleAggregator extends AbstractUnaryAggregator {
+public final class MinDoubleAggregator extends AbstractUnaryAggregator implements MergeableAggregatorFunction, BlockAggregatorFunction {
 
     public static final ObjectFactory<Function> FACTORY = new ObjectFactory<Function>() {
         @Override
@@ -39,10 +43,17 @@ public final class MinDoubleAggregator extends AbstractUnaryAggregator {
         }
     };
 
+    private int columnIndex = -1;
+
     private MinDoubleAggregator() {
         super(ColumnType.DOUBLE);
     }
 
+    @Override
+    public boolean acceptsBlocks() {
+        return (columnIndex = argumentColumn(ColumnType.DOUBLE)) != -1;
+    }
+
     @Override
     public void calculate(Record rec, DirectMapValues values) {
         double v = value.getDouble(rec);
@@ -50,4 +61,36 @@ public final class MinDoubleAggregator extends AbstractUnaryAggregator {
             values.putDouble(valueIndex, v);
         }
     }
+
+    @Override
+    public void calculate(RecordBlock block, DirectMapValues values) {
+        final long address = block.getAddress(columnIndex);
+        final int[] rows = block.getRows();
+        final int n = block.size();
+        int i;
+        double v;
+        if (values.isNew()) {
+            v = Unsafe.getUnsafe().getDouble(address + ((long) Unsafe.arrayGet(rows, 0) << 3));
+            i = 1;
+        } else {
+            v = values.getDouble(valueIndex);
+            i = 0;
+        }
+
+        for (; i < n; i++) {
+            double x = Unsafe.getUnsafe().getDouble(address + ((long) Unsafe.arrayGet(rows, i) << 3));
+            if (x < v) {
+                v = x;
+            }
+        }
+        values.putDouble(valueIndex, v);
+    }
+
+    @Override
+    public void merge(DirectMapValues to, DirectMapValues from) {
+        double v = from.getDouble(valueIndex);
+        if (v < to.getDouble(valueIndex)) {
+            to.putDouble(valueIndex, v);
+        }
+    }
 }
@@ -23,14 +23,18 @@
 
 package com.questdb.ql.ops.sum;
 
+import com.questdb.misc.Unsafe;
+import com.questdb.ql.BlockAggregatorFunction;
+import com.questdb.ql.MergeableAggregatorFunction;
 import com.questdb.ql.Record;
+import com.questdb.ql.RecordBlock;
 import com.questdb.ql.impl.map.DirectMapValues;
 import com.questdb.ql.ops.AbstractUnaryAggregator;
 import com.questdb.ql.ops.Function;
 import com.questdb.std.ObjectFactory;
 import com.questdb.store.ColumnType;
 
-public final class SumDoubleAggregator extends AbstractUnaryAggregator {
+public final class SumDoubleAggregator extends AbstractUnaryAggregator implements MergeableAggregatorFunction, BlockAggregatorFunction {
 
     public static final ObjectFactory<Function> FACTORY = new ObjectFactory<Function>() {
         @Override
@@ -39,10 +43,17 @@ public final class SumDoubleAggregator extends AbstractUnaryAggregator {
         }
     };
 
+    private int columnIndex = -1;
+
     private SumDoubleAggregator() {
         super(ColumnType.DOUBLE);
     }
 
+    @Override
+    public boolean acceptsBlocks() {
+        return (columnIndex = argumentColumn(ColumnType.DOUBLE)) != -1;
+    }
+
     @Override
     public void calculate(Record rec, DirectMapValues values) {
         if (values.isNew()) {
@@ -51,4 +62,30 @@ public final class SumDoubleAggregator extends AbstractUnaryAggregator {
             values.putDouble(valueIndex, values.getDouble(valueIndex) + value.getDouble(rec));
         }
     }
+
+    @Override
+    public void calculate(RecordBlock block, DirectMapValues values) {
+        final long address = block.getAddress(columnIndex);
+        final int[] rows = block.getRows();
+        final int n = block.size();
+        int i;
+        double sum;
+        if (values.isNew()) {
+            sum = Unsafe.getUnsafe().getDouble(address + ((long) Unsafe.arrayGet(rows, 0) << 3));
+            i = 1;
+        } else {
+            sum = values.getDouble(valueIndex);
+            i = 0;
+        }
+
+        for (; i < n; i++) {
+            sum += Unsafe.getUnsafe().getDouble(address + ((long) Unsafe.arrayGet(rows, i) << 3));
+        }
+        values.putDouble(valueIndex, sum);
+    }
+
+    @Override
+    public void merge(DirectMapValues to, DirectMapValues from) {
+        to.putDouble(valueIndex, to.getDouble(valueIndex) + from.getDouble(valueIndex));
+    }
 }
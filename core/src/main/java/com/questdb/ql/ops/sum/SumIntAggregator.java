@@ -23,14 +23,18 @@
 
 package com.questdb.ql.ops.sum;
 
+import com.questdb.misc.Unsafe;
+import com.questdb.ql.BlockAggregatorFunction;
+import com.questdb.ql.MergeableAggregatorFunction;
 import com.questdb.ql.Record;
+import com.questdb.ql.RecordBlock;
 import com.questdb.ql.impl.map.DirectMapValues;
 import com.questdb.ql.ops.AbstractUnaryAggregator;
 import com.questdb.ql.ops.Function;
 import com.questdb.std.ObjectFactory;
 import com.questdb.store.ColumnType;
 
-public final class SumIntAggregator extends AbstractUnaryAggregator {
+public final class SumIntAggregator extends AbstractUnaryAggregator implements MergeableAggregatorFunction, BlockAggregatorFunction {
     public static final ObjectFactory<Function> FACTORY = new ObjectFactory<Function>() {
         @Override
         public Function newInstance() {
@@ -38,10 +42,17 @@ public final class SumIntAggregator extends AbstractUnaryAggregator {
         }
     };
 
+    private int columnIndex = -1;
+
     private SumIntAggregator() {
         super(ColumnType.INT);
     }
 
+    @Override
+    public boolean acceptsBlocks() {
+        return (columnIndex = argumentColumn(ColumnType.INT)) != -1;
+    }
+
     @Override
     public void calculate(Record rec, DirectMapValues values) {
         if (values.isNew()) {
@@ -50,4 +61,30 @@ public final class SumIntAggregator extends AbstractUnaryAggregator {
             values.putInt(valueIndex, values.getInt(valueIndex) + value.getInt(rec));
         }
     }
+
+    @Override
+    public void calculate(RecordBlock block, DirectMapValues values) {
+        final long address = block.getAddress(columnIndex);
+        final int[] rows = block.getRows();
+        final int n = block.size();
+        int i;
+        int sum;
+        if (values.isNew()) {
+            sum = Unsafe.getUnsafe().getInt(address + ((long) Unsafe.arrayGet(rows, 0) << 2));
+            i = 1;
+        } else {
+            sum = values.getInt(valueIndex);
+            i = 0;
+        }
+
+        for (; i < n; i++) {
+            sum += Unsafe.getUnsafe().getInt(address + ((long) Unsafe.arrayGet(rows, i) << 2));
+        }
+        values.putInt(valueIndex, sum);
+    }
+
+    @Override
+    public void merge(DirectMapValues to, DirectMapValues from) {
+        to.putInt(valueIndex, to.getInt(valueIndex) + from.getInt(valueIndex));
+    }
 }
@@ -0,0 +1,441 @@
+/*******************************************************************************
+ *    ___                  _   ____  ____
+ *   / _ \ _   _  ___  ___| |_|  _ \| __ )
+ *  | | | | | | |/ _ \/ __| __| | | |  _ \
+ *  | |_| | |_| |  __/\__ \ |_| |_| | |_) |
+ *   \__\_\\__,_|\___||___/\__|____/|____/
+ *
+ * Copyright (C) 2014-2016 Appsicle
+ *
+ * This program is free software: you can redistribute it and/or  modify
+ * it under the terms of the GNU Affero General Public License, version 3,
+ * as published by the Free Software Foundation.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ *
+ ******************************************************************************/
+
+
+package com.questdb.ql.parser;
+
+import com.questdb.ex.JournalRuntimeException;
+import com.questdb.ex.NumericException;
+import com.questdb.ex.ParserException;
+import com.questdb.factory.JournalReaderFactory;
+import com.questdb.factory.configuration.JournalConfiguration;
+import com.questdb.io.sink.StringSink;
+import com.questdb.misc.Chars;
+import com.questdb.misc.Files;
+import com.questdb.misc.Misc;
+import com.questdb.misc.Numbers;
+import com.questdb.misc.Unsafe;
+import com.questdb.ql.RecordSource;
+import com.questdb.ql.model.ExprNode;
+import com.questdb.ql.model.ParsedModel;
+import com.questdb.ql.model.QueryModel;
+import com.questdb.ql.ops.Parameter;
+import com.questdb.std.*;
+import com.questdb.std.ThreadLocal;
+import com.questdb.store.ColumnType;
+
+import java.io.Closeable;
+import java.util.IdentityHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Cache of compiled queries shared by all threads. Queries are keyed by their shape, which is
+ * query text with literal values replaced by literal types. Literals that compiler lifts into
+ * parameters are excluded from the key, so queries that differ only by such literals share compiled
+ * instances. Other literals, such as symbol keys and intervals, shape query plan and remain part of the key.
+ * <p>
+ * Compiled instance is used by one thread at a time. It is checked out by either {@link #poll} or
+ * {@link #compile} and must be returned to cache via {@link #put}. Each shape keeps pool of idle instances,
+ * so that concurrent queries of the same shape are served by as many instances as have been compiled for it.
+ * Instances are discarded when structure of any of journals they read has changed since compilation.
+ */
+public class QueryCache implements Closeable {
+    private static final ThreadLocal<Shape> tlShape = new ThreadLocal<>(Shape.FACTORY);
+    private static final ThreadLocal<CompositePath> tlPath = new ThreadLocal<>(CompositePath.FACTORY);
+    private final AssociativeCache<Pool> pools;
+    private final AssociativeCache<IntList> liftTypes;
+    private final IdentityHashMap<RecordSource, Entry> checkedOut = new IdentityHashMap<>();
+    private final AtomicLong hits = new AtomicLong();
+    private final AtomicLong misses = new AtomicLong();
+    private final AtomicLong invalidations = new AtomicLong();
+    private boolean closed = false;
+
+    public QueryCache(int blocks, int rows) {
+        this.pools = new AssociativeCache<>(blocks, rows);
+        this.liftTypes = new AssociativeCache<>(blocks, rows);
+    }
+
+    @Override
+    public synchronized void close() {
+        closed = true;
+        pools.close();
+        liftTypes.close();
+    }
+
+    /**
+     * Compiles query and checks out compiled instance. Literals that can be lifted into parameters
+     * are lifted, subsequent queries of the same shape will be served by {@link #poll}.
+     *
+     * @param compiler compiler of calling thread
+     * @param factory  journal reader factory
+     * @param query    query text
+     * @return compiled query bound to literals of query text
+     * @throws ParserException when query is invalid
+     */
+    public RecordSource compile(QueryCompiler compiler, JournalReaderFactory factory, CharSequence query) throws ParserException {
+        return compile(compiler, factory, query, compiler.parse(query));
+    }
+
+    /**
+     * Same as {@link #compile(QueryCompiler, JournalReaderFactory, CharSequence)} for query caller has already
+     * parsed with the same compiler.
+     *
+     * @param compiler compiler of calling thread
+     * @param factory  journal reader factory
+     * @param query    query text
+     * @param model    model compiler has parsed query text into
+     * @return compiled query bound to literals of query text
+     * @throws ParserException when query is invalid
+     */
+    public RecordSource compile(QueryCompiler compiler, JournalReaderFactory factory, CharSequence query, ParsedModel model) throws ParserException {
+        Shape shape = tlShape.get().of(query);
+        int n = shape.size();
+
+        IntIntHashMap liftSlots = new IntIntHashMap();
+        for (int i = 0; i < n; i++) {
+            liftSlots.put(shape.positions.getQuick(i), i);
+        }
+
+        IntList types = new IntList(n);
+        types.setAll(n, -1);
+
+        ObjList<String> journals = new ObjList<>();
+        if (model.isQuery()) {
+            collectJournals((QueryModel) model, journals);
+        }
+        LongList versions = new LongList(journals.size());
+        for (int i = 0, k = journals.size(); i < k; i++) {
+            versions.add(version(factory, journals.getQuick(i)));
+        }
+
+        RecordSource rs;
+        try {
+            rs = compiler.compile(factory, model, liftSlots, types);
+        } catch (ParserException e) {
+            // lifted query is not guaranteed to compile, e.g. when parameter ends up where constant is expected
+            types.setAll(n, -1);
+            rs = compiler.compile(factory, query);
+        }
+
+        ObjList<Parameter> params = new ObjList<>(n);
+        for (int i = 0; i < n; i++) {
+            params.add(types.getQuick(i) == -1 ? null : getParamQuiet(rs, QueryCompiler.liftedParamName(i)));
+        }
+
+        Entry e = new Entry(shape.key(types).toString(), rs, types, params, journals, versions);
+        e.bind(shape);
+
+        misses.incrementAndGet();
+        synchronized (this) {
+            // types are updated in place, removing them would leave hole in cache row
+            IntList current = liftTypes.peek(shape.text);
+            if (current == null) {
+                current = new IntList(n);
+                current.addAll(types);
+                liftTypes.put(shape.text.toString(), current);
+            } else if (!current.equals(types)) {
+                current.clear();
+                current.addAll(types);
+            }
+            checkedOut.put(rs, e);
+        }
+        return rs;
+    }
+
+    public long getHitCount() {
+        return hits.get();
+    }
+
+    public long getInvalidationCount() {
+        return invalidations.get();
+    }
+
+    public long getMissCount() {
+        return misses.get();
+    }
+
+    /**
+     * Checks out compiled instance of query of the same shape and binds it to literals of this query.
+     *
+     * @param factory journal reader factory
+     * @param query   query text
+     * @return compiled query or null if there is no valid instance available
+     */
+    public RecordSource poll(JournalReaderFactory factory, CharSequence query) {
+        Shape shape = tlShape.get().of(query);
+        Entry e;
+        synchronized (this) {
+            IntList types = liftTypes.peek(shape.text);
+            Pool pool = types == null ? null : pools.peek(shape.key(types));
+            e = pool == null ? null : pool.poll();
+        }
+
+        if (e == null) {
+            return null;
+        }
+
+        if (!e.isCurrent(factory)) {
+            invalidations.incrementAndGet();
+            Misc.free(e);
+            return null;
+        }
+
+        e.bind(shape);
+        hits.incrementAndGet();
+        synchronized (this) {
+            checkedOut.put(e.recordSource, e);
+        }
+        return e.recordSource;
+    }
+
+    /**
+     * Returns checked out instance to cache. Instances that were not checked out from this cache are closed.
+     *
+     * @param recordSource compiled query
+     */
+    public synchronized void put(RecordSource recordSource) {
+        Entry e = checkedOut.remove(recordSource);
+        if (e == null) {
+            Misc.free(recordSource);
+        } else if (closed) {
+            Misc.free(e);
+        } else {
+            Pool pool = pools.peek(e.key);
+            if (pool == null) {
+                pools.put(e.key, pool = new Pool());
+            }
+            pool.entries.add(e);
+        }
+    }
+
+    private static void collectJournals(QueryModel model, ObjList<String> journals) {
+        if (model == null) {
+            return;
+        }
+
+        ExprNode name = model.getJournalName();
+        if (name != null) {
+            journals.add(QueryModel.stripMarker(Chars.stripQuotes(name.token)));
+        }
+        collectJournals(model.getNestedModel(), journals);
+
+        ObjList<QueryModel> joinModels = model.getJoinModels();
+        for (int i = 1, n = joinModels.size(); i < n; i++) {
+            collectJournals(joinModels.getQuick(i), journals);
+        }
+    }
+
+    private static Parameter getParamQuiet(RecordSource rs, CharSequence name) {
+        try {
+            return rs.getParam(name);
+        } catch (JournalRuntimeException e) {
+            // lifted literal was optimised away
+            return null;
+        }
+    }
+
+    /**
+     * Identity of journal structure, which is checksum of journal metadata file. Modification time of the file
+     * cannot be used: it has one second resolution, while journal can be dropped and recreated within a second.
+     *
+     * @param factory journal reader factory
+     * @param journal journal name
+     * @return checksum of metadata or -1 when journal does not exist
+     */
+    private static long version(JournalReaderFactory factory, String journal) {
+        CompositePath path = tlPath.get().of(factory.getConfiguration().getJournalBase().getAbsolutePath()).concat(journal).concat(JournalConfiguration.FILE_NAME).$();
+        long fd = Files.openRO(path);
+        if (fd < 0) {
+            return -1;
+        }
+
+        try {
+            long len = Files.length(path);
+            long buf = Unsafe.malloc(len);
+            try {
+                if (Files.read(fd, buf, (int) len, 0) != len) {
+                    return -1;
+                }
+
+                long h = len;
+                long p = buf;
+                long hi = buf + len;
+                for (; p + 8 <= hi; p += 8) {
+                    h = h * 31 + Unsafe.getUnsafe().getLong(p);
+                }
+                for (; p < hi; p++) {
+                    h = h * 31 + Unsafe.getUnsafe().getByte(p);
+                }
+                return h;
+            } finally {
+                Unsafe.free(buf, len);
+            }
+        } finally {
+            Files.close(fd);
+        }
+    }
+
+    private static class Entry implements Closeable {
+        private final String key;
+        private final RecordSource recordSource;
+        private final IntList types;
+        private final ObjList<Parameter> params;
+        private final ObjList<String> journals;
+        private final LongList versions;
+
+        private Entry(String key, RecordSource recordSource, IntList types, ObjList<Parameter> params, ObjList<String> journals, LongList versions) {
+            this.key = key;
+            this.recordSource = recordSource;
+            this.types = types;
+            this.params = params;
+            this.journals = journals;
+            this.versions = versions;
+        }
+
+        @Override
+        public void close() {
+            Misc.free(recordSource);
+        }
+
+        private void bind(Shape shape) {
+            for (int i = 0, n = types.size(); i < n; i++) {
+                Parameter p = params.getQuick(i);
+                if (p == null) {
+                    continue;
+                }
+
+                String value = shape.values.getQuick(i);
+                try {
+                    switch (types.getQuick(i)) {
+                        case ColumnType.INT:
+                            p.set(Numbers.parseInt(value));
+                            break;
+                        case ColumnType.LONG:
+                            p.set(Numbers.parseLong(value));
+                            break;
+                        case ColumnType.DOUBLE:
+                            p.set(Numbers.parseDouble(value));
+                            break;
+                        case ColumnType.STRING:
+                            p.set(Chars.stripQuotes(value));
+                            break;
+                        default:
+                            break;
+                    }
+                } catch (NumericException e) {
+                    // literal type is part of query shape
+                    throw new IllegalStateException(value);
+                }
+            }
+        }
+
+        private boolean isCurrent(JournalReaderFactory factory) {
+            for (int i = 0, n = journals.size(); i < n; i++) {
+                if (version(factory, journals.getQuick(i)) != versions.getQuick(i)) {
+                    return false;
+                }
+            }
+            return true;
+        }
+    }
+
+    /**
+     * Idle instances of one query shape.
+     */
+    private static class Pool implements Closeable {
+        private final ObjList<Entry> entries = new ObjList<>();
+
+        @Override
+        public void close() {
+            for (int i = 0, n = entries.size(); i < n; i++) {
+                Misc.free(entries.getQuick(i));
+            }
+            entries.clear();
+        }
+
+        private Entry poll() {
+            int n = entries.size();
+            if (n == 0) {
+                return null;
+            }
+            Entry e = entries.getQuick(n - 1);
+            entries.remove(n - 1);
+            return e;
+        }
+    }
+
+    private static class Shape {
+        private static final ObjectFactory<Shape> FACTORY = new ObjectFactory<Shape>() {
+            @Override
+            public Shape newInstance() {
+                return new Shape();
+            }
+        };
+
+        private final Lexer lexer = new Lexer();
+        private final StringSink text = new StringSink();
+        private final StringSink key = new StringSink();
+        private final IntList positions = new IntList();
+        private final ObjList<String> values = new ObjList<>();
+
+        private Shape() {
+            // defines the same symbols query parser does
+            new ExprParser(lexer, new ObjectPool<>(ExprNode.FACTORY, 1));
+        }
+
+        private CharSequence key(IntList types) {
+            key.clear();
+            key.put(text);
+            for (int i = 0, n = types.size(); i < n; i++) {
+                if (types.getQuick(i) == -1) {
+                    key.put('\u0000').put(values.getQuick(i));
+                }
+            }
+            return key;
+        }
+
+        private Shape of(CharSequence query) {
+            text.clear();
+            positions.clear();
+            values.clear();
+            lexer.setContent(query);
+            CharSequence tok;
+            while ((tok = lexer.optionTok()) != null) {
+                int type = QueryCompiler.literalType(tok);
+                if (type == -1) {
+                    text.put(tok);
+                } else {
+                    positions.add(lexer.position());
+                    values.add(tok.toString());
+                    text.put('?').put(type);
+                }
+                text.put(' ');
+            }
+            return this;
+        }
+
+        private int size() {
+            return positions.size();
+        }
+    }
+}
@@ -39,6 +39,7 @@ import com.questdb.ql.*;
 import com.questdb.ql.impl.*;
 import com.questdb.ql.impl.aggregation.*;
 import com.questdb.ql.impl.analytic.*;
+import com.questdb.ql.impl.filter.FilterCompiler;
 import com.questdb.ql.impl.interval.IntervalRecordSource;
 import com.questdb.ql.impl.interval.MultiIntervalPartitionSource;
 import com.questdb.ql.impl.interval.SingleIntervalSource;
@@ -46,12 +47,15 @@ import com.questdb.ql.impl.join.AsOfJoinRecordSource;
 import com.questdb.ql.impl.join.AsOfPartitionedJoinRecordSource;
 import com.questdb.ql.impl.join.CrossJoinRecordSource;
 import com.questdb.ql.impl.join.HashJoinRecordSource;
+import com.questdb.ql.impl.join.MergeJoinRecordSource;
+import com.questdb.ql.impl.join.ParallelAsOfJoinRecordSource;
 import com.questdb.ql.impl.lambda.*;
 import com.questdb.ql.impl.latest.*;
 import com.questdb.ql.impl.select.SelectedColumnsRecordSource;
 import com.questdb.ql.impl.sort.ComparatorCompiler;
-import com.questdb.ql.impl.sort.RBTreeSortedRecordSource;
+import com.questdb.ql.impl.sort.RadixSortedRecordSource;
 import com.questdb.ql.impl.sort.RecordComparator;
+import com.questdb.ql.impl.sort.TopKRecordSource;
 import com.questdb.ql.impl.sys.SysFactories;
 import com.questdb.ql.impl.sys.SystemViewFactory;
 import com.questdb.ql.impl.virtual.VirtualColumnRecordSource;
@@ -64,18 +68,21 @@ import com.questdb.ql.ops.constant.LongConstant;
 import com.questdb.std.*;
 import com.questdb.store.ColumnType;
 
+import java.io.File;
 import java.util.ArrayDeque;
 
 public class QueryCompiler {
 
-    private static final CharSequenceObjHashMap<Parameter> EMPTY_PARAMS = new CharSequenceObjHashMap<>();
     private final static CharSequenceHashSet nullConstants = new CharSequenceHashSet();
+    private final static CharSequenceHashSet liftableOperators = new CharSequenceHashSet();
     private final static ObjObjHashMap<Signature, LatestByLambdaRowSourceFactory> LAMBDA_ROW_SOURCE_FACTORIES = new ObjObjHashMap<>();
     private final static LongConstant LONG_ZERO_CONST = new LongConstant(0L);
     private final static IntHashSet joinBarriers;
     private static final int ORDER_BY_UNKNOWN = 0;
     private static final int ORDER_BY_REQUIRED = 1;
     private static final int ORDER_BY_INVARIANT = 2;
+    // directory under journal root, which receives memory of queries over budget
+    private static final String SPILL_DIR = ".spill";
     private final QueryParser parser = new QueryParser();
     private final QueryFilterAnalyser queryFilterAnalyser = new QueryFilterAnalyser();
     private final StringSink columnNameAssembly = new StringSink();
@@ -121,12 +128,18 @@ public class QueryCompiler {
     private final ObjList<AnalyticColumn> analyticColumns = new ObjList<>();
     private final ObjHashSet<String> groupKeyColumns = new ObjHashSet<>();
     private final ComparatorCompiler cc = new ComparatorCompiler();
+    private final FilterCompiler filterCompiler = new FilterCompiler();
     private final LiteralMatcher literalMatcher = new LiteralMatcher(traversalAlgo);
     private final ServerConfiguration configuration;
     private final ObjObjHashMap<IntList, ObjList<AnalyticFunction>> grouppedAnalytic = new ObjObjHashMap<>();
     private final CopyHelperCompiler copyHelperCompiler = new CopyHelperCompiler();
     private ObjList<JoinContext> emittedJoinClauses;
     private int aggregateColumnSequence;
+    private QueryWorkerPool workerPool;
+    private MemoryBudget memoryBudget;
+    private CharSequenceObjHashMap<Parameter> parameterMap;
+    private IntIntHashMap liftSlots;
+    private IntList liftTypes;
 
 
     public QueryCompiler() {
@@ -145,13 +158,36 @@ public class QueryCompiler {
     }
 
     public RecordSource compile(JournalReaderFactory factory, ParsedModel model) throws ParserException {
+        return compile(factory, model, null, null);
+    }
+
+    /**
+     * Compiles query model, replacing literals that do not affect query plan with parameters.
+     * Only literals of residual filters compared to columns of matching type and limit values are lifted,
+     * literals consumed by intrinsic analysis (key lookups, intervals) remain part of the plan.
+     *
+     * @param factory    journal reader factory
+     * @param model      query model
+     * @param liftSlots  map of literal position in query text to slot number or null when lifting is off
+     * @param liftTypes  receives parameter type for each lifted slot, other slots are left untouched
+     * @return record source with lifted literals exposed as parameters named by {@link #liftedParamName(int)}
+     * @throws ParserException when query is invalid
+     */
+    RecordSource compile(JournalReaderFactory factory, ParsedModel model, IntIntHashMap liftSlots, IntList liftTypes) throws ParserException {
         if (model.isQuery()) {
             clearState();
-            final QueryModel qm = (QueryModel) model;
-            qm.setParameterMap(EMPTY_PARAMS);
-            RecordSource rs = compile(qm, factory);
-            rs.setParameterMap(EMPTY_PARAMS);
-            return rs;
+            // parameters belong to compiled record source, which can outlive query model
+            CharSequenceObjHashMap<Parameter> parameterMap = resetParameterMap();
+            this.liftSlots = liftSlots;
+            this.liftTypes = liftTypes;
+            try {
+                RecordSource rs = compile((QueryModel) model, factory);
+                rs.setParameterMap(parameterMap);
+                return rs;
+            } finally {
+                this.liftSlots = null;
+                this.liftTypes = null;
+            }
         }
         throw new IllegalArgumentException("QueryModel expected");
     }
@@ -161,6 +197,7 @@ public class QueryCompiler {
             throw new IllegalArgumentException("Statement expected");
         }
         clearState();
+        resetParameterMap();
         CreateJournalModel cm = (CreateJournalModel) model;
 
         final String name = cm.getName().token;
@@ -271,6 +308,16 @@ public class QueryCompiler {
         return parser.parse(statement);
     }
 
+    /**
+     * Enables parallel execution of eligible aggregations on given pool. Pool is shared and is not
+     * closed by compiler.
+     *
+     * @param workerPool pool of query workers or null to execute queries on calling thread only
+     */
+    public void setWorkerPool(QueryWorkerPool workerPool) {
+        this.workerPool = workerPool;
+    }
+
     private static void validateAndSetPartitionBy(JournalStructure struct, ExprNode partitionBy) throws ParserException {
         if (partitionBy == null) {
             return;
@@ -305,10 +352,85 @@ public class QueryCompiler {
         struct.$ts(index);
     }
 
+    private static boolean isFullScan(RowSource rs) {
+        if (rs instanceof FilteredRowSource) {
+            rs = ((FilteredRowSource) rs).getDelegate();
+        }
+        return rs.getClass() == AllRowSource.class;
+    }
+
     private static Signature lbs(int masterType, boolean indexed, int lambdaType) {
         return new Signature().setName("").setParamCount(2).paramType(0, masterType, indexed).paramType(1, lambdaType, false);
     }
 
+    static String liftedParamName(int slot) {
+        return ":$" + slot;
+    }
+
+    /**
+     * Type of parameter lifted literal is bound to when compared to column of given type. Type
+     * must select the same function as literal itself would, otherwise literal is not lifted.
+     *
+     * @return parameter type or -1 when literal cannot be lifted
+     */
+    private static int liftedType(int columnType, CharSequence token) {
+        int literalType = literalType(token);
+        switch (columnType) {
+            case ColumnType.DOUBLE:
+            case ColumnType.FLOAT:
+                return literalType == ColumnType.STRING ? -1 : ColumnType.DOUBLE;
+            case ColumnType.LONG:
+                return literalType == ColumnType.INT || literalType == ColumnType.LONG ? ColumnType.LONG : -1;
+            case ColumnType.INT:
+                return literalType == ColumnType.INT ? ColumnType.INT : -1;
+            case ColumnType.STRING:
+                return literalType == ColumnType.STRING ? ColumnType.STRING : -1;
+            default:
+                return -1;
+        }
+    }
+
+    /**
+     * Type of numeric or quoted string literal, resolved the same way constants of
+     * virtual columns are.
+     *
+     * @return column type or -1 when token is not a literal value
+     */
+    static int literalType(CharSequence token) {
+        if (token.length() == 0) {
+            return -1;
+        }
+
+        char c = token.charAt(0);
+        if (c == '\'') {
+            return ColumnType.STRING;
+        }
+
+        // NaN and null are not values
+        if (c < '0' || c > '9') {
+            return -1;
+        }
+
+        try {
+            Numbers.parseInt(token);
+            return ColumnType.INT;
+        } catch (NumericException ignore) {
+        }
+
+        try {
+            Numbers.parseLong(token);
+            return ColumnType.LONG;
+        } catch (NumericException ignore) {
+        }
+
+        try {
+            Numbers.parseDouble(token);
+            return ColumnType.DOUBLE;
+        } catch (NumericException ignore) {
+        }
+        return -1;
+    }
+
     private static IntHashSet toIntHashSet(IntrinsicModel im) throws ParserException {
         IntHashSet set = null;
         for (int i = 0, n = im.keyValues.size(); i < n; i++) {
@@ -714,6 +836,9 @@ public class QueryCompiler {
     }
 
     private RecordSource compile(QueryModel model, JournalReaderFactory factory) throws ParserException {
+        // all hash maps, sort trees and record lists of query share one budget
+        final long budget = configuration.getDbQueryMemoryBudget();
+        memoryBudget = budget > 0 ? new MemoryBudget(budget, new File(factory.getConfiguration().getJournalBase(), SPILL_DIR)) : null;
         optimiseOrderBy(model, ORDER_BY_UNKNOWN);
         optimiseSubQueries(model, factory);
         createOrderHash(model);
@@ -743,7 +868,7 @@ public class QueryCompiler {
 
         RecordSource out;
         if (sampleBy == null) {
-            out = new AggregatedRecordSource(rs, groupKeyColumns, af, configuration.getDbAggregatePage());
+            out = new AggregatedRecordSource(rs, groupKeyColumns, af, configuration.getDbAggregatePage(), workerPool, configuration.getDbParallelSliceRows(), memoryBudget);
         } else {
             TimestampSampler sampler = SamplerFactory.from(sampleBy.token);
             if (sampler == null) {
@@ -755,7 +880,12 @@ public class QueryCompiler {
                     groupKeyColumns,
                     af,
                     sampler,
-                    configuration.getDbAggregatePage());
+                    configuration.getDbAggregatePage(),
+                    memoryBudget);
+
+            if (model.getSampleByFill().size() > 0) {
+                out = compileFill(out, model, sampler);
+            }
         }
         return out;
     }
@@ -876,10 +1006,61 @@ public class QueryCompiler {
         }
     }
 
+    private RecordSource compileFill(RecordSource rs, QueryModel model, TimestampSampler sampler) throws ParserException {
+        final ObjList<ExprNode> fill = model.getSampleByFill();
+        final int n = aggregators.size();
+        final RecordMetadata metadata = rs.getMetadata();
+
+        try {
+            if (fill.size() != 1 && fill.size() != n) {
+                throw QueryError.$(fill.getQuick(0).position, "Expected fill value for each aggregate column");
+            }
+
+            // value columns of resampled source precede sample timestamp and internal columns
+            // of aggregator precede its visible column
+            int split = metadata.getColumnIndex(aggregators.getQuick(n - 1).getAlias()) + 1;
+            IntList modes = new IntList(split);
+            double[] values = new double[split];
+            boolean keyed = metadata.getColumnCount() > split + 1;
+
+            for (int i = 0, col = 0; i < n; i++) {
+                ExprNode node = fill.getQuick(fill.size() == 1 ? 0 : i);
+                int mode;
+                double value = 0;
+
+                if (Chars.equalsIgnoreCase(node.token, "null")) {
+                    mode = FillRecordSource.FILL_NULL;
+                } else if (Chars.equalsIgnoreCase(node.token, "prev")) {
+                    mode = FillRecordSource.FILL_PREV;
+                } else if (Chars.equalsIgnoreCase(node.token, "linear")) {
+                    if (keyed) {
+                        throw QueryError.$(node.position, "Linear fill is not supported for keyed sample");
+                    }
+                    mode = FillRecordSource.FILL_LINEAR;
+                } else {
+                    mode = FillRecordSource.FILL_VALUE;
+                    value = fillConstant(node);
+                }
+
+                for (int k = metadata.getColumnIndex(aggregators.getQuick(i).getAlias()); col <= k; col++) {
+                    modes.add(mode);
+                    values[col] = value;
+                }
+            }
+
+            return new FillRecordSource(rs, sampler, modes, values, configuration.getDbAggregatePage(), memoryBudget);
+        } catch (ParserException e) {
+            Misc.free(rs);
+            throw e;
+        }
+    }
+
     private RecordSource compileJoins(QueryModel model, JournalReaderFactory factory) throws ParserException {
         ObjList<QueryModel> joinModels = model.getJoinModels();
         IntList ordered = model.getOrderedJoinModels();
         RecordSource master = null;
+        // joins preserve order of master, which allows time joins to be merged
+        boolean timestampOrdered = false;
 
         boolean needColumnNameHistogram = model.getColumns().size() > 0;
 
@@ -907,6 +1088,7 @@ public class QueryCompiler {
             // check if this is the root of joins
             if (master == null) {
                 master = slave;
+                timestampOrdered = isTimestampOrdered(m);
             } else {
                 // not the root, join to "master"
                 switch (m.getJoinType()) {
@@ -918,7 +1100,7 @@ public class QueryCompiler {
                         master = createAsOfJoin(model.getTimestamp(), m, master, slave);
                         break;
                     default:
-                        master = createHashJoin(m, master, slave);
+                        master = createHashJoin(m, master, slave, timestampOrdered && isTimestampOrdered(m));
                         break;
                 }
             }
@@ -926,7 +1108,7 @@ public class QueryCompiler {
             // check if there are post-filters
             ExprNode filter = m.getPostJoinWhereClause();
             if (filter != null) {
-                master = new FilteredRecordSource(master, virtualColumnBuilder.createVirtualColumn(model, filter, master.getMetadata()), filter);
+                master = new FilteredRecordSource(master, filterCompiler.compile(virtualColumnBuilder.createVirtualColumn(model, filter, master.getMetadata())), filter);
             }
         }
 
@@ -1008,6 +1190,7 @@ public class QueryCompiler {
         ExprNode where = model.getWhereClause();
         if (where != null) {
             IntrinsicModel im = queryFilterAnalyser.extract(where, journalMetadata, latestByCol);
+            liftLiterals(im.filter, journalMetadata);
 
             VirtualColumn filter = im.filter != null ? virtualColumnBuilder.createVirtualColumn(model, im.filter, journalMetadata) : null;
 
@@ -1045,7 +1228,9 @@ public class QueryCompiler {
                 }
 
                 if (latestByCol == null) {
-                    if (im.keyColumn != null) {
+                    if (im.bitmapFilter != null) {
+                        rs = new BitmapIndexRowSource(im.bitmapFilter);
+                    } else if (im.keyColumn != null) {
                         switch (journalMetadata.getColumn(im.keyColumn).getType()) {
                             case ColumnType.SYMBOL:
                                 rs = buildRowSourceForSym(im);
@@ -1065,7 +1250,11 @@ public class QueryCompiler {
                     }
 
                     if (filter != null) {
-                        rs = new FilteredRowSource(rs == null ? new AllRowSource() : rs, filter);
+                        if (im.ranges != null) {
+                            // keyed row sources look up their rows per slice, keep slices whole for them
+                            ps = new StatisticsPartitionSource(ps, im.ranges, rs == null);
+                        }
+                        rs = new FilteredRowSource(rs == null ? new AllRowSource() : rs, filterCompiler.compile(filter));
                     }
                 } else {
                     if (im.keyColumn != null && im.keyValuesIsLambda) {
@@ -1160,7 +1349,32 @@ public class QueryCompiler {
             }
         }
 
-        RecordSource recordSource = new JournalRecordSource(ps, rs == null ? new AllRowSource() : rs);
+        if (rs == null) {
+            rs = new AllRowSource();
+        }
+
+        RecordSource recordSource = new JournalRecordSource(ps, rs);
+
+        // journal rows are usually stored in timestamp order, in which case full scan or reverse scan
+        // serves order by timestamp without sorting; sort is kept for journals, which turn out unordered
+        int timestampOrder = timestampOrder(model, journalMetadata);
+        if (timestampOrder != -1 && isFullScan(rs)) {
+            model.getOrderBy().clear();
+
+            IntList orderIndices = intListPool.next();
+            int index = journalMetadata.getTimestampIndex() + 1;
+            RecordSource scan;
+            if (timestampOrder == QueryModel.ORDER_DIRECTION_DESCENDING) {
+                orderIndices.add(-index);
+                scan = new JournalRecordSource(new ReversePartitionSource(ps),
+                        rs instanceof FilteredRowSource ? new FilteredRowSource(new ReverseAllRowSource(), ((FilteredRowSource) rs).getFilter()) : new ReverseAllRowSource());
+            } else {
+                orderIndices.add(index);
+                scan = new JournalRecordSource(ps, rs);
+            }
+            recordSource = new TimestampScanRecordSource(ps, scan, sort(recordSource, orderIndices, model));
+        }
+
         if (QueryModel.hasMarker(model.getJournalName().token)) {
             return new NoRowIdRecordSource().of(recordSource);
         }
@@ -1282,8 +1496,30 @@ public class QueryCompiler {
         int masterTimestampIndex = getTimestampIndex(model, masterTimestampNode, masterMetadata);
 
         if (jc == null) {
+            RecordSource rs = ParallelAsOfJoinRecordSource.create(workerPool, configuration.getDbParallelSliceRows(), master, masterTimestampIndex, slave, slaveTimestampIndex, null, null, false);
+            if (rs != null) {
+                return rs;
+            }
             return new AsOfJoinRecordSource(master, masterTimestampIndex, slave, slaveTimestampIndex);
         } else {
+            if (jc.aNames.size() < 2) {
+                boolean keyed = jc.aNames.size() == 1;
+                RecordSource rs = ParallelAsOfJoinRecordSource.create(
+                        workerPool,
+                        configuration.getDbParallelSliceRows(),
+                        master,
+                        masterTimestampIndex,
+                        slave,
+                        slaveTimestampIndex,
+                        keyed ? jc.bNames.getQuick(0) : null,
+                        keyed ? jc.aNames.getQuick(0) : null,
+                        true
+                );
+                if (rs != null) {
+                    return rs;
+                }
+            }
+
             int sz = jc.aNames.size();
             CharSequenceHashSet slaveKeys = new CharSequenceHashSet();
             CharSequenceHashSet masterKeys = new CharSequenceHashSet();
@@ -1306,13 +1542,16 @@ public class QueryCompiler {
         }
     }
 
-    private RecordSource createHashJoin(QueryModel model, RecordSource master, RecordSource slave) throws ParserException {
+    private RecordSource createHashJoin(QueryModel model, RecordSource master, RecordSource slave, boolean ordered) throws ParserException {
         JoinContext jc = model.getContext();
         RecordMetadata bm = master.getMetadata();
         RecordMetadata am = slave.getMetadata();
+        ExprNode tolerance = model.getJoinTolerance();
 
         IntList masterColIndices = null;
         IntList slaveColIndices = null;
+        // join on timestamps of sources ordered by timestamp is merged rather than hashed
+        boolean merge = false;
 
         for (int k = 0, kn = jc.aIndexes.size(); k < kn; k++) {
 
@@ -1334,9 +1573,34 @@ public class QueryCompiler {
                 slaveColIndices = new IntList();
             }
 
+            if (ordered && !merge && ia == am.getTimestampIndex() && ib == bm.getTimestampIndex() && slave.supportsRowIdAccess()) {
+                merge = true;
+                continue;
+            }
+
             masterColIndices.add(ib);
             slaveColIndices.add(ia);
         }
+
+        if (merge) {
+            return new MergeJoinRecordSource(
+                    master,
+                    bm.getTimestampIndex(),
+                    masterColIndices,
+                    slave,
+                    am.getTimestampIndex(),
+                    slaveColIndices,
+                    tolerance == null ? 0 : toleranceMillis(tolerance, master, slave),
+                    model.getJoinType() == QueryModel.JOIN_OUTER
+            );
+        }
+
+        if (tolerance != null) {
+            Misc.free(master);
+            Misc.free(slave);
+            throw QueryError.$(tolerance.position, "Tolerance requires join on timestamps of ordered journals");
+        }
+
         return new HashJoinRecordSource(master,
                 masterColIndices,
                 slave,
@@ -1344,7 +1608,8 @@ public class QueryCompiler {
                 model.getJoinType() == QueryModel.JOIN_OUTER,
                 configuration.getDbHashKeyPage(),
                 configuration.getDbHashDataPage(),
-                configuration.getDbHashRowPage()
+                configuration.getDbHashRowPage(),
+                memoryBudget
         );
     }
 
@@ -1440,6 +1705,24 @@ public class QueryCompiler {
         return dot == -1 ? token : csPool.next().of(token, dot + 1, token.length() - dot - 1);
     }
 
+    private double fillConstant(ExprNode node) throws ParserException {
+        ExprNode c = node;
+        boolean negative = false;
+        if (node.type == ExprNode.OPERATION && node.paramCount == 1 && Chars.equals(node.token, '-')) {
+            c = node.rhs;
+            negative = true;
+        }
+
+        if (c != null && c.type == ExprNode.CONSTANT) {
+            try {
+                double d = Numbers.parseDouble(c.token);
+                return negative ? -d : d;
+            } catch (NumericException ignore) {
+            }
+        }
+        throw QueryError.$(node.position, "Invalid fill value");
+    }
+
     private RecordSource filter(QueryModel model, RecordSource rs) throws ParserException {
         if (model.getWhereClause() == null) {
             return rs;
@@ -1461,6 +1744,7 @@ public class QueryCompiler {
         }
 
         if (im.filter != null) {
+            liftLiterals(im.filter, m);
             VirtualColumn vc = virtualColumnBuilder.createVirtualColumn(model, im.filter, m);
             if (vc.isConstant()) {
                 if (vc.getBool(null)) {
@@ -1469,7 +1753,7 @@ public class QueryCompiler {
                     return new NoOpJournalRecordSource(rs);
                 }
             }
-            return new FilteredRecordSource(rs, vc, im.filter);
+            return new FilteredRecordSource(rs, filterCompiler.compile(vc), im.filter);
         } else {
             return rs;
         }
@@ -1575,6 +1859,11 @@ public class QueryCompiler {
         }
     }
 
+    private boolean isTimestampOrdered(QueryModel model) {
+        // journal is read in timestamp order unless it is narrowed down to latest records
+        return model.getJournalName() != null && model.getLatestBy() == null;
+    }
+
     private boolean joinModelIsFalse(QueryModel model) throws ParserException {
         ExprNode current = null;
         IntHashSet constants = model.getParsedWhereConsts();
@@ -1599,6 +1888,49 @@ public class QueryCompiler {
         }
     }
 
+    private boolean liftLiteral(ExprNode node, int type) {
+        if (liftSlots == null || type == -1) {
+            return false;
+        }
+
+        int slot = liftSlots.get(node.position);
+        if (slot == -1) {
+            return false;
+        }
+
+        node.type = ExprNode.LITERAL;
+        node.token = liftedParamName(slot);
+        liftTypes.setQuick(slot, type);
+        return true;
+    }
+
+    private boolean liftLiteral(ExprNode constant, ExprNode column, RecordMetadata m) {
+        if (constant.type != ExprNode.CONSTANT || column.type != ExprNode.LITERAL) {
+            return false;
+        }
+
+        int index = m.getColumnIndexQuiet(column.token);
+        return index != -1 && liftLiteral(constant, liftedType(m.getColumnQuick(index).getType(), constant.token));
+    }
+
+    private void liftLiterals(ExprNode node, RecordMetadata m) {
+        if (liftSlots == null || node == null) {
+            return;
+        }
+
+        if (node.paramCount < 3) {
+            if (node.paramCount == 2 && liftableOperators.contains(node.token) && !liftLiteral(node.rhs, node.lhs, m)) {
+                liftLiteral(node.lhs, node.rhs, m);
+            }
+            liftLiterals(node.lhs, m);
+            liftLiterals(node.rhs, m);
+        } else {
+            for (int i = 0, n = node.args.size(); i < n; i++) {
+                liftLiterals(node.args.getQuick(i), m);
+            }
+        }
+    }
+
     private RecordSource limit(RecordSource rs, QueryModel model) {
         if (model.getLimitLoVc() == null || model.getLimitHiVc() == null) {
             return rs;
@@ -1611,10 +1943,14 @@ public class QueryCompiler {
         switch (node.type) {
             case ExprNode.LITERAL:
                 if (Chars.startsWith(node.token, ':')) {
-                    return Parameter.getOrCreate(node, model.getParameterMap());
+                    return Parameter.getOrCreate(node, parameterMap);
                 }
                 break;
             case ExprNode.CONSTANT:
+                int type = literalType(node.token);
+                if ((type == ColumnType.INT || type == ColumnType.LONG) && liftLiteral(node, ColumnType.LONG)) {
+                    return Parameter.getOrCreate(node, parameterMap);
+                }
                 try {
                     return new LongConstant(Numbers.parseLong(node.token));
                 } catch (NumericException e) {
@@ -1935,14 +2271,7 @@ public class QueryCompiler {
         ObjList<ExprNode> orderBy = model.getOrderBy();
         if (orderBy.size() > 0) {
             try {
-                RecordMetadata m = rs.getMetadata();
-                return new RBTreeSortedRecordSource(rs,
-                        cc.compile(
-                                m,
-                                toOrderIndices(m, orderBy, model.getOrderByDirection())
-                        ),
-                        configuration.getDbSortKeyPage(),
-                        configuration.getDbSortDataPage());
+                return sort(rs, toOrderIndices(rs.getMetadata(), orderBy, model.getOrderByDirection()), model);
             } catch (ParserException e) {
                 Misc.free(rs);
                 throw e;
@@ -2191,6 +2520,12 @@ public class QueryCompiler {
         optimiseJoins(model, factory);
     }
 
+    private CharSequenceObjHashMap<Parameter> resetParameterMap() {
+        parameterMap = new CharSequenceObjHashMap<>();
+        virtualColumnBuilder.setParameterMap(parameterMap);
+        return parameterMap;
+    }
+
     private void resolveJoinMetadata(QueryModel parent, int index, JournalReaderFactory factory) throws ParserException {
         QueryModel model = parent.getJoinModels().getQuick(index);
         RecordMetadata metadata;
@@ -2382,6 +2717,24 @@ public class QueryCompiler {
         return rs;
     }
 
+    private RecordSource sort(RecordSource rs, @Transient IntList orderIndices, QueryModel model) {
+        RecordMetadata m = rs.getMetadata();
+        // limit needs only first "hi" records in order, offset is still applied by limit()
+        if (model.getLimitHiVc() != null) {
+            return new TopKRecordSource(rs,
+                    cc.compile(m, orderIndices),
+                    model.getLimitHiVc(),
+                    configuration.getDbSortDataPage(),
+                    memoryBudget);
+        }
+        return new RadixSortedRecordSource(rs,
+                orderIndices,
+                cc.compile(m, orderIndices),
+                configuration.getDbSortKeyPage(),
+                configuration.getDbSortDataPage(),
+                memoryBudget);
+    }
+
     private void splitAggregates(@Transient ExprNode node, ObjList<QueryColumn> aggregateColumns) {
 
         this.exprNodeStack.clear();
@@ -2457,6 +2810,49 @@ public class QueryCompiler {
         return true;
     }
 
+    /**
+     * Checks if model is ordered by journal timestamp alone. Order is only useful when there is
+     * no aggregation or analytic functions between journal and order clause.
+     *
+     * @param model    journal model
+     * @param metadata journal metadata
+     * @return direction of order or -1 when model is not ordered by timestamp
+     */
+    private int timestampOrder(QueryModel model, JournalMetadata metadata) {
+        ObjList<ExprNode> orderBy = model.getOrderBy();
+        int timestampIndex = metadata.getTimestampIndex();
+        if (orderBy.size() != 1 || timestampIndex == -1 || model.getSampleBy() != null) {
+            return -1;
+        }
+
+        CharSequence column = orderBy.getQuick(0).token;
+        ObjList<QueryColumn> columns = model.getColumns();
+        if (columns.size() > 0) {
+            CharSequence selected = null;
+            for (int i = 0, n = columns.size(); i < n; i++) {
+                QueryColumn qc = columns.getQuick(i);
+                ExprNode node = qc.getAst();
+                if (qc instanceof AnalyticColumn || hasAggregates(node)) {
+                    return -1;
+                }
+
+                if (Chars.equals(qc.getAlias() == null ? node.token : qc.getAlias(), column)) {
+                    if (node.type != ExprNode.LITERAL) {
+                        return -1;
+                    }
+                    selected = node.token;
+                }
+            }
+
+            if (selected == null) {
+                return -1;
+            }
+            column = selected;
+        }
+
+        return metadata.getColumnIndexQuiet(column) == timestampIndex ? model.getOrderByDirection().getQuick(0) : -1;
+    }
+
     private int toInt(CharSequence cs, int pos) throws ParserException {
         try {
             return Numbers.parseInt(cs);
@@ -2495,6 +2891,46 @@ public class QueryCompiler {
         return indices;
     }
 
+    private long toleranceMillis(ExprNode node, RecordSource master, RecordSource slave) throws ParserException {
+        CharSequence tok = node.token;
+        int len = tok.length();
+        int k = len;
+        long multiplier = 1;
+        if (len > 0) {
+            switch (tok.charAt(len - 1)) {
+                case 's':
+                    multiplier = Dates.SECOND_MILLIS;
+                    k--;
+                    break;
+                case 'm':
+                    multiplier = Dates.MINUTE_MILLIS;
+                    k--;
+                    break;
+                case 'h':
+                    multiplier = Dates.HOUR_MILLIS;
+                    k--;
+                    break;
+                case 'd':
+                    multiplier = Dates.DAY_MILLIS;
+                    k--;
+                    break;
+                default:
+                    break;
+            }
+        }
+
+        try {
+            long value = Numbers.parseLong(tok, 0, k);
+            if (value >= 0) {
+                return value * multiplier;
+            }
+        } catch (NumericException ignore) {
+        }
+        Misc.free(master);
+        Misc.free(slave);
+        throw QueryError.$(node.position, "Invalid tolerance");
+    }
+
     private void traverseNamesAndIndices(QueryModel parent, ExprNode node) throws ParserException {
         literalCollectorAIndexes.clear();
         literalCollectorBIndexes.clear();
@@ -2632,4 +3068,13 @@ public class QueryCompiler {
         nullConstants.add("null");
         nullConstants.add("NaN");
     }
+
+    static {
+        liftableOperators.add("=");
+        liftableOperators.add("!=");
+        liftableOperators.add(">");
+        liftableOperators.add(">=");
+        liftableOperators.add("<");
+        liftableOperators.add("<=");
+    }
 }
@@ -25,6 +25,7 @@ package com.questdb.ql.parser;
 
 import com.questdb.ex.NumericException;
 import com.questdb.ex.ParserException;
+import com.questdb.factory.configuration.ColumnMetadata;
 import com.questdb.factory.configuration.RecordColumnMetadata;
 import com.questdb.factory.configuration.RecordMetadata;
 import com.questdb.misc.Chars;
@@ -34,6 +35,8 @@ import com.questdb.misc.Numbers;
 import com.questdb.ql.impl.interval.MillisIntervalSource;
 import com.questdb.ql.impl.interval.MonthsIntervalSource;
 import com.questdb.ql.impl.interval.YearIntervalSource;
+import com.questdb.ql.model.BitmapFilter;
+import com.questdb.ql.model.ColumnRanges;
 import com.questdb.ql.model.ExprNode;
 import com.questdb.ql.model.IntrinsicModel;
 import com.questdb.ql.model.IntrinsicValue;
@@ -446,9 +449,288 @@ final class QueryFilterAnalyser {
             }
         }
         model.filter = collapseIntrinsicNodes(root);
+        extractBitmapFilter(model, m);
+        extractRanges(model, model.filter, m);
         return model;
     }
 
+    private static BitmapFilter.Term addBitmapTerm(IntrinsicModel model, String column, boolean negated) {
+        if (model.bitmapFilter == null) {
+            model.bitmapFilter = new BitmapFilter();
+        }
+        return model.bitmapFilter.add(column, negated);
+    }
+
+    private static boolean isBitmapIndexed(RecordMetadata m, String column) {
+        int index = m.getColumnIndexQuiet(column);
+        if (index == -1) {
+            return false;
+        }
+        RecordColumnMetadata meta = m.getColumnQuick(index);
+        return meta.getType() == ColumnType.SYMBOL && meta instanceof ColumnMetadata && ((ColumnMetadata) meta).bitmapIndex;
+    }
+
+    private void collectBitmapTerms(IntrinsicModel model, ExprNode node, RecordMetadata m) {
+        if (node == null) {
+            return;
+        }
+
+        switch (node.token) {
+            case "and":
+                collectBitmapTerms(model, node.lhs, m);
+                collectBitmapTerms(model, node.rhs, m);
+                break;
+            case "=":
+            case "!=":
+                if (node.paramCount != 2 || node.lhs == null || node.rhs == null) {
+                    break;
+                }
+
+                ExprNode col;
+                ExprNode val;
+                if (node.lhs.type == ExprNode.LITERAL && node.rhs.type == ExprNode.CONSTANT) {
+                    col = node.lhs;
+                    val = node.rhs;
+                } else if (node.rhs.type == ExprNode.LITERAL && node.lhs.type == ExprNode.CONSTANT) {
+                    col = node.rhs;
+                    val = node.lhs;
+                } else {
+                    break;
+                }
+
+                if (isBitmapIndexed(m, col.token)) {
+                    addBitmapTerm(model, col.token, "!=".equals(node.token)).values.add(Chars.equals("null", val.token) ? null : Chars.stripQuotes(val.token));
+                    node.intrinsicValue = IntrinsicValue.TRUE;
+                }
+                break;
+            case "in":
+                if (node.paramCount < 2) {
+                    break;
+                }
+
+                ExprNode in = node.paramCount < 3 ? node.lhs : node.args.getLast();
+                if (in.type != ExprNode.LITERAL || !isBitmapIndexed(m, in.token)) {
+                    break;
+                }
+
+                tempKeys.clear();
+                if (node.paramCount == 2) {
+                    if (node.rhs == null || node.rhs.type != ExprNode.CONSTANT) {
+                        break;
+                    }
+                    tempKeys.add(Chars.stripQuotes(node.rhs.token));
+                } else {
+                    for (int i = node.paramCount - 2; i > -1; i--) {
+                        ExprNode c = node.args.getQuick(i);
+                        if (c.type != ExprNode.CONSTANT) {
+                            return;
+                        }
+                        tempKeys.add(Chars.stripQuotes(c.token));
+                    }
+                }
+
+                BitmapFilter.Term t = addBitmapTerm(model, in.token, false);
+                for (int i = 0, n = tempKeys.size(); i < n; i++) {
+                    t.values.add(Chars.toString(tempKeys.get(i)));
+                }
+                node.intrinsicValue = IntrinsicValue.TRUE;
+                break;
+            default:
+                break;
+        }
+    }
+
+    /**
+     * Moves predicates on symbol columns with bitmap index from top level conjunction of filter to bitmap
+     * filter, so that they are resolved on indexes without reading column data. Values of key column
+     * become first term when key column has bitmap index too, otherwise key lookup is left as is.
+     */
+    private void extractBitmapFilter(IntrinsicModel model, RecordMetadata m) {
+        if (preferredKeyColumn != null || model.keyValuesIsLambda || model.intrinsicValue == IntrinsicValue.FALSE) {
+            return;
+        }
+
+        if (model.keyColumn != null) {
+            if (!isBitmapIndexed(m, model.keyColumn)) {
+                return;
+            }
+
+            BitmapFilter.Term t = addBitmapTerm(model, model.keyColumn, false);
+            for (int i = 0, n = model.keyValues.size(); i < n; i++) {
+                t.values.add(Chars.toString(model.keyValues.get(i)));
+            }
+        }
+
+        collectBitmapTerms(model, model.filter, m);
+
+        if (model.bitmapFilter != null) {
+            model.filter = collapseIntrinsicNodes(model.filter);
+        }
+    }
+
+    /**
+     * Collects value ranges of numeric columns from top level conjunction of filter. Ranges do not
+     * replace filter, they let partition source skip rows, which cannot match it.
+     */
+    private void extractRanges(IntrinsicModel model, ExprNode node, RecordMetadata m) {
+        if (node == null) {
+            return;
+        }
+
+        if ("and".equals(node.token)) {
+            extractRanges(model, node.lhs, m);
+            extractRanges(model, node.rhs, m);
+            return;
+        }
+
+        if (node.paramCount != 2 || node.lhs == null || node.rhs == null) {
+            return;
+        }
+
+        String op = node.token;
+        ExprNode col;
+        ExprNode val;
+
+        if (node.lhs.type == ExprNode.LITERAL && node.rhs.type == ExprNode.CONSTANT) {
+            col = node.lhs;
+            val = node.rhs;
+        } else if (node.rhs.type == ExprNode.LITERAL && node.lhs.type == ExprNode.CONSTANT) {
+            col = node.rhs;
+            val = node.lhs;
+            op = mirror(op);
+        } else {
+            return;
+        }
+
+        if (op == null) {
+            return;
+        }
+
+        int index = m.getColumnIndexQuiet(col.token);
+        if (index == -1) {
+            return;
+        }
+
+        int type = m.getColumnQuick(index).getType();
+
+        if ("null".equals(val.token)) {
+            if ("=".equals(op)) {
+                switch (type) {
+                    case ColumnType.INT:
+                    case ColumnType.LONG:
+                    case ColumnType.DATE:
+                    case ColumnType.FLOAT:
+                    case ColumnType.DOUBLE:
+                        getRanges(model).requireNull(index);
+                        break;
+                    default:
+                        break;
+                }
+            }
+            return;
+        }
+
+        try {
+            switch (type) {
+                case ColumnType.BYTE:
+                case ColumnType.SHORT:
+                case ColumnType.INT:
+                    // int columns are compared in long arithmetic against wider constants,
+                    // where null is not excluded
+                    long v = Numbers.parseLong(val.token);
+                    if (v > Integer.MIN_VALUE && v <= Integer.MAX_VALUE) {
+                        intersect(model, index, op, v);
+                    }
+                    break;
+                case ColumnType.LONG:
+                    intersect(model, index, op, Numbers.parseLong(val.token));
+                    break;
+                case ColumnType.DATE:
+                    if (Chars.stripQuotes(val.token) == val.token) {
+                        intersect(model, index, op, Numbers.parseLong(val.token));
+                    } else {
+                        intersect(model, index, op, Dates.tryParse(quoteEraser.ofQuoted(val.token)));
+                    }
+                    break;
+                case ColumnType.FLOAT:
+                case ColumnType.DOUBLE:
+                    double d = Numbers.parseDouble(val.token);
+                    if (d != d) {
+                        break;
+                    }
+                    switch (op) {
+                        case ">":
+                        case ">=":
+                            getRanges(model).intersect(index, d, Double.POSITIVE_INFINITY);
+                            break;
+                        case "<":
+                        case "<=":
+                            getRanges(model).intersect(index, Double.NEGATIVE_INFINITY, d);
+                            break;
+                        default:
+                            break;
+                    }
+                    break;
+                default:
+                    break;
+            }
+        } catch (NumericException ignore) {
+            // not a value of column type, filter compiler will report if it matters
+        }
+    }
+
+    private static String mirror(String op) {
+        switch (op) {
+            case ">":
+                return "<";
+            case ">=":
+                return "<=";
+            case "<":
+                return ">";
+            case "<=":
+                return ">=";
+            case "=":
+                return "=";
+            default:
+                return null;
+        }
+    }
+
+    private static ColumnRanges getRanges(IntrinsicModel model) {
+        if (model.ranges == null) {
+            model.ranges = new ColumnRanges();
+        }
+        return model.ranges;
+    }
+
+    private static void intersect(IntrinsicModel model, int index, String op, long v) {
+        if (v == Long.MIN_VALUE) {
+            return;
+        }
+
+        switch (op) {
+            case ">":
+                if (v < Long.MAX_VALUE) {
+                    getRanges(model).intersect(index, v + 1, Long.MAX_VALUE);
+                }
+                break;
+            case ">=":
+                getRanges(model).intersect(index, v, Long.MAX_VALUE);
+                break;
+            case "<":
+                getRanges(model).intersect(index, Long.MIN_VALUE, v - 1);
+                break;
+            case "<=":
+                getRanges(model).intersect(index, Long.MIN_VALUE, v);
+                break;
+            case "=":
+                getRanges(model).intersect(index, v, v);
+                break;
+            default:
+                break;
+        }
+    }
+
     private boolean isTimestamp(ExprNode n) {
         return timestamp != null && timestamp.equals(n.token);
     }
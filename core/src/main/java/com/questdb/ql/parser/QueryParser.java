@@ -82,6 +82,12 @@ public final class QueryParser {
         return n;
     }
 
+    private void expectNoTolerance(CharSequence tok) throws ParserException {
+        if (tok != null && Chars.equals(tok, "tolerance")) {
+            throw QueryError.$(lexer.position(), "Tolerance is supported by inner and outer joins only");
+        }
+    }
+
     private void expectTok(CharSequence tok, CharSequence expected) throws ParserException {
         if (tok == null || !Chars.equals(tok, expected)) {
             throw QueryError.position(lexer.position()).$('\'').$(expected).$("' expected").$();
@@ -345,6 +351,7 @@ public final class QueryParser {
         switch (joinType) {
             case QueryModel.JOIN_ASOF:
                 if (tok == null || !Chars.equals("on", tok)) {
+                    expectNoTolerance(tok);
                     lexer.unparse();
                     break;
                 }
@@ -377,8 +384,21 @@ public final class QueryParser {
                         }
                         break;
                 }
+
+                // expect [tolerance]
+
+                tok = lexer.optionTok();
+                if (tok != null && Chars.equals(tok, "tolerance")) {
+                    if (joinType == QueryModel.JOIN_ASOF) {
+                        expectNoTolerance(tok);
+                    }
+                    joinModel.setJoinTolerance(expectExpr());
+                } else {
+                    lexer.unparse();
+                }
                 break;
             default:
+                expectNoTolerance(tok);
                 lexer.unparse();
         }
 
@@ -555,6 +575,18 @@ public final class QueryParser {
             expectTok(tok(), "by");
             model.setSampleBy(expectExpr());
             tok = lexer.optionTok();
+
+            // expect [fill]
+
+            if (tok != null && Chars.equals(tok, "fill")) {
+                expectTok(tok(), '(');
+                do {
+                    model.addSampleByFill(expectExpr());
+                    tok = tok();
+                } while (Chars.equals(tok, ','));
+                expectTok(tok, ')');
+                tok = lexer.optionTok();
+            }
         }
 
         // expect [order by]
@@ -789,6 +821,7 @@ public final class QueryParser {
         journalAliasStop.add("sample");
         journalAliasStop.add("order");
         journalAliasStop.add("on");
+        journalAliasStop.add("tolerance");
         journalAliasStop.add("timestamp");
         journalAliasStop.add("limit");
         journalAliasStop.add(")");
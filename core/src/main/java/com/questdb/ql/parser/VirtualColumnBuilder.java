@@ -97,12 +97,15 @@ class VirtualColumnBuilder implements PostOrderTreeTraversalAlgo.Visitor {
 
     VirtualColumn createVirtualColumn(QueryModel model, ExprNode node, RecordMetadata metadata) throws ParserException {
         this.columnNameHistogram = model.getColumnNameHistogram();
-        this.parameterMap = model.getParameterMap();
         this.metadata = metadata;
         algo.traverse(node, this);
         return stack.poll();
     }
 
+    void setParameterMap(CharSequenceObjHashMap<Parameter> parameterMap) {
+        this.parameterMap = parameterMap;
+    }
+
     private VirtualColumn lookupColumn(ExprNode node) throws ParserException {
         try {
             if (columnNameHistogram.get(node.token) > 0) {
@@ -31,16 +31,16 @@ import com.questdb.query.UnorderedResultSetBuilder;
 import com.questdb.std.IntList;
 import com.questdb.std.LongList;
 import com.questdb.std.ObjList;
+import com.questdb.store.ColumnIndex;
 import com.questdb.store.IndexCursor;
-import com.questdb.store.KVIndex;
 
 public class QueryAllResultSetBuilder<T> extends UnorderedResultSetBuilder<T> {
     private final IntList symbolKeys;
     private final ObjList<String> filterSymbols;
     private final IntList filterSymbolKeys;
     final private String symbol;
-    private KVIndex index;
-    private KVIndex[] searchIndices;
+    private ColumnIndex index;
+    private ColumnIndex[] searchIndices;
 
     public QueryAllResultSetBuilder(Interval interval, String symbol, IntList symbolKeys, ObjList<String> filterSymbols, IntList filterSymbolKeys) {
         super(interval);
@@ -60,7 +60,7 @@ public class QueryAllResultSetBuilder<T> extends UnorderedResultSetBuilder<T> {
             for (int i = 0, sz = symbolKeys.size(); i < sz; i++) {
                 if (index.contains(symbolKeys.getQuick(i))) {
                     int n = filterSymbols.size();
-                    searchIndices = new KVIndex[n];
+                    searchIndices = new ColumnIndex[n];
                     for (int k = 0; k < n; k++) {
                         searchIndices[k] = partition.getIndexForColumn(filterSymbols.getQuick(k));
                     }
@@ -0,0 +1,85 @@
+/*******************************************************************************
+ *    ___                  _   ____  ____
+ *   / _ \ _   _  ___  ___| |_|  _ \| __ )
+ *  | | | | | | |/ _ \/ __| __| | | |  _ \
+ *  | |_| | |_| |  __/\__ \ |_| |_| | |_) |
+ *   \__\_\\__,_|\___||___/\__|____/|____/
+ *
+ * Copyright (C) 2014-2016 Appsicle
+ *
+ * This program is free software: you can redistribute it and/or  modify
+ * it under the terms of the GNU Affero General Public License, version 3,
+ * as published by the Free Software Foundation.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ *
+ ******************************************************************************/
+
+
+package com.questdb.std;
+
+import com.questdb.misc.Hash;
+import com.questdb.misc.Numbers;
+
+import java.util.Arrays;
+
+/**
+ * Set of hash codes, which can answer that hash code was never added, but not that it was.
+ * Filter takes 16 bits per expected hash code and sets 3 bits for each code, which
+ * keeps false positive rate below 1%.
+ */
+public class BloomFilter implements Mutable {
+    private static final int BITS_PER_KEY = 16;
+    private static final int PROBES = 3;
+    private static final int MAX_KEYS = 1 << 26;
+    private long[] words = new long[1];
+    private int mask = 63;
+
+    public void add(int hash) {
+        int h = Hash.mix(hash);
+        int step = (h >>> 17) | (h << 15) | 1;
+        for (int i = 0; i < PROBES; i++, h += step) {
+            int bit = h & mask;
+            words[bit >>> 6] |= 1L << bit;
+        }
+    }
+
+    @Override
+    public void clear() {
+        Arrays.fill(words, 0);
+    }
+
+    public boolean mightContain(int hash) {
+        int h = Hash.mix(hash);
+        int step = (h >>> 17) | (h << 15) | 1;
+        for (int i = 0; i < PROBES; i++, h += step) {
+            int bit = h & mask;
+            if ((words[bit >>> 6] & (1L << bit)) == 0) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Clears filter and sizes it for given number of hash codes. Memory is reused when
+     * it is large enough.
+     *
+     * @param keyCount expected number of hash codes
+     */
+    public void of(int keyCount) {
+        int bits = Numbers.ceilPow2(Math.max(64, Math.min(keyCount, MAX_KEYS) * BITS_PER_KEY));
+        if (bits >>> 6 > words.length) {
+            words = new long[bits >>> 6];
+        } else {
+            Arrays.fill(words, 0);
+        }
+        mask = bits - 1;
+    }
+}
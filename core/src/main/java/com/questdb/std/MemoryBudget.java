@@ -0,0 +1,159 @@
+/*******************************************************************************
+ *    ___                  _   ____  ____
+ *   / _ \ _   _  ___  ___| |_|  _ \| __ )
+ *  | | | | | | |/ _ \/ __| __| | | |  _ \
+ *  | |_| | |_| |  __/\__ \ |_| |_| | |_) |
+ *   \__\_\\__,_|\___||___/\__|____/|____/
+ *
+ * Copyright (C) 2014-2016 Appsicle
+ *
+ * This program is free software: you can redistribute it and/or  modify
+ * it under the terms of the GNU Affero General Public License, version 3,
+ * as published by the Free Software Foundation.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ *
+ ******************************************************************************/
+
+
+package com.questdb.std;
+
+import com.questdb.ex.JournalRuntimeException;
+import com.questdb.misc.ByteBuffers;
+import com.questdb.misc.Unsafe;
+
+import java.io.Closeable;
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+
+/**
+ * Limits amount of heap-external memory held by structures of single query. Allocations within
+ * limit come from malloc, allocations above limit are served by memory mapped temporary files
+ * in spill directory. Pages of such files are written back by OS when memory is short instead of
+ * growing resident size of the process.
+ * <p>
+ * Structures, which do not have budget, pass null to static {@link #malloc(MemoryBudget, long)} and
+ * {@link #free(MemoryBudget, long, long)}, which then behave as their {@link Unsafe} counterparts.
+ * Budget is thread safe, it can be shared by structures of parallel query workers.
+ */
+public class MemoryBudget implements Closeable {
+    private static final String SPILL_PREFIX = "spill";
+    private static final String SPILL_SUFFIX = ".tmp";
+    private final long limit;
+    private final File spillDir;
+    private final LongList spillAddresses = new LongList();
+    private final ObjList<MappedByteBuffer> spillBuffers = new ObjList<>();
+    private final ObjList<File> spillFiles = new ObjList<>();
+    private long used;
+    private long spilled;
+
+    public MemoryBudget(long limit, File spillDir) {
+        this.limit = limit;
+        this.spillDir = spillDir;
+    }
+
+    public static void free(MemoryBudget budget, long address, long size) {
+        if (budget == null) {
+            Unsafe.free(address, size);
+        } else {
+            budget.free(address, size);
+        }
+    }
+
+    public static long malloc(MemoryBudget budget, long size) {
+        return budget == null ? Unsafe.malloc(size) : budget.allocate(size);
+    }
+
+    public synchronized long allocate(long size) {
+        // single mapping cannot exceed 2GB, larger allocations are not spilled
+        if (used + size <= limit || size > Integer.MAX_VALUE) {
+            used += size;
+            return Unsafe.malloc(size);
+        }
+        return spill(size);
+    }
+
+    @Override
+    public synchronized void close() {
+        for (int i = 0, n = spillBuffers.size(); i < n; i++) {
+            release(i);
+        }
+        spillAddresses.clear();
+        spillBuffers.clear();
+        spillFiles.clear();
+        spilled = 0;
+    }
+
+    public synchronized void free(long address, long size) {
+        for (int i = 0, n = spillAddresses.size(); i < n; i++) {
+            if (spillAddresses.getQuick(i) == address) {
+                release(i);
+                spillAddresses.removeIndex(i);
+                spillBuffers.remove(i);
+                spillFiles.remove(i);
+                spilled -= size;
+                return;
+            }
+        }
+        Unsafe.free(address, size);
+        used -= size;
+    }
+
+    public long getLimit() {
+        return limit;
+    }
+
+    public synchronized long getSpilled() {
+        return spilled;
+    }
+
+    public synchronized long getUsed() {
+        return used;
+    }
+
+    private void release(int index) {
+        ByteBuffers.release(spillBuffers.getQuick(index));
+        File file = spillFiles.getQuick(index);
+        if (file != null && !file.delete()) {
+            file.deleteOnExit();
+        }
+    }
+
+    private long spill(long size) {
+        if (!spillDir.exists() && !spillDir.mkdirs()) {
+            throw new JournalRuntimeException("Cannot create spill directory: " + spillDir);
+        }
+
+        try {
+            File file = File.createTempFile(SPILL_PREFIX, SPILL_SUFFIX, spillDir);
+            MappedByteBuffer buffer;
+            try (RandomAccessFile raf = new RandomAccessFile(file, "rw")) {
+                raf.setLength(size);
+                buffer = raf.getChannel().map(FileChannel.MapMode.READ_WRITE, 0, size);
+            }
+
+            // mapping outlives file name on unix, which leaves nothing behind if process dies
+            if (file.delete()) {
+                file = null;
+            }
+
+            long address = ByteBuffers.getAddress(buffer);
+            spillAddresses.add(address);
+            spillBuffers.add(buffer);
+            spillFiles.add(file);
+            spilled += size;
+            return address;
+        } catch (IOException e) {
+            throw new JournalRuntimeException("Cannot spill " + size + " bytes to " + spillDir, e);
+        }
+    }
+}
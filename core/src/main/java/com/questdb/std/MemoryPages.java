@@ -24,7 +24,6 @@
 package com.questdb.std;
 
 import com.questdb.misc.Numbers;
-import com.questdb.misc.Unsafe;
 
 import java.io.Closeable;
 
@@ -33,10 +32,16 @@ public class MemoryPages implements Closeable, Mutable {
     private final int mask;
     private final int bits;
     private final LongList pages = new LongList();
+    private final MemoryBudget budget;
     private long cachePageHi;
     private long cachePageLo;
 
     public MemoryPages(int pageSize) {
+        this(pageSize, null);
+    }
+
+    public MemoryPages(int pageSize, MemoryBudget budget) {
+        this.budget = budget;
         this.pageSize = Numbers.ceilPow2(pageSize);
         this.bits = Numbers.msb(this.pageSize);
         this.mask = this.pageSize - 1;
@@ -68,7 +73,7 @@ public class MemoryPages implements Closeable, Mutable {
         for (int i = 0; i < pages.size(); i++) {
             long address = pages.getQuick(i);
             if (address != 0) {
-                Unsafe.free(address, pageSize);
+                MemoryBudget.free(budget, address, pageSize);
             }
         }
         pages.clear();
@@ -88,7 +93,7 @@ public class MemoryPages implements Closeable, Mutable {
         }
 
         if (index >= pages.size()) {
-            pages.extendAndSet((int) index, Unsafe.malloc(pageSize));
+            pages.extendAndSet((int) index, MemoryBudget.malloc(budget, pageSize));
         }
 
         cachePageLo = index << bits;
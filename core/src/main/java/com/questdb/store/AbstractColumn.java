@@ -24,8 +24,11 @@
 package com.questdb.store;
 
 import com.questdb.ex.JournalException;
+import com.questdb.misc.Unsafe;
+import com.questdb.std.ObjHashSet;
 
 import java.io.Closeable;
+import java.io.File;
 import java.nio.ByteBuffer;
 
 public abstract class AbstractColumn implements Closeable {
@@ -50,6 +53,24 @@ public abstract class AbstractColumn implements Closeable {
         mappedFile.compact();
     }
 
+    /**
+     * Copies bytes of column file into native memory one mapped page at a time.
+     *
+     * @param offset  offset in column file
+     * @param len     number of bytes to copy
+     * @param address destination address
+     */
+    public void copyTo(long offset, long len, long address) {
+        while (len > 0) {
+            long a = mappedFile.addressOf(offset, 1);
+            int n = (int) Math.min(len, mappedFile.pageRemaining(offset));
+            Unsafe.getUnsafe().copyMemory(a, address, n);
+            offset += n;
+            address += n;
+            len -= n;
+        }
+    }
+
     public void force() {
         mappedFile.force();
     }
@@ -58,6 +79,10 @@ public abstract class AbstractColumn implements Closeable {
         return mappedFile.getBuffer(offset, size);
     }
 
+    public void getFiles(ObjHashSet<File> files) {
+        files.add(mappedFile.getFile());
+    }
+
     public long getOffset() {
         return mappedFile.getAppendOffset();
     }
@@ -68,6 +93,63 @@ public abstract class AbstractColumn implements Closeable {
         txAppendOffset = appendOffset;
     }
 
+    /**
+     * Maps, or for compressed file decodes, first len bytes of column file ahead of time. Reads
+     * from preloaded range do not change column state and are safe to make from several threads.
+     *
+     * @param len number of bytes to preload
+     */
+    public void preload(long len) {
+        mappedFile.preload(len);
+    }
+
+    public void preTouch() {
+        mappedFile.preTouch();
+    }
+
+    /**
+     * Appends block of native memory to end of column file. Caller is responsible for
+     * keeping block aligned to column values.
+     *
+     * @param address source address
+     * @param len     number of bytes to append
+     * @return offset of block in column file
+     */
+    public long putBlock(long address, long len) {
+        return putBlock(null, address, len);
+    }
+
+    /**
+     * Appends block of either native memory or primitive array to end of column file,
+     * copying as many bytes at a time as current page allows.
+     *
+     * @param base   primitive array or null for native memory
+     * @param offset offset in array, including array base offset, or native address
+     * @param len    number of bytes to append
+     * @return offset of block in column file
+     */
+    public long putBlock(Object base, long offset, long len) {
+        final long appendOffset = getOffset();
+        long o = appendOffset;
+        while (len > 0) {
+            long a = mappedFile.addressOf(o, 1);
+            int n = (int) Math.min(len, mappedFile.pageRemaining(o));
+            Unsafe.getUnsafe().copyMemory(base, offset, null, a, n);
+            o += n;
+            offset += n;
+            len -= n;
+        }
+        preCommit(o);
+        return appendOffset;
+    }
+
+    /**
+     * Unmaps extents retired by growth of column files, see {@link MemoryFile#releaseRetired()}.
+     */
+    public void releaseRetired() {
+        mappedFile.releaseRetired();
+    }
+
     public abstract long size();
 
     @Override
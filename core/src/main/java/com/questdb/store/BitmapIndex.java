@@ -0,0 +1,695 @@
+/*******************************************************************************
+ *    ___                  _   ____  ____
+ *   / _ \ _   _  ___  ___| |_|  _ \| __ )
+ *  | | | | | | |/ _ \/ __| __| | | |  _ \
+ *  | |_| | |_| |  __/\__ \ |_| |_| | |_) |
+ *   \__\_\\__,_|\___||___/\__|____/|____/
+ *
+ * Copyright (C) 2014-2016 Appsicle
+ *
+ * This program is free software: you can redistribute it and/or  modify
+ * it under the terms of the GNU Affero General Public License, version 3,
+ * as published by the Free Software Foundation.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ *
+ ******************************************************************************/
+
+package com.questdb.store;
+
+import com.questdb.JournalMode;
+import com.questdb.ex.JournalException;
+import com.questdb.misc.ByteBuffers;
+import com.questdb.misc.Files;
+import com.questdb.misc.Unsafe;
+import com.questdb.std.LongList;
+import com.questdb.std.ObjHashSet;
+
+import java.io.File;
+
+/**
+ * Compressed bitmap index for low cardinality columns. Row ids of a key are split into chunks of 2^16 rows
+ * and each chunk that has rows of the key is stored in a container. Container is either a sorted array of
+ * 16-bit row offsets, which grows geometrically, or a 2^16 bit bitmap, which array turns into once it has
+ * more than 4096 values. Containers of a key are linked in chunk order.
+ * <p>
+ * Key file has same transactional structure as that of {@link KVIndex}: key block is copied on first add
+ * of transaction and header is switched to the copy on commit. Containers are only appended to, or replaced
+ * by a copy when they grow, so readers of older transaction skip rows past their {@link #size()}.
+ */
+public class BitmapIndex implements ColumnIndex {
+
+    /*
+        struct bk {
+           long chunkBits
+           long keyBlockOffset
+           struct keyBlock {
+                long keyBlockSize
+                long maxValue
+                struct entry {
+                    long firstContainerOffset
+                    long lastContainerOffset
+                    long valueCount
+                    long reserved
+                }
+           }
+        }
+
+        struct container {
+            long prevContainerOffset
+            long nextContainerOffset
+            int chunk
+            int cardinality
+            int capacity // 0 for bitmap
+            int reserved
+            short values[capacity] | long words[1024]
+        }
+    */
+
+    public static final int CHUNK_BITS = 16;
+    public static final int CHUNK_MASK = (1 << CHUNK_BITS) - 1;
+    public static final int WORD_COUNT = (1 << CHUNK_BITS) >>> 6;
+    private static final int ENTRY_SIZE = 32;
+    private static final int CONTAINER_HEADER = 32;
+    private static final int BITMAP_SIZE = WORD_COUNT * 8;
+    private static final int MIN_ARRAY_CAPACITY = 16;
+    private static final int MAX_ARRAY_CAPACITY = 4096;
+    private final RevCursor cachedCursor = new RevCursor();
+    private final FwdCursor fwdCursor = new FwdCursor();
+    private final MemoryFile kData;
+    private final MemoryFile vData;
+    private final long keyBlockAddressOffset = 8;
+    private long firstEntryOffset;
+    private long keyBlockSize;
+    private long keyBlockSizeOffset;
+    private long maxValue;
+    private boolean startTx = true;
+
+    public BitmapIndex(File baseName, long keyCountHint, int txCountHint, int journalMode, long txAddress) throws JournalException {
+        int keyCount = (int) Math.min(Integer.MAX_VALUE, Math.max(keyCountHint, 1));
+        this.kData = new MemoryFile(new File(baseName.getParentFile(), baseName.getName() + ".bk"), ByteBuffers.getBitHint(8, keyCount * txCountHint), journalMode);
+
+        if (kData.getAppendOffset() > 0) {
+            this.keyBlockSizeOffset = txAddress == 0 ? getLong(kData, keyBlockAddressOffset) : txAddress;
+            this.keyBlockSize = getLong(kData, keyBlockSizeOffset);
+            this.maxValue = getLong(kData, keyBlockSizeOffset + 8);
+        } else if (journalMode == JournalMode.APPEND || journalMode == JournalMode.BULK_APPEND) {
+            this.keyBlockSizeOffset = 16;
+            this.keyBlockSize = 0;
+            this.maxValue = 0;
+            putLong(kData, 0, CHUNK_BITS);
+            putLong(kData, keyBlockAddressOffset, keyBlockSizeOffset);
+            putLong(kData, keyBlockSizeOffset, keyBlockSize);
+            putLong(kData, keyBlockSizeOffset + 8, maxValue);
+            kData.setAppendOffset(8 + 8 + 8 + 8);
+        } else {
+            this.kData.close();
+            throw new JournalException("Cannot open uninitialized index in read-only mode");
+        }
+
+        this.firstEntryOffset = keyBlockSizeOffset + 16;
+        try {
+            this.vData = new MemoryFile(new File(baseName.getParentFile(), baseName.getName() + ".bv"), ByteBuffers.getBitHint(CONTAINER_HEADER + MIN_ARRAY_CAPACITY * 2, keyCount), journalMode);
+        } catch (JournalException e) {
+            this.kData.close();
+            throw e;
+        }
+
+        // offset 0 is reserved to mark absent container
+        if (vData.getAppendOffset() == 0 && (journalMode == JournalMode.APPEND || journalMode == JournalMode.BULK_APPEND)) {
+            vData.setAppendOffset(8);
+        }
+    }
+
+    public static void delete(File base) {
+        Files.delete(new File(base.getParentFile(), base.getName() + ".bk"));
+        Files.delete(new File(base.getParentFile(), base.getName() + ".bv"));
+    }
+
+    /**
+     * Adds value to index. Values of key must be added in ascending order.
+     *
+     * @param key   value of key
+     * @param value row id
+     */
+    @Override
+    public void add(int key, long value) {
+        if (startTx) {
+            tx();
+        }
+
+        long keyOffset = getKeyOffset(key);
+        if (keyOffset >= firstEntryOffset + keyBlockSize) {
+            long oldSize = keyBlockSize;
+            keyBlockSize = keyOffset + ENTRY_SIZE - firstEntryOffset;
+            Unsafe.getUnsafe().setMemory(kData.addressOf(firstEntryOffset + oldSize, (int) (keyBlockSize - oldSize)), keyBlockSize - oldSize, (byte) 0);
+        }
+
+        int chunk = (int) (value >>> CHUNK_BITS);
+        long c = getLong(kData, keyOffset + 8);
+
+        if (c == 0 || getInt(c + 16) != chunk) {
+            c = allocateContainer(keyOffset, c, chunk, MIN_ARRAY_CAPACITY);
+        }
+
+        int cardinality = getInt(c + 20);
+        int capacity = getInt(c + 24);
+
+        if (capacity > 0 && cardinality == capacity) {
+            c = grow(keyOffset, c, cardinality, capacity);
+            capacity = getInt(c + 24);
+        }
+
+        int low = (int) (value & CHUNK_MASK);
+        if (capacity > 0) {
+            Unsafe.getUnsafe().putShort(vData.addressOf(c + CONTAINER_HEADER + cardinality * 2, 2), (short) low);
+        } else {
+            long a = vData.addressOf(c + CONTAINER_HEADER + (low >>> 6) * 8, 8);
+            Unsafe.getUnsafe().putLong(a, Unsafe.getUnsafe().getLong(a) | (1L << low));
+        }
+        Unsafe.getUnsafe().putInt(vData.addressOf(c + 20, 4), cardinality + 1);
+
+        long address = kData.addressOf(keyOffset, ENTRY_SIZE);
+        Unsafe.getUnsafe().putLong(address + 16, Unsafe.getUnsafe().getLong(address + 16) + 1);
+
+        if (maxValue <= value) {
+            maxValue = value + 1;
+        }
+    }
+
+    @Override
+    public void close() {
+        vData.close();
+        kData.close();
+    }
+
+    @Override
+    public void commit() {
+        if (!startTx) {
+            putLong(kData, keyBlockSizeOffset, keyBlockSize);
+            putLong(kData, keyBlockSizeOffset + 8, maxValue);
+            kData.setAppendOffset(firstEntryOffset + keyBlockSize);
+            putLong(kData, keyBlockAddressOffset, keyBlockSizeOffset);
+            startTx = true;
+        }
+    }
+
+    @Override
+    public void compact() throws JournalException {
+        kData.compact();
+        vData.compact();
+    }
+
+    @Override
+    public boolean contains(int key) {
+        return getValueCount(key) > 0;
+    }
+
+    @Override
+    public IndexCursor cursor(int key) {
+        return cachedCursor.setKey(key);
+    }
+
+    @Override
+    public void force() {
+        kData.force();
+        vData.force();
+    }
+
+    @Override
+    public IndexCursor fwdCursor(int key) {
+        return fwdCursor.setKey(key);
+    }
+
+    @Override
+    public void getFiles(ObjHashSet<File> files) {
+        files.add(kData.getFile());
+        files.add(vData.getFile());
+    }
+
+    @Override
+    public long getTxAddress() {
+        return keyBlockSizeOffset;
+    }
+
+    @Override
+    public void setTxAddress(long txAddress) {
+        if (txAddress == 0) {
+            refresh();
+        } else {
+            this.keyBlockSizeOffset = txAddress;
+            this.keyBlockSize = getLong(kData, keyBlockSizeOffset);
+            this.maxValue = getLong(kData, keyBlockSizeOffset + 8);
+            this.firstEntryOffset = keyBlockSizeOffset + 16;
+        }
+    }
+
+    @Override
+    public int getValueCount(int key) {
+        long keyOffset = getKeyOffset(key);
+        if (key < -1 || keyOffset >= firstEntryOffset + keyBlockSize) {
+            return 0;
+        }
+        return (int) getLong(kData, keyOffset + 16);
+    }
+
+    @Override
+    public LongList getValues(int key) {
+        LongList result = new LongList();
+        getValues(key, result);
+        return result;
+    }
+
+    @Override
+    public void getValues(int key, LongList values) {
+        values.clear();
+        IndexCursor cursor = newFwdCursor(key);
+        values.ensureCapacity((int) cursor.size());
+        while (cursor.hasNext()) {
+            values.add(cursor.next());
+        }
+    }
+
+    @Override
+    public long lastValue(int key) {
+        return cursor(key).next();
+    }
+
+    @Override
+    public IndexCursor newFwdCursor(int key) {
+        return new FwdCursor().setKey(key);
+    }
+
+    @Override
+    public void releaseRetired() {
+        kData.releaseRetired();
+        vData.releaseRetired();
+    }
+
+    /**
+     * @return max of all row IDs in index plus one
+     */
+    @Override
+    public long size() {
+        return maxValue;
+    }
+
+    @Override
+    public void truncate(long size) {
+        final int sizeChunk = (int) (size >>> CHUNK_BITS);
+        final int sizeLow = (int) (size & CHUNK_MASK);
+        long sz = 0;
+
+        for (long offset = firstEntryOffset; offset < firstEntryOffset + keyBlockSize; offset += ENTRY_SIZE) {
+            long c = getLong(kData, offset + 8);
+            long removed = 0;
+
+            while (c != 0) {
+                int chunk = getInt(c + 16);
+                int cardinality = getInt(c + 20);
+
+                if (chunk < sizeChunk) {
+                    break;
+                }
+
+                if (chunk == sizeChunk && sizeLow > 0) {
+                    int remaining = trim(c, cardinality, sizeLow);
+                    removed += cardinality - remaining;
+                    if (remaining > 0) {
+                        break;
+                    }
+                } else {
+                    removed += cardinality;
+                }
+                c = getLong(vData, c);
+            }
+
+            if (c == 0) {
+                putLong(kData, offset, 0);
+            } else {
+                putLong(vData, c + 8, 0);
+                long last = ((long) getInt(c + 16) << CHUNK_BITS) + lastLow(c);
+                if (last >= sz) {
+                    sz = last + 1;
+                }
+            }
+            putLong(kData, offset + 8, c);
+            putLong(kData, offset + 16, getLong(kData, offset + 16) - removed);
+        }
+
+        maxValue = sz;
+        commit();
+    }
+
+    private long allocate(int capacity) {
+        long c = vData.getAppendOffset();
+        int size = CONTAINER_HEADER + (capacity > 0 ? capacity * 2 : BITMAP_SIZE);
+        vData.setAppendOffset(c + size);
+        Unsafe.getUnsafe().setMemory(vData.addressOf(c, size), size, (byte) 0);
+        return c;
+    }
+
+    private long allocateContainer(long keyOffset, long last, int chunk, int capacity) {
+        long c = allocate(capacity);
+        long a = vData.addressOf(c, CONTAINER_HEADER);
+        Unsafe.getUnsafe().putLong(a, last);
+        Unsafe.getUnsafe().putInt(a + 16, chunk);
+        Unsafe.getUnsafe().putInt(a + 24, capacity);
+        if (last == 0) {
+            putLong(kData, keyOffset, c);
+        } else {
+            putLong(vData, last + 8, c);
+        }
+        putLong(kData, keyOffset + 8, c);
+        return c;
+    }
+
+    private int getInt(long offset) {
+        return Unsafe.getUnsafe().getInt(vData.addressOf(offset, 4));
+    }
+
+    private long getKeyOffset(long key) {
+        return firstEntryOffset + (key + 1) * ENTRY_SIZE;
+    }
+
+    private long getLong(MemoryFile storage, long offset) {
+        return Unsafe.getUnsafe().getLong(storage.addressOf(offset, 8));
+    }
+
+    /**
+     * Replaces full array container with a copy, which is either larger array or bitmap. Original container
+     * is left intact for readers of previous transactions.
+     */
+    private long grow(long keyOffset, long c, int cardinality, int capacity) {
+        int newCapacity = capacity < MAX_ARRAY_CAPACITY ? Math.min(capacity * 4, MAX_ARRAY_CAPACITY) : 0;
+        long prev = getLong(vData, c);
+        int chunk = getInt(c + 16);
+
+        long n = allocate(newCapacity);
+        long a = vData.addressOf(n, CONTAINER_HEADER);
+        Unsafe.getUnsafe().putLong(a, prev);
+        Unsafe.getUnsafe().putInt(a + 16, chunk);
+        Unsafe.getUnsafe().putInt(a + 20, cardinality);
+        Unsafe.getUnsafe().putInt(a + 24, newCapacity);
+
+        long src = vData.addressOf(c + CONTAINER_HEADER, cardinality * 2);
+        if (newCapacity > 0) {
+            Unsafe.getUnsafe().copyMemory(src, vData.addressOf(n + CONTAINER_HEADER, cardinality * 2), cardinality * 2);
+        } else {
+            long words = vData.addressOf(n + CONTAINER_HEADER, BITMAP_SIZE);
+            for (int i = 0; i < cardinality; i++) {
+                int low = Unsafe.getUnsafe().getShort(src + i * 2) & CHUNK_MASK;
+                long w = words + (low >>> 6) * 8;
+                Unsafe.getUnsafe().putLong(w, Unsafe.getUnsafe().getLong(w) | (1L << low));
+            }
+        }
+
+        if (prev == 0) {
+            putLong(kData, keyOffset, n);
+        } else {
+            putLong(vData, prev + 8, n);
+        }
+        putLong(kData, keyOffset + 8, n);
+        return n;
+    }
+
+    private int lastLow(long c) {
+        int cardinality = getInt(c + 20);
+        if (getInt(c + 24) > 0) {
+            return Unsafe.getUnsafe().getShort(vData.addressOf(c + CONTAINER_HEADER + (cardinality - 1) * 2, 2)) & CHUNK_MASK;
+        }
+
+        long words = vData.addressOf(c + CONTAINER_HEADER, BITMAP_SIZE);
+        for (int w = WORD_COUNT - 1; w >= 0; w--) {
+            long bits = Unsafe.getUnsafe().getLong(words + w * 8);
+            if (bits != 0) {
+                return (w << 6) + 63 - Long.numberOfLeadingZeros(bits);
+            }
+        }
+        return -1;
+    }
+
+    private void putLong(MemoryFile storage, long offset, long value) {
+        Unsafe.getUnsafe().putLong(storage.addressOf(offset, 8), value);
+    }
+
+    private void refresh() {
+        commit();
+        this.keyBlockSizeOffset = getLong(kData, keyBlockAddressOffset);
+        this.keyBlockSize = getLong(kData, keyBlockSizeOffset);
+        this.maxValue = getLong(kData, keyBlockSizeOffset + 8);
+        this.firstEntryOffset = keyBlockSizeOffset + 16;
+    }
+
+    /**
+     * Removes values, which are not less than given low bits, from container.
+     *
+     * @return remaining cardinality
+     */
+    private int trim(long c, int cardinality, int low) {
+        int remaining = 0;
+        if (getInt(c + 24) > 0) {
+            long values = vData.addressOf(c + CONTAINER_HEADER, cardinality * 2);
+            while (remaining < cardinality && (Unsafe.getUnsafe().getShort(values + remaining * 2) & CHUNK_MASK) < low) {
+                remaining++;
+            }
+        } else {
+            long words = vData.addressOf(c + CONTAINER_HEADER, BITMAP_SIZE);
+            for (int w = 0; w < WORD_COUNT; w++) {
+                long a = words + w * 8;
+                int lo = w << 6;
+                long bits = Unsafe.getUnsafe().getLong(a);
+                if (lo + 64 > low) {
+                    bits = lo >= low ? 0 : bits & ((1L << (low - lo)) - 1);
+                    Unsafe.getUnsafe().putLong(a, bits);
+                }
+                remaining += Long.bitCount(bits);
+            }
+        }
+        Unsafe.getUnsafe().putInt(vData.addressOf(c + 20, 4), remaining);
+        return remaining;
+    }
+
+    private void tx() {
+        if (startTx) {
+            this.keyBlockSizeOffset = kData.getAppendOffset();
+            this.firstEntryOffset = keyBlockSizeOffset + 16;
+
+            long srcOffset = getLong(kData, keyBlockAddressOffset);
+            int size = (int) (this.keyBlockSize + 8 + 8);
+            // destination is mapped first, source is within mapped extent after that
+            long dst = kData.addressOf(keyBlockSizeOffset, size);
+            Unsafe.getUnsafe().copyMemory(kData.addressOf(srcOffset, size), dst, size);
+        }
+        startTx = false;
+    }
+
+    /**
+     * Positions at containers of key in ascending chunk order to combine them with bitmaps of other keys.
+     */
+    public static class ChunkCursor {
+        private BitmapIndex index;
+        private long container;
+
+        public ChunkCursor of(BitmapIndex index, int key) {
+            this.index = index;
+            long keyOffset = index.getKeyOffset(key);
+            this.container = key < -1 || keyOffset >= index.firstEntryOffset + index.keyBlockSize ? 0 : index.getLong(index.kData, keyOffset);
+            return this;
+        }
+
+        /**
+         * Sets bits of key rows, which are in given chunk, in bitmap. Chunks must be requested in ascending
+         * order.
+         *
+         * @param chunk row id shifted right by {@link #CHUNK_BITS}
+         * @param words bitmap of {@link #WORD_COUNT} words
+         * @return true if any of key rows are in chunk
+         */
+        public boolean or(int chunk, long[] words) {
+            while (container != 0 && index.getInt(container + 16) < chunk) {
+                container = index.getLong(index.vData, container + 8);
+            }
+
+            if (container == 0 || index.getInt(container + 16) != chunk) {
+                return false;
+            }
+
+            int cardinality = index.getInt(container + 20);
+            if (index.getInt(container + 24) > 0) {
+                long values = index.vData.addressOf(container + CONTAINER_HEADER, cardinality * 2);
+                for (int i = 0; i < cardinality; i++) {
+                    int low = Unsafe.getUnsafe().getShort(values + i * 2) & CHUNK_MASK;
+                    words[low >>> 6] |= 1L << low;
+                }
+            } else {
+                long address = index.vData.addressOf(container + CONTAINER_HEADER, BITMAP_SIZE);
+                for (int w = 0; w < WORD_COUNT; w++) {
+                    words[w] |= Unsafe.getUnsafe().getLong(address + w * 8);
+                }
+            }
+            return cardinality > 0;
+        }
+    }
+
+    private abstract class AbstractCursor implements IndexCursor {
+        long container;
+        long base;
+        long address;
+        int cardinality;
+        boolean array;
+        int pos;
+        long size;
+        long next;
+        boolean hasNext;
+
+        @Override
+        public boolean hasNext() {
+            if (hasNext) {
+                return true;
+            }
+
+            while (container != 0) {
+                int low = advance();
+                if (low > -1) {
+                    long v = base + low;
+                    if (v < maxValue) {
+                        next = v;
+                        return hasNext = true;
+                    }
+                    continue;
+                }
+                open(following());
+            }
+            return false;
+        }
+
+        @Override
+        public long next() {
+            hasNext();
+            hasNext = false;
+            return next;
+        }
+
+        @Override
+        public long size() {
+            return size;
+        }
+
+        abstract int advance();
+
+        abstract long following();
+
+        void open(long c) {
+            this.container = c;
+            if (c != 0) {
+                this.base = (long) getInt(c + 16) << CHUNK_BITS;
+                this.cardinality = getInt(c + 20);
+                this.array = getInt(c + 24) > 0;
+                this.address = vData.addressOf(c + CONTAINER_HEADER, array ? cardinality * 2 : BITMAP_SIZE);
+            }
+        }
+
+        void setKey(int key, int entryOffset) {
+            this.hasNext = false;
+            long keyOffset = getKeyOffset(key);
+            if (key < -1 || keyOffset >= firstEntryOffset + keyBlockSize) {
+                this.size = 0;
+                this.container = 0;
+            } else {
+                this.size = getLong(kData, keyOffset + 16);
+                open(size == 0 ? 0 : getLong(kData, keyOffset + entryOffset));
+            }
+        }
+    }
+
+    private class FwdCursor extends AbstractCursor {
+
+        @Override
+        int advance() {
+            if (array) {
+                return pos < cardinality ? Unsafe.getUnsafe().getShort(address + (pos++) * 2) & CHUNK_MASK : -1;
+            }
+
+            int w = pos >>> 6;
+            if (w >= WORD_COUNT) {
+                return -1;
+            }
+            long bits = Unsafe.getUnsafe().getLong(address + w * 8) & (-1L << (pos & 63));
+            while (bits == 0) {
+                if (++w == WORD_COUNT) {
+                    pos = 1 << CHUNK_BITS;
+                    return -1;
+                }
+                bits = Unsafe.getUnsafe().getLong(address + w * 8);
+            }
+            int low = (w << 6) + Long.numberOfTrailingZeros(bits);
+            pos = low + 1;
+            return low;
+        }
+
+        @Override
+        long following() {
+            return getLong(vData, container + 8);
+        }
+
+        @Override
+        void open(long c) {
+            super.open(c);
+            pos = 0;
+        }
+
+        FwdCursor setKey(int key) {
+            setKey(key, 0);
+            return this;
+        }
+    }
+
+    private class RevCursor extends AbstractCursor {
+
+        @Override
+        int advance() {
+            if (array) {
+                return pos >= 0 ? Unsafe.getUnsafe().getShort(address + (pos--) * 2) & CHUNK_MASK : -1;
+            }
+
+            if (pos < 0) {
+                return -1;
+            }
+            int w = pos >>> 6;
+            long bits = Unsafe.getUnsafe().getLong(address + w * 8) & (-1L >>> (63 - (pos & 63)));
+            while (bits == 0) {
+                if (--w < 0) {
+                    pos = -1;
+                    return -1;
+                }
+                bits = Unsafe.getUnsafe().getLong(address + w * 8);
+            }
+            int low = (w << 6) + 63 - Long.numberOfLeadingZeros(bits);
+            pos = low - 1;
+            return low;
+        }
+
+        @Override
+        long following() {
+            return getLong(vData, container);
+        }
+
+        @Override
+        void open(long c) {
+            super.open(c);
+            pos = array ? cardinality - 1 : CHUNK_MASK;
+        }
+
+        RevCursor setKey(int key) {
+            setKey(key, 8);
+            return this;
+        }
+    }
+}
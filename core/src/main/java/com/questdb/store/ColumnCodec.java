@@ -0,0 +1,530 @@
+/*******************************************************************************
+ *    ___                  _   ____  ____
+ *   / _ \ _   _  ___  ___| |_|  _ \| __ )
+ *  | | | | | | |/ _ \/ __| __| | | |  _ \
+ *  | |_| | |_| |  __/\__ \ |_| |_| | |_) |
+ *   \__\_\\__,_|\___||___/\__|____/|____/
+ *
+ * Copyright (C) 2014-2016 Appsicle
+ *
+ * This program is free software: you can redistribute it and/or  modify
+ * it under the terms of the GNU Affero General Public License, version 3,
+ * as published by the Free Software Foundation.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ *
+ ******************************************************************************/
+
+package com.questdb.store;
+
+import com.questdb.ex.JournalConfigurationException;
+import com.questdb.factory.configuration.ColumnMetadata;
+import com.questdb.misc.Unsafe;
+
+import java.util.Arrays;
+
+/**
+ * Block codecs for column files of sealed partitions. Each codec encodes one block of column file
+ * independently, so that blocks can be decoded on demand. Codecs are lossless and operate on raw
+ * little-endian values, which means null values and NaNs survive round trip unchanged.
+ * <ul>
+ * <li>DELTA_OF_DELTA - 8 byte integers, which grow steadily, such as timestamps and offsets. Values are
+ * stored as variable length delta of delta, regular series take one bit per value.</li>
+ * <li>XOR - 8 byte floating point values. Each value is XORed with previous one and only meaningful bits
+ * are stored, with leading and trailing zero counts reused when possible.</li>
+ * <li>BIT_PACK - 4 byte integers, such as symbol keys. Values are stored as offsets from block minimum
+ * using as few bits as block range requires.</li>
+ * <li>LZ4 - any values. Byte oriented LZ77 in LZ4 block format.</li>
+ * </ul>
+ */
+public final class ColumnCodec {
+    public static final int AUTO = -1;
+    public static final int NONE = 0;
+    public static final int DELTA_OF_DELTA = 1;
+    public static final int XOR = 2;
+    public static final int BIT_PACK = 3;
+    public static final int LZ4 = 4;
+
+    private static final int LZ4_HASH_BITS = 12;
+    private static final int LZ4_MIN_MATCH = 4;
+    private static final int LZ4_LAST_LITERALS = 5;
+    private static final int LZ4_MF_LIMIT = 12;
+    private static final int LZ4_MAX_OFFSET = 65535;
+
+    private ColumnCodec() {
+    }
+
+    public static int defaultFor(int columnType) {
+        switch (columnType) {
+            case ColumnType.LONG:
+            case ColumnType.DATE:
+                return DELTA_OF_DELTA;
+            case ColumnType.DOUBLE:
+                return XOR;
+            case ColumnType.INT:
+            case ColumnType.SYMBOL:
+                return BIT_PACK;
+            default:
+                return LZ4;
+        }
+    }
+
+    /**
+     * Resolves {@link #AUTO} codec to default codec of column type and checks that codec can encode
+     * values of column.
+     *
+     * @param m column metadata with final type and size
+     * @return codec to compress column with
+     */
+    public static int resolve(ColumnMetadata m) {
+        int codec = m.codec == AUTO ? defaultFor(m.type) : m.codec;
+        if (!isApplicable(codec, m)) {
+            throw new JournalConfigurationException("Codec %d cannot compress column %s", codec, m.name);
+        }
+        return codec;
+    }
+
+    public static boolean isApplicable(int codec, ColumnMetadata m) {
+        switch (codec) {
+            case NONE:
+            case LZ4:
+                return true;
+            case DELTA_OF_DELTA:
+            case XOR:
+                return m.size == 8 && m.type != ColumnType.STRING && m.type != ColumnType.BINARY;
+            case BIT_PACK:
+                return m.size == 4 && m.type != ColumnType.STRING && m.type != ColumnType.BINARY;
+            default:
+                return false;
+        }
+    }
+
+    /**
+     * Decodes block.
+     *
+     * @param codec  codec block was encoded with
+     * @param src    address of encoded block
+     * @param srcLen length of encoded block
+     * @param dst    destination address
+     * @param dstLen length of decoded block, must be same as length of block passed to encoder
+     */
+    static void decode(int codec, long src, long srcLen, long dst, int dstLen) {
+        switch (codec) {
+            case DELTA_OF_DELTA:
+                decodeDeltaOfDelta(src, dst, dstLen);
+                break;
+            case XOR:
+                decodeXor(src, dst, dstLen);
+                break;
+            case BIT_PACK:
+                decodeBitPack(src, dst, dstLen);
+                break;
+            case LZ4:
+                decodeLz4(src, srcLen, dst);
+                break;
+            default:
+                Unsafe.getUnsafe().copyMemory(src, dst, dstLen);
+                break;
+        }
+    }
+
+    /**
+     * Encodes block.
+     *
+     * @param codec  one of codecs
+     * @param src    address of block
+     * @param len    length of block, for value codecs must be multiple of value size
+     * @param dst    destination address, there must be at least {@link #maxEncodedSize(int)} bytes available
+     * @param hashes scratch table for LZ4, must be at least 2^12 long
+     * @return length of encoded block
+     */
+    static long encode(int codec, long src, int len, long dst, int[] hashes) {
+        switch (codec) {
+            case DELTA_OF_DELTA:
+                return encodeDeltaOfDelta(src, len, dst) - dst;
+            case XOR:
+                return encodeXor(src, len, dst) - dst;
+            case BIT_PACK:
+                return encodeBitPack(src, len, dst) - dst;
+            case LZ4:
+                return encodeLz4(src, len, dst, hashes) - dst;
+            default:
+                Unsafe.getUnsafe().copyMemory(src, dst, len);
+                return len;
+        }
+    }
+
+    static int[] hashTable() {
+        return new int[1 << LZ4_HASH_BITS];
+    }
+
+    static long maxEncodedSize(int len) {
+        // worst case of XOR is 77 bits per 64 bit value
+        return (long) len * 77 / 64 + len / 255 + 32;
+    }
+
+    private static void decodeBitPack(long src, long dst, int len) {
+        int min = Unsafe.getUnsafe().getInt(src);
+        int bits = Unsafe.getUnsafe().getByte(src + 4);
+        if (bits == 0) {
+            for (long p = dst, hi = dst + len; p < hi; p += 4) {
+                Unsafe.getUnsafe().putInt(p, min);
+            }
+            return;
+        }
+        BitReader r = new BitReader(src + 5);
+        for (long p = dst, hi = dst + len; p < hi; p += 4) {
+            Unsafe.getUnsafe().putInt(p, (int) (min + r.read(bits)));
+        }
+    }
+
+    private static void decodeDeltaOfDelta(long src, long dst, int len) {
+        int n = len / 8;
+        if (n == 0) {
+            return;
+        }
+        BitReader r = new BitReader(src);
+        long prev = r.read(64);
+        Unsafe.getUnsafe().putLong(dst, prev);
+        if (n == 1) {
+            return;
+        }
+        long delta = r.read(64);
+        Unsafe.getUnsafe().putLong(dst + 8, prev += delta);
+        for (int i = 2; i < n; i++) {
+            long dod;
+            if (r.read(1) == 0) {
+                dod = 0;
+            } else if (r.read(1) == 0) {
+                dod = signed(r.read(7), 7);
+            } else if (r.read(1) == 0) {
+                dod = signed(r.read(9), 9);
+            } else if (r.read(1) == 0) {
+                dod = signed(r.read(12), 12);
+            } else {
+                dod = r.read(64);
+            }
+            delta += dod;
+            Unsafe.getUnsafe().putLong(dst + i * 8L, prev += delta);
+        }
+    }
+
+    private static void decodeLz4(long src, long srcLen, long dst) {
+        long ip = src;
+        long hi = src + srcLen;
+        long op = dst;
+        while (ip < hi) {
+            int token = Unsafe.getUnsafe().getByte(ip++) & 0xff;
+            int literals = token >>> 4;
+            if (literals == 15) {
+                int b;
+                do {
+                    b = Unsafe.getUnsafe().getByte(ip++) & 0xff;
+                    literals += b;
+                } while (b == 255);
+            }
+            Unsafe.getUnsafe().copyMemory(ip, op, literals);
+            ip += literals;
+            op += literals;
+
+            if (ip >= hi) {
+                break;
+            }
+
+            int offset = (Unsafe.getUnsafe().getByte(ip) & 0xff) | ((Unsafe.getUnsafe().getByte(ip + 1) & 0xff) << 8);
+            ip += 2;
+            int matchLen = token & 15;
+            if (matchLen == 15) {
+                int b;
+                do {
+                    b = Unsafe.getUnsafe().getByte(ip++) & 0xff;
+                    matchLen += b;
+                } while (b == 255);
+            }
+            matchLen += LZ4_MIN_MATCH;
+
+            long match = op - offset;
+            if (offset >= matchLen) {
+                Unsafe.getUnsafe().copyMemory(match, op, matchLen);
+            } else {
+                // overlapping copy repeats pattern
+                for (int i = 0; i < matchLen; i++) {
+                    Unsafe.getUnsafe().putByte(op + i, Unsafe.getUnsafe().getByte(match + i));
+                }
+            }
+            op += matchLen;
+        }
+    }
+
+    private static void decodeXor(long src, long dst, int len) {
+        int n = len / 8;
+        if (n == 0) {
+            return;
+        }
+        BitReader r = new BitReader(src);
+        long prev = r.read(64);
+        Unsafe.getUnsafe().putLong(dst, prev);
+        int lead = 0;
+        int trail = 0;
+        for (int i = 1; i < n; i++) {
+            if (r.read(1) != 0) {
+                if (r.read(1) != 0) {
+                    lead = (int) r.read(5);
+                    int significant = (int) r.read(6) + 1;
+                    trail = 64 - lead - significant;
+                }
+                prev ^= r.read(64 - lead - trail) << trail;
+            }
+            Unsafe.getUnsafe().putLong(dst + i * 8L, prev);
+        }
+    }
+
+    private static long encodeBitPack(long src, int len, long dst) {
+        int n = len / 4;
+        int min = Integer.MAX_VALUE;
+        int max = Integer.MIN_VALUE;
+        for (int i = 0; i < n; i++) {
+            int v = Unsafe.getUnsafe().getInt(src + i * 4L);
+            if (v < min) {
+                min = v;
+            }
+            if (v > max) {
+                max = v;
+            }
+        }
+
+        if (n == 0) {
+            min = max = 0;
+        }
+
+        long range = (long) max - min;
+        int bits = range == 0 ? 0 : 64 - Long.numberOfLeadingZeros(range);
+        Unsafe.getUnsafe().putInt(dst, min);
+        Unsafe.getUnsafe().putByte(dst + 4, (byte) bits);
+        if (bits == 0) {
+            return dst + 5;
+        }
+
+        BitWriter w = new BitWriter(dst + 5);
+        for (int i = 0; i < n; i++) {
+            w.write((long) Unsafe.getUnsafe().getInt(src + i * 4L) - min, bits);
+        }
+        return w.finish();
+    }
+
+    private static long encodeDeltaOfDelta(long src, int len, long dst) {
+        int n = len / 8;
+        if (n == 0) {
+            return dst;
+        }
+        BitWriter w = new BitWriter(dst);
+        long prev = Unsafe.getUnsafe().getLong(src);
+        w.write(prev, 64);
+        if (n > 1) {
+            long v = Unsafe.getUnsafe().getLong(src + 8);
+            long delta = v - prev;
+            w.write(delta, 64);
+            prev = v;
+            for (int i = 2; i < n; i++) {
+                v = Unsafe.getUnsafe().getLong(src + i * 8L);
+                long d = v - prev;
+                long dod = d - delta;
+                if (dod == 0) {
+                    w.write(0, 1);
+                } else if (fits(dod, 7)) {
+                    w.write(2, 2);
+                    w.write(dod, 7);
+                } else if (fits(dod, 9)) {
+                    w.write(6, 3);
+                    w.write(dod, 9);
+                } else if (fits(dod, 12)) {
+                    w.write(14, 4);
+                    w.write(dod, 12);
+                } else {
+                    w.write(15, 4);
+                    w.write(dod, 64);
+                }
+                delta = d;
+                prev = v;
+            }
+        }
+        return w.finish();
+    }
+
+    private static long encodeLz4(long src, int len, long dst, int[] hashes) {
+        final long hi = src + len;
+        long ip = src;
+        long anchor = src;
+        long op = dst;
+
+        if (len > LZ4_MF_LIMIT) {
+            final long matchLimit = hi - LZ4_LAST_LITERALS;
+            final long mfLimit = hi - LZ4_MF_LIMIT;
+            Arrays.fill(hashes, -1);
+
+            while (ip < mfLimit) {
+                int seq = Unsafe.getUnsafe().getInt(ip);
+                int h = (seq * -1640531535) >>> (32 - LZ4_HASH_BITS);
+                int ref = hashes[h];
+                hashes[h] = (int) (ip - src);
+
+                if (ref < 0 || ip - src - ref > LZ4_MAX_OFFSET || Unsafe.getUnsafe().getInt(src + ref) != seq) {
+                    ip++;
+                    continue;
+                }
+
+                long match = src + ref;
+                long p = ip + LZ4_MIN_MATCH;
+                long m = match + LZ4_MIN_MATCH;
+                while (p < matchLimit && Unsafe.getUnsafe().getByte(p) == Unsafe.getUnsafe().getByte(m)) {
+                    p++;
+                    m++;
+                }
+
+                int literals = (int) (ip - anchor);
+                int matchLen = (int) (p - ip) - LZ4_MIN_MATCH;
+                long token = op++;
+                op = putLength(op, literals);
+                Unsafe.getUnsafe().copyMemory(anchor, op, literals);
+                op += literals;
+                int offset = (int) (ip - match);
+                Unsafe.getUnsafe().putByte(op++, (byte) offset);
+                Unsafe.getUnsafe().putByte(op++, (byte) (offset >>> 8));
+                op = putLength(op, matchLen);
+                Unsafe.getUnsafe().putByte(token, (byte) ((Math.min(literals, 15) << 4) | Math.min(matchLen, 15)));
+
+                ip = anchor = p;
+            }
+        }
+
+        // last literals
+        int literals = (int) (hi - anchor);
+        long token = op++;
+        op = putLength(op, literals);
+        Unsafe.getUnsafe().copyMemory(anchor, op, literals);
+        Unsafe.getUnsafe().putByte(token, (byte) (Math.min(literals, 15) << 4));
+        return op + literals;
+    }
+
+    private static long encodeXor(long src, int len, long dst) {
+        int n = len / 8;
+        if (n == 0) {
+            return dst;
+        }
+        BitWriter w = new BitWriter(dst);
+        long prev = Unsafe.getUnsafe().getLong(src);
+        w.write(prev, 64);
+        int prevLead = -1;
+        int prevTrail = 0;
+        for (int i = 1; i < n; i++) {
+            long v = Unsafe.getUnsafe().getLong(src + i * 8L);
+            long x = v ^ prev;
+            prev = v;
+            if (x == 0) {
+                w.write(0, 1);
+                continue;
+            }
+
+            int lead = Math.min(Long.numberOfLeadingZeros(x), 31);
+            int trail = Long.numberOfTrailingZeros(x);
+            if (prevLead != -1 && lead >= prevLead && trail >= prevTrail) {
+                w.write(2, 2);
+                w.write(x >>> prevTrail, 64 - prevLead - prevTrail);
+            } else {
+                int significant = 64 - lead - trail;
+                w.write(3, 2);
+                w.write(lead, 5);
+                w.write(significant - 1, 6);
+                w.write(x >>> trail, significant);
+                prevLead = lead;
+                prevTrail = trail;
+            }
+        }
+        return w.finish();
+    }
+
+    private static boolean fits(long value, int bits) {
+        long bound = 1L << (bits - 1);
+        return value >= -bound && value < bound;
+    }
+
+    private static long mask(int bits) {
+        return bits == 64 ? -1L : (1L << bits) - 1;
+    }
+
+    private static long putLength(long op, int len) {
+        if (len >= 15) {
+            len -= 15;
+            while (len >= 255) {
+                Unsafe.getUnsafe().putByte(op++, (byte) 255);
+                len -= 255;
+            }
+            Unsafe.getUnsafe().putByte(op++, (byte) len);
+        }
+        return op;
+    }
+
+    private static long signed(long value, int bits) {
+        return (value << (64 - bits)) >> (64 - bits);
+    }
+
+    private static final class BitWriter {
+        private long address;
+        private long bits;
+        private int count;
+
+        private BitWriter(long address) {
+            this.address = address;
+        }
+
+        private long finish() {
+            if (count > 0) {
+                Unsafe.getUnsafe().putByte(address++, (byte) (bits << (8 - count)));
+                count = 0;
+            }
+            return address;
+        }
+
+        private void write(long value, int n) {
+            if (n > 32) {
+                write(value >>> 32, n - 32);
+                n = 32;
+            }
+            bits = (bits << n) | (value & mask(n));
+            count += n;
+            while (count >= 8) {
+                count -= 8;
+                Unsafe.getUnsafe().putByte(address++, (byte) (bits >>> count));
+            }
+        }
+    }
+
+    private static final class BitReader {
+        private long address;
+        private long bits;
+        private int count;
+
+        private BitReader(long address) {
+            this.address = address;
+        }
+
+        private long read(int n) {
+            if (n > 32) {
+                long high = read(n - 32);
+                return (high << 32) | read(32);
+            }
+            while (count < n) {
+                bits = (bits << 8) | (Unsafe.getUnsafe().getByte(address++) & 0xff);
+                count += 8;
+            }
+            count -= n;
+            return (bits >>> count) & mask(n);
+        }
+    }
+}
@@ -0,0 +1,359 @@
+/*******************************************************************************
+ *    ___                  _   ____  ____
+ *   / _ \ _   _  ___  ___| |_|  _ \| __ )
+ *  | | | | | | |/ _ \/ __| __| | | |  _ \
+ *  | |_| | |_| |  __/\__ \ |_| |_| | |_) |
+ *   \__\_\\__,_|\___||___/\__|____/|____/
+ *
+ * Copyright (C) 2014-2016 Appsicle
+ *
+ * This program is free software: you can redistribute it and/or  modify
+ * it under the terms of the GNU Affero General Public License, version 3,
+ * as published by the Free Software Foundation.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ *
+ ******************************************************************************/
+
+package com.questdb.store;
+
+import com.questdb.JournalMode;
+import com.questdb.ex.JournalException;
+import com.questdb.ex.JournalRuntimeException;
+import com.questdb.misc.ByteBuffers;
+import com.questdb.misc.Files;
+import com.questdb.misc.Unsafe;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.Arrays;
+
+/**
+ * Read-only view of column file compressed by {@link ColumnCodec}. Compressed file keeps logical, i.e.
+ * uncompressed, size in the same header as {@link MemoryFile}, followed by codec, value width,
+ * block size, block count and table of block offsets. Blocks are decoded on access into cache of
+ * {@link #CACHE_SIZE} blocks, least recently used block is evicted first. Values spanning blocks are
+ * copied into contiguous memory, which is cached the same way. Address returned by
+ * {@link #addressOf(long, int)} remains valid until {@link #CACHE_SIZE} other blocks have been accessed.
+ * <p>
+ * Preloaded prefix of file is decoded into memory of its own, which is kept until file is closed, so
+ * that several threads can read it at once.
+ */
+public class CompressedMemoryFile extends MemoryFile {
+    public static final char SUFFIX = 'z';
+    static final int CACHE_SIZE = 64;
+    private static final int BLOCK_BITS = 16;
+    // codec, width, block bits, block count
+    private static final int HEADER_SIZE = 16;
+    // slot holds values spanning blocks
+    private static final int SLOT_SPAN = -2;
+    private final int codec;
+    private final int blockBits;
+    private final int blockCount;
+    private final long size;
+    // slot of each decoded block, -1 for blocks not in cache
+    private final int[] blockSlots;
+    // block of each slot, -1 for empty slot
+    private final int[] slotBlocks = new int[CACHE_SIZE];
+    private final long[] slotAddresses = new long[CACHE_SIZE];
+    private final long[] slotCapacities = new long[CACHE_SIZE];
+    private final long[] slotUses = new long[CACHE_SIZE];
+    private final long[] spanOffsets = new long[CACHE_SIZE];
+    private final int[] spanSizes = new int[CACHE_SIZE];
+    private long useCount = 0;
+    private long preloaded;
+    private long preloadedLen = 0;
+
+    public CompressedMemoryFile(File file, int bitHint) throws JournalException {
+        super(file, bitHint, JournalMode.READ);
+        this.size = Math.max(0, super.getAppendOffset());
+        if (size > 0) {
+            long a = super.addressOf(0, HEADER_SIZE);
+            this.codec = Unsafe.getUnsafe().getInt(a);
+            this.blockBits = Unsafe.getUnsafe().getInt(a + 8);
+            this.blockCount = Unsafe.getUnsafe().getInt(a + 12);
+        } else {
+            this.codec = ColumnCodec.NONE;
+            this.blockBits = BLOCK_BITS;
+            this.blockCount = 0;
+        }
+        this.blockSlots = new int[blockCount];
+        Arrays.fill(blockSlots, -1);
+        Arrays.fill(slotBlocks, -1);
+    }
+
+    /**
+     * Writes compressed copy of column file. Copy is forced to disk, source file is left intact.
+     *
+     * @param src   column file, possibly overlay file
+     * @param dst   compressed file, normally {@link #compressedFile(File)} in another directory
+     * @param codec codec to compress blocks with
+     * @param width value width
+     * @throws JournalException if file cannot be compressed
+     */
+    public static void compress(File src, File dst, int codec, int width) throws JournalException {
+        int blockSize = 1 << BLOCK_BITS;
+
+        try (MemoryFile mf = OverlayMemoryFile.openFile(src, BLOCK_BITS, JournalMode.READ)) {
+            long size = Math.max(0, mf.getAppendOffset());
+            int blockCount = (int) ((size + blockSize - 1) >>> BLOCK_BITS);
+            int headerSize = 8 + HEADER_SIZE + (blockCount + 1) * 8;
+
+            ByteBuffer header = ByteBuffer.allocateDirect(headerSize).order(ByteOrder.LITTLE_ENDIAN);
+            ByteBuffer block = ByteBuffer.allocateDirect((int) ColumnCodec.maxEncodedSize(blockSize));
+            long blockAddress = ByteBuffers.getAddress(block);
+            int[] hashes = ColumnCodec.hashTable();
+
+            try (RandomAccessFile raf = new RandomAccessFile(dst, "rw")) {
+                FileChannel ch = raf.getChannel();
+                ch.truncate(0);
+                header.putLong(size);
+                header.putInt(codec);
+                header.putInt(width);
+                header.putInt(BLOCK_BITS);
+                header.putInt(blockCount);
+
+                long pos = headerSize;
+                for (int i = 0; i < blockCount; i++) {
+                    // offsets are relative to end of file header
+                    header.putLong(pos - 8);
+                    long lo = (long) i << BLOCK_BITS;
+                    int len = (int) Math.min(blockSize, size - lo);
+                    int n = (int) ColumnCodec.encode(codec, mf.addressOf(lo, len), len, blockAddress, hashes);
+                    block.clear();
+                    block.limit(n);
+                    while (block.hasRemaining()) {
+                        pos += ch.write(block, pos);
+                    }
+                }
+                header.putLong(pos - 8);
+                header.flip();
+                long p = 0;
+                while (header.hasRemaining()) {
+                    p += ch.write(header, p);
+                }
+                ch.force(true);
+            } finally {
+                ByteBuffers.release(header);
+                ByteBuffers.release(block);
+            }
+        } catch (IOException e) {
+            throw new JournalException("Cannot compress %s", e, src);
+        }
+    }
+
+    public static File compressedFile(File file) {
+        return new File(file.getParentFile(), file.getName() + SUFFIX);
+    }
+
+    /**
+     * Writes column file restored from compressed file. Restored file is forced to disk, compressed file
+     * is left intact.
+     *
+     * @param src     compressed file
+     * @param dst     column file to restore
+     * @param bitHint bit hint of restored file
+     * @throws JournalException if file cannot be restored
+     */
+    public static void decompress(File src, File dst, int bitHint) throws JournalException {
+        try (CompressedMemoryFile cmf = new CompressedMemoryFile(src, bitHint)) {
+            try (MemoryFile mf = new MemoryFile(dst, bitHint, JournalMode.APPEND)) {
+                for (int i = 0; i < cmf.blockCount; i++) {
+                    long lo = (long) i << cmf.blockBits;
+                    int len = cmf.blockLen(i);
+                    cmf.decodeBlock(i, mf.addressOf(lo, len));
+                }
+                mf.setAppendOffset(cmf.size);
+                mf.force();
+            }
+        }
+    }
+
+    @Override
+    public long addressOf(long offset, int size) {
+        long hi = offset + size;
+        if (hi <= preloadedLen) {
+            return preloaded + offset;
+        }
+
+        if (offset < 0 || hi > this.size) {
+            throw new JournalRuntimeException("Offset %d is outside of compressed file %s", offset, getFile());
+        }
+
+        if (this.size == 0) {
+            return 0;
+        }
+
+        int block = (int) (Math.min(offset, this.size - 1) >>> blockBits);
+        if (size == 0 || (hi - 1) >>> blockBits == block) {
+            return slotAddresses[blockSlot(block)] + offset - ((long) block << blockBits);
+        }
+        return slotAddresses[spanSlot(offset, size)];
+    }
+
+    @Override
+    public void close() {
+        super.close();
+        for (int i = 0; i < CACHE_SIZE; i++) {
+            if (slotAddresses[i] != 0) {
+                Unsafe.free(slotAddresses[i], slotCapacities[i]);
+                slotAddresses[i] = 0;
+                slotCapacities[i] = 0;
+            }
+            slotBlocks[i] = -1;
+        }
+        Arrays.fill(blockSlots, -1);
+        if (preloaded != 0) {
+            Unsafe.free(preloaded, preloadedLen);
+            preloaded = 0;
+            preloadedLen = 0;
+        }
+    }
+
+    @Override
+    public void compact() {
+    }
+
+    @Override
+    public void force() {
+    }
+
+    @Override
+    public long getAppendOffset() {
+        return size;
+    }
+
+    @Override
+    public void setAppendOffset(long offset) {
+        throw new JournalRuntimeException("Compressed file is read-only: %s", getFile());
+    }
+
+    @Override
+    public MappedByteBuffer getBuffer(long offset, int size) {
+        long a = addressOf(offset, size);
+        MappedByteBuffer buf = Files.mmapView(a, Math.max(size, pageRemaining(offset)), null, false);
+        buf.order(ByteOrder.LITTLE_ENDIAN);
+        return buf;
+    }
+
+    @Override
+    void preload(long len) {
+        len = Math.min(len, size);
+        if (len <= preloadedLen) {
+            return;
+        }
+
+        long address = Unsafe.malloc(len);
+        int n = (int) ((len - 1) >>> blockBits);
+        for (int i = 0; i <= n; i++) {
+            long lo = (long) i << blockBits;
+            int blockLen = blockLen(i);
+            if (lo + blockLen <= len) {
+                decodeBlock(i, address + lo);
+            } else {
+                Unsafe.getUnsafe().copyMemory(slotAddresses[blockSlot(i)], address + lo, len - lo);
+            }
+        }
+
+        if (preloaded != 0) {
+            Unsafe.free(preloaded, preloadedLen);
+        }
+        preloaded = address;
+        preloadedLen = len;
+    }
+
+    @Override
+    int pageRemaining(long offset) {
+        long r = Math.min(((offset >>> blockBits) + 1) << blockBits, size) - offset;
+        return r < 0 ? 0 : (int) r;
+    }
+
+    private int blockSlot(int block) {
+        int slot = blockSlots[block];
+        if (slot == -1) {
+            slot = evict();
+            reserve(slot, 1L << blockBits);
+            decodeBlock(block, slotAddresses[slot]);
+            slotBlocks[slot] = block;
+            blockSlots[block] = slot;
+        }
+        slotUses[slot] = ++useCount;
+        return slot;
+    }
+
+    private int evict() {
+        int slot = 0;
+        for (int i = 1; i < CACHE_SIZE; i++) {
+            if (slotUses[i] < slotUses[slot]) {
+                slot = i;
+            }
+        }
+
+        if (slotBlocks[slot] > -1) {
+            blockSlots[slotBlocks[slot]] = -1;
+        }
+        slotBlocks[slot] = -1;
+        return slot;
+    }
+
+    private void reserve(int slot, long capacity) {
+        if (slotCapacities[slot] < capacity) {
+            if (slotAddresses[slot] != 0) {
+                Unsafe.free(slotAddresses[slot], slotCapacities[slot]);
+            }
+            slotAddresses[slot] = Unsafe.malloc(capacity);
+            slotCapacities[slot] = capacity;
+        }
+    }
+
+    private int spanSlot(long offset, int size) {
+        for (int i = 0; i < CACHE_SIZE; i++) {
+            if (slotBlocks[i] == SLOT_SPAN && spanOffsets[i] == offset && spanSizes[i] >= size) {
+                slotUses[i] = ++useCount;
+                return i;
+            }
+        }
+
+        int slot = evict();
+        reserve(slot, size);
+        slotBlocks[slot] = SLOT_SPAN;
+        spanOffsets[slot] = offset;
+        spanSizes[slot] = size;
+        // span is most recently used, so that blocks it is copied from do not evict it
+        slotUses[slot] = ++useCount;
+
+        long hi = offset + size;
+        long dst = slotAddresses[slot];
+        for (long o = offset; o < hi; ) {
+            int block = (int) (o >>> blockBits);
+            long lo = (long) block << blockBits;
+            long n = Math.min(hi, lo + blockLen(block)) - o;
+            Unsafe.getUnsafe().copyMemory(slotAddresses[blockSlot(block)] + o - lo, dst, n);
+            dst += n;
+            o += n;
+        }
+        return slot;
+    }
+
+    private int blockLen(int block) {
+        return (int) Math.min(1L << blockBits, size - ((long) block << blockBits));
+    }
+
+    private void decodeBlock(int block, long dst) {
+        long offsets = super.addressOf(HEADER_SIZE, (blockCount + 1) * 8) + block * 8L;
+        long lo = Unsafe.getUnsafe().getLong(offsets);
+        long len = Unsafe.getUnsafe().getLong(offsets + 8) - lo;
+        ColumnCodec.decode(codec, super.addressOf(lo, (int) len), len, dst, blockLen(block));
+    }
+}
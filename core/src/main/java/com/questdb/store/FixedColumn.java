@@ -68,6 +68,18 @@ public class FixedColumn extends AbstractColumn {
         Unsafe.getUnsafe().copyMemory(obj, offset, null, getAddress(), width);
     }
 
+    /**
+     * Address of contiguous block of column values. Values of rows from localRowID to localRowID + count - 1
+     * can be read directly from this address.
+     *
+     * @param localRowID first row of block
+     * @param count      number of rows in block
+     * @return address of value of first row
+     */
+    public long getBlockAddress(long localRowID, int count) {
+        return mappedFile.addressOf(getOffset(localRowID), count << bits);
+    }
+
     public boolean getBool(long localRowID) {
         return Unsafe.getBool(mappedFile.addressOf(getOffset(localRowID), 1));
     }
@@ -137,6 +149,16 @@ public class FixedColumn extends AbstractColumn {
         return (txAppendOffset >> bits) - 1;
     }
 
+    /**
+     * Appends value copied from same row of another column of identical width.
+     *
+     * @param src        source column
+     * @param localRowID row in source column
+     */
+    public void putRaw(FixedColumn src, long localRowID) {
+        putBlock(src.mappedFile.addressOf(src.getOffset(localRowID), width), width);
+    }
+
     public void putNull() {
         getAddress();
 //        Unsafe.getUnsafe().setMemory(addressOf(), width, (byte) 0);
@@ -31,11 +31,11 @@ import com.questdb.misc.Files;
 import com.questdb.misc.Numbers;
 import com.questdb.misc.Unsafe;
 import com.questdb.std.LongList;
+import com.questdb.std.ObjHashSet;
 
-import java.io.Closeable;
 import java.io.File;
 
-public class KVIndex implements Closeable {
+public class KVIndex implements ColumnIndex {
 
     /*
         storage for row count and offset
@@ -119,6 +119,7 @@ public class KVIndex implements Closeable {
      * @param key   value of key
      * @param value value
      */
+    @Override
     public void add(int key, long value) {
 
         if (startTx) {
@@ -164,11 +165,13 @@ public class KVIndex implements Closeable {
     /**
      * Closes underlying files.
      */
+    @Override
     public void close() {
         rData.close();
         kData.close();
     }
 
+    @Override
     public void commit() {
         if (!startTx) {
             putLong(kData, keyBlockSizeOffset, keyBlockSize); // 8
@@ -185,6 +188,7 @@ public class KVIndex implements Closeable {
      *
      * @throws JournalException in case of IO problems.
      */
+    @Override
     public void compact() throws JournalException {
         kData.compact();
         rData.compact();
@@ -196,26 +200,38 @@ public class KVIndex implements Closeable {
      * @param key value of key
      * @return true if key has any values associated with it, false otherwise.
      */
+    @Override
     public boolean contains(int key) {
         return getValueCount(key) > 0;
     }
 
+    @Override
     public IndexCursor cursor(int key) {
         return this.cachedCursor.setKey(key);
     }
 
+    @Override
     public void force() {
         kData.force();
     }
 
+    @Override
     public FwdIndexCursor fwdCursor(int key) {
         return this.fwdIndexCursor.setKey(key);
     }
 
+    @Override
+    public void getFiles(ObjHashSet<File> files) {
+        files.add(kData.getFile());
+        files.add(rData.getFile());
+    }
+
+    @Override
     public long getTxAddress() {
         return keyBlockSizeOffset;
     }
 
+    @Override
     public void setTxAddress(long txAddress) {
         if (txAddress == 0) {
             refresh();
@@ -244,6 +260,7 @@ public class KVIndex implements Closeable {
      * @param key value of key
      * @return number of values associated with key. 0 if either key doesn't exist or it doesn't have values.
      */
+    @Override
     public int getValueCount(int key) {
         long keyOffset = getKeyOffset(key);
         if (keyOffset >= firstEntryOffset + keyBlockSize) {
@@ -298,6 +315,7 @@ public class KVIndex implements Closeable {
      * @param key key value
      * @return List of values or exception if key doesn't exist.
      */
+    @Override
     public LongList getValues(int key) {
         LongList result = new LongList();
         getValues(key, result);
@@ -312,6 +330,7 @@ public class KVIndex implements Closeable {
      * @param values the array to copy values to. The contents of this array will be overwritten with new values
      *               beginning from 0 index.
      */
+    @Override
     public void getValues(int key, LongList values) {
 
         if (key < 0) {
@@ -359,6 +378,7 @@ public class KVIndex implements Closeable {
      * @return value
      */
     @SuppressWarnings("unused")
+    @Override
     public long lastValue(int key) {
         long address = keyAddressOrError(key);
         long rowBlockOffset = Unsafe.getUnsafe().getLong(address);
@@ -367,22 +387,31 @@ public class KVIndex implements Closeable {
         return getLong(rData, rowBlockOffset - rowBlockSize + 8 * cellIndex);
     }
 
+    @Override
     public FwdIndexCursor newFwdCursor(int key) {
         FwdIndexCursor cursor = new FwdIndexCursor();
         cursor.setKey(key);
         return cursor;
     }
 
+    @Override
+    public void releaseRetired() {
+        kData.releaseRetired();
+        rData.releaseRetired();
+    }
+
     /**
      * Size of index is in fact maximum of all row IDs. This is useful to keep it in same units of measure as
      * size of columns.
      *
      * @return max of all row IDs in index.
      */
+    @Override
     public long size() {
         return maxValue;
     }
 
+    @Override
     public void truncate(long size) {
         long offset = firstEntryOffset;
         long sz = 0;
@@ -33,6 +33,7 @@ import com.questdb.misc.Misc;
 import com.questdb.misc.Numbers;
 import com.questdb.std.AbstractImmutableIterator;
 import com.questdb.std.CharSequenceIntHashMap;
+import com.questdb.std.ObjHashSet;
 import com.questdb.std.ObjList;
 
 import java.io.Closeable;
@@ -121,6 +122,11 @@ public class MMappedSymbolTable implements Closeable, SymbolTable {
         index.force();
     }
 
+    public void getFiles(ObjHashSet<File> files) {
+        data.getFiles(files);
+        index.getFiles(files);
+    }
+
     public int get(CharSequence value) {
         int result = getQuick(value);
         if (result == VALUE_NOT_FOUND) {
@@ -198,6 +204,11 @@ public class MMappedSymbolTable implements Closeable, SymbolTable {
         return key;
     }
 
+    public void releaseRetired() {
+        data.releaseRetired();
+        index.releaseRetired();
+    }
+
     public void truncate() {
         truncate(0);
     }
@@ -29,33 +29,45 @@ import com.questdb.ex.JournalNoSuchFileException;
 import com.questdb.ex.JournalRuntimeException;
 import com.questdb.log.Log;
 import com.questdb.log.LogFactory;
-import com.questdb.misc.*;
-import com.questdb.std.ObjList;
+import com.questdb.misc.Files;
+import com.questdb.misc.Misc;
+import com.questdb.misc.Numbers;
+import com.questdb.misc.Unsafe;
+import com.questdb.std.LongList;
 
 import java.io.*;
 import java.nio.ByteOrder;
 import java.nio.MappedByteBuffer;
 import java.nio.channels.FileChannel;
 
+/**
+ * Memory mapped file, which is mapped as single contiguous extent starting at file offset zero.
+ * Values are addressed directly as base address plus offset, so there are no value stitches.
+ * Extent grows geometrically in multiples of 2^bitHint. Previous extents are retired rather than
+ * unmapped because addresses handed out earlier may still be in use. Owner of the file unmaps retired
+ * extents via {@link #releaseRetired()} once it is done with such addresses, journals do that on commit
+ * and on refresh. Remaining extents are unmapped on close, or on growth in bulk modes, where only the
+ * current extent stays mapped to prevent the OS from paging large files.
+ */
 public class MemoryFile implements Closeable {
 
     private static final Log LOG = LogFactory.getLog(MemoryFile.class);
     // reserve first 8 bytes in the file for storing pointer to logical end of file
     // so the actual data begins from "DATA_OFFSET"
     private final static int DATA_OFFSET = 8;
+    private final static long MAX_GROWTH = 1L << 30;
+    private final static long MAX_PRE_TOUCH = 1L << 24;
+    private final static int OS_PAGE_SIZE = 4096;
     private final File file;
     private final int journalMode;
+    // address and length pairs of retired extents
+    private final LongList retired = new LongList();
     private int bitHint;
+    private RandomAccessFile raf;
     private FileChannel channel;
-    private MappedByteBuffer offsetBuffer;
-    private ObjList<MappedByteBuffer> buffers;
-    private ObjList<ByteBufferWrapper> stitches;
-    private MappedByteBuffer cachedBuffer;
-    private long cachedBufferLo = -1;
-    private long cachedBufferHi = -1;
+    private long address;
+    private long mappedSize;
     private long cachedAppendOffset = -1;
-    private long cachedAddress;
-    private long offsetDirectAddr;
     private boolean unlockedBuffers = true;
 
     public MemoryFile(File file, int bitHint, int journalMode) throws JournalException {
@@ -65,23 +77,22 @@ public class MemoryFile implements Closeable {
             LOG.info().$("BitHint is too small for ").$(file).$();
         }
         this.bitHint = bitHint;
-        long size = open();
-        this.buffers = new ObjList<>((int) (size >>> bitHint) + 1);
-        this.stitches = new ObjList<>(buffers.size());
+        open();
     }
 
     public long addressOf(long offset, int size) {
-        if (offset > cachedBufferLo && offset + size < cachedBufferHi) {
-            return cachedAddress + offset - cachedBufferLo - 1;
-        } else {
-            return allocateAddress(offset, size);
+        long hi = offset + size + DATA_OFFSET;
+        if (hi <= mappedSize) {
+            return address + DATA_OFFSET + offset;
         }
+        return remap(hi) + DATA_OFFSET + offset;
     }
 
     @Override
     public void close() {
         unmap();
         this.channel = Misc.free(channel);
+        this.raf = Misc.free(raf);
     }
 
     public void compact() throws JournalException {
@@ -90,7 +101,7 @@ public class MemoryFile implements Closeable {
             openInternal("rw");
             try {
                 long newSize = getAppendOffset() + DATA_OFFSET;
-                offsetBuffer = ByteBuffers.release(offsetBuffer);
+                unmap();
                 LOG.debug().$("Compacting ").$(this).$(" to ").$(newSize).$(" bytes").$();
                 channel.truncate(newSize).close();
             } catch (IOException e) {
@@ -109,20 +120,17 @@ public class MemoryFile implements Closeable {
     }
 
     public void force() {
-        int stitchesSize = stitches.size();
-        offsetBuffer.force();
-        for (int i = 0, k = buffers.size(); i < k; i++) {
-            MappedByteBuffer b = buffers.getQuick(i);
-            if (b != null) {
-                b.force();
-            }
+        if (address == 0 || isReadOnly()) {
+            return;
+        }
 
-            if (i < stitchesSize) {
-                ByteBufferWrapper s = stitches.getQuick(i);
-                if (s != null) {
-                    s.getByteBuffer().force();
-                }
+        try {
+            FileDescriptor fd = raf.getFD();
+            for (long o = 0; o < mappedSize; o += MAX_GROWTH) {
+                Files.mmapView(address + o, (int) Math.min(MAX_GROWTH, mappedSize - o), fd, true).force();
             }
+        } catch (IOException e) {
+            throw new JournalRuntimeException("Cannot force %s", e, getFullFileName());
         }
     }
 
@@ -130,177 +138,116 @@ public class MemoryFile implements Closeable {
         if (cachedAppendOffset != -1 && (journalMode == JournalMode.APPEND || journalMode == JournalMode.BULK_APPEND)) {
             return cachedAppendOffset;
         } else {
-            if (offsetBuffer != null) {
-                return cachedAppendOffset = Unsafe.getUnsafe().getLong(offsetDirectAddr);
+            if (mappedSize >= DATA_OFFSET) {
+                return cachedAppendOffset = Unsafe.getUnsafe().getLong(address);
             }
             return -1L;
         }
     }
 
     public void setAppendOffset(long offset) {
-        Unsafe.getUnsafe().putLong(offsetDirectAddr, cachedAppendOffset = offset);
+        Unsafe.getUnsafe().putLong(address, cachedAppendOffset = offset);
     }
 
+    /**
+     * Creates buffer view of file from given offset to end of current extent. View is only valid until
+     * file is closed and must not be released.
+     *
+     * @param offset offset in file
+     * @param size   minimum number of bytes available in view
+     * @return buffer view positioned at zero
+     */
     public MappedByteBuffer getBuffer(long offset, int size) {
-        if (offset > cachedBufferLo && offset + size < cachedBufferHi) {
-            cachedBuffer.position((int) (offset - cachedBufferLo - 1));
-        } else {
-            cachedBuffer = getBufferInternal(offset, size);
-            cachedBufferLo = offset - cachedBuffer.position() - 1;
-            cachedBufferHi = cachedBufferLo + cachedBuffer.limit() + 2;
-            cachedAddress = ByteBuffers.getAddress(cachedBuffer);
-        }
-        return cachedBuffer;
-    }
-
-    public void lockBuffers() {
-        unlockedBuffers = false;
-    }
-
-    @Override
-    public String toString() {
-        return this.getClass().getName() + "[file=" + file + ", appendOffset=" + getAppendOffset() + ']';
-    }
-
-    public void unlockBuffers() {
-        unlockedBuffers = true;
+        long a = addressOf(offset, size);
+        MappedByteBuffer buf = Files.mmapView(a, pageRemaining(offset), null, !isReadOnly());
+        buf.order(ByteOrder.LITTLE_ENDIAN);
+        return buf;
     }
 
-    private long allocateAddress(long offset, int size) {
-        cachedBuffer = getBufferInternal(offset, size);
-        cachedBufferLo = offset - cachedBuffer.position() - 1;
-        cachedBufferHi = cachedBufferLo + cachedBuffer.limit() + 2;
-        cachedAddress = ByteBuffers.getAddress(cachedBuffer);
-        return cachedAddress + cachedBuffer.position();
+    public File getFile() {
+        return file;
     }
 
-    private MappedByteBuffer createMappedBuffer(int index, int bufferSize, long bufferOffset) {
-        MappedByteBuffer buffer;
-        buffer = mapBufferInternal(bufferOffset, bufferSize);
-        assert bufferSize > 0;
-        buffers.extendAndSet(index, buffer);
-        if (unlockedBuffers) {
-            switch (journalMode) {
-                case JournalMode.BULK_READ:
-                case JournalMode.BULK_APPEND:
-                    // for bulk operations unmap all buffers except for current one
-                    // this is to prevent OS paging large files.
-                    cachedBuffer = null;
-                    cachedBufferLo = cachedBufferHi = -1;
-                    int ssz = stitches.size();
-                    for (int i = index - 1; i > -1; i--) {
-                        ByteBuffers.release(buffers.getAndSetQuick(i, null));
-                        if (i < ssz) {
-                            Misc.free(stitches.getAndSetQuick(i, null));
-                        }
-                    }
-                    break;
-                default:
-                    break;
-            }
-        }
-        return buffer;
+    public void lockBuffers() {
+        unlockedBuffers = false;
     }
 
-    private MappedByteBuffer createStitchBuffer(int size, int index, long stitchOffset) {
-        ByteBufferWrapper bufferWrapper = stitches.getQuiet(index);
-        if (bufferWrapper != null) {
-            // if we already have a stitch for this buffer
-            // it could be too small for the size
-            // if that's the case - discard the existing stitch and create a larger one.
-            if (bufferWrapper.getOffset() != stitchOffset || bufferWrapper.getByteBuffer().limit() < size) {
-                bufferWrapper.close();
-                bufferWrapper = null;
-            } else {
-                bufferWrapper.getByteBuffer().rewind();
-            }
+    /**
+     * Extends file by its first page and touches mapped memory, so that file extension and page faults
+     * happen ahead of first append. Touched memory is capped, bitHint of large columns can be very generous.
+     * Must not be called concurrently with writes to this file.
+     */
+    public void preTouch() {
+        if (isReadOnly() || address == 0) {
+            return;
         }
 
-        if (bufferWrapper == null) {
-            bufferWrapper = new ByteBufferWrapper(stitchOffset, mapBufferInternal(stitchOffset, size));
-            stitches.extendAndSet(index, bufferWrapper);
+        long hi = Math.min(1L << bitHint, MAX_PRE_TOUCH);
+        long a = addressOf(0, (int) hi);
+        for (long o = 0; o < hi; o += OS_PAGE_SIZE) {
+            // rewrite existing byte, file may already have data
+            Unsafe.getUnsafe().putByte(a + o, Unsafe.getUnsafe().getByte(a + o));
         }
-
-        return bufferWrapper.getByteBuffer();
     }
 
-    private MappedByteBuffer getBufferInternal(long offset, int size) {
-
-        int bufferSize = 1 << bitHint;
-        int index = (int) (offset >>> bitHint);
-        long bufferOffset = ((long) index) << ((long) bitHint);
-        int bufferPos = (int) (offset - bufferOffset);
-
-        MappedByteBuffer buffer = buffers.getQuiet(index);
-
-        // this may occur when journal is refreshed.
-        if (buffer != null && buffer.limit() < bufferPos) {
-            buffer = ByteBuffers.release(buffer);
-        }
-
-        if (buffer == null) {
-            buffer = createMappedBuffer(index, bufferSize, bufferOffset);
+    /**
+     * Unmaps extents retired by growth of this file. Addresses handed out before last growth become
+     * invalid, so caller must not hold any.
+     */
+    public void releaseRetired() {
+        for (int i = 0, n = retired.size(); i < n; i += 2) {
+            Files.munmap(retired.getQuick(i), retired.getQuick(i + 1));
         }
+        retired.clear();
+    }
 
-        buffer.position(bufferPos);
+    @Override
+    public String toString() {
+        return this.getClass().getName() + "[file=" + file + ", appendOffset=" + getAppendOffset() + ']';
+    }
 
-        if (buffer.remaining() < size) {
-            // if the desired size is larger than remaining buffer we need to crate
-            // a stitch buffer, which would accommodate the size
-            return createStitchBuffer(size, index, bufferOffset + bufferPos);
+    public void unlockBuffers() {
+        unlockedBuffers = true;
+        if (isBulk()) {
+            releaseRetired();
         }
-        return buffer;
     }
 
     private String getFullFileName() {
         return this.file.getAbsolutePath();
     }
 
-    private MappedByteBuffer mapBufferInternal(long offset, int size) {
-        long actualOffset = offset + DATA_OFFSET;
+    private boolean isBulk() {
+        return journalMode == JournalMode.BULK_READ || journalMode == JournalMode.BULK_APPEND;
+    }
 
+    private boolean isReadOnly() {
+        return journalMode == JournalMode.READ || journalMode == JournalMode.BULK_READ;
+    }
+
+    private void map(long size) {
         try {
-            MappedByteBuffer buf;
-            switch (journalMode) {
-                case JournalMode.READ:
-                case JournalMode.BULK_READ:
-                    // make sure size does not extend beyond actual file size, otherwise
-                    // java would assume we want to write and throw an exception
-                    long sz;
-                    if (actualOffset + ((long) size) > channel.size()) {
-                        sz = channel.size() - actualOffset;
-                    } else {
-                        sz = size;
-                    }
-                    assert sz > 0;
-                    buf = channel.map(FileChannel.MapMode.READ_ONLY, actualOffset, sz);
-                    break;
-                default:
-                    buf = channel.map(FileChannel.MapMode.READ_WRITE, actualOffset, size);
-                    break;
+            long a = Files.mmap(channel, size, !isReadOnly());
+            if (address != 0) {
+                if (unlockedBuffers && isBulk()) {
+                    Files.munmap(address, mappedSize);
+                } else {
+                    retired.add(address);
+                    retired.add(mappedSize);
+                }
             }
-            buf.order(ByteOrder.LITTLE_ENDIAN);
-            return buf;
+            address = a;
+            mappedSize = size;
         } catch (IOException e) {
-            throw new JournalRuntimeException("Failed to memory map: %s", e, file.getAbsolutePath());
+            throw new JournalRuntimeException("Failed to memory map: %s", e, getFullFileName());
         }
     }
 
-    private long open() throws JournalException {
-        String m;
-        switch (journalMode) {
-            case JournalMode.READ:
-            case JournalMode.BULK_READ:
-                m = "r";
-                break;
-            default:
-                m = "rw";
-                break;
-        }
-        return openInternal(m);
+    private void open() throws JournalException {
+        openInternal(isReadOnly() ? "r" : "rw");
     }
 
-    private long openInternal(String mode) throws JournalException {
+    private void openInternal(String mode) throws JournalException {
 
         File pf = file.getParentFile();
         if (pf == null) {
@@ -312,26 +259,25 @@ public class MemoryFile implements Closeable {
         }
 
         try {
-            this.channel = new RandomAccessFile(file, mode).getChannel();
+            this.raf = new RandomAccessFile(file, mode);
         } catch (FileNotFoundException e) {
             throw new JournalNoSuchFileException(e);
         }
-
-        long size;
-        try {
-            size = channel.size();
-        } catch (IOException e) {
-            throw new JournalException(e);
-        }
+        this.channel = raf.getChannel();
 
         try {
+            long size = channel.size();
             if ("r".equals(mode)) {
-                this.offsetBuffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, Math.min(size, 8));
+                if (size > 0) {
+                    map(size);
+                }
             } else {
-                this.offsetBuffer = channel.map(FileChannel.MapMode.READ_WRITE, 0, 8);
+                if (size < DATA_OFFSET) {
+                    raf.setLength(size = DATA_OFFSET);
+                }
+                map(size);
             }
-            offsetBuffer.order(ByteOrder.LITTLE_ENDIAN);
-            offsetDirectAddr = ByteBuffers.getAddress(offsetBuffer);
+
             // adjust bitHint to make sure it is not too small
             long offset = getAppendOffset();
             if (offset > 0) {
@@ -346,40 +292,76 @@ public class MemoryFile implements Closeable {
                     }
                 }
             }
-        } catch (IOException e) {
-            try {
-                this.channel.close();
-            } catch (IOException ignore) {
-                // ignore
-            }
-            this.channel = null;
+        } catch (IOException | JournalRuntimeException e) {
+            close();
             throw new JournalException(e);
         }
+    }
 
-        return size;
+    int getRetiredCount() {
+        return retired.size() / 2;
+    }
+
+    /**
+     * Makes first len bytes of file readable ahead of time. Reads from preloaded range do not change
+     * state of file and are safe to make from several threads.
+     *
+     * @param len number of bytes to preload
+     */
+    void preload(long len) {
+        long o = 0;
+        while (o < len) {
+            addressOf(o, 1);
+            int n = pageRemaining(o);
+            if (n == 0) {
+                break;
+            }
+            o += n;
+        }
     }
 
     int pageRemaining(long offset) {
-        if (offset > cachedBufferLo && offset < cachedBufferHi) {
-            return (int) (cachedBufferHi - offset - 1);
-        } else {
-            return 0;
+        long r = mappedSize - DATA_OFFSET - offset;
+        return r < 0 ? 0 : r > Integer.MAX_VALUE ? Integer.MAX_VALUE : (int) r;
+    }
+
+    private long remap(long hi) {
+        try {
+            long size;
+            if (isReadOnly()) {
+                // file is grown by writer, map as much as there is
+                size = channel.size();
+                if (size == 0) {
+                    throw new JournalRuntimeException("Cannot map empty file: %s", getFullFileName());
+                }
+
+                if (size < hi) {
+                    throw new JournalRuntimeException("Offset %d is beyond end of file %s", hi - DATA_OFFSET, getFullFileName());
+                }
+            } else {
+                // grow data extent geometrically in whole pages
+                long pageSize = 1L << bitHint;
+                long data = mappedSize - DATA_OFFSET;
+                data = Math.max(hi - DATA_OFFSET, data + Math.min(Math.max(data, pageSize), MAX_GROWTH));
+                size = DATA_OFFSET + (((data - 1) >>> bitHint) + 1) * pageSize;
+                if (channel.size() < size) {
+                    raf.setLength(size);
+                }
+            }
+            map(size);
+            return address;
+        } catch (IOException e) {
+            throw new JournalRuntimeException("Cannot extend %s", e, getFullFileName());
         }
     }
 
     private void unmap() {
-        for (int i = 0, k = buffers.size(); i < k; i++) {
-            ByteBuffers.release(buffers.getQuick(i));
+        releaseRetired();
+        if (address != 0) {
+            Files.munmap(address, mappedSize);
+            address = 0;
+            mappedSize = 0;
         }
-        for (int i = 0, k = stitches.size(); i < k; i++) {
-            Misc.free(stitches.getQuick(i));
-        }
-        cachedBuffer = null;
-        cachedBufferLo = cachedBufferHi = -1;
-        buffers.clear();
-        stitches.clear();
-
-        offsetBuffer = ByteBuffers.release(offsetBuffer);
-        assert offsetBuffer == null;
+        cachedAppendOffset = -1;
     }
 }
@@ -0,0 +1,338 @@
+/*******************************************************************************
+ *    ___                  _   ____  ____
+ *   / _ \ _   _  ___  ___| |_|  _ \| __ )
+ *  | | | | | | |/ _ \/ __| __| | | |  _ \
+ *  | |_| | |_| |  __/\__ \ |_| |_| | |_) |
+ *   \__\_\\__,_|\___||___/\__|____/|____/
+ *
+ * Copyright (C) 2014-2016 Appsicle
+ *
+ * This program is free software: you can redistribute it and/or  modify
+ * it under the terms of the GNU Affero General Public License, version 3,
+ * as published by the Free Software Foundation.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ *
+ ******************************************************************************/
+
+package com.questdb.store;
+
+import com.questdb.JournalMode;
+import com.questdb.ex.JournalException;
+import com.questdb.misc.Files;
+import com.questdb.misc.Misc;
+import com.questdb.misc.Unsafe;
+
+import java.io.File;
+import java.io.FileFilter;
+
+/**
+ * Memory file, which shares its head with file of another data directory. Offsets below split are read from
+ * base file, which is hard link to that file, offsets from split on are kept in this file. This file has the
+ * same layout as {@link MemoryFile} and is sparse below split. Split is kept in first 8 bytes of the sparse range,
+ * so it is never less than 8.
+ * <p>
+ * Base file is never written to, it may be open by readers of the other data directory. Append offset set
+ * below split lowers split instead. Once split drops below 8, head of base file is moved into this file, base
+ * file is unlinked and file is plain {@link MemoryFile} from then on. Values do not span split, blocks, which
+ * do, are copied into memory of their own, which remains valid until next such block is requested.
+ */
+public class OverlayMemoryFile extends MemoryFile {
+    public static final String BASE_SUFFIX = ".b";
+    private static final int SPLIT_SIZE = 8;
+    // bit hint of files, which are copied along with directory
+    private static final int COPY_BITS = 20;
+    private final int bitHint;
+    private File baseFile;
+    private MemoryFile base;
+    private long split;
+    private long span;
+    private long spanCapacity;
+
+    public OverlayMemoryFile(File file, int bitHint, int journalMode) throws JournalException {
+        super(file, bitHint, journalMode);
+        this.bitHint = bitHint;
+        try {
+            openBase();
+        } catch (JournalException e) {
+            close();
+            throw e;
+        }
+    }
+
+    public static File baseFile(File file) {
+        return new File(file.getParentFile(), file.getName() + BASE_SUFFIX);
+    }
+
+    /**
+     * Copies files of directory into another directory. Overlay files are copied from split on and their
+     * base files are linked, or copied where file system cannot link them, so that copy stays sparse.
+     * Copies and target directory are forced to disk.
+     *
+     * @param from   source directory
+     * @param to     target directory
+     * @param filter files to copy
+     * @throws JournalException if any of the files cannot be copied
+     */
+    public static void copyDir(File from, File to, final FileFilter filter) throws JournalException {
+        Files.copyDirOrException(from, to, new FileFilter() {
+            @Override
+            public boolean accept(File f) {
+                return filter.accept(f) && overlayOf(f) == null && findBase(f) == null;
+            }
+        });
+
+        File[] files = from.listFiles(filter);
+        if (files == null) {
+            throw new JournalException("Cannot list %s", from);
+        }
+        for (int i = 0; i < files.length; i++) {
+            File f = files[i];
+            if (f.isFile() && findBase(f) != null) {
+                stage(f, new File(to, f.getName()), COPY_BITS);
+            }
+        }
+        Files.fsyncOrException(to);
+    }
+
+    /**
+     * Base file of overlay file, either plain or compressed.
+     *
+     * @param file overlay file
+     * @return base file or null when file has no base
+     */
+    public static File findBase(File file) {
+        File b = baseFile(file);
+        if (b.exists()) {
+            return b;
+        }
+        b = CompressedMemoryFile.compressedFile(b);
+        return b.exists() ? b : null;
+    }
+
+    /**
+     * Opens file as overlay when it has base file and as plain memory file otherwise.
+     *
+     * @param file        file to open
+     * @param bitHint     bit hint of file
+     * @param journalMode journal mode
+     * @return memory file
+     * @throws JournalException if file cannot be opened
+     */
+    public static MemoryFile openFile(File file, int bitHint, int journalMode) throws JournalException {
+        if (findBase(file) != null) {
+            return new OverlayMemoryFile(file, bitHint, journalMode);
+        }
+        return new MemoryFile(file, bitHint, journalMode);
+    }
+
+    /**
+     * Overlay file, which given file is base of.
+     *
+     * @param file file that may be base file
+     * @return overlay file or null when file is not a base file
+     */
+    public static File overlayOf(File file) {
+        String name = file.getName();
+        int n;
+        if (name.endsWith(BASE_SUFFIX)) {
+            n = BASE_SUFFIX.length();
+        } else if (name.endsWith(BASE_SUFFIX + CompressedMemoryFile.SUFFIX)) {
+            n = BASE_SUFFIX.length() + 1;
+        } else {
+            return null;
+        }
+        File f = new File(file.getParentFile(), name.substring(0, name.length() - n));
+        return f.exists() ? f : null;
+    }
+
+    /**
+     * Writes file, which reads the same as given column file, but shares its content with it instead of
+     * copying. Column file, which is plain or compressed, becomes base of new overlay file, which is split at
+     * end of column file. Overlay file keeps its own base and only its range from split on is copied. File,
+     * which is too short to be split, is copied. New file is forced to disk, its directory is not.
+     *
+     * @param src     column file, compressed version of it is looked up too
+     * @param dst     file to write, base file is written next to it
+     * @param bitHint bit hint of file
+     * @throws JournalException if file cannot be linked or copied
+     */
+    public static void stage(File src, File dst, int bitHint) throws JournalException {
+        File z = CompressedMemoryFile.compressedFile(src);
+        File b;
+        MemoryFile mf;
+        if (z.exists()) {
+            b = z;
+            mf = new CompressedMemoryFile(z, bitHint);
+        } else if (src.exists()) {
+            b = findBase(src);
+            if (b == null) {
+                b = src;
+                mf = new MemoryFile(src, bitHint, JournalMode.READ);
+            } else {
+                mf = new OverlayMemoryFile(src, bitHint, JournalMode.READ);
+            }
+        } else {
+            return;
+        }
+
+        try {
+            long split = mf instanceof OverlayMemoryFile ? ((OverlayMemoryFile) mf).split : mf.getAppendOffset();
+            if (split < SPLIT_SIZE) {
+                split = 0;
+            } else {
+                File db = baseFile(dst);
+                Files.linkOrCopy(b, b.getName().charAt(b.getName().length() - 1) == CompressedMemoryFile.SUFFIX ? CompressedMemoryFile.compressedFile(db) : db);
+            }
+            copy(mf, dst, bitHint, split);
+        } finally {
+            mf.close();
+        }
+    }
+
+    @Override
+    public long addressOf(long offset, int size) {
+        if (offset >= split) {
+            return super.addressOf(offset, size);
+        }
+
+        if (offset + size <= split) {
+            return base.addressOf(offset, size);
+        }
+        return spanAddress(offset, size);
+    }
+
+    @Override
+    public void close() {
+        base = Misc.free(base);
+        if (span != 0) {
+            Unsafe.free(span, spanCapacity);
+            span = 0;
+            spanCapacity = 0;
+        }
+        super.close();
+    }
+
+    @Override
+    public void compact() throws JournalException {
+        super.compact();
+        openBase();
+    }
+
+    @Override
+    public void delete() {
+        super.delete();
+        if (baseFile != null) {
+            Files.delete(baseFile);
+        }
+    }
+
+    @Override
+    public void setAppendOffset(long offset) {
+        if (offset < split) {
+            lowerSplit(offset);
+        }
+        super.setAppendOffset(offset);
+    }
+
+    @Override
+    public void releaseRetired() {
+        super.releaseRetired();
+        if (base != null) {
+            base.releaseRetired();
+        }
+    }
+
+    long getSplit() {
+        return split;
+    }
+
+    @Override
+    int pageRemaining(long offset) {
+        if (offset >= split) {
+            return super.pageRemaining(offset);
+        }
+        return (int) Math.min(base.pageRemaining(offset), split - offset);
+    }
+
+    /**
+     * Writes range of file from split on into plain memory file, split itself is written too.
+     */
+    private static void copy(MemoryFile src, File dst, int bitHint, long split) throws JournalException {
+        try (MemoryFile mf = new MemoryFile(dst, bitHint, JournalMode.APPEND)) {
+            long size = Math.max(0, src.getAppendOffset());
+            long o = split;
+            while (o < size) {
+                long a = src.addressOf(o, 1);
+                int n = (int) Math.min(size - o, src.pageRemaining(o));
+                Unsafe.getUnsafe().copyMemory(a, mf.addressOf(o, n), n);
+                o += n;
+            }
+            if (split > 0) {
+                Unsafe.getUnsafe().putLong(mf.addressOf(0, SPLIT_SIZE), split);
+            }
+            mf.setAppendOffset(size);
+            mf.force();
+        }
+    }
+
+    private void lowerSplit(long offset) {
+        if (offset < SPLIT_SIZE) {
+            // split has nowhere to go, keep head of base file, which is about to be unlinked
+            long head = Unsafe.getUnsafe().getLong(base.addressOf(0, SPLIT_SIZE));
+            base = Misc.free(base);
+            Files.delete(baseFile);
+            baseFile = null;
+            split = 0;
+            Unsafe.getUnsafe().putLong(super.addressOf(0, SPLIT_SIZE), head);
+        } else {
+            Unsafe.getUnsafe().putLong(super.addressOf(0, SPLIT_SIZE), split = offset);
+        }
+    }
+
+    private void openBase() throws JournalException {
+        baseFile = findBase(getFile());
+        if (baseFile == null) {
+            split = 0;
+            return;
+        }
+
+        if (baseFile.getName().charAt(baseFile.getName().length() - 1) == CompressedMemoryFile.SUFFIX) {
+            base = new CompressedMemoryFile(baseFile, bitHint);
+        } else {
+            base = new MemoryFile(baseFile, bitHint, JournalMode.READ);
+        }
+        // split is never beyond base, base may have been unlinked after split was read
+        split = Math.min(Unsafe.getUnsafe().getLong(super.addressOf(0, SPLIT_SIZE)), Math.max(0, base.getAppendOffset()));
+        if (split < SPLIT_SIZE) {
+            split = 0;
+            base = Misc.free(base);
+        }
+    }
+
+    private long spanAddress(long offset, int size) {
+        if (size > spanCapacity) {
+            if (span != 0) {
+                Unsafe.free(span, spanCapacity);
+            }
+            span = Unsafe.malloc(size);
+            spanCapacity = size;
+        }
+        long o = offset;
+        while (o < split) {
+            long a = base.addressOf(o, 1);
+            int n = (int) Math.min(split - o, base.pageRemaining(o));
+            Unsafe.getUnsafe().copyMemory(a, span + o - offset, n);
+            o += n;
+        }
+        int n = (int) (offset + size - split);
+        Unsafe.getUnsafe().copyMemory(super.addressOf(split, n), span + split - offset, n);
+        return span;
+    }
+}
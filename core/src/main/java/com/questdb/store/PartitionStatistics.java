@@ -0,0 +1,358 @@
+/*******************************************************************************
+ *    ___                  _   ____  ____
+ *   / _ \ _   _  ___  ___| |_|  _ \| __ )
+ *  | | | | | | |/ _ \/ __| __| | | |  _ \
+ *  | |_| | |_| |  __/\__ \ |_| |_| | |_) |
+ *   \__\_\\__,_|\___||___/\__|____/|____/
+ *
+ * Copyright (C) 2014-2016 Appsicle
+ *
+ * This program is free software: you can redistribute it and/or  modify
+ * it under the terms of the GNU Affero General Public License, version 3,
+ * as published by the Free Software Foundation.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ *
+ ******************************************************************************/
+
+package com.questdb.store;
+
+import com.questdb.JournalMode;
+import com.questdb.ex.JournalException;
+import com.questdb.factory.configuration.ColumnMetadata;
+import com.questdb.misc.ByteBuffers;
+import com.questdb.misc.Misc;
+import com.questdb.misc.Unsafe;
+
+import java.io.Closeable;
+import java.io.File;
+
+/**
+ * Min, max and null count of numeric and DATE columns of partition, kept for whole partition and for
+ * each block of 2^16 rows. Integer values are kept as longs and floating point values as doubles,
+ * null values are excluded from min and max. Statistics are maintained by writer on commit and
+ * cover first {@link #getRowCount()} rows of partition; rows past that are not described.
+ * <p>
+ * Statistics also count leading rows of partition, which are in non-decreasing order of journal timestamp.
+ * Writer does not enforce order of timestamp column values, so only this count can prove that partition
+ * can be scanned in timestamp order.
+ * <p>
+ * File layout is header of row count, block bits, slot count and ordered row count, followed by records
+ * of partition summary and blocks. Record has min, max and null count for each tracked column.
+ */
+public class PartitionStatistics implements Closeable {
+    public static final String FILE_NAME = "_stats";
+    public static final int SUMMARY = -1;
+    private static final int BLOCK_BITS = 16;
+    private static final int HEADER_SIZE = 24;
+    private static final int SLOT_SIZE = 24;
+    private final MemoryFile file;
+    private final int[] slots;
+    private final int[] types;
+    private final int slotCount;
+    private final int recordSize;
+    private final int timestampIndex;
+
+    public PartitionStatistics(File partitionDir, ColumnMetadata[] metadata, int timestampIndex, int journalMode) throws JournalException {
+        this.timestampIndex = timestampIndex;
+        this.slots = new int[metadata.length];
+        this.types = new int[metadata.length];
+        int n = 0;
+        for (int i = 0; i < metadata.length; i++) {
+            if (isTracked(metadata[i].type)) {
+                types[n] = metadata[i].type;
+                slots[i] = n++;
+            } else {
+                slots[i] = -1;
+            }
+        }
+        this.slotCount = n;
+        this.recordSize = n * SLOT_SIZE;
+        this.file = new MemoryFile(new File(partitionDir, FILE_NAME), ByteBuffers.getBitHint(HEADER_SIZE + Math.max(recordSize, SLOT_SIZE), 4), journalMode);
+        if (journalMode != JournalMode.READ && journalMode != JournalMode.BULK_READ && file.getAppendOffset() < HEADER_SIZE) {
+            long a = file.addressOf(0, HEADER_SIZE);
+            Unsafe.getUnsafe().putLong(a, 0);
+            Unsafe.getUnsafe().putInt(a + 8, BLOCK_BITS);
+            Unsafe.getUnsafe().putInt(a + 12, slotCount);
+            Unsafe.getUnsafe().putLong(a + 16, 0);
+            file.setAppendOffset(HEADER_SIZE + recordSize);
+        }
+    }
+
+    public static boolean exists(File partitionDir) {
+        return new File(partitionDir, FILE_NAME).exists();
+    }
+
+    public static boolean isTracked(int columnType) {
+        switch (columnType) {
+            case ColumnType.BYTE:
+            case ColumnType.SHORT:
+            case ColumnType.INT:
+            case ColumnType.LONG:
+            case ColumnType.DATE:
+            case ColumnType.FLOAT:
+            case ColumnType.DOUBLE:
+                return true;
+            default:
+                return false;
+        }
+    }
+
+    public int blockOf(long row) {
+        return (int) (row >>> BLOCK_BITS);
+    }
+
+    /**
+     * @param block block number
+     * @return first row after block, which is described by statistics
+     */
+    public long blockHi(int block) {
+        return Math.min(((long) block + 1) << BLOCK_BITS, getRowCount());
+    }
+
+    public long blockLo(int block) {
+        return (long) block << BLOCK_BITS;
+    }
+
+    @Override
+    public void close() {
+        Misc.free(file);
+    }
+
+    public void force() {
+        file.force();
+    }
+
+    public int getBlockCount() {
+        return (int) ((getRowCount() + (1 << BLOCK_BITS) - 1) >>> BLOCK_BITS);
+    }
+
+    public double getDoubleMax(int columnIndex, int block) {
+        return Double.longBitsToDouble(Unsafe.getUnsafe().getLong(slotAddress(columnIndex, block) + 8));
+    }
+
+    public double getDoubleMin(int columnIndex, int block) {
+        return Double.longBitsToDouble(Unsafe.getUnsafe().getLong(slotAddress(columnIndex, block)));
+    }
+
+    public long getLongMax(int columnIndex, int block) {
+        return Unsafe.getUnsafe().getLong(slotAddress(columnIndex, block) + 8);
+    }
+
+    public long getLongMin(int columnIndex, int block) {
+        return Unsafe.getUnsafe().getLong(slotAddress(columnIndex, block));
+    }
+
+    public long getNullCount(int columnIndex, int block) {
+        return Unsafe.getUnsafe().getLong(slotAddress(columnIndex, block) + 16);
+    }
+
+    /**
+     * @return number of rows from start of partition, which are known to be ordered by journal timestamp
+     */
+    public long getOrderedRowCount() {
+        return file.getAppendOffset() < HEADER_SIZE ? 0 : Unsafe.getUnsafe().getLong(file.addressOf(16, 8));
+    }
+
+    public long getRowCount() {
+        return file.getAppendOffset() < HEADER_SIZE ? 0 : Unsafe.getUnsafe().getLong(file.addressOf(0, 8));
+    }
+
+    /**
+     * @param block block number or {@link #SUMMARY}
+     * @return number of rows described by block or summary
+     */
+    public long getRowCount(int block) {
+        return block == SUMMARY ? getRowCount() : blockHi(block) - blockLo(block);
+    }
+
+    public boolean isTrackedColumn(int columnIndex) {
+        return slots[columnIndex] != -1;
+    }
+
+    /**
+     * Discards statistics past given row count. Block, which contains first discarded row, is
+     * recomputed from its beginning on next update.
+     *
+     * @param size new row count
+     */
+    public void truncate(long size) {
+        if (size < getRowCount()) {
+            setRowCount(blockLo(blockOf(size)));
+            setOrderedRowCount(Math.min(getOrderedRowCount(), getRowCount()));
+            updateSummary();
+        }
+    }
+
+    /**
+     * Extends statistics to cover given number of rows of columns. Rows, which are already described,
+     * are not read again.
+     *
+     * @param columns partition columns
+     * @param size    number of rows to describe
+     */
+    public void update(AbstractColumn[] columns, long size) {
+        long rows = getRowCount();
+        if (rows > size) {
+            truncate(size);
+            rows = getRowCount();
+        }
+
+        if (rows == size || slotCount == 0) {
+            return;
+        }
+
+        updateOrder(columns, rows, size);
+
+        while (rows < size) {
+            int block = blockOf(rows);
+            long hi = Math.min(size, blockLo(block + 1));
+            long record = file.addressOf(HEADER_SIZE + ((long) block + 1) * recordSize, recordSize);
+            boolean init = rows == blockLo(block);
+            for (int i = 0; i < columns.length; i++) {
+                int slot = slots[i];
+                if (slot != -1) {
+                    accumulate((FixedColumn) columns[i], types[slot], rows, hi, record + slot * SLOT_SIZE, init);
+                }
+            }
+            rows = hi;
+        }
+
+        file.setAppendOffset(HEADER_SIZE + ((long) blockOf(size - 1) + 2) * recordSize);
+        setRowCount(size);
+        updateSummary();
+    }
+
+    private static void accumulate(FixedColumn column, int type, long lo, long hi, long address, boolean init) {
+        long nulls = init ? 0 : Unsafe.getUnsafe().getLong(address + 16);
+        switch (type) {
+            case ColumnType.FLOAT:
+            case ColumnType.DOUBLE:
+                double dMin = init ? Double.POSITIVE_INFINITY : Double.longBitsToDouble(Unsafe.getUnsafe().getLong(address));
+                double dMax = init ? Double.NEGATIVE_INFINITY : Double.longBitsToDouble(Unsafe.getUnsafe().getLong(address + 8));
+                for (long r = lo; r < hi; r++) {
+                    double v = type == ColumnType.DOUBLE ? column.getDouble(r) : column.getFloat(r);
+                    if (v != v) {
+                        nulls++;
+                    } else {
+                        if (v < dMin) {
+                            dMin = v;
+                        }
+                        if (v > dMax) {
+                            dMax = v;
+                        }
+                    }
+                }
+                Unsafe.getUnsafe().putLong(address, Double.doubleToRawLongBits(dMin));
+                Unsafe.getUnsafe().putLong(address + 8, Double.doubleToRawLongBits(dMax));
+                break;
+            default:
+                long min = init ? Long.MAX_VALUE : Unsafe.getUnsafe().getLong(address);
+                long max = init ? Long.MIN_VALUE : Unsafe.getUnsafe().getLong(address + 8);
+                for (long r = lo; r < hi; r++) {
+                    long v;
+                    switch (type) {
+                        case ColumnType.BYTE:
+                            v = column.getByte(r);
+                            break;
+                        case ColumnType.SHORT:
+                            v = column.getShort(r);
+                            break;
+                        case ColumnType.INT:
+                            int i = column.getInt(r);
+                            v = i == Integer.MIN_VALUE ? Long.MIN_VALUE : i;
+                            break;
+                        default:
+                            v = column.getLong(r);
+                            break;
+                    }
+
+                    if (v == Long.MIN_VALUE) {
+                        nulls++;
+                    } else {
+                        if (v < min) {
+                            min = v;
+                        }
+                        if (v > max) {
+                            max = v;
+                        }
+                    }
+                }
+                Unsafe.getUnsafe().putLong(address, min);
+                Unsafe.getUnsafe().putLong(address + 8, max);
+                break;
+        }
+        Unsafe.getUnsafe().putLong(address + 16, nulls);
+    }
+
+    private void setOrderedRowCount(long rows) {
+        Unsafe.getUnsafe().putLong(file.addressOf(16, 8), rows);
+    }
+
+    private void setRowCount(long rows) {
+        Unsafe.getUnsafe().putLong(file.addressOf(0, 8), rows);
+    }
+
+    private long slotAddress(int columnIndex, int block) {
+        return file.addressOf(HEADER_SIZE + ((long) block + 1) * recordSize + slots[columnIndex] * SLOT_SIZE, SLOT_SIZE);
+    }
+
+    private void updateOrder(AbstractColumn[] columns, long rows, long size) {
+        long ordered = getOrderedRowCount();
+        // once order is broken it stays broken until rows are truncated
+        if (timestampIndex == -1 || ordered < rows) {
+            return;
+        }
+
+        FixedColumn column = (FixedColumn) columns[timestampIndex];
+        long prev = ordered > 0 ? column.getLong(ordered - 1) : Long.MIN_VALUE;
+        while (ordered < size) {
+            long v = column.getLong(ordered);
+            if (v < prev) {
+                break;
+            }
+            prev = v;
+            ordered++;
+        }
+        setOrderedRowCount(ordered);
+    }
+
+    private void updateSummary() {
+        long summary = file.addressOf(HEADER_SIZE, recordSize);
+        int blockCount = getBlockCount();
+        for (int slot = 0; slot < slotCount; slot++) {
+            long s = summary + slot * SLOT_SIZE;
+            long nulls = 0;
+            if (types[slot] == ColumnType.FLOAT || types[slot] == ColumnType.DOUBLE) {
+                double min = Double.POSITIVE_INFINITY;
+                double max = Double.NEGATIVE_INFINITY;
+                for (int b = 0; b < blockCount; b++) {
+                    long a = file.addressOf(HEADER_SIZE + ((long) b + 1) * recordSize + slot * SLOT_SIZE, SLOT_SIZE);
+                    min = Math.min(min, Double.longBitsToDouble(Unsafe.getUnsafe().getLong(a)));
+                    max = Math.max(max, Double.longBitsToDouble(Unsafe.getUnsafe().getLong(a + 8)));
+                    nulls += Unsafe.getUnsafe().getLong(a + 16);
+                }
+                Unsafe.getUnsafe().putLong(s, Double.doubleToRawLongBits(min));
+                Unsafe.getUnsafe().putLong(s + 8, Double.doubleToRawLongBits(max));
+            } else {
+                long min = Long.MAX_VALUE;
+                long max = Long.MIN_VALUE;
+                for (int b = 0; b < blockCount; b++) {
+                    long a = file.addressOf(HEADER_SIZE + ((long) b + 1) * recordSize + slot * SLOT_SIZE, SLOT_SIZE);
+                    min = Math.min(min, Unsafe.getUnsafe().getLong(a));
+                    max = Math.max(max, Unsafe.getUnsafe().getLong(a + 8));
+                    nulls += Unsafe.getUnsafe().getLong(a + 16);
+                }
+                Unsafe.getUnsafe().putLong(s, min);
+                Unsafe.getUnsafe().putLong(s + 8, max);
+            }
+            Unsafe.getUnsafe().putLong(s + 16, nulls);
+        }
+    }
+}
@@ -29,6 +29,8 @@ public class Tx {
 
     public static final byte TX_NORMAL = 0;
     public static final byte TX_FORCE = 1;
+    // flag of command, transaction has replaced data directories of partitions, so readers must reopen them
+    public static final byte TX_REOPEN = 2;
     public long address;
     public long prevTxAddress;
     public byte command;
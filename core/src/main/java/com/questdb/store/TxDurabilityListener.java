@@ -23,30 +23,8 @@
 
 package com.questdb.store;
 
-import com.questdb.misc.ByteBuffers;
+public interface TxDurabilityListener {
+    void onDurable(long txn);
 
-import java.io.Closeable;
-import java.nio.MappedByteBuffer;
-
-class ByteBufferWrapper implements Closeable {
-    private final long offset;
-    private MappedByteBuffer byteBuffer;
-
-    public ByteBufferWrapper(long offset, MappedByteBuffer byteBuffer) {
-        this.offset = offset;
-        this.byteBuffer = byteBuffer;
-    }
-
-    @Override
-    public void close() {
-        byteBuffer = ByteBuffers.release(byteBuffer);
-    }
-
-    public MappedByteBuffer getByteBuffer() {
-        return byteBuffer;
-    }
-
-    public long getOffset() {
-        return offset;
-    }
+    void onError(long txn);
 }
@@ -76,6 +76,10 @@ public class TxLog implements Closeable {
         hb.force();
     }
 
+    public File getFile() {
+        return hb.getFile();
+    }
+
     public long getCurrentTxAddress() {
         if (currentAddress == 0) {
             currentAddress = readCurrentTxAddress();
@@ -117,6 +121,27 @@ public class TxLog implements Closeable {
         return hb.getAppendOffset() < 10 || readCurrentTxAddress() < 1;
     }
 
+    /**
+     * Checks whether reader, which has last seen transaction at given address, has to reopen partitions.
+     * This is the case when any transaction since has {@link Tx#TX_REOPEN} flag, or when journal has been
+     * rolled back past given transaction meanwhile.
+     *
+     * @param address address of transaction seen last
+     * @return true if partitions have to be reopened
+     */
+    public boolean isReopenRequired(long address) {
+        long a = headAddress;
+        while (a > address) {
+            hb.setPos(a + 32);
+            if ((hb.get() & Tx.TX_REOPEN) != 0) {
+                return true;
+            }
+            hb.setPos(a);
+            a = hb.getLong();
+        }
+        return a != address;
+    }
+
     public void read(long address, Tx tx) {
         assert address > 0 : "zero headAddress: " + address;
         tx.address = address;
@@ -159,6 +184,10 @@ public class TxLog implements Closeable {
         return address;
     }
 
+    public void releaseRetired() {
+        hb.releaseRetired();
+    }
+
     public void write(Tx tx, boolean manualTxn) {
         currentAddress = Math.max(9, hb.getAppendOffset());
         hb.setPos(currentAddress);
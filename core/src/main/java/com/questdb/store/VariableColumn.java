@@ -30,7 +30,9 @@ import com.questdb.misc.Unsafe;
 import com.questdb.std.CharSink;
 import com.questdb.std.DirectCharSequence;
 import com.questdb.std.DirectInputStream;
+import com.questdb.std.ObjHashSet;
 
+import java.io.File;
 import java.io.IOException;
 import java.io.InputStream;
 import java.io.OutputStream;
@@ -79,11 +81,29 @@ public class VariableColumn extends AbstractColumn {
         indexColumn.force();
     }
 
+    @Override
+    public void getFiles(ObjHashSet<File> files) {
+        super.getFiles(files);
+        indexColumn.getFiles(files);
+    }
+
     @Override
     public long getOffset(long localRowID) {
         return indexColumn.getLong(localRowID);
     }
 
+    @Override
+    public void preTouch() {
+        super.preTouch();
+        indexColumn.preTouch();
+    }
+
+    @Override
+    public void releaseRetired() {
+        super.releaseRetired();
+        indexColumn.releaseRetired();
+    }
+
     @Override
     public long size() {
         return indexColumn.size();
@@ -205,6 +225,17 @@ public class VariableColumn extends AbstractColumn {
         }
     }
 
+    /**
+     * Length of value in its stored form, length prefix included.
+     *
+     * @param localRowID row id
+     * @return length in bytes
+     */
+    public long getRawLen(long localRowID) {
+        long next = localRowID + 1 < size() ? indexColumn.getLong(localRowID + 1) : getOffset();
+        return next - indexColumn.getLong(localRowID);
+    }
+
     public int getStrLen(long localRowID) {
         return Unsafe.getUnsafe().getInt(mappedFile.addressOf(indexColumn.getLong(localRowID), 4));
     }
@@ -295,6 +326,30 @@ public class VariableColumn extends AbstractColumn {
         return commitAppend(offset, 4);
     }
 
+    /**
+     * Appends value in its stored form, length prefix included, from native memory.
+     *
+     * @param address address of stored value
+     * @param len     length of stored value in bytes
+     * @return local row id of appended value
+     */
+    public long putRaw(long address, long len) {
+        return indexColumn.putLong(putBlock(address, len));
+    }
+
+    /**
+     * Appends value copied verbatim from another variable column.
+     *
+     * @param src        source column
+     * @param localRowID row in source column
+     * @return local row id of appended value
+     */
+    public long putRaw(VariableColumn src, long localRowID) {
+        long offset = src.getOffset(localRowID);
+        int len = (int) src.getRawLen(localRowID);
+        return putRaw(src.mappedFile.addressOf(offset, len), len);
+    }
+
     public long putStr(CharSequence value) {
         if (value == null) {
             return putNull();
@@ -0,0 +1,235 @@
+/*******************************************************************************
+ *    ___                  _   ____  ____
+ *   / _ \ _   _  ___  ___| |_|  _ \| __ )
+ *  | | | | | | |/ _ \/ __| __| | | |  _ \
+ *  | |_| | |_| |  __/\__ \ |_| |_| | |_) |
+ *   \__\_\\__,_|\___||___/\__|____/|____/
+ *
+ * Copyright (C) 2014-2016 Appsicle
+ *
+ * This program is free software: you can redistribute it and/or  modify
+ * it under the terms of the GNU Affero General Public License, version 3,
+ * as published by the Free Software Foundation.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ *
+ ******************************************************************************/
+
+package com.questdb;
+
+import com.questdb.factory.configuration.JournalStructure;
+import com.questdb.io.sink.StringSink;
+import com.questdb.misc.Dates;
+import com.questdb.misc.Misc;
+import com.questdb.misc.Rnd;
+import com.questdb.ql.Record;
+import com.questdb.ql.RecordCursor;
+import com.questdb.ql.RecordSource;
+import com.questdb.std.LongList;
+import com.questdb.store.BitmapIndex;
+import com.questdb.store.IndexCursor;
+import com.questdb.test.tools.AbstractTest;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.File;
+
+public class BitmapIndexTest extends AbstractTest {
+
+    private static final String[] SYMBOLS = {"A", "B", "C", "D", "E", null};
+
+    private File indexFile;
+
+    @Before
+    public void setUp() {
+        indexFile = new File(factory.getConfiguration().getJournalBase(), "index-test");
+    }
+
+    @Test
+    public void testArrayAndBitmapContainers() throws Exception {
+        try (BitmapIndex index = new BitmapIndex(indexFile, 16, 16, JournalMode.APPEND, 0)) {
+            // key 0 is dense and turns into bitmap, key 1 stays sparse, key -1 holds nulls
+            for (long v = 0; v < 200000; v++) {
+                index.add(keyOf(v), v);
+            }
+            index.commit();
+
+            Assert.assertEquals(200000, index.size());
+            Assert.assertEquals(200, index.getValueCount(-1));
+            Assert.assertEquals(66601, index.getValueCount(1));
+            Assert.assertEquals(200000 - 66601 - 200, index.getValueCount(0));
+            Assert.assertEquals(199998, index.lastValue(1));
+            Assert.assertFalse(index.contains(2));
+
+            LongList values = index.getValues(-1);
+            Assert.assertEquals(200, values.size());
+            for (int i = 0; i < values.size(); i++) {
+                Assert.assertEquals(i * 1000 + 1, values.getQuick(i));
+            }
+
+            for (int key = -1; key < 2; key++) {
+                long expected = 199999;
+                IndexCursor cursor = index.cursor(key);
+                while (cursor.hasNext()) {
+                    while (keyOf(expected) != key) {
+                        expected--;
+                    }
+                    Assert.assertEquals(expected--, cursor.next());
+                }
+
+                expected = 0;
+                cursor = index.fwdCursor(key);
+                while (cursor.hasNext()) {
+                    while (keyOf(expected) != key) {
+                        expected++;
+                    }
+                    Assert.assertEquals(expected++, cursor.next());
+                }
+                Assert.assertEquals(index.lastValue(key) + 1, expected);
+            }
+        }
+    }
+
+    @Test
+    public void testChunkCursor() throws Exception {
+        try (BitmapIndex index = new BitmapIndex(indexFile, 16, 16, JournalMode.APPEND, 0)) {
+            index.add(0, 10);
+            index.add(0, 70000);
+            index.add(0, 70001);
+            index.commit();
+
+            long[] words = new long[BitmapIndex.WORD_COUNT];
+            BitmapIndex.ChunkCursor cursor = new BitmapIndex.ChunkCursor().of(index, 0);
+            Assert.assertTrue(cursor.or(0, words));
+            Assert.assertEquals(1L << 10, words[0]);
+
+            words[0] = 0;
+            Assert.assertTrue(cursor.or(1, words));
+            Assert.assertEquals(3L << (70000 - 65536 - 64 * 69), words[69]);
+            Assert.assertFalse(cursor.or(2, words));
+            Assert.assertFalse(new BitmapIndex.ChunkCursor().of(index, 5).or(0, words));
+        }
+    }
+
+    @Test
+    public void testQueries() throws Exception {
+        createJournals();
+
+        assertSame("bitmap where sym = 'A'");
+        assertSame("bitmap where sym in ('A', 'C')");
+        assertSame("bitmap where sym != 'A'");
+        assertSame("bitmap where sym = null");
+        assertSame("bitmap where sym != null");
+        assertSame("bitmap where sym = 'Z'");
+        assertSame("bitmap where sym != 'Z'");
+        assertSame("bitmap where sym in ('A', 'B', 'Z') and sym2 != 'x'");
+        assertSame("bitmap where sym != 'A' and sym2 = 'y' and id > 100");
+        assertSame("bitmap where sym = 'B' and sym2 in ('x', 'z') and timestamp = '2016-01-02T10'");
+        assertSame("bitmap where sym2 = 'z' and timestamp > '2016-01-01T05:00:00.000Z' and timestamp < '2016-01-02T01:00:00.000Z'");
+        assertSame("bitmap latest by sym");
+        assertSame("bitmap latest by sym where sym2 = 'x'");
+    }
+
+    @Test
+    public void testQueryPlan() throws Exception {
+        createJournals();
+        RecordSource src = compile("bitmap where sym in ('A', 'C') and sym2 != 'x' and id > 10");
+        try {
+            StringSink sink = new StringSink();
+            src.toSink(sink);
+            Assert.assertTrue(sink.toString(), sink.toString().contains("{\"op\":\"BitmapIndexRowSource\",\"filter\":\"sym in (A,C) and not sym2 in (x)\"}"));
+        } finally {
+            Misc.free(src);
+        }
+    }
+
+    @Test
+    public void testReopen() throws Exception {
+        createJournals();
+        try (Journal r = factory.reader("bitmap")) {
+            Assert.assertTrue(r.getMetadata().getColumnQuick(r.getMetadata().getColumnIndex("sym")).bitmapIndex);
+            Assert.assertTrue(r.getPartition(0, true).getIndexForColumn("sym") instanceof BitmapIndex);
+        }
+
+        try (Journal r = factory.reader("plain")) {
+            Assert.assertFalse(r.getMetadata().getColumnQuick(r.getMetadata().getColumnIndex("sym")).bitmapIndex);
+        }
+    }
+
+    @Test
+    public void testTruncate() throws Exception {
+        try (BitmapIndex index = new BitmapIndex(indexFile, 16, 16, JournalMode.APPEND, 0)) {
+            for (long v = 0; v < 100000; v++) {
+                index.add((int) (v % 4), v);
+            }
+            index.commit();
+
+            index.truncate(70000);
+            Assert.assertEquals(70000, index.size());
+            Assert.assertEquals(17500, index.getValueCount(0));
+            Assert.assertEquals(69999, index.lastValue(3));
+
+            index.add(0, 70000);
+            index.commit();
+            Assert.assertEquals(70000, index.lastValue(0));
+            Assert.assertEquals(70001, index.size());
+        }
+    }
+
+    private static void append(JournalWriter w, long t, String sym, String sym2, int id) throws Exception {
+        JournalEntryWriter ew = w.entryWriter(t);
+        ew.putSym(0, sym);
+        ew.putSym(1, sym2);
+        ew.putInt(2, id);
+        ew.append();
+    }
+
+    private static int keyOf(long v) {
+        return v % 1000 == 1 ? -1 : v % 3 == 0 ? 1 : 0;
+    }
+
+    private void assertSame(String query) throws Exception {
+        Assert.assertEquals(query, toIds(query.replace("bitmap", "plain")), toIds(query));
+    }
+
+    private void createJournals() throws Exception {
+        try (JournalWriter plain = factory.writer(new JournalStructure("plain").$sym("sym").index().$sym("sym2").index().$int("id").$ts().partitionBy(PartitionBy.DAY))) {
+            try (JournalWriter bitmap = factory.writer(new JournalStructure("bitmap").$sym("sym").bitmapIndex().$sym("sym2").bitmapIndex().$int("id").$ts().partitionBy(PartitionBy.DAY))) {
+                Rnd rnd = new Rnd();
+                long t = Dates.parseDateTime("2016-01-01T00:00:00.000Z");
+                for (int i = 0; i < 150000; i++) {
+                    // long runs of a single symbol fill bitmap containers, the rest stay in arrays
+                    String sym = i < 70000 && i % 7 != 0 ? "A" : SYMBOLS[rnd.nextPositiveInt() % SYMBOLS.length];
+                    String sym2 = i % 3 == 0 ? "x" : i % 3 == 1 ? "y" : "z";
+                    append(plain, t, sym, sym2, i);
+                    append(bitmap, t, sym, sym2, i);
+                    t += 1000;
+                }
+                plain.commit();
+                bitmap.commit();
+            }
+        }
+    }
+
+    private String toIds(String query) throws Exception {
+        RecordSource src = compile(query);
+        try {
+            RecordCursor cursor = src.prepareCursor(factory);
+            StringBuilder b = new StringBuilder();
+            while (cursor.hasNext()) {
+                Record r = cursor.next();
+                b.append(r.getInt(2)).append(',');
+            }
+            return b.toString();
+        } finally {
+            Misc.free(src);
+        }
+    }
+}
@@ -0,0 +1,202 @@
+/*******************************************************************************
+ *    ___                  _   ____  ____
+ *   / _ \ _   _  ___  ___| |_|  _ \| __ )
+ *  | | | | | | |/ _ \/ __| __| | | |  _ \
+ *  | |_| | |_| |  __/\__ \ |_| |_| | |_) |
+ *   \__\_\\__,_|\___||___/\__|____/|____/
+ *
+ * Copyright (C) 2014-2016 Appsicle
+ *
+ * This program is free software: you can redistribute it and/or  modify
+ * it under the terms of the GNU Affero General Public License, version 3,
+ * as published by the Free Software Foundation.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ *
+ ******************************************************************************/
+
+package com.questdb;
+
+import com.questdb.ex.JournalException;
+import com.questdb.ex.JournalRuntimeException;
+import com.questdb.ex.NumericException;
+import com.questdb.factory.configuration.JournalStructure;
+import com.questdb.misc.Dates;
+import com.questdb.misc.Rnd;
+import com.questdb.misc.Unsafe;
+import com.questdb.ql.RecordSource;
+import com.questdb.store.MMappedSymbolTable;
+import com.questdb.test.tools.AbstractTest;
+import com.questdb.test.tools.TestUtils;
+import org.junit.Assert;
+import org.junit.Test;
+
+public class BlockAppendTest extends AbstractTest {
+
+    private static final int COUNT = 3000;
+    private static final String[] SYMBOLS = {"ABC", "DEF", "GHI", "JKL", null};
+
+    private final long[] timestamps = new long[COUNT];
+    private final String[] syms = new String[COUNT];
+    private final int[] ints = new int[COUNT];
+    private final long[] longs = new long[COUNT];
+    private final double[] doubles = new double[COUNT];
+    private final String[] strings = new String[COUNT];
+    private final short[] shorts = new short[COUNT];
+    private final byte[] bools = new byte[COUNT];
+
+    @Test
+    public void testAppendBlocks() throws Exception {
+        generate();
+
+        try (JournalWriter x = createWriter("x"); JournalWriter y = createWriter("y")) {
+            appendRows(y);
+
+            MMappedSymbolTable tab = x.getSymbolTable("sym");
+            int[] keys = new int[COUNT];
+            for (int i = 0; i < COUNT; i++) {
+                keys[i] = syms[i] == null ? -1 : tab.put(syms[i]);
+            }
+
+            // doubles are supplied from native memory
+            long address = Unsafe.malloc(COUNT * 8);
+            try {
+                for (int i = 0; i < COUNT; i++) {
+                    Unsafe.getUnsafe().putDouble(address + i * 8, doubles[i]);
+                }
+
+                int block = 700;
+                for (int lo = 0; lo < COUNT; lo += block) {
+                    int n = Math.min(block, COUNT - lo);
+                    JournalEntryWriter w = x.blockWriter();
+                    w.putBlock(0, timestamps, lo);
+                    w.putBlock(1, keys, lo);
+                    w.putBlock(2, ints, lo);
+                    w.putBlock(3, longs, lo);
+                    w.putBlock(4, address + lo * 8);
+                    w.putBlock(5, strings, lo);
+                    w.putBlock(6, shorts, lo);
+                    w.putBlock(7, bools, lo);
+                    // float column is left out and will be populated with nulls
+                    w.appendBlock(n);
+                    x.commit();
+                }
+            } finally {
+                Unsafe.free(address, COUNT * 8);
+            }
+
+            Assert.assertEquals(COUNT, x.size());
+            Assert.assertTrue(x.getPartitionCount() > 1);
+        }
+
+        assertSame("x", "y");
+        assertSame("x where sym = 'ABC'", "y where sym = 'ABC'");
+        assertSame("x where i = 42", "y where i = 42");
+    }
+
+    @Test
+    public void testOutOfOrderBlock() throws Exception {
+        try (JournalWriter x = createWriter("x")) {
+            JournalEntryWriter w = x.blockWriter();
+            w.putBlock(0, new long[]{3000, 2000, 1000}, 0);
+            try {
+                w.appendBlock(3);
+                Assert.fail();
+            } catch (JournalException ignore) {
+            }
+            Assert.assertEquals(0, x.size());
+        }
+    }
+
+    @Test
+    public void testShortBlock() throws Exception {
+        try (JournalWriter x = createWriter("x")) {
+            JournalEntryWriter w = x.blockWriter();
+            w.putBlock(0, new long[]{1000, 2000, 3000}, 0);
+            w.putBlock(2, new int[]{1, 2, 3, 4}, 2);
+            try {
+                w.appendBlock(3);
+                Assert.fail();
+            } catch (JournalRuntimeException ignore) {
+            }
+
+            w.putBlock(0, new long[]{1000, 2000}, 0);
+            try {
+                w.appendBlock(3);
+                Assert.fail();
+            } catch (JournalRuntimeException ignore) {
+            }
+
+            try {
+                w.putBlock(5, new String[]{"a"}, 2);
+                Assert.fail();
+            } catch (JournalRuntimeException ignore) {
+            }
+            Assert.assertEquals(0, x.size());
+        }
+    }
+
+    private void appendRows(JournalWriter w) throws JournalException {
+        for (int i = 0; i < COUNT; i++) {
+            JournalEntryWriter ew = w.entryWriter(timestamps[i]);
+            ew.putSym(1, syms[i]);
+            ew.putInt(2, ints[i]);
+            ew.putLong(3, longs[i]);
+            ew.putDouble(4, doubles[i]);
+            ew.putStr(5, strings[i]);
+            ew.putShort(6, shorts[i]);
+            ew.putBool(7, bools[i] == 1);
+            ew.append();
+        }
+        w.commit();
+    }
+
+    private void assertSame(String actual, String expected) throws Exception {
+        sink.clear();
+        try (RecordSource rs = compile(expected)) {
+            printer.print(rs, factory);
+        }
+        String e = sink.toString();
+        sink.clear();
+        try (RecordSource rs = compile(actual)) {
+            printer.print(rs, factory);
+        }
+        TestUtils.assertEquals(e, sink);
+    }
+
+    private JournalWriter createWriter(String name) throws JournalException {
+        return factory.writer(new JournalStructure(name)
+                .$ts()
+                .$sym("sym").index()
+                .$int("i").index()
+                .$long("l")
+                .$double("d")
+                .$str("s")
+                .$short("sh")
+                .$bool("b")
+                .$float("f")
+                .partitionBy(PartitionBy.DAY)
+                .$());
+    }
+
+    private void generate() throws NumericException {
+        Rnd rnd = new Rnd();
+        long ts = Dates.parseDateTime("2016-03-10T20:00:00.000Z");
+        for (int i = 0; i < COUNT; i++) {
+            timestamps[i] = ts += 60000;
+            syms[i] = SYMBOLS[rnd.nextPositiveInt() % SYMBOLS.length];
+            ints[i] = rnd.nextPositiveInt() % 100;
+            longs[i] = rnd.nextLong();
+            doubles[i] = rnd.nextDouble();
+            strings[i] = rnd.nextBoolean() ? null : rnd.nextString(rnd.nextPositiveInt() % 20);
+            shorts[i] = rnd.nextShort();
+            bools[i] = (byte) (rnd.nextBoolean() ? 1 : 0);
+        }
+    }
+}
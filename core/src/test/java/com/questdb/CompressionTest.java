@@ -0,0 +1,224 @@
+/*******************************************************************************
+ *    ___                  _   ____  ____
+ *   / _ \ _   _  ___  ___| |_|  _ \| __ )
+ *  | | | | | | |/ _ \/ __| __| | | |  _ \
+ *  | |_| | |_| |  __/\__ \ |_| |_| | |_) |
+ *   \__\_\\__,_|\___||___/\__|____/|____/
+ *
+ * Copyright (C) 2014-2016 Appsicle
+ *
+ * This program is free software: you can redistribute it and/or  modify
+ * it under the terms of the GNU Affero General Public License, version 3,
+ * as published by the Free Software Foundation.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ *
+ ******************************************************************************/
+
+package com.questdb;
+
+import com.questdb.factory.configuration.JournalMetadata;
+import com.questdb.factory.configuration.JournalMetadataBuilder;
+import com.questdb.misc.Dates;
+import com.questdb.model.Quote;
+import com.questdb.store.ColumnCodec;
+import com.questdb.store.CompressedMemoryFile;
+import com.questdb.test.tools.AbstractTest;
+import com.questdb.test.tools.TestUtils;
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.io.File;
+import java.util.concurrent.TimeUnit;
+
+public class CompressionTest extends AbstractTest {
+
+    @Test
+    public void testAppendToSealedPartitionAfterRollback() throws Exception {
+        long ts = Dates.parseDateTime("2013-09-04T10:00:00.000Z");
+        try (JournalWriter<Quote> w = factory.writer(builder("compressed", true))) {
+            TestUtils.generateQuoteData(w, 100, ts, 1000);
+            w.commit();
+            long txn = w.getTxn();
+            long txPin = w.getTxPin();
+
+            TestUtils.generateQuoteData(w, 100, Dates.parseDateTime("2013-10-04T10:00:00.000Z"), 1000);
+            w.commit();
+            w.awaitArchiver();
+            Assert.assertTrue(isSealed(w.getPartition(0, false).getPartitionDir()));
+
+            // last partition of rolled back state is sealed and has to be restored for append
+            w.rollback(txn, txPin);
+            Assert.assertEquals(1, w.getPartitionCount());
+            TestUtils.generateQuoteData(w, 50, w.getMaxTimestamp() + 1, 1000);
+            w.commit();
+            w.awaitArchiver();
+            Assert.assertFalse(isSealed(w.getPartition(0, false).getPartitionDir()));
+        }
+
+        try (Journal<Quote> r = factory.reader(Quote.class, "compressed")) {
+            Assert.assertEquals(150, r.size());
+        }
+    }
+
+    @Test
+    public void testCompressedMatchesPlain() throws Exception {
+        try (JournalWriter<Quote> plain = factory.writer(builder("plain", false))) {
+            try (JournalWriter<Quote> compressed = factory.writer(builder("compressed", true))) {
+                TestUtils.generateQuoteBatches(plain, 6, 300, 6 * Dates.HOUR_MILLIS);
+                TestUtils.generateQuoteBatches(compressed, 6, 300, 6 * Dates.HOUR_MILLIS);
+
+                JournalMetadata<Quote> m = compressed.getMetadata();
+                Assert.assertEquals(ColumnCodec.DELTA_OF_DELTA, m.getColumnQuick(m.getColumnIndex("timestamp")).codec);
+                Assert.assertEquals(ColumnCodec.XOR, m.getColumnQuick(m.getColumnIndex("bid")).codec);
+                Assert.assertEquals(ColumnCodec.BIT_PACK, m.getColumnQuick(m.getColumnIndex("sym")).codec);
+
+                compressed.awaitArchiver();
+                int count = compressed.getPartitionCount();
+                Assert.assertTrue(count > 2);
+                for (int i = 0; i < count; i++) {
+                    Assert.assertEquals(i < count - 1, isSealed(compressed.getPartition(i, false).getPartitionDir()));
+                }
+            }
+        }
+
+        try (Journal<Quote> expected = factory.reader(Quote.class, "plain")) {
+            try (Journal<Quote> actual = factory.reader(Quote.class, "compressed")) {
+                TestUtils.assertDataEquals(expected, actual);
+                for (String sym : new String[]{"AGK.L", "BP.L", "TLW.L", "ADM.L"}) {
+                    Assert.assertEquals(
+                            expected.query().all().withKeys(sym).asResultSet().size(),
+                            actual.query().all().withKeys(sym).asResultSet().size()
+                    );
+                }
+            }
+        }
+    }
+
+    @Test
+    public void testOutOfOrderIntoSealedPartition() throws Exception {
+        try (JournalWriter<Quote> w = factory.writer(builder("compressed", true))) {
+            w.setOutOfOrderEnabled(true);
+            TestUtils.generateQuoteData(w, 100, Dates.parseDateTime("2013-09-04T10:00:00.000Z"), 1000);
+            TestUtils.generateQuoteData(w, 100, Dates.parseDateTime("2013-10-04T10:00:00.000Z"), 1000);
+            w.commit();
+            w.awaitArchiver();
+            File dir = w.getPartition(0, false).getPartitionDir();
+            Assert.assertTrue(isSealed(dir));
+
+            TestUtils.generateQuoteData(w, 10, Dates.parseDateTime("2013-09-04T09:00:00.000Z"), 1000);
+            w.commit();
+            w.awaitArchiver();
+            // merged partition is sealed again
+            Assert.assertTrue(isSealed(dir));
+            Assert.assertEquals(210, w.size());
+        }
+
+        try (Journal<Quote> r = factory.reader(Quote.class, "compressed")) {
+            long last = 0;
+            for (Quote q : r) {
+                Assert.assertTrue(q.getTimestamp() >= last);
+                last = q.getTimestamp();
+            }
+            Assert.assertEquals(210, r.size());
+        }
+    }
+
+    @Test
+    public void testOutOfOrderIntoSealedPartitionTail() throws Exception {
+        try (JournalWriter<Quote> w = factory.writer(builder("compressed", true))) {
+            w.setOutOfOrderEnabled(true);
+            TestUtils.generateQuoteData(w, 100, Dates.parseDateTime("2013-09-04T10:00:00.000Z"), 1000);
+            TestUtils.generateQuoteData(w, 100, Dates.parseDateTime("2013-10-04T10:00:00.000Z"), 1000);
+            w.commit();
+            w.awaitArchiver();
+            File dir = w.getPartition(0, false).getPartitionDir();
+            Assert.assertTrue(isSealed(dir));
+
+            // compressed prefix of partition is shared by merged copy, which is then sealed from both parts
+            TestUtils.generateQuoteData(w, 10, Dates.parseDateTime("2013-09-04T10:00:50.010Z"), 1000);
+            w.commit();
+            w.awaitArchiver();
+            Assert.assertTrue(isSealed(dir));
+            Assert.assertEquals(210, w.size());
+        }
+
+        try (Journal<Quote> r = factory.reader(Quote.class, "compressed")) {
+            long last = 0;
+            for (Quote q : r) {
+                Assert.assertTrue(q.getTimestamp() >= last);
+                last = q.getTimestamp();
+            }
+            Assert.assertEquals(210, r.size());
+        }
+    }
+
+    @Test
+    public void testReaderKeepsUnsealedFiles() throws Exception {
+        try (JournalWriter<Quote> w = factory.writer(builder("compressed", true))) {
+            TestUtils.generateQuoteData(w, 100, Dates.parseDateTime("2013-09-04T10:00:00.000Z"), 1000);
+            w.commit();
+        }
+
+        File dir = new File(factory.getConfiguration().getJournalBase(), "compressed/2013-09");
+        try (Journal<Quote> r = factory.reader(Quote.class, "compressed")) {
+            Assert.assertEquals(100, r.size());
+            File timestamp = new File(r.getPartition(0, true).getDataDir(), "timestamp.d");
+
+            try (JournalWriter<Quote> w = factory.writer(builder("compressed", true))) {
+                TestUtils.generateQuoteData(w, 100, Dates.parseDateTime("2013-10-04T10:00:00.000Z"), 1000);
+                w.commit();
+                w.awaitArchiver();
+                Assert.assertTrue(isSealed(dir));
+            }
+
+            // reader goes on reading files it has open
+            Assert.assertTrue(timestamp.exists());
+            long last = 0;
+            for (Quote q : r) {
+                Assert.assertTrue(q.getTimestamp() >= last);
+                last = q.getTimestamp();
+            }
+            Assert.assertEquals(100, r.size());
+        }
+
+        try (JournalWriter<Quote> w = factory.writer(builder("compressed", true))) {
+            w.awaitArchiver();
+        }
+        Assert.assertFalse(new File(dir, "timestamp.d").exists());
+
+        try (Journal<Quote> r = factory.reader(Quote.class, "compressed")) {
+            Assert.assertEquals(200, r.size());
+        }
+    }
+
+    private static JournalMetadataBuilder<Quote> builder(final String location, final boolean compress) {
+        return new JournalMetadataBuilder<Quote>(Quote.class) {{
+            // same as model configuration
+            recordCountHint(10000);
+            partitionBy(PartitionBy.MONTH);
+            lag(12, TimeUnit.HOURS);
+            keyColumn("sym");
+            $sym("sym").index().valueCountHint(15);
+            $sym("ex").index().valueCountHint(5);
+            $sym("mode");
+            $ts();
+            if (compress) {
+                compress("timestamp", "sym", "bid", "ask", "bidSize", "askSize", "mode", "ex");
+            }
+            location(location);
+        }};
+    }
+
+    private static boolean isSealed(File partitionDir) throws Exception {
+        File dir = Partition.readDataDir(partitionDir);
+        return CompressedMemoryFile.compressedFile(new File(dir, "timestamp.d")).exists()
+                && !new File(dir, "timestamp.d").exists();
+    }
+}
@@ -0,0 +1,194 @@
+/*******************************************************************************
+ *    ___                  _   ____  ____
+ *   / _ \ _   _  ___  ___| |_|  _ \| __ )
+ *  | | | | | | |/ _ \/ __| __| | | |  _ \
+ *  | |_| | |_| |  __/\__ \ |_| |_| | |_) |
+ *   \__\_\\__,_|\___||___/\__|____/|____/
+ *
+ * Copyright (C) 2014-2016 Appsicle
+ *
+ * This program is free software: you can redistribute it and/or  modify
+ * it under the terms of the GNU Affero General Public License, version 3,
+ * as published by the Free Software Foundation.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ *
+ ******************************************************************************/
+
+package com.questdb;
+
+import com.questdb.ex.JournalException;
+import com.questdb.misc.Dates;
+import com.questdb.model.Quote;
+import com.questdb.std.ObjHashSet;
+import com.questdb.store.TxDurabilityListener;
+import com.questdb.test.tools.AbstractTest;
+import com.questdb.test.tools.TestUtils;
+import org.junit.Assert;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.File;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+public class GroupCommitTest extends AbstractTest {
+
+    @Rule
+    public final TemporaryFolder temp = new TemporaryFolder();
+
+    @Test
+    public void testAwaitDurable() throws Exception {
+        try (JournalWriter<Quote> w = factory.writer(Quote.class)) {
+            // window is long enough for test to fail on timeout if await does not cut it short
+            w.setGroupCommitWindow(TimeUnit.MINUTES.toMillis(10));
+            long ts = Dates.parseDateTime("2013-09-04T10:00:00.000Z");
+            long txn = -1;
+            for (int i = 0; i < 10; i++) {
+                TestUtils.generateQuoteData(w, 100, ts + i * 1000, 1);
+                txn = w.commitGroup();
+            }
+            Assert.assertEquals(1000, w.size());
+            w.awaitDurable(txn);
+            Assert.assertTrue(w.isDurable(txn));
+        }
+    }
+
+    @Test
+    public void testCloseFlushesPending() throws Exception {
+        final CountDownLatch latch = new CountDownLatch(1);
+        JournalWriter<Quote> w = factory.writer(Quote.class);
+        try {
+            w.setGroupCommitWindow(TimeUnit.MINUTES.toMillis(10));
+            TestUtils.generateQuoteData(w, 100, Dates.parseDateTime("2013-09-04T10:00:00.000Z"), 1000);
+            w.commitGroup(new TxDurabilityListener() {
+                @Override
+                public void onDurable(long txn) {
+                    latch.countDown();
+                }
+
+                @Override
+                public void onError(long txn) {
+                }
+            });
+        } finally {
+            w.close();
+        }
+        Assert.assertEquals(0, latch.getCount());
+
+        try (Journal<Quote> r = factory.reader(Quote.class)) {
+            Assert.assertEquals(100, r.size());
+        }
+    }
+
+    @Test
+    public void testListenerAcrossPartitions() throws Exception {
+        final AtomicLong durable = new AtomicLong(-1);
+        final CountDownLatch latch = new CountDownLatch(1);
+        try (JournalWriter<Quote> w = factory.writer(Quote.class)) {
+            w.setGroupCommitWindow(5);
+            long txn = -1;
+            for (int i = 0; i < 5; i++) {
+                TestUtils.generateQuoteBatch(w, 100, 12 * Dates.HOUR_MILLIS);
+                txn = w.commitGroup();
+            }
+
+            final long last = txn;
+            w.commitGroup(new TxDurabilityListener() {
+                @Override
+                public void onDurable(long txn) {
+                    durable.set(txn);
+                    latch.countDown();
+                }
+
+                @Override
+                public void onError(long txn) {
+                    latch.countDown();
+                }
+            });
+
+            Assert.assertTrue(latch.await(10, TimeUnit.SECONDS));
+            Assert.assertEquals(last, durable.get());
+            Assert.assertTrue(w.getPartitionCount() > 1);
+        }
+
+        try (Journal<Quote> r = factory.reader(Quote.class)) {
+            Assert.assertEquals(500, r.size());
+        }
+    }
+
+    @Test
+    public void testErrorIsSticky() throws Exception {
+        // fsync of procfs file fails, which is the simplest way to make flush fail
+        File bad = new File("/proc/self/stat");
+        if (!bad.exists()) {
+            return;
+        }
+
+        File good = temp.newFile();
+        GroupCommitFlusher flusher = new GroupCommitFlusher("test", temp.newFile(), 1);
+        flusher.start();
+        try {
+            ObjHashSet<File> files = new ObjHashSet<>();
+            files.add(bad);
+            flusher.schedule(0, files, null);
+            try {
+                flusher.awaitDurable(0);
+                Assert.fail();
+            } catch (JournalException ignore) {
+                Assert.assertFalse(flusher.isDurable(0));
+            }
+            Assert.assertTrue(flusher.isFailed());
+
+            // later flush of healthy files must not vouch for failed transaction
+            files.add(good);
+            flusher.schedule(1, files, null);
+            try {
+                flusher.awaitDurable(1);
+                Assert.fail();
+            } catch (JournalException ignore) {
+            }
+            Assert.assertFalse(flusher.isDurable(0));
+            Assert.assertFalse(flusher.isDurable(1));
+            try {
+                flusher.awaitDurable(0);
+                Assert.fail();
+            } catch (JournalException ignore) {
+            }
+        } finally {
+            flusher.halt();
+        }
+    }
+
+    @Test(expected = JournalException.class)
+    public void testNotEnabled() throws Exception {
+        try (JournalWriter<Quote> w = factory.writer(Quote.class)) {
+            TestUtils.generateQuoteData(w, 10, Dates.parseDateTime("2013-09-04T10:00:00.000Z"), 1000);
+            w.commitGroup();
+        }
+    }
+
+    @Test
+    public void testRemovedFileIsNotRecreated() throws Exception {
+        File removed = new File(temp.getRoot(), "removed.d");
+        GroupCommitFlusher flusher = new GroupCommitFlusher("test", temp.newFile(), 1);
+        flusher.start();
+        try {
+            ObjHashSet<File> files = new ObjHashSet<>();
+            files.add(removed);
+            flusher.schedule(0, files, null);
+            flusher.awaitDurable(0);
+        } finally {
+            flusher.halt();
+        }
+        Assert.assertFalse(removed.exists());
+    }
+}
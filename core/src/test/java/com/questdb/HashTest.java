@@ -32,6 +32,25 @@ import org.junit.Test;
 
 public class HashTest {
 
+    @Test
+    public void testFixedWidthHash() throws Exception {
+        Rnd rnd = new Rnd();
+        long address = Unsafe.malloc(8);
+        try {
+            for (int i = 0; i < 10000; i++) {
+                int n = rnd.nextInt();
+                Unsafe.getUnsafe().putInt(address, n);
+                Assert.assertEquals(Hash.hashMem(address, 4), Hash.hashInt(n));
+
+                long l = rnd.nextLong();
+                Unsafe.getUnsafe().putLong(address, l);
+                Assert.assertEquals(Hash.hashMem(address, 8), Hash.hashLong(l));
+            }
+        } finally {
+            Unsafe.free(address, 8);
+        }
+    }
+
     @Test
     public void testStringHash() throws Exception {
         Rnd rnd = new Rnd();
@@ -0,0 +1,322 @@
+/*******************************************************************************
+ *    ___                  _   ____  ____
+ *   / _ \ _   _  ___  ___| |_|  _ \| __ )
+ *  | | | | | | |/ _ \/ __| __| | | |  _ \
+ *  | |_| | |_| |  __/\__ \ |_| |_| | |_) |
+ *   \__\_\\__,_|\___||___/\__|____/|____/
+ *
+ * Copyright (C) 2014-2016 Appsicle
+ *
+ * This program is free software: you can redistribute it and/or  modify
+ * it under the terms of the GNU Affero General Public License, version 3,
+ * as published by the Free Software Foundation.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ *
+ ******************************************************************************/
+
+package com.questdb;
+
+import com.questdb.ex.JournalException;
+import com.questdb.factory.configuration.JournalStructure;
+import com.questdb.misc.Dates;
+import com.questdb.misc.Files;
+import com.questdb.misc.Rnd;
+import com.questdb.model.Quote;
+import com.questdb.ql.RecordSource;
+import com.questdb.store.MMappedSymbolTable;
+import com.questdb.store.OverlayMemoryFile;
+import com.questdb.test.tools.AbstractTest;
+import com.questdb.test.tools.TestUtils;
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.io.File;
+
+public class OutOfOrderTest extends AbstractTest {
+
+    @Test
+    public void testGenericAcrossPartitions() throws Exception {
+        final int count = 5000;
+        long[] timestamps = new long[count];
+        long ts = Dates.parseDateTime("2016-03-10T20:00:00.000Z");
+        for (int i = 0; i < count; i++) {
+            timestamps[i] = ts += 10000;
+        }
+
+        // shuffle timestamps within window of 100 rows, i.e. about 15 minutes of jitter
+        // first row stays in place so that it creates first partition
+        Rnd rnd = new Rnd();
+        long[] shuffled = timestamps.clone();
+        for (int i = count - 1; i > 1; i--) {
+            int j = Math.max(1, i - rnd.nextPositiveInt() % 100);
+            long t = shuffled[i];
+            shuffled[i] = shuffled[j];
+            shuffled[j] = t;
+        }
+
+        try (JournalWriter x = createWriter("x"); JournalWriter y = createWriter("y")) {
+            x.setOutOfOrderEnabled(true);
+            appendRows(x, shuffled, 333);
+            appendRows(y, timestamps, count);
+
+            Assert.assertEquals(count, x.size());
+            Assert.assertTrue(x.getPartitionCount() > 1);
+        }
+
+        assertSame("x", "y");
+        assertSame("x latest by sym", "y latest by sym");
+        assertSame("x where sym = 'ABC'", "y where sym = 'ABC'");
+        assertSame("x where str = 'LATE'", "y where str = 'LATE'");
+    }
+
+    @Test
+    public void testInterruptedMergeIsCompleted() throws Exception {
+        File partitionDir = createInterruptedMerge(true);
+        File staged = new File(partitionDir, partitionDir.getName());
+
+        try (JournalWriter<Quote> w = factory.writer(Quote.class)) {
+            w.awaitArchiver();
+            Assert.assertEquals(staged, Partition.readDataDir(partitionDir));
+            Assert.assertFalse(new File(w.getLocation(), "_merge").exists());
+            // superseded files are swept
+            Assert.assertFalse(new File(partitionDir, "timestamp.d").exists());
+            Assert.assertEquals(100, w.size());
+        }
+    }
+
+    @Test
+    public void testInterruptedMergeIsReverted() throws Exception {
+        File partitionDir = createInterruptedMerge(false);
+
+        try (JournalWriter<Quote> w = factory.writer(Quote.class)) {
+            Assert.assertEquals(partitionDir, Partition.readDataDir(partitionDir));
+            Assert.assertFalse(new File(partitionDir, Partition.LOCATION_FILE).exists());
+            Assert.assertFalse(new File(partitionDir, partitionDir.getName()).exists());
+            Assert.assertFalse(new File(w.getLocation(), "_merge").exists());
+            Assert.assertEquals(100, w.size());
+        }
+    }
+
+    @Test
+    public void testLateBeforeFirstPartition() throws Exception {
+        try (JournalWriter<Quote> w = factory.writer(Quote.class)) {
+            w.setOutOfOrderEnabled(true);
+            TestUtils.generateQuoteData(w, 100, Dates.parseDateTime("2013-09-04T10:00:00.000Z"), 1000);
+            w.commit();
+
+            try {
+                TestUtils.generateQuoteData(w, 1, Dates.parseDateTime("2013-08-04T10:00:00.000Z"), 1000);
+                Assert.fail();
+            } catch (JournalException ignore) {
+            }
+        }
+    }
+
+    @Test
+    public void testMergeSharesUnchangedPrefix() throws Exception {
+        try (JournalWriter<Quote> w = factory.writer(Quote.class)) {
+            w.setOutOfOrderEnabled(true);
+            long ts = Dates.parseDateTime("2013-09-04T10:00:00.000Z");
+            TestUtils.generateQuoteData(w, 100, ts, 1000);
+            w.commit();
+            long txn = w.getTxn();
+            long txPin = w.getTxPin();
+            File partitionDir = w.getPartition(0, true).getPartitionDir();
+
+            try (Journal<Quote> r = factory.reader(Quote.class)) {
+                assertOrdered(r, 100);
+
+                // late rows land in second half of partition
+                TestUtils.generateQuoteData(w, 10, ts + 50 * 1000 + 10, 1000);
+                w.commit();
+                File timestamps = new File(Partition.readDataDir(partitionDir), "timestamp.d");
+                Assert.assertTrue(OverlayMemoryFile.baseFile(timestamps).exists());
+                Assert.assertTrue(r.refresh());
+                assertOrdered(r, 110);
+
+                // merge into merged partition shares the same prefix
+                TestUtils.generateQuoteData(w, 10, ts + 20 * 1000 + 10, 1000);
+                w.commit();
+                timestamps = new File(Partition.readDataDir(partitionDir), "timestamp.d");
+                Assert.assertTrue(OverlayMemoryFile.baseFile(timestamps).exists());
+                Assert.assertTrue(r.refresh());
+                assertOrdered(r, 120);
+
+                // rollback truncates merged partition in place
+                w.rollback(txn, txPin);
+                Assert.assertTrue(r.refresh());
+                assertOrdered(r, 100);
+                assertOrdered(w, 100);
+
+                // rows older than any other leave nothing to share
+                TestUtils.generateQuoteData(w, 10, ts - 1000, 1);
+                w.commit();
+                timestamps = new File(Partition.readDataDir(partitionDir), "timestamp.d");
+                Assert.assertNull(OverlayMemoryFile.findBase(timestamps));
+                Assert.assertTrue(r.refresh());
+                assertOrdered(r, 110);
+            }
+        }
+
+        try (Journal<Quote> r = factory.reader(Quote.class)) {
+            assertOrdered(r, 110);
+        }
+    }
+
+    @Test
+    public void testPojoRollback() throws Exception {
+        try (JournalWriter<Quote> w = factory.writer(Quote.class)) {
+            w.setOutOfOrderEnabled(true);
+            long ts = Dates.parseDateTime("2013-09-04T10:00:00.000Z");
+            TestUtils.generateQuoteData(w, 100, ts, 1000);
+            w.commit();
+
+            TestUtils.generateQuoteData(w, 50, ts + 10, 1000);
+            w.rollback();
+            Assert.assertEquals(100, w.size());
+
+            TestUtils.generateQuoteData(w, 50, ts + 10, 1000);
+            w.commit();
+            Assert.assertEquals(150, w.size());
+
+            long prev = Long.MIN_VALUE;
+            for (Quote q : w) {
+                Assert.assertTrue(q.getTimestamp() >= prev);
+                prev = q.getTimestamp();
+            }
+
+            // index must agree with column data
+            int total = 0;
+            for (MMappedSymbolTable.Entry e : w.getSymbolTable("sym").values()) {
+                total += w.query().all().withKeys(e.value.toString()).asResultSet().size();
+            }
+            Assert.assertEquals(150, total);
+        }
+    }
+
+    @Test
+    public void testReaderIsolatedFromMerge() throws Exception {
+        try (JournalWriter<Quote> w = factory.writer(Quote.class)) {
+            w.setOutOfOrderEnabled(true);
+            long ts = Dates.parseDateTime("2013-09-04T10:00:00.000Z");
+            TestUtils.generateQuoteData(w, 100, ts, 1000);
+            w.commit();
+
+            try (Journal<Quote> r = factory.reader(Quote.class)) {
+                Assert.assertEquals(100, r.size());
+
+                TestUtils.generateQuoteData(w, 50, ts + 10, 1000);
+                w.commit();
+
+                // merge does not change files reader has open
+                assertOrdered(r, 100);
+                Assert.assertTrue(r.refresh());
+                assertOrdered(r, 150);
+            }
+        }
+    }
+
+    @Test
+    public void testReaderSeesMergeIntoOlderPartition() throws Exception {
+        try (JournalWriter<Quote> w = factory.writer(Quote.class)) {
+            w.setOutOfOrderEnabled(true);
+            long ts = Dates.parseDateTime("2013-09-04T10:00:00.000Z");
+            // rows span several partitions
+            TestUtils.generateQuoteData(w, 100, ts, Dates.DAY_MILLIS);
+            w.commit();
+
+            try (Journal<Quote> r = factory.reader(Quote.class)) {
+                assertOrdered(r, 100);
+
+                TestUtils.generateQuoteData(w, 10, ts + 10, 1000);
+                w.commit();
+
+                Assert.assertTrue(r.refresh());
+                assertOrdered(r, 110);
+            }
+        }
+    }
+
+    private static void appendRows(JournalWriter w, long[] timestamps, int commitEvery) throws JournalException {
+        String[] syms = {"ABC", "DEF", "GHI", "JKL"};
+        for (int i = 0; i < timestamps.length; i++) {
+            long t = timestamps[i];
+            // values are derived from timestamp so that both journals contain identical rows
+            JournalEntryWriter ew = w.entryWriter(t);
+            ew.putSym(1, syms[(int) ((t / 10000) % syms.length)]);
+            ew.putStr(2, (t / 10000) % 7 == 0 ? "LATE" : Long.toString(t));
+            ew.putInt(3, (int) (t / 10000));
+            ew.putDouble(4, t / 3.0);
+            ew.append();
+            if ((i + 1) % commitEvery == 0) {
+                w.commit();
+            }
+        }
+        w.commit();
+    }
+
+    private static void assertOrdered(Journal<Quote> r, int expected) throws JournalException {
+        Assert.assertEquals(expected, r.size());
+        int count = 0;
+        long prev = Long.MIN_VALUE;
+        for (Quote q : r) {
+            Assert.assertTrue(q.getTimestamp() >= prev);
+            prev = q.getTimestamp();
+            count++;
+        }
+        Assert.assertEquals(expected, count);
+    }
+
+    private void assertSame(String actual, String expected) throws Exception {
+        sink.clear();
+        try (RecordSource rs = compile(expected)) {
+            printer.print(rs, factory);
+        }
+        String e = sink.toString();
+        sink.clear();
+        try (RecordSource rs = compile(actual)) {
+            printer.print(rs, factory);
+        }
+        TestUtils.assertEquals(e, sink);
+    }
+
+    /**
+     * Leaves journal as writer would, if it crashed after publishing merged partition, but before or after
+     * writing transaction. Merged copy of partition is just a copy.
+     */
+    private File createInterruptedMerge(boolean committed) throws Exception {
+        try (JournalWriter<Quote> w = factory.writer(Quote.class)) {
+            TestUtils.generateQuoteData(w, 100, Dates.parseDateTime("2013-09-04T10:00:00.000Z"), 1000);
+            w.commit();
+
+            w.awaitArchiver();
+            File partitionDir = w.getPartition(0, true).getPartitionDir().getAbsoluteFile();
+            File staged = new File(partitionDir, partitionDir.getName());
+            Files.copyDirOrException(partitionDir, staged, Partition.DATA_FILTER);
+            Partition.publishDataDir(partitionDir, staged);
+
+            long address = w.txLog.getCurrentTxAddress();
+            Files.writeStringToFile(new File(w.getLocation(), "_merge"), (committed ? address - 1 : address) + "\n"
+                    + partitionDir + "\n" + partitionDir + "\n" + staged + "\n");
+            return partitionDir;
+        }
+    }
+
+    private JournalWriter createWriter(String name) throws JournalException {
+        return factory.writer(new JournalStructure(name)
+                .$ts()
+                .$sym("sym").index()
+                .$str("str").index()
+                .$int("i")
+                .$double("d")
+                .partitionBy(PartitionBy.DAY)
+                .$());
+    }
+}
@@ -0,0 +1,86 @@
+/*******************************************************************************
+ *    ___                  _   ____  ____
+ *   / _ \ _   _  ___  ___| |_|  _ \| __ )
+ *  | | | | | | |/ _ \/ __| __| | | |  _ \
+ *  | |_| | |_| |  __/\__ \ |_| |_| | |_) |
+ *   \__\_\\__,_|\___||___/\__|____/|____/
+ *
+ * Copyright (C) 2014-2016 Appsicle
+ *
+ * This program is free software: you can redistribute it and/or  modify
+ * it under the terms of the GNU Affero General Public License, version 3,
+ * as published by the Free Software Foundation.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ *
+ ******************************************************************************/
+
+package com.questdb;
+
+import com.questdb.misc.Dates;
+import com.questdb.model.Quote;
+import com.questdb.store.MMappedSymbolTable;
+import com.questdb.test.tools.AbstractTest;
+import com.questdb.test.tools.TestUtils;
+import org.junit.Assert;
+import org.junit.Test;
+
+public class ParallelCommitTest extends AbstractTest {
+
+    @Test
+    public void testParallelMatchesSerial() throws Exception {
+        try (JournalWriter<Quote> serial = factory.writer(Quote.class, "serial")) {
+            try (JournalWriter<Quote> parallel = factory.writer(Quote.class, "parallel")) {
+                parallel.setCommitWorkerCount(3);
+                TestUtils.generateQuoteBatches(serial, 6, 200, 6 * Dates.HOUR_MILLIS);
+                TestUtils.generateQuoteBatches(parallel, 6, 200, 6 * Dates.HOUR_MILLIS);
+            }
+        }
+
+        try (Journal<Quote> expected = factory.reader(Quote.class, "serial")) {
+            try (Journal<Quote> actual = factory.reader(Quote.class, "parallel")) {
+                Assert.assertTrue(actual.getPartitionCount() > 1);
+                TestUtils.assertDataEquals(expected, actual);
+                TestUtils.compareSymbolTables(expected, actual);
+                for (String sym : new String[]{"AGK.L", "BP.L", "TLW.L", "ADM.L"}) {
+                    Assert.assertEquals(
+                            expected.query().all().withKeys(sym).asResultSet().size(),
+                            actual.query().all().withKeys(sym).asResultSet().size()
+                    );
+                }
+            }
+        }
+    }
+
+    @Test
+    public void testRollback() throws Exception {
+        try (JournalWriter<Quote> w = factory.writer(Quote.class)) {
+            w.setCommitWorkerCount(2);
+            long ts = Dates.parseDateTime("2013-09-04T10:00:00.000Z");
+            TestUtils.generateQuoteData(w, 500, ts, 1000);
+            w.commit();
+
+            TestUtils.generateQuoteData(w, 300, w.getMaxTimestamp() + 1, 1000);
+            w.rollback();
+            Assert.assertEquals(500, w.size());
+
+            TestUtils.generateQuoteData(w, 100, w.getMaxTimestamp() + 1, 1000);
+            w.commitDurable();
+        }
+
+        try (Journal<Quote> r = factory.reader(Quote.class)) {
+            Assert.assertEquals(600, r.size());
+            int count = 0;
+            for (MMappedSymbolTable.Entry e : r.getSymbolTable("sym").values()) {
+                count += r.query().all().withKeys(e.value.toString()).asResultSet().size();
+            }
+            Assert.assertEquals(600, count);
+        }
+    }
+}
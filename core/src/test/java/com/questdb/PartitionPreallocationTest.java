@@ -0,0 +1,117 @@
+/*******************************************************************************
+ *    ___                  _   ____  ____
+ *   / _ \ _   _  ___  ___| |_|  _ \| __ )
+ *  | | | | | | |/ _ \/ __| __| | | |  _ \
+ *  | |_| | |_| |  __/\__ \ |_| |_| | |_) |
+ *   \__\_\\__,_|\___||___/\__|____/|____/
+ *
+ * Copyright (C) 2014-2016 Appsicle
+ *
+ * This program is free software: you can redistribute it and/or  modify
+ * it under the terms of the GNU Affero General Public License, version 3,
+ * as published by the Free Software Foundation.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ *
+ ******************************************************************************/
+
+package com.questdb;
+
+import com.questdb.misc.Dates;
+import com.questdb.model.Quote;
+import com.questdb.test.tools.AbstractTest;
+import com.questdb.test.tools.TestUtils;
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.io.File;
+
+public class PartitionPreallocationTest extends AbstractTest {
+
+    @Test
+    public void testDiscardedOnClose() throws Exception {
+        File next;
+        try (JournalWriter<Quote> w = factory.writer(Quote.class)) {
+            w.setPartitionPreallocationLead(Dates.DAY_MILLIS);
+            TestUtils.generateQuoteData(w, 100, Dates.parseDateTime("2013-09-30T10:00:00.000Z"), 60000);
+            w.commit();
+
+            next = new File(w.getLocation(), "2013-10");
+            awaitExists(next);
+        }
+        Assert.assertFalse(next.exists());
+
+        try (JournalWriter<Quote> w = factory.writer(Quote.class)) {
+            Assert.assertEquals(1, w.getPartitionCount());
+            Assert.assertEquals(100, w.size());
+        }
+    }
+
+    @Test
+    public void testMatchesSerial() throws Exception {
+        try (JournalWriter<Quote> serial = factory.writer(Quote.class, "serial")) {
+            try (JournalWriter<Quote> preallocated = factory.writer(Quote.class, "preallocated")) {
+                preallocated.setPartitionPreallocationLead(5 * Dates.DAY_MILLIS);
+                TestUtils.generateQuoteBatches(serial, 6, 200, 6 * Dates.HOUR_MILLIS);
+                TestUtils.generateQuoteBatches(preallocated, 6, 200, 6 * Dates.HOUR_MILLIS);
+
+                // reader must not see partition, which is prepared but not yet taken by writer
+                try (Journal<Quote> r = factory.reader(Quote.class, "preallocated")) {
+                    Assert.assertEquals(preallocated.getPartitionCount(), r.getPartitionCount());
+                }
+            }
+        }
+
+        try (Journal<Quote> expected = factory.reader(Quote.class, "serial")) {
+            try (Journal<Quote> actual = factory.reader(Quote.class, "preallocated")) {
+                Assert.assertTrue(actual.getPartitionCount() > 3);
+                Assert.assertEquals(expected.getPartitionCount(), actual.getPartitionCount());
+                TestUtils.assertDataEquals(expected, actual);
+                for (String sym : new String[]{"AGK.L", "BP.L", "TLW.L", "ADM.L"}) {
+                    Assert.assertEquals(
+                            expected.query().all().withKeys(sym).asResultSet().size(),
+                            actual.query().all().withKeys(sym).asResultSet().size()
+                    );
+                }
+            }
+        }
+    }
+
+    @Test
+    public void testRollback() throws Exception {
+        try (JournalWriter<Quote> w = factory.writer(Quote.class)) {
+            w.setPartitionPreallocationLead(2 * Dates.DAY_MILLIS);
+            TestUtils.generateQuoteData(w, 500, Dates.parseDateTime("2013-09-29T10:00:00.000Z"), 60000);
+            w.commit();
+
+            // crosses into prepared partition and is rolled back
+            TestUtils.generateQuoteData(w, 300, Dates.parseDateTime("2013-10-01T10:00:00.000Z"), 60000);
+            Assert.assertEquals(2, w.getPartitionCount());
+            w.rollback();
+            Assert.assertEquals(500, w.size());
+            Assert.assertEquals(1, w.getPartitionCount());
+
+            TestUtils.generateQuoteData(w, 100, Dates.parseDateTime("2013-10-02T10:00:00.000Z"), 60000);
+            w.commit();
+        }
+
+        try (Journal<Quote> r = factory.reader(Quote.class)) {
+            Assert.assertEquals(600, r.size());
+            Assert.assertEquals(2, r.getPartitionCount());
+            Assert.assertEquals(100, r.getPartition(1, true).size());
+        }
+    }
+
+    private static void awaitExists(File dir) throws InterruptedException {
+        for (int i = 0; i < 500 && !dir.exists(); i++) {
+            Thread.sleep(10);
+        }
+        Assert.assertTrue(dir.exists());
+    }
+}
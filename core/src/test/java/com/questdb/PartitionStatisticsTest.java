@@ -0,0 +1,221 @@
+/*******************************************************************************
+ *    ___                  _   ____  ____
+ *   / _ \ _   _  ___  ___| |_|  _ \| __ )
+ *  | | | | | | |/ _ \/ __| __| | | |  _ \
+ *  | |_| | |_| |  __/\__ \ |_| |_| | |_) |
+ *   \__\_\\__,_|\___||___/\__|____/|____/
+ *
+ * Copyright (C) 2014-2016 Appsicle
+ *
+ * This program is free software: you can redistribute it and/or  modify
+ * it under the terms of the GNU Affero General Public License, version 3,
+ * as published by the Free Software Foundation.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ *
+ ******************************************************************************/
+
+package com.questdb;
+
+import com.questdb.factory.configuration.JournalStructure;
+import com.questdb.misc.Dates;
+import com.questdb.misc.Misc;
+import com.questdb.ql.PartitionCursor;
+import com.questdb.ql.PartitionSlice;
+import com.questdb.ql.RecordCursor;
+import com.questdb.ql.RecordSource;
+import com.questdb.ql.impl.JournalPartitionSource;
+import com.questdb.ql.impl.StatisticsPartitionSource;
+import com.questdb.ql.model.ColumnRanges;
+import com.questdb.store.PartitionStatistics;
+import com.questdb.test.tools.AbstractTest;
+import org.junit.Assert;
+import org.junit.Test;
+
+public class PartitionStatisticsTest extends AbstractTest {
+
+    private static final int ID = 0;
+    private static final int PRICE = 1;
+
+    @Test
+    public void testBlocksAndSummary() throws Exception {
+        try (JournalWriter w = factory.writer(structure())) {
+            populate(w);
+
+            PartitionStatistics s = w.getPartition(0, true).getStatistics();
+            Assert.assertNotNull(s);
+            Assert.assertEquals(70000, s.getRowCount());
+            Assert.assertEquals(2, s.getBlockCount());
+
+            Assert.assertEquals(10.0, s.getDoubleMin(PRICE, PartitionStatistics.SUMMARY), 0);
+            Assert.assertEquals(60.0, s.getDoubleMax(PRICE, PartitionStatistics.SUMMARY), 0);
+            Assert.assertEquals(10.0, s.getDoubleMax(PRICE, 0), 0);
+            Assert.assertEquals(60.0, s.getDoubleMin(PRICE, 1), 0);
+
+            // every 100th id is null
+            Assert.assertEquals(700, s.getNullCount(ID, PartitionStatistics.SUMMARY));
+            Assert.assertEquals(656, s.getNullCount(ID, 0));
+            Assert.assertEquals(1, s.getLongMin(ID, PartitionStatistics.SUMMARY));
+            Assert.assertEquals(69999, s.getLongMax(ID, PartitionStatistics.SUMMARY));
+            Assert.assertEquals(65535, s.getLongMax(ID, 0));
+            Assert.assertEquals(0, s.getNullCount(PRICE, PartitionStatistics.SUMMARY));
+            Assert.assertTrue(s.isTrackedColumn(2));
+        }
+    }
+
+    @Test
+    public void testOrderedRowCount() throws Exception {
+        long t = Dates.parseDateTime("2016-01-01T00:00:00.000Z");
+        try (JournalWriter w = factory.writer(structure())) {
+            append(w, t, 0, 1000, 10.0, false);
+            w.commit();
+            Assert.assertEquals(1000, w.getPartition(0, true).getStatistics().getOrderedRowCount());
+            long txn = w.getTxn();
+            long txPin = w.getTxPin();
+
+            // timestamp column value is not checked by writer
+            for (int i = 0; i < 10; i++) {
+                JournalEntryWriter ew = w.entryWriter(t + (1000 + i) * 1000L);
+                ew.putInt(ID, i);
+                if (i == 5) {
+                    ew.putDate(2, t);
+                }
+                ew.append();
+            }
+            w.commit();
+            Assert.assertEquals(1005, w.getPartition(0, true).getStatistics().getOrderedRowCount());
+
+            append(w, t + 2000 * 1000L, 0, 10, 10.0, false);
+            w.commit();
+            Assert.assertEquals(1005, w.getPartition(0, true).getStatistics().getOrderedRowCount());
+
+            w.rollback(txn, txPin);
+            append(w, t + 1000 * 1000L, 0, 100, 10.0, false);
+            w.commit();
+            PartitionStatistics s = w.getPartition(0, true).getStatistics();
+            Assert.assertEquals(1100, s.getRowCount());
+            Assert.assertEquals(1100, s.getOrderedRowCount());
+        }
+    }
+
+    @Test
+    public void testPartitionsAndBlocksAreSkipped() throws Exception {
+        try (JournalWriter w = factory.writer(structure())) {
+            populate(w);
+        }
+
+        ColumnRanges ranges = new ColumnRanges();
+        ranges.intersect(PRICE, 55.0, Double.POSITIVE_INFINITY);
+        assertSlices("0:65536-69999,1:0-999,2:0-999", ranges);
+
+        ranges = new ColumnRanges();
+        ranges.intersect(PRICE, Double.NEGATIVE_INFINITY, 50.0);
+        assertSlices("0:0-65535", ranges);
+
+        ranges = new ColumnRanges();
+        ranges.intersect(PRICE, 150.0, 150.0);
+        ranges.intersect(ID, 0, 10);
+        assertSlices("1:0-999", ranges);
+
+        ranges = new ColumnRanges();
+        ranges.requireNull(ID);
+        assertSlices("0:0-69999,1:0-999", ranges);
+
+        assertCount(70000 - 65536 + 2000, "stats where price > 55");
+        assertCount(65536, "stats where 50 >= price");
+        assertCount(0, "stats where price > 1000");
+        assertCount(700 + 10, "stats where id = null");
+        assertCount(1, "stats where id = 65537 and price > 50");
+    }
+
+    @Test
+    public void testRollback() throws Exception {
+        long t = Dates.parseDateTime("2016-01-01T00:00:00.000Z");
+        try (JournalWriter w = factory.writer(structure())) {
+            append(w, t, 0, 50000, 10.0, true);
+            w.commit();
+            long txn = w.getTxn();
+            long txPin = w.getTxPin();
+
+            append(w, t + 50000 * 1000L, 50000, 20000, 90.0, true);
+            w.commit();
+            PartitionStatistics s = w.getPartition(0, true).getStatistics();
+            Assert.assertEquals(90.0, s.getDoubleMax(PRICE, PartitionStatistics.SUMMARY), 0);
+
+            w.rollback(txn, txPin);
+            s = w.getPartition(0, true).getStatistics();
+            Assert.assertTrue(s.getRowCount() <= 50000);
+
+            append(w, t + 50000 * 1000L, 50000, 100, 30.0, true);
+            w.commit();
+            s = w.getPartition(0, true).getStatistics();
+            Assert.assertEquals(50100, s.getRowCount());
+            Assert.assertEquals(30.0, s.getDoubleMax(PRICE, PartitionStatistics.SUMMARY), 0);
+        }
+        assertCount(0, "stats where price > 50");
+    }
+
+    private static void append(JournalWriter w, long t, int lo, int n, double price, boolean nulls) throws Exception {
+        for (int i = lo; i < lo + n; i++) {
+            JournalEntryWriter ew = w.entryWriter(t);
+            ew.putInt(ID, nulls && i % 100 == 0 ? Integer.MIN_VALUE : i);
+            ew.putDouble(PRICE, price);
+            ew.append();
+            t += 1000;
+        }
+    }
+
+    private static void populate(JournalWriter w) throws Exception {
+        long t = Dates.parseDateTime("2016-01-01T00:00:00.000Z");
+        append(w, t, 0, 65536, 10.0, true);
+        append(w, t + 65536 * 1000L, 65536, 70000 - 65536, 60.0, true);
+        append(w, t + Dates.DAY_MILLIS, 0, 1000, 150.0, true);
+        append(w, t + 2 * Dates.DAY_MILLIS, 1, 1000, 250.0, false);
+        w.commit();
+    }
+
+    private static JournalStructure structure() {
+        return new JournalStructure("stats").
+                $int("id").
+                $double("price").
+                $ts().
+                partitionBy(PartitionBy.DAY);
+    }
+
+    private void assertCount(long expected, String query) throws Exception {
+        RecordSource src = compile(query);
+        try {
+            RecordCursor cursor = src.prepareCursor(factory);
+            long count = 0;
+            while (cursor.hasNext()) {
+                cursor.next();
+                count++;
+            }
+            Assert.assertEquals(expected, count);
+        } finally {
+            Misc.free(src);
+        }
+    }
+
+    private void assertSlices(String expected, ColumnRanges ranges) throws Exception {
+        try (Journal r = factory.reader("stats")) {
+            StatisticsPartitionSource ps = new StatisticsPartitionSource(new JournalPartitionSource(r.getMetadata(), true), ranges, true);
+            PartitionCursor cursor = ps.prepareCursor(factory);
+            StringBuilder b = new StringBuilder();
+            while (cursor.hasNext()) {
+                PartitionSlice slice = cursor.next();
+                if (b.length() > 0) {
+                    b.append(',');
+                }
+                b.append(slice.partition.getPartitionIndex()).append(':').append(slice.lo).append('-').append(slice.hi);
+            }
+            Assert.assertEquals(expected, b.toString());
+        }
+    }
+}
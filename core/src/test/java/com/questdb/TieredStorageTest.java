@@ -0,0 +1,177 @@
+/*******************************************************************************
+ *    ___                  _   ____  ____
+ *   / _ \ _   _  ___  ___| |_|  _ \| __ )
+ *  | | | | | | |/ _ \/ __| __| | | |  _ \
+ *  | |_| | |_| |  __/\__ \ |_| |_| | |_) |
+ *   \__\_\\__,_|\___||___/\__|____/|____/
+ *
+ * Copyright (C) 2014-2016 Appsicle
+ *
+ * This program is free software: you can redistribute it and/or  modify
+ * it under the terms of the GNU Affero General Public License, version 3,
+ * as published by the Free Software Foundation.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ *
+ ******************************************************************************/
+
+package com.questdb;
+
+import com.questdb.factory.configuration.JournalStructure;
+import com.questdb.misc.Dates;
+import com.questdb.model.Quote;
+import com.questdb.ql.RecordSource;
+import com.questdb.test.tools.AbstractTest;
+import com.questdb.test.tools.TestUtils;
+import org.junit.Assert;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.File;
+
+public class TieredStorageTest extends AbstractTest {
+
+    @Rule
+    public final TemporaryFolder temp = new TemporaryFolder();
+
+    @Test
+    public void testAgePolicyWithCompression() throws Exception {
+        File cold = temp.newFolder("ticks");
+        JournalStructure structure = new JournalStructure("ticks").
+                $sym("sym").index().
+                $double("price").
+                $ts().
+                partitionBy(PartitionBy.DAY).
+                compress("price", "timestamp");
+
+        long t = Dates.parseDateTime("2016-01-01T00:00:00.000Z");
+        try (JournalWriter w = factory.writer(structure)) {
+            w.setColdStorage(cold, 0, 2 * Dates.DAY_MILLIS);
+            for (int i = 0; i < 10 * 24; i++) {
+                JournalEntryWriter ew = w.entryWriter(t);
+                ew.putSym(0, (i & 1) == 0 ? "A" : "B");
+                ew.putDouble(1, i);
+                ew.append();
+                t += Dates.HOUR_MILLIS;
+                if (i % 24 == 23) {
+                    w.commit();
+                }
+            }
+            w.commit();
+        }
+
+        // latest timestamp is 2016-01-10T23, days ending before 2016-01-08T23 are cold
+        Assert.assertTrue(new File(cold, "2016-01-07").exists());
+        Assert.assertTrue(new File(cold, "2016-01-07/price.dz").exists());
+        Assert.assertFalse(new File(cold, "2016-01-08").exists());
+        // hot partition is sealed next to its original files
+        File dataDir = Partition.readDataDir(new File(factory.getConfiguration().getJournalBase(), "ticks/2016-01-08"));
+        Assert.assertTrue(new File(dataDir, "price.dz").exists());
+        Assert.assertFalse(new File(dataDir, "price.d").exists());
+
+        // decoded images of compressed columns stay with cached reader, hence no memory assertions
+        assertQuery("120\t239.000000000000\n", "select count(), max(price) from ticks where sym = 'B'");
+        assertQuery("24\t47.000000000000\n", "select count(), max(price) from ticks where timestamp = '2016-01-02'");
+    }
+
+    @Test
+    public void testCountPolicy() throws Exception {
+        File cold = temp.newFolder("quote");
+        try (JournalWriter<Quote> hot = factory.writer(Quote.class, "hot")) {
+            try (JournalWriter<Quote> tiered = factory.writer(Quote.class, "tiered")) {
+                tiered.setColdStorage(cold, 2, 0);
+                TestUtils.generateQuoteBatches(hot, 4, 300, 6 * Dates.HOUR_MILLIS);
+                TestUtils.generateQuoteBatches(tiered, 4, 300, 6 * Dates.HOUR_MILLIS);
+            }
+        }
+
+        File base = new File(factory.getConfiguration().getJournalBase(), "tiered");
+        try (Journal<Quote> r = factory.reader(Quote.class, "tiered")) {
+            int count = r.getPartitionCount();
+            Assert.assertTrue(count > 3);
+            for (int i = 0; i < count; i++) {
+                String name = r.getPartition(i, false).getName();
+                File dir = new File(base, name);
+                boolean relocated = i < count - 2;
+                Assert.assertEquals(name, relocated, new File(dir, Partition.LOCATION_FILE).exists());
+                Assert.assertEquals(name, relocated, new File(cold, name).exists());
+                Assert.assertEquals(name, !relocated, new File(dir, "bid.d").exists());
+            }
+        }
+
+        try (Journal<Quote> expected = factory.reader(Quote.class, "hot")) {
+            try (Journal<Quote> actual = factory.reader(Quote.class, "tiered")) {
+                Assert.assertEquals(expected.getPartitionCount(), actual.getPartitionCount());
+                TestUtils.assertDataEquals(expected, actual);
+                for (String sym : new String[]{"AGK.L", "BP.L", "TLW.L", "ADM.L"}) {
+                    Assert.assertEquals(
+                            expected.query().all().withKeys(sym).asResultSet().size(),
+                            actual.query().all().withKeys(sym).asResultSet().size()
+                    );
+                }
+            }
+        }
+
+        // writer reopens relocated partitions too
+        try (JournalWriter<Quote> w = factory.writer(Quote.class, "tiered")) {
+            Assert.assertTrue(w.getPartition(1, true).isRelocated());
+            w.truncate();
+        }
+        Assert.assertFalse(new File(cold, "2013-09").exists());
+    }
+
+    @Test
+    public void testReaderKeepsRelocatedFiles() throws Exception {
+        File cold = temp.newFolder("quote");
+        try (JournalWriter<Quote> w = factory.writer(Quote.class, "quote")) {
+            TestUtils.generateQuoteBatches(w, 4, 300, 6 * Dates.HOUR_MILLIS);
+        }
+
+        File dir = new File(factory.getConfiguration().getJournalBase(), "quote/2013-09");
+        try (Journal<Quote> r = factory.reader(Quote.class, "quote")) {
+            Partition<Quote> p = r.getPartition(0, true);
+            long size = p.size();
+
+            try (JournalWriter<Quote> w = factory.writer(Quote.class, "quote")) {
+                w.setColdStorage(cold, 1, 0);
+                w.beginTx();
+                w.commit();
+            }
+
+            // relocated, but files are held by reader
+            Assert.assertTrue(new File(dir, Partition.LOCATION_FILE).exists());
+            Assert.assertTrue(new File(cold, "2013-09/bid.d").exists());
+            Assert.assertTrue(new File(dir, "bid.d").exists());
+
+            // index is opened lazily from files reader started with
+            Assert.assertEquals(size, p.size());
+            Assert.assertTrue(r.query().all().withKeys("BP.L").asResultSet().size() > 0);
+        }
+
+        // next writer purges files readers no longer hold
+        try (JournalWriter<Quote> w = factory.writer(Quote.class, "quote")) {
+            Assert.assertTrue(w.getPartition(0, true).isRelocated());
+        }
+        Assert.assertFalse(new File(dir, "bid.d").exists());
+        Assert.assertTrue(new File(dir, Partition.LOCATION_FILE).exists());
+
+        try (Journal<Quote> r = factory.reader(Quote.class, "quote")) {
+            Assert.assertTrue(r.query().all().withKeys("BP.L").asResultSet().size() > 0);
+        }
+    }
+
+    private void assertQuery(String expected, String query) throws Exception {
+        try (RecordSource src = compile(query)) {
+            sink.clear();
+            printer.print(src, factory, false);
+            TestUtils.assertEquals(expected, sink);
+        }
+    }
+}
@@ -362,6 +362,24 @@ public class NumbersTest {
         Numbers.parseLong("123ab");
     }
 
+    @Test
+    public void testParseLongSize() throws Exception {
+        Assert.assertEquals(5, Numbers.parseLongSize("5"));
+        Assert.assertEquals(5 * 1024, Numbers.parseLongSize("5k"));
+        Assert.assertEquals(5 * 1024 * 1024, Numbers.parseLongSize("5M"));
+        Assert.assertEquals(5L * 1024 * 1024 * 1024, Numbers.parseLongSize("5G"));
+    }
+
+    @Test(expected = NumericException.class)
+    public void testParseLongSizeFail() throws Exception {
+        Numbers.parseLongSize("5Gb");
+    }
+
+    @Test(expected = NumericException.class)
+    public void testParseLongSizeOverflow() throws Exception {
+        Numbers.parseLongSize("9223372036854775807G");
+    }
+
     @Test(expected = NumericException.class)
     public void testParseSizeFail() throws Exception {
         Numbers.parseIntSize("5Kb");
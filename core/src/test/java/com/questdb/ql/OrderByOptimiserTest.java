@@ -23,9 +23,14 @@
 
 package com.questdb.ql;
 
+import com.questdb.JournalEntryWriter;
 import com.questdb.JournalWriter;
+import com.questdb.PartitionBy;
 import com.questdb.ex.ParserException;
 import com.questdb.factory.configuration.JournalStructure;
+import com.questdb.misc.Dates;
+import com.questdb.misc.Rnd;
+import com.questdb.ql.impl.JournalRecordSource;
 import com.questdb.ql.parser.AbstractOptimiserTest;
 import com.questdb.ql.parser.QueryError;
 import com.questdb.test.tools.TestUtils;
@@ -58,6 +63,39 @@ public class OrderByOptimiserTest extends AbstractOptimiserTest {
 
         w.close();
 
+        try (JournalWriter ticks = factory.bulkWriter(new JournalStructure("ticks")
+                .$sym("sym")
+                .$double("price")
+                .$ts()
+                .partitionBy(PartitionBy.DAY)
+                .$())) {
+            Rnd rnd = new Rnd();
+            String[] sym = {"AX", "XX", "BZ", "KK"};
+            long t = Dates.toMillis(2016, 5, 1, 10, 20);
+            for (int i = 0; i < 24 * 5; i++) {
+                JournalEntryWriter ew = ticks.entryWriter(t += 60 * 60 * 1000);
+                ew.putSym(0, sym[rnd.nextPositiveInt() % sym.length]);
+                ew.putDouble(1, rnd.nextDouble());
+                ew.append();
+            }
+            ticks.commit();
+        }
+
+        try (JournalWriter unordered = factory.bulkWriter(new JournalStructure("unordered")
+                .$int("i1")
+                .$ts()
+                .$())) {
+            long t = Dates.toMillis(2016, 5, 1, 10, 0);
+            long[] timestamps = {t - 60 * 60 * 1000, t - 2 * 60 * 60 * 1000, t};
+            for (int i = 0; i < timestamps.length; i++) {
+                JournalEntryWriter ew = unordered.entryWriter();
+                ew.putInt(0, i + 1);
+                ew.putDate(1, timestamps[i]);
+                ew.append();
+            }
+            unordered.commit();
+        }
+
         factory.getConfiguration().exists("");
     }
 
@@ -66,6 +104,55 @@ public class OrderByOptimiserTest extends AbstractOptimiserTest {
         sink.clear();
     }
 
+    @Test
+    public void testAscendingTimestampScan() throws Exception {
+        sink.put(compileSource("select id, timestamp from tab order by timestamp"));
+        TestUtils.assertEquals("{\"op\":\"SelectedColumnsRecordSource\",\"src\":{\"op\":\"TimestampScanRecordSource\",\"scan\":{\"op\":\"JournalRecordSource\",\"psrc\":{\"op\":\"JournalPartitionSource\",\"journal\":\"tab\"},\"rsrc\":{\"op\":\"AllRowSource\"}},\"sorted\":{\"op\":\"RadixSortedRecordSource\",\"byRowId\":true,\"src\":{\"op\":\"JournalRecordSource\",\"psrc\":{\"op\":\"JournalPartitionSource\",\"journal\":\"tab\"},\"rsrc\":{\"op\":\"AllRowSource\"}}}}}", sink);
+    }
+
+    @Test
+    public void testDescendingTimestampAlias() throws Exception {
+        sink.put(compileSource("select id, timestamp ts from tab where x > 10 order by ts desc"));
+        TestUtils.assertEquals("{\"op\":\"SelectedColumnsRecordSource\",\"src\":{\"op\":\"TimestampScanRecordSource\",\"scan\":{\"op\":\"JournalRecordSource\",\"psrc\":{\"op\":\"ReversePartitionSource\",\"psrc\":{\"op\":\"StatisticsPartitionSource\",\"psrc\":{\"op\":\"JournalPartitionSource\",\"journal\":\"tab\"}}},\"rsrc\":{\"op\":\"FilteredRowSource\",\"rsrc\":{\"op\":\"ReverseAllRowSource\"}}},\"sorted\":{\"op\":\"RadixSortedRecordSource\",\"byRowId\":true,\"src\":{\"op\":\"JournalRecordSource\",\"psrc\":{\"op\":\"StatisticsPartitionSource\",\"psrc\":{\"op\":\"JournalPartitionSource\",\"journal\":\"tab\"}},\"rsrc\":{\"op\":\"FilteredRowSource\",\"rsrc\":{\"op\":\"AllRowSource\"}}}}}}", sink);
+    }
+
+    @Test
+    public void testDescendingTimestampIndexedNeedsSort() throws Exception {
+        // index returns rows by key, not by timestamp
+        sink.put(compileSource("tab where id in ('a', 'b') order by timestamp desc"));
+        Assert.assertTrue(sink.toString().startsWith("{\"op\":\"RadixSortedRecordSource\""));
+    }
+
+    @Test
+    public void testDescendingTimestampResult() throws Exception {
+        assertReversed("ticks");
+        assertReversed("ticks where sym = 'KK'");
+        assertReversed("ticks where timestamp = '2016-05-02;2d'");
+        assertReversed("select price, timestamp from ticks where price > 0.5");
+    }
+
+    @Test
+    public void testDescendingTimestampWithLimit() throws Exception {
+        assertThat("KK\t310.101058959961\t2016-05-06T10:20:00.000Z\n" +
+                        "AX\t0.000000009436\t2016-05-06T09:20:00.000Z\n",
+                "ticks order by timestamp desc limit 2");
+        sink.clear();
+        sink.put(compileSource("ticks order by timestamp desc limit 2"));
+        TestUtils.assertEquals("{\"op\":\"TopRecordSource\",\"low\":0,\"high\":2,\"src\":{\"op\":\"TimestampScanRecordSource\",\"scan\":{\"op\":\"JournalRecordSource\",\"psrc\":{\"op\":\"ReversePartitionSource\",\"psrc\":{\"op\":\"JournalPartitionSource\",\"journal\":\"ticks\"}},\"rsrc\":{\"op\":\"ReverseAllRowSource\"}},\"sorted\":{\"op\":\"TopKRecordSource\",\"limit\":2,\"byRowId\":true,\"src\":{\"op\":\"JournalRecordSource\",\"psrc\":{\"op\":\"JournalPartitionSource\",\"journal\":\"ticks\"},\"rsrc\":{\"op\":\"AllRowSource\"}}}}}", sink);
+    }
+
+    @Test
+    public void testDescendingTimestampUnordered() throws Exception {
+        // timestamp values are written out of order, statistics make cursor fall back to sort
+        assertThat("2016-05-01T10:00:00.000Z\t3\n" +
+                        "2016-05-01T09:00:00.000Z\t1\n" +
+                        "2016-05-01T08:00:00.000Z\t2\n",
+                "select timestamp, i1 from unordered order by timestamp desc");
+        assertScan("unordered order by timestamp desc", false);
+        assertScan("ticks order by timestamp desc", true);
+        assertScan("ticks where sym = 'KK' order by timestamp", true);
+    }
+
     @Test
     public void testLiteralAnalysis() throws Exception {
         try {
@@ -91,12 +178,39 @@ public class OrderByOptimiserTest extends AbstractOptimiserTest {
     @Test
     public void testRegularOrder() throws Exception {
         sink.put(compileSource("select x,y from ((tab order by y) order by timestamp)"));
-        TestUtils.assertEquals("{\"op\":\"SelectedColumnsRecordSource\",\"src\":{\"op\":\"RBTreeSortedRecordSource\",\"byRowId\":true,\"src\":{\"op\":\"JournalRecordSource\",\"psrc\":{\"op\":\"JournalPartitionSource\",\"journal\":\"tab\"},\"rsrc\":{\"op\":\"AllRowSource\"}}}}", sink);
+        TestUtils.assertEquals("{\"op\":\"SelectedColumnsRecordSource\",\"src\":{\"op\":\"RadixSortedRecordSource\",\"byRowId\":true,\"src\":{\"op\":\"JournalRecordSource\",\"psrc\":{\"op\":\"JournalPartitionSource\",\"journal\":\"tab\"},\"rsrc\":{\"op\":\"AllRowSource\"}}}}", sink);
+    }
+
+    @Test
+    public void testRenamedTimestampNeedsSort() throws Exception {
+        sink.put(compileSource("select x timestamp, y from tab order by timestamp desc"));
+        Assert.assertTrue(sink.toString().contains("RadixSortedRecordSource"));
     }
 
     @Test
     public void testSampleByBackout() throws Exception {
         sink.put(compileSource("(select x,count() from (select y, x, count() from (tab order by timestamp) sample by 1M order by y)) where x = 100"));
-        TestUtils.assertEquals("{\"op\":\"SelectedColumnsRecordSource\",\"src\":{\"op\":\"AggregatedRecordSource\",\"src\":{\"op\":\"RBTreeSortedRecordSource\",\"byRowId\":false,\"src\":{\"op\":\"SelectedColumnsRecordSource\",\"src\":{\"op\":\"ResampledRecordSource\",\"src\":{\"op\":\"JournalRecordSource\",\"psrc\":{\"op\":\"JournalPartitionSource\",\"journal\":\"tab\"},\"rsrc\":{\"op\":\"FilteredRowSource\",\"rsrc\":{\"op\":\"AllRowSource\"}}},\"sampler\":{\"op\":\"MonthsSampler\",\"buckets\":1}}}}}}", sink);
+        TestUtils.assertEquals("{\"op\":\"SelectedColumnsRecordSource\",\"src\":{\"op\":\"AggregatedRecordSource\",\"src\":{\"op\":\"RadixSortedRecordSource\",\"byRowId\":false,\"src\":{\"op\":\"SelectedColumnsRecordSource\",\"src\":{\"op\":\"ResampledRecordSource\",\"src\":{\"op\":\"JournalRecordSource\",\"psrc\":{\"op\":\"JournalPartitionSource\",\"journal\":\"tab\"},\"rsrc\":{\"op\":\"FilteredRowSource\",\"rsrc\":{\"op\":\"AllRowSource\"}}},\"sampler\":{\"op\":\"MonthsSampler\",\"buckets\":1}}}}}}", sink);
+    }
+
+    private void assertScan(String query, boolean scan) throws Exception {
+        try (RecordSource rs = compileSource(query)) {
+            Assert.assertEquals(scan, rs.prepareCursor(factory) instanceof JournalRecordSource);
+        }
+    }
+
+    private void assertReversed(String query) throws Exception {
+        sink.clear();
+        try (RecordSource rs = compileSource(query)) {
+            printer.print(rs, factory, false);
+        }
+        String[] lines = sink.toString().split("\n");
+        Assert.assertTrue(lines.length > 1);
+
+        StringBuilder expected = new StringBuilder();
+        for (int i = lines.length - 1; i > -1; i--) {
+            expected.append(lines[i]).append('\n');
+        }
+        assertThat(expected.toString(), query + " order by timestamp desc");
     }
 }
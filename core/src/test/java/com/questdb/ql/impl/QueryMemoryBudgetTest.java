@@ -0,0 +1,156 @@
+/*******************************************************************************
+ *    ___                  _   ____  ____
+ *   / _ \ _   _  ___  ___| |_|  _ \| __ )
+ *  | | | | | | |/ _ \/ __| __| | | |  _ \
+ *  | |_| | |_| |  __/\__ \ |_| |_| | |_) |
+ *   \__\_\\__,_|\___||___/\__|____/|____/
+ *
+ * Copyright (C) 2014-2016 Appsicle
+ *
+ * This program is free software: you can redistribute it and/or  modify
+ * it under the terms of the GNU Affero General Public License, version 3,
+ * as published by the Free Software Foundation.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ *
+ ******************************************************************************/
+
+
+package com.questdb.ql.impl;
+
+import com.questdb.JournalEntryWriter;
+import com.questdb.JournalWriter;
+import com.questdb.PartitionBy;
+import com.questdb.factory.configuration.JournalStructure;
+import com.questdb.misc.Dates;
+import com.questdb.misc.Rnd;
+import com.questdb.misc.Unsafe;
+import com.questdb.net.http.ServerConfiguration;
+import com.questdb.ql.RecordSource;
+import com.questdb.ql.parser.AbstractOptimiserTest;
+import com.questdb.ql.parser.QueryCompiler;
+import com.questdb.test.tools.TestUtils;
+import org.junit.Assert;
+import org.junit.BeforeClass;
+import org.junit.Test;
+
+import java.io.File;
+
+public class QueryMemoryBudgetTest extends AbstractOptimiserTest {
+
+    private static final QueryCompiler spillCompiler;
+
+    @BeforeClass
+    public static void setUp() throws Exception {
+        try (JournalWriter w = factory.writer(new JournalStructure("spill")
+                .$sym("sym")
+                .$int("i")
+                .$double("d")
+                .$str("s")
+                .$ts()
+                .partitionBy(PartitionBy.DAY)
+                .$())) {
+
+            Rnd rnd = new Rnd();
+            String[] syms = {"AX", "XX", "BZ", "KK", "PP", "UX", "LK"};
+            long ts = Dates.toMillis(2016, 5, 1, 10, 20);
+            for (int k = 0; k < 5000; k++) {
+                JournalEntryWriter ew = w.entryWriter(ts += 60 * 1000);
+                ew.putSym(0, syms[rnd.nextPositiveInt() % syms.length]);
+                ew.putInt(1, rnd.nextInt() % 1000);
+                ew.putDouble(2, rnd.nextInt() % 100);
+                ew.putStr(3, rnd.nextChars(rnd.nextPositiveInt() % 16));
+                ew.append();
+            }
+            w.commit();
+        }
+
+        // reader allocates on first use, keep it out of memory checks
+        try (RecordSource rs = compiler.compile(factory, "spill")) {
+            sink.clear();
+            printer.print(rs, factory, false);
+        }
+    }
+
+    @Test
+    public void testGroupBy() throws Exception {
+        assertSpill("select i, count(), sum(d) from spill");
+    }
+
+    @Test
+    public void testHashJoin() throws Exception {
+        assertSpill("select a.sym, a.i, b.s from spill a join (select i, s from spill where i > 900) b on a.i = b.i");
+    }
+
+    @Test
+    public void testHashJoinPartitioned() throws Exception {
+        assertSpill("select a.sym, a.i, b.sym, b.d from spill a join spill b on a.i = b.i");
+    }
+
+    @Test
+    public void testOuterHashJoinPartitioned() throws Exception {
+        assertSpill("select a.sym, a.i, b.s from spill a outer join (select i, s from spill where d > 0) b on a.i = b.i");
+    }
+
+    @Test
+    public void testOrderBy() throws Exception {
+        assertSpill("spill order by s, i");
+    }
+
+    @Test
+    public void testSampleBy() throws Exception {
+        assertSpill("select sym, count(), max(d) from spill sample by 1h");
+    }
+
+    private static void assertNoSpillFiles() {
+        String[] files = new File(factory.getConfiguration().getJournalBase(), ".spill").list();
+        Assert.assertTrue(files == null || files.length == 0);
+    }
+
+    private void assertSpill(String query) throws Exception {
+        long memUsed = Unsafe.getMemUsed();
+        String expected = print(compiler, query);
+        String actual = print(spillCompiler, query);
+        TestUtils.assertEquals(expected, actual);
+        Assert.assertEquals(memUsed, Unsafe.getMemUsed());
+        assertNoSpillFiles();
+    }
+
+    private String print(QueryCompiler compiler, String query) throws Exception {
+        try (RecordSource rs = compiler.compile(factory, query)) {
+            sink.clear();
+            printer.print(rs, factory, false);
+            Assert.assertTrue(sink.length() > 0);
+            return sink.toString();
+        }
+    }
+
+    static {
+        // budget is too small for anything, all query structures are memory mapped
+        // and small hash pages keep spilling as hash join builds its table
+        ServerConfiguration configuration = new ServerConfiguration() {
+            @Override
+            public int getDbHashDataPage() {
+                return 16 * 1024;
+            }
+
+            @Override
+            public int getDbHashKeyPage() {
+                return 16 * 1024;
+            }
+
+            @Override
+            public int getDbHashRowPage() {
+                return 16 * 1024;
+            }
+        };
+        configuration.setDbQueryMemoryBudget(1);
+        spillCompiler = new QueryCompiler(configuration);
+    }
+}
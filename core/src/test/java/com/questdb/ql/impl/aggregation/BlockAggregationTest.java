@@ -0,0 +1,173 @@
+/*******************************************************************************
+ *    ___                  _   ____  ____
+ *   / _ \ _   _  ___  ___| |_|  _ \| __ )
+ *  | | | | | | |/ _ \/ __| __| | | |  _ \
+ *  | |_| | |_| |  __/\__ \ |_| |_| | |_) |
+ *   \__\_\\__,_|\___||___/\__|____/|____/
+ *
+ * Copyright (C) 2014-2016 Appsicle
+ *
+ * This program is free software: you can redistribute it and/or  modify
+ * it under the terms of the GNU Affero General Public License, version 3,
+ * as published by the Free Software Foundation.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ *
+ ******************************************************************************/
+
+
+package com.questdb.ql.impl.aggregation;
+
+import com.questdb.JournalEntryWriter;
+import com.questdb.JournalWriter;
+import com.questdb.PartitionBy;
+import com.questdb.factory.configuration.JournalStructure;
+import com.questdb.misc.Dates;
+import com.questdb.misc.Numbers;
+import com.questdb.misc.Rnd;
+import com.questdb.ql.Record;
+import com.questdb.ql.RecordCursor;
+import com.questdb.ql.RecordSource;
+import com.questdb.ql.parser.AbstractOptimiserTest;
+import org.junit.Assert;
+import org.junit.BeforeClass;
+import org.junit.Test;
+
+public class BlockAggregationTest extends AbstractOptimiserTest {
+
+    private static final String AGGREGATES = "select count(), sum(i), sum(l), sum(d), min(i), max(i), min(l), max(l), min(d), max(d), min(t), max(t), avg(d), count(i), count(l), count(d) from blk";
+
+    @BeforeClass
+    public static void setUp() throws Exception {
+        try (JournalWriter w = factory.writer(new JournalStructure("blk")
+                .$int("i")
+                .$long("l")
+                .$double("d")
+                .$date("t")
+                .$ts()
+                .partitionBy(PartitionBy.DAY)
+                .$())) {
+
+            Rnd rnd = new Rnd();
+            // 8640 rows per day, so that partitions end with partial blocks
+            long ts = Dates.toMillis(2016, 5, 1, 10, 20);
+            for (int k = 0; k < 30000; k++) {
+                JournalEntryWriter ew = w.entryWriter(ts += 10 * 1000);
+                ew.putInt(0, rnd.nextPositiveInt() % 10 == 0 ? Numbers.INT_NaN : rnd.nextInt() % 1000);
+                ew.putLong(1, rnd.nextPositiveInt() % 10 == 0 ? Numbers.LONG_NaN : rnd.nextLong());
+                ew.putDouble(2, rnd.nextPositiveInt() % 10 == 0 ? Double.NaN : rnd.nextDouble() * 100);
+                ew.putDate(3, rnd.nextLong());
+                ew.append();
+            }
+            w.commit();
+        }
+    }
+
+    @Test
+    public void testAllRows() throws Exception {
+        assertAggregates("", Integer.MIN_VALUE);
+    }
+
+    @Test
+    public void testExpressionUsesRows() throws Exception {
+        assertBlocks(false, "select sum(d * 2) from blk");
+    }
+
+    @Test
+    public void testFilter() throws Exception {
+        assertAggregates(" where i > 100", 100);
+    }
+
+    @Test
+    public void testFilterNoRows() throws Exception {
+        assertEmpty(AGGREGATES + " where i > 1000");
+    }
+
+    @Test
+    public void testKeyedAggregationUsesRows() throws Exception {
+        assertBlocks(false, "select i, sum(d) from blk");
+    }
+
+    private static void assertBlocks(boolean expected, String query) throws Exception {
+        try (RecordSource rs = compiler.compile(factory, query)) {
+            sink.clear();
+            rs.toSink(sink);
+            Assert.assertEquals(expected, sink.toString().contains("\"blocks\":true"));
+        }
+    }
+
+    private void assertAggregates(String filter, int iLowerBound) throws Exception {
+        long count = 0;
+        int sumI = 0, minI = 0, maxI = 0;
+        long sumL = 0, minL = 0, maxL = 0, minT = 0, maxT = 0;
+        double sumD = 0, minD = 0, maxD = 0;
+        long countI = 0, countL = 0, countD = 0;
+
+        // replicate row-at-a-time semantics of aggregators, NaNs included
+        try (RecordSource rs = compiler.compile(factory, "blk")) {
+            RecordCursor cursor = rs.prepareCursor(factory);
+            while (cursor.hasNext()) {
+                Record r = cursor.next();
+                int i = r.getInt(0);
+                if (iLowerBound != Integer.MIN_VALUE && (i == Numbers.INT_NaN || i <= iLowerBound)) {
+                    continue;
+                }
+                long l = r.getLong(1);
+                double d = r.getDouble(2);
+                long t = r.getDate(3);
+
+                if (count++ == 0) {
+                    sumI = minI = maxI = i;
+                    sumL = minL = maxL = l;
+                    sumD = minD = maxD = d;
+                    minT = maxT = t;
+                } else {
+                    sumI += i;
+                    sumL += l;
+                    sumD += d;
+                    minI = i < minI ? i : minI;
+                    maxI = i > maxI ? i : maxI;
+                    minL = l < minL ? l : minL;
+                    maxL = l > maxL ? l : maxL;
+                    minD = d < minD ? d : minD;
+                    maxD = d > maxD ? d : maxD;
+                    minT = t < minT ? t : minT;
+                    maxT = t > maxT ? t : maxT;
+                }
+                countI += i == Numbers.INT_NaN ? 0 : 1;
+                countL += l == Numbers.LONG_NaN ? 0 : 1;
+                countD += d == d ? 1 : 0;
+            }
+        }
+
+        assertBlocks(true, AGGREGATES + filter);
+        try (RecordSource rs = compiler.compile(factory, AGGREGATES + filter)) {
+            RecordCursor cursor = rs.prepareCursor(factory);
+            Assert.assertTrue(cursor.hasNext());
+            Record r = cursor.next();
+            Assert.assertEquals(count, r.getLong(0));
+            Assert.assertEquals(sumI, r.getInt(1));
+            Assert.assertEquals(sumL, r.getLong(2));
+            Assert.assertEquals(sumD, r.getDouble(3), 0);
+            Assert.assertEquals(minI, r.getInt(4));
+            Assert.assertEquals(maxI, r.getInt(5));
+            Assert.assertEquals(minL, r.getLong(6));
+            Assert.assertEquals(maxL, r.getLong(7));
+            Assert.assertEquals(minD, r.getDouble(8), 0);
+            Assert.assertEquals(maxD, r.getDouble(9), 0);
+            Assert.assertEquals(minT, r.getDate(10));
+            Assert.assertEquals(maxT, r.getDate(11));
+            Assert.assertEquals(sumD / count, r.getDouble(12), 0);
+            Assert.assertEquals(countI, r.getLong(13));
+            Assert.assertEquals(countL, r.getLong(14));
+            Assert.assertEquals(countD, r.getLong(15));
+            Assert.assertFalse(cursor.hasNext());
+        }
+    }
+}
@@ -0,0 +1,172 @@
+/*******************************************************************************
+ *    ___                  _   ____  ____
+ *   / _ \ _   _  ___  ___| |_|  _ \| __ )
+ *  | | | | | | |/ _ \/ __| __| | | |  _ \
+ *  | |_| | |_| |  __/\__ \ |_| |_| | |_) |
+ *   \__\_\\__,_|\___||___/\__|____/|____/
+ *
+ * Copyright (C) 2014-2016 Appsicle
+ *
+ * This program is free software: you can redistribute it and/or  modify
+ * it under the terms of the GNU Affero General Public License, version 3,
+ * as published by the Free Software Foundation.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ *
+ ******************************************************************************/
+
+
+package com.questdb.ql.impl.aggregation;
+
+import com.questdb.JournalEntryWriter;
+import com.questdb.JournalWriter;
+import com.questdb.PartitionBy;
+import com.questdb.factory.configuration.JournalStructure;
+import com.questdb.misc.Dates;
+import com.questdb.misc.Numbers;
+import com.questdb.misc.Rnd;
+import com.questdb.misc.Unsafe;
+import com.questdb.net.http.ServerConfiguration;
+import com.questdb.ql.RecordSource;
+import com.questdb.ql.impl.QueryWorkerPool;
+import com.questdb.ql.parser.AbstractOptimiserTest;
+import com.questdb.ql.parser.QueryCompiler;
+import com.questdb.test.tools.TestUtils;
+import org.junit.AfterClass;
+import org.junit.Assert;
+import org.junit.BeforeClass;
+import org.junit.Test;
+
+import java.util.Arrays;
+
+public class ParallelAggregatorTest extends AbstractOptimiserTest {
+
+    private static final QueryWorkerPool pool = new QueryWorkerPool(3);
+    private static final QueryCompiler parallelCompiler = new QueryCompiler(new ServerConfiguration() {
+        @Override
+        public int getDbParallelSliceRows() {
+            return 333;
+        }
+    });
+
+    @BeforeClass
+    public static void setUp() throws Exception {
+        parallelCompiler.setWorkerPool(pool);
+
+        try (JournalWriter w = factory.writer(new JournalStructure("par")
+                .$sym("sym")
+                .$int("i")
+                .$long("l")
+                .$double("d")
+                .$date("t")
+                .$bool("b")
+                .$ts()
+                .partitionBy(PartitionBy.DAY)
+                .$())) {
+
+            Rnd rnd = new Rnd();
+            String[] syms = {"AX", "XX", "BZ", "KK", "PP", "UX", "LK"};
+            long ts = Dates.toMillis(2016, 5, 1, 10, 20);
+            for (int k = 0; k < 10000; k++) {
+                JournalEntryWriter ew = w.entryWriter(ts += 60 * 1000);
+                ew.putSym(0, rnd.nextPositiveInt() % 20 == 0 ? null : syms[rnd.nextPositiveInt() % syms.length]);
+                ew.putInt(1, rnd.nextPositiveInt() % 10 == 0 ? Numbers.INT_NaN : rnd.nextInt() % 100);
+                ew.putLong(2, rnd.nextPositiveInt() % 10 == 0 ? Numbers.LONG_NaN : rnd.nextLong() % 1000);
+                // whole numbers keep double sums exact regardless of order of summation
+                ew.putDouble(3, rnd.nextPositiveInt() % 10 == 0 ? Double.NaN : rnd.nextInt() % 100);
+                ew.putDate(4, rnd.nextPositiveLong() % 100000);
+                ew.putBool(5, rnd.nextBoolean());
+                ew.append();
+            }
+            w.commit();
+        }
+
+        // reader allocates on first use, keep it out of memory checks
+        try (RecordSource rs = compiler.compile(factory, "par")) {
+            sink.clear();
+            printer.print(rs, factory, false);
+        }
+    }
+
+    @AfterClass
+    public static void tearDown() {
+        pool.close();
+    }
+
+    @Test
+    public void testBoolKey() throws Exception {
+        assertParallel("select b, count(), sum(l), max(d) from par");
+    }
+
+    @Test
+    public void testCompiledFilter() throws Exception {
+        assertParallel("select sym, count(), sum(i), avg(d) from par where i > 10 and (d < 50 or l != 0)");
+    }
+
+    @Test
+    public void testExpressionArgument() throws Exception {
+        assertParallel("select sym, sum(d * 2 + i), max(l - i) from par");
+    }
+
+    @Test
+    public void testInterpretedFilter() throws Exception {
+        assertParallel("select sym, count(), min(l) from par where b");
+    }
+
+    @Test
+    public void testNoKeys() throws Exception {
+        assertParallel("select count(), sum(i), sum(l), sum(d), min(t), max(t) from par");
+    }
+
+    @Test
+    public void testSerialFallback() throws Exception {
+        try (RecordSource rs = parallelCompiler.compile(factory, "select sym, first(d) from par")) {
+            sink.clear();
+            rs.toSink(sink);
+            Assert.assertTrue(sink.toString().indexOf("parallel") == -1);
+        }
+    }
+
+    @Test
+    public void testSymbolKey() throws Exception {
+        assertParallel("select sym, count(), count(sym), sum(i), sum(l), sum(d), min(i), max(i), min(l), max(l), min(d), max(d), avg(d), min(t), max(t) from par");
+    }
+
+    private void assertParallel(String query) throws Exception {
+        long memUsed = Unsafe.getMemUsed();
+        String expected = print(compiler, query, false);
+        // run twice to make sure lane maps are reused cleanly
+        String actual = print(parallelCompiler, query, true);
+        TestUtils.assertEquals(expected, actual);
+        Assert.assertEquals(memUsed, Unsafe.getMemUsed());
+    }
+
+    private String print(QueryCompiler compiler, String query, boolean parallel) throws Exception {
+        try (RecordSource rs = compiler.compile(factory, query)) {
+            sink.clear();
+            rs.toSink(sink);
+            Assert.assertEquals(parallel, sink.toString().contains("\"parallel\":true"));
+
+            String result = null;
+            for (int i = 0; i < 2; i++) {
+                sink.clear();
+                printer.print(rs, factory, false);
+                // map iteration order depends on order of merge, compare rows regardless of order
+                String[] lines = sink.toString().split("\n");
+                Arrays.sort(lines);
+                String s = Arrays.toString(lines);
+                if (result != null) {
+                    Assert.assertEquals(result, s);
+                }
+                result = s;
+            }
+            return result;
+        }
+    }
+}
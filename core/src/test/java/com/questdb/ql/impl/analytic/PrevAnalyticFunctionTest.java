@@ -710,9 +710,8 @@ public class PrevAnalyticFunctionTest extends AbstractAnalyticRecordSourceTest {
                 "    \"src\": {\n" +
                 "      \"op\": \"SelectedColumnsRecordSource\",\n" +
                 "      \"src\": {\n" +
-                "        \"op\": \"RBTreeSortedRecordSource\",\n" +
-                "        \"byRowId\": true,\n" +
-                "        \"src\": {\n" +
+                "        \"op\": \"TimestampScanRecordSource\",\n" +
+                "        \"scan\": {\n" +
                 "          \"op\": \"JournalRecordSource\",\n" +
                 "          \"psrc\": {\n" +
                 "            \"op\": \"JournalPartitionSource\",\n" +
@@ -721,6 +720,20 @@ public class PrevAnalyticFunctionTest extends AbstractAnalyticRecordSourceTest {
                 "          \"rsrc\": {\n" +
                 "            \"op\": \"AllRowSource\"\n" +
                 "          }\n" +
+                "        },\n" +
+                "        \"sorted\": {\n" +
+                "          \"op\": \"RadixSortedRecordSource\",\n" +
+                "          \"byRowId\": true,\n" +
+                "          \"src\": {\n" +
+                "            \"op\": \"JournalRecordSource\",\n" +
+                "            \"psrc\": {\n" +
+                "              \"op\": \"JournalPartitionSource\",\n" +
+                "              \"journal\": \"abc\"\n" +
+                "            },\n" +
+                "            \"rsrc\": {\n" +
+                "              \"op\": \"AllRowSource\"\n" +
+                "            }\n" +
+                "          }\n" +
                 "        }\n" +
                 "      }\n" +
                 "    }\n" +
@@ -731,7 +744,7 @@ public class PrevAnalyticFunctionTest extends AbstractAnalyticRecordSourceTest {
     @Test
     public void testImplicitOrderSimple() throws Exception {
         assertPlan2("{\n" +
-                "  \"op\": \"RBTreeSortedRecordSource\",\n" +
+                "  \"op\": \"RadixSortedRecordSource\",\n" +
                 "  \"byRowId\": false,\n" +
                 "  \"src\": {\n" +
                 "    \"op\": \"SelectedColumnsRecordSource\",\n" +
@@ -0,0 +1,244 @@
+/*******************************************************************************
+ *    ___                  _   ____  ____
+ *   / _ \ _   _  ___  ___| |_|  _ \| __ )
+ *  | | | | | | |/ _ \/ __| __| | | |  _ \
+ *  | |_| | |_| |  __/\__ \ |_| |_| | |_) |
+ *   \__\_\\__,_|\___||___/\__|____/|____/
+ *
+ * Copyright (C) 2014-2016 Appsicle
+ *
+ * This program is free software: you can redistribute it and/or  modify
+ * it under the terms of the GNU Affero General Public License, version 3,
+ * as published by the Free Software Foundation.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ *
+ ******************************************************************************/
+
+
+package com.questdb.ql.impl.filter;
+
+import com.questdb.JournalEntryWriter;
+import com.questdb.JournalWriter;
+import com.questdb.ex.ParserException;
+import com.questdb.factory.configuration.JournalStructure;
+import com.questdb.misc.Misc;
+import com.questdb.misc.Numbers;
+import com.questdb.misc.Rnd;
+import com.questdb.ql.Record;
+import com.questdb.ql.RecordCursor;
+import com.questdb.ql.RecordSource;
+import com.questdb.ql.ops.*;
+import com.questdb.ql.ops.col.*;
+import com.questdb.ql.ops.constant.DoubleConstant;
+import com.questdb.ql.ops.constant.IntConstant;
+import com.questdb.ql.ops.constant.LongConstant;
+import com.questdb.ql.ops.eq.*;
+import com.questdb.ql.ops.gt.DoubleGreaterThanOperator;
+import com.questdb.ql.ops.gt.IntGreaterThanOperator;
+import com.questdb.ql.ops.gt.LongGreaterThanOperator;
+import com.questdb.ql.ops.gte.DoubleGreaterOrEqualOperator;
+import com.questdb.ql.ops.gte.IntGreaterOrEqualOperator;
+import com.questdb.ql.ops.gte.LongGreaterOrEqualOperator;
+import com.questdb.ql.ops.lt.DoubleLessThanOperator;
+import com.questdb.ql.ops.lt.IntLessThanOperator;
+import com.questdb.ql.ops.lt.LongLessThanOperator;
+import com.questdb.ql.ops.lte.DoubleLessOrEqualOperator;
+import com.questdb.ql.ops.lte.IntLessOrEqualOperator;
+import com.questdb.ql.ops.lte.LongLessOrEqualOperator;
+import com.questdb.ql.ops.neq.*;
+import com.questdb.ql.parser.AbstractOptimiserTest;
+import com.questdb.std.ObjectFactory;
+import org.junit.Assert;
+import org.junit.BeforeClass;
+import org.junit.Test;
+
+public class FilterCompilerTest extends AbstractOptimiserTest {
+
+    private static final ObjectFactory[] INT_OPERATORS = {
+            IntEqualsOperator.FACTORY,
+            IntNotEqualsOperator.FACTORY,
+            IntGreaterThanOperator.FACTORY,
+            IntGreaterOrEqualOperator.FACTORY,
+            IntLessThanOperator.FACTORY,
+            IntLessOrEqualOperator.FACTORY,
+            IntEqualsNaNOperator.FACTORY,
+            IntNotEqualsNaNOperator.FACTORY
+    };
+
+    private static final ObjectFactory[] LONG_OPERATORS = {
+            LongEqualsOperator.FACTORY,
+            LongNotEqualsOperator.FACTORY,
+            LongGreaterThanOperator.FACTORY,
+            LongGreaterOrEqualOperator.FACTORY,
+            LongLessThanOperator.FACTORY,
+            LongLessOrEqualOperator.FACTORY,
+            LongEqualsNaNOperator.FACTORY,
+            LongNotEqualsNaNOperator.FACTORY
+    };
+
+    private static final ObjectFactory[] DOUBLE_OPERATORS = {
+            DoubleEqualsOperator.FACTORY,
+            DoubleNotEqualsOperator.FACTORY,
+            DoubleGreaterThanOperator.FACTORY,
+            DoubleGreaterOrEqualOperator.FACTORY,
+            DoubleLessThanOperator.FACTORY,
+            DoubleLessOrEqualOperator.FACTORY,
+            DoubleEqualsNanOperator.FACTORY,
+            DoubleNotEqualsNanOperator.FACTORY
+    };
+
+    private final FilterCompiler fc = new FilterCompiler();
+    private final Rnd rnd = new Rnd();
+
+    @BeforeClass
+    public static void setUp() throws Exception {
+        try (JournalWriter w = factory.writer(new JournalStructure("tab")
+                .$int("i")
+                .$long("l")
+                .$double("d")
+                .$date("t")
+                .$bool("b")
+                .$())) {
+
+            Rnd rnd = new Rnd();
+            for (int k = 0; k < 1000; k++) {
+                JournalEntryWriter ew = w.entryWriter();
+                ew.putInt(0, rnd.nextPositiveInt() % 10 == 0 ? Numbers.INT_NaN : rnd.nextPositiveInt() % 7 - 3);
+                ew.putLong(1, rnd.nextPositiveInt() % 10 == 0 ? Numbers.LONG_NaN : rnd.nextPositiveInt() % 7 - 3);
+                ew.putDouble(2, rnd.nextPositiveInt() % 10 == 0 ? Double.NaN : rnd.nextPositiveInt() % 7 - 3);
+                ew.putDate(3, rnd.nextPositiveInt() % 10 == 0 ? Numbers.LONG_NaN : rnd.nextPositiveInt() % 7 - 3);
+                ew.putBool(4, rnd.nextBoolean());
+                ew.append();
+            }
+            w.commit();
+        }
+        // open reader up front, its allocations would fail memory check of the first query
+        RecordSource rs = compiler.compile(factory, "tab");
+        printer.print(rs, factory);
+        Misc.free(rs);
+    }
+
+    @Test
+    public void testInterpretedRoot() throws Exception {
+        VirtualColumn vc = new BoolRecordSourceColumn(4);
+        Assert.assertSame(vc, fc.compile(vc));
+
+        vc = comparison(IntGreaterThanOperator.FACTORY, new IntRecordSourceColumn(0), new IntConstant(0));
+        Assert.assertTrue(fc.compile(vc) instanceof CompiledFilter);
+    }
+
+    @Test
+    public void testQuery() throws Exception {
+        assertThat("12\n", "select count() from tab where (i = NaN or d = NaN) and not(l != NaN)");
+        assertThat("1\t1\t1.000000000000\n" +
+                        "1\t1\t1.000000000000\n" +
+                        "1\t1\t1.000000000000\n",
+                "select i, l, d from tab where i = 1 and l = 1 and d >= 1.0 and d <= 1");
+    }
+
+    @Test
+    public void testRandomTrees() throws Exception {
+        RecordSource rs = compileSource("tab");
+        try {
+            for (int k = 0; k < 500; k++) {
+                VirtualColumn interpreted = randomBool(4);
+                VirtualColumn compiled = fc.compile(interpreted);
+                RecordCursor cursor = rs.prepareCursor(factory);
+                compiled.prepare(cursor.getStorageFacade());
+                while (cursor.hasNext()) {
+                    Record rec = cursor.next();
+                    Assert.assertEquals(interpreted.getBool(rec), compiled.getBool(rec));
+                }
+            }
+        } finally {
+            Misc.free(rs);
+        }
+    }
+
+    private static VirtualColumn comparison(ObjectFactory factory, VirtualColumn lhs, VirtualColumn rhs) throws ParserException {
+        Function f = (Function) factory.newInstance();
+        f.setArg(0, lhs);
+        f.setArg(1, rhs);
+        return f;
+    }
+
+    private static VirtualColumn logical(ObjectFactory<Function> factory, VirtualColumn lhs, VirtualColumn rhs) throws ParserException {
+        Function f = factory.newInstance();
+        f.setArg(0, lhs);
+        if (rhs != null) {
+            f.setArg(1, rhs);
+        }
+        return f;
+    }
+
+    private VirtualColumn randomBool(int depth) throws ParserException {
+        switch (rnd.nextPositiveInt() % (depth > 0 ? 6 : 3)) {
+            case 0:
+                // not compiled, called via VirtualColumn
+                return new BoolRecordSourceColumn(4);
+            case 1:
+            case 2:
+                return randomComparison();
+            case 3:
+                return logical(AndOperator.FACTORY, randomBool(depth - 1), randomBool(depth - 1));
+            case 4:
+                return logical(OrOperator.FACTORY, randomBool(depth - 1), randomBool(depth - 1));
+            default:
+                return logical(NotOperator.FACTORY, randomBool(depth - 1), null);
+        }
+    }
+
+    private VirtualColumn randomComparison() throws ParserException {
+        int op = rnd.nextPositiveInt() % 8;
+        switch (rnd.nextPositiveInt() % 3) {
+            case 0:
+                // NaN operators read lhs only
+                return comparison(INT_OPERATORS[op], randomInt(), op > 5 ? new DoubleConstant(Double.NaN) : randomInt());
+            case 1:
+                return comparison(LONG_OPERATORS[op], randomLong(), op > 5 ? new DoubleConstant(Double.NaN) : randomLong());
+            default:
+                return comparison(DOUBLE_OPERATORS[op], randomDouble(), op > 5 ? new DoubleConstant(Double.NaN) : randomDouble());
+        }
+    }
+
+    private VirtualColumn randomDouble() {
+        switch (rnd.nextPositiveInt() % 4) {
+            case 0:
+                return new DoubleConstant(rnd.nextPositiveInt() % 10 == 0 ? Double.NaN : rnd.nextPositiveInt() % 5 - 2);
+            case 1:
+                // int to double conversion stays interpreted
+                return new IntRecordSourceColumn(0);
+            default:
+                return new DoubleRecordSourceColumn(2);
+        }
+    }
+
+    private VirtualColumn randomInt() {
+        switch (rnd.nextPositiveInt() % 3) {
+            case 0:
+                return new IntConstant(rnd.nextPositiveInt() % 10 == 0 ? Numbers.INT_NaN : rnd.nextPositiveInt() % 5 - 2);
+            default:
+                return new IntRecordSourceColumn(0);
+        }
+    }
+
+    private VirtualColumn randomLong() {
+        switch (rnd.nextPositiveInt() % 5) {
+            case 0:
+                return new LongConstant(rnd.nextPositiveInt() % 10 == 0 ? Numbers.LONG_NaN : rnd.nextPositiveInt() % 5 - 2);
+            case 1:
+                return new IntRecordSourceColumn(0);
+            case 2:
+                return new DateRecordSourceColumn(3);
+            default:
+                return new LongRecordSourceColumn(1);
+        }
+    }
+}
@@ -0,0 +1,122 @@
+/*******************************************************************************
+ *    ___                  _   ____  ____
+ *   / _ \ _   _  ___  ___| |_|  _ \| __ )
+ *  | | | | | | |/ _ \/ __| __| | | |  _ \
+ *  | |_| | |_| |  __/\__ \ |_| |_| | |_) |
+ *   \__\_\\__,_|\___||___/\__|____/|____/
+ *
+ * Copyright (C) 2014-2016 Appsicle
+ *
+ * This program is free software: you can redistribute it and/or  modify
+ * it under the terms of the GNU Affero General Public License, version 3,
+ * as published by the Free Software Foundation.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ *
+ ******************************************************************************/
+
+package com.questdb.ql.impl.join;
+
+import com.questdb.JournalEntryWriter;
+import com.questdb.JournalWriter;
+import com.questdb.PartitionBy;
+import com.questdb.factory.configuration.JournalStructure;
+import com.questdb.misc.Dates;
+import com.questdb.misc.Rnd;
+import com.questdb.ql.RecordSource;
+import com.questdb.ql.parser.AbstractOptimiserTest;
+import com.questdb.test.tools.TestUtils;
+import org.junit.Assert;
+import org.junit.BeforeClass;
+import org.junit.Test;
+
+public class HashJoinPushdownTest extends AbstractOptimiserTest {
+
+    @BeforeClass
+    public static void setUp() throws Exception {
+        String[] syms = new String[200];
+        for (int i = 0; i < syms.length; i++) {
+            syms[i] = "S" + i;
+        }
+
+        try (JournalWriter w = factory.writer(new JournalStructure("orders")
+                .$sym("sym").buckets(64).index()
+                .$int("qty")
+                .$ts()
+                .partitionBy(PartitionBy.DAY)
+                .$())) {
+            writeOrders(w, syms);
+        }
+
+        try (JournalWriter w = factory.writer(new JournalStructure("orders_noidx")
+                .$sym("sym")
+                .$int("qty")
+                .$ts()
+                .partitionBy(PartitionBy.DAY)
+                .$())) {
+            writeOrders(w, syms);
+        }
+
+        // readers allocate on first use, keep them out of memory checks
+        for (String name : new String[]{"orders", "orders_noidx"}) {
+            print(name);
+        }
+    }
+
+    @Test
+    public void testInnerJoin() throws Exception {
+        assertSameAsNotIndexed("select a.sym, a.qty, a.timestamp, b.qty from %s a join (select sym, qty from %s where sym in ('S7', 'S120', 'S199') and qty > 96) b on a.sym = b.sym");
+    }
+
+    @Test
+    public void testInnerJoinFiltered() throws Exception {
+        assertSameAsNotIndexed("select a.sym, a.qty, b.qty from %s a join (select sym, qty from %s where sym in ('S7', 'S120', 'S199') and qty > 96) b on a.sym = b.sym where a.qty > 50");
+    }
+
+    @Test
+    public void testInnerJoinNotSelective() throws Exception {
+        assertSameAsNotIndexed("select a.sym, a.qty, b.qty from %s a join (select sym, qty from %s where qty > 98) b on a.sym = b.sym");
+    }
+
+    @Test
+    public void testInnerJoinNullKey() throws Exception {
+        assertSameAsNotIndexed("select a.sym, a.qty, b.qty from %s a join (select sym, qty from %s where (sym = null or sym = 'S7') and qty > 96) b on a.sym = b.sym");
+    }
+
+    @Test
+    public void testOuterJoin() throws Exception {
+        assertSameAsNotIndexed("select a.sym, a.qty, b.qty from %s a outer join (select sym, qty from %s where sym in ('S7', 'S120', 'S199') and qty > 96) b on a.sym = b.sym");
+    }
+
+    private static String print(String query) throws Exception {
+        try (RecordSource rs = compiler.compile(factory, query)) {
+            sink.clear();
+            printer.print(rs, factory, false);
+            return sink.toString();
+        }
+    }
+
+    private static void writeOrders(JournalWriter w, String[] syms) throws Exception {
+        Rnd rnd = new Rnd();
+        long ts = Dates.toMillis(2016, 5, 1, 10, 20);
+        for (int i = 0; i < 20000; i++) {
+            JournalEntryWriter ew = w.entryWriter(ts += 30000);
+            ew.putSym(0, rnd.nextPositiveInt() % 50 == 0 ? null : syms[rnd.nextPositiveInt() % syms.length]);
+            ew.putInt(1, rnd.nextPositiveInt() % 100);
+            ew.append();
+        }
+        w.commit();
+    }
+
+    private void assertSameAsNotIndexed(String query) throws Exception {
+        String expected = print(query.replace("%s", "orders_noidx"));
+        Assert.assertTrue(expected.length() > 0);
+        assertThat(expected, query.replace("%s", "orders"));
+    }
+}
@@ -0,0 +1,202 @@
+/*******************************************************************************
+ *    ___                  _   ____  ____
+ *   / _ \ _   _  ___  ___| |_|  _ \| __ )
+ *  | | | | | | |/ _ \/ __| __| | | |  _ \
+ *  | |_| | |_| |  __/\__ \ |_| |_| | |_) |
+ *   \__\_\\__,_|\___||___/\__|____/|____/
+ *
+ * Copyright (C) 2014-2016 Appsicle
+ *
+ * This program is free software: you can redistribute it and/or  modify
+ * it under the terms of the GNU Affero General Public License, version 3,
+ * as published by the Free Software Foundation.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ *
+ ******************************************************************************/
+
+
+package com.questdb.ql.impl.join;
+
+import com.questdb.JournalEntryWriter;
+import com.questdb.JournalWriter;
+import com.questdb.PartitionBy;
+import com.questdb.factory.configuration.JournalStructure;
+import com.questdb.misc.Dates;
+import com.questdb.misc.Rnd;
+import com.questdb.misc.Unsafe;
+import com.questdb.net.http.ServerConfiguration;
+import com.questdb.ql.RecordSource;
+import com.questdb.ql.impl.QueryWorkerPool;
+import com.questdb.ql.parser.AbstractOptimiserTest;
+import com.questdb.ql.parser.QueryCompiler;
+import com.questdb.test.tools.TestUtils;
+import org.junit.AfterClass;
+import org.junit.Assert;
+import org.junit.BeforeClass;
+import org.junit.Test;
+
+public class ParallelAsOfJoinTest extends AbstractOptimiserTest {
+
+    private static final QueryWorkerPool pool = new QueryWorkerPool(3);
+    private static final QueryCompiler parallelCompiler = new QueryCompiler(new ServerConfiguration() {
+        @Override
+        public int getDbParallelSliceRows() {
+            return 97;
+        }
+    });
+
+    @BeforeClass
+    public static void setUp() throws Exception {
+        parallelCompiler.setWorkerPool(pool);
+
+        Rnd rnd = new Rnd();
+        String[] syms = {"AX", "XX", "BZ", "KK", "PP", "UX", "LK"};
+        long start = Dates.toMillis(2016, 5, 1, 10, 20);
+
+        try (JournalWriter w = factory.writer(new JournalStructure("quotes")
+                .$sym("sym").buckets(10).index()
+                .$double("bid")
+                .$double("ask")
+                .$ts()
+                .partitionBy(PartitionBy.DAY)
+                .$())) {
+            writeQuotes(w, rnd, syms, start, 20000);
+        }
+
+        try (JournalWriter w = factory.writer(new JournalStructure("quotes_noidx")
+                .$sym("sym")
+                .$double("bid")
+                .$double("ask")
+                .$ts()
+                .partitionBy(PartitionBy.DAY)
+                .$())) {
+            writeQuotes(w, rnd, syms, start, 1000);
+        }
+
+        try (JournalWriter w = factory.writer(new JournalStructure("rates")
+                .$double("rate")
+                .$ts("rateTimestamp")
+                .partitionBy(PartitionBy.DAY)
+                .$())) {
+            long ts = start;
+            for (int i = 0; i < 3000; i++) {
+                ts += rnd.nextPositiveInt() % 10 == 0 ? 0 : rnd.nextPositiveInt() % 150000;
+                JournalEntryWriter ew = w.entryWriter(ts);
+                ew.putDouble(0, rnd.nextPositiveInt() % 1000);
+                ew.append();
+            }
+            w.commit();
+        }
+
+        try (JournalWriter w = factory.writer(new JournalStructure("trades")
+                .$sym("sym")
+                .$double("price")
+                .$int("qty")
+                .$ts()
+                .partitionBy(PartitionBy.DAY)
+                .$())) {
+            String[] tradeSyms = {"AX", "XX", "BZ", "KK", "ZZ"};
+            long ts = start - 30 * 60 * 1000;
+            for (int i = 0; i < 6000; i++) {
+                // trades stop before last quotes and continue past them
+                ts += rnd.nextPositiveInt() % 10 == 0 ? 0 : rnd.nextPositiveInt() % 120000;
+                JournalEntryWriter ew = w.entryWriter(ts);
+                ew.putSym(0, rnd.nextPositiveInt() % 25 == 0 ? null : tradeSyms[rnd.nextPositiveInt() % tradeSyms.length]);
+                ew.putDouble(1, rnd.nextPositiveInt() % 1000);
+                ew.putInt(2, rnd.nextPositiveInt() % 100);
+                ew.append();
+            }
+            w.commit();
+        }
+
+        // readers allocate on first use, keep them out of memory checks
+        for (String name : new String[]{"quotes", "quotes_noidx", "rates", "trades"}) {
+            try (RecordSource rs = compiler.compile(factory, name)) {
+                sink.clear();
+                printer.print(rs, factory, false);
+            }
+        }
+    }
+
+    @AfterClass
+    public static void tearDown() {
+        pool.close();
+    }
+
+    @Test
+    public void testKeyed() throws Exception {
+        assertParallel("trades t asof join quotes q on t.sym = q.sym");
+    }
+
+    @Test
+    public void testKeyedInterval() throws Exception {
+        assertParallel("trades t asof join (quotes where timestamp > '2016-05-02T10:00:00.000Z') q on t.sym = q.sym");
+    }
+
+    @Test
+    public void testKeyless() throws Exception {
+        assertParallel("trades asof join rates");
+    }
+
+    @Test
+    public void testNotIndexed() throws Exception {
+        assertParallel("trades t asof join quotes_noidx q on t.sym = q.sym", false);
+    }
+
+    @Test
+    public void testSelectedColumns() throws Exception {
+        assertParallel("select t.timestamp, t.sym, price, bid, ask, q.timestamp from trades t asof join quotes q on (sym)");
+    }
+
+    private static void writeQuotes(JournalWriter w, Rnd rnd, String[] syms, long ts, int count) throws Exception {
+        for (int i = 0; i < count; i++) {
+            ts += rnd.nextPositiveInt() % 10 == 0 ? 0 : rnd.nextPositiveInt() % 20000;
+            JournalEntryWriter ew = w.entryWriter(ts);
+            ew.putSym(0, rnd.nextPositiveInt() % 50 == 0 ? null : syms[rnd.nextPositiveInt() % syms.length]);
+            ew.putDouble(1, rnd.nextPositiveInt() % 1000);
+            ew.putDouble(2, rnd.nextPositiveInt() % 1000);
+            ew.append();
+        }
+        w.commit();
+    }
+
+    private void assertParallel(String query) throws Exception {
+        assertParallel(query, true);
+    }
+
+    private void assertParallel(String query, boolean parallel) throws Exception {
+        long memUsed = Unsafe.getMemUsed();
+        String expected = print(compiler, query, false);
+        String actual = print(parallelCompiler, query, parallel);
+        TestUtils.assertEquals(expected, actual);
+        Assert.assertEquals(memUsed, Unsafe.getMemUsed());
+    }
+
+    private String print(QueryCompiler compiler, String query, boolean parallel) throws Exception {
+        try (RecordSource rs = compiler.compile(factory, query)) {
+            sink.clear();
+            rs.toSink(sink);
+            Assert.assertEquals(parallel, sink.toString().contains("\"parallel\":true"));
+
+            // run twice to make sure cursor is reusable
+            String result = null;
+            for (int i = 0; i < 2; i++) {
+                sink.clear();
+                printer.print(rs, factory, false);
+                String s = sink.toString();
+                if (result != null) {
+                    TestUtils.assertEquals(result, s);
+                }
+                result = s;
+            }
+            return result;
+        }
+    }
+}
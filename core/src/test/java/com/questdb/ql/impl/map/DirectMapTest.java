@@ -204,6 +204,87 @@ public class DirectMapTest {
         Unsafe.free(tmp, tmpSize);
     }
 
+    @Test
+    public void testIntKeys() throws Exception {
+        DirectMap map = new DirectMap(1024, 1, COLUMN_TYPES);
+        HashMap<Integer, Long> hashMap = new HashMap<>();
+        Rnd rnd = new Rnd();
+
+        for (int i = 0; i < 5000; i++) {
+            // narrow key range to get repeated keys
+            int key = rnd.nextInt() % 2000;
+            long value = rnd.nextLong();
+            DirectMapValues values = map.getOrCreateValues(key);
+            Assert.assertEquals(!hashMap.containsKey(key), values.isNew());
+            values.putLong(1, value);
+            hashMap.put(key, value);
+        }
+
+        Assert.assertEquals(hashMap.size(), map.size());
+
+        for (Map.Entry<Integer, Long> me : hashMap.entrySet()) {
+            // fast path and key writer must agree on entry
+            DirectMap.KeyWriter kw = map.keyWriter();
+            kw.putInt(me.getKey());
+            DirectMapValues values = map.getValues(kw);
+            Assert.assertNotNull(values);
+            Assert.assertEquals((long) me.getValue(), values.getLong(1));
+            Assert.assertEquals((long) me.getValue(), map.getValues((int) me.getKey()).getLong(1));
+        }
+
+        int count = 0;
+        for (DirectMapEntry e : map) {
+            Assert.assertEquals((long) hashMap.get(e.getInt(6)), e.getLong(1));
+            count++;
+        }
+        Assert.assertEquals(hashMap.size(), count);
+        Assert.assertNull(map.getValues(5000));
+        map.close();
+    }
+
+    @Test
+    public void testLongKeys() throws Exception {
+        DirectMap map = new DirectMap(1024, 1, COLUMN_TYPES);
+        HashMap<Long, Integer> hashMap = new HashMap<>();
+        Rnd rnd = new Rnd();
+
+        for (int i = 0; i < 5000; i++) {
+            DirectMap.KeyWriter kw = map.keyWriter();
+            long key = rnd.nextLong() % 2000;
+            int value = rnd.nextInt();
+            // alternate between key writer and fast path on the same map
+            DirectMapValues values;
+            if ((i & 1) == 0) {
+                kw.putLong(key);
+                values = map.getOrCreateValues(kw);
+            } else {
+                values = map.getOrCreateValues(key);
+            }
+            Assert.assertEquals(!hashMap.containsKey(key), values.isNew());
+            values.putInt(0, value);
+            hashMap.put(key, value);
+        }
+
+        Assert.assertEquals(hashMap.size(), map.size());
+
+        for (Map.Entry<Long, Integer> me : hashMap.entrySet()) {
+            DirectMapValues values = map.getValues((long) me.getKey());
+            Assert.assertNotNull(values);
+            Assert.assertEquals((int) me.getValue(), values.getInt(0));
+        }
+
+        int count = 0;
+        for (DirectMapEntry e : map) {
+            Assert.assertEquals((int) hashMap.get(e.getLong(6)), e.getInt(0));
+            count++;
+        }
+        Assert.assertEquals(hashMap.size(), count);
+
+        // int key of the same bytes is a different entry
+        Assert.assertNull(map.getValues(0));
+        map.close();
+    }
+
     @Test
     public void testValuesReadWrite() throws Exception {
         DirectMap map = new DirectMap(1024, 64, COLUMN_TYPES);
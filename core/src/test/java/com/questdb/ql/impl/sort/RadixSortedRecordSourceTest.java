@@ -0,0 +1,161 @@
+/*******************************************************************************
+ *    ___                  _   ____  ____
+ *   / _ \ _   _  ___  ___| |_|  _ \| __ )
+ *  | | | | | | |/ _ \/ __| __| | | |  _ \
+ *  | |_| | |_| |  __/\__ \ |_| |_| | |_) |
+ *   \__\_\\__,_|\___||___/\__|____/|____/
+ *
+ * Copyright (C) 2014-2016 Appsicle
+ *
+ * This program is free software: you can redistribute it and/or  modify
+ * it under the terms of the GNU Affero General Public License, version 3,
+ * as published by the Free Software Foundation.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ *
+ ******************************************************************************/
+
+
+package com.questdb.ql.impl.sort;
+
+import com.questdb.JournalEntryWriter;
+import com.questdb.JournalWriter;
+import com.questdb.factory.configuration.JournalStructure;
+import com.questdb.factory.configuration.RecordMetadata;
+import com.questdb.misc.Numbers;
+import com.questdb.misc.Rnd;
+import com.questdb.ql.RecordSource;
+import com.questdb.ql.parser.AbstractOptimiserTest;
+import com.questdb.std.IntList;
+import com.questdb.test.tools.TestUtils;
+import org.junit.Assert;
+import org.junit.BeforeClass;
+import org.junit.Test;
+
+public class RadixSortedRecordSourceTest extends AbstractOptimiserTest {
+
+    private final ComparatorCompiler cc = new ComparatorCompiler();
+
+    @BeforeClass
+    public static void setUp() throws Exception {
+        try (JournalWriter w = factory.bulkWriter(new JournalStructure("radix")
+                .$sym("sym")
+                .$int("i")
+                .$long("l")
+                .$double("d")
+                .$float("f")
+                .$short("sh")
+                .$byte("b")
+                .$bool("bool")
+                .$date("dt")
+                .$str("str")
+                .$())) {
+            Rnd rnd = new Rnd();
+            String[] syms = {"AB", "B", "ABC", "XY", "C", "ZZZ"};
+            // strings sharing prefix of length and first two chars are ordered by comparator
+            String[] strs = {"", "A", "AB", "ABC", "ABD", "ABCD", "ABDC", "BA", "BAC"};
+            for (int k = 0; k < 2000; k++) {
+                JournalEntryWriter ew = w.entryWriter();
+                ew.putSym(0, rnd.nextPositiveInt() % 10 == 0 ? null : syms[rnd.nextPositiveInt() % syms.length]);
+                // narrow ranges produce plenty of duplicate keys to check sort stability
+                ew.putInt(1, rnd.nextPositiveInt() % 10 == 0 ? Numbers.INT_NaN : rnd.nextInt() % 20);
+                ew.putLong(2, rnd.nextPositiveInt() % 10 == 0 ? Numbers.LONG_NaN : rnd.nextLong() % 50);
+                ew.putDouble(3, rnd.nextPositiveInt() % 10 == 0 ? Double.NaN : rnd.nextInt() % 30 / 4.0);
+                ew.putFloat(4, rnd.nextPositiveInt() % 10 == 0 ? Float.NaN : rnd.nextInt() % 30 / 4.0f);
+                ew.putShort(5, (short) (rnd.nextInt() % 500));
+                ew.put(6, (byte) rnd.nextInt());
+                ew.putBool(7, rnd.nextBoolean());
+                ew.putDate(8, rnd.nextLong() % 100);
+                ew.putStr(9, rnd.nextPositiveInt() % 10 == 0 ? null : strs[rnd.nextPositiveInt() % strs.length]);
+                ew.append();
+            }
+            w.commit();
+        }
+
+        // reader allocates on first use, keep it out of memory checks
+        try (RecordSource rs = compiler.compile(factory, "radix")) {
+            sink.clear();
+            printer.print(rs, factory, false);
+        }
+    }
+
+    @Test
+    public void testDouble() throws Exception {
+        assertSort("radix order by d", "radix", "d");
+        assertSort("radix order by d desc", "radix", "-d");
+        assertSort("radix order by f", "radix", "f");
+    }
+
+    @Test
+    public void testInt() throws Exception {
+        assertSort("radix order by i", "radix", "i");
+        assertSort("radix order by i desc", "radix", "-i");
+    }
+
+    @Test
+    public void testLong() throws Exception {
+        assertSort("radix order by l", "radix", "l");
+        assertSort("radix order by dt desc", "radix", "-dt");
+    }
+
+    @Test
+    public void testMixedKeys() throws Exception {
+        assertSort("radix order by bool, sym desc, sh, b desc", "radix", "bool", "-sym", "sh", "-b");
+    }
+
+    @Test
+    public void testNotByRowId() throws Exception {
+        // aggregated source has no row ids, sort copies records
+        String source = "(select sym, i, count() c from radix)";
+        assertSort(source + " order by c desc, sym", source, "-c", "sym");
+    }
+
+    @Test
+    public void testStringMergeSort() throws Exception {
+        assertSort("radix order by str, i desc", "radix", "str", "-i");
+        assertSort("radix order by str desc", "radix", "-str");
+        assertSort("radix order by i, str, b", "radix", "i", "str", "b");
+    }
+
+    @Test
+    public void testStringMergeSortNotByRowId() throws Exception {
+        String source = "(select str, sym, count() c from radix)";
+        assertSort(source + " order by str desc, c", source, "-str", "c");
+    }
+
+    @Test
+    public void testSymbol() throws Exception {
+        assertSort("radix order by sym", "radix", "sym");
+        assertSort("radix order by sym desc, d", "radix", "-sym", "d");
+    }
+
+    private void assertSort(String query, String source, String... columns) throws Exception {
+        try (RecordSource rs = compileSource(query)) {
+            sink.clear();
+            rs.toSink(sink);
+            Assert.assertTrue(sink.toString().startsWith("{\"op\":\"RadixSortedRecordSource\""));
+        }
+
+        RecordSource src = compileSource(source);
+        RecordMetadata m = src.getMetadata();
+        IntList indices = new IntList();
+        for (String c : columns) {
+            indices.add(c.charAt(0) == '-' ? -m.getColumnIndex(c.substring(1)) - 1 : m.getColumnIndex(c) + 1);
+        }
+
+        // red-black tree is stable too, both sorts must agree on every row
+        try (RecordSource expected = new RBTreeSortedRecordSource(src, cc.compile(m, indices), 1024 * 1024, 1024 * 1024)) {
+            sink.clear();
+            printer.print(expected, factory, false);
+        }
+        String expected = sink.toString();
+        assertThat(expected, query);
+        TestUtils.assertEquals(expected, sink);
+    }
+}
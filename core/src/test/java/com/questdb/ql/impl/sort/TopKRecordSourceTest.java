@@ -0,0 +1,189 @@
+/*******************************************************************************
+ *    ___                  _   ____  ____
+ *   / _ \ _   _  ___  ___| |_|  _ \| __ )
+ *  | | | | | | |/ _ \/ __| __| | | |  _ \
+ *  | |_| | |_| |  __/\__ \ |_| |_| | |_) |
+ *   \__\_\\__,_|\___||___/\__|____/|____/
+ *
+ * Copyright (C) 2014-2016 Appsicle
+ *
+ * This program is free software: you can redistribute it and/or  modify
+ * it under the terms of the GNU Affero General Public License, version 3,
+ * as published by the Free Software Foundation.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ *
+ ******************************************************************************/
+
+
+package com.questdb.ql.impl.sort;
+
+import com.questdb.JournalEntryWriter;
+import com.questdb.JournalWriter;
+import com.questdb.factory.configuration.JournalStructure;
+import com.questdb.factory.configuration.RecordMetadata;
+import com.questdb.misc.Numbers;
+import com.questdb.misc.Rnd;
+import com.questdb.ql.RecordSource;
+import com.questdb.ql.impl.NoRowIdRecordSource;
+import com.questdb.ql.impl.TopRecordSource;
+import com.questdb.ql.ops.constant.LongConstant;
+import com.questdb.ql.parser.AbstractOptimiserTest;
+import com.questdb.std.IntList;
+import com.questdb.test.tools.TestUtils;
+import org.junit.Assert;
+import org.junit.BeforeClass;
+import org.junit.Test;
+
+public class TopKRecordSourceTest extends AbstractOptimiserTest {
+
+    private final ComparatorCompiler cc = new ComparatorCompiler();
+
+    @BeforeClass
+    public static void setUp() throws Exception {
+        try (JournalWriter w = factory.bulkWriter(new JournalStructure("topk")
+                .$sym("sym")
+                .$int("i")
+                .$double("d")
+                .$str("str")
+                .$ts()
+                .$())) {
+            Rnd rnd = new Rnd();
+            String[] syms = {"AB", "B", "ABC", "XY", "C"};
+            long ts = 0;
+            for (int k = 0; k < 1000; k++) {
+                JournalEntryWriter ew = w.entryWriter(ts += 1000);
+                ew.putSym(0, syms[rnd.nextPositiveInt() % syms.length]);
+                // narrow range produces plenty of ties to check they are broken by source order
+                ew.putInt(1, rnd.nextPositiveInt() % 10 == 0 ? Numbers.INT_NaN : rnd.nextInt() % 20);
+                ew.putDouble(2, rnd.nextInt() % 30 / 4.0);
+                ew.putStr(3, rnd.nextChars(rnd.nextPositiveInt() % 3));
+                ew.append();
+            }
+            w.commit();
+        }
+
+        // reader allocates on first use, keep it out of memory checks
+        try (RecordSource rs = compiler.compile(factory, "topk")) {
+            sink.clear();
+            printer.print(rs, factory, false);
+        }
+    }
+
+    @Test
+    public void testDescTimestamp() throws Exception {
+        assertTop("topk", 0, 10, "-timestamp");
+    }
+
+    @Test
+    public void testEmptyLimit() throws Exception {
+        assertEmpty("topk order by i limit 0");
+    }
+
+    @Test
+    public void testLimitAboveSize() throws Exception {
+        assertTop("topk", 0, 5000, "i", "-d");
+    }
+
+    @Test
+    public void testLoHi() throws Exception {
+        assertTop("topk", 7, 25, "sym", "-i");
+    }
+
+    @Test
+    public void testNotByRowId() throws Exception {
+        // map entries share state between current record and random access
+        assertTop("(select sym, i, count() c from topk)", 0, 3, "-c", "sym");
+        assertTop("(select sym, i, count() c from topk)", 2, 20, "i", "-c");
+    }
+
+    @Test
+    public void testNoRowIdCompaction() throws Exception {
+        // every record beats heap top in descending timestamp order, copies are compacted all the time
+        assertNoRowId(1, "-timestamp");
+        assertNoRowId(10, "-timestamp");
+        assertNoRowId(10, "str", "-i");
+        assertNoRowId(100, "sym", "d");
+    }
+
+    @Test
+    public void testPlan() throws Exception {
+        sink.clear();
+        try (RecordSource rs = compileSource("topk order by i desc limit 10")) {
+            rs.toSink(sink);
+        }
+        TestUtils.assertEquals("{\"op\":\"TopRecordSource\",\"low\":0,\"high\":10,\"src\":" +
+                "{\"op\":\"TopKRecordSource\",\"limit\":10,\"byRowId\":true,\"src\":" +
+                "{\"op\":\"JournalRecordSource\",\"psrc\":{\"op\":\"JournalPartitionSource\",\"journal\":\"topk\"},\"rsrc\":{\"op\":\"AllRowSource\"}}}}", sink);
+    }
+
+    @Test
+    public void testTies() throws Exception {
+        assertTop("topk", 0, 50, "sym");
+        assertTop("topk", 0, 50, "str");
+    }
+
+    private void assertNoRowId(long k, String... columns) throws Exception {
+        IntList indices = new IntList();
+        RecordSource src = compileSource("topk");
+        RecordMetadata m = src.getMetadata();
+        for (String c : columns) {
+            indices.add(c.charAt(0) == '-' ? -m.getColumnIndex(c.substring(1)) - 1 : m.getColumnIndex(c) + 1);
+        }
+
+        try (RecordSource expected = new TopRecordSource(
+                new RadixSortedRecordSource(src, indices, cc.compile(m, indices), 1024 * 1024, 1024 * 1024, null),
+                new LongConstant(0),
+                new LongConstant(k))) {
+            sink.clear();
+            printer.print(expected, factory, false);
+        }
+        String expected = sink.toString();
+
+        try (RecordSource rs = new TopKRecordSource(
+                new NoRowIdRecordSource().of(compileSource("topk")),
+                cc.compile(m, indices),
+                new LongConstant(k),
+                1024,
+                null)) {
+            assertThat(expected, rs, false);
+        }
+    }
+
+    private void assertTop(String source, long lo, long hi, String... columns) throws Exception {
+        StringBuilder query = new StringBuilder(source).append(" order by ");
+        for (int i = 0; i < columns.length; i++) {
+            String c = columns[i];
+            if (i > 0) {
+                query.append(", ");
+            }
+            query.append(c.charAt(0) == '-' ? c.substring(1) + " desc" : c);
+        }
+        query.append(" limit ").append(lo).append(',').append(hi);
+
+        RecordSource src = compileSource(source);
+        RecordMetadata m = src.getMetadata();
+        IntList indices = new IntList();
+        for (String c : columns) {
+            indices.add(c.charAt(0) == '-' ? -m.getColumnIndex(c.substring(1)) - 1 : m.getColumnIndex(c) + 1);
+        }
+
+        // full sort followed by limit is the reference
+        try (RecordSource expected = new TopRecordSource(
+                new RadixSortedRecordSource(src, indices, cc.compile(m, indices), 1024 * 1024, 1024 * 1024, null),
+                new LongConstant(lo),
+                new LongConstant(hi))) {
+            sink.clear();
+            printer.print(expected, factory, false);
+        }
+        String expected = sink.toString();
+        Assert.assertTrue(expected.length() > 0);
+        assertThat(expected, query.toString());
+    }
+}
@@ -0,0 +1,204 @@
+/*******************************************************************************
+ *    ___                  _   ____  ____
+ *   / _ \ _   _  ___  ___| |_|  _ \| __ )
+ *  | | | | | | |/ _ \/ __| __| | | |  _ \
+ *  | |_| | |_| |  __/\__ \ |_| |_| | |_) |
+ *   \__\_\\__,_|\___||___/\__|____/|____/
+ *
+ * Copyright (C) 2014-2016 Appsicle
+ *
+ * This program is free software: you can redistribute it and/or  modify
+ * it under the terms of the GNU Affero General Public License, version 3,
+ * as published by the Free Software Foundation.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ *
+ ******************************************************************************/
+
+
+package com.questdb.ql.impl.view;
+
+import com.questdb.JournalEntryWriter;
+import com.questdb.JournalWriter;
+import com.questdb.PartitionBy;
+import com.questdb.ex.ParserException;
+import com.questdb.factory.configuration.JournalStructure;
+import com.questdb.misc.Dates;
+import com.questdb.misc.Rnd;
+import com.questdb.ql.RecordCursor;
+import com.questdb.ql.RecordSource;
+import com.questdb.ql.parser.AbstractOptimiserTest;
+import com.questdb.test.tools.TestUtils;
+import org.junit.Assert;
+import org.junit.BeforeClass;
+import org.junit.Test;
+
+public class MaterializedViewTest extends AbstractOptimiserTest {
+
+    private static final String QUERY = "select sym, timestamp, sum(price) total, max(price) hi from trades sample by 1d";
+    private static final Rnd rnd = new Rnd();
+    private static JournalWriter trades;
+    private static long timestamp;
+
+    @BeforeClass
+    public static void setUpClass() throws Exception {
+        trades = factory.bulkWriter(new JournalStructure("trades")
+                .$sym("sym")
+                .$double("price")
+                .$ts()
+                .partitionBy(PartitionBy.DAY)
+                .$());
+        timestamp = Dates.toMillis(2016, 5, 1, 10, 0);
+        append(30);
+    }
+
+    @Test
+    public void testIncrementalRefresh() throws Exception {
+        try (MaterializedView view = new MaterializedView(factory, compiler, "daily", QUERY)) {
+            trades.setTxListener(view);
+            try {
+                assertEquivalent(view);
+                // open sample is never materialised
+                Assert.assertEquals(Dates.toMillis(2016, 5, 1, 0, 0), view.getMaterializedTimestamp());
+
+                // rows of open sample only
+                append(1);
+                view.awaitRefresh();
+                assertEquivalent(view);
+                Assert.assertEquals(Dates.toMillis(2016, 5, 1, 0, 0), view.getMaterializedTimestamp());
+
+                append(100);
+                view.awaitRefresh();
+                assertEquivalent(view);
+                Assert.assertEquals(Dates.toMillis(2016, 5, 5, 0, 0), view.getMaterializedTimestamp());
+            } finally {
+                trades.setTxListener(null);
+            }
+        }
+
+        // view journal holds completed samples only
+        sink.clear();
+        try (RecordSource rs = compileSource("select count() from daily")) {
+            printer.print(rs, factory, false);
+        }
+        TestUtils.assertEquals("20\n", sink);
+
+        // reopened view resumes from materialised samples
+        append(50);
+        try (MaterializedView view = new MaterializedView(factory, compiler, "daily", QUERY)) {
+            assertEquivalent(view);
+            Assert.assertEquals(Dates.toMillis(2016, 5, 7, 0, 0), view.getMaterializedTimestamp());
+        }
+    }
+
+    @Test
+    public void testLateRows() throws Exception {
+        String query = "select sym, timestamp, sum(price) total, max(price) hi from late_trades sample by 1d";
+        try (JournalWriter w = factory.bulkWriter(new JournalStructure("late_trades")
+                .$sym("sym")
+                .$double("price")
+                .$ts()
+                .partitionBy(PartitionBy.DAY)
+                .$())) {
+            w.setOutOfOrderEnabled(true);
+            long ts = Dates.toMillis(2016, 5, 1, 10, 0);
+            for (int i = 0; i < 100; i++) {
+                appendTrade(w, ts += 60 * 60 * 1000, i % 2 == 0 ? "AX" : "BZ", i);
+            }
+            w.commit();
+
+            try (MaterializedView view = new MaterializedView(factory, compiler, "late_daily", query)) {
+                w.setTxListener(view);
+                try {
+                    Assert.assertEquals(Dates.toMillis(2016, 5, 4, 0, 0), view.getMaterializedTimestamp());
+
+                    // late row lands in materialised sample
+                    appendTrade(w, Dates.toMillis(2016, 5, 2, 12, 30), "AX", 1000);
+                    w.commit();
+                    view.awaitRefresh();
+                    assertEquivalent(view, query);
+                    Assert.assertEquals(Dates.toMillis(2016, 5, 4, 0, 0), view.getMaterializedTimestamp());
+
+                    for (int i = 0; i < 48; i++) {
+                        appendTrade(w, ts += 60 * 60 * 1000, i % 2 == 0 ? "AX" : "BZ", i);
+                    }
+                    w.commit();
+                    view.awaitRefresh();
+                    Assert.assertEquals(Dates.toMillis(2016, 5, 6, 0, 0), view.getMaterializedTimestamp());
+
+                    // reader holds back rollback of stale samples, but does not see them
+                    RecordCursor cursor = view.prepareCursor(factory);
+                    Assert.assertTrue(cursor.hasNext());
+                    appendTrade(w, Dates.toMillis(2016, 5, 6, 12, 30), "KK", 2000);
+                    w.commit();
+                    view.awaitRefresh();
+                    Assert.assertTrue(view.getMaterializedTimestamp() < Dates.toMillis(2016, 5, 6, 0, 0));
+                    assertEquivalent(view, query);
+
+                    // next commit completes rollback
+                    appendTrade(w, ts += 60 * 60 * 1000, "BZ", 3);
+                    w.commit();
+                    view.awaitRefresh();
+                    assertEquivalent(view, query);
+                    Assert.assertEquals(Dates.toMillis(2016, 5, 6, 0, 0), view.getMaterializedTimestamp());
+                } finally {
+                    w.setTxListener(null);
+                }
+            }
+
+            // view journal holds no stale samples
+            try (MaterializedView view = new MaterializedView(factory, compiler, "late_daily", query)) {
+                assertEquivalent(view, query);
+            }
+        }
+    }
+
+    @Test(expected = ParserException.class)
+    public void testNoSampleBy() throws Exception {
+        new MaterializedView(factory, compiler, "bad", "select sym, timestamp, sum(price) from trades");
+    }
+
+    @Test(expected = ParserException.class)
+    public void testNoTimestamp() throws Exception {
+        new MaterializedView(factory, compiler, "bad", "select sym, sum(price) from trades sample by 1d");
+    }
+
+    private static void append(int count) throws Exception {
+        String[] sym = {"AX", "XX", "BZ", "KK"};
+        for (int i = 0; i < count; i++) {
+            JournalEntryWriter ew = trades.entryWriter(timestamp += 60 * 60 * 1000);
+            ew.putSym(0, sym[rnd.nextPositiveInt() % sym.length]);
+            ew.putDouble(1, rnd.nextDouble());
+            ew.append();
+        }
+        trades.commit();
+    }
+
+    private static void appendTrade(JournalWriter w, long timestamp, String sym, double price) throws Exception {
+        JournalEntryWriter ew = w.entryWriter(timestamp);
+        ew.putSym(0, sym);
+        ew.putDouble(1, price);
+        ew.append();
+    }
+
+    private void assertEquivalent(MaterializedView view) throws Exception {
+        assertEquivalent(view, QUERY);
+    }
+
+    private void assertEquivalent(MaterializedView view, String query) throws Exception {
+        sink.clear();
+        try (RecordSource rs = compileSource(query)) {
+            printer.print(rs, factory, true);
+        }
+        String expected = sink.toString();
+        sink.clear();
+        printer.print(view, factory, true);
+        TestUtils.assertEquals(expected, sink);
+    }
+}
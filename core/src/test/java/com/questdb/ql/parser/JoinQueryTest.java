@@ -152,7 +152,7 @@ public class JoinQueryTest extends AbstractOptimiserTest {
                         "        }\n" +
                         "      },\n" +
                         "      \"slave\": {\n" +
-                        "        \"op\": \"RBTreeSortedRecordSource\",\n" +
+                        "        \"op\": \"RadixSortedRecordSource\",\n" +
                         "        \"byRowId\": true,\n" +
                         "        \"src\": {\n" +
                         "          \"op\": \"SelectedColumnsRecordSource\",\n" +
@@ -218,7 +218,7 @@ public class JoinQueryTest extends AbstractOptimiserTest {
                         "    }\n" +
                         "  },\n" +
                         "  \"slave\": {\n" +
-                        "    \"op\": \"RBTreeSortedRecordSource\",\n" +
+                        "    \"op\": \"RadixSortedRecordSource\",\n" +
                         "    \"byRowId\": true,\n" +
                         "    \"src\": {\n" +
                         "      \"op\": \"SelectedColumnsRecordSource\",\n" +
@@ -259,7 +259,7 @@ public class JoinQueryTest extends AbstractOptimiserTest {
                         "    }\n" +
                         "  },\n" +
                         "  \"slave\": {\n" +
-                        "    \"op\": \"RBTreeSortedRecordSource\",\n" +
+                        "    \"op\": \"RadixSortedRecordSource\",\n" +
                         "    \"byRowId\": true,\n" +
                         "    \"src\": {\n" +
                         "      \"op\": \"SelectedColumnsRecordSource\",\n" +
@@ -0,0 +1,204 @@
+/*******************************************************************************
+ *    ___                  _   ____  ____
+ *   / _ \ _   _  ___  ___| |_|  _ \| __ )
+ *  | | | | | | |/ _ \/ __| __| | | |  _ \
+ *  | |_| | |_| |  __/\__ \ |_| |_| | |_) |
+ *   \__\_\\__,_|\___||___/\__|____/|____/
+ *
+ * Copyright (C) 2014-2016 Appsicle
+ *
+ * This program is free software: you can redistribute it and/or  modify
+ * it under the terms of the GNU Affero General Public License, version 3,
+ * as published by the Free Software Foundation.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ *
+ ******************************************************************************/
+
+
+package com.questdb.ql.parser;
+
+import com.questdb.JournalEntryWriter;
+import com.questdb.JournalWriter;
+import com.questdb.factory.configuration.JournalStructure;
+import com.questdb.misc.Dates;
+import com.questdb.misc.Files;
+import com.questdb.misc.Rnd;
+import com.questdb.ql.RecordSource;
+import com.questdb.test.tools.TestUtils;
+import org.junit.*;
+
+import java.io.File;
+
+public class QueryCacheTest extends AbstractOptimiserTest {
+
+    private QueryCache cache;
+
+    @BeforeClass
+    public static void setUpClass() throws Exception {
+        try (JournalWriter w = factory.writer(new JournalStructure("prices")
+                .$sym("sym").index()
+                .$double("price")
+                .$int("qty")
+                .$long("vol")
+                .$str("note")
+                .$ts()
+                .$())) {
+            Rnd rnd = new Rnd();
+            String[] sym = {"AX", "XX", "BZ", "KK"};
+            long t = Dates.toMillis(2016, 5, 1, 10, 0);
+            for (int i = 0; i < 200; i++) {
+                JournalEntryWriter ew = w.entryWriter(t += 60000);
+                ew.putSym(0, sym[rnd.nextPositiveInt() % sym.length]);
+                ew.putDouble(1, rnd.nextDouble() * 100);
+                ew.putInt(2, rnd.nextPositiveInt() % 20);
+                ew.putLong(3, rnd.nextPositiveLong() % 1000);
+                ew.putStr(4, sym[rnd.nextPositiveInt() % sym.length]);
+                ew.append();
+            }
+            w.commit();
+        }
+    }
+
+    @Before
+    public void setUp() throws Exception {
+        cache = new QueryCache(8, 16);
+    }
+
+    @After
+    public void tearDown() throws Exception {
+        cache.close();
+    }
+
+    @Test
+    public void testDifferentLiteralType() throws Exception {
+        assertMiss("prices where qty > 5");
+        // double literal selects different function for int column
+        assertMiss("prices where qty > 5.5");
+        assertHit("prices where qty > 7");
+    }
+
+    @Test
+    public void testIndexedLiteralIsNotLifted() throws Exception {
+        assertMiss("prices where sym = 'AX' and price > 10");
+        assertMiss("prices where sym = 'BZ' and price > 10");
+        assertHit("prices where sym = 'BZ' and price > 55");
+        assertHit("prices where sym = 'AX'   and price > 20");
+    }
+
+    @Test
+    public void testInvalidation() throws Exception {
+        createChanging(new JournalStructure("changing").$int("qty").$double("price").$ts());
+        assertMiss("changing where price > 10");
+        assertHit("changing where price > 20");
+
+        // journal is recreated with different structure within the same second
+        Files.deleteOrException(new File(factory.getConfiguration().getJournalBase(), "changing"));
+        createChanging(new JournalStructure("changing").$double("price").$int("qty").$ts());
+        assertMiss("changing where price > 30");
+        Assert.assertEquals(1, cache.getInvalidationCount());
+        assertHit("changing where price > 40");
+    }
+
+    @Test
+    public void testInstancesOfSameShape() throws Exception {
+        assertMiss("prices where price > 10");
+        assertMiss("prices where qty > 5");
+
+        RecordSource first = cache.poll(factory, "prices where price > 20");
+        Assert.assertNotNull(first);
+        // the only instance is checked out, other shapes are still reachable
+        Assert.assertNull(cache.poll(factory, "prices where price > 30"));
+        assertHit("prices where qty > 7");
+
+        RecordSource second = cache.compile(compiler, factory, "prices where price > 30");
+        Assert.assertNotSame(first, second);
+        cache.put(first);
+        cache.put(second);
+
+        // both instances are pooled
+        RecordSource a = cache.poll(factory, "prices where price > 40");
+        RecordSource b = cache.poll(factory, "prices where price > 50");
+        try {
+            Assert.assertNotNull(a);
+            Assert.assertNotNull(b);
+            Assert.assertNotSame(a, b);
+        } finally {
+            cache.put(a);
+            cache.put(b);
+        }
+        assertHit("prices where price > 60");
+        Assert.assertEquals(3, cache.getMissCount());
+    }
+
+    @Test
+    public void testLiftedLiterals() throws Exception {
+        assertMiss("select sym, price, qty from prices where price > 10 and qty < 15 and vol >= 300 and note != 'AX' limit 10");
+        assertHit("select sym, price, qty from prices where price > 50 and qty < 10 and vol >= 500 and note != 'KK' limit 5");
+        assertHit("select sym, price, qty from prices where price > 70 and qty < 19 and vol >= 100 and note != 'XX' limit 20");
+        Assert.assertEquals(2, cache.getHitCount());
+        Assert.assertEquals(1, cache.getMissCount());
+    }
+
+    @Test
+    public void testLiftedLiteralsOnLeft() throws Exception {
+        assertMiss("prices where 70 < price and 3 < qty and 100 <= vol and 'XX' = note");
+        assertHit("prices where 20 < price and 8 < qty and 900 <= vol and 'KK' = note");
+    }
+
+    @Test
+    public void testParsedModel() throws Exception {
+        String query = "select sym, price from prices where price > 10 limit 5";
+        Assert.assertNull(cache.poll(factory, query));
+        assertResult(query, cache.compile(compiler, factory, query, compiler.parse(query)));
+        assertHit("select sym, price from prices where price > 30 limit 7");
+    }
+
+    @Test
+    public void testShapeIgnoresWhitespace() throws Exception {
+        assertMiss("select sym, price from prices where price > 10");
+        assertHit("select sym,price   from prices\nwhere price > 12 -- comment");
+    }
+
+    private static void createChanging(JournalStructure structure) throws Exception {
+        try (JournalWriter w = factory.writer(structure.$())) {
+            JournalEntryWriter ew = w.entryWriter(Dates.toMillis(2016, 5, 1, 10, 0));
+            ew.putDouble(w.getMetadata().getColumnIndex("price"), 25);
+            ew.putInt(w.getMetadata().getColumnIndex("qty"), 3);
+            ew.append();
+            w.commit();
+        }
+    }
+
+    private void assertHit(String query) throws Exception {
+        RecordSource rs = cache.poll(factory, query);
+        Assert.assertNotNull(rs);
+        assertResult(query, rs);
+    }
+
+    private void assertMiss(String query) throws Exception {
+        Assert.assertNull(cache.poll(factory, query));
+        assertResult(query, cache.compile(compiler, factory, query));
+    }
+
+    private void assertResult(String query, RecordSource rs) throws Exception {
+        try {
+            sink.clear();
+            try (RecordSource expected = compileSource(query)) {
+                printer.print(expected, factory, true);
+            }
+            String expected = sink.toString();
+            sink.clear();
+            printer.print(rs, factory, true);
+            TestUtils.assertEquals(expected, sink);
+        } finally {
+            cache.put(rs);
+        }
+    }
+}
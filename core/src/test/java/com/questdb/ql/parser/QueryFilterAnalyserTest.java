@@ -89,6 +89,21 @@ public class QueryFilterAnalyserTest extends AbstractTest {
         }
     }
 
+    @Test
+    public void testColumnRanges() throws Exception {
+        IntrinsicModel m = modelOf("bid > 100 and 20 > bidSize and askSize = 5 and bid <= 150.5 and ask = null and ex = 'x' and mode != 'y'");
+        Assert.assertEquals("ColumnRanges{2:[100.0,150.5], 4:[-9223372036854775808,19], 5:[5,5], 3:null}", m.ranges.toString());
+        assertFilter(m, "'y'mode!=nullask=150.5bid<=5askSize=bidSize20>100bid>andandandandand");
+    }
+
+    @Test
+    public void testColumnRangesIgnoreDisjunction() throws Exception {
+        IntrinsicModel m = modelOf("bid > 100 or bidSize < 5");
+        Assert.assertNull(m.ranges);
+        m = modelOf("bidSize > 3000000000 and bidSize > 'abc'");
+        Assert.assertNull(m.ranges);
+    }
+
     @Test
     public void testComplexInterval1() throws Exception {
         IntrinsicModel m = modelOf("timestamp = '2015-02-23T10:00;2d'");
@@ -92,6 +92,17 @@ public class QueryParserTest extends AbstractTest {
         Assert.assertEquals(QueryModel.ORDER_DIRECTION_ASCENDING, col.getOrderByDirection().get(2));
     }
 
+    @Test
+    public void testAsOfJoinTolerance() throws Exception {
+        try {
+            parser.parse("select x from a a asof join b on b.x = a.x tolerance 1s");
+            Assert.fail("Exception expected");
+        } catch (ParserException e) {
+            Assert.assertEquals(43, QueryError.getPosition());
+            Assert.assertTrue(Chars.contains(QueryError.getMessage(), "Tolerance"));
+        }
+    }
+
     @Test
     public void testCrossJoin() throws Exception {
         try {
@@ -127,6 +138,28 @@ public class QueryParserTest extends AbstractTest {
         Assert.assertNotNull(statement.getJoinModels().getQuick(2).getJoinCriteria());
     }
 
+    @Test
+    public void testCrossJoinTolerance() throws Exception {
+        try {
+            parser.parse("select x from a a cross join b z tolerance 1s");
+            Assert.fail("Exception expected");
+        } catch (ParserException e) {
+            Assert.assertEquals(33, QueryError.getPosition());
+            Assert.assertTrue(Chars.contains(QueryError.getMessage(), "Tolerance"));
+        }
+    }
+
+    @Test
+    public void testCrossJoinToleranceNoAlias() throws Exception {
+        try {
+            parser.parse("select x from a a cross join b tolerance 1s");
+            Assert.fail("Exception expected");
+        } catch (ParserException e) {
+            Assert.assertEquals(31, QueryError.getPosition());
+            Assert.assertTrue(Chars.contains(QueryError.getMessage(), "Tolerance"));
+        }
+    }
+
     @Test
     public void testCrossJoinNoAlias() throws Exception {
         QueryModel statement = (QueryModel) parser.parse("select x from a a " +
@@ -499,6 +532,16 @@ public class QueryParserTest extends AbstractTest {
         Assert.assertEquals("2m", statement.getSampleBy().token);
     }
 
+    @Test
+    public void testSampleByFill() throws Exception {
+        QueryModel statement = (QueryModel) parser.parse("select x,y from tab sample by 2m fill(prev, -1) order by x");
+        Assert.assertEquals("2m", statement.getSampleBy().token);
+        Assert.assertEquals(2, statement.getSampleByFill().size());
+        Assert.assertEquals("prev", statement.getSampleByFill().getQuick(0).token);
+        Assert.assertEquals("1-", TestUtils.toRpn(statement.getSampleByFill().getQuick(1)));
+        Assert.assertEquals(1, statement.getOrderBy().size());
+    }
+
     @Test
     public void testSelectPlainColumns() throws Exception {
         QueryModel statement = (QueryModel) parser.parse("select a,b,c from t");
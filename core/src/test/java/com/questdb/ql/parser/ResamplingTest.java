@@ -178,6 +178,27 @@ public class ResamplingTest extends AbstractOptimiserTest {
                         $()
         );
         orders3.close();
+
+        try (JournalWriter ticks = factory.writer(
+                new JournalStructure("ticks").
+                        $sym("ccy").
+                        $double("price").
+                        $int("qty").
+                        $ts().
+                        $()
+        )) {
+            // 02:00 and 03:00 have no data, EUR is missing at 01:00 and 05:00
+            String ccy[] = {"EUR", "USD", "USD", "EUR", "USD", "USD"};
+            String ts[] = {"00:00", "00:10", "01:20", "04:00", "04:30", "05:10"};
+            for (int i = 0; i < ccy.length; i++) {
+                JournalEntryWriter w = ticks.entryWriter(Dates.parseDateTime("2015-01-01T" + ts[i] + ":00.000Z"));
+                w.putSym(0, ccy[i]);
+                w.putDouble(1, 10 * (i + 1));
+                w.putInt(2, i + 1);
+                w.append();
+            }
+            ticks.commit();
+        }
     }
 
     @Test
@@ -189,6 +210,40 @@ public class ResamplingTest extends AbstractOptimiserTest {
                 "select orderDate, vwap(price, quantity) from orders sample by 8h");
     }
 
+    @Test
+    public void testResamplingNoKeys() throws Exception {
+        assertThat("2014-05-04T10:00:00.000Z\t179\t1\t179\n" +
+                        "2014-05-04T11:00:00.000Z\t360\t180\t539\n" +
+                        "2014-05-04T12:00:00.000Z\t360\t540\t899\n" +
+                        "2014-05-04T13:00:00.000Z\t360\t900\t1259\n" +
+                        "2014-05-04T14:00:00.000Z\t360\t1260\t1619\n" +
+                        "2014-05-04T15:00:00.000Z\t360\t1620\t1979\n" +
+                        "2014-05-04T16:00:00.000Z\t360\t1980\t2339\n" +
+                        "2014-05-04T17:00:00.000Z\t360\t2340\t2699\n" +
+                        "2014-05-04T18:00:00.000Z\t360\t2700\t3059\n" +
+                        "2014-05-04T19:00:00.000Z\t360\t3060\t3419\n" +
+                        "2014-05-04T20:00:00.000Z\t360\t3420\t3779\n" +
+                        "2014-05-04T21:00:00.000Z\t360\t3780\t4139\n" +
+                        "2014-05-04T22:00:00.000Z\t360\t4140\t4499\n" +
+                        "2014-05-04T23:00:00.000Z\t360\t4500\t4859\n" +
+                        "2014-05-05T00:00:00.000Z\t360\t4860\t5219\n" +
+                        "2014-05-05T01:00:00.000Z\t360\t5220\t5579\n" +
+                        "2014-05-05T02:00:00.000Z\t360\t5580\t5939\n" +
+                        "2014-05-05T03:00:00.000Z\t360\t5940\t6299\n" +
+                        "2014-05-05T04:00:00.000Z\t360\t6300\t6659\n" +
+                        "2014-05-05T05:00:00.000Z\t360\t6660\t7019\n" +
+                        "2014-05-05T06:00:00.000Z\t360\t7020\t7379\n" +
+                        "2014-05-05T07:00:00.000Z\t360\t7380\t7739\n" +
+                        "2014-05-05T08:00:00.000Z\t360\t7740\t8099\n" +
+                        "2014-05-05T09:00:00.000Z\t360\t8100\t8459\n" +
+                        "2014-05-05T10:00:00.000Z\t360\t8460\t8819\n" +
+                        "2014-05-05T11:00:00.000Z\t360\t8820\t9179\n" +
+                        "2014-05-05T12:00:00.000Z\t360\t9180\t9539\n" +
+                        "2014-05-05T13:00:00.000Z\t360\t9540\t9899\n" +
+                        "2014-05-05T14:00:00.000Z\t101\t9900\t10000\n",
+                "select orderDate, count(), first(orderId), last(orderId) from orders sample by 1h");
+    }
+
     @Test
     public void testResamplingAmbiguousTimestamp() throws Exception {
         try {
@@ -270,4 +325,80 @@ public class ResamplingTest extends AbstractOptimiserTest {
             Assert.assertEquals(86, QueryError.getPosition());
         }
     }
+
+    @Test
+    public void testFillConstant() throws Exception {
+        assertThat("2015-01-01T00:00:00.000Z\t30.000000000000\t3\n" +
+                        "2015-01-01T01:00:00.000Z\t30.000000000000\t3\n" +
+                        "2015-01-01T02:00:00.000Z\t-1.000000000000\t0\n" +
+                        "2015-01-01T03:00:00.000Z\t-1.000000000000\t0\n" +
+                        "2015-01-01T04:00:00.000Z\t90.000000000000\t9\n" +
+                        "2015-01-01T05:00:00.000Z\t60.000000000000\t6\n",
+                "select timestamp, sum(price), sum(qty) from ticks sample by 1h fill(-1, 0)");
+    }
+
+    @Test
+    public void testFillLinear() throws Exception {
+        assertThat("2015-01-01T00:00:00.000Z\t30.000000000000\t3\n" +
+                        "2015-01-01T01:00:00.000Z\t30.000000000000\t3\n" +
+                        "2015-01-01T02:00:00.000Z\t50.000000000000\t5\n" +
+                        "2015-01-01T03:00:00.000Z\t70.000000000000\t7\n" +
+                        "2015-01-01T04:00:00.000Z\t90.000000000000\t9\n" +
+                        "2015-01-01T05:00:00.000Z\t60.000000000000\t6\n",
+                "select timestamp, sum(price), sum(qty) from ticks sample by 1h fill(linear)");
+    }
+
+    @Test
+    public void testFillLinearKeyed() throws Exception {
+        try {
+            expectFailure("select timestamp, ccy, sum(price) from ticks sample by 1h fill(linear)");
+            Assert.fail();
+        } catch (ParserException e) {
+            Assert.assertEquals(63, QueryError.getPosition());
+        }
+    }
+
+    @Test
+    public void testFillNull() throws Exception {
+        assertThat("2015-01-01T00:00:00.000Z\tEUR\t10.000000000000\t1\n" +
+                        "2015-01-01T00:00:00.000Z\tUSD\t20.000000000000\t1\n" +
+                        "2015-01-01T01:00:00.000Z\tUSD\t30.000000000000\t1\n" +
+                        "2015-01-01T01:00:00.000Z\tEUR\tNaN\tNaN\n" +
+                        "2015-01-01T02:00:00.000Z\tEUR\tNaN\tNaN\n" +
+                        "2015-01-01T02:00:00.000Z\tUSD\tNaN\tNaN\n" +
+                        "2015-01-01T03:00:00.000Z\tEUR\tNaN\tNaN\n" +
+                        "2015-01-01T03:00:00.000Z\tUSD\tNaN\tNaN\n" +
+                        "2015-01-01T04:00:00.000Z\tEUR\t40.000000000000\t1\n" +
+                        "2015-01-01T04:00:00.000Z\tUSD\t50.000000000000\t1\n" +
+                        "2015-01-01T05:00:00.000Z\tUSD\t60.000000000000\t1\n" +
+                        "2015-01-01T05:00:00.000Z\tEUR\tNaN\tNaN\n",
+                "select timestamp, ccy, sum(price), count() from ticks sample by 1h fill(null)");
+    }
+
+    @Test
+    public void testFillPrev() throws Exception {
+        assertThat("2015-01-01T00:00:00.000Z\tEUR\t10.000000000000\t10.000000000000\n" +
+                        "2015-01-01T00:00:00.000Z\tUSD\t20.000000000000\t20.000000000000\n" +
+                        "2015-01-01T01:00:00.000Z\tUSD\t30.000000000000\t30.000000000000\n" +
+                        "2015-01-01T01:00:00.000Z\tEUR\t10.000000000000\t10.000000000000\n" +
+                        "2015-01-01T02:00:00.000Z\tEUR\t10.000000000000\t10.000000000000\n" +
+                        "2015-01-01T02:00:00.000Z\tUSD\t30.000000000000\t30.000000000000\n" +
+                        "2015-01-01T03:00:00.000Z\tEUR\t10.000000000000\t10.000000000000\n" +
+                        "2015-01-01T03:00:00.000Z\tUSD\t30.000000000000\t30.000000000000\n" +
+                        "2015-01-01T04:00:00.000Z\tEUR\t40.000000000000\t40.000000000000\n" +
+                        "2015-01-01T04:00:00.000Z\tUSD\t50.000000000000\t50.000000000000\n" +
+                        "2015-01-01T05:00:00.000Z\tUSD\t60.000000000000\t60.000000000000\n" +
+                        "2015-01-01T05:00:00.000Z\tEUR\t40.000000000000\t40.000000000000\n",
+                "select timestamp, ccy, sum(price), vwap(price, qty) from ticks sample by 1h fill(prev)");
+    }
+
+    @Test
+    public void testFillValueCount() throws Exception {
+        try {
+            expectFailure("select timestamp, sum(price), sum(qty) from ticks sample by 1h fill(prev, 0, 1)");
+            Assert.fail();
+        } catch (ParserException e) {
+            Assert.assertEquals(68, QueryError.getPosition());
+        }
+    }
 }
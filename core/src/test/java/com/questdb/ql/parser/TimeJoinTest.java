@@ -0,0 +1,161 @@
+/*******************************************************************************
+ *    ___                  _   ____  ____
+ *   / _ \ _   _  ___  ___| |_|  _ \| __ )
+ *  | | | | | | |/ _ \/ __| __| | | |  _ \
+ *  | |_| | |_| |  __/\__ \ |_| |_| | |_) |
+ *   \__\_\\__,_|\___||___/\__|____/|____/
+ *
+ * Copyright (C) 2014-2016 Appsicle
+ *
+ * This program is free software: you can redistribute it and/or  modify
+ * it under the terms of the GNU Affero General Public License, version 3,
+ * as published by the Free Software Foundation.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ *
+ ******************************************************************************/
+
+
+package com.questdb.ql.parser;
+
+import com.questdb.JournalEntryWriter;
+import com.questdb.JournalWriter;
+import com.questdb.ex.ParserException;
+import com.questdb.factory.configuration.JournalStructure;
+import com.questdb.misc.Chars;
+import com.questdb.misc.Dates;
+import com.questdb.misc.Rnd;
+import com.questdb.ql.RecordSource;
+import org.junit.Assert;
+import org.junit.BeforeClass;
+import org.junit.Test;
+
+public class TimeJoinTest extends AbstractOptimiserTest {
+
+    @BeforeClass
+    public static void setUp() throws Exception {
+        long t = Dates.parseDateTime("2015-03-10T10:00:00.000Z");
+
+        try (JournalWriter w = factory.writer(new JournalStructure("quotes").$sym("sym").$double("bid").$ts().$())) {
+            for (int i = 0; i < 10; i++) {
+                JournalEntryWriter e = w.entryWriter(t + i * 1000);
+                e.putSym(0, i % 2 == 0 ? "A" : "B");
+                e.putDouble(1, i);
+                e.append();
+            }
+            w.commit();
+        }
+
+        try (JournalWriter w = factory.writer(new JournalStructure("trades").$sym("sym").$int("qty").$ts().$())) {
+            long offsets[] = {2000, 2000, 3500, 4000, 7100, 20000};
+            for (int i = 0; i < offsets.length; i++) {
+                JournalEntryWriter e = w.entryWriter(t + offsets[i]);
+                e.putSym(0, i % 2 == 0 ? "A" : "B");
+                e.putInt(1, i + 1);
+                e.append();
+            }
+            w.commit();
+        }
+
+        try (JournalWriter w = factory.writer(new JournalStructure("ticks1").$int("v").$ts().$())) {
+            Rnd rnd = new Rnd();
+            for (int i = 0; i < 1000; i++) {
+                JournalEntryWriter e = w.entryWriter(t += rnd.nextPositiveInt() % 20);
+                e.putInt(0, i);
+                e.append();
+            }
+            w.commit();
+        }
+
+        try (JournalWriter w = factory.writer(new JournalStructure("ticks2").$int("v").$ts().$())) {
+            Rnd rnd = new Rnd(1, 2);
+            t = Dates.parseDateTime("2015-03-10T10:00:00.000Z");
+            for (int i = 0; i < 1000; i++) {
+                JournalEntryWriter e = w.entryWriter(t += rnd.nextPositiveInt() % 20);
+                e.putInt(0, i);
+                e.append();
+            }
+            w.commit();
+        }
+    }
+
+    @Test
+    public void testEquiJoin() throws Exception {
+        assertThat("2015-03-10T10:00:02.000Z\t2.000000000000\t1\n" +
+                        "2015-03-10T10:00:02.000Z\t2.000000000000\t2\n" +
+                        "2015-03-10T10:00:04.000Z\t4.000000000000\t4\n",
+                "select q.timestamp, q.bid, t.qty from quotes q join trades t on q.timestamp = t.timestamp");
+    }
+
+    @Test
+    public void testEquiJoinWithKey() throws Exception {
+        assertThat("2015-03-10T10:00:02.000Z\tA\tA\t1\n",
+                "select q.timestamp, q.sym, t.sym, t.qty from quotes q join trades t on q.timestamp = t.timestamp and q.sym = t.sym");
+    }
+
+    @Test
+    public void testMatchesHashJoin() throws Exception {
+        // sub-query is not known to be ordered and is joined via hash table
+        assertSame("select a.v, b.v from ticks1 a join (ticks2) b on a.timestamp = b.timestamp",
+                "select a.v, b.v from ticks1 a join ticks2 b on a.timestamp = b.timestamp");
+    }
+
+    @Test
+    public void testMatchesHashJoinOuter() throws Exception {
+        assertSame("select a.v, b.v from ticks1 a outer join (ticks2) b on a.timestamp = b.timestamp",
+                "select a.v, b.v from ticks1 a outer join ticks2 b on a.timestamp = b.timestamp");
+    }
+
+    @Test
+    public void testOuterJoinTolerance() throws Exception {
+        assertThat("2015-03-10T10:00:00.000Z\t0.000000000000\t\tNaN\n" +
+                        "2015-03-10T10:00:01.000Z\t1.000000000000\t\tNaN\n" +
+                        "2015-03-10T10:00:02.000Z\t2.000000000000\t2015-03-10T10:00:02.000Z\t1\n" +
+                        "2015-03-10T10:00:02.000Z\t2.000000000000\t2015-03-10T10:00:02.000Z\t2\n" +
+                        "2015-03-10T10:00:03.000Z\t3.000000000000\t2015-03-10T10:00:03.500Z\t3\n" +
+                        "2015-03-10T10:00:04.000Z\t4.000000000000\t2015-03-10T10:00:03.500Z\t3\n" +
+                        "2015-03-10T10:00:04.000Z\t4.000000000000\t2015-03-10T10:00:04.000Z\t4\n" +
+                        "2015-03-10T10:00:05.000Z\t5.000000000000\t\tNaN\n" +
+                        "2015-03-10T10:00:06.000Z\t6.000000000000\t\tNaN\n" +
+                        "2015-03-10T10:00:07.000Z\t7.000000000000\t2015-03-10T10:00:07.100Z\t5\n" +
+                        "2015-03-10T10:00:08.000Z\t8.000000000000\t\tNaN\n" +
+                        "2015-03-10T10:00:09.000Z\t9.000000000000\t\tNaN\n",
+                "select q.timestamp, q.bid, t.timestamp, t.qty from quotes q outer join trades t on q.timestamp = t.timestamp tolerance 500");
+    }
+
+    @Test
+    public void testPlan() throws Exception {
+        sink.clear();
+        try (RecordSource rs = compileSource("quotes q join trades t on q.timestamp = t.timestamp tolerance 1s")) {
+            rs.toSink(sink);
+        }
+        Assert.assertTrue(Chars.contains(sink, "\"op\":\"MergeJoinRecordSource\""));
+        Assert.assertTrue(Chars.contains(sink, "\"tolerance\":1000"));
+    }
+
+    @Test
+    public void testToleranceNotOnTimestamp() throws Exception {
+        try {
+            expectFailure("quotes q join trades t on q.sym = t.sym tolerance 1s");
+            Assert.fail();
+        } catch (ParserException e) {
+            Assert.assertEquals(50, QueryError.getPosition());
+        }
+    }
+
+    private void assertSame(String hashJoin, String mergeJoin) throws Exception {
+        sink.clear();
+        try (RecordSource rs = compileSource(hashJoin)) {
+            printer.print(rs, factory);
+        }
+        String s = sink.toString();
+        Assert.assertTrue(s.length() > 0);
+        assertThat(s, mergeJoin);
+    }
+}
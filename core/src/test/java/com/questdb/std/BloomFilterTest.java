@@ -0,0 +1,79 @@
+/*******************************************************************************
+ *    ___                  _   ____  ____
+ *   / _ \ _   _  ___  ___| |_|  _ \| __ )
+ *  | | | | | | |/ _ \/ __| __| | | |  _ \
+ *  | |_| | |_| |  __/\__ \ |_| |_| | |_) |
+ *   \__\_\\__,_|\___||___/\__|____/|____/
+ *
+ * Copyright (C) 2014-2016 Appsicle
+ *
+ * This program is free software: you can redistribute it and/or  modify
+ * it under the terms of the GNU Affero General Public License, version 3,
+ * as published by the Free Software Foundation.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ *
+ ******************************************************************************/
+
+
+package com.questdb.std;
+
+import com.questdb.misc.Hash;
+import com.questdb.misc.Rnd;
+import org.junit.Assert;
+import org.junit.Test;
+
+public class BloomFilterTest {
+    @Test
+    public void testFalsePositiveRate() throws Exception {
+        BloomFilter filter = new BloomFilter();
+        IntHashSet keys = new IntHashSet();
+        Rnd rnd = new Rnd();
+
+        filter.of(10000);
+        for (int i = 0; i < 10000; i++) {
+            int k = rnd.nextInt();
+            keys.add(k);
+            filter.add(Hash.hashInt(k));
+        }
+
+        for (int i = 0, n = keys.size(); i < n; i++) {
+            Assert.assertTrue(filter.mightContain(Hash.hashInt(keys.get(i))));
+        }
+
+        int positives = 0;
+        int count = 0;
+        while (count < 100000) {
+            int k = rnd.nextInt();
+            if (keys.contains(k)) {
+                continue;
+            }
+            count++;
+            if (filter.mightContain(Hash.hashInt(k))) {
+                positives++;
+            }
+        }
+        Assert.assertTrue(positives < count / 100);
+    }
+
+    @Test
+    public void testReuse() throws Exception {
+        BloomFilter filter = new BloomFilter();
+        filter.of(1000);
+        for (int i = 0; i < 1000; i++) {
+            filter.add(Hash.hashInt(i));
+        }
+        Assert.assertTrue(filter.mightContain(Hash.hashInt(999)));
+
+        filter.of(10);
+        Assert.assertFalse(filter.mightContain(Hash.hashInt(999)));
+        filter.add(Hash.hashInt(5));
+        Assert.assertTrue(filter.mightContain(Hash.hashInt(5)));
+    }
+}
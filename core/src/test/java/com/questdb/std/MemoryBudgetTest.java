@@ -0,0 +1,116 @@
+/*******************************************************************************
+ *    ___                  _   ____  ____
+ *   / _ \ _   _  ___  ___| |_|  _ \| __ )
+ *  | | | | | | |/ _ \/ __| __| | | |  _ \
+ *  | |_| | |_| |  __/\__ \ |_| |_| | |_) |
+ *   \__\_\\__,_|\___||___/\__|____/|____/
+ *
+ * Copyright (C) 2014-2016 Appsicle
+ *
+ * This program is free software: you can redistribute it and/or  modify
+ * it under the terms of the GNU Affero General Public License, version 3,
+ * as published by the Free Software Foundation.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ *
+ ******************************************************************************/
+
+
+package com.questdb.std;
+
+import com.questdb.misc.Unsafe;
+import org.junit.Assert;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.File;
+
+public class MemoryBudgetTest {
+
+    @Rule
+    public final TemporaryFolder temp = new TemporaryFolder();
+
+    @Test
+    public void testAllocateAndSpill() throws Exception {
+        File dir = new File(temp.getRoot(), "spill");
+        long memUsed = Unsafe.getMemUsed();
+
+        MemoryBudget budget = new MemoryBudget(1024, dir);
+        long a = budget.allocate(1024);
+        Assert.assertEquals(1024, budget.getUsed());
+        Assert.assertEquals(0, budget.getSpilled());
+        Assert.assertFalse(dir.exists());
+
+        long b = budget.allocate(4096);
+        Assert.assertEquals(1024, budget.getUsed());
+        Assert.assertEquals(4096, budget.getSpilled());
+        Assert.assertEquals(memUsed + 1024, Unsafe.getMemUsed());
+
+        // spilled memory is as good as malloc'ed
+        for (long p = b; p < b + 4096; p += 8) {
+            Unsafe.getUnsafe().putLong(p, p);
+        }
+        for (long p = b; p < b + 4096; p += 8) {
+            Assert.assertEquals(p, Unsafe.getUnsafe().getLong(p));
+        }
+
+        budget.free(b, 4096);
+        Assert.assertEquals(0, budget.getSpilled());
+        budget.free(a, 1024);
+        Assert.assertEquals(0, budget.getUsed());
+        Assert.assertEquals(memUsed, Unsafe.getMemUsed());
+        assertNoFiles(dir);
+    }
+
+    @Test
+    public void testCloseReleasesSpills() throws Exception {
+        File dir = new File(temp.getRoot(), "spill");
+        MemoryBudget budget = new MemoryBudget(0, dir);
+        budget.allocate(1024);
+        budget.allocate(2048);
+        Assert.assertEquals(3072, budget.getSpilled());
+        budget.close();
+        Assert.assertEquals(0, budget.getSpilled());
+        assertNoFiles(dir);
+    }
+
+    @Test
+    public void testMemoryPages() throws Exception {
+        File dir = new File(temp.getRoot(), "spill");
+        long memUsed = Unsafe.getMemUsed();
+        MemoryBudget budget = new MemoryBudget(2048, dir);
+        MemoryPages pages = new MemoryPages(1024, budget);
+
+        long[] addresses = new long[64];
+        for (int i = 0; i < addresses.length; i++) {
+            addresses[i] = pages.allocate(512);
+            Unsafe.getUnsafe().putLong(addresses[i], i);
+        }
+
+        // two pages fit into budget, remaining 30 are spilled
+        Assert.assertEquals(2048, budget.getUsed());
+        Assert.assertEquals(30 * 1024, budget.getSpilled());
+
+        for (int i = 0; i < addresses.length; i++) {
+            Assert.assertEquals(i, Unsafe.getUnsafe().getLong(addresses[i]));
+        }
+
+        pages.close();
+        Assert.assertEquals(0, budget.getUsed());
+        Assert.assertEquals(0, budget.getSpilled());
+        Assert.assertEquals(memUsed, Unsafe.getMemUsed());
+        assertNoFiles(dir);
+    }
+
+    private static void assertNoFiles(File dir) {
+        String[] files = dir.list();
+        Assert.assertTrue(files == null || files.length == 0);
+    }
+}
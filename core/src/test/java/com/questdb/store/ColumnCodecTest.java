@@ -0,0 +1,234 @@
+/*******************************************************************************
+ *    ___                  _   ____  ____
+ *   / _ \ _   _  ___  ___| |_|  _ \| __ )
+ *  | | | | | | |/ _ \/ __| __| | | |  _ \
+ *  | |_| | |_| |  __/\__ \ |_| |_| | |_) |
+ *   \__\_\\__,_|\___||___/\__|____/|____/
+ *
+ * Copyright (C) 2014-2016 Appsicle
+ *
+ * This program is free software: you can redistribute it and/or  modify
+ * it under the terms of the GNU Affero General Public License, version 3,
+ * as published by the Free Software Foundation.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ *
+ ******************************************************************************/
+
+package com.questdb.store;
+
+import com.questdb.JournalMode;
+import com.questdb.misc.Rnd;
+import com.questdb.misc.Unsafe;
+import org.junit.Assert;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.File;
+
+public class ColumnCodecTest {
+    @Rule
+    public final TemporaryFolder temporaryFolder = new TemporaryFolder();
+    private final Rnd rnd = new Rnd();
+
+    @Test
+    public void testBitPack() throws Exception {
+        int n = 10000;
+        long src = Unsafe.malloc(n * 4);
+        try {
+            for (int i = 0; i < n; i++) {
+                Unsafe.getUnsafe().putInt(src + i * 4, rnd.nextPositiveInt() % 300);
+            }
+            assertRoundTrip(ColumnCodec.BIT_PACK, src, n * 4, n * 4 / 3);
+
+            for (int i = 0; i < n; i++) {
+                Unsafe.getUnsafe().putInt(src + i * 4, i % 2 == 0 ? Integer.MIN_VALUE : Integer.MAX_VALUE);
+            }
+            assertRoundTrip(ColumnCodec.BIT_PACK, src, n * 4, -1);
+
+            for (int i = 0; i < n; i++) {
+                Unsafe.getUnsafe().putInt(src + i * 4, 7);
+            }
+            assertRoundTrip(ColumnCodec.BIT_PACK, src, n * 4, 8);
+        } finally {
+            Unsafe.free(src, n * 4);
+        }
+    }
+
+    @Test
+    public void testDeltaOfDelta() throws Exception {
+        int n = 10000;
+        long src = Unsafe.malloc(n * 8);
+        try {
+            long ts = 1456000000000L;
+            for (int i = 0; i < n; i++) {
+                Unsafe.getUnsafe().putLong(src + i * 8, ts += 1000 + (i % 10 == 0 ? rnd.nextPositiveInt() % 5000 : 0));
+            }
+            assertRoundTrip(ColumnCodec.DELTA_OF_DELTA, src, n * 8, n * 8 / 5);
+
+            for (int i = 0; i < n; i++) {
+                Unsafe.getUnsafe().putLong(src + i * 8, i % 3 == 0 ? Long.MIN_VALUE : rnd.nextLong());
+            }
+            assertRoundTrip(ColumnCodec.DELTA_OF_DELTA, src, n * 8, -1);
+            assertRoundTrip(ColumnCodec.DELTA_OF_DELTA, src, 8, -1);
+            assertRoundTrip(ColumnCodec.DELTA_OF_DELTA, src, 16, -1);
+        } finally {
+            Unsafe.free(src, n * 8);
+        }
+    }
+
+    @Test
+    public void testBlockCache() throws Exception {
+        File file = new File(temporaryFolder.getRoot(), "col.d");
+        // twice as many blocks as cache holds
+        int n = CompressedMemoryFile.CACHE_SIZE * 2 * (1 << 13);
+        try (MemoryFile mf = new MemoryFile(file, 16, JournalMode.APPEND)) {
+            for (int i = 0; i < n; i++) {
+                Unsafe.getUnsafe().putLong(mf.addressOf(i * 8L, 8), i * 3L);
+            }
+            mf.setAppendOffset(n * 8L);
+        }
+
+        File z = CompressedMemoryFile.compressedFile(file);
+        CompressedMemoryFile.compress(file, z, ColumnCodec.DELTA_OF_DELTA, 8);
+
+        try (CompressedMemoryFile cmf = new CompressedMemoryFile(z, 16)) {
+            cmf.preload(100 * 8L);
+            long preloaded = cmf.addressOf(0, 8);
+
+            // evicts every block more than once
+            for (int k = 0; k < 2; k++) {
+                for (int i = 0; i < n; i++) {
+                    Assert.assertEquals(i * 3L, Unsafe.getUnsafe().getLong(cmf.addressOf(i * 8L, 8)));
+                }
+            }
+
+            // values spanning blocks are contiguous
+            for (int i = (1 << 13) - 1; i < n - 1; i += 1 << 13) {
+                long a = cmf.addressOf(i * 8L, 16);
+                Assert.assertEquals(i * 3L, Unsafe.getUnsafe().getLong(a));
+                Assert.assertEquals((i + 1) * 3L, Unsafe.getUnsafe().getLong(a + 8));
+            }
+
+            // preloaded prefix stays put
+            Assert.assertEquals(preloaded, cmf.addressOf(0, 8));
+            for (int i = 0; i < 100; i++) {
+                Assert.assertEquals(i * 3L, Unsafe.getUnsafe().getLong(preloaded + i * 8L));
+            }
+        }
+    }
+
+    @Test
+    public void testFileRoundTrip() throws Exception {
+        File file = new File(temporaryFolder.getRoot(), "col.d");
+        // spans several blocks with partial last block
+        int n = 200001;
+        try (MemoryFile mf = new MemoryFile(file, 16, JournalMode.APPEND)) {
+            for (int i = 0; i < n; i++) {
+                Unsafe.getUnsafe().putLong(mf.addressOf(i * 8L, 8), i * 10L);
+            }
+            mf.setAppendOffset(n * 8L);
+        }
+
+        File z = CompressedMemoryFile.compressedFile(file);
+        CompressedMemoryFile.compress(file, z, ColumnCodec.DELTA_OF_DELTA, 8);
+        Assert.assertTrue(file.exists());
+        Assert.assertTrue(z.length() < n);
+
+        try (CompressedMemoryFile cmf = new CompressedMemoryFile(z, 16)) {
+            Assert.assertEquals(n * 8L, cmf.getAppendOffset());
+            // random access decodes blocks on demand
+            for (int i = n - 1; i > -1; i -= 7) {
+                Assert.assertEquals(i * 10L, Unsafe.getUnsafe().getLong(cmf.addressOf(i * 8L, 8)));
+            }
+            Assert.assertEquals((1 << 16) - 8, cmf.pageRemaining(8));
+            Assert.assertEquals(8, cmf.pageRemaining(n * 8L - 8));
+        }
+
+        File restored = new File(temporaryFolder.getRoot(), "restored.d");
+        CompressedMemoryFile.decompress(z, restored, 16);
+        Assert.assertTrue(z.exists());
+        try (MemoryFile mf = new MemoryFile(restored, 16, JournalMode.READ)) {
+            Assert.assertEquals(n * 8L, mf.getAppendOffset());
+            for (int i = 0; i < n; i++) {
+                Assert.assertEquals(i * 10L, Unsafe.getUnsafe().getLong(mf.addressOf(i * 8L, 8)));
+            }
+        }
+    }
+
+    @Test
+    public void testLz4() throws Exception {
+        int n = 100000;
+        long src = Unsafe.malloc(n);
+        try {
+            for (int i = 0; i < n; i++) {
+                Unsafe.getUnsafe().putByte(src + i, (byte) ("ABCDEFGH".charAt(i % 8) + (i % 1000 == 0 ? 1 : 0)));
+            }
+            assertRoundTrip(ColumnCodec.LZ4, src, n, n / 10);
+
+            for (int i = 0; i < n; i++) {
+                Unsafe.getUnsafe().putByte(src + i, (byte) rnd.nextInt());
+            }
+            assertRoundTrip(ColumnCodec.LZ4, src, n, -1);
+
+            // run of single byte exercises overlapping matches
+            Unsafe.getUnsafe().setMemory(src, n, (byte) 'x');
+            assertRoundTrip(ColumnCodec.LZ4, src, n, n / 100);
+
+            for (int len = 0; len < 20; len++) {
+                assertRoundTrip(ColumnCodec.LZ4, src, len, -1);
+            }
+        } finally {
+            Unsafe.free(src, n);
+        }
+    }
+
+    @Test
+    public void testXor() throws Exception {
+        int n = 10000;
+        long src = Unsafe.malloc(n * 8);
+        try {
+            double price = 1.2345;
+            for (int i = 0; i < n; i++) {
+                if (i % 5 == 0) {
+                    price += 0.0001;
+                }
+                Unsafe.getUnsafe().putDouble(src + i * 8, price);
+            }
+            assertRoundTrip(ColumnCodec.XOR, src, n * 8, n * 8 / 2);
+
+            for (int i = 0; i < n; i++) {
+                Unsafe.getUnsafe().putDouble(src + i * 8, i % 7 == 0 ? Double.NaN : rnd.nextDouble() * i);
+            }
+            assertRoundTrip(ColumnCodec.XOR, src, n * 8, -1);
+        } finally {
+            Unsafe.free(src, n * 8);
+        }
+    }
+
+    private static void assertRoundTrip(int codec, long src, int len, int maxEncodedLen) {
+        long encoded = Unsafe.malloc(ColumnCodec.maxEncodedSize(len));
+        long decoded = Unsafe.malloc(len + 1);
+        try {
+            long n = ColumnCodec.encode(codec, src, len, encoded, ColumnCodec.hashTable());
+            Assert.assertTrue(n <= ColumnCodec.maxEncodedSize(len));
+            if (maxEncodedLen > -1) {
+                Assert.assertTrue("encoded " + len + " into " + n, n <= maxEncodedLen);
+            }
+            ColumnCodec.decode(codec, encoded, n, decoded, len);
+            for (int i = 0; i < len; i++) {
+                Assert.assertEquals(Unsafe.getUnsafe().getByte(src + i), Unsafe.getUnsafe().getByte(decoded + i));
+            }
+        } finally {
+            Unsafe.free(encoded, ColumnCodec.maxEncodedSize(len));
+            Unsafe.free(decoded, len + 1);
+        }
+    }
+}
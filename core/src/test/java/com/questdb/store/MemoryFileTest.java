@@ -0,0 +1,166 @@
+/*******************************************************************************
+ *    ___                  _   ____  ____
+ *   / _ \ _   _  ___  ___| |_|  _ \| __ )
+ *  | | | | | | |/ _ \/ __| __| | | |  _ \
+ *  | |_| | |_| |  __/\__ \ |_| |_| | |_) |
+ *   \__\_\\__,_|\___||___/\__|____/|____/
+ *
+ * Copyright (C) 2014-2016 Appsicle
+ *
+ * This program is free software: you can redistribute it and/or  modify
+ * it under the terms of the GNU Affero General Public License, version 3,
+ * as published by the Free Software Foundation.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ *
+ ******************************************************************************/
+
+package com.questdb.store;
+
+import com.questdb.JournalMode;
+import com.questdb.ex.JournalRuntimeException;
+import com.questdb.misc.Unsafe;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.File;
+import java.nio.MappedByteBuffer;
+
+public class MemoryFileTest {
+    @Rule
+    public final TemporaryFolder temporaryFolder = new TemporaryFolder();
+    private File file;
+
+    @Before
+    public void setUp() {
+        file = new File(temporaryFolder.getRoot(), "mem.d");
+    }
+
+    @Test
+    public void testAddressSurvivesGrowth() throws Exception {
+        try (MemoryFile mf = new MemoryFile(file, 10, JournalMode.APPEND)) {
+            long a = mf.addressOf(0, 8);
+            Unsafe.getUnsafe().putLong(a, 42L);
+            // force several extensions
+            Unsafe.getUnsafe().putLong(mf.addressOf(1 << 20, 8), 43L);
+            Assert.assertEquals(42L, Unsafe.getUnsafe().getLong(a));
+            Assert.assertEquals(42L, Unsafe.getUnsafe().getLong(mf.addressOf(0, 8)));
+        }
+    }
+
+    @Test
+    public void testCompact() throws Exception {
+        try (MemoryFile mf = new MemoryFile(file, 16, JournalMode.APPEND)) {
+            Unsafe.getUnsafe().putLong(mf.addressOf(0, 8), 1L);
+            mf.setAppendOffset(8);
+            Assert.assertTrue(file.length() >= (1 << 16) + 8);
+            mf.compact();
+            Assert.assertEquals(16, file.length());
+            Assert.assertEquals(8, mf.getAppendOffset());
+            Assert.assertEquals(1L, Unsafe.getUnsafe().getLong(mf.addressOf(0, 8)));
+        }
+    }
+
+    @Test
+    public void testReadBeyondEndOfFile() throws Exception {
+        try (MemoryFile w = new MemoryFile(file, 12, JournalMode.APPEND)) {
+            Unsafe.getUnsafe().putLong(w.addressOf(0, 8), 1L);
+            w.setAppendOffset(8);
+
+            try (MemoryFile r = new MemoryFile(file, 12, JournalMode.READ)) {
+                long size = file.length() - 8;
+                Assert.assertEquals(1L, Unsafe.getUnsafe().getLong(r.addressOf(0, 8)));
+
+                // writer extends file after reader has mapped it
+                Unsafe.getUnsafe().putLong(w.addressOf(size, 8), 2L);
+                Assert.assertEquals(2L, Unsafe.getUnsafe().getLong(r.addressOf(size, 8)));
+
+                // file is larger than reader mapping, but still too short
+                Unsafe.getUnsafe().putLong(w.addressOf(file.length() - 8, 8), 3L);
+                try {
+                    r.addressOf(file.length(), 8);
+                    Assert.fail();
+                } catch (JournalRuntimeException ignore) {
+                }
+            }
+        }
+    }
+
+    @Test
+    public void testReaderFollowsWriter() throws Exception {
+        int count = 100000;
+        try (MemoryFile w = new MemoryFile(file, 12, JournalMode.APPEND)) {
+            for (int i = 0; i < count / 2; i++) {
+                Unsafe.getUnsafe().putLong(w.addressOf(i * 8, 8), i);
+            }
+            w.setAppendOffset(count / 2 * 8);
+
+            try (MemoryFile r = new MemoryFile(file, 12, JournalMode.READ)) {
+                Assert.assertEquals(count / 2 * 8, r.getAppendOffset());
+                for (int i = 0; i < count / 2; i++) {
+                    Assert.assertEquals(i, Unsafe.getUnsafe().getLong(r.addressOf(i * 8, 8)));
+                }
+
+                for (int i = count / 2; i < count; i++) {
+                    Unsafe.getUnsafe().putLong(w.addressOf(i * 8, 8), i);
+                }
+                w.setAppendOffset(count * 8);
+
+                Assert.assertEquals(count * 8, r.getAppendOffset());
+                for (int i = 0; i < count; i++) {
+                    Assert.assertEquals(i, Unsafe.getUnsafe().getLong(r.addressOf(i * 8, 8)));
+                }
+            }
+        }
+    }
+
+    @Test
+    public void testReleaseRetired() throws Exception {
+        try (MemoryFile mf = new MemoryFile(file, 10, JournalMode.APPEND)) {
+            for (int i = 0; i < 1 << 17; i++) {
+                Unsafe.getUnsafe().putLong(mf.addressOf(i * 8, 8), i);
+            }
+            Assert.assertTrue(mf.getRetiredCount() > 0);
+
+            mf.releaseRetired();
+            Assert.assertEquals(0, mf.getRetiredCount());
+            for (int i = 0; i < 1 << 17; i++) {
+                Assert.assertEquals(i, Unsafe.getUnsafe().getLong(mf.addressOf(i * 8, 8)));
+            }
+        }
+    }
+
+    @Test
+    public void testValueAcrossPageBoundary() throws Exception {
+        int page = 1 << 10;
+        try (MemoryFile mf = new MemoryFile(file, 10, JournalMode.APPEND)) {
+            for (int i = 1; i < 10; i++) {
+                long o = i * page - 4;
+                Unsafe.getUnsafe().putLong(mf.addressOf(o, 8), o);
+            }
+            mf.setAppendOffset(10 * page);
+            mf.force();
+        }
+
+        try (MemoryFile mf = new MemoryFile(file, 10, JournalMode.READ)) {
+            for (int i = 1; i < 10; i++) {
+                long o = i * page - 4;
+                Assert.assertEquals(o, Unsafe.getUnsafe().getLong(mf.addressOf(o, 8)));
+            }
+            // whole file is one extent
+            Assert.assertEquals(file.length() - 8 - 100, mf.pageRemaining(100));
+
+            MappedByteBuffer buf = mf.getBuffer(page - 4, 8);
+            Assert.assertEquals(page - 4, buf.getLong(0));
+        }
+    }
+}
@@ -0,0 +1,158 @@
+/*******************************************************************************
+ *    ___                  _   ____  ____
+ *   / _ \ _   _  ___  ___| |_|  _ \| __ )
+ *  | | | | | | |/ _ \/ __| __| | | |  _ \
+ *  | |_| | |_| |  __/\__ \ |_| |_| | |_) |
+ *   \__\_\\__,_|\___||___/\__|____/|____/
+ *
+ * Copyright (C) 2014-2016 Appsicle
+ *
+ * This program is free software: you can redistribute it and/or  modify
+ * it under the terms of the GNU Affero General Public License, version 3,
+ * as published by the Free Software Foundation.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ *
+ ******************************************************************************/
+
+package com.questdb.store;
+
+import com.questdb.JournalMode;
+import com.questdb.misc.Unsafe;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.File;
+
+public class OverlayMemoryFileTest {
+    private static final int COUNT = 1000;
+    @Rule
+    public final TemporaryFolder temporaryFolder = new TemporaryFolder();
+    private File src;
+    private File dst;
+
+    @Before
+    public void setUp() throws Exception {
+        src = new File(temporaryFolder.newFolder("src"), "col.d");
+        dst = new File(temporaryFolder.newFolder("dst"), "col.d");
+        try (MemoryFile mf = new MemoryFile(src, 10, JournalMode.APPEND)) {
+            for (int i = 0; i < COUNT; i++) {
+                Unsafe.getUnsafe().putLong(mf.addressOf(i * 8, 8), value(i));
+            }
+            mf.setAppendOffset(COUNT * 8);
+        }
+    }
+
+    @Test
+    public void testAppend() throws Exception {
+        OverlayMemoryFile.stage(src, dst, 10);
+        try (MemoryFile mf = OverlayMemoryFile.openFile(dst, 10, JournalMode.APPEND)) {
+            for (int i = COUNT; i < 2 * COUNT; i++) {
+                Unsafe.getUnsafe().putLong(mf.addressOf(i * 8, 8), value(i));
+                mf.setAppendOffset(i * 8 + 8);
+            }
+        }
+        assertValues(dst, 2 * COUNT);
+        // base is not written to
+        assertValues(src, COUNT);
+    }
+
+    @Test
+    public void testCompressedBase() throws Exception {
+        File z = CompressedMemoryFile.compressedFile(src);
+        CompressedMemoryFile.compress(src, z, ColumnCodec.DELTA_OF_DELTA, 8);
+        Assert.assertTrue(src.delete());
+
+        OverlayMemoryFile.stage(src, dst, 10);
+        Assert.assertTrue(CompressedMemoryFile.compressedFile(OverlayMemoryFile.baseFile(dst)).exists());
+        assertValues(dst, COUNT);
+    }
+
+    @Test
+    public void testFlatten() throws Exception {
+        OverlayMemoryFile.stage(src, dst, 10);
+        try (MemoryFile mf = OverlayMemoryFile.openFile(dst, 10, JournalMode.APPEND)) {
+            mf.setAppendOffset(4);
+            Assert.assertNull(OverlayMemoryFile.findBase(dst));
+            mf.setAppendOffset(8);
+            Unsafe.getUnsafe().putLong(mf.addressOf(8, 8), 42);
+            mf.setAppendOffset(16);
+        }
+
+        try (MemoryFile mf = OverlayMemoryFile.openFile(dst, 10, JournalMode.READ)) {
+            Assert.assertFalse(mf instanceof OverlayMemoryFile);
+            // head of base is kept
+            Assert.assertEquals(value(0), Unsafe.getUnsafe().getLong(mf.addressOf(0, 8)));
+            Assert.assertEquals(42, Unsafe.getUnsafe().getLong(mf.addressOf(8, 8)));
+        }
+        assertValues(src, COUNT);
+    }
+
+    @Test
+    public void testLowerSplit() throws Exception {
+        OverlayMemoryFile.stage(src, dst, 10);
+        try (MemoryFile mf = OverlayMemoryFile.openFile(dst, 10, JournalMode.APPEND)) {
+            mf.setAppendOffset(100 * 8);
+            Assert.assertEquals(100 * 8, ((OverlayMemoryFile) mf).getSplit());
+            for (int i = 100; i < COUNT; i++) {
+                Unsafe.getUnsafe().putLong(mf.addressOf(i * 8, 8), value(i));
+                mf.setAppendOffset(i * 8 + 8);
+            }
+        }
+        assertValues(dst, COUNT);
+
+        // overlay of overlay keeps split and base
+        File dst2 = new File(temporaryFolder.newFolder("dst2"), "col.d");
+        OverlayMemoryFile.stage(dst, dst2, 10);
+        Assert.assertTrue(OverlayMemoryFile.baseFile(dst2).exists());
+        try (MemoryFile mf = OverlayMemoryFile.openFile(dst2, 10, JournalMode.READ)) {
+            Assert.assertEquals(100 * 8, ((OverlayMemoryFile) mf).getSplit());
+        }
+        assertValues(dst2, COUNT);
+    }
+
+    @Test
+    public void testStage() throws Exception {
+        OverlayMemoryFile.stage(src, dst, 10);
+        Assert.assertTrue(OverlayMemoryFile.baseFile(dst).exists());
+        Assert.assertNull(OverlayMemoryFile.overlayOf(src));
+        Assert.assertEquals(dst, OverlayMemoryFile.overlayOf(OverlayMemoryFile.baseFile(dst)));
+        assertValues(dst, COUNT);
+    }
+
+    @Test
+    public void testValueAcrossSplit() throws Exception {
+        OverlayMemoryFile.stage(src, dst, 10);
+        try (MemoryFile mf = OverlayMemoryFile.openFile(dst, 10, JournalMode.APPEND)) {
+            Unsafe.getUnsafe().putLong(mf.addressOf(COUNT * 8, 8), value(COUNT));
+            mf.setAppendOffset(COUNT * 8 + 8);
+
+            // block spanning split reads as one
+            long a = mf.addressOf(COUNT * 8 - 8, 16);
+            Assert.assertEquals(value(COUNT - 1), Unsafe.getUnsafe().getLong(a));
+            Assert.assertEquals(value(COUNT), Unsafe.getUnsafe().getLong(a + 8));
+        }
+    }
+
+    private static void assertValues(File file, int count) throws Exception {
+        try (MemoryFile mf = OverlayMemoryFile.openFile(file, 10, JournalMode.READ)) {
+            Assert.assertEquals(count * 8, mf.getAppendOffset());
+            for (int i = 0; i < count; i++) {
+                Assert.assertEquals(value(i), Unsafe.getUnsafe().getLong(mf.addressOf(i * 8, 8)));
+            }
+        }
+    }
+
+    private static long value(int i) {
+        return i * 3L + 1;
+    }
+}
@@ -47,8 +47,8 @@ import com.questdb.ql.model.ExprNode;
 import com.questdb.query.ResultSet;
 import com.questdb.std.IntList;
 import com.questdb.std.LongList;
+import com.questdb.store.ColumnIndex;
 import com.questdb.store.ColumnType;
-import com.questdb.store.KVIndex;
 import com.questdb.store.MMappedSymbolTable;
 import org.junit.Assert;
 
@@ -149,8 +149,8 @@ public final class TestUtils {
 
             for (int k = 0; k < expected.getMetadata().getColumnCount(); k++) {
                 if (expected.getMetadata().getColumn(k).indexed) {
-                    KVIndex ei = ep.getIndexForColumn(k);
-                    KVIndex ai = ap.getIndexForColumn(k);
+                    ColumnIndex ei = ep.getIndexForColumn(k);
+                    ColumnIndex ai = ap.getIndexForColumn(k);
 
                     int count = colKeyCount.getQuick(k);
 
@@ -319,6 +319,22 @@ public final class TestUtils {
         }
     }
 
+    /**
+     * Appends quotes after last timestamp of journal, or from 2013-09-04 when journal is empty.
+     * Increment of several hours spills data into following monthly partitions.
+     */
+    public static void generateQuoteBatch(JournalWriter<Quote> w, int count, long increment) throws JournalException, NumericException {
+        long timestamp = w.size() == 0 ? Dates.parseDateTime("2013-09-04T10:00:00.000Z") : w.getMaxTimestamp() + 1;
+        generateQuoteData(w, count, timestamp, increment);
+    }
+
+    public static void generateQuoteBatches(JournalWriter<Quote> w, int batches, int count, long increment) throws JournalException, NumericException {
+        for (int i = 0; i < batches; i++) {
+            generateQuoteBatch(w, count, increment);
+            w.commit();
+        }
+    }
+
     public static void generateQuoteData(JournalWriter<Quote> w, int count) throws JournalException, NumericException {
         String symbols[] = {"AGK.L", "BP.L", "TLW.L", "ABF.L", "LLOY.L", "BT-A.L", "WTB.L", "RRS.L", "ADM.L", "GKN.L", "HSBA.L"};
         long timestamps[] = {Dates.parseDateTime("2013-09-04T10:00:00.000Z"), Dates.parseDateTime("2013-10-04T10:00:00.000Z"), Dates.parseDateTime("2013-11-04T10:00:00.000Z")};